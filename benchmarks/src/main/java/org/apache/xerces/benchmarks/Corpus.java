@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The documents measured by the benchmarks. They are generated, so
+ * that every run measures the same input: an order catalog with
+ * namespaces, attributes, mixed content and a few non-ASCII
+ * characters, in three sizes.
+ * <ul>
+ *  <li><code>small</code>: 10 items, about 3 KB</li>
+ *  <li><code>medium</code>: 1000 items, about 300 KB</li>
+ *  <li><code>huge</code>: 100000 items, about 30 MB</li>
+ * </ul>
+ * The same items may also be split over several documents combined
+ * with XInclude, and are valid against the schema returned by
+ * <code>schema()</code>.
+ *
+ * @version $Id$
+ */
+final class Corpus {
+
+    /** Target namespace of the documents. */
+    static final String NAMESPACE = "urn:xerces:benchmarks:catalog";
+
+    /** Namespace of XInclude. */
+    static final String XINCLUDE_NAMESPACE = "http://www.w3.org/2001/XInclude";
+
+    /** Number of documents the items are split over for XInclude. */
+    static final int XINCLUDE_PARTS = 10;
+
+    private Corpus() {}
+
+    /** Returns the number of items of a document of the specified size. */
+    static int itemCount(String size) {
+        if ("small".equals(size)) {
+            return 10;
+        }
+        if ("medium".equals(size)) {
+            return 1000;
+        }
+        if ("huge".equals(size)) {
+            return 100000;
+        }
+        throw new IllegalArgumentException("Unknown document size: " + size);
+    }
+
+    /** Returns the UTF-8 bytes of the document of the specified size. */
+    static byte[] document(String size) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buffer.append("<catalog xmlns=\"").append(NAMESPACE).append("\" version=\"1.0\">\n");
+        appendItems(buffer, 0, itemCount(size));
+        buffer.append("</catalog>\n");
+        return toBytes(buffer);
+    }
+
+    /**
+     * Writes the document of the specified size, split into a main
+     * document including <code>XINCLUDE_PARTS</code> parts, to the
+     * directory, and returns the main document.
+     */
+    static File writeXIncludeDocuments(String size, File directory) throws IOException {
+        final int count = itemCount(size);
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buffer.append("<catalog xmlns=\"").append(NAMESPACE).append("\" xmlns:xi=\"")
+            .append(XINCLUDE_NAMESPACE).append("\" version=\"1.0\">\n");
+        for (int part = 0; part < XINCLUDE_PARTS; ++part) {
+            String name = size + "-part" + part + ".xml";
+            buffer.append("  <xi:include href=\"").append(name).append("\"/>\n");
+            StringBuffer partBuffer = new StringBuffer();
+            partBuffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            partBuffer.append("<section xmlns=\"").append(NAMESPACE).append("\">\n");
+            appendItems(partBuffer, count * part / XINCLUDE_PARTS, count * (part + 1) / XINCLUDE_PARTS);
+            partBuffer.append("</section>\n");
+            write(new File(directory, name), partBuffer);
+        }
+        buffer.append("</catalog>\n");
+        File main = new File(directory, size + ".xml");
+        write(main, buffer);
+        return main;
+    }
+
+    /** Returns the schema of the documents. */
+    static String schema() {
+        return
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'\n" +
+            "           xmlns:c='" + NAMESPACE + "' targetNamespace='" + NAMESPACE + "'\n" +
+            "           elementFormDefault='qualified'>\n" +
+            " <xs:element name='catalog'>\n" +
+            "  <xs:complexType>\n" +
+            "   <xs:sequence>\n" +
+            "    <xs:element ref='c:item' minOccurs='0' maxOccurs='unbounded'/>\n" +
+            "   </xs:sequence>\n" +
+            "   <xs:attribute name='version' type='xs:decimal' use='required'/>\n" +
+            "  </xs:complexType>\n" +
+            "  <xs:key name='itemKey'>\n" +
+            "   <xs:selector xpath='c:item'/>\n" +
+            "   <xs:field xpath='@id'/>\n" +
+            "  </xs:key>\n" +
+            " </xs:element>\n" +
+            " <xs:element name='item'>\n" +
+            "  <xs:complexType>\n" +
+            "   <xs:sequence>\n" +
+            "    <xs:element name='name' type='xs:string'/>\n" +
+            "    <xs:element name='description' type='c:description'/>\n" +
+            "    <xs:element name='price' type='c:price'/>\n" +
+            "    <xs:element name='added' type='xs:dateTime'/>\n" +
+            "    <xs:element name='tag' type='xs:NCName' minOccurs='0' maxOccurs='unbounded'/>\n" +
+            "   </xs:sequence>\n" +
+            "   <xs:attribute name='id' type='xs:ID' use='required'/>\n" +
+            "   <xs:attribute name='quantity' type='xs:nonNegativeInteger'/>\n" +
+            "   <xs:attribute name='code' type='c:code'/>\n" +
+            "  </xs:complexType>\n" +
+            " </xs:element>\n" +
+            " <xs:complexType name='description' mixed='true'>\n" +
+            "  <xs:sequence>\n" +
+            "   <xs:element name='em' type='xs:string' minOccurs='0' maxOccurs='unbounded'/>\n" +
+            "  </xs:sequence>\n" +
+            " </xs:complexType>\n" +
+            " <xs:complexType name='price'>\n" +
+            "  <xs:simpleContent>\n" +
+            "   <xs:extension base='xs:decimal'>\n" +
+            "    <xs:attribute name='currency' type='xs:string' use='required'/>\n" +
+            "   </xs:extension>\n" +
+            "  </xs:simpleContent>\n" +
+            " </xs:complexType>\n" +
+            " <xs:simpleType name='code'>\n" +
+            "  <xs:restriction base='xs:string'>\n" +
+            "   <xs:pattern value='[A-Z]{3}-[0-9]{6}'/>\n" +
+            "  </xs:restriction>\n" +
+            " </xs:simpleType>\n" +
+            "</xs:schema>\n";
+    }
+
+    /** Appends the items with the specified indexes. */
+    private static void appendItems(StringBuffer buffer, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            buffer.append("  <item id=\"i").append(i).append("\" quantity=\"").append(i % 97)
+                .append("\" code=\"").append((char) ('A' + i % 26)).append("BC-")
+                .append(100000 + i % 900000).append("\">\n");
+            buffer.append("    <name>Item ").append(i).append(" \u2013 caf\u00E9 cr\u00E8me</name>\n");
+            buffer.append("    <description>A <em>fine</em> item &amp; a bargain; see item ")
+                .append(i + 1).append(" for more.</description>\n");
+            buffer.append("    <price currency=\"EUR\">").append(i % 1000).append('.')
+                .append(10 + i % 90).append("</price>\n");
+            buffer.append("    <added>2012-0").append(1 + i % 9).append("-1").append(i % 10)
+                .append("T12:34:56Z</added>\n");
+            buffer.append("    <tag>t").append(i % 10).append("</tag><tag>sale</tag>\n");
+            buffer.append("  </item>\n");
+        }
+    }
+
+    private static byte[] toBytes(StringBuffer buffer) {
+        try {
+            return buffer.toString().getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    private static void write(File file, StringBuffer buffer) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(toBytes(buffer));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+} // class Corpus
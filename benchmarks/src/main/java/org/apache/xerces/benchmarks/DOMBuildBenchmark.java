@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures building a DOM with the deferred DOM
+ * (<code>DeferredDocumentImpl</code>) and the fully expanded DOM.
+ * Since the deferred DOM only creates nodes when they are first
+ * accessed, building alone and building followed by a traversal of
+ * all nodes are measured separately.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMBuildBenchmark {
+
+    /** Feature identifier: defer node expansion. */
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    @Param({"true", "false"})
+    public boolean deferred;
+
+    private byte[] fDocument;
+    private DOMParser fParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        fDocument = Corpus.document(size);
+        fParser = new DOMParser();
+        fParser.setFeature(DEFER_NODE_EXPANSION, deferred);
+    }
+
+    @Benchmark
+    public Document build() throws Exception {
+        return parse();
+    }
+
+    @Benchmark
+    public int buildAndTraverse() throws Exception {
+        return count(parse());
+    }
+
+    private Document parse() throws Exception {
+        fParser.parse(new InputSource(new ByteArrayInputStream(fDocument)));
+        Document document = fParser.getDocument();
+        fParser.dropDocumentReferences();
+        return document;
+    }
+
+    /** Returns the number of nodes in the subtree, reading the value of every attribute. */
+    private static int count(Node node) {
+        int count = 1;
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                if (attributes.item(i).getNodeValue() != null) {
+                    ++count;
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+} // class DOMBuildBenchmark
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures validating typical values of the built-in numeric and date/time
+ * datatypes, as the schema validator does for attribute values and simple
+ * element content.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatatypeBenchmark {
+
+    /** Types and a valid value for each, by name. */
+    private static final String[][] VALUES = {
+        {"int", "int", "-1234567"},
+        {"long", "long", "9007199254740993"},
+        {"decimal", "decimal", "12345.6789"},
+        {"double", "double", "1234.5678e-3"},
+        {"float", "float", "3.14159"},
+        {"dateTime", "dateTime", "2024-01-15T10:30:00.123+01:00"},
+        {"dateTimeUTC", "dateTime", "2024-01-15T10:30:00Z"},
+    };
+
+    @Param({"int", "long", "decimal", "double", "float", "dateTime", "dateTimeUTC"})
+    public String value;
+
+    private XSSimpleType fType;
+    private String fValue;
+    private ValidationState fState;
+    private ValidatedInfo fInfo;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < VALUES.length; ++i) {
+            if (VALUES[i][0].equals(value)) {
+                fType = SchemaDVFactory.getInstance().getBuiltInType(VALUES[i][1]);
+                fValue = VALUES[i][2];
+            }
+        }
+        fState = new ValidationState();
+        fState.setExtraChecking(false);
+        fInfo = new ValidatedInfo();
+    }
+
+    @Benchmark
+    public Object validate() throws InvalidDatatypeValueException {
+        return fType.validate(fValue, fState, fInfo);
+    }
+
+} // class DatatypeBenchmark
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures an edit storm on a DOM with mutation events: every item of
+ * the document gets a child element appended and removed, an attribute
+ * set and removed, and a text node appended and changed. The tree is
+ * left as it was found, so that each invocation does the same work.
+ * <p>
+ * The document has no listeners, a listener for an event which is
+ * never dispatched (which turns mutation events on), a
+ * DOMSubtreeModified listener, or DOMNodeInserted and DOMNodeRemoved
+ * listeners. The edits are made one by one or in a single mutation
+ * batch, which collapses the DOMSubtreeModified events.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutationEventBenchmark {
+
+    /** Feature identifier: defer node expansion. */
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    @Param({"small", "medium"})
+    public String size;
+
+    @Param({"none", "unrelated", "subtree", "node"})
+    public String listeners;
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    private DocumentImpl fDocument;
+    private Element[] fItems;
+    private CountingListener fListener;
+
+    @Setup
+    public void setUp() throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        parser.parse(new InputSource(new ByteArrayInputStream(Corpus.document(size))));
+        fDocument = (DocumentImpl) parser.getDocument();
+
+        NodeList items = fDocument.getElementsByTagNameNS(Corpus.NAMESPACE, "item");
+        fItems = new Element[items.getLength()];
+        for (int i = 0; i < fItems.length; ++i) {
+            fItems[i] = (Element) items.item(i);
+        }
+
+        fListener = new CountingListener();
+        EventTarget target = (EventTarget) fDocument;
+        if ("unrelated".equals(listeners)) {
+            target.addEventListener("click", fListener, false);
+        }
+        else if ("subtree".equals(listeners)) {
+            target.addEventListener("DOMSubtreeModified", fListener, false);
+        }
+        else if ("node".equals(listeners)) {
+            target.addEventListener("DOMNodeInserted", fListener, false);
+            target.addEventListener("DOMNodeRemoved", fListener, false);
+        }
+    }
+
+    @Benchmark
+    public int editStorm() {
+        fListener.count = 0;
+        if (batched) {
+            fDocument.startMutationBatch();
+        }
+        for (int i = 0; i < fItems.length; ++i) {
+            Element item = fItems[i];
+            Element note = fDocument.createElementNS(Corpus.NAMESPACE, "note");
+            item.appendChild(note);
+            note.setAttributeNS(null, "seen", "true");
+            note.appendChild(fDocument.createTextNode("edited"));
+            note.getFirstChild().setNodeValue("edited again");
+            note.removeAttributeNS(null, "seen");
+            item.removeChild(note);
+        }
+        if (batched) {
+            fDocument.endMutationBatch();
+        }
+        return fListener.count;
+    }
+
+    /** Listener which counts the events it receives. */
+    static final class CountingListener implements EventListener {
+        int count;
+        public void handleEvent(Event evt) {
+            ++count;
+        }
+    }
+
+} // class MutationEventBenchmark
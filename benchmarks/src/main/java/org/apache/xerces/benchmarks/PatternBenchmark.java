@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.impl.xpath.regex.Match;
+import org.apache.xerces.impl.xpath.regex.RegularExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures matching values against XML Schema pattern facets, as
+ * <code>XSSimpleTypeDecl</code> does, for typical patterns. The
+ * <code>automaton</code> benchmark uses the automaton the patterns are
+ * compiled to; the <code>interpreter</code> benchmark requests the match
+ * boundaries, which makes <code>RegularExpression</code> fall back to its
+ * backtracking interpreter, so that the two can be compared per pattern.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+
+    /** Patterns and a matching value for each, by name. */
+    private static final String[][] PATTERNS = {
+        {"code", "[A-Z]{2}[0-9]{2}[A-Z0-9]{1,30}", "DE89370400440532013000"},
+        {"ssn", "\\d{3}-\\d{2}-\\d{4}", "123-45-6789"},
+        {"email", "[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}", "john.smith@example.com"},
+        {"dateTime", "\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}(\\.\\d+)?(Z|[+-]\\d{2}:\\d{2})?",
+            "2024-01-15T10:30:00.123+01:00"},
+        {"name", "\\i\\c*", "some-identifier_name.v2"},
+        {"text", "[\\p{L}\\p{Nd} ]{1,64}", "Grüße aus Köln 2024"},
+        {"backtracking", "(a|ab)*c", "abababababababababababababababab"},
+    };
+
+    @Param({"code", "ssn", "email", "dateTime", "name", "text", "backtracking"})
+    public String pattern;
+
+    private RegularExpression fRegex;
+    private String fValue;
+    private Match fMatch;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PATTERNS.length; ++i) {
+            if (PATTERNS[i][0].equals(pattern)) {
+                fRegex = new RegularExpression(PATTERNS[i][1], "X");
+                fValue = PATTERNS[i][2];
+            }
+        }
+        fMatch = new Match();
+    }
+
+    @Benchmark
+    public boolean automaton() {
+        return fRegex.matches(fValue);
+    }
+
+    @Benchmark
+    public boolean interpreter() {
+        return fRegex.matches(fValue, fMatch);
+    }
+
+} // class PatternBenchmark
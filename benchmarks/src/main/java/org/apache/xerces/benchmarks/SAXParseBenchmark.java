@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures parsing with the SAX parser, which exercises the
+ * entity manager, the readers and the document scanner.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SAXParseBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private byte[] fDocument;
+    private SAXParser fParser;
+    private CountingHandler fHandler;
+
+    @Setup
+    public void setUp() throws Exception {
+        fDocument = Corpus.document(size);
+        fHandler = new CountingHandler();
+        fParser = new SAXParser();
+        fParser.setContentHandler(fHandler);
+    }
+
+    @Benchmark
+    public int parse() throws Exception {
+        fHandler.count = 0;
+        fParser.parse(new InputSource(new ByteArrayInputStream(fDocument)));
+        return fHandler.count;
+    }
+
+    /** Counts the elements and characters reported. */
+    static final class CountingHandler extends DefaultHandler {
+
+        int count;
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            count += attributes.getLength() + 1;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            count += length;
+        }
+
+    } // class CountingHandler
+
+} // class SAXParseBenchmark
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.dom.DOMOutputImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xml.serialize.DOMSerializerImpl;
+import org.apache.xml.serialize.OutputFormat;
+import org.apache.xml.serialize.XMLSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.ls.LSOutput;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures serializing a DOM to UTF-8 with the deprecated
+ * <code>XMLSerializer</code> and with the DOM Level 3
+ * <code>LSSerializer</code> implementation, <code>DOMSerializerImpl</code>.
+ * The output is counted and discarded.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    /** Feature identifier: defer node expansion. */
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private Document fDocument;
+    private CountingOutputStream fOutput;
+
+    @Setup
+    public void setUp() throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        parser.parse(new InputSource(new ByteArrayInputStream(Corpus.document(size))));
+        fDocument = parser.getDocument();
+        fOutput = new CountingOutputStream();
+    }
+
+    @Benchmark
+    public long xmlSerializer() throws Exception {
+        fOutput.count = 0;
+        OutputFormat format = new OutputFormat(fDocument, "UTF-8", false);
+        XMLSerializer serializer = new XMLSerializer(fOutput, format);
+        serializer.serialize(fDocument);
+        return fOutput.count;
+    }
+
+    @Benchmark
+    public long lsSerializer() throws Exception {
+        fOutput.count = 0;
+        DOMSerializerImpl serializer = new DOMSerializerImpl();
+        LSOutput output = new DOMOutputImpl();
+        output.setByteStream(fOutput);
+        output.setEncoding("UTF-8");
+        serializer.write(fDocument, output);
+        return fOutput.count;
+    }
+
+    /** Counts the bytes written to it and discards them. */
+    static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        public void write(int b) {
+            ++count;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+    } // class CountingOutputStream
+
+} // class SerializerBenchmark
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.parsers.XIncludeAwareParserConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures parsing a document which includes its content from
+ * <code>Corpus.XINCLUDE_PARTS</code> other documents with XInclude.
+ * The documents are written to a temporary directory, so the
+ * measurement includes opening the included files.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XIncludeBenchmark {
+
+    /** Feature identifier: XInclude processing. */
+    private static final String XINCLUDE = "http://apache.org/xml/features/xinclude";
+
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    private File fDirectory;
+    private String fSystemId;
+    private SAXParser fParser;
+    private SAXParseBenchmark.CountingHandler fHandler;
+
+    @Setup
+    public void setUp() throws Exception {
+        fDirectory = File.createTempFile("xinclude", "");
+        fDirectory.delete();
+        fDirectory.mkdir();
+        fSystemId = Corpus.writeXIncludeDocuments(size, fDirectory).toURI().toString();
+        fHandler = new SAXParseBenchmark.CountingHandler();
+        fParser = new SAXParser(new XIncludeAwareParserConfiguration());
+        fParser.setFeature(XINCLUDE, true);
+        fParser.setContentHandler(fHandler);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = fDirectory.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        fDirectory.delete();
+    }
+
+    @Benchmark
+    public int parse() throws Exception {
+        fHandler.count = 0;
+        fParser.parse(new InputSource(fSystemId));
+        return fHandler.count;
+    }
+
+} // class XIncludeBenchmark
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * An attribute of a compact document. The index of the view is the index
+ * of the attribute in the attribute tables of the document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactAttrImpl
+    extends CompactNodeImpl
+    implements Attr, TypeInfo {
+
+    //
+    // Data
+    //
+
+    /** Owner element. */
+    final int fElement;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given attribute of the given element. */
+    CompactAttrImpl(CompactDocumentImpl owner, int index, int element) {
+        super(owner, index);
+        fElement = element;
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.ATTRIBUTE_NODE;
+    }
+
+    public String getNodeName() {
+        return fOwner.getAttrName(fIndex);
+    }
+
+    public String getNodeValue() {
+        return fOwner.getAttrValue(fIndex);
+    }
+
+    public Node getParentNode() {
+        return null;
+    }
+
+    public Node getPreviousSibling() {
+        return null;
+    }
+
+    public Node getNextSibling() {
+        return null;
+    }
+
+    /** The value of an attribute is exposed as a single text node. */
+    public Node getFirstChild() {
+        return new CompactAttrTextImpl(fOwner, fIndex, fElement);
+    }
+
+    public Node getLastChild() {
+        return getFirstChild();
+    }
+
+    public boolean hasChildNodes() {
+        return true;
+    }
+
+    public String getNamespaceURI() {
+        return fOwner.fNameURI[fOwner.fAttrName[fIndex]];
+    }
+
+    public String getPrefix() {
+        return fOwner.fNamePrefix[fOwner.fAttrName[fIndex]];
+    }
+
+    public String getLocalName() {
+        return fOwner.fNameLocal[fOwner.fAttrName[fIndex]];
+    }
+
+    //
+    // NodeList methods
+    //
+
+    public int getLength() {
+        return 1;
+    }
+
+    public Node item(int index) {
+        return index == 0 ? getFirstChild() : null;
+    }
+
+    //
+    // Attr methods
+    //
+
+    public String getName() {
+        return getNodeName();
+    }
+
+    public boolean getSpecified() {
+        return (fOwner.fAttrFlags[fIndex]
+                & CompactDocumentImpl.ATTR_SPECIFIED) != 0;
+    }
+
+    public String getValue() {
+        return getNodeValue();
+    }
+
+    public void setValue(String value) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Element getOwnerElement() {
+        return (Element) fOwner.getNode(fElement);
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return this;
+    }
+
+    public boolean isId() {
+        return (fOwner.fAttrFlags[fIndex] & CompactDocumentImpl.ATTR_ID) != 0;
+    }
+
+    //
+    // TypeInfo methods
+    //
+
+    public String getTypeName() {
+        Object type = fOwner.getAttrTypeInfo(fIndex);
+        if (type != null) {
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).getName();
+            }
+            return (String) type;
+        }
+        return null;
+    }
+
+    public String getTypeNamespace() {
+        Object type = fOwner.getAttrTypeInfo(fIndex);
+        if (type != null) {
+            if (type instanceof XSSimpleTypeDecl) {
+                return ((XSSimpleTypeDecl) type).getNamespace();
+            }
+            return AttrImpl.DTD_URI;
+        }
+        return null;
+    }
+
+    public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+                                 int derivationMethod) {
+        Object type = fOwner.getAttrTypeInfo(fIndex);
+        if (type instanceof XSSimpleTypeDecl) {
+            return ((XSSimpleTypeDecl) type).isDOMDerivedFrom(
+                    typeNamespaceArg, typeNameArg, derivationMethod);
+        }
+        return false;
+    }
+
+    //
+    // Package methods
+    //
+
+    int getTreeIndex() {
+        return fElement;
+    }
+
+    boolean isAttributeView() {
+        return true;
+    }
+
+    int getNamespaceElement() {
+        return fElement;
+    }
+
+} // class CompactAttrImpl
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+
+/**
+ * The text node holding the value of an attribute of a compact document.
+ * The index of the view is the index of the attribute.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactAttrTextImpl
+    extends CompactTextImpl {
+
+    //
+    // Data
+    //
+
+    /** Owner element of the attribute. */
+    final int fElement;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the value of the given attribute. */
+    CompactAttrTextImpl(CompactDocumentImpl owner, int index, int element) {
+        super(owner, index);
+        fElement = element;
+    }
+
+    //
+    // Node methods
+    //
+
+    public Node getParentNode() {
+        return fOwner.getAttrNode(fElement, fIndex);
+    }
+
+    public Node getPreviousSibling() {
+        return null;
+    }
+
+    public Node getNextSibling() {
+        return null;
+    }
+
+    public Node getFirstChild() {
+        return null;
+    }
+
+    public Node getLastChild() {
+        return null;
+    }
+
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    //
+    // CharacterData methods
+    //
+
+    public String getData() throws DOMException {
+        return fOwner.getAttrValue(fIndex);
+    }
+
+    //
+    // Text methods
+    //
+
+    public boolean isElementContentWhitespace() {
+        return false;
+    }
+
+    public String getWholeText() {
+        return getData();
+    }
+
+    //
+    // Package methods
+    //
+
+    int getTreeIndex() {
+        return fElement;
+    }
+
+    boolean isAttributeView() {
+        return true;
+    }
+
+    int getNamespaceElement() {
+        return fElement;
+    }
+
+} // class CompactAttrTextImpl
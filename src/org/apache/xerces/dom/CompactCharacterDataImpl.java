@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Character data of a compact document. Since <code>getLength()</code>
+ * returns the length of the data, the children are returned in a separate
+ * empty node list.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public abstract class CompactCharacterDataImpl
+    extends CompactNodeImpl
+    implements CharacterData {
+
+    //
+    // Data
+    //
+
+    /** Empty child nodes. */
+    private static final NodeList EMPTY_NODE_LIST = new NodeList() {
+        public Node item(int index) { return null; }
+        public int getLength() { return 0; }
+    };
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given node. */
+    CompactCharacterDataImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public String getNodeValue() {
+        return getData();
+    }
+
+    /** Returns an empty node list. */
+    public NodeList getChildNodes() {
+        return EMPTY_NODE_LIST;
+    }
+
+    //
+    // CharacterData methods
+    //
+
+    public String getData() throws DOMException {
+        return fOwner.getNodeValue(fIndex);
+    }
+
+    public void setData(String data) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public int getLength() {
+        return getData().length();
+    }
+
+    /** Character data has no children. */
+    public Node item(int index) {
+        return null;
+    }
+
+    public String substringData(int offset, int count)
+        throws DOMException {
+
+        String data = getData();
+        int length = data.length();
+        if (count < 0 || offset < 0 || offset > length - 1) {
+            String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.DOM_DOMAIN, "INDEX_SIZE_ERR", null);
+            throw new DOMException(DOMException.INDEX_SIZE_ERR, msg);
+        }
+
+        int tailIndex = Math.min(offset + count, length);
+
+        return data.substring(offset, tailIndex);
+
+    } // substringData(int,int):String
+
+    public void appendData(String arg) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void insertData(int offset, String arg) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void deleteData(int offset, int count) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void replaceData(int offset, int count, String arg)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+} // class CompactCharacterDataImpl
@@ -0,0 +1,1161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.Hashtable;
+
+import org.apache.xerces.util.URI;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+import org.w3c.dom.traversal.TreeWalker;
+
+/**
+ * An immutable document which stores its tree in parallel arrays of
+ * primitives instead of node objects. The nodes are numbered in document
+ * order, so that the descendants of a node are the nodes that follow it
+ * up to the end of its subtree, and the nodes returned by the DOM methods
+ * are lightweight views of a position in these tables.
+ * <p>
+ * A compact document is built from a fully parsed deferred document and
+ * is intended for documents which are only queried. Any attempt to modify
+ * it raises a <code>NO_MODIFICATION_ALLOWED_ERR</code> and its nodes
+ * cannot be cloned, although they may be imported into a modifiable
+ * document. Since a node may be represented by several view objects,
+ * nodes should be compared with <code>isSameNode</code> or
+ * <code>equals</code> rather than with the identity operator. For the
+ * same reason, XPath processors which look nodes up by identity, such as
+ * the one of the JDK, only accept the document itself as the context node
+ * and cannot find the elements selected by the <code>id()</code> function.
+ * <p>
+ * Node iterators and tree walkers are supported. Since the tree never
+ * changes, the iterators need not be registered with the document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactDocumentImpl
+    extends CompactNodeImpl
+    implements Document, DocumentTraversal {
+
+    //
+    // Constants
+    //
+
+    /** Mask of the node type in the type table. */
+    static final int TYPE_MASK = 0x1F;
+
+    /** Flag of ignorable whitespace text in the type table. */
+    static final int WHITESPACE = 0x20;
+
+    /** Flag of specified attributes. */
+    static final int ATTR_SPECIFIED = 0x01;
+
+    /** Flag of ID attributes. */
+    static final int ATTR_ID = 0x02;
+
+    /** Index of the public identifier in a declaration. */
+    static final int DECL_PUBLIC_ID = 0;
+
+    /** Index of the system identifier in a declaration. */
+    static final int DECL_SYSTEM_ID = 1;
+
+    /** Index of the base URI in a declaration. */
+    static final int DECL_BASE_URI = 2;
+
+    /** Index of the internal subset or the notation name. */
+    static final int DECL_EXTRA = 3;
+
+    /** Index of the XML version of an entity. */
+    static final int DECL_XML_VERSION = 4;
+
+    /** Index of the XML encoding of an entity. */
+    static final int DECL_XML_ENCODING = 5;
+
+    /** Index of the input encoding of an entity. */
+    static final int DECL_INPUT_ENCODING = 6;
+
+    /** Initial size of the tables. */
+    private static final int INITIAL_SIZE = 64;
+
+    //
+    // Data
+    //
+
+    // node tables
+
+    /** Number of nodes. */
+    int fNodeCount;
+
+    /** Node types and flags. */
+    byte[] fNodeType;
+
+    /** Parent of each node, or -1. */
+    int[] fNodeParent;
+
+    /** Index following the subtree of each node. */
+    int[] fNodeEnd;
+
+    /** Previous sibling of each node, or -1. */
+    int[] fNodePrevSib;
+
+    /** Name of each node, as an index in the name table. */
+    int[] fNodeName;
+
+    /** Start of the value of each node in the character table. */
+    int[] fNodeText;
+
+    /** Start of the attributes of each element in the attribute table. */
+    int[] fNodeAttr;
+
+    /** Type information of elements, or null if there is none. */
+    Object[] fNodeTypeInfo;
+
+    /** Characters of the node values. */
+    char[] fChars;
+
+    /** Number of characters of the node values. */
+    private int fCharCount;
+
+    // attribute tables
+
+    /** Number of attributes. */
+    int fAttrCount;
+
+    /** Name of each attribute, as an index in the name table. */
+    int[] fAttrName;
+
+    /** Start of the value of each attribute in the character table. */
+    int[] fAttrText;
+
+    /** Flags of each attribute. */
+    byte[] fAttrFlags;
+
+    /** Type information of attributes, or null if there is none. */
+    Object[] fAttrTypeInfo;
+
+    /** Characters of the attribute values. */
+    char[] fAttrChars;
+
+    /** Number of characters of the attribute values. */
+    private int fAttrCharCount;
+
+    // name table
+
+    /** Number of names. */
+    int fNameCount;
+
+    /** Qualified names. */
+    String[] fNameQName;
+
+    /** Local names. */
+    String[] fNameLocal;
+
+    /** Prefixes. */
+    String[] fNamePrefix;
+
+    /** Namespace URIs. */
+    String[] fNameURI;
+
+    /** Hash buckets of the name table. */
+    private int[] fNameBuckets;
+
+    /** Next name in the same bucket. */
+    private int[] fNameNext;
+
+    // document data
+
+    /** True if the document was built with namespace processing. */
+    final boolean fNamespaces;
+
+    /** Index of the document type, or -1. */
+    int fDocType = -1;
+
+    /** Index of the document element, or -1. */
+    int fDocElement = -1;
+
+    /** Declarations of the document type, entities, notations and references. */
+    private final Hashtable fDecls = new Hashtable();
+
+    /** Entities sorted by name, or null if not yet collected. */
+    private int[] fEntities;
+
+    /** Notations sorted by name, or null if not yet collected. */
+    private int[] fNotations;
+
+    /** Elements by identifier. */
+    private final Hashtable fIds = new Hashtable();
+
+    /** User data of the nodes. */
+    private Hashtable fUserData;
+
+    /** Configuration. */
+    private DOMConfiguration fConfiguration;
+
+    /** XML encoding. */
+    private final String fXmlEncoding;
+
+    /** Input encoding. */
+    private final String fInputEncoding;
+
+    /** XML version. */
+    private final String fXmlVersion;
+
+    /** XML standalone. */
+    private final boolean fXmlStandalone;
+
+    /** Document URI. */
+    private final String fDocumentURI;
+
+    // temporary data
+
+    /** Attributes of the element being built. */
+    private int[] fTempAttrs = new int[8];
+
+    /** Names of the attributes of the element being built. */
+    private String[] fTempNames = new String[8];
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Builds a compact document from the content of the given deferred
+     * document. The deferred document is not usable anymore afterwards.
+     */
+    public CompactDocumentImpl(DeferredDocumentImpl document) {
+        super(null, 0);
+        fNamespaces = document.getNamespacesEnabled();
+        fXmlEncoding = document.encoding;
+        fInputEncoding = document.actualEncoding;
+        fXmlVersion = document.version;
+        fXmlStandalone = document.standalone;
+        fDocumentURI = document.fDocumentURI;
+        build(document);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.DOCUMENT_NODE;
+    }
+
+    public String getNodeName() {
+        return "#document";
+    }
+
+    public Document getOwnerDocument() {
+        return null;
+    }
+
+    public String getTextContent() throws DOMException {
+        return null;
+    }
+
+    public String getBaseURI() {
+        return resolveURI(fDocumentURI);
+    }
+
+    public boolean isEqualNode(Node arg) {
+        if (!super.isEqualNode(arg)) {
+            return false;
+        }
+        DocumentType docType1 = getDoctype();
+        DocumentType docType2 = ((Document) arg).getDoctype();
+        if (docType1 == null || docType2 == null) {
+            return docType1 == docType2;
+        }
+        return docType1.isEqualNode(docType2);
+    }
+
+    //
+    // Document methods
+    //
+
+    public DocumentType getDoctype() {
+        return (DocumentType) getNode(fDocType);
+    }
+
+    public DOMImplementation getImplementation() {
+        return DOMImplementationImpl.getDOMImplementation();
+    }
+
+    public Element getDocumentElement() {
+        return (Element) getNode(fDocElement);
+    }
+
+    public Element createElement(String tagName) throws DOMException {
+        throw notSupported();
+    }
+
+    public DocumentFragment createDocumentFragment() {
+        throw notSupported();
+    }
+
+    public Text createTextNode(String data) {
+        throw notSupported();
+    }
+
+    public Comment createComment(String data) {
+        throw notSupported();
+    }
+
+    public CDATASection createCDATASection(String data)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public ProcessingInstruction createProcessingInstruction(String target,
+                                                             String data)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public Attr createAttribute(String name) throws DOMException {
+        throw notSupported();
+    }
+
+    public EntityReference createEntityReference(String name)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public NodeList getElementsByTagName(String tagname) {
+        return new CompactElementListImpl(this, 0, tagname);
+    }
+
+    public Node importNode(Node importedNode, boolean deep)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public Element createElementNS(String namespaceURI,
+                                   String qualifiedName)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public Attr createAttributeNS(String namespaceURI, String qualifiedName)
+        throws DOMException {
+        throw notSupported();
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI,
+                                           String localName) {
+        return new CompactElementListImpl(this, 0, namespaceURI, localName);
+    }
+
+    public Element getElementById(String elementId) {
+        Integer element = (Integer) fIds.get(elementId);
+        return element != null
+            ? (Element) getNode(element.intValue()) : null;
+    }
+
+    public String getInputEncoding() {
+        return fInputEncoding;
+    }
+
+    public String getXmlEncoding() {
+        return fXmlEncoding;
+    }
+
+    public boolean getXmlStandalone() {
+        return fXmlStandalone;
+    }
+
+    public void setXmlStandalone(boolean xmlStandalone)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public String getXmlVersion() {
+        return fXmlVersion != null ? fXmlVersion : "1.0";
+    }
+
+    public void setXmlVersion(String xmlVersion) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    /** Error checking is irrelevant, since the document is read-only. */
+    public boolean getStrictErrorChecking() {
+        return true;
+    }
+
+    public void setStrictErrorChecking(boolean strictErrorChecking) {
+    }
+
+    public String getDocumentURI() {
+        return fDocumentURI;
+    }
+
+    public void setDocumentURI(String documentURI) {
+        throw noModificationAllowed();
+    }
+
+    public Node adoptNode(Node source) throws DOMException {
+        throw notSupported();
+    }
+
+    public DOMConfiguration getDomConfig() {
+        if (fConfiguration == null) {
+            fConfiguration = new DOMConfigurationImpl();
+        }
+        return fConfiguration;
+    }
+
+    /** The document is already normalized. */
+    public void normalizeDocument() {
+    }
+
+    public Node renameNode(Node n, String namespaceURI, String qualifiedName)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    //
+    // DocumentTraversal methods
+    //
+
+    public NodeIterator createNodeIterator(Node root, int whatToShow,
+                                           NodeFilter filter,
+                                           boolean entityReferenceExpansion)
+        throws DOMException {
+        if (root == null) {
+            throw notSupported();
+        }
+        return new NodeIteratorImpl(null, root, whatToShow, filter,
+                                    entityReferenceExpansion);
+    }
+
+    public TreeWalker createTreeWalker(Node root, int whatToShow,
+                                       NodeFilter filter,
+                                       boolean entityReferenceExpansion)
+        throws DOMException {
+        if (root == null) {
+            throw notSupported();
+        }
+        return new TreeWalkerImpl(root, whatToShow, filter,
+                                  entityReferenceExpansion);
+    }
+
+    //
+    // Package methods
+    //
+
+    int getNamespaceElement() {
+        return fDocElement;
+    }
+
+    /** Returns a view of the given node, or null if the index is -1. */
+    CompactNodeImpl getNode(int node) {
+        if (node <= 0) {
+            return node == 0 ? this : null;
+        }
+        switch (fNodeType[node] & TYPE_MASK) {
+            case Node.ELEMENT_NODE:
+                return new CompactElementImpl(this, node);
+            case Node.TEXT_NODE:
+                return new CompactTextImpl(this, node);
+            case Node.CDATA_SECTION_NODE:
+                return new CompactCDATASectionImpl(this, node);
+            case Node.ENTITY_REFERENCE_NODE:
+                return new CompactEntityReferenceImpl(this, node);
+            case Node.ENTITY_NODE:
+                return new CompactEntityImpl(this, node);
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                return new CompactProcessingInstructionImpl(this, node);
+            case Node.COMMENT_NODE:
+                return new CompactCommentImpl(this, node);
+            case Node.DOCUMENT_TYPE_NODE:
+                return new CompactDocumentTypeImpl(this, node);
+            case Node.NOTATION_NODE:
+                return new CompactNotationImpl(this, node);
+        }
+        return null;
+    } // getNode(int):CompactNodeImpl
+
+    /** Returns a view of the given attribute of the given element. */
+    CompactAttrImpl getAttrNode(int element, int attr) {
+        return attr != -1 ? new CompactAttrImpl(this, attr, element) : null;
+    }
+
+    /** Returns the type of the given node. */
+    short getNodeType(int node) {
+        return (short) (fNodeType[node] & TYPE_MASK);
+    }
+
+    /** Returns the qualified name of the given node. */
+    String getNodeName(int node) {
+        return fNameQName[fNodeName[node]];
+    }
+
+    /** Returns the value of the given node. */
+    String getNodeValue(int node) {
+        int start = fNodeText[node];
+        return new String(fChars, start, fNodeText[node + 1] - start);
+    }
+
+    /** Returns true if the given text node is ignorable whitespace. */
+    boolean isIgnorableWhitespace(int node) {
+        return (fNodeType[node] & WHITESPACE) != 0;
+    }
+
+    /** Returns the first child of the given node, or -1. */
+    int getFirstChild(int node) {
+        switch (fNodeType[node] & TYPE_MASK) {
+            case Node.DOCUMENT_NODE:
+            case Node.ELEMENT_NODE:
+            case Node.ENTITY_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                return fNodeEnd[node] > node + 1 ? node + 1 : -1;
+        }
+        return -1;
+    }
+
+    /** Returns the last child of the given node, or -1. */
+    int getLastChild(int node) {
+        int child = getFirstChild(node);
+        if (child != -1) {
+            int end = fNodeEnd[node];
+            while (fNodeEnd[child] < end) {
+                child = fNodeEnd[child];
+            }
+        }
+        return child;
+    }
+
+    /** Returns the next sibling of the given node, or -1. */
+    int getNextSibling(int node) {
+        int parent = fNodeParent[node];
+        if (parent == -1) {
+            return -1;
+        }
+        int next = fNodeEnd[node];
+        return next < fNodeEnd[parent] ? next : -1;
+    }
+
+    /** Returns the nearest element ancestor of the given node, or -1. */
+    int getElementAncestor(int node) {
+        int parent = fNodeParent[node];
+        while (parent != -1
+               && (fNodeType[parent] & TYPE_MASK) != Node.ELEMENT_NODE) {
+            parent = fNodeParent[parent];
+        }
+        return parent;
+    }
+
+    /**
+     * Appends the text content of the descendants of the given node to
+     * the buffer, leaving out comments, processing instructions and
+     * ignorable whitespace.
+     */
+    void getTextContent(int node, StringBuffer buffer) {
+        int end = fNodeEnd[node];
+        for (int i = node + 1; i < end; i++) {
+            int type = fNodeType[i];
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                int start = fNodeText[i];
+                buffer.append(fChars, start, fNodeText[i + 1] - start);
+            }
+        }
+    }
+
+    /** Returns the declaration data of the given node. */
+    String[] getDecl(int node) {
+        return (String[]) fDecls.get(new Integer(node));
+    }
+
+    /**
+     * Returns the entities or the notations of the document type, sorted
+     * by name.
+     */
+    int[] getDeclarations(short type) {
+        int[] nodes = type == Node.ENTITY_NODE ? fEntities : fNotations;
+        if (nodes == null) {
+            int count = 0;
+            nodes = new int[8];
+            int end = fDocType != -1 ? fNodeEnd[fDocType] : -1;
+            for (int node = fDocType + 1; node < end; node++) {
+                if (fNodeType[node] == type && fNodeParent[node] == -1) {
+                    if (count == nodes.length) {
+                        nodes = resize(nodes, count * 2);
+                    }
+                    String name = getNodeName(node);
+                    int position = count++;
+                    while (position > 0 && name.compareTo(
+                               getNodeName(nodes[position - 1])) < 0) {
+                        nodes[position] = nodes[position - 1];
+                        position--;
+                    }
+                    nodes[position] = node;
+                }
+            }
+            nodes = resize(nodes, count);
+            if (type == Node.ENTITY_NODE) {
+                fEntities = nodes;
+            }
+            else {
+                fNotations = nodes;
+            }
+        }
+        return nodes;
+    } // getDeclarations(short):int[]
+
+    /** Returns the type information of the given element. */
+    Object getTypeInfo(int node) {
+        return fNodeTypeInfo != null ? fNodeTypeInfo[node] : null;
+    }
+
+    /** Returns the qualified name of the given attribute. */
+    String getAttrName(int attr) {
+        return fNameQName[fAttrName[attr]];
+    }
+
+    /** Returns the value of the given attribute. */
+    String getAttrValue(int attr) {
+        int start = fAttrText[attr];
+        return new String(fAttrChars, start, fAttrText[attr + 1] - start);
+    }
+
+    /** Returns the type information of the given attribute. */
+    Object getAttrTypeInfo(int attr) {
+        return fAttrTypeInfo != null ? fAttrTypeInfo[attr] : null;
+    }
+
+    /** Returns the attribute of an element with the given name, or -1. */
+    int getAttribute(int element, String name) {
+        int low = fNodeAttr[element];
+        int high = fNodeAttr[element + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = name.compareTo(fNameQName[fAttrName[middle]]);
+            if (c == 0) {
+                return middle;
+            }
+            if (c < 0) {
+                high = middle - 1;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return -1;
+    } // getAttribute(int,String):int
+
+    /**
+     * Returns the attribute of an element with the given namespace and
+     * local name, or -1.
+     */
+    int getAttributeNS(int element, String namespaceURI, String localName) {
+        if (namespaceURI != null && namespaceURI.length() == 0) {
+            namespaceURI = null;
+        }
+        int end = fNodeAttr[element + 1];
+        for (int attr = fNodeAttr[element]; attr < end; attr++) {
+            int name = fAttrName[attr];
+            String local = fNameLocal[name];
+            if (local == null) {
+                // DOM Level 1 attributes only match their name
+                local = fNameQName[name];
+            }
+            if (local.equals(localName)
+                && equals(namespaceURI, fNameURI[name])) {
+                return attr;
+            }
+        }
+        return -1;
+    } // getAttributeNS(int,String,String):int
+
+    /**
+     * Returns the table holding the user data of the given node. An empty
+     * table is removed, or created if <code>create</code> is true.
+     */
+    Hashtable getUserDataTable(CompactNodeImpl node, boolean create) {
+        if (fUserData == null) {
+            if (!create) {
+                return null;
+            }
+            fUserData = new Hashtable();
+        }
+        Hashtable t = (Hashtable) fUserData.get(node);
+        if (t == null) {
+            if (create) {
+                t = new Hashtable();
+                fUserData.put(node, t);
+            }
+        }
+        else if (t.isEmpty() && !create) {
+            fUserData.remove(node);
+        }
+        return t;
+    } // getUserDataTable(CompactNodeImpl,boolean):Hashtable
+
+    /** Resolves a base URI, returning null if it is malformed. */
+    static String resolveURI(String uri) {
+        if (uri != null && uri.length() != 0) {
+            try {
+                return new URI(uri).toString();
+            }
+            catch (URI.MalformedURIException e) {
+                // REVISIT: what should happen in this case?
+                return null;
+            }
+        }
+        return uri;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Builds the tables from the given deferred document. */
+    private void build(DeferredDocumentImpl document) {
+
+        // allocate tables
+        fNodeType = new byte[INITIAL_SIZE];
+        fNodeParent = new int[INITIAL_SIZE];
+        fNodeEnd = new int[INITIAL_SIZE];
+        fNodePrevSib = new int[INITIAL_SIZE];
+        fNodeName = new int[INITIAL_SIZE];
+        fNodeText = new int[INITIAL_SIZE + 1];
+        fNodeAttr = new int[INITIAL_SIZE + 1];
+        fChars = new char[INITIAL_SIZE * 8];
+        fAttrName = new int[INITIAL_SIZE];
+        fAttrText = new int[INITIAL_SIZE + 1];
+        fAttrFlags = new byte[INITIAL_SIZE];
+        fAttrChars = new char[INITIAL_SIZE * 8];
+        fNameQName = new String[INITIAL_SIZE];
+        fNameLocal = new String[INITIAL_SIZE];
+        fNamePrefix = new String[INITIAL_SIZE];
+        fNameURI = new String[INITIAL_SIZE];
+        fNameNext = new int[INITIAL_SIZE];
+        fNameBuckets = new int[INITIAL_SIZE];
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            fNameBuckets[i] = -1;
+        }
+
+        // Walk the deferred tree in document order. The stack holds pairs
+        // of deferred node and parent; a negative node marks the end of
+        // the subtree of a node. While a node is open, its end holds the
+        // index of its last child.
+        int[] stack = new int[32];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = -1;
+        boolean inDoctype = false;
+        while (top > 0) {
+            int parent = stack[--top];
+            int deferred = stack[--top];
+            if (deferred < 0) {
+                int node = ~deferred;
+                fNodeEnd[node] = fNodeCount;
+                if (node == fDocType) {
+                    inDoctype = false;
+                }
+                continue;
+            }
+
+            // add node
+            int type = document.getNodeType(deferred, false);
+            int node = fNodeCount;
+            ensureNodeCapacity(node + 1);
+            fNodeCount++;
+            fNodeText[node] = fCharCount;
+            fNodeAttr[node] = fAttrCount;
+            fNodeEnd[node] = -1;
+            if (type == Node.ENTITY_NODE || type == Node.NOTATION_NODE) {
+                fNodeParent[node] = -1;
+                fNodePrevSib[node] = -1;
+            }
+            else {
+                fNodeParent[node] = parent;
+                if (parent != -1) {
+                    fNodePrevSib[node] = fNodeEnd[parent];
+                    fNodeEnd[parent] = node;
+                }
+                else {
+                    fNodePrevSib[node] = -1;
+                }
+            }
+            byte flags = (byte) type;
+            String name = null;
+            String uri = null;
+            String[] decl = null;
+            switch (type) {
+                case Node.ELEMENT_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    uri = document.getNodeURI(deferred, true);
+                    if (fNamespaces) {
+                        Object typeInfo = document.getTypeInfo(deferred);
+                        if (typeInfo != null) {
+                            if (fNodeTypeInfo == null) {
+                                fNodeTypeInfo = new Object[fNodeType.length];
+                            }
+                            fNodeTypeInfo[node] = typeInfo;
+                        }
+                    }
+                    if (fDocElement == -1 && parent == 0) {
+                        fDocElement = node;
+                    }
+                    addAttributes(document, deferred, node, !inDoctype);
+                    break;
+                }
+                case Node.TEXT_NODE: {
+                    addText(document.getNodeValueString(deferred, true));
+                    if (document.getNodeExtra(deferred, false) == 1) {
+                        flags |= WHITESPACE;
+                    }
+                    break;
+                }
+                case Node.CDATA_SECTION_NODE:
+                case Node.COMMENT_NODE: {
+                    addText(document.getNodeValueString(deferred, true));
+                    break;
+                }
+                case Node.PROCESSING_INSTRUCTION_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    addText(document.getNodeValueString(deferred, true));
+                    break;
+                }
+                case Node.DOCUMENT_TYPE_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    decl = new String[DECL_EXTRA + 1];
+                    decl[DECL_PUBLIC_ID] = document.getNodeValue(deferred, true);
+                    decl[DECL_SYSTEM_ID] = document.getNodeURI(deferred, true);
+                    int extra = document.getNodeExtra(deferred, false);
+                    decl[DECL_EXTRA] = document.getNodeValue(extra, true);
+                    fDocType = node;
+                    inDoctype = true;
+                    break;
+                }
+                case Node.ENTITY_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    decl = new String[DECL_INPUT_ENCODING + 1];
+                    decl[DECL_PUBLIC_ID] = document.getNodeValue(deferred, true);
+                    decl[DECL_SYSTEM_ID] = document.getNodeURI(deferred, true);
+                    int extra = document.getNodeExtra(deferred, false);
+                    decl[DECL_EXTRA] = document.getNodeName(extra, true);
+                    decl[DECL_XML_VERSION] = document.getNodeValue(extra, true);
+                    decl[DECL_XML_ENCODING] = document.getNodeURI(extra, true);
+                    int extra2 = document.getNodeExtra(extra, false);
+                    decl[DECL_BASE_URI] = document.getNodeName(extra2, true);
+                    decl[DECL_INPUT_ENCODING] = document.getNodeValue(extra2, true);
+                    break;
+                }
+                case Node.NOTATION_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    decl = new String[DECL_BASE_URI + 1];
+                    decl[DECL_PUBLIC_ID] = document.getNodeValue(deferred, true);
+                    decl[DECL_SYSTEM_ID] = document.getNodeURI(deferred, true);
+                    int extra = document.getNodeExtra(deferred, false);
+                    decl[DECL_BASE_URI] = document.getNodeName(extra, true);
+                    break;
+                }
+                case Node.ENTITY_REFERENCE_NODE: {
+                    name = document.getNodeName(deferred, true);
+                    decl = new String[DECL_BASE_URI + 1];
+                    decl[DECL_BASE_URI] = document.getNodeValue(deferred, true);
+                    break;
+                }
+            }
+            fNodeType[node] = flags;
+            fNodeName[node] = name != null ? addName(name, uri) : -1;
+            if (decl != null) {
+                fDecls.put(new Integer(node), decl);
+            }
+
+            // push the end of the subtree, then the children in reverse
+            // order so that the first child is visited first
+            if (top + 2 > stack.length) {
+                stack = resize(stack, stack.length * 2);
+            }
+            stack[top++] = ~node;
+            stack[top++] = 0;
+            if (type == Node.DOCUMENT_NODE || type == Node.ELEMENT_NODE
+                || type == Node.ENTITY_NODE
+                || type == Node.ENTITY_REFERENCE_NODE
+                || type == Node.DOCUMENT_TYPE_NODE) {
+                for (int child = document.getLastChild(deferred, false);
+                     child != -1;
+                     child = document.getPrevSibling(child, false)) {
+                    int childType = document.getNodeType(child, false);
+                    if (childType > Node.NOTATION_NODE
+                        || (type == Node.DOCUMENT_TYPE_NODE
+                            && childType != Node.ENTITY_NODE
+                            && childType != Node.NOTATION_NODE)) {
+                        // skip internal nodes of the deferred document
+                        continue;
+                    }
+                    if (top + 2 > stack.length) {
+                        stack = resize(stack, stack.length * 2);
+                    }
+                    stack[top++] = child;
+                    stack[top++] = node;
+                }
+            }
+        }
+        fNodeText[fNodeCount] = fCharCount;
+        fNodeAttr[fNodeCount] = fAttrCount;
+        fAttrText[fAttrCount] = fAttrCharCount;
+
+        // trim tables
+        fNodeType = resize(fNodeType, fNodeCount);
+        fNodeParent = resize(fNodeParent, fNodeCount);
+        fNodeEnd = resize(fNodeEnd, fNodeCount);
+        fNodePrevSib = resize(fNodePrevSib, fNodeCount);
+        fNodeName = resize(fNodeName, fNodeCount);
+        fNodeText = resize(fNodeText, fNodeCount + 1);
+        fNodeAttr = resize(fNodeAttr, fNodeCount + 1);
+        if (fNodeTypeInfo != null) {
+            fNodeTypeInfo = resize(fNodeTypeInfo, fNodeCount);
+        }
+        fChars = resize(fChars, fCharCount);
+        fAttrName = resize(fAttrName, fAttrCount);
+        fAttrText = resize(fAttrText, fAttrCount + 1);
+        fAttrFlags = resize(fAttrFlags, fAttrCount);
+        if (fAttrTypeInfo != null) {
+            fAttrTypeInfo = resize(fAttrTypeInfo, fAttrCount);
+        }
+        fAttrChars = resize(fAttrChars, fAttrCharCount);
+        fNameQName = resize(fNameQName, fNameCount);
+        fNameLocal = resize(fNameLocal, fNameCount);
+        fNamePrefix = resize(fNamePrefix, fNameCount);
+        fNameURI = resize(fNameURI, fNameCount);
+        fNameBuckets = null;
+        fNameNext = null;
+        fTempAttrs = null;
+        fTempNames = null;
+
+    } // build(DeferredDocumentImpl)
+
+    /**
+     * Adds the attributes of the given deferred element, sorted by name
+     * like the attributes of the other DOM implementations.
+     */
+    private void addAttributes(DeferredDocumentImpl document, int deferred,
+                               int node, boolean registerIds) {
+
+        // collect and sort attributes
+        int count = 0;
+        for (int attr = document.getNodeExtra(deferred, false); attr != -1;
+             attr = document.getPrevSibling(attr, false)) {
+            if (count == fTempAttrs.length) {
+                fTempAttrs = resize(fTempAttrs, count * 2);
+                fTempNames = resize(fTempNames, count * 2);
+            }
+            String name = document.getNodeName(attr, true);
+            int position = count++;
+            while (position > 0
+                   && name.compareTo(fTempNames[position - 1]) < 0) {
+                fTempAttrs[position] = fTempAttrs[position - 1];
+                fTempNames[position] = fTempNames[position - 1];
+                position--;
+            }
+            fTempAttrs[position] = attr;
+            fTempNames[position] = name;
+        }
+
+        // add attributes
+        ensureAttrCapacity(fAttrCount + count);
+        for (int i = 0; i < count; i++) {
+            int attr = fTempAttrs[i];
+            int index = fAttrCount++;
+            fAttrName[index] = addName(fTempNames[i],
+                                       document.getNodeURI(attr, true));
+            fTempNames[i] = null;
+            String value = document.getNodeValueString(attr, true);
+            fAttrText[index] = fAttrCharCount;
+            int length = value.length();
+            if (fAttrCharCount + length > fAttrChars.length) {
+                fAttrChars = resize(fAttrChars,
+                                    Math.max(fAttrChars.length * 2,
+                                             fAttrCharCount + length));
+            }
+            value.getChars(0, length, fAttrChars, fAttrCharCount);
+            fAttrCharCount += length;
+            int extra = document.getNodeExtra(attr, false);
+            byte flags = 0;
+            if ((extra & NodeImpl.SPECIFIED) != 0) {
+                flags |= ATTR_SPECIFIED;
+            }
+            if ((extra & NodeImpl.ID) != 0) {
+                flags |= ATTR_ID;
+                if (registerIds) {
+                    fIds.put(value, new Integer(node));
+                }
+            }
+            fAttrFlags[index] = flags;
+            Object typeInfo =
+                document.getTypeInfo(document.getLastChild(attr, false));
+            if (typeInfo != null) {
+                if (fAttrTypeInfo == null) {
+                    fAttrTypeInfo = new Object[fAttrName.length];
+                }
+                fAttrTypeInfo[index] = typeInfo;
+            }
+        }
+
+    } // addAttributes(DeferredDocumentImpl,int,int,boolean)
+
+    /** Adds a node value. */
+    private void addText(String value) {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        if (fCharCount + length > fChars.length) {
+            fChars = resize(fChars, Math.max(fChars.length * 2,
+                                             fCharCount + length));
+        }
+        value.getChars(0, length, fChars, fCharCount);
+        fCharCount += length;
+    }
+
+    /** Returns the index of the given name, adding it if needed. */
+    private int addName(String qname, String uri) {
+        int hash = qname.hashCode() & 0x7FFFFFFF;
+        int bucket = hash % fNameBuckets.length;
+        for (int name = fNameBuckets[bucket]; name != -1;
+             name = fNameNext[name]) {
+            if (qname.equals(fNameQName[name])
+                && equals(uri, fNameURI[name])) {
+                return name;
+            }
+        }
+        int name = fNameCount++;
+        if (name == fNameQName.length) {
+            int size = name * 2;
+            fNameQName = resize(fNameQName, size);
+            fNameLocal = resize(fNameLocal, size);
+            fNamePrefix = resize(fNamePrefix, size);
+            fNameURI = resize(fNameURI, size);
+            fNameNext = resize(fNameNext, size);
+
+            // rehash
+            fNameBuckets = new int[size];
+            for (int i = 0; i < size; i++) {
+                fNameBuckets[i] = -1;
+            }
+            for (int i = 0; i < name; i++) {
+                int b = (fNameQName[i].hashCode() & 0x7FFFFFFF) % size;
+                fNameNext[i] = fNameBuckets[b];
+                fNameBuckets[b] = i;
+            }
+            bucket = hash % size;
+        }
+        fNameQName[name] = qname;
+        fNameURI[name] = uri;
+        if (fNamespaces) {
+            int index = qname.indexOf(':');
+            if (index < 0) {
+                fNameLocal[name] = qname;
+            }
+            else {
+                fNamePrefix[name] = qname.substring(0, index);
+                fNameLocal[name] = qname.substring(index + 1);
+            }
+        }
+        fNameNext[name] = fNameBuckets[bucket];
+        fNameBuckets[bucket] = name;
+        return name;
+    } // addName(String,String):int
+
+    /** Ensures that the node tables can hold the given number of nodes. */
+    private void ensureNodeCapacity(int count) {
+        if (count <= fNodeType.length) {
+            return;
+        }
+        int size = fNodeType.length * 2;
+        fNodeType = resize(fNodeType, size);
+        fNodeParent = resize(fNodeParent, size);
+        fNodeEnd = resize(fNodeEnd, size);
+        fNodePrevSib = resize(fNodePrevSib, size);
+        fNodeName = resize(fNodeName, size);
+        fNodeText = resize(fNodeText, size + 1);
+        fNodeAttr = resize(fNodeAttr, size + 1);
+        if (fNodeTypeInfo != null) {
+            fNodeTypeInfo = resize(fNodeTypeInfo, size);
+        }
+    }
+
+    /**
+     * Ensures that the attribute tables can hold the given number of
+     * attributes.
+     */
+    private void ensureAttrCapacity(int count) {
+        if (count <= fAttrName.length) {
+            return;
+        }
+        int size = Math.max(fAttrName.length * 2, count);
+        fAttrName = resize(fAttrName, size);
+        fAttrText = resize(fAttrText, size + 1);
+        fAttrFlags = resize(fAttrFlags, size);
+        if (fAttrTypeInfo != null) {
+            fAttrTypeInfo = resize(fAttrTypeInfo, size);
+        }
+    }
+
+    private static byte[] resize(byte[] array, int size) {
+        byte[] newArray = new byte[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    }
+
+    private static char[] resize(char[] array, int size) {
+        char[] newArray = new char[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    }
+
+    private static int[] resize(int[] array, int size) {
+        int[] newArray = new int[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    }
+
+    private static String[] resize(String[] array, int size) {
+        String[] newArray = new String[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    }
+
+    private static Object[] resize(Object[] array, int size) {
+        Object[] newArray = new Object[size];
+        System.arraycopy(array, 0, newArray, 0, Math.min(array.length, size));
+        return newArray;
+    }
+
+} // class CompactDocumentImpl
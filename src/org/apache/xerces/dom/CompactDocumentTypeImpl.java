@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The document type of a compact document. The entities and notations
+ * follow the document type in the node tables but are not its children.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactDocumentTypeImpl
+    extends CompactNodeImpl
+    implements DocumentType {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given document type. */
+    CompactDocumentTypeImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.DOCUMENT_TYPE_NODE;
+    }
+
+    public boolean isEqualNode(Node arg) {
+        if (!super.isEqualNode(arg)) {
+            return false;
+        }
+        DocumentType argDocType = (DocumentType) arg;
+
+        // test if the following string attributes are equal: publicId,
+        // systemId, internalSubset.
+        if (!equals(getPublicId(), argDocType.getPublicId())
+            || !equals(getSystemId(), argDocType.getSystemId())
+            || !equals(getInternalSubset(), argDocType.getInternalSubset())) {
+            return false;
+        }
+
+        // test if NamedNodeMaps entities and notations are equal
+        return isEqualMap(getEntities(), argDocType.getEntities())
+            && isEqualMap(getNotations(), argDocType.getNotations());
+    }
+
+    //
+    // DocumentType methods
+    //
+
+    public String getName() {
+        return getNodeName();
+    }
+
+    public NamedNodeMap getEntities() {
+        return new CompactNamedNodeMapImpl(fOwner,
+            fOwner.getDeclarations(Node.ENTITY_NODE));
+    }
+
+    public NamedNodeMap getNotations() {
+        return new CompactNamedNodeMapImpl(fOwner,
+            fOwner.getDeclarations(Node.NOTATION_NODE));
+    }
+
+    public String getPublicId() {
+        return fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_PUBLIC_ID];
+    }
+
+    public String getSystemId() {
+        return fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_SYSTEM_ID];
+    }
+
+    public String getInternalSubset() {
+        return fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_EXTRA];
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Compares two maps of entities or notations. */
+    private static boolean isEqualMap(NamedNodeMap map1, NamedNodeMap map2) {
+        if (map2 == null) {
+            return map1.getLength() == 0;
+        }
+        int length = map1.getLength();
+        if (length != map2.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            Node node1 = map1.item(i);
+            Node node2 = map2.getNamedItem(node1.getNodeName());
+            if (node2 == null || !node1.isEqualNode(node2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+} // class CompactDocumentTypeImpl
@@ -0,0 +1,579 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.util.URI;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Element;
+import org.w3c.dom.ElementTraversal;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * An element of a compact document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactElementImpl
+    extends CompactNodeImpl
+    implements Element, ElementTraversal, TypeInfo {
+
+    //
+    // Constants
+    //
+
+    /** The namespace bound to the xml prefix. */
+    private static final String XML_URI =
+        "http://www.w3.org/XML/1998/namespace";
+
+    /** The namespace bound to the xmlns prefix. */
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given element. */
+    CompactElementImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.ELEMENT_NODE;
+    }
+
+    public NamedNodeMap getAttributes() {
+        return new CompactNamedNodeMapImpl(fOwner, fIndex);
+    }
+
+    public boolean hasAttributes() {
+        return fOwner.fNodeAttr[fIndex] != fOwner.fNodeAttr[fIndex + 1];
+    }
+
+    public String getNamespaceURI() {
+        return fOwner.fNameURI[fOwner.fNodeName[fIndex]];
+    }
+
+    public String getPrefix() {
+        return fOwner.fNamePrefix[fOwner.fNodeName[fIndex]];
+    }
+
+    public String getLocalName() {
+        return fOwner.fNameLocal[fOwner.fNodeName[fIndex]];
+    }
+
+    public String getTextContent() throws DOMException {
+        StringBuffer buffer = new StringBuffer();
+        fOwner.getTextContent(fIndex, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * The base URI is specified by the xml:base attribute, resolved
+     * against the base URI of the parent.
+     */
+    public String getBaseURI() {
+        int attr = fOwner.fNamespaces
+                 ? fOwner.getAttributeNS(fIndex, XML_URI, "base")
+                 : fOwner.getAttribute(fIndex, "xml:base");
+        Node parent = getParentNode();
+        if (attr != -1) {
+            String uri = fOwner.getAttrValue(attr);
+            if (uri.length() != 0) {
+                try {
+                    URI _uri = new URI(uri, true);
+                    if (_uri.isAbsoluteURI()) {
+                        return _uri.toString();
+                    }
+                    String parentBaseURI =
+                        parent != null ? parent.getBaseURI() : null;
+                    if (parentBaseURI != null) {
+                        _uri.absolutize(new URI(parentBaseURI));
+                        return _uri.toString();
+                    }
+                    // REVISIT: what should happen in this case?
+                    return null;
+                }
+                catch (URI.MalformedURIException ex) {
+                    return null;
+                }
+            }
+        }
+        return parent != null ? parent.getBaseURI() : null;
+    } // getBaseURI():String
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        String namespace = getNamespaceURI();
+        String prefix = getPrefix();
+        if (prefix == null || prefix.length() == 0) {
+            if (namespaceURI == null) {
+                return namespace == null;
+            }
+            return namespaceURI.equals(namespace);
+        }
+        int attr = fOwner.getAttributeNS(fIndex, XMLNS_URI, "xmlns");
+        if (attr != -1) {
+            String value = fOwner.getAttrValue(attr);
+            if (namespaceURI == null) {
+                return namespace == value;
+            }
+            return namespaceURI.equals(value);
+        }
+        return super.isDefaultNamespace(namespaceURI);
+    } // isDefaultNamespace(String):boolean
+
+    public String lookupPrefix(String namespaceURI) {
+        if (namespaceURI == null) {
+            return null;
+        }
+        return lookupNamespacePrefix(namespaceURI, this);
+    }
+
+    public String lookupNamespaceURI(String specifiedPrefix) {
+        String namespace = getNamespaceURI();
+        String prefix = getPrefix();
+        if (namespace != null) {
+            if (specifiedPrefix == null && prefix == null) {
+                // looking for default namespace
+                return namespace;
+            }
+            else if (prefix != null && prefix.equals(specifiedPrefix)) {
+                // non default namespace
+                return namespace;
+            }
+        }
+        int end = fOwner.fNodeAttr[fIndex + 1];
+        for (int attr = fOwner.fNodeAttr[fIndex]; attr < end; attr++) {
+            int name = fOwner.fAttrName[attr];
+            if (XMLNS_URI.equals(fOwner.fNameURI[name])) {
+                String value = fOwner.getAttrValue(attr);
+                String attrPrefix = fOwner.fNamePrefix[name];
+                if (specifiedPrefix == null
+                    && fOwner.fNameQName[name].equals("xmlns")) {
+                    // default namespace
+                    return value.length() > 0 ? value : null;
+                }
+                else if (attrPrefix != null && attrPrefix.equals("xmlns")
+                         && fOwner.fNameLocal[name].equals(specifiedPrefix)) {
+                    // non default namespace
+                    return value.length() > 0 ? value : null;
+                }
+            }
+        }
+        return super.lookupNamespaceURI(specifiedPrefix);
+    } // lookupNamespaceURI(String):String
+
+    public boolean isEqualNode(Node arg) {
+        if (!super.isEqualNode(arg)) {
+            return false;
+        }
+        boolean hasAttrs = hasAttributes();
+        if (hasAttrs != ((Element) arg).hasAttributes()) {
+            return false;
+        }
+        if (hasAttrs) {
+            NamedNodeMap map1 = getAttributes();
+            NamedNodeMap map2 = arg.getAttributes();
+            int len = map1.getLength();
+            if (len != map2.getLength()) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                Node n1 = map1.item(i);
+                if (n1.getLocalName() == null) { // DOM Level 1 Node
+                    Node n2 = map2.getNamedItem(n1.getNodeName());
+                    if (n2 == null || !n1.isEqualNode(n2)) {
+                        return false;
+                    }
+                }
+                else {
+                    Node n2 = map2.getNamedItemNS(n1.getNamespaceURI(),
+                                                  n1.getLocalName());
+                    if (n2 == null || !n1.isEqualNode(n2)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    } // isEqualNode(Node):boolean
+
+    //
+    // Element methods
+    //
+
+    public String getTagName() {
+        return getNodeName();
+    }
+
+    public String getAttribute(String name) {
+        int attr = fOwner.getAttribute(fIndex, name);
+        return attr != -1 ? fOwner.getAttrValue(attr) : "";
+    }
+
+    public void setAttribute(String name, String value) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void removeAttribute(String name) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Attr getAttributeNode(String name) {
+        return fOwner.getAttrNode(fIndex, fOwner.getAttribute(fIndex, name));
+    }
+
+    public Attr setAttributeNode(Attr newAttr) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Attr removeAttributeNode(Attr oldAttr) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public NodeList getElementsByTagName(String name) {
+        return new CompactElementListImpl(fOwner, fIndex, name);
+    }
+
+    public String getAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        int attr = fOwner.getAttributeNS(fIndex, namespaceURI, localName);
+        return attr != -1 ? fOwner.getAttrValue(attr) : "";
+    }
+
+    public void setAttributeNS(String namespaceURI, String qualifiedName,
+                               String value) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void removeAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Attr getAttributeNodeNS(String namespaceURI, String localName)
+        throws DOMException {
+        return fOwner.getAttrNode(fIndex,
+            fOwner.getAttributeNS(fIndex, namespaceURI, localName));
+    }
+
+    public Attr setAttributeNodeNS(Attr newAttr) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public NodeList getElementsByTagNameNS(String namespaceURI,
+                                           String localName)
+        throws DOMException {
+        return new CompactElementListImpl(fOwner, fIndex, namespaceURI,
+                                          localName);
+    }
+
+    public boolean hasAttribute(String name) {
+        return fOwner.getAttribute(fIndex, name) != -1;
+    }
+
+    public boolean hasAttributeNS(String namespaceURI, String localName)
+        throws DOMException {
+        return fOwner.getAttributeNS(fIndex, namespaceURI, localName) != -1;
+    }
+
+    public TypeInfo getSchemaTypeInfo() {
+        return this;
+    }
+
+    public void setIdAttribute(String name, boolean isId)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void setIdAttributeNS(String namespaceURI, String localName,
+                                 boolean isId) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public void setIdAttributeNode(Attr idAttr, boolean isId)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    //
+    // ElementTraversal methods
+    //
+
+    public Element getFirstElementChild() {
+        int child = fOwner.getFirstChild(fIndex);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                return (Element) fOwner.getNode(child);
+            }
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                // look into the entity reference
+                int element = getFirstElementChild(child);
+                if (element != -1) {
+                    return (Element) fOwner.getNode(element);
+                }
+            }
+            child = fOwner.getNextSibling(child);
+        }
+        return null;
+    }
+
+    public Element getLastElementChild() {
+        int child = fOwner.getLastChild(fIndex);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                return (Element) fOwner.getNode(child);
+            }
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                // look into the entity reference
+                int element = getLastElementChild(child);
+                if (element != -1) {
+                    return (Element) fOwner.getNode(element);
+                }
+            }
+            child = fOwner.fNodePrevSib[child];
+        }
+        return null;
+    }
+
+    public Element getNextElementSibling() {
+        int node = fIndex;
+        while (node != -1) {
+            // the elements following in document order which are not
+            // descendants are siblings, or children of sibling entity
+            // references
+            int next = fOwner.getNextSibling(node);
+            while (next != -1) {
+                short type = fOwner.getNodeType(next);
+                if (type == Node.ELEMENT_NODE) {
+                    return (Element) fOwner.getNode(next);
+                }
+                if (type == Node.ENTITY_REFERENCE_NODE) {
+                    int element = getFirstElementChild(next);
+                    if (element != -1) {
+                        return (Element) fOwner.getNode(element);
+                    }
+                }
+                next = fOwner.getNextSibling(next);
+            }
+            // continue after the parent if it is an entity reference
+            node = fOwner.fNodeParent[node];
+            if (node == -1
+                || fOwner.getNodeType(node) != Node.ENTITY_REFERENCE_NODE) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    public Element getPreviousElementSibling() {
+        int node = fIndex;
+        while (node != -1) {
+            int prev = fOwner.fNodePrevSib[node];
+            while (prev != -1) {
+                short type = fOwner.getNodeType(prev);
+                if (type == Node.ELEMENT_NODE) {
+                    return (Element) fOwner.getNode(prev);
+                }
+                if (type == Node.ENTITY_REFERENCE_NODE) {
+                    int element = getLastElementChild(prev);
+                    if (element != -1) {
+                        return (Element) fOwner.getNode(element);
+                    }
+                }
+                prev = fOwner.fNodePrevSib[prev];
+            }
+            // continue before the parent if it is an entity reference
+            node = fOwner.fNodeParent[node];
+            if (node == -1
+                || fOwner.getNodeType(node) != Node.ENTITY_REFERENCE_NODE) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    public int getChildElementCount() {
+        int count = 0;
+        int child = fOwner.getFirstChild(fIndex);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                count++;
+            }
+            else if (type == Node.ENTITY_REFERENCE_NODE) {
+                count += getChildElementCount(child);
+            }
+            child = fOwner.getNextSibling(child);
+        }
+        return count;
+    }
+
+    //
+    // TypeInfo methods
+    //
+
+    public String getTypeName() {
+        Object type = fOwner.getTypeInfo(fIndex);
+        if (type instanceof XSSimpleTypeDecl) {
+            return ((XSSimpleTypeDecl) type).getTypeName();
+        }
+        else if (type instanceof XSComplexTypeDecl) {
+            return ((XSComplexTypeDecl) type).getTypeName();
+        }
+        return null;
+    }
+
+    public String getTypeNamespace() {
+        Object type = fOwner.getTypeInfo(fIndex);
+        return type != null
+            ? ((XSTypeDefinition) type).getNamespace() : null;
+    }
+
+    public boolean isDerivedFrom(String typeNamespaceArg, String typeNameArg,
+                                 int derivationMethod) {
+        Object type = fOwner.getTypeInfo(fIndex);
+        if (type instanceof XSSimpleTypeDecl) {
+            return ((XSSimpleTypeDecl) type).isDOMDerivedFrom(
+                    typeNamespaceArg, typeNameArg, derivationMethod);
+        }
+        else if (type instanceof XSComplexTypeDecl) {
+            return ((XSComplexTypeDecl) type).isDOMDerivedFrom(
+                    typeNamespaceArg, typeNameArg, derivationMethod);
+        }
+        return false;
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Looks up the prefix of the given namespace from this element,
+     * checking that it is bound to the same namespace in the original
+     * element.
+     */
+    private String lookupNamespacePrefix(String namespaceURI,
+                                         CompactElementImpl el) {
+        String namespace = getNamespaceURI();
+        String prefix = getPrefix();
+        if (namespace != null && namespace.equals(namespaceURI)) {
+            if (prefix != null) {
+                String foundNamespace = el.lookupNamespaceURI(prefix);
+                if (foundNamespace != null
+                    && foundNamespace.equals(namespaceURI)) {
+                    return prefix;
+                }
+            }
+        }
+        int end = fOwner.fNodeAttr[fIndex + 1];
+        for (int attr = fOwner.fNodeAttr[fIndex]; attr < end; attr++) {
+            int name = fOwner.fAttrName[attr];
+            if (XMLNS_URI.equals(fOwner.fNameURI[name])) {
+                String attrPrefix = fOwner.fNamePrefix[name];
+                String value = fOwner.getAttrValue(attr);
+                if (fOwner.fNameQName[name].equals("xmlns")
+                    || (attrPrefix != null && attrPrefix.equals("xmlns")
+                        && value.equals(namespaceURI))) {
+                    String localname = fOwner.fNameLocal[name];
+                    String foundNamespace = el.lookupNamespaceURI(localname);
+                    if (foundNamespace != null
+                        && foundNamespace.equals(namespaceURI)) {
+                        return localname;
+                    }
+                }
+            }
+        }
+        int ancestor = fOwner.getElementAncestor(fIndex);
+        if (ancestor != -1) {
+            return ((CompactElementImpl) fOwner.getNode(ancestor))
+                .lookupNamespacePrefix(namespaceURI, el);
+        }
+        return null;
+    } // lookupNamespacePrefix(String,CompactElementImpl):String
+
+    /** Returns the first element child of the given entity reference. */
+    private int getFirstElementChild(int node) {
+        int child = fOwner.getFirstChild(node);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                return child;
+            }
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                int element = getFirstElementChild(child);
+                if (element != -1) {
+                    return element;
+                }
+            }
+            child = fOwner.getNextSibling(child);
+        }
+        return -1;
+    }
+
+    /** Returns the last element child of the given entity reference. */
+    private int getLastElementChild(int node) {
+        int child = fOwner.getLastChild(node);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                return child;
+            }
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                int element = getLastElementChild(child);
+                if (element != -1) {
+                    return element;
+                }
+            }
+            child = fOwner.fNodePrevSib[child];
+        }
+        return -1;
+    }
+
+    /** Returns the number of element children of an entity reference. */
+    private int getChildElementCount(int node) {
+        int count = 0;
+        int child = fOwner.getFirstChild(node);
+        while (child != -1) {
+            short type = fOwner.getNodeType(child);
+            if (type == Node.ELEMENT_NODE) {
+                count++;
+            }
+            else if (type == Node.ENTITY_REFERENCE_NODE) {
+                count += getChildElementCount(child);
+            }
+            child = fOwner.getNextSibling(child);
+        }
+        return count;
+    }
+
+} // class CompactElementImpl
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The descendant elements of a node of a compact document matching a
+ * name, in document order. Since the descendants of a node follow it in
+ * the node tables, the list scans the subtree of the node instead of
+ * walking the tree, and remembers the last item returned so that
+ * iterating over the list is linear.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactElementListImpl
+    implements NodeList {
+
+    //
+    // Data
+    //
+
+    /** Owner document. */
+    private final CompactDocumentImpl fOwner;
+
+    /** Root node. */
+    private final int fRoot;
+
+    /** Tag name, or local name for a namespace aware list. */
+    private final String fTagName;
+
+    /** Namespace, for a namespace aware list. */
+    private final String fNamespaceURI;
+
+    /** True for a namespace aware list. */
+    private final boolean fNamespaces;
+
+    /** Number of matching elements, or -1 if not yet counted. */
+    private int fLength = -1;
+
+    /** Position of the last item returned. */
+    private int fLastItem = -1;
+
+    /** Node of the last item returned. */
+    private int fLastNode;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs the list of descendant elements with the given name. */
+    CompactElementListImpl(CompactDocumentImpl owner, int root,
+                           String tagName) {
+        fOwner = owner;
+        fRoot = root;
+        fTagName = tagName;
+        fNamespaceURI = null;
+        fNamespaces = false;
+    }
+
+    /**
+     * Constructs the list of descendant elements with the given namespace
+     * and local name.
+     */
+    CompactElementListImpl(CompactDocumentImpl owner, int root,
+                           String namespaceURI, String localName) {
+        fOwner = owner;
+        fRoot = root;
+        fTagName = localName;
+        fNamespaceURI = (namespaceURI != null && namespaceURI.length() != 0)
+                      ? namespaceURI : null;
+        fNamespaces = true;
+    }
+
+    //
+    // NodeList methods
+    //
+
+    public int getLength() {
+        if (fLength == -1) {
+            int length = 0;
+            for (int node = nextMatch(fRoot); node != -1;
+                 node = nextMatch(node)) {
+                length++;
+            }
+            fLength = length;
+        }
+        return fLength;
+    }
+
+    public Node item(int index) {
+        if (index < 0) {
+            return null;
+        }
+        int i = -1;
+        int node = fRoot;
+        if (fLastItem != -1 && fLastItem <= index) {
+            i = fLastItem;
+            node = fLastNode;
+        }
+        while (i < index) {
+            node = nextMatch(node);
+            if (node == -1) {
+                return null;
+            }
+            i++;
+        }
+        fLastItem = index;
+        fLastNode = node;
+        return fOwner.getNode(node);
+    } // item(int):Node
+
+    //
+    // Private methods
+    //
+
+    /** Returns the next matching element after the given node, or -1. */
+    private int nextMatch(int node) {
+        int end = fOwner.fNodeEnd[fRoot];
+        byte[] types = fOwner.fNodeType;
+        for (node++; node < end; node++) {
+            int type = types[node];
+            if (type == Node.DOCUMENT_TYPE_NODE) {
+                // the entities are not part of the tree
+                node = fOwner.fNodeEnd[node] - 1;
+            }
+            else if (type == Node.ELEMENT_NODE && matches(node)) {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true if the given element matches the list. */
+    private boolean matches(int element) {
+        int name = fOwner.fNodeName[element];
+        if (!fNamespaces) {
+            return fTagName.equals("*")
+                || fTagName.equals(fOwner.fNameQName[name]);
+        }
+        if (!fTagName.equals("*")) {
+            String localName = fOwner.fNameLocal[name];
+            if (localName == null || !localName.equals(fTagName)) {
+                return false;
+            }
+        }
+        if (fNamespaceURI != null && fNamespaceURI.equals("*")) {
+            return true;
+        }
+        return CompactNodeImpl.equals(fNamespaceURI, fOwner.fNameURI[name]);
+    }
+
+} // class CompactElementListImpl
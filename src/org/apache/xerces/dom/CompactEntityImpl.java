@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Entity;
+import org.w3c.dom.Node;
+
+/**
+ * An entity of a compact document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactEntityImpl
+    extends CompactNodeImpl
+    implements Entity {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given entity. */
+    CompactEntityImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.ENTITY_NODE;
+    }
+
+    public String getTextContent() throws DOMException {
+        StringBuffer buffer = new StringBuffer();
+        fOwner.getTextContent(fIndex, buffer);
+        return buffer.toString();
+    }
+
+    public String getBaseURI() {
+        String baseURI = getDecl(CompactDocumentImpl.DECL_BASE_URI);
+        return baseURI != null ? baseURI : fOwner.getBaseURI();
+    }
+
+    //
+    // Entity methods
+    //
+
+    public String getPublicId() {
+        return getDecl(CompactDocumentImpl.DECL_PUBLIC_ID);
+    }
+
+    public String getSystemId() {
+        return getDecl(CompactDocumentImpl.DECL_SYSTEM_ID);
+    }
+
+    public String getNotationName() {
+        return getDecl(CompactDocumentImpl.DECL_EXTRA);
+    }
+
+    public String getInputEncoding() {
+        return getDecl(CompactDocumentImpl.DECL_INPUT_ENCODING);
+    }
+
+    public String getXmlEncoding() {
+        return getDecl(CompactDocumentImpl.DECL_XML_ENCODING);
+    }
+
+    public String getXmlVersion() {
+        return getDecl(CompactDocumentImpl.DECL_XML_VERSION);
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns a value of the declaration of the entity. */
+    private String getDecl(int index) {
+        return fOwner.getDecl(fIndex)[index];
+    }
+
+} // class CompactEntityImpl
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+
+/**
+ * An entity reference of a compact document. Its children are the nodes
+ * of the replacement text of the entity at the place of the reference.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactEntityReferenceImpl
+    extends CompactNodeImpl
+    implements EntityReference {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given entity reference. */
+    CompactEntityReferenceImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.ENTITY_REFERENCE_NODE;
+    }
+
+    public String getTextContent() throws DOMException {
+        StringBuffer buffer = new StringBuffer();
+        fOwner.getTextContent(fIndex, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * The base URI is the one of the entity, unless the reference was
+     * given its own base URI.
+     */
+    public String getBaseURI() {
+        String baseURI =
+            fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_BASE_URI];
+        if (baseURI == null) {
+            DocumentType doctype = fOwner.getDoctype();
+            if (doctype != null) {
+                Node entity = doctype.getEntities().getNamedItem(getNodeName());
+                if (entity != null) {
+                    return entity.getBaseURI();
+                }
+            }
+            return null;
+        }
+        return CompactDocumentImpl.resolveURI(baseURI);
+    }
+
+} // class CompactEntityReferenceImpl
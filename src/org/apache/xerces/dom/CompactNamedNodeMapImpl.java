@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The attributes of an element, or the entities or notations of the
+ * document type, of a compact document. Like in the other DOM
+ * implementations, the nodes are sorted by name.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactNamedNodeMapImpl
+    implements NamedNodeMap {
+
+    //
+    // Data
+    //
+
+    /** Owner document. */
+    private final CompactDocumentImpl fOwner;
+
+    /** Element owning the attributes, or -1. */
+    private final int fElement;
+
+    /** Entities or notations sorted by name, or null. */
+    private final int[] fNodes;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs the map of the attributes of the given element. */
+    CompactNamedNodeMapImpl(CompactDocumentImpl owner, int element) {
+        fOwner = owner;
+        fElement = element;
+        fNodes = null;
+    }
+
+    /** Constructs a map of the given nodes, sorted by name. */
+    CompactNamedNodeMapImpl(CompactDocumentImpl owner, int[] nodes) {
+        fOwner = owner;
+        fElement = -1;
+        fNodes = nodes;
+    }
+
+    //
+    // NamedNodeMap methods
+    //
+
+    public Node getNamedItem(String name) {
+        if (fNodes == null) {
+            return fOwner.getAttrNode(fElement,
+                                      fOwner.getAttribute(fElement, name));
+        }
+        int low = 0;
+        int high = fNodes.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int c = name.compareTo(fOwner.getNodeName(fNodes[middle]));
+            if (c == 0) {
+                return fOwner.getNode(fNodes[middle]);
+            }
+            if (c < 0) {
+                high = middle - 1;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        return null;
+    } // getNamedItem(String):Node
+
+    public Node setNamedItem(Node arg) throws DOMException {
+        throw CompactNodeImpl.noModificationAllowed();
+    }
+
+    public Node removeNamedItem(String name) throws DOMException {
+        throw CompactNodeImpl.noModificationAllowed();
+    }
+
+    public Node item(int index) {
+        if (index < 0 || index >= getLength()) {
+            return null;
+        }
+        if (fNodes == null) {
+            return fOwner.getAttrNode(fElement,
+                                      fOwner.fNodeAttr[fElement] + index);
+        }
+        return fOwner.getNode(fNodes[index]);
+    }
+
+    public int getLength() {
+        if (fNodes == null) {
+            return fOwner.fNodeAttr[fElement + 1]
+                 - fOwner.fNodeAttr[fElement];
+        }
+        return fNodes.length;
+    }
+
+    /** Entities and notations have no namespace. */
+    public Node getNamedItemNS(String namespaceURI, String localName)
+        throws DOMException {
+        if (fNodes == null) {
+            return fOwner.getAttrNode(fElement,
+                fOwner.getAttributeNS(fElement, namespaceURI, localName));
+        }
+        return null;
+    }
+
+    public Node setNamedItemNS(Node arg) throws DOMException {
+        throw CompactNodeImpl.noModificationAllowed();
+    }
+
+    public Node removeNamedItemNS(String namespaceURI, String localName)
+        throws DOMException {
+        throw CompactNodeImpl.noModificationAllowed();
+    }
+
+} // class CompactNamedNodeMapImpl
@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.Hashtable;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.UserDataHandler;
+
+/**
+ * A view of a node of a {@link CompactDocumentImpl}. The view only holds
+ * the index of the node in the tables of its document, and views are
+ * created when nodes are accessed; two views of the same node are equal
+ * but are not necessarily the same object.
+ * <p>
+ * The node list implemented by this class is the list of children of the
+ * node.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public abstract class CompactNodeImpl
+    implements Node, NodeList {
+
+    //
+    // Data
+    //
+
+    /** Owner document. */
+    final CompactDocumentImpl fOwner;
+
+    /** Index of the node in the tables of the document. */
+    final int fIndex;
+
+    /** Number of children, or -1 if not yet counted. */
+    private int fChildCount = -1;
+
+    /** Index of the last child returned by item(int). */
+    private int fCachedChildIndex = -1;
+
+    /** Index of the last node returned by item(int). */
+    private int fCachedChild = -1;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the node at the given index. */
+    CompactNodeImpl(CompactDocumentImpl owner, int index) {
+        fOwner = owner != null ? owner : (CompactDocumentImpl) this;
+        fIndex = index;
+    }
+
+    //
+    // Node methods
+    //
+
+    public String getNodeName() {
+        return fOwner.getNodeName(fIndex);
+    }
+
+    public String getNodeValue() throws DOMException {
+        return null;
+    }
+
+    public void setNodeValue(String nodeValue) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Node getParentNode() {
+        return fOwner.getNode(fOwner.fNodeParent[fIndex]);
+    }
+
+    public NodeList getChildNodes() {
+        return this;
+    }
+
+    public Node getFirstChild() {
+        return fOwner.getNode(fOwner.getFirstChild(fIndex));
+    }
+
+    public Node getLastChild() {
+        return fOwner.getNode(fOwner.getLastChild(fIndex));
+    }
+
+    public Node getPreviousSibling() {
+        return fOwner.getNode(fOwner.fNodePrevSib[fIndex]);
+    }
+
+    public Node getNextSibling() {
+        return fOwner.getNode(fOwner.getNextSibling(fIndex));
+    }
+
+    public NamedNodeMap getAttributes() {
+        return null;
+    }
+
+    public Document getOwnerDocument() {
+        return fOwner;
+    }
+
+    public Node insertBefore(Node newChild, Node refChild)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Node replaceChild(Node newChild, Node oldChild)
+        throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Node removeChild(Node oldChild) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public Node appendChild(Node newChild) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public boolean hasChildNodes() {
+        return fOwner.getFirstChild(fIndex) != -1;
+    }
+
+    /**
+     * The nodes of a compact document cannot be cloned, since the clone
+     * would belong to the same read-only document. They may be imported
+     * into another document instead.
+     */
+    public Node cloneNode(boolean deep) {
+        throw notSupported();
+    }
+
+    /** The text nodes of a compact document are already normalized. */
+    public void normalize() {
+    }
+
+    public boolean isSupported(String feature, String version) {
+        return fOwner.getImplementation().hasFeature(feature, version);
+    }
+
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    public String getPrefix() {
+        return null;
+    }
+
+    public void setPrefix(String prefix) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public String getLocalName() {
+        return null;
+    }
+
+    public boolean hasAttributes() {
+        return false;
+    }
+
+    public String getBaseURI() {
+        return null;
+    }
+
+    public short compareDocumentPosition(Node other) throws DOMException {
+        if (isSameNode(other)) {
+            return 0;
+        }
+        if (!(other instanceof CompactNodeImpl)
+            || ((CompactNodeImpl) other).fOwner != fOwner) {
+            // the nodes are not in the same document
+            int thisHash = System.identityHashCode(this);
+            int otherHash = System.identityHashCode(other);
+            return (short) (DOCUMENT_POSITION_DISCONNECTED
+                | DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC
+                | (thisHash > otherHash ? DOCUMENT_POSITION_PRECEDING
+                                        : DOCUMENT_POSITION_FOLLOWING));
+        }
+        CompactNodeImpl node = (CompactNodeImpl) other;
+        int thisNode = getTreeIndex();
+        int otherNode = node.getTreeIndex();
+        if (thisNode == otherNode) {
+            // attributes of the same element, or an element and one
+            // of its attributes
+            if (!isAttributeView()) {
+                return DOCUMENT_POSITION_CONTAINED_BY
+                     | DOCUMENT_POSITION_FOLLOWING;
+            }
+            if (!node.isAttributeView()) {
+                return DOCUMENT_POSITION_CONTAINS
+                     | DOCUMENT_POSITION_PRECEDING;
+            }
+            return (short) (DOCUMENT_POSITION_IMPLEMENTATION_SPECIFIC
+                | (fIndex < node.fIndex ? DOCUMENT_POSITION_FOLLOWING
+                                        : DOCUMENT_POSITION_PRECEDING));
+        }
+        int[] end = fOwner.fNodeEnd;
+        if (thisNode < otherNode && otherNode < end[thisNode]
+            && !isAttributeView()) {
+            return DOCUMENT_POSITION_CONTAINED_BY
+                 | DOCUMENT_POSITION_FOLLOWING;
+        }
+        if (otherNode < thisNode && thisNode < end[otherNode]
+            && !node.isAttributeView()) {
+            return DOCUMENT_POSITION_CONTAINS
+                 | DOCUMENT_POSITION_PRECEDING;
+        }
+        return thisNode < otherNode ? DOCUMENT_POSITION_FOLLOWING
+                                    : DOCUMENT_POSITION_PRECEDING;
+    } // compareDocumentPosition(Node):short
+
+    public String getTextContent() throws DOMException {
+        return getNodeValue();
+    }
+
+    public void setTextContent(String textContent) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public boolean isSameNode(Node other) {
+        return equals(other);
+    }
+
+    public String lookupPrefix(String namespaceURI) {
+        if (namespaceURI == null) {
+            return null;
+        }
+        int element = getNamespaceElement();
+        return element != -1
+            ? fOwner.getNode(element).lookupPrefix(namespaceURI) : null;
+    }
+
+    public boolean isDefaultNamespace(String namespaceURI) {
+        int element = getNamespaceElement();
+        return element != -1
+            && fOwner.getNode(element).isDefaultNamespace(namespaceURI);
+    }
+
+    public String lookupNamespaceURI(String prefix) {
+        int element = getNamespaceElement();
+        return element != -1
+            ? fOwner.getNode(element).lookupNamespaceURI(prefix) : null;
+    }
+
+    public boolean isEqualNode(Node arg) {
+        if (isSameNode(arg)) {
+            return true;
+        }
+        if (arg.getNodeType() != getNodeType()
+            || !equals(getNodeName(), arg.getNodeName())
+            || !equals(getLocalName(), arg.getLocalName())
+            || !equals(getNamespaceURI(), arg.getNamespaceURI())
+            || !equals(getPrefix(), arg.getPrefix())
+            || !equals(getNodeValue(), arg.getNodeValue())) {
+            return false;
+        }
+
+        // compare the children
+        Node child1 = getFirstChild();
+        Node child2 = arg.getFirstChild();
+        while (child1 != null && child2 != null) {
+            if (!child1.isEqualNode(child2)) {
+                return false;
+            }
+            child1 = child1.getNextSibling();
+            child2 = child2.getNextSibling();
+        }
+        return child1 == child2;
+    } // isEqualNode(Node):boolean
+
+    public Object getFeature(String feature, String version) {
+        return isSupported(feature, version) ? this : null;
+    }
+
+    /**
+     * User data is kept by the document, since the view of a node may
+     * not be the same object each time the node is accessed. The handler
+     * is never called, as the nodes are never cloned, renamed or deleted.
+     */
+    public Object setUserData(String key, Object data,
+                              UserDataHandler handler) {
+        Hashtable t = fOwner.getUserDataTable(this, data != null);
+        if (t == null) {
+            return null;
+        }
+        Object o = data != null ? t.put(key, data) : t.remove(key);
+        if (t.isEmpty()) {
+            fOwner.getUserDataTable(this, false);
+        }
+        return o;
+    }
+
+    public Object getUserData(String key) {
+        Hashtable t = fOwner.getUserDataTable(this, false);
+        return t != null ? t.get(key) : null;
+    }
+
+    //
+    // NodeList methods
+    //
+
+    public int getLength() {
+        if (fChildCount == -1) {
+            int count = 0;
+            for (int child = fOwner.getFirstChild(fIndex); child != -1;
+                 child = fOwner.getNextSibling(child)) {
+                count++;
+            }
+            fChildCount = count;
+        }
+        return fChildCount;
+    }
+
+    public Node item(int index) {
+        if (index < 0) {
+            return null;
+        }
+
+        // continue from the last child returned, if possible
+        int i = 0;
+        int child = fOwner.getFirstChild(fIndex);
+        if (fCachedChildIndex != -1 && fCachedChildIndex <= index) {
+            i = fCachedChildIndex;
+            child = fCachedChild;
+        }
+        while (i < index && child != -1) {
+            child = fOwner.getNextSibling(child);
+            i++;
+        }
+        if (child == -1) {
+            return null;
+        }
+        fCachedChildIndex = index;
+        fCachedChild = child;
+        return fOwner.getNode(child);
+    } // item(int):Node
+
+    //
+    // Object methods
+    //
+
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o == null || o.getClass() != getClass()) {
+            return false;
+        }
+        CompactNodeImpl node = (CompactNodeImpl) o;
+        return node.fOwner == fOwner && node.fIndex == fIndex;
+    }
+
+    public int hashCode() {
+        return fIndex * 31 + getNodeType();
+    }
+
+    public String toString() {
+        return "["+getNodeName()+": "+getNodeValue()+"]";
+    }
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Returns the index of the node in the tree, which is the index of the
+     * owner element for an attribute.
+     */
+    int getTreeIndex() {
+        return fIndex;
+    }
+
+    /** Returns true if this node is an attribute or its value. */
+    boolean isAttributeView() {
+        return false;
+    }
+
+    /**
+     * Returns the element from which namespace prefixes are looked up,
+     * or -1 if there is none.
+     */
+    int getNamespaceElement() {
+        return fOwner.getElementAncestor(fIndex);
+    }
+
+    /** Creates the exception thrown by modification methods. */
+    static DOMException noModificationAllowed() {
+        String msg = DOMMessageFormatter.formatMessage(
+            DOMMessageFormatter.DOM_DOMAIN,
+            "NO_MODIFICATION_ALLOWED_ERR", null);
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR,
+                                msg);
+    }
+
+    /** Creates the exception thrown by unsupported methods. */
+    static DOMException notSupported() {
+        String msg = DOMMessageFormatter.formatMessage(
+            DOMMessageFormatter.DOM_DOMAIN, "NOT_SUPPORTED_ERR", null);
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, msg);
+    }
+
+    /** Compares two strings which may be null. */
+    static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+} // class CompactNodeImpl
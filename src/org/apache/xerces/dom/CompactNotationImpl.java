@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.Notation;
+
+/**
+ * A notation of a compact document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactNotationImpl
+    extends CompactNodeImpl
+    implements Notation {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given notation. */
+    CompactNotationImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.NOTATION_NODE;
+    }
+
+    public String getBaseURI() {
+        return CompactDocumentImpl.resolveURI(
+            fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_BASE_URI]);
+    }
+
+    //
+    // Notation methods
+    //
+
+    public String getPublicId() {
+        return fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_PUBLIC_ID];
+    }
+
+    public String getSystemId() {
+        return fOwner.getDecl(fIndex)[CompactDocumentImpl.DECL_SYSTEM_ID];
+    }
+
+} // class CompactNotationImpl
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * A text node of a compact document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CompactTextImpl
+    extends CompactCharacterDataImpl
+    implements Text {
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a view of the given text node. */
+    CompactTextImpl(CompactDocumentImpl owner, int index) {
+        super(owner, index);
+    }
+
+    //
+    // Node methods
+    //
+
+    public short getNodeType() {
+        return Node.TEXT_NODE;
+    }
+
+    public String getNodeName() {
+        return "#text";
+    }
+
+    //
+    // Text methods
+    //
+
+    public Text splitText(int offset) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    public boolean isElementContentWhitespace() {
+        return fOwner.isIgnorableWhitespace(fIndex);
+    }
+
+    public String getWholeText() {
+
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(getData());
+
+        // concatenate text of logically adjacent text nodes to the left of this node in the tree
+        getWholeTextBackward(getPreviousSibling(), buffer, getParentNode());
+        String temp = buffer.toString();
+
+        // clear buffer
+        buffer.setLength(0);
+
+        // concatenate text of logically adjacent text nodes to the right of this node in the tree
+        getWholeTextForward(getNextSibling(), buffer, getParentNode());
+
+        return temp + buffer.toString();
+
+    } // getWholeText():String
+
+    public Text replaceWholeText(String content) throws DOMException {
+        throw noModificationAllowed();
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Appends the text of the logically adjacent text nodes following the
+     * given node. Returns true if a node which is not text was found.
+     */
+    private boolean getWholeTextForward(Node node, StringBuffer buffer,
+                                        Node parent) {
+        // boolean to indicate whether node is a child of an entity reference
+        boolean inEntRef = parent != null
+            && parent.getNodeType() == Node.ENTITY_REFERENCE_NODE;
+
+        while (node != null) {
+            short type = node.getNodeType();
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                if (getWholeTextForward(node.getFirstChild(), buffer, node)) {
+                    return true;
+                }
+            }
+            else if (type == Node.TEXT_NODE
+                     || type == Node.CDATA_SECTION_NODE) {
+                buffer.append(node.getNodeValue());
+            }
+            else {
+                return true;
+            }
+            node = node.getNextSibling();
+        }
+
+        // if the parent node is an entity reference node, must
+        // check nodes to the right of the parent entity reference node for logically adjacent
+        // text nodes
+        if (inEntRef) {
+            getWholeTextForward(parent.getNextSibling(), buffer,
+                                parent.getParentNode());
+            return true;
+        }
+        return false;
+
+    } // getWholeTextForward(Node,StringBuffer,Node):boolean
+
+    /**
+     * Prepends the text of the logically adjacent text nodes preceding the
+     * given node. Returns true if a node which is not text was found.
+     */
+    private boolean getWholeTextBackward(Node node, StringBuffer buffer,
+                                         Node parent) {
+        // boolean to indicate whether node is a child of an entity reference
+        boolean inEntRef = parent != null
+            && parent.getNodeType() == Node.ENTITY_REFERENCE_NODE;
+
+        while (node != null) {
+            short type = node.getNodeType();
+            if (type == Node.ENTITY_REFERENCE_NODE) {
+                if (getWholeTextBackward(node.getLastChild(), buffer, node)) {
+                    return true;
+                }
+            }
+            else if (type == Node.TEXT_NODE
+                     || type == Node.CDATA_SECTION_NODE) {
+                buffer.insert(0, node.getNodeValue());
+            }
+            else {
+                return true;
+            }
+            node = node.getPreviousSibling();
+        }
+
+        // if the parent node is an entity reference node, must
+        // check nodes to the left of the parent entity reference node for logically adjacent
+        // text nodes
+        if (inEntRef) {
+            getWholeTextBackward(parent.getPreviousSibling(), buffer,
+                                 parent.getParentNode());
+            return true;
+        }
+        return false;
+
+    } // getWholeTextBackward(Node,StringBuffer,Node):boolean
+
+} // class CompactTextImpl
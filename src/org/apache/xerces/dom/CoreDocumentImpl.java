@@ -21,8 +21,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Constructor;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
@@ -134,9 +134,16 @@ extends ParentNode implements Document  {
     /** Table for user data attached to this document nodes. */
     protected Map userData;  // serialized as Hashtable
 
-    /** Identifiers. */
+    /**
+     * Identifiers. They are kept in the identifier table; this Hashtable
+     * only holds them while the document is serialized, and those which
+     * subclasses put directly into it until they are moved to the table.
+     */
     protected Hashtable identifiers;
 
+    /** Identifier table, mapping ID values to elements. */
+    transient IdentifierTable fIdentifiers;
+
     // DOM Level 3: normalizeDocument
     transient DOMNormalizer domNormalizer = null;
     transient DOMConfigurationImpl fConfiguration = null;
@@ -191,6 +198,12 @@ extends ParentNode implements Document  {
     /** Bypass error checking. */
     protected boolean errorChecking = true;
 
+    /** Answer getElementsByTagName from an element index. */
+    protected boolean elementIndexing = false;
+
+    /** Element index, created when first needed. */
+    transient ElementIndex fElementIndex;
+
     //Did version change at any point when the document was created ?
     //this field helps us to optimize when normalizingDocument.
     protected boolean xmlVersionChanged = false ;
@@ -334,24 +347,35 @@ extends ParentNode implements Document  {
         }
 
         if (deep) {
-            HashMap reversedIdentifiers = null;
-            if (identifiers != null) {
-                // Build a reverse mapping from element to identifier.
-                reversedIdentifiers = new HashMap();
-                Iterator entries = identifiers.entrySet().iterator();
-                while (entries.hasNext()) {
-                    Map.Entry entry = (Map.Entry) entries.next();
-                    Object elementId = entry.getKey();
-                    Object elementNode = entry.getValue();
-                    reversedIdentifiers.put(elementNode, elementId);
-                }
+            mergeIdentifiers();
+            Map sourceIdentifiers = null;
+            if (fIdentifiers != null && !fIdentifiers.isEmpty()) {
+                sourceIdentifiers = fIdentifiers;
+                newdoc.fIdentifiers = new IdentifierTable(fIdentifiers.size());
             }
 
             // Copy children into new document.
             for (ChildNode kid = firstChild; kid != null;
             kid = kid.nextSibling) {
                 newdoc.appendChild(newdoc.importNode(kid, true, true,
-                reversedIdentifiers));
+                sourceIdentifiers));
+            }
+
+            // Register the identifiers which are not the value of an ID
+            // attribute of their element with the copy of the element.
+            if (sourceIdentifiers != null
+                && newdoc.fIdentifiers.size() < fIdentifiers.size()) {
+                Iterator entries = fIdentifiers.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry entry = (Map.Entry) entries.next();
+                    Object elementId = entry.getKey();
+                    if (!newdoc.fIdentifiers.containsKey(elementId)) {
+                        Node copy = findCopy((Node) entry.getValue(), newdoc);
+                        if (copy != null) {
+                            newdoc.fIdentifiers.put(elementId, copy);
+                        }
+                    }
+                }
             }
         }
 
@@ -782,6 +806,38 @@ extends ParentNode implements Document  {
         return errorChecking;
     }
 
+    /**
+     * Sets whether the live NodeLists returned by getElementsByTagName
+     * and getElementsByTagNameNS are answered from an index of the
+     * elements of this document.
+     * <p>
+     * The index keeps, for each name looked up, the matching elements in
+     * document order. It is built by a walk of the document the first time
+     * a name is looked up, and is then updated as nodes are inserted,
+     * removed or renamed, so that a NodeList is not recomputed after every
+     * change to the document. This speeds up applications which look up
+     * elements while modifying the document, at the cost of some memory
+     * and of some work on each insertion and removal of elements.
+     * <p>
+     * Indexing is off by default.
+     */
+    public void setElementIndexing(boolean indexing) {
+        if (indexing != elementIndexing) {
+            elementIndexing = indexing;
+            fElementIndex = null;
+            // have the outstanding NodeLists look up the index again
+            changed();
+        }
+    }
+
+    /**
+     * Returns true if getElementsByTagName and getElementsByTagNameNS
+     * are answered from an index of the elements of this document.
+     */
+    public boolean getElementIndexing() {
+        return elementIndexing;
+    }
+
 
     /**
      * DOM Level 3 CR - Experimental. (Was getActualEncoding)
@@ -1504,15 +1560,16 @@ extends ParentNode implements Document  {
      * provides the core functionality for the public importNode and cloneNode
      * methods.
      *
-     * The reversedIdentifiers parameter is provided for cloneNode to
-     * preserve the document's identifiers. The HashMap has Elements as the
-     * keys and their identifiers as the values. When an element is being
-     * imported, a check is done for an associated identifier. If one exists,
-     * the identifier is registered with the new, imported element. If
-     * reversedIdentifiers is null, the parameter is not applied.
+     * The sourceIdentifiers parameter is provided for cloneNode to
+     * preserve the document's identifiers. It is the identifier table of
+     * the source document. When an element is being imported, the values
+     * of its ID attributes are looked up in the table, and those which are
+     * registered with the source element are registered with the new,
+     * imported element. If sourceIdentifiers is null, the parameter is not
+     * applied.
      */
     private Node importNode(Node source, boolean deep, boolean cloningDoc,
-    HashMap reversedIdentifiers)
+    Map sourceIdentifiers)
     throws DOMException {
         Node newnode=null;
 		Hashtable userData = null;
@@ -1555,7 +1612,7 @@ extends ParentNode implements Document  {
                         // But for importNode defaults should be ignored.
                         if (attr.getSpecified() || cloningDoc) {
                             Attr newAttr = (Attr)importNode(attr, true, cloningDoc,
-                            reversedIdentifiers);
+                            sourceIdentifiers);
 
                             // Attach attribute according to namespace
                             // support/qualification.
@@ -1564,19 +1621,16 @@ extends ParentNode implements Document  {
                                 newElement.setAttributeNode(newAttr);
                             else
                                 newElement.setAttributeNodeNS(newAttr);
-                        }
-                    }
-                }
 
-                // Register element identifier.
-                if (reversedIdentifiers != null) {
-                    // Does element have an associated identifier?
-                    Object elementId = reversedIdentifiers.get(source);
-                    if (elementId != null) {
-                        if (identifiers == null)
-                            identifiers = new Hashtable();
-
-                        identifiers.put(elementId, newElement);
+                            // Register element identifier.
+                            if (sourceIdentifiers != null && attr.isId()) {
+                                String elementId = attr.getValue();
+                                if (sourceIdentifiers.get(elementId) == source) {
+                                    ((AttrImpl) newAttr).isIdAttribute(true);
+                                    fIdentifiers.put(elementId, newElement);
+                                }
+                            }
+                        }
                     }
                 }
 
@@ -1688,7 +1742,7 @@ extends ParentNode implements Document  {
                 if(smap != null) {
                     for(int i = 0; i < smap.getLength(); i++) {
                         tmap.setNamedItem(importNode(smap.item(i), true, true,
-                        reversedIdentifiers));
+                        sourceIdentifiers));
                     }
                 }
                 smap = srcdoctype.getNotations();
@@ -1696,7 +1750,7 @@ extends ParentNode implements Document  {
                 if (smap != null) {
                     for(int i = 0; i < smap.getLength(); i++) {
                         tmap.setNamedItem(importNode(smap.item(i), true, true,
-                        reversedIdentifiers));
+                        sourceIdentifiers));
                     }
                 }
 
@@ -1742,7 +1796,7 @@ extends ParentNode implements Document  {
             srckid != null;
             srckid = srckid.getNextSibling()) {
                 newnode.appendChild(importNode(srckid, true, cloningDoc,
-                reversedIdentifiers));
+                sourceIdentifiers));
             }
         }
         if (newnode.getNodeType() == Node.ENTITY_NODE) {
@@ -1969,12 +2023,48 @@ extends ParentNode implements Document  {
         return getIdentifier(elementId);
     }
 
+    /**
+     * Returns the node of the given document which is at the same place in
+     * its tree as the given node is in the tree of this document, or null.
+     */
+    private Node findCopy(Node node, CoreDocumentImpl newdoc) {
+        Node parent = node.getParentNode();
+        if (parent == null) {
+            return node == this ? newdoc : null;
+        }
+        Node copy = findCopy(parent, newdoc);
+        if (copy == null) {
+            return null;
+        }
+        copy = copy.getFirstChild();
+        for (Node child = parent.getFirstChild(); child != node && copy != null;
+             child = child.getNextSibling()) {
+            copy = copy.getNextSibling();
+        }
+        return copy;
+    }
+
     /**
      * Remove all identifiers from the ID table
      */
     protected final void clearIdentifiers(){
-        if (identifiers != null){
-            identifiers.clear();
+        identifiers = null;
+        if (fIdentifiers != null){
+            fIdentifiers.clear();
+        }
+    }
+
+    /**
+     * Moves the identifiers which subclasses put directly into the
+     * identifiers Hashtable into the identifier table.
+     */
+    final void mergeIdentifiers() {
+        if (identifiers != null) {
+            if (fIdentifiers == null) {
+                fIdentifiers = new IdentifierTable(identifiers.size());
+            }
+            fIdentifiers.putAll(identifiers);
+            identifiers = null;
         }
     }
 
@@ -1998,11 +2088,12 @@ extends ParentNode implements Document  {
             synchronizeData();
         }
 
-        if (identifiers == null) {
-            identifiers = new Hashtable();
+        mergeIdentifiers();
+        if (fIdentifiers == null) {
+            fIdentifiers = new IdentifierTable();
         }
 
-        identifiers.put(idName, element);
+        fIdentifiers.put(idName, element);
 
     } // putIdentifier(String,Element)
 
@@ -2019,10 +2110,11 @@ extends ParentNode implements Document  {
             synchronizeData();
         }
 
-        if (identifiers == null) {
+        mergeIdentifiers();
+        if (fIdentifiers == null) {
             return null;
         }
-        Element elem = (Element) identifiers.get(idName);
+        Element elem = (Element) fIdentifiers.get(idName);
         if (elem != null) {
             // check that the element is in the tree
             Node parent = elem.getParentNode();
@@ -2049,11 +2141,12 @@ extends ParentNode implements Document  {
             synchronizeData();
         }
 
-        if (identifiers == null) {
+        mergeIdentifiers();
+        if (fIdentifiers == null) {
             return;
         }
 
-        identifiers.remove(idName);
+        fIdentifiers.remove(idName);
 
     } // removeIdentifier(String)
 
@@ -2064,11 +2157,12 @@ extends ParentNode implements Document  {
             synchronizeData();
         }
 
-        if (identifiers == null) {
-            identifiers = new Hashtable();
+        mergeIdentifiers();
+        if (fIdentifiers == null) {
+            fIdentifiers = new IdentifierTable();
         }
 
-        return identifiers.keys();
+        return Collections.enumeration(fIdentifiers.keySet());
 
     } // getIdentifiers():Enumeration
 
@@ -2277,6 +2371,22 @@ extends ParentNode implements Document  {
         return changes;
     }
 
+    /**
+     * Returns the element index entry answering a DeepNodeListImpl rooted
+     * in the given node, or null if element indexing is off or the node
+     * is not part of the tree of this document.
+     */
+    ElementIndex.Entry getElementIndexEntry(NodeImpl rootNode, boolean enableNS,
+                                            String nsName, String tagName) {
+        if (!elementIndexing || !ElementIndex.isInDocument(this, rootNode)) {
+            return null;
+        }
+        if (fElementIndex == null) {
+            fElementIndex = new ElementIndex(this);
+        }
+        return fElementIndex.getEntry(enableNS, nsName, tagName);
+    }
+
     //  NodeListCache pool
 
     /**
@@ -2701,12 +2811,18 @@ extends ParentNode implements Document  {
      * A method to be called when a node has been inserted in the tree.
      */
     void insertedNode(NodeImpl node, NodeImpl newInternal, boolean replace) {
+        if (fElementIndex != null) {
+            fElementIndex.insertedNode(newInternal);
+        }
     }
 
     /**
      * A method to be called when a node is about to be removed from the tree.
      */
     void removingNode(NodeImpl node, NodeImpl oldChild, boolean replace) {
+        if (fElementIndex != null) {
+            fElementIndex.removingNode(oldChild);
+        }
     }
 
     /**
@@ -2768,12 +2884,16 @@ extends ParentNode implements Document  {
      * A method to be called when an element has been renamed
      */
     void renamedElement(Element oldEl, Element newEl) {
+        // an element renamed by replacing it went through insertedNode
+        if (fElementIndex != null && oldEl == newEl) {
+            fElementIndex.renamedElement((ElementImpl) newEl);
+        }
     }
     
     /**
      * The serialized forms of the user data and node table
      * maps are Hashtables. Convert them into WeakHashMaps 
-     * on load.
+     * on load, and move the identifiers into the identifier table.
      */
     private void readObject(ObjectInputStream in)
         throws IOException, ClassNotFoundException {
@@ -2784,17 +2904,19 @@ extends ParentNode implements Document  {
         if (nodeTable != null) {
             nodeTable = new WeakHashMap(nodeTable);
         }
+        mergeIdentifiers();
     }
     
     /**
      * To allow DOM trees serialized by newer versions of Xerces
-     * to be read by older versions briefly move the user data
-     * and node table into Hashtables.
+     * to be read by older versions briefly move the user data,
+     * node table and identifiers into Hashtables.
      */
     private void writeObject(ObjectOutputStream out) throws IOException {
         // Keep references to the original objects for restoration after serialization
         final Map oldUserData = this.userData;
         final Map oldNodeTable = this.nodeTable;
+        mergeIdentifiers();
         try {
             if (oldUserData != null) {
                 this.userData = new Hashtable(oldUserData);
@@ -2802,6 +2924,9 @@ extends ParentNode implements Document  {
             if (oldNodeTable != null) {
                 nodeTable = new Hashtable(oldNodeTable);
             }
+            if (fIdentifiers != null) {
+                identifiers = new Hashtable(fIdentifiers);
+            }
             out.defaultWriteObject();
         }
         // If the write fails for some reason ensure 
@@ -2809,6 +2934,7 @@ extends ParentNode implements Document  {
         finally {
             this.userData = oldUserData;
             this.nodeTable = oldNodeTable;
+            this.identifiers = null;
         }
     }
 
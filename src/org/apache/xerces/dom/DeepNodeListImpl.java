@@ -63,6 +63,14 @@ import org.w3c.dom.NodeList;
  * access will also start by doing a getLength() to control their loop,
  * blowing this optimization out of the water.
  * <P>
+ * When the document has element indexing turned on, the list is instead
+ * answered from the element index of the document, which is kept up to
+ * date as the tree changes: the elements below the root node are found by
+ * binary search, and only when elements with the list's name were added
+ * or removed. The tree walk is still used when indexing is off, when the
+ * root node is not part of the document tree, and by extending classes
+ * which match elements by other criteria.
+ * <P>
  * NOTE: Level 2 of the DOM will probably _not_ use NodeList for its
  * extended search mechanisms, partly for the reasons just discussed.
  * 
@@ -80,12 +88,22 @@ public class DeepNodeListImpl
 
     protected NodeImpl rootNode; // Where the search started
     protected String tagName;   // Or "*" to mean all-tags-acceptable
-    protected int changes=0;
+    protected int changes=-1;
     protected ArrayList nodes;
     
     protected String nsName;
     protected boolean enableNS = false;
 
+    /** Element index entry answering this list, or null. */
+    private ElementIndex.Entry fEntry;
+
+    /** Modification count of the entry when fStart and fEnd were set. */
+    private int fEntryModCount;
+
+    /** Range of the elements of the entry which are in this list. */
+    private int fStart;
+    private int fEnd;
+
     //
     // Constructors
     //
@@ -111,6 +129,9 @@ public class DeepNodeListImpl
 
     /** Returns the length of the node list. */
     public int getLength() {
+        if (synchronizeEntry()) {
+            return fEnd - fStart;
+        }
         // Preload all matching elements. (Stops when we run out of subtree!)
         item(java.lang.Integer.MAX_VALUE);
         return nodes.size();
@@ -120,11 +141,11 @@ public class DeepNodeListImpl
     public Node item(int index) {
     	Node thisNode;
 
-        // Tree changed. Do it all from scratch!
-    	if (rootNode.changes() != changes) {
-            nodes   = new ArrayList();     
-            changes = rootNode.changes();
-    	}
+        // Answered by the element index
+        if (synchronizeEntry()) {
+            return index >= 0 && index < fEnd - fStart
+                 ? (Node) fEntry.elements.get(fStart + index) : null;
+        }
     
         // In the cache
     	final int currentSize = nodes.size();
@@ -156,6 +177,66 @@ public class DeepNodeListImpl
 
     } // item(int):Node
 
+    //
+    // Private methods
+    //
+
+    /**
+     * Checks whether the tree changed since the last access and returns
+     * true if this list is answered from the element index of the
+     * document, with fStart and fEnd up to date.
+     */
+    private boolean synchronizeEntry() {
+
+        // Tree changed. Look for the index entry again, or start the
+        // walk from scratch.
+        if (rootNode.changes() != changes) {
+            changes = rootNode.changes();
+            ElementIndex.Entry entry = null;
+            if (getClass() == DeepNodeListImpl.class) {
+                entry = rootNode.ownerDocument().getElementIndexEntry(
+                            rootNode, enableNS, nsName, tagName);
+            }
+            if (entry != fEntry) {
+                fEntry = entry;
+                fEntryModCount = -1;
+            }
+            if (entry == null) {
+                nodes = new ArrayList();
+            }
+        }
+        if (fEntry == null) {
+            return false;
+        }
+
+        // Elements with our name added or removed. Find the range of
+        // the descendants of the root node.
+        if (fEntry.modCount != fEntryModCount) {
+            fEntryModCount = fEntry.modCount;
+            if (rootNode.getNodeType() == Node.DOCUMENT_NODE) {
+                fStart = 0;
+                fEnd = fEntry.elements.size();
+            }
+            else {
+                // the descendants follow the root node, up to the node
+                // which follows its subtree
+                Node next = null;
+                for (Node n = rootNode; next == null && n != null; n = n.getParentNode()) {
+                    next = n.getNextSibling();
+                }
+                fStart = fEntry.lowerBound(rootNode);
+                if (fStart < fEntry.elements.size()
+                    && fEntry.elements.get(fStart) == rootNode) {
+                    fStart++;
+                }
+                fEnd = next == null ? fEntry.elements.size()
+                                    : fEntry.lowerBound((NodeImpl) next);
+            }
+        }
+        return true;
+
+    } // synchronizeEntry():boolean
+
     //
     // Protected methods (might be overridden by an extending DOM)
     //
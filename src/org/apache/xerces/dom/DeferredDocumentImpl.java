@@ -17,6 +17,10 @@
 
 package org.apache.xerces.dom;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 
 import org.w3c.dom.DOMImplementation;
@@ -76,6 +80,14 @@ public class DeferredDocumentImpl
     /** Initial chunk size. */
     protected static final int INITIAL_CHUNK_COUNT = (1 << (16 - CHUNK_SHIFT));   // 2^16 = 64k
 
+    // private
+
+    /** Smallest chunk shift. */
+    private static final int MIN_CHUNK_SHIFT = 4;          // 2^4 = 16
+
+    /** Largest chunk shift. */
+    private static final int MAX_CHUNK_SHIFT = 20;         // 2^20 = 1m
+
     //
     // Data
     //
@@ -88,7 +100,7 @@ public class DeferredDocumentImpl
     protected transient int fNodeCount = 0;
 
     /** Node types. */
-    protected transient int fNodeType[][];
+    protected transient IntChunks fNodeType;
 
     /** Node names. */
     protected transient Object fNodeName[][];
@@ -97,19 +109,25 @@ public class DeferredDocumentImpl
     protected transient Object fNodeValue[][];
 
     /** Node parents. */
-    protected transient int fNodeParent[][];
+    protected transient IntChunks fNodeParent;
 
     /** Node first children. */
-    protected transient int fNodeLastChild[][];
+    protected transient IntChunks fNodeLastChild;
 
     /** Node prev siblings. */
-    protected transient int fNodePrevSib[][];
+    protected transient IntChunks fNodePrevSib;
 
     /** Node namespace URI. */
     protected transient Object fNodeURI[][];
 
     /** Extra data. */
-    protected transient int fNodeExtra[][];
+    protected transient IntChunks fNodeExtra;
+
+    /** Node values stored in the character arena. */
+    protected transient IntChunks fNodeValueRef;
+
+    /** Character arena, if node values are kept outside of the heap. */
+    protected transient CharArena fCharArena;
 
     /** Identifier count. */
     protected transient int fIdCount;
@@ -125,10 +143,23 @@ public class DeferredDocumentImpl
     // Implementation Note: The deferred element and attribute must know how to
     // interpret the int representing the qname.
     protected boolean fNamespacesEnabled = false;
+
+    /** Chunk shift of the node tables. */
+    private final int fChunkShift;
+
+    /** Chunk size of the node tables. */
+    private final int fChunkSize;
+
+    /** Chunk mask of the node tables. */
+    private final int fChunkMask;
+
+    /** True if the node tables are kept outside of the heap. */
+    private final boolean fOffHeap;
     
     //
     // private data
     //
+    private transient int[] fInitArray;
     private transient final StringBuffer fBufferStr = new StringBuffer();
     private transient final ArrayList fStrChunks = new ArrayList();
 
@@ -154,6 +185,20 @@ public class DeferredDocumentImpl
 
     /** Experimental constructor. */
     public DeferredDocumentImpl(boolean namespaces, boolean grammarAccess) {
+        this(namespaces, grammarAccess, CHUNK_SIZE, false);
+    } // <init>(boolean,boolean)
+
+    /**
+     * Experimental constructor. The node tables are allocated in chunks
+     * of <code>chunkSize</code> nodes, rounded up to a power of two
+     * between 16 and 2^20. If <code>offHeap</code> is true, the tables
+     * are kept in direct buffers, and the data of text, comment,
+     * processing instruction and attribute nodes is kept in a character
+     * arena shared by all nodes of the document instead of in individual
+     * strings.
+     */
+    public DeferredDocumentImpl(boolean namespaces, boolean grammarAccess,
+                                int chunkSize, boolean offHeap) {
         super(grammarAccess);
 
         needsSyncData(true);
@@ -161,7 +206,16 @@ public class DeferredDocumentImpl
 
         fNamespacesEnabled = namespaces;
 
-    } // <init>(boolean,boolean)
+        int shift = MIN_CHUNK_SHIFT;
+        while (shift < MAX_CHUNK_SHIFT && (1 << shift) < chunkSize) {
+            shift++;
+        }
+        fChunkShift = shift;
+        fChunkSize = 1 << shift;
+        fChunkMask = fChunkSize - 1;
+        fOffHeap = offHeap;
+
+    } // <init>(boolean,boolean,int,boolean)
 
     //
     // Public methods
@@ -202,8 +256,8 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(Node.DOCUMENT_TYPE_NODE);
-        int chunk     = nodeIndex >> CHUNK_SHIFT;
-        int index     = nodeIndex & CHUNK_MASK;
+        int chunk     = nodeIndex >> fChunkShift;
+        int index     = nodeIndex & fChunkMask;
 
         // save name, public id, system id
         setChunkValue(fNodeName, rootElementName, chunk, index);
@@ -216,13 +270,13 @@ public class DeferredDocumentImpl
     } // createDeferredDocumentType(String,String,String):int
 
     public void setInternalSubset(int doctypeIndex, String subset) {
-        int chunk     = doctypeIndex >> CHUNK_SHIFT;
-        int index     = doctypeIndex & CHUNK_MASK;
+        int chunk     = doctypeIndex >> fChunkShift;
+        int index     = doctypeIndex & fChunkMask;
 
         // create extra data node to store internal subset
         int extraDataIndex = createNode(Node.DOCUMENT_TYPE_NODE); 
-        int echunk = extraDataIndex >> CHUNK_SHIFT;
-        int eindex = extraDataIndex & CHUNK_MASK;
+        int echunk = extraDataIndex >> fChunkShift;
+        int eindex = extraDataIndex & fChunkMask;
         setChunkIndex(fNodeExtra, extraDataIndex, chunk, index);        
         setChunkValue(fNodeValue, subset, echunk, eindex);
     }
@@ -233,14 +287,14 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(Node.NOTATION_NODE);
-        int chunk     = nodeIndex >> CHUNK_SHIFT;
-        int index     = nodeIndex & CHUNK_MASK;
+        int chunk     = nodeIndex >> fChunkShift;
+        int index     = nodeIndex & fChunkMask;
 
 
         // create extra data node
         int extraDataIndex = createNode(Node.NOTATION_NODE); 
-        int echunk = extraDataIndex >> CHUNK_SHIFT;
-        int eindex = extraDataIndex & CHUNK_MASK;
+        int echunk = extraDataIndex >> fChunkShift;
+        int eindex = extraDataIndex & fChunkMask;
 
         // save name, public id, system id, and notation name
         setChunkValue(fNodeName, notationName, chunk, index);
@@ -262,13 +316,13 @@ public class DeferredDocumentImpl
                                     String baseURI) {
         // create node
         int nodeIndex = createNode(Node.ENTITY_NODE);
-        int chunk     = nodeIndex >> CHUNK_SHIFT;
-        int index     = nodeIndex & CHUNK_MASK;
+        int chunk     = nodeIndex >> fChunkShift;
+        int index     = nodeIndex & fChunkMask;
 
         // create extra data node
         int extraDataIndex = createNode(Node.ENTITY_NODE); 
-        int echunk = extraDataIndex >> CHUNK_SHIFT;
-        int eindex = extraDataIndex & CHUNK_MASK;
+        int echunk = extraDataIndex >> fChunkShift;
+        int eindex = extraDataIndex & fChunkMask;
 
         // save name, public id, system id, and notation name
         setChunkValue(fNodeName, entityName, chunk, index);
@@ -285,8 +339,8 @@ public class DeferredDocumentImpl
 
 
         int extraDataIndex2 = createNode(Node.ENTITY_NODE);
-        int echunk2 = extraDataIndex2 >> CHUNK_SHIFT;
-        int eindex2 = extraDataIndex2 & CHUNK_MASK;
+        int echunk2 = extraDataIndex2 >> fChunkShift;
+        int eindex2 = extraDataIndex2 & fChunkMask;
 
         setChunkIndex(fNodeExtra, extraDataIndex2, echunk, eindex);
 
@@ -312,8 +366,8 @@ public class DeferredDocumentImpl
                               String version, String encoding){
         int eNodeIndex = getNodeExtra(currentEntityDecl, false);
         if (eNodeIndex !=-1) {
-            int echunk = eNodeIndex >> CHUNK_SHIFT;
-            int eindex = eNodeIndex & CHUNK_MASK;
+            int echunk = eNodeIndex >> fChunkShift;
+            int eindex = eNodeIndex & fChunkMask;
             setChunkValue(fNodeValue, version, echunk, eindex);
             setChunkValue(fNodeURI, encoding, echunk, eindex);
         }
@@ -321,8 +375,8 @@ public class DeferredDocumentImpl
     
     // DOM Level 3: sets element TypeInfo
     public void setTypeInfo(int elementNodeIndex, Object type) {
-        int elementChunk     = elementNodeIndex >> CHUNK_SHIFT;
-        int elementIndex     = elementNodeIndex & CHUNK_MASK;
+        int elementChunk     = elementNodeIndex >> fChunkShift;
+        int elementIndex     = elementNodeIndex & fChunkMask;
         setChunkValue(fNodeValue, type, elementChunk, elementIndex);
     }
 
@@ -340,8 +394,8 @@ public class DeferredDocumentImpl
         // get second extra data chunk
         int extraDataIndex = getNodeExtra(nodeIndex, false);
 
-        int echunk = extraDataIndex >> CHUNK_SHIFT;
-        int eindex = extraDataIndex & CHUNK_MASK;
+        int echunk = extraDataIndex >> fChunkShift;
+        int eindex = extraDataIndex & fChunkMask;
         
         setChunkValue(fNodeValue, value, echunk, eindex);
         
@@ -352,8 +406,8 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(Node.ENTITY_REFERENCE_NODE);
-        int chunk     = nodeIndex >> CHUNK_SHIFT;
-        int index     = nodeIndex & CHUNK_MASK;
+        int chunk     = nodeIndex >> fChunkShift;
+        int index     = nodeIndex & fChunkMask;
         setChunkValue(fNodeName, name, chunk, index);
         setChunkValue(fNodeValue, baseURI, chunk, index);
 
@@ -372,8 +426,8 @@ public class DeferredDocumentImpl
 
         // create node
         int elementNodeIndex = createNode(Node.ELEMENT_NODE);
-        int elementChunk     = elementNodeIndex >> CHUNK_SHIFT;
-        int elementIndex     = elementNodeIndex & CHUNK_MASK;
+        int elementChunk     = elementNodeIndex >> fChunkShift;
+        int elementIndex     = elementNodeIndex & fChunkMask;
         setChunkValue(fNodeName, elementName, elementChunk, elementIndex);
         setChunkValue(fNodeURI, elementURI, elementChunk, elementIndex);
         setChunkValue(fNodeValue, type, elementChunk, elementIndex);
@@ -398,8 +452,8 @@ public class DeferredDocumentImpl
 
         // create node
         int elementNodeIndex = createNode(Node.ELEMENT_NODE);
-        int elementChunk     = elementNodeIndex >> CHUNK_SHIFT;
-        int elementIndex     = elementNodeIndex & CHUNK_MASK;
+        int elementChunk     = elementNodeIndex >> fChunkShift;
+        int elementIndex     = elementNodeIndex & fChunkMask;
         setChunkValue(fNodeName, elementName, elementChunk, elementIndex);
         setChunkValue(fNodeURI, elementURI, elementChunk, elementIndex);
  
@@ -430,13 +484,13 @@ public class DeferredDocumentImpl
                                     
 		// create attribute
 		int attrNodeIndex = createDeferredAttribute(attrName, attrURI, attrValue, specified);
-		int attrChunk = attrNodeIndex >> CHUNK_SHIFT;
-		int attrIndex = attrNodeIndex & CHUNK_MASK;
+		int attrChunk = attrNodeIndex >> fChunkShift;
+		int attrIndex = attrNodeIndex & fChunkMask;
 		// set attribute's parent to element
 		setChunkIndex(fNodeParent, elementNodeIndex, attrChunk, attrIndex);
 
-		int elementChunk = elementNodeIndex >> CHUNK_SHIFT;
-		int elementIndex = elementNodeIndex & CHUNK_MASK;
+		int elementChunk = elementNodeIndex >> fChunkShift;
+		int elementIndex = elementNodeIndex & fChunkMask;
 
 		// get element's last attribute
 		int lastAttrNodeIndex = getChunkIndex(fNodeExtra, elementChunk, elementIndex);
@@ -451,14 +505,14 @@ public class DeferredDocumentImpl
 		if (id) {
 			extra = extra | ID;
 			setChunkIndex(fNodeExtra, extra, attrChunk, attrIndex);
-			String value = getChunkValue(fNodeValue, attrChunk, attrIndex);
+			String value = getValueString(attrChunk, attrIndex);
 			putIdentifier(value, elementNodeIndex);
 		}
 		// store type information
 		if (type != null) {
 			int extraDataIndex = createNode(DeferredNode.TYPE_NODE);
-			int echunk = extraDataIndex >> CHUNK_SHIFT;
-			int eindex = extraDataIndex & CHUNK_MASK;
+			int echunk = extraDataIndex >> fChunkShift;
+			int eindex = extraDataIndex & fChunkMask;
 
 			setChunkIndex(fNodeLastChild, extraDataIndex, attrChunk, attrIndex);
 			setChunkValue(fNodeValue, type, echunk, eindex);
@@ -478,13 +532,13 @@ public class DeferredDocumentImpl
         // create attribute
         int attrNodeIndex = createDeferredAttribute(attrName, attrURI,
                                                     attrValue, specified);
-        int attrChunk = attrNodeIndex >> CHUNK_SHIFT;
-        int attrIndex  = attrNodeIndex & CHUNK_MASK;
+        int attrChunk = attrNodeIndex >> fChunkShift;
+        int attrIndex  = attrNodeIndex & fChunkMask;
         // set attribute's parent to element
         setChunkIndex(fNodeParent, elementNodeIndex, attrChunk, attrIndex);
 
-        int elementChunk     = elementNodeIndex >> CHUNK_SHIFT;
-        int elementIndex     = elementNodeIndex & CHUNK_MASK;
+        int elementChunk     = elementNodeIndex >> fChunkShift;
+        int elementIndex     = elementNodeIndex & fChunkMask;
 
         // get element's last attribute
         int lastAttrNodeIndex = getChunkIndex(fNodeExtra,
@@ -515,11 +569,11 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(NodeImpl.ATTRIBUTE_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         setChunkValue(fNodeName, attrName, chunk, index);
         setChunkValue(fNodeURI, attrURI, chunk, index);
-        setChunkValue(fNodeValue, attrValue, chunk, index);
+        setValueString(attrValue, chunk, index);
         int extra = specified ? SPECIFIED : 0;
         setChunkIndex(fNodeExtra, extra, chunk, index);
 
@@ -533,8 +587,8 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(NodeImpl.ELEMENT_DEFINITION_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         setChunkValue(fNodeName, elementName, chunk, index);
 
         // return node index
@@ -548,9 +602,9 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(Node.TEXT_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        setValueString(data, chunk, index);
         // use extra to store ignorableWhitespace info
         setChunkIndex(fNodeExtra, ignorableWhitespace ?  1 : 0, chunk, index);
 
@@ -559,14 +613,41 @@ public class DeferredDocumentImpl
 
     } // createDeferredTextNode(String,boolean):int
 
+    /** 
+     * Creates a text node in the table. The characters are copied
+     * directly to the character arena if there is one.
+     */
+    public int createDeferredTextNode(char[] data, int offset, int length,
+                                      boolean ignorableWhitespace) {
+
+        // create node
+        int nodeIndex = createNode(Node.TEXT_NODE);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        int ref = fCharArena != null ? fCharArena.add(data, offset, length) : -1;
+        if (ref != -1) {
+            setChunkIndex(fNodeValueRef, ref, chunk, index);
+        }
+        else {
+            setChunkValue(fNodeValue, new String(data, offset, length),
+                          chunk, index);
+        }
+        // use extra to store ignorableWhitespace info
+        setChunkIndex(fNodeExtra, ignorableWhitespace ?  1 : 0, chunk, index);
+
+        // return node index
+        return nodeIndex;
+
+    } // createDeferredTextNode(char[],int,int,boolean):int
+
     /** Creates a CDATA section node in the table. */
     public int createDeferredCDATASection(String data) {
 
         // create node
         int nodeIndex = createNode(Node.CDATA_SECTION_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        setValueString(data, chunk, index);
 
         // return node index
         return nodeIndex;
@@ -578,10 +659,10 @@ public class DeferredDocumentImpl
                                                    String data) {
         // create node
         int nodeIndex = createNode(Node.PROCESSING_INSTRUCTION_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         setChunkValue(fNodeName, target, chunk, index);
-        setChunkValue(fNodeValue, data, chunk, index);
+        setValueString(data, chunk, index);
         // return node index
         return nodeIndex;
 
@@ -592,9 +673,9 @@ public class DeferredDocumentImpl
 
         // create node
         int nodeIndex = createNode(Node.COMMENT_NODE);
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
-        setChunkValue(fNodeValue, data, chunk, index);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        setValueString(data, chunk, index);
 
         // return node index
         return nodeIndex;
@@ -606,16 +687,22 @@ public class DeferredDocumentImpl
 
         // clone immediate node
         
-        int nchunk = nodeIndex >> CHUNK_SHIFT;
-        int nindex = nodeIndex & CHUNK_MASK;
-        int nodeType = fNodeType[nchunk][nindex];
+        int nchunk = nodeIndex >> fChunkShift;
+        int nindex = nodeIndex & fChunkMask;
+        int nodeType = getChunkIndex(fNodeType, nchunk, nindex);
         int cloneIndex = createNode((short)nodeType);
-        int cchunk = cloneIndex >> CHUNK_SHIFT;
-        int cindex = cloneIndex & CHUNK_MASK;
+        int cchunk = cloneIndex >> fChunkShift;
+        int cindex = cloneIndex & fChunkMask;
         setChunkValue(fNodeName, fNodeName[nchunk][nindex], cchunk, cindex);
         setChunkValue(fNodeValue, fNodeValue[nchunk][nindex], cchunk, cindex);
         setChunkValue(fNodeURI, fNodeURI[nchunk][nindex], cchunk, cindex);
-        int extraIndex = fNodeExtra[nchunk][nindex];
+        if (fNodeValueRef != null) {
+            // arena values are never modified, so they can be shared
+            setChunkIndex(fNodeValueRef,
+                          getChunkIndex(fNodeValueRef, nchunk, nindex),
+                          cchunk, cindex);
+        }
+        int extraIndex = getChunkIndex(fNodeExtra, nchunk, nindex);
         if (extraIndex != -1) {
             if (nodeType != Node.ATTRIBUTE_NODE && nodeType != Node.TEXT_NODE) {
                 extraIndex = cloneNode(extraIndex, false);
@@ -646,10 +733,10 @@ public class DeferredDocumentImpl
     public void appendChild(int parentIndex, int childIndex) {
 
         // append parent index
-        int pchunk = parentIndex >> CHUNK_SHIFT;
-        int pindex = parentIndex & CHUNK_MASK;
-        int cchunk = childIndex >> CHUNK_SHIFT;
-        int cindex = childIndex & CHUNK_MASK;
+        int pchunk = parentIndex >> fChunkShift;
+        int pindex = parentIndex & fChunkMask;
+        int cchunk = childIndex >> fChunkShift;
+        int cindex = childIndex & fChunkMask;
         setChunkIndex(fNodeParent, parentIndex, cchunk, cindex);
 
         // set previous sibling of new child
@@ -664,10 +751,10 @@ public class DeferredDocumentImpl
     /** Adds an attribute node to the specified element. */
     public int setAttributeNode(int elemIndex, int attrIndex) {
 
-        int echunk = elemIndex >> CHUNK_SHIFT;
-        int eindex = elemIndex & CHUNK_MASK;
-        int achunk = attrIndex >> CHUNK_SHIFT;
-        int aindex = attrIndex & CHUNK_MASK;
+        int echunk = elemIndex >> fChunkShift;
+        int eindex = elemIndex & fChunkMask;
+        int achunk = attrIndex >> fChunkShift;
+        int aindex = attrIndex & fChunkMask;
 
         // see if this attribute is already here
         String attrName = getChunkValue(fNodeName, achunk, aindex);
@@ -676,8 +763,8 @@ public class DeferredDocumentImpl
         int oachunk = -1;
         int oaindex = -1;
         while (oldAttrIndex != -1) {
-            oachunk = oldAttrIndex >> CHUNK_SHIFT;
-            oaindex = oldAttrIndex & CHUNK_MASK;
+            oachunk = oldAttrIndex >> fChunkShift;
+            oaindex = oldAttrIndex & fChunkMask;
             String oldAttrName = getChunkValue(fNodeName, oachunk, oaindex);
             if (oldAttrName.equals(attrName)) {
                 break;
@@ -695,23 +782,23 @@ public class DeferredDocumentImpl
                 setChunkIndex(fNodeExtra, prevIndex, echunk, eindex);
             }
             else {
-                int pchunk = nextIndex >> CHUNK_SHIFT;
-                int pindex = nextIndex & CHUNK_MASK;
+                int pchunk = nextIndex >> fChunkShift;
+                int pindex = nextIndex & fChunkMask;
                 setChunkIndex(fNodePrevSib, prevIndex, pchunk, pindex);
             }
 
             // remove connections to siblings
             clearChunkIndex(fNodeType, oachunk, oaindex);
             clearChunkValue(fNodeName, oachunk, oaindex);
-            clearChunkValue(fNodeValue, oachunk, oaindex);
+            clearValueString(oachunk, oaindex);
             clearChunkIndex(fNodeParent, oachunk, oaindex);
             clearChunkIndex(fNodePrevSib, oachunk, oaindex);
             int attrTextIndex =
                 clearChunkIndex(fNodeLastChild, oachunk, oaindex);
-            int atchunk = attrTextIndex >> CHUNK_SHIFT;
-            int atindex = attrTextIndex & CHUNK_MASK;
+            int atchunk = attrTextIndex >> fChunkShift;
+            int atindex = attrTextIndex & fChunkMask;
             clearChunkIndex(fNodeType, atchunk, atindex);
-            clearChunkValue(fNodeValue, atchunk, atindex);
+            clearValueString(atchunk, atindex);
             clearChunkIndex(fNodeParent, atchunk, atindex);
             clearChunkIndex(fNodeLastChild, atchunk, atindex);
         }
@@ -730,13 +817,13 @@ public class DeferredDocumentImpl
     /** Adds an attribute node to the specified element. */
     public void setIdAttributeNode(int elemIndex, int attrIndex) {
 
-        int chunk = attrIndex >> CHUNK_SHIFT;
-        int index = attrIndex & CHUNK_MASK;
+        int chunk = attrIndex >> fChunkShift;
+        int index = attrIndex & fChunkMask;
         int extra = getChunkIndex(fNodeExtra, chunk, index);
         extra = extra | ID;
         setChunkIndex(fNodeExtra, extra, chunk, index);
 
-        String value = getChunkValue(fNodeValue, chunk, index);
+        String value = getValueString(chunk, index);
         putIdentifier(value, elemIndex);
     }
 
@@ -744,8 +831,8 @@ public class DeferredDocumentImpl
     /** Sets type of attribute */
     public void setIdAttribute(int attrIndex) {
 
-        int chunk = attrIndex >> CHUNK_SHIFT;
-        int index = attrIndex & CHUNK_MASK;
+        int chunk = attrIndex >> fChunkShift;
+        int index = attrIndex & fChunkMask;
         int extra = getChunkIndex(fNodeExtra, chunk, index);
         extra = extra | ID;
         setChunkIndex(fNodeExtra, extra, chunk, index);
@@ -759,10 +846,10 @@ public class DeferredDocumentImpl
             return newChildIndex;
         }
 
-        int nchunk = newChildIndex >> CHUNK_SHIFT;
-        int nindex = newChildIndex & CHUNK_MASK;
-        int rchunk = refChildIndex >> CHUNK_SHIFT;
-        int rindex = refChildIndex & CHUNK_MASK;
+        int nchunk = newChildIndex >> fChunkShift;
+        int nindex = newChildIndex & fChunkMask;
+        int rchunk = refChildIndex >> fChunkShift;
+        int rindex = refChildIndex & fChunkMask;
         int previousIndex = getChunkIndex(fNodePrevSib, rchunk, rindex);
         setChunkIndex(fNodePrevSib, newChildIndex, rchunk, rindex);
         setChunkIndex(fNodePrevSib, previousIndex, nchunk, nindex);
@@ -773,8 +860,8 @@ public class DeferredDocumentImpl
 
     /** Sets the last child of the parentIndex to childIndex. */
     public void setAsLastChild(int parentIndex, int childIndex) {
-        int pchunk = parentIndex >> CHUNK_SHIFT;
-        int pindex = parentIndex & CHUNK_MASK;
+        int pchunk = parentIndex >> fChunkShift;
+        int pindex = parentIndex & fChunkMask;
         setChunkIndex(fNodeLastChild, childIndex, pchunk, pindex);
     } // setAsLastChild(int,int)
 
@@ -796,8 +883,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkIndex(fNodeParent, chunk, index)
                     : getChunkIndex(fNodeParent, chunk, index);
 
@@ -818,8 +905,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkIndex(fNodeLastChild, chunk, index)
                     : getChunkIndex(fNodeLastChild, chunk, index);
 
@@ -843,8 +930,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         int type = getChunkIndex(fNodeType, chunk, index);
         if (type == Node.TEXT_NODE) {
             do {
@@ -852,8 +939,8 @@ public class DeferredDocumentImpl
                 if (nodeIndex == -1) {
                     break;
                 }
-                chunk = nodeIndex >> CHUNK_SHIFT;
-                index = nodeIndex & CHUNK_MASK;
+                chunk = nodeIndex >> fChunkShift;
+                index = nodeIndex & fChunkMask;
                 type = getChunkIndex(fNodeType, chunk, index);
             } while (type == Node.TEXT_NODE);
         }
@@ -884,8 +971,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkIndex(fNodePrevSib, chunk, index)
                     : getChunkIndex(fNodePrevSib, chunk, index);
 
@@ -908,8 +995,8 @@ public class DeferredDocumentImpl
                  index != -1;
                  index = getChunkIndex(fNodePrevSib, nchunk, nindex)) {
 
-                nchunk = index >> CHUNK_SHIFT;
-                nindex = index  & CHUNK_MASK;
+                nchunk = index >> fChunkShift;
+                nindex = index  & fChunkMask;
                 if (getChunkIndex(fNodeType, nchunk, nindex) == Node.DOCUMENT_TYPE_NODE) {
                     docTypeIndex = index;
                     break;
@@ -920,14 +1007,14 @@ public class DeferredDocumentImpl
             if (docTypeIndex == -1) {
                 return -1;
             }
-            nchunk = docTypeIndex >> CHUNK_SHIFT;
-            nindex = docTypeIndex & CHUNK_MASK;
+            nchunk = docTypeIndex >> fChunkShift;
+            nindex = docTypeIndex & fChunkMask;
             for (int index = getChunkIndex(fNodeLastChild, nchunk, nindex);
                  index != -1;
                  index = getChunkIndex(fNodePrevSib, nchunk, nindex)) {
 
-                nchunk = index >> CHUNK_SHIFT;
-                nindex = index & CHUNK_MASK;
+                nchunk = index >> fChunkShift;
+                nindex = index & fChunkMask;
                 if (getChunkIndex(fNodeType, nchunk, nindex) ==
                                            NodeImpl.ELEMENT_DEFINITION_NODE
                  && getChunkValue(fNodeName, nchunk, nindex) == elementName) {
@@ -949,8 +1036,8 @@ public class DeferredDocumentImpl
         }
 
         // get node type
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         int type = getChunkIndex(fNodeType, chunk, index);
         if (type != Node.TEXT_NODE && type != Node.CDATA_SECTION_NODE) {
             clearChunkIndex(fNodeType, chunk, index);
@@ -1119,8 +1206,8 @@ public class DeferredDocumentImpl
             return null;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkValue(fNodeName, chunk, index)
                     : getChunkValue(fNodeName, chunk, index);
 
@@ -1141,10 +1228,10 @@ public class DeferredDocumentImpl
             return null;
         }
         
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
-        String value = free ? clearChunkValue(fNodeValue, chunk, index)
-                            : getChunkValue(fNodeValue, chunk, index);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        String value = free ? clearValueString(chunk, index)
+                            : getValueString(chunk, index);
         if (value == null) {
             return null;
         }
@@ -1161,9 +1248,9 @@ public class DeferredDocumentImpl
                 do {
                     // go in reverse order: find last child, then
                     // its previous sibling, etc
-                    chunk = prevSib >> CHUNK_SHIFT;
-                    index = prevSib & CHUNK_MASK;
-                    value = getChunkValue(fNodeValue, chunk, index);
+                    chunk = prevSib >> fChunkShift;
+                    index = prevSib & fChunkMask;
+                    value = getValueString(chunk, index);
                     fStrChunks.add(value);
                     prevSib = getChunkIndex(fNodePrevSib, chunk, index);
                     if (prevSib == -1) {
@@ -1193,9 +1280,9 @@ public class DeferredDocumentImpl
                 while (child !=-1) {
                     // go in reverse order: find last child, then
                     // its previous sibling, etc
-                   chunk = child >> CHUNK_SHIFT;
-                    index = child & CHUNK_MASK;
-                    value = getChunkValue(fNodeValue, chunk, index);
+                   chunk = child >> fChunkShift;
+                    index = child & fChunkMask;
+                    value = getValueString(chunk, index);
                     fStrChunks.add(value);
                     child = getChunkIndex(fNodePrevSib, chunk, index);
                 }
@@ -1232,14 +1319,14 @@ public class DeferredDocumentImpl
             return null;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         
         
         Object value = fNodeValue[chunk] != null ? fNodeValue[chunk][index] : null;
         if (value != null) {
             fNodeValue[chunk][index] = null;
-            RefCount c = (RefCount) fNodeValue[chunk][CHUNK_SIZE];
+            RefCount c = (RefCount) fNodeValue[chunk][fChunkSize];
             c.fCount--;
             if (c.fCount == 0) {
                 fNodeValue[chunk] = null;
@@ -1258,10 +1345,10 @@ public class DeferredDocumentImpl
             return null;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
-        return free ? clearChunkValue(fNodeValue, chunk, index)
-                    : getChunkValue(fNodeValue, chunk, index);
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
+        return free ? clearValueString(chunk, index)
+                    : getValueString(chunk, index);
 
     } // getNodeValue(int,boolean):String
 
@@ -1283,8 +1370,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkIndex(fNodeExtra, chunk, index)
                     : getChunkIndex(fNodeExtra, chunk, index);
 
@@ -1305,8 +1392,8 @@ public class DeferredDocumentImpl
             return -1;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? (short)clearChunkIndex(fNodeType, chunk, index)
                     : (short)getChunkIndex(fNodeType, chunk, index);
 
@@ -1317,14 +1404,14 @@ public class DeferredDocumentImpl
         if (elemIndex == -1 || name == null) {
             return null;
         }
-        int echunk = elemIndex >> CHUNK_SHIFT;
-        int eindex = elemIndex & CHUNK_MASK;
+        int echunk = elemIndex >> fChunkShift;
+        int eindex = elemIndex & fChunkMask;
         int attrIndex = getChunkIndex(fNodeExtra, echunk, eindex);
         while (attrIndex != -1) {
-            int achunk = attrIndex >> CHUNK_SHIFT;
-            int aindex = attrIndex & CHUNK_MASK;
+            int achunk = attrIndex >> fChunkShift;
+            int aindex = attrIndex & fChunkMask;
             if (getChunkValue(fNodeName, achunk, aindex) == name) {
-                return getChunkValue(fNodeValue, achunk, aindex);
+                return getValueString(achunk, aindex);
             }
             attrIndex = getChunkIndex(fNodePrevSib, achunk, aindex);
         }
@@ -1346,8 +1433,8 @@ public class DeferredDocumentImpl
             return null;
         }
 
-        int chunk = nodeIndex >> CHUNK_SHIFT;
-        int index = nodeIndex & CHUNK_MASK;
+        int chunk = nodeIndex >> fChunkShift;
+        int index = nodeIndex & fChunkMask;
         return free ? clearChunkValue(fNodeURI, chunk, index)
                     : getChunkValue(fNodeURI, chunk, index);
 
@@ -1362,8 +1449,8 @@ public class DeferredDocumentImpl
             System.out.println("putIdentifier(" + name + ", "
                                + elementNodeIndex + ')' + " // " +
                                getChunkValue(fNodeName,
-                                             elementNodeIndex >> CHUNK_SHIFT,
-                                             elementNodeIndex & CHUNK_MASK));
+                                             elementNodeIndex >> fChunkShift,
+                                             elementNodeIndex & fChunkMask));
         }
 
         // initialize arrays
@@ -1406,8 +1493,8 @@ public class DeferredDocumentImpl
             System.out.print("lch\t");
             System.out.print("psib");
             System.out.println();
-            for (int i = 0; i < fNodeType.length; i++) {
-                if (fNodeType[i] != null) {
+            for (int i = 0; i < fNodeType.length(); i++) {
+                if (fNodeType.exists(i)) {
                     // separator
                     System.out.print("--------");
                     System.out.print("--------");
@@ -1421,7 +1508,7 @@ public class DeferredDocumentImpl
                     // ref count
                     System.out.print(i);
                     System.out.print('\t');
-                    switch (fNodeType[i][CHUNK_SIZE]) {
+                    switch (fNodeType.getCount(i)) {
                         case DocumentImpl.ELEMENT_DEFINITION_NODE: { System.out.print("EDef"); break; }
                         case Node.DOCUMENT_NODE: { System.out.print("Doc"); break; }
                         case Node.DOCUMENT_TYPE_NODE: { System.out.print("DType"); break; }
@@ -1433,22 +1520,22 @@ public class DeferredDocumentImpl
                         case Node.TEXT_NODE: { System.out.print("Text"); break; }
                         case Node.ATTRIBUTE_NODE: { System.out.print("Attr"); break; }
                         case DeferredNode.TYPE_NODE: { System.out.print("TypeInfo"); break; }
-                        default: { System.out.print("?"+fNodeType[i][CHUNK_SIZE]); }
+                        default: { System.out.print("?"+fNodeType.getCount(i)); }
                     }
                     System.out.print('\t');
-                    System.out.print(fNodeName[i][CHUNK_SIZE]);
+                    System.out.print(fNodeName[i][fChunkSize]);
                     System.out.print('\t');
-                    System.out.print(fNodeValue[i][CHUNK_SIZE]);
+                    System.out.print(fNodeValue[i][fChunkSize]);
                     System.out.print('\t');
-                    System.out.print(fNodeURI[i][CHUNK_SIZE]);
+                    System.out.print(fNodeURI[i][fChunkSize]);
                     System.out.print('\t');
-                    System.out.print(fNodeParent[i][CHUNK_SIZE]);
+                    System.out.print(fNodeParent.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodeLastChild[i][CHUNK_SIZE]);
+                    System.out.print(fNodeLastChild.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodePrevSib[i][CHUNK_SIZE]);
+                    System.out.print(fNodePrevSib.getCount(i));
                     System.out.print('\t');
-                    System.out.print(fNodeExtra[i][CHUNK_SIZE]);
+                    System.out.print(fNodeExtra.getCount(i));
                     System.out.println();
                 }
             }
@@ -1458,8 +1545,8 @@ public class DeferredDocumentImpl
             // This assumes that the document is small
             System.out.println("# start table");
             for (int i = 0; i < fNodeCount; i++) {
-                int chunk = i >> CHUNK_SHIFT;
-                int index = i & CHUNK_MASK;
+                int chunk = i >> fChunkShift;
+                int index = i & fChunkMask;
                 if (i % 10 == 0) {
                     System.out.print("num\t");
                     System.out.print("type\t");
@@ -1531,12 +1618,21 @@ public class DeferredDocumentImpl
         // fluff up enough nodes to fill identifiers hash
         if (fIdElement != null) {
 
-            // REVISIT: There has to be a more efficient way of
-            //          doing this. But keep in mind that the
-            //          tree can have been altered and re-ordered
-            //          before all of the element nodes with ID
-            //          attributes have been registered. For now
-            //          this is reasonable and safe. -Ac
+            // the number of identifiers is known, size the table for it
+            if (fIdentifiers == null) {
+                fIdentifiers = new IdentifierTable(fIdCount);
+            }
+
+            // As long as the tree has not been modified, the elements
+            // can all be reached in a single walk of the tree.
+            if (changes == 0) {
+                synchronizeIdentifiers(this, Integer.MAX_VALUE, 0);
+            }
+
+            // Keep in mind that the tree can have been altered and
+            // re-ordered before all of the element nodes with ID
+            // attributes have been registered. Find the remaining
+            // elements from their paths to the root. -Ac
 
             IntVector path = new IntVector();
             for (int i = 0; i < fIdCount; i++) {
@@ -1553,8 +1649,8 @@ public class DeferredDocumentImpl
                 int index = elementNodeIndex;
                 do {
                     path.addElement(index);
-                    int pchunk = index >> CHUNK_SHIFT;
-                    int pindex = index & CHUNK_MASK;
+                    int pchunk = index >> fChunkShift;
+                    int pindex = index & fChunkMask;
                     index = getChunkIndex(fNodeParent, pchunk, pindex);
                 } while (index != -1);
 
@@ -1599,6 +1695,50 @@ public class DeferredDocumentImpl
 
     } // synchronizeData()
 
+    /**
+     * Registers the identifiers of the elements in the given subtree
+     * which follow the given position in the identifier arrays, creating
+     * the nodes on the paths to the elements. Node indexes are allocated
+     * in document order while parsing, so that the nodes in the subtree of
+     * a node have the indexes from its own up to the one of the node which
+     * follows it. This only holds as long as the tree has not been modified.
+     *
+     * @param parent The root of the subtree.
+     * @param end    The index of the node following the subtree.
+     * @param next   Position in the identifier arrays of the first
+     *               element which follows the parent node.
+     *
+     * @return The position of the first element following the subtree.
+     */
+    private int synchronizeIdentifiers(ParentNode parent, int end, int next) {
+
+        for (ChildNode child = (ChildNode) parent.getFirstChild();
+             child != null && next < fIdCount;
+             child = child.nextSibling) {
+
+            if (!(child instanceof DeferredNode)) {
+                break;
+            }
+
+            // an element registers its own identifiers when created
+            int start = ((DeferredNode) child).getNodeIndex();
+            while (next < fIdCount && fIdElement[next] <= start) {
+                next++;
+            }
+
+            // walk down to the elements inside the child
+            int childEnd = child.nextSibling instanceof DeferredNode
+                         ? ((DeferredNode) child.nextSibling).getNodeIndex()
+                         : end;
+            if (next < fIdCount && fIdElement[next] < childEnd
+                && child instanceof ParentNode) {
+                next = synchronizeIdentifiers((ParentNode) child, childEnd, next);
+            }
+        }
+        return next;
+
+    } // synchronizeIdentifiers(ParentNode,int,int):int
+
     /**
      * Synchronizes the node's children with the internal structure.
      * Fluffing the children at once solves a lot of work to keep
@@ -1778,22 +1918,25 @@ public class DeferredDocumentImpl
     protected void ensureCapacity(int chunk) {
         if (fNodeType == null) {
             // create buffers
-            fNodeType       = new int[INITIAL_CHUNK_COUNT][];
-            fNodeName       = new Object[INITIAL_CHUNK_COUNT][];
-            fNodeValue      = new Object[INITIAL_CHUNK_COUNT][];
-            fNodeParent     = new int[INITIAL_CHUNK_COUNT][];
-            fNodeLastChild  = new int[INITIAL_CHUNK_COUNT][];
-            fNodePrevSib    = new int[INITIAL_CHUNK_COUNT][];
-            fNodeURI        = new Object[INITIAL_CHUNK_COUNT][];
-            fNodeExtra      = new int[INITIAL_CHUNK_COUNT][];
-        }
-        else if (fNodeType.length <= chunk) {
+            int count = fChunkShift < 16 ? 1 << (16 - fChunkShift) : 1;
+            fNodeType       = createTable(count);
+            fNodeName       = new Object[count][];
+            fNodeValue      = new Object[count][];
+            fNodeParent     = createTable(count);
+            fNodeLastChild  = createTable(count);
+            fNodePrevSib    = createTable(count);
+            fNodeURI        = new Object[count][];
+            fNodeExtra      = createTable(count);
+            if (fOffHeap) {
+                fNodeValueRef = createTable(count);
+                fCharArena = new CharArena();
+            }
+        }
+        else if (fNodeType.length() <= chunk) {
             // resize the tables
             int newsize = chunk * 2;
 
-            int[][] newArray = new int[newsize][];
-            System.arraycopy(fNodeType, 0, newArray, 0, chunk);
-            fNodeType = newArray;
+            fNodeType.resize(newsize);
 
             Object[][] newStrArray = new Object[newsize][];
             System.arraycopy(fNodeName, 0, newStrArray, 0, chunk);
@@ -1803,51 +1946,62 @@ public class DeferredDocumentImpl
             System.arraycopy(fNodeValue, 0, newStrArray, 0, chunk);
             fNodeValue = newStrArray;
 
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeParent, 0, newArray, 0, chunk);
-            fNodeParent = newArray;
-
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeLastChild, 0, newArray, 0, chunk);
-            fNodeLastChild = newArray;
-
-            newArray = new int[newsize][];
-            System.arraycopy(fNodePrevSib, 0, newArray, 0, chunk);
-            fNodePrevSib = newArray;
+            fNodeParent.resize(newsize);
+            fNodeLastChild.resize(newsize);
+            fNodePrevSib.resize(newsize);
 
             newStrArray = new Object[newsize][];
             System.arraycopy(fNodeURI, 0, newStrArray, 0, chunk);
             fNodeURI = newStrArray;
 
-            newArray = new int[newsize][];
-            System.arraycopy(fNodeExtra, 0, newArray, 0, chunk);
-            fNodeExtra = newArray;
+            fNodeExtra.resize(newsize);
+            if (fNodeValueRef != null) {
+                fNodeValueRef.resize(newsize);
+            }
         }
-        else if (fNodeType[chunk] != null) {
+        else if (fNodeType.exists(chunk)) {
             // Done - there's sufficient capacity
             return;
         }
 
         // create new chunks
-        createChunk(fNodeType, chunk);
+        // (the chunks of the value references are created when used)
+        fNodeType.create(chunk);
         createChunk(fNodeName, chunk);
         createChunk(fNodeValue, chunk);
-        createChunk(fNodeParent, chunk);
-        createChunk(fNodeLastChild, chunk);
-        createChunk(fNodePrevSib, chunk);
+        fNodeParent.create(chunk);
+        fNodeLastChild.create(chunk);
+        fNodePrevSib.create(chunk);
         createChunk(fNodeURI, chunk);
-        createChunk(fNodeExtra, chunk);
+        fNodeExtra.create(chunk);
 
         // Done
         return;
 
     } // ensureCapacity(int,int)
 
+    /** Creates an empty table of int values. */
+    private IntChunks createTable(int chunkCount) {
+        if (fInitArray == null) {
+            if (fChunkSize == CHUNK_SIZE) {
+                fInitArray = INIT_ARRAY;
+            }
+            else {
+                fInitArray = new int[fChunkSize + 1];
+                for (int i = 0; i < fChunkSize; i++) {
+                    fInitArray[i] = -1;
+                }
+            }
+        }
+        return fOffHeap ? (IntChunks) new DirectIntChunks(fInitArray, chunkCount)
+                        : new HeapIntChunks(fInitArray, chunkCount);
+    } // createTable(int):IntChunks
+
     /** Creates a node of the specified type. */
     protected int createNode(short nodeType) {
         // ensure tables are large enough
-        int chunk = fNodeCount >> CHUNK_SHIFT;
-        int index = fNodeCount & CHUNK_MASK;
+        int chunk = fNodeCount >> fChunkShift;
+        int index = fNodeCount & fChunkMask;
         ensureCapacity(chunk);
 
         // initialize node
@@ -1927,19 +2081,13 @@ public class DeferredDocumentImpl
             INIT_ARRAY[i] = -1;
         }
     }
-    /** Creates the specified chunk in the given array of chunks. */
-    private final void createChunk(int data[][], int chunk) {
-        data[chunk] = new int[CHUNK_SIZE + 1];
-        System.arraycopy(INIT_ARRAY, 0, data[chunk], 0, CHUNK_SIZE);
-    }
-
     static final class RefCount {
         int fCount;
     }
 
     private final void createChunk(Object data[][], int chunk) {
-        data[chunk] = new Object[CHUNK_SIZE + 1];
-        data[chunk][CHUNK_SIZE] = new RefCount();
+        data[chunk] = new Object[fChunkSize + 1];
+        data[chunk][fChunkSize] = new RefCount();
     }
 
     /**
@@ -1947,23 +2095,9 @@ public class DeferredDocumentImpl
      *
      * @return Returns the old value.
      */
-    private final int setChunkIndex(int data[][], int value,
+    private final int setChunkIndex(IntChunks data, int value,
                                     int chunk, int index) {
-        if (value == -1) {
-            return clearChunkIndex(data, chunk, index);
-        }
-        int [] dataChunk = data[chunk];
-        // Re-create chunk if it was deleted.
-        if (dataChunk == null) {
-            createChunk(data, chunk);
-            dataChunk = data[chunk];
-        }
-        int ovalue = dataChunk[index];
-        if (ovalue == -1) {
-            dataChunk[CHUNK_SIZE]++;
-        }
-        dataChunk[index] = value;
-        return ovalue;
+        return data.set(value, chunk, index);
     }
     private final String setChunkValue(Object data[][], Object value,
                                        int chunk, int index) {
@@ -1978,7 +2112,7 @@ public class DeferredDocumentImpl
         }
         String ovalue = (String) dataChunk[index];
         if (ovalue == null) {
-            RefCount c = (RefCount) dataChunk[CHUNK_SIZE];
+            RefCount c = (RefCount) dataChunk[fChunkSize];
             c.fCount++;
         }
         dataChunk[index] = value;
@@ -1988,13 +2122,19 @@ public class DeferredDocumentImpl
     /**
      * Returns the specified value in the given data at the chunk and index.
      */
-    private final int getChunkIndex(int data[][], int chunk, int index) {
-        return data[chunk] != null ? data[chunk][index] : -1;
+    private final int getChunkIndex(IntChunks data, int chunk, int index) {
+        return data.get(chunk, index);
     }
     private final String getChunkValue(Object data[][], int chunk, int index) {
         return data[chunk] != null ? (String) data[chunk][index] : null;
     }
     private final String getNodeValue(int chunk, int index) {
+        if (fNodeValueRef != null) {
+            int ref = getChunkIndex(fNodeValueRef, chunk, index);
+            if (ref != -1) {
+                return fCharArena.getString(ref);
+            }
+        }
         Object data = fNodeValue[chunk][index];
         if (data == null){
             return null;
@@ -2016,23 +2156,15 @@ public class DeferredDocumentImpl
      *
      * @return Returns the old value.
      */
-    private final int clearChunkIndex(int data[][], int chunk, int index) {
-        int value = data[chunk] != null ? data[chunk][index] : -1;
-        if (value != -1) {
-            data[chunk][CHUNK_SIZE]--;
-            data[chunk][index] = -1;
-            if (data[chunk][CHUNK_SIZE] == 0) {
-                data[chunk] = null;
-            }
-        }
-        return value;
+    private final int clearChunkIndex(IntChunks data, int chunk, int index) {
+        return data.clear(chunk, index);
     }
     private final String clearChunkValue(Object data[][],
                                          int chunk, int index) {
         String value = data[chunk] != null ? (String)data[chunk][index] : null;
         if (value != null) {
             data[chunk][index] = null;
-            RefCount c = (RefCount) data[chunk][CHUNK_SIZE];
+            RefCount c = (RefCount) data[chunk][fChunkSize];
             c.fCount--;
             if (c.fCount == 0) {
                 data[chunk] = null;
@@ -2041,6 +2173,48 @@ public class DeferredDocumentImpl
         return value;
     }
 
+    /**
+     * Sets the value of the node at the chunk and index, storing it in the
+     * character arena if there is one.
+     */
+    private final void setValueString(String value, int chunk, int index) {
+        if (fCharArena != null && value != null) {
+            int ref = fCharArena.add(value);
+            if (ref != -1) {
+                setChunkIndex(fNodeValueRef, ref, chunk, index);
+                return;
+            }
+        }
+        setChunkValue(fNodeValue, value, chunk, index);
+    }
+
+    /** Returns the value of the node at the chunk and index. */
+    private final String getValueString(int chunk, int index) {
+        if (fNodeValueRef != null) {
+            int ref = getChunkIndex(fNodeValueRef, chunk, index);
+            if (ref != -1) {
+                return fCharArena.getString(ref);
+            }
+        }
+        return getChunkValue(fNodeValue, chunk, index);
+    }
+
+    /** 
+     * Clears the value of the node at the chunk and index. The characters
+     * of a value stored in the arena are only released with the document.
+     *
+     * @return Returns the old value.
+     */
+    private final String clearValueString(int chunk, int index) {
+        if (fNodeValueRef != null) {
+            int ref = clearChunkIndex(fNodeValueRef, chunk, index);
+            if (ref != -1) {
+                return fCharArena.getString(ref);
+            }
+        }
+        return clearChunkValue(fNodeValue, chunk, index);
+    }
+
     /**
      * This version of putIdentifier is needed to avoid fluffing
      * all of the paths to ID attributes when a node object is
@@ -2054,13 +2228,13 @@ public class DeferredDocumentImpl
                                element+')');
         }
 
-        // create hashtable
-        if (identifiers == null) {
-            identifiers = new java.util.Hashtable();
+        // create table
+        if (fIdentifiers == null) {
+            fIdentifiers = new IdentifierTable(fIdCount);
         }
 
         // save ID and its associated element
-        identifiers.put(idName, element);
+        fIdentifiers.put(idName, element);
 
     } // putIdentifier0(String,Element)
 
@@ -2152,4 +2326,368 @@ public class DeferredDocumentImpl
 
     } // class IntVector
 
+    /**
+     * A table of int values, one per node, allocated in chunks. The last
+     * slot of a chunk counts the values which are not -1, and the chunk
+     * is dropped when it reaches zero.
+     */
+    static abstract class IntChunks {
+
+        //
+        // Data
+        //
+
+        /** Initial content of a chunk. */
+        protected final int[] fInit;
+
+        /** Chunk size. */
+        protected final int fChunkSize;
+
+        //
+        // Constructors
+        //
+
+        protected IntChunks(int[] init) {
+            fInit = init;
+            fChunkSize = init.length - 1;
+        }
+
+        //
+        // Methods
+        //
+
+        /** Returns the number of chunks which can be stored. */
+        abstract int length();
+
+        /** Resizes the table to store the given number of chunks. */
+        abstract void resize(int length);
+
+        /** Returns true if the chunk has been created. */
+        abstract boolean exists(int chunk);
+
+        /** Creates the specified chunk. */
+        abstract void create(int chunk);
+
+        /** Returns the number of values set in the chunk. */
+        abstract int getCount(int chunk);
+
+        /** Returns the value at the chunk and index. */
+        abstract int get(int chunk, int index);
+
+        /**
+         * Sets the value at the chunk and index.
+         *
+         * @return Returns the old value.
+         */
+        abstract int set(int value, int chunk, int index);
+
+        /**
+         * Clears the value at the chunk and index.
+         *
+         * @return Returns the old value.
+         */
+        abstract int clear(int chunk, int index);
+
+    } // class IntChunks
+
+    /**
+     * A table of int values kept in arrays.
+     */
+    static final class HeapIntChunks extends IntChunks {
+
+        /** Chunks. */
+        private int[][] fChunks;
+
+        HeapIntChunks(int[] init, int length) {
+            super(init);
+            fChunks = new int[length][];
+        }
+
+        int length() {
+            return fChunks.length;
+        }
+
+        void resize(int length) {
+            int[][] newArray = new int[length][];
+            System.arraycopy(fChunks, 0, newArray, 0, fChunks.length);
+            fChunks = newArray;
+        }
+
+        boolean exists(int chunk) {
+            return fChunks[chunk] != null;
+        }
+
+        void create(int chunk) {
+            fChunks[chunk] = new int[fChunkSize + 1];
+            System.arraycopy(fInit, 0, fChunks[chunk], 0, fChunkSize);
+        }
+
+        int getCount(int chunk) {
+            return fChunks[chunk][fChunkSize];
+        }
+
+        int get(int chunk, int index) {
+            return fChunks[chunk] != null ? fChunks[chunk][index] : -1;
+        }
+
+        int set(int value, int chunk, int index) {
+            if (value == -1) {
+                return clear(chunk, index);
+            }
+            int [] dataChunk = fChunks[chunk];
+            // Re-create chunk if it was deleted.
+            if (dataChunk == null) {
+                create(chunk);
+                dataChunk = fChunks[chunk];
+            }
+            int ovalue = dataChunk[index];
+            if (ovalue == -1) {
+                dataChunk[fChunkSize]++;
+            }
+            dataChunk[index] = value;
+            return ovalue;
+        }
+
+        int clear(int chunk, int index) {
+            int [] dataChunk = fChunks[chunk];
+            int value = dataChunk != null ? dataChunk[index] : -1;
+            if (value != -1) {
+                dataChunk[fChunkSize]--;
+                dataChunk[index] = -1;
+                if (dataChunk[fChunkSize] == 0) {
+                    fChunks[chunk] = null;
+                }
+            }
+            return value;
+        }
+
+    } // class HeapIntChunks
+
+    /**
+     * A table of int values kept in direct buffers, outside of the heap.
+     * The memory of a chunk is released when the chunk is dropped and its
+     * buffer is garbage collected.
+     */
+    static final class DirectIntChunks extends IntChunks {
+
+        /** Chunks. */
+        private IntBuffer[] fChunks;
+
+        DirectIntChunks(int[] init, int length) {
+            super(init);
+            fChunks = new IntBuffer[length];
+        }
+
+        int length() {
+            return fChunks.length;
+        }
+
+        void resize(int length) {
+            IntBuffer[] newArray = new IntBuffer[length];
+            System.arraycopy(fChunks, 0, newArray, 0, fChunks.length);
+            fChunks = newArray;
+        }
+
+        boolean exists(int chunk) {
+            return fChunks[chunk] != null;
+        }
+
+        void create(int chunk) {
+            IntBuffer buffer = ByteBuffer.allocateDirect((fChunkSize + 1) << 2)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+            buffer.put(fInit);
+            fChunks[chunk] = buffer;
+        }
+
+        int getCount(int chunk) {
+            return fChunks[chunk].get(fChunkSize);
+        }
+
+        int get(int chunk, int index) {
+            return fChunks[chunk] != null ? fChunks[chunk].get(index) : -1;
+        }
+
+        int set(int value, int chunk, int index) {
+            if (value == -1) {
+                return clear(chunk, index);
+            }
+            IntBuffer dataChunk = fChunks[chunk];
+            // Re-create chunk if it was deleted.
+            if (dataChunk == null) {
+                create(chunk);
+                dataChunk = fChunks[chunk];
+            }
+            int ovalue = dataChunk.get(index);
+            if (ovalue == -1) {
+                dataChunk.put(fChunkSize, dataChunk.get(fChunkSize) + 1);
+            }
+            dataChunk.put(index, value);
+            return ovalue;
+        }
+
+        int clear(int chunk, int index) {
+            IntBuffer dataChunk = fChunks[chunk];
+            int value = dataChunk != null ? dataChunk.get(index) : -1;
+            if (value != -1) {
+                int count = dataChunk.get(fChunkSize) - 1;
+                dataChunk.put(index, -1);
+                if (count == 0) {
+                    fChunks[chunk] = null;
+                }
+                else {
+                    dataChunk.put(fChunkSize, count);
+                }
+            }
+            return value;
+        }
+
+    } // class DirectIntChunks
+
+    /**
+     * Character data shared by the nodes of a document, kept in segments
+     * of direct buffers. A value is appended once and referred to by the
+     * position of its length, stored in the two characters preceding the
+     * value. Values may span several segments; the arena holds at most
+     * 2^31 - 1 characters.
+     */
+    static final class CharArena {
+
+        //
+        // Constants
+        //
+
+        /** Segment shift. */
+        private static final int SEGMENT_SHIFT = 16;           // 2^16 = 64k
+
+        /** Segment size. */
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+        /** Segment mask. */
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+        //
+        // Data
+        //
+
+        /** Segments. */
+        private CharBuffer[] fSegments = new CharBuffer[16];
+
+        /** Number of characters in the arena. */
+        private int fLength;
+
+        /** Buffer used to copy strings to the segments. */
+        private final char[] fBuffer = new char[256];
+
+        //
+        // Methods
+        //
+
+        /**
+         * Appends the characters to the arena.
+         *
+         * @return Returns the reference of the value, or -1 if the arena
+         *         is full.
+         */
+        int add(char[] ch, int offset, int length) {
+            int ref = addLength(length);
+            if (ref != -1) {
+                write(ch, offset, length);
+            }
+            return ref;
+        } // add(char[],int,int):int
+
+        /**
+         * Appends the string to the arena.
+         *
+         * @return Returns the reference of the value, or -1 if the arena
+         *         is full.
+         */
+        int add(String value) {
+            int length = value.length();
+            int ref = addLength(length);
+            if (ref != -1) {
+                for (int i = 0; i < length; i += fBuffer.length) {
+                    int count = Math.min(fBuffer.length, length - i);
+                    value.getChars(i, i + count, fBuffer, 0);
+                    write(fBuffer, 0, count);
+                }
+            }
+            return ref;
+        } // add(String):int
+
+        /** Returns the value at the given reference. */
+        String getString(int ref) {
+            int length = (charAt(ref) << 16) | charAt(ref + 1);
+            char[] value = new char[length];
+            int position = ref + 2;
+            int offset = 0;
+            while (offset < length) {
+                CharBuffer segment = fSegments[position >> SEGMENT_SHIFT];
+                int start = position & SEGMENT_MASK;
+                int count = Math.min(length - offset, SEGMENT_SIZE - start);
+                segment.position(start);
+                segment.get(value, offset, count);
+                position += count;
+                offset += count;
+            }
+            return new String(value);
+        } // getString(int):String
+
+        //
+        // Private methods
+        //
+
+        /** Appends the length of a value and returns its reference. */
+        private int addLength(int length) {
+            if (length > Integer.MAX_VALUE - 2 - fLength) {
+                return -1;
+            }
+            int ref = fLength;
+            ensureSegment();
+            fSegments[fLength >> SEGMENT_SHIFT].put(fLength & SEGMENT_MASK,
+                                                     (char) (length >>> 16));
+            fLength++;
+            ensureSegment();
+            fSegments[fLength >> SEGMENT_SHIFT].put(fLength & SEGMENT_MASK,
+                                                     (char) length);
+            fLength++;
+            return ref;
+        } // addLength(int):int
+
+        /** Appends characters to the last segments. */
+        private void write(char[] ch, int offset, int length) {
+            while (length > 0) {
+                ensureSegment();
+                CharBuffer segment = fSegments[fLength >> SEGMENT_SHIFT];
+                int start = fLength & SEGMENT_MASK;
+                int count = Math.min(length, SEGMENT_SIZE - start);
+                segment.position(start);
+                segment.put(ch, offset, count);
+                fLength += count;
+                offset += count;
+                length -= count;
+            }
+        } // write(char[],int,int)
+
+        /** Returns the character at the given position. */
+        private char charAt(int position) {
+            return fSegments[position >> SEGMENT_SHIFT].get(position & SEGMENT_MASK);
+        }
+
+        /** Makes sure that the segment of the next character exists. */
+        private void ensureSegment() {
+            int segment = fLength >> SEGMENT_SHIFT;
+            if (segment == fSegments.length) {
+                CharBuffer[] newSegments = new CharBuffer[segment * 2];
+                System.arraycopy(fSegments, 0, newSegments, 0, segment);
+                fSegments = newSegments;
+            }
+            if (fSegments[segment] == null) {
+                fSegments[segment] = ByteBuffer.allocateDirect(SEGMENT_SIZE << 1)
+                    .order(ByteOrder.nativeOrder()).asCharBuffer();
+            }
+        } // ensureSegment()
+
+    } // class CharArena
+
 } // class DeferredDocumentImpl
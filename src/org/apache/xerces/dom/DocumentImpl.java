@@ -17,15 +17,20 @@
 
 package org.apache.xerces.dom;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.apache.xerces.dom.events.EventImpl;
@@ -112,9 +117,33 @@ public class DocumentImpl
     /** Reference queue for cleared Range references */
     protected transient ReferenceQueue rangeReferenceQueue;
 
-    /** Table for event listeners registered to this document nodes. */
+    /**
+     * Table for event listeners registered to this document nodes. The
+     * listeners are kept in arrays in the listener table; this Hashtable
+     * of Vectors only holds them while the document is serialized, and
+     * those which subclasses put directly into it until they are moved
+     * to the listener table.
+     */
     protected Hashtable eventListeners;
 
+    /** Listener table, mapping nodes to arrays of LEntry. */
+    transient Map fEventListeners;
+
+    /** Counts of the listeners registered in this document, by event name. */
+    private transient Map listenerCounts;
+
+    /** Ancestors of the targets of the events being dispatched. */
+    private transient NodeImpl[] eventPath;
+
+    /** Number of ancestors in the eventPath stack. */
+    private transient int eventPathLength;
+
+    /** Depth of the mutation batches which have been started. */
+    private transient int mutationBatchDepth;
+
+    /** Targets of the DOMSubtreeModified events of the mutation batch. */
+    private transient Map subtreeModifiedTargets;
+
     /** Bypass mutation events firing. */
     protected boolean mutationEvents = false;
 
@@ -570,30 +599,171 @@ public class DocumentImpl
      * since the eventsListeners table will have a reference to the node.
      */
     protected void setEventListeners(NodeImpl n, Vector listeners) {
-        if (eventListeners == null) {
-            eventListeners = new Hashtable();
+        LEntry[] oldListeners = getListenerArray(n);
+        if (oldListeners != null) {
+            for (int i = 0; i < oldListeners.length; i++) {
+                uncountListener(oldListeners[i].type,
+                                oldListeners[i].useCapture);
+                if (listeners == null
+                    || !listeners.contains(oldListeners[i])) {
+                    oldListeners[i].removed = true;
+                }
+            }
         }
+        LEntry[] newListeners = null;
+        if (listeners != null && !listeners.isEmpty()) {
+            newListeners = new LEntry[listeners.size()];
+            listeners.copyInto(newListeners);
+            for (int i = 0; i < newListeners.length; i++) {
+                newListeners[i].removed = false;
+                countListener(newListeners[i].type,
+                              newListeners[i].useCapture);
+            }
+        }
+        setListenerArray(n, newListeners);
+    }
+
+    /**
+     * Retreive event listener registered on a given node. The Vector is
+     * a copy: changes to it must be stored with setEventListeners.
+     */
+    protected Vector getEventListeners(NodeImpl n) {
+        LEntry[] listeners = getListenerArray(n);
         if (listeners == null) {
-            eventListeners.remove(n);
-            if (eventListeners.isEmpty()) {
+            return null;
+        }
+        Vector nodeListeners = new Vector(listeners.length);
+        for (int i = 0; i < listeners.length; i++) {
+            nodeListeners.addElement(listeners[i]);
+        }
+        return nodeListeners;
+    }
+
+    /**
+     * Stores the array of the listeners registered on a given node,
+     * or removes them if the array is null. The array must not be
+     * modified afterwards.
+     */
+    void setListenerArray(NodeImpl n, LEntry[] listeners) {
+        mergeEventListeners();
+        if (fEventListeners == null) {
+            fEventListeners = new HashMap();
+        }
+        if (listeners == null) {
+            fEventListeners.remove(n);
+            if (fEventListeners.isEmpty()) {
                 // stop firing events when there isn't any listener
                 mutationEvents = false;
             }
         } else {
-            eventListeners.put(n, listeners);
+            fEventListeners.put(n, listeners);
             // turn mutation events on
             mutationEvents = true;
         }
     }
 
     /**
-     * Retreive event listener registered on a given node
+     * Returns the array of the listeners registered on a given node,
+     * or null if there are none. The array must not be modified.
      */
-    protected Vector getEventListeners(NodeImpl n) {
-        if (eventListeners == null) {
+    LEntry[] getListenerArray(NodeImpl n) {
+        mergeEventListeners();
+        if (fEventListeners == null) {
             return null;
         }
-        return (Vector) eventListeners.get(n);
+        return (LEntry[]) fEventListeners.get(n);
+    }
+
+    /**
+     * Moves the listeners which subclasses put directly into the
+     * eventListeners Hashtable into the listener table, and counts them.
+     */
+    private void mergeEventListeners() {
+        if (eventListeners != null) {
+            Hashtable listeners = eventListeners;
+            eventListeners = null;
+            if (fEventListeners == null) {
+                fEventListeners = new HashMap();
+            }
+            Iterator entries = listeners.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry entry = (Map.Entry) entries.next();
+                Vector nodeListeners = (Vector) entry.getValue();
+                if (nodeListeners == null || nodeListeners.isEmpty()) {
+                    continue;
+                }
+                LEntry[] array = new LEntry[nodeListeners.size()];
+                nodeListeners.copyInto(array);
+                for (int i = 0; i < array.length; i++) {
+                    array[i].removed = false;
+                    countListener(array[i].type, array[i].useCapture);
+                }
+                LEntry[] oldArray = (LEntry[])
+                    fEventListeners.put(entry.getKey(), array);
+                if (oldArray != null) {
+                    for (int i = 0; i < oldArray.length; i++) {
+                        uncountListener(oldArray[i].type,
+                                        oldArray[i].useCapture);
+                    }
+                }
+                mutationEvents = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the counts of the listeners registered in this document
+     * for the given event name. The counts of the names without
+     * listeners are shared and must not be modified.
+     */
+    LCount getListenerCount(String type) {
+        mergeEventListeners();
+        if (listenerCounts != null) {
+            LCount lc = (LCount) listenerCounts.get(type);
+            if (lc != null) {
+                return lc;
+            }
+        }
+        return LCount.NONE;
+    }
+
+    /**
+     * Records that a listener has been registered in this document
+     * for the given event name.
+     */
+    private void countListener(String type, boolean useCapture) {
+        if (listenerCounts == null) {
+            listenerCounts = new HashMap();
+        }
+        LCount lc = (LCount) listenerCounts.get(type);
+        if (lc == null) {
+            lc = new LCount();
+            listenerCounts.put(type, lc);
+        }
+        if (useCapture) {
+            ++lc.captures;
+        }
+        else {
+            ++lc.bubbles;
+        }
+        ++lc.total;
+    }
+
+    /**
+     * Records that a listener has been removed from this document
+     * for the given event name.
+     */
+    private void uncountListener(String type, boolean useCapture) {
+        LCount lc = (LCount) listenerCounts.get(type);
+        if (useCapture) {
+            --lc.captures;
+        }
+        else {
+            --lc.bubbles;
+        }
+        if (--lc.total == 0) {
+            listenerCounts.remove(type);
+        }
     }
 
     //
@@ -606,8 +776,11 @@ public class DocumentImpl
 
     /*
      * NON-DOM INTERNAL: Class LEntry is just a struct used to represent
-     * event listeners registered with this node. Copies of this object
-     * are hung from the nodeListeners Vector.
+     * event listeners registered with this node. Arrays of these objects
+     * are hung from the listener table. The arrays are never
+     * modified once registered: adding or removing a listener replaces
+     * the array of the node, so that dispatch can go through the array
+     * without copying it.
      * <p>
      * I considered using two vectors -- one for capture,
      * one for bubble -- but decided that since the list of listeners 
@@ -620,6 +793,9 @@ public class DocumentImpl
         String type;
         EventListener listener;
         boolean useCapture;
+
+        /** True once the listener has been removed from its node. */
+        transient boolean removed;
 	    
         /** NON-DOM INTERNAL: Constructor for Listener list Entry 
          * @param type Event name (NOT event group!) to listen for.
@@ -659,23 +835,17 @@ public class DocumentImpl
         // Simplest way to code that is to zap the previous entry, if any.
         removeEventListener(node, type, listener, useCapture);
 	    
-        Vector nodeListeners = getEventListeners(node);
-        if(nodeListeners == null) {
-            nodeListeners = new Vector();
-            setEventListeners(node, nodeListeners);
+        LEntry[] nodeListeners = getListenerArray(node);
+        int size = nodeListeners != null ? nodeListeners.length : 0;
+        LEntry[] newListeners = new LEntry[size + 1];
+        if (size > 0) {
+            System.arraycopy(nodeListeners, 0, newListeners, 0, size);
         }
-        nodeListeners.addElement(new LEntry(type, listener, useCapture));
+        newListeners[size] = new LEntry(type, listener, useCapture);
+        setListenerArray(node, newListeners);
 	    
         // Record active listener
-        LCount lc = LCount.lookup(type);
-        if (useCapture) {
-            ++lc.captures;
-            ++lc.total;
-        }
-        else {
-            ++lc.bubbles;
-            ++lc.total;
-        }
+        countListener(type, useCapture);
 
     } // addEventListener(NodeImpl,String,EventListener,boolean) :void
 	
@@ -697,44 +867,55 @@ public class DocumentImpl
         // If this couldn't be a valid listener registration, ignore request
         if (type == null || type.length() == 0 || listener == null)
             return;
-        Vector nodeListeners = getEventListeners(node);
+        LEntry[] nodeListeners = getListenerArray(node);
         if (nodeListeners == null)
             return;
 
         // Note that addListener has previously ensured that 
         // each listener may be registered only once per type per phase.
-        // count-down is OK for deletions!
-        for (int i = nodeListeners.size() - 1; i >= 0; --i) {
-            LEntry le = (LEntry) nodeListeners.elementAt(i);
+        for (int i = nodeListeners.length - 1; i >= 0; --i) {
+            LEntry le = nodeListeners[i];
             if (le.useCapture == useCapture && le.listener == listener && 
                 le.type.equals(type)) {
-                nodeListeners.removeElementAt(i);
-                // Storage management: Discard empty listener lists
-                if (nodeListeners.size() == 0)
-                    setEventListeners(node, null);
+                // A dispatch in progress may still hold the array; the
+                // flag keeps it from calling the listener.
+                le.removed = true;
 
-                // Remove active listener
-                LCount lc = LCount.lookup(type);
-                if (useCapture) {
-                    --lc.captures;
-                    --lc.total;
+                // Storage management: Discard empty listener lists
+                int size = nodeListeners.length - 1;
+                if (size == 0) {
+                    setListenerArray(node, null);
                 }
                 else {
-                    --lc.bubbles;
-                    --lc.total;
+                    LEntry[] newListeners = new LEntry[size];
+                    System.arraycopy(nodeListeners, 0, newListeners, 0, i);
+                    System.arraycopy(nodeListeners, i + 1, newListeners, i,
+                                     size - i);
+                    setListenerArray(node, newListeners);
                 }
 
+                // Remove active listener
+                uncountListener(type, useCapture);
+
                 break;  // Found it; no need to loop farther.
             }
         }
     } // removeEventListener(NodeImpl,String,EventListener,boolean) :void
 
     protected void copyEventListeners(NodeImpl src, NodeImpl tgt) {
-        Vector nodeListeners = getEventListeners(src);
+        LEntry[] nodeListeners = getListenerArray(src);
         if (nodeListeners == null) {
             return;
         }
-        setEventListeners(tgt, (Vector) nodeListeners.clone());
+        // The entries are not shared, since removing a listener from
+        // one of the nodes must not remove it from the other.
+        LEntry[] newListeners = new LEntry[nodeListeners.length];
+        for (int i = 0; i < nodeListeners.length; i++) {
+            LEntry le = nodeListeners[i];
+            newListeners[i] = new LEntry(le.type, le.listener, le.useCapture);
+            countListener(le.type, le.useCapture);
+        }
+        setListenerArray(tgt, newListeners);
     }
 
     /**
@@ -752,6 +933,9 @@ public class DocumentImpl
      *   For capture and bubble purposes, node ancestry is determined at 
      *   the time dispatch starts. If an event handler alters the document 
      *   tree, that does not change which nodes will be informed of the event. 
+     *   The ancestors are only looked up if the document has capturing
+     *   listeners for the event, or bubbling ones for an event which
+     *   bubbles.
      * <li>CAPTURING_PHASE: Ancestors are scanned, root to target, for 
      *   Capturing listeners. If found, they are invoked (see below). 
      * <li>AT_TARGET: 
@@ -802,7 +986,7 @@ public class DocumentImpl
         }
         
         // If nobody is listening for this event, discard immediately
-        LCount lc = LCount.lookup(evt.getType());
+        LCount lc = getListenerCount(evt.getType());
         if (lc.total == 0)
             return evt.preventDefault;
 
@@ -823,111 +1007,81 @@ public class DocumentImpl
         // is issued to the Element rather than the Attr
         // and causes a _second_ DOMSubtreeModified in the Element's
         // tree.
-        ArrayList pv = new ArrayList(10);
-        Node p = node;
-        Node n = p.getParentNode();
-        while (n != null) {
-            pv.add(n);
-            p = n;
-            n = n.getParentNode();
-        }
-        
-        // CAPTURING_PHASE:
-        if (lc.captures > 0) {
-            evt.eventPhase = Event.CAPTURING_PHASE;
-            // Ancestors are scanned, root to target, for 
-            // Capturing listeners.
-            for (int j = pv.size() - 1; j >= 0; --j) {
-                if (evt.stopPropagation)
-                    break;  // Someone set the flag. Phase ends.
-
-                // Handle all capturing listeners on this node
-                NodeImpl nn = (NodeImpl) pv.get(j);
-                evt.currentTarget = nn;
-                Vector nodeListeners = getEventListeners(nn);
-                if (nodeListeners != null) {
-                    Vector nl = (Vector) nodeListeners.clone();
-                    // call listeners in the order in which they got registered
-                    int nlsize = nl.size();
-                    for (int i = 0; i < nlsize; i++) {
-                        LEntry le = (LEntry) nl.elementAt(i);
-                        if (le.useCapture && le.type.equals(evt.type) &&
-                            nodeListeners.contains(le)) {
-                            try {
-                                le.listener.handleEvent(evt);
-                            }
-                            catch (Exception e) {
-                                // All exceptions are ignored.
-                            }
-                        }
-                    }
+        // The chain is pushed on the eventPath stack, above the chains
+        // of the dispatches this one is nested in.
+        final int start = eventPathLength;
+        int end = start;
+        if (lc.captures > 0 || (lc.bubbles > 0 && evt.bubbles)) {
+            for (Node n = node.getParentNode(); n != null;
+                 n = n.getParentNode()) {
+                if (eventPath == null) {
+                    eventPath = new NodeImpl[16];
                 }
-            }
-        }
-        
-        
-        // Both AT_TARGET and BUBBLE use non-capturing listeners.
-        if (lc.bubbles > 0) {
-            // AT_TARGET PHASE: Event is dispatched to NON-CAPTURING listeners
-            // on the target node. Note that capturing listeners on the target
-            // node are _not_ invoked, even during the capture phase.
-            evt.eventPhase = Event.AT_TARGET;
-            evt.currentTarget = node;
-            Vector nodeListeners = getEventListeners(node);
-            if (!evt.stopPropagation && nodeListeners != null) {
-                Vector nl = (Vector) nodeListeners.clone();
-                // call listeners in the order in which they got registered
-                int nlsize = nl.size();
-                for (int i = 0; i < nlsize; i++) {
-                    LEntry le = (LEntry) nl.elementAt(i);
-                    if (!le.useCapture && le.type.equals(evt.type) &&
-                        nodeListeners.contains(le)) {
-                        try {
-                            le.listener.handleEvent(evt);
-                        }
-                        catch (Exception e) {
-                            // All exceptions are ignored.
-                        }
-                    }
+                else if (end == eventPath.length) {
+                    NodeImpl[] newPath = new NodeImpl[end << 1];
+                    System.arraycopy(eventPath, 0, newPath, 0, end);
+                    eventPath = newPath;
                 }
+                eventPath[end++] = (NodeImpl) n;
             }
-            // BUBBLING_PHASE: Ancestors are scanned, target to root, for
-            // non-capturing listeners. If the event's preventBubbling flag
-            // has been set before processing of a node commences, we
-            // instead immediately advance to the default phase.
-            // Note that not all events bubble.
-            if (evt.bubbles) {
-                evt.eventPhase = Event.BUBBLING_PHASE;
-                int pvsize = pv.size();
-                for (int j = 0; j < pvsize; j++) {
+            eventPathLength = end;
+        }
+
+        try {
+            // CAPTURING_PHASE:
+            if (lc.captures > 0) {
+                evt.eventPhase = Event.CAPTURING_PHASE;
+                // Ancestors are scanned, root to target, for 
+                // Capturing listeners.
+                for (int j = end - 1; j >= start; --j) {
                     if (evt.stopPropagation)
                         break;  // Someone set the flag. Phase ends.
 
-                    // Handle all bubbling listeners on this node
-                    NodeImpl nn = (NodeImpl) pv.get(j);
+                    // Handle all capturing listeners on this node
+                    NodeImpl nn = eventPath[j];
                     evt.currentTarget = nn;
-                    nodeListeners = getEventListeners(nn);
-                    if (nodeListeners != null) {
-                        Vector nl = (Vector) nodeListeners.clone();
-                        // call listeners in the order in which they got
-                        // registered
-                        int nlsize = nl.size();
-                        for (int i = 0; i < nlsize; i++) {
-                            LEntry le = (LEntry) nl.elementAt(i);
-                            if (!le.useCapture && le.type.equals(evt.type) &&
-                                nodeListeners.contains(le)) {
-                                try {
-                                    le.listener.handleEvent(evt);
-                                }
-                                catch (Exception e) {
-                                    // All exceptions are ignored.
-                                }
-                            }
-                        }
+                    invokeListeners(nn, evt, true);
+                }
+            }
+            
+            
+            // Both AT_TARGET and BUBBLE use non-capturing listeners.
+            if (lc.bubbles > 0) {
+                // AT_TARGET PHASE: Event is dispatched to NON-CAPTURING
+                // listeners on the target node. Note that capturing listeners
+                // on the target node are _not_ invoked, even during the
+                // capture phase.
+                evt.eventPhase = Event.AT_TARGET;
+                evt.currentTarget = node;
+                if (!evt.stopPropagation) {
+                    invokeListeners(node, evt, false);
+                }
+                // BUBBLING_PHASE: Ancestors are scanned, target to root, for
+                // non-capturing listeners. If the event's preventBubbling flag
+                // has been set before processing of a node commences, we
+                // instead immediately advance to the default phase.
+                // Note that not all events bubble.
+                if (evt.bubbles) {
+                    evt.eventPhase = Event.BUBBLING_PHASE;
+                    for (int j = start; j < end; j++) {
+                        if (evt.stopPropagation)
+                            break;  // Someone set the flag. Phase ends.
+
+                        // Handle all bubbling listeners on this node
+                        NodeImpl nn = eventPath[j];
+                        evt.currentTarget = nn;
+                        invokeListeners(nn, evt, false);
                     }
                 }
             }
         }
+        finally {
+            // pop the chain
+            for (int j = start; j < end; j++) {
+                eventPath[j] = null;
+            }
+            eventPathLength = start;
+        }
         
         // DEFAULT PHASE: Some DOMs have default behaviors bound to specific
         // nodes. If this DOM does, and if the event's preventDefault flag has
@@ -943,6 +1097,34 @@ public class DocumentImpl
         return evt.preventDefault;        
     } // dispatchEvent(NodeImpl,Event) :boolean
 
+    /**
+     * NON-DOM INTERNAL: Calls the listeners of a node for the event,
+     * in the order in which they got registered.
+     * @param node node whose listeners are called
+     * @param evt event to be handled
+     * @param useCapture true to call the capturing listeners, false
+     *  to call the others
+     */
+    private void invokeListeners(NodeImpl node, EventImpl evt,
+                                 boolean useCapture) {
+        LEntry[] nodeListeners = getListenerArray(node);
+        if (nodeListeners == null) {
+            return;
+        }
+        for (int i = 0; i < nodeListeners.length; i++) {
+            LEntry le = nodeListeners[i];
+            if (le.useCapture == useCapture && !le.removed &&
+                le.type.equals(evt.type)) {
+                try {
+                    le.listener.handleEvent(evt);
+                }
+                catch (Exception e) {
+                    // All exceptions are ignored.
+                }
+            }
+        }
+    } // invokeListeners(NodeImpl,EventImpl,boolean) :void
+
     /**
      * NON-DOM INTERNAL: DOMNodeInsertedIntoDocument and ...RemovedFrom...
      * are dispatched to an entire subtree. This is the distribution code
@@ -1053,7 +1235,7 @@ public class DocumentImpl
         // We have to send DOMAttrModified.
         NodeImpl owner = null;
         if (enclosingAttr != null) {
-            LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+            LCount lc = getListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
             owner = (NodeImpl) enclosingAttr.getOwnerElement();
             if (lc.total > 0) {
                 if (owner != null) {
@@ -1072,7 +1254,7 @@ public class DocumentImpl
         // set of changes. 
         // "This event is dispatched after all other events caused by the
         // mutation have been fired."
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_SUBTREE_MODIFIED);
+        LCount lc = getListenerCount(MutationEventImpl.DOM_SUBTREE_MODIFIED);
         if (lc.total > 0) {
             MutationEvent me =  new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_SUBTREE_MODIFIED,
@@ -1083,15 +1265,125 @@ public class DocumentImpl
             // and to its owningElement. Otherwise we dispatch it
             // locally.
             if (enclosingAttr != null) {
-                dispatchEvent(enclosingAttr, me);
+                if (mutationBatchDepth == 0 || owner == null)
+                    subtreeModified(enclosingAttr, me);
                 if (owner != null)
-                    dispatchEvent(owner, me);
+                    subtreeModified(owner, me);
             }
             else
-                dispatchEvent(node, me);
+                subtreeModified(node, me);
         }
     } // dispatchAggregateEvents(NodeImpl, AttrImpl,String) :void
 
+    /**
+     * NON-DOM INTERNAL: Dispatches DOMSubtreeModified to a node, or
+     * records the node as modified if a mutation batch has been started.
+     * @param node node to dispatch to
+     * @param me the event
+     */
+    private void subtreeModified(NodeImpl node, MutationEvent me) {
+        if (mutationBatchDepth > 0) {
+            if (subtreeModifiedTargets == null) {
+                subtreeModifiedTargets = new LinkedHashMap();
+            }
+            addSubtreeModifiedTarget(subtreeModifiedTargets, node);
+        }
+        else {
+            dispatchEvent(node, me);
+        }
+    } // subtreeModified(NodeImpl,MutationEvent) :void
+
+    /**
+     * NON-DOM INTERNAL: Adds a modified node to a table holding a
+     * modified node per tree, keyed by the root of the tree. If the table
+     * has a node of the same tree, it is replaced by the lowest common
+     * ancestor of the two.
+     * @param targets the table of modified nodes
+     * @param node the modified node
+     */
+    private static void addSubtreeModifiedTarget(Map targets, NodeImpl node) {
+        NodeImpl root = node;
+        for (NodeImpl p = root.parentNode(); p != null; p = p.parentNode()) {
+            root = p;
+        }
+        NodeImpl target = (NodeImpl) targets.get(root);
+        targets.put(root, target == null ? node : commonAncestor(target, node));
+    } // addSubtreeModifiedTarget(Map,NodeImpl) :void
+
+    /**
+     * NON-DOM: Starts a batch of mutations. Until the batch is ended,
+     * the DOMSubtreeModified events of the mutations are held back, and
+     * when it ends a single DOMSubtreeModified event is dispatched to the
+     * lowest common ancestor of the modified nodes of each tree. The
+     * changes to an Attr are reported to its owner element only. Batches
+     * may be nested, in which case the events are dispatched when the
+     * outermost batch ends. The other mutation events are dispatched as
+     * the mutations happen.
+     */
+    public void startMutationBatch() {
+        ++mutationBatchDepth;
+    }
+
+    /**
+     * NON-DOM: Ends a batch of mutations started with
+     * <code>startMutationBatch</code>.
+     */
+    public void endMutationBatch() {
+        if (mutationBatchDepth == 0 || --mutationBatchDepth > 0) {
+            return;
+        }
+        Map targets = subtreeModifiedTargets;
+        if (targets == null) {
+            return;
+        }
+        subtreeModifiedTargets = null;
+
+        // The nodes were merged as the trees were when they were
+        // modified. Merge them again, since trees may have been
+        // inserted into others since.
+        Map roots = new LinkedHashMap();
+        Iterator i = targets.values().iterator();
+        while (i.hasNext()) {
+            addSubtreeModifiedTarget(roots, (NodeImpl) i.next());
+        }
+
+        i = roots.values().iterator();
+        while (i.hasNext()) {
+            MutationEvent me = new MutationEventImpl();
+            me.initMutationEvent(MutationEventImpl.DOM_SUBTREE_MODIFIED,
+                                 true, false, null, null,
+                                 null, null, (short) 0);
+            dispatchEvent((NodeImpl) i.next(), me);
+        }
+    } // endMutationBatch() :void
+
+    /**
+     * NON-DOM INTERNAL: Returns the lowest common ancestor of two nodes
+     * of the same tree. Ancestry stops at Attr nodes, as for event
+     * dispatch.
+     */
+    private static NodeImpl commonAncestor(NodeImpl a, NodeImpl b) {
+        int depthA = 0;
+        for (NodeImpl n = a.parentNode(); n != null; n = n.parentNode()) {
+            ++depthA;
+        }
+        int depthB = 0;
+        for (NodeImpl n = b.parentNode(); n != null; n = n.parentNode()) {
+            ++depthB;
+        }
+        for (; depthA > depthB; --depthA) {
+            a = a.parentNode();
+        }
+        for (; depthB > depthA; --depthB) {
+            b = b.parentNode();
+        }
+        while (a != b) {
+            a = a.parentNode();
+            b = b.parentNode();
+        }
+        return a;
+    } // commonAncestor(NodeImpl,NodeImpl) :NodeImpl
+
     /**
      * NON-DOM INTERNAL: Pre-mutation context check, in
      * preparation for later generating DOMAttrModified events.
@@ -1104,7 +1396,7 @@ public class DocumentImpl
         // If we're within the scope of an Attr and DOMAttrModified 
         // was requested, we need to preserve its previous value for
         // that event.
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+        LCount lc = getListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
         if (lc.total > 0) {
             NodeImpl eventAncestor = node;
             while (true) {
@@ -1153,7 +1445,7 @@ public class DocumentImpl
         if (!replace) {
             // MUTATION POST-EVENTS:
             LCount lc =
-                LCount.lookup(MutationEventImpl.DOM_CHARACTER_DATA_MODIFIED);
+                getListenerCount(MutationEventImpl.DOM_CHARACTER_DATA_MODIFIED);
             if (lc.total > 0) {
                 MutationEvent me = new MutationEventImpl();
                 me.initMutationEvent(
@@ -1195,6 +1487,8 @@ public class DocumentImpl
      * A method to be called when a node has been inserted in the tree.
      */
     void insertedNode(NodeImpl node, NodeImpl newInternal, boolean replace) {
+        super.insertedNode(node, newInternal, replace);
+
         if (mutationEvents) {
             mutationEventsInsertedNode(node, newInternal, replace);
         }
@@ -1209,7 +1503,7 @@ public class DocumentImpl
         // MUTATION POST-EVENTS:
         // "Local" events (non-aggregated)
         // New child is told it was inserted, and where
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_NODE_INSERTED);
+        LCount lc = getListenerCount(MutationEventImpl.DOM_NODE_INSERTED);
         if (lc.total > 0) {
             MutationEventImpl me = new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_NODE_INSERTED,
@@ -1220,7 +1514,7 @@ public class DocumentImpl
 
         // If within the Document, tell the subtree it's been added
         // to the Doc.
-        lc = LCount.lookup(
+        lc = getListenerCount(
                         MutationEventImpl.DOM_NODE_INSERTED_INTO_DOCUMENT);
         if (lc.total > 0) {
             NodeImpl eventAncestor = node;
@@ -1291,6 +1585,10 @@ public class DocumentImpl
         if (mutationEvents) {
             mutationEventsRemovingNode(node, oldChild, replace);
         } 
+
+        // the listeners may have changed the subtree, update the element
+        // index last
+        super.removingNode(node, oldChild, replace);
     }
     
     private void notifyIteratorsRemovingNode(NodeImpl oldChild) {
@@ -1332,7 +1630,7 @@ public class DocumentImpl
             saveEnclosingAttr(node);
         }
         // Child is told that it is about to be removed
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_NODE_REMOVED);
+        LCount lc = getListenerCount(MutationEventImpl.DOM_NODE_REMOVED);
         if (lc.total > 0) {
             MutationEventImpl me= new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_NODE_REMOVED,
@@ -1343,7 +1641,7 @@ public class DocumentImpl
 
         // If within Document, child's subtree is informed that it's
         // losing that status
-        lc = LCount.lookup(
+        lc = getListenerCount(
                          MutationEventImpl.DOM_NODE_REMOVED_FROM_DOCUMENT);
         if (lc.total > 0) {
             NodeImpl eventAncestor = this;
@@ -1453,7 +1751,7 @@ public class DocumentImpl
     private void mutationEventsRemovedAttrNode(AttrImpl attr, NodeImpl oldOwner, String name) {
         // If we have to send DOMAttrModified (determined earlier),
         // do so.
-        LCount lc = LCount.lookup(MutationEventImpl.DOM_ATTR_MODIFIED);
+        LCount lc = getListenerCount(MutationEventImpl.DOM_ATTR_MODIFIED);
         if (lc.total > 0) {
             MutationEventImpl me= new MutationEventImpl();
             me.initMutationEvent(MutationEventImpl.DOM_ATTR_MODIFIED,
@@ -1480,7 +1778,53 @@ public class DocumentImpl
      * A method to be called when an element has been renamed
      */
     void renamedElement(Element oldEl, Element newEl) {
+        super.renamedElement(oldEl, newEl);
 	// REVISIT: To be implemented!!!
     }
 
+    //
+    // Serialization methods
+    //
+
+    /**
+     * The serialized form of the event listener table is a Hashtable
+     * of Vectors. Move them into the listener table on load.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        mergeEventListeners();
+    }
+
+    /**
+     * To allow DOM trees serialized by newer versions of Xerces
+     * to be read by older versions briefly move the event listeners
+     * into a Hashtable of Vectors.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        mergeEventListeners();
+        try {
+            if (fEventListeners != null) {
+                Hashtable listeners = new Hashtable();
+                Iterator entries = fEventListeners.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry entry = (Map.Entry) entries.next();
+                    LEntry[] array = (LEntry[]) entry.getValue();
+                    Vector nodeListeners = new Vector(array.length);
+                    for (int i = 0; i < array.length; i++) {
+                        nodeListeners.addElement(array[i]);
+                    }
+                    listeners.put(entry.getKey(), nodeListeners);
+                }
+                this.eventListeners = listeners;
+            }
+            out.defaultWriteObject();
+        }
+        // If the write fails for some reason ensure 
+        // that we restore the original object.
+        finally {
+            this.eventListeners = null;
+        }
+    }
+
 } // class DocumentImpl
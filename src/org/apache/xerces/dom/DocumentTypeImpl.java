@@ -241,7 +241,8 @@ public class DocumentTypeImpl
         if (needsSyncData()) {
             synchronizeData();
         }
-        DocumentTypeImpl argDocType = (DocumentTypeImpl) arg;
+        // the argument may belong to another implementation
+        DocumentType argDocType = (DocumentType) arg;
 
         //test if the following string attributes are equal: publicId, 
         //systemId, internalSubset.
@@ -275,7 +276,7 @@ public class DocumentTypeImpl
         }
 
         //test if NamedNodeMaps entities and notations are equal
-        NamedNodeMapImpl argEntities = argDocType.entities;
+        NamedNodeMap argEntities = argDocType.getEntities();
 
         if ((entities == null && argEntities != null)
             || (entities != null && argEntities == null))
@@ -295,7 +296,7 @@ public class DocumentTypeImpl
             }
         }
 
-        NamedNodeMapImpl argNotations = argDocType.notations;
+        NamedNodeMap argNotations = argDocType.getNotations();
 
         if ((notations == null && argNotations != null)
             || (notations != null && argNotations == null))
@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.w3c.dom.Node;
+
+/**
+ * Index of the elements of a document by name, used to answer
+ * getElementsByTagName and getElementsByTagNameNS without walking the tree.
+ * <p>
+ * The index holds one entry per name (or namespace and local name) that
+ * has been asked for. An entry is built with a single walk of the document
+ * the first time it is requested, and lists the matching elements in
+ * document order. From then on the document keeps it up to date as nodes
+ * are inserted, removed and renamed, and a DeepNodeListImpl finds the
+ * elements below its root node by binary search instead of discarding its
+ * cache on every change to the document.
+ * <p>
+ * Only the nodes which are part of the document tree are indexed; a
+ * NodeList rooted in a node which is not falls back to walking the tree.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class ElementIndex {
+
+    //
+    // Data
+    //
+
+    /** The indexed document. */
+    private final CoreDocumentImpl fDocument;
+
+    /** Entries by key. */
+    private final HashMap fEntries = new HashMap();
+
+    /** Key used for lookups. */
+    private final Key fKey = new Key();
+
+    /** Entries to which elements were collected by the current update. */
+    private final ArrayList fTouched = new ArrayList();
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an empty index for the given document. */
+    ElementIndex(CoreDocumentImpl document) {
+        fDocument = document;
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns the entry for the given name, building it if needed. The
+     * arguments are those of DeepNodeListImpl.
+     */
+    Entry getEntry(boolean enableNS, String nsName, String tagName) {
+        fKey.setValues(enableNS, nsName, tagName);
+        Entry entry = (Entry) fEntries.get(fKey);
+        if (entry == null) {
+            entry = new Entry(enableNS, nsName, tagName);
+            Node node = fDocument;
+            while ((node = nextNode(fDocument, node)) != null) {
+                if (node.getNodeType() == Node.ELEMENT_NODE
+                    && entry.matches((ElementImpl) node)) {
+                    entry.elements.add(node);
+                }
+            }
+            fEntries.put(entry, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the elements of a subtree which has just been inserted
+     * in the tree.
+     */
+    void insertedNode(NodeImpl node) {
+        if (fEntries.isEmpty() || !isInDocument(fDocument, node)) {
+            return;
+        }
+        collect(node);
+        for (int i = 0; i < fTouched.size(); i++) {
+            Entry entry = (Entry) fTouched.get(i);
+            // the new elements follow each other in document order
+            int index = entry.lowerBound((NodeImpl) entry.pending.get(0));
+            entry.elements.addAll(index, entry.pending);
+            entry.pending.clear();
+            entry.modCount++;
+        }
+        fTouched.clear();
+    }
+
+    /**
+     * Removes the elements of a subtree which is about to be removed
+     * from the tree.
+     */
+    void removingNode(NodeImpl node) {
+        if (fEntries.isEmpty() || !isInDocument(fDocument, node)) {
+            return;
+        }
+        collect(node);
+        for (int i = 0; i < fTouched.size(); i++) {
+            Entry entry = (Entry) fTouched.get(i);
+            // the old elements follow each other in document order
+            int index = entry.lowerBound((NodeImpl) entry.pending.get(0));
+            int count = entry.pending.size();
+            entry.elements.subList(index, index + count).clear();
+            entry.pending.clear();
+            entry.modCount++;
+        }
+        fTouched.clear();
+    }
+
+    /**
+     * Moves an element which has been renamed without being replaced
+     * to the entries of its new name.
+     */
+    void renamedElement(ElementImpl el) {
+        if (fEntries.isEmpty() || !isInDocument(fDocument, el)) {
+            return;
+        }
+        // the old name is gone, look for the element in every entry
+        Iterator entries = fEntries.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = (Entry) entries.next();
+            int index = entry.lowerBound(el);
+            if (index < entry.elements.size()
+                && entry.elements.get(index) == el) {
+                entry.elements.remove(index);
+                entry.modCount++;
+            }
+        }
+        addElement(el);
+        for (int i = 0; i < fTouched.size(); i++) {
+            Entry entry = (Entry) fTouched.get(i);
+            entry.elements.add(entry.lowerBound(el), el);
+            entry.pending.clear();
+            entry.modCount++;
+        }
+        fTouched.clear();
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Collects the elements of the given subtree, in document order,
+     * into the pending lists of the entries they belong to.
+     */
+    private void collect(NodeImpl root) {
+        Node node = root;
+        do {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                addElement((ElementImpl) node);
+            }
+        } while ((node = nextNode(root, node)) != null);
+    }
+
+    /** Adds an element to the pending lists of its entries. */
+    private void addElement(ElementImpl el) {
+        String tagName = el.getTagName();
+        addPending(false, null, "*", el);
+        if (!tagName.equals("*")) {
+            addPending(false, null, tagName, el);
+        }
+        String uri = el.getNamespaceURI();
+        String localName = el.getLocalName();
+        boolean anyURI = uri != null && uri.equals("*");
+        addPending(true, "*", "*", el);
+        if (!anyURI) {
+            addPending(true, uri, "*", el);
+        }
+        if (localName != null && !localName.equals("*")) {
+            addPending(true, "*", localName, el);
+            if (!anyURI) {
+                addPending(true, uri, localName, el);
+            }
+        }
+    }
+
+    /** Adds an element to the pending list of an entry, if there is one. */
+    private void addPending(boolean enableNS, String nsName, String tagName,
+                            ElementImpl el) {
+        fKey.setValues(enableNS, nsName, tagName);
+        Entry entry = (Entry) fEntries.get(fKey);
+        if (entry != null) {
+            if (entry.pending.isEmpty()) {
+                fTouched.add(entry);
+            }
+            entry.pending.add(el);
+        }
+    }
+
+    //
+    // Static methods
+    //
+
+    /**
+     * Returns the node following the given one in a preorder walk of the
+     * subtree of root, or null.
+     */
+    static Node nextNode(Node root, Node current) {
+        Node next = current.getFirstChild();
+        if (next != null) {
+            return next;
+        }
+        while (current != root) {
+            next = current.getNextSibling();
+            if (next != null) {
+                return next;
+            }
+            current = current.getParentNode();
+        }
+        return null;
+    }
+
+    /** Returns true if the node is part of the tree of the document. */
+    static boolean isInDocument(CoreDocumentImpl document, NodeImpl node) {
+        NodeImpl parent;
+        while ((parent = node.parentNode()) != null) {
+            node = parent;
+        }
+        return node == document;
+    }
+
+    /**
+     * Compares the positions in document order of two nodes of the same
+     * tree. Returns a negative number if a comes before b, zero if they
+     * are the same node, and a positive number if a comes after b.
+     */
+    static int compareTreePosition(NodeImpl a, NodeImpl b) {
+        if (a == b) {
+            return 0;
+        }
+        int depthA = 0;
+        for (NodeImpl n = a.parentNode(); n != null; n = n.parentNode()) {
+            depthA++;
+        }
+        int depthB = 0;
+        for (NodeImpl n = b.parentNode(); n != null; n = n.parentNode()) {
+            depthB++;
+        }
+        NodeImpl x = a;
+        NodeImpl y = b;
+        for (; depthA > depthB; depthA--) {
+            x = x.parentNode();
+        }
+        for (; depthB > depthA; depthB--) {
+            y = y.parentNode();
+        }
+        if (x == y) {
+            // an ancestor comes before its descendants
+            return a == x ? -1 : 1;
+        }
+        while (x.parentNode() != y.parentNode()) {
+            x = x.parentNode();
+            y = y.parentNode();
+        }
+        // x and y are siblings, look for y on both sides of x
+        ChildNode next = (ChildNode) x;
+        ChildNode prev = (ChildNode) x;
+        while (next != null || prev != null) {
+            if (next != null) {
+                next = next.nextSibling;
+                if (next == y) {
+                    return -1;
+                }
+            }
+            if (prev != null) {
+                prev = prev.previousSibling();
+                if (prev == y) {
+                    return 1;
+                }
+            }
+        }
+        // not reached in a consistent tree
+        return 0;
+    }
+
+    //
+    // Classes
+    //
+
+    /** Name of the elements of an entry. */
+    static class Key {
+
+        //
+        // Data
+        //
+
+        /** True for getElementsByTagNameNS. */
+        boolean enableNS;
+
+        /** Namespace URI, "*" or null. */
+        String nsName;
+
+        /** Tag name or local name, or "*". */
+        String tagName;
+
+        //
+        // Methods
+        //
+
+        /** Sets the values of the key. */
+        final void setValues(boolean enableNS, String nsName, String tagName) {
+            this.enableNS = enableNS;
+            this.nsName = nsName;
+            this.tagName = tagName;
+        }
+
+        /** Returns a hash code for this key. */
+        public int hashCode() {
+            int code = tagName.hashCode();
+            if (nsName != null) {
+                code = code * 31 + nsName.hashCode();
+            }
+            return enableNS ? ~code : code;
+        }
+
+        /** Returns true if the object is an equal key. */
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return enableNS == key.enableNS && tagName.equals(key.tagName)
+                && (nsName == null ? key.nsName == null
+                                   : nsName.equals(key.nsName));
+        }
+
+    } // class Key
+
+    /** The elements of the document which have a given name. */
+    static final class Entry
+        extends Key {
+
+        //
+        // Data
+        //
+
+        /** The matching elements, in document order. */
+        final ArrayList elements = new ArrayList();
+
+        /** Number of updates of the elements list. */
+        int modCount;
+
+        /** Elements collected for the current update. */
+        final ArrayList pending = new ArrayList();
+
+        //
+        // Constructors
+        //
+
+        /** Constructs an empty entry. */
+        Entry(boolean enableNS, String nsName, String tagName) {
+            setValues(enableNS, nsName, tagName);
+        }
+
+        //
+        // Methods
+        //
+
+        /**
+         * Returns the index of the first element which does not come
+         * before the given node in document order.
+         */
+        int lowerBound(NodeImpl node) {
+            final ArrayList elements = this.elements;
+            int low = 0;
+            int high = elements.size();
+            // nodes are most often appended to the tree
+            if (high == 0
+                || compareTreePosition((NodeImpl) elements.get(high - 1), node) < 0) {
+                return high;
+            }
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareTreePosition((NodeImpl) elements.get(mid), node) < 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns true if the element has this name, as specified by
+         * DeepNodeListImpl.
+         */
+        boolean matches(ElementImpl el) {
+            if (!enableNS) {
+                return tagName.equals("*") || el.getTagName().equals(tagName);
+            }
+            if (!tagName.equals("*")) {
+                String localName = el.getLocalName();
+                if (localName == null || !localName.equals(tagName)) {
+                    return false;
+                }
+            }
+            if (nsName != null && nsName.equals("*")) {
+                return true;
+            }
+            String uri = el.getNamespaceURI();
+            return nsName == null ? uri == null : nsName.equals(uri);
+        }
+
+    } // class Entry
+
+} // class ElementIndex
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.dom;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Table of the identifiers of a document, mapping ID values to elements.
+ * <p>
+ * The table uses open addressing with linear probing in two parallel
+ * arrays, so that an entry costs two array slots rather than an entry
+ * object, and it is not synchronized. It can be sized for the number of
+ * identifiers known when the document is parsed, so that filling it does
+ * not rehash.
+ * <p>
+ * The table is a <code>Map</code> so that it can be copied to and from the
+ * <code>identifiers</code> <code>Hashtable</code> the document still exposes
+ * to subclasses and serializes. Its iterators do not support removal.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class IdentifierTable
+    extends AbstractMap {
+
+    //
+    // Constants
+    //
+
+    /** Default initial capacity (16). */
+    private static final int INITIAL_CAPACITY = 16;
+
+    //
+    // Data
+    //
+
+    /** Identifiers, or null for free slots. */
+    private String[] fKeys;
+
+    /** Elements of the identifiers. */
+    private Object[] fValues;
+
+    /** Number of identifiers. */
+    private int fCount;
+
+    /** Number of identifiers above which the arrays are grown. */
+    private int fThreshold;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an empty table. */
+    IdentifierTable() {
+        this(0);
+    }
+
+    /**
+     * Constructs an empty table which can hold the given number of
+     * identifiers without growing.
+     */
+    IdentifierTable(int expected) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 2 < expected * 3) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /** Constructs a table holding the entries of the given map. */
+    IdentifierTable(Map map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    //
+    // Map methods
+    //
+
+    /** Returns the number of identifiers. */
+    public int size() {
+        return fCount;
+    }
+
+    /** Returns true if the identifier is in the table. */
+    public boolean containsKey(Object key) {
+        return key != null && fKeys[indexOf(key)] != null;
+    }
+
+    /** Returns the element of an identifier, or null. */
+    public Object get(Object key) {
+        return key != null ? fValues[indexOf(key)] : null;
+    }
+
+    /**
+     * Sets the element of an identifier and returns the previous one.
+     * The identifier must be a string, and neither it nor the element
+     * can be null.
+     */
+    public Object put(Object key, Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int index = indexOf(key);
+        Object previous = fValues[index];
+        fValues[index] = value;
+        if (previous == null) {
+            fKeys[index] = (String) key;
+            if (++fCount > fThreshold) {
+                rehash(fKeys.length << 1);
+            }
+        }
+        return previous;
+    }
+
+    /** Removes an identifier and returns its element, or null. */
+    public Object remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        int index = indexOf(key);
+        Object previous = fValues[index];
+        if (previous != null) {
+            delete(index);
+        }
+        return previous;
+    }
+
+    /** Removes all the identifiers. */
+    public void clear() {
+        if (fCount > 0) {
+            for (int i = 0; i < fKeys.length; i++) {
+                fKeys[i] = null;
+                fValues[i] = null;
+            }
+            fCount = 0;
+        }
+    }
+
+    /** Returns a view of the entries of the table. */
+    public Set entrySet() {
+        return new AbstractSet() {
+            public int size() {
+                return fCount;
+            }
+            public Iterator iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns the slot of the identifier, or the free slot at which it
+     * would be added.
+     */
+    private int indexOf(Object key) {
+        final String[] keys = fKeys;
+        final int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        String k;
+        while ((k = keys[index]) != null) {
+            if (k == key || k.equals(key)) {
+                break;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /** Empties a slot, moving back the entries which probed past it. */
+    private void delete(int index) {
+        final String[] keys = fKeys;
+        final Object[] values = fValues;
+        final int mask = keys.length - 1;
+        int free = index;
+        int next = (free + 1) & mask;
+        String k;
+        while ((k = keys[next]) != null) {
+            int home = hash(k) & mask;
+            // move the entry if its home slot is not in (free, next]
+            if (free <= next ? (home <= free || home > next)
+                             : (home <= free && home > next)) {
+                keys[free] = k;
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = null;
+        values[free] = null;
+        fCount--;
+    }
+
+    /** Allocates empty arrays of the given capacity. */
+    private void allocate(int capacity) {
+        fKeys = new String[capacity];
+        fValues = new Object[capacity];
+        fThreshold = capacity * 2 / 3;
+    }
+
+    /** Moves the entries to arrays of the given capacity. */
+    private void rehash(int capacity) {
+        final String[] keys = fKeys;
+        final Object[] values = fValues;
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int index = indexOf(keys[i]);
+                fKeys[index] = keys[i];
+                fValues[index] = values[i];
+            }
+        }
+    }
+
+    /** Spreads the hash code of an identifier over the low bits. */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    //
+    // Classes
+    //
+
+    /** Iterator over the entries of the table. */
+    private final class EntryIterator
+        implements Iterator {
+
+        /** Next slot to look at. */
+        private int fIndex;
+
+        /** Returns true if there are more entries. */
+        public boolean hasNext() {
+            while (fIndex < fKeys.length && fKeys[fIndex] == null) {
+                fIndex++;
+            }
+            return fIndex < fKeys.length;
+        }
+
+        /** Returns the next entry. */
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String key = fKeys[fIndex];
+            final Object value = fValues[fIndex++];
+            return new Map.Entry() {
+                public Object getKey() {
+                    return key;
+                }
+                public Object getValue() {
+                    return value;
+                }
+                public Object setValue(Object v) {
+                    throw new UnsupportedOperationException();
+                }
+                public boolean equals(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry e = (Map.Entry) o;
+                    return key.equals(e.getKey()) && value.equals(e.getValue());
+                }
+                public int hashCode() {
+                    return key.hashCode() ^ value.hashCode();
+                }
+            };
+        }
+
+        /** Not supported. */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    } // class EntryIterator
+
+} // class IdentifierTable
@@ -18,6 +18,7 @@
 package org.apache.xerces.dom;
 
 import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.NodeIterator;
@@ -43,7 +44,10 @@ public class NodeIteratorImpl implements NodeIterator {
     // Data
     //
     
-    /** The DocumentImpl which created this iterator, so it can be detached. */
+    /**
+     * The DocumentImpl which created this iterator, so it can be detached,
+     * or null if the document cannot be modified.
+     */
     private DocumentImpl fDocument;
     /** The root. */
     private Node fRoot;
@@ -80,6 +84,9 @@ public class NodeIteratorImpl implements NodeIterator {
     
     /** When TRUE, the children of entites references are returned in the iterator. */
     private boolean fEntityReferenceExpansion;
+
+    /** Whether nodes are compared with isSameNode instead of identity. */
+    private boolean fUseIsSameNode;
     
     // 
     // Constructor
@@ -93,6 +100,7 @@ public class NodeIteratorImpl implements NodeIterator {
                              boolean entityReferenceExpansion) {
         fDocument = document;
         fRoot = root;
+        fUseIsSameNode = useIsSameNode(root);
         fCurrentNode = null;
         fWhatToShow = whatToShow;
         fNodeFilter = nodeFilter;
@@ -246,8 +254,8 @@ public class NodeIteratorImpl implements NodeIterator {
         
         // check if the removed node is an _ancestor_ of the 
         // reference node
-        for (Node n = fCurrentNode; n != fRoot; n = n.getParentNode()) {
-            if (node == n) return n;
+        for (Node n = fCurrentNode; !isSameNode(n, fRoot); n = n.getParentNode()) {
+            if (isSameNode(node, n)) return n;
         }
         return null;
     }
@@ -272,7 +280,7 @@ public class NodeIteratorImpl implements NodeIterator {
             }
         }
             
-        if (node == fRoot) { //if Root has no kids
+        if (isSameNode(node, fRoot)) { //if Root has no kids
             return null;
         }
 
@@ -283,7 +291,7 @@ public class NodeIteratorImpl implements NodeIterator {
                 
         // return parent's 1st sibling.
         Node parent = node.getParentNode();
-        while (parent != null && parent != fRoot) {
+        while (parent != null && !isSameNode(parent, fRoot)) {
             result = parent.getNextSibling();
             if (result != null) {
                 return result;
@@ -305,7 +313,7 @@ public class NodeIteratorImpl implements NodeIterator {
         Node result;
         
         // if we're at the root, return null.
-        if (node == fRoot) return null;
+        if (isSameNode(node, fRoot)) return null;
         
         // get sibling
         result = node.getPreviousSibling();
@@ -366,7 +374,29 @@ public class NodeIteratorImpl implements NodeIterator {
     
     public void               detach() {
         fDetach = true;
-        fDocument.removeNodeIterator(this);
+        if (fDocument != null) {
+            fDocument.removeNodeIterator(this);
+        }
+    }
+
+    /**
+     * Returns true if the nodes of the document of <code>node</code> are
+     * compared with isSameNode, since they may have several view objects.
+     */
+    private boolean useIsSameNode(Node node) {
+        if (node == null || node instanceof NodeImpl) {
+            return false;
+        }
+        Document doc = node.getNodeType() == Node.DOCUMENT_NODE
+            ? (Document) node : node.getOwnerDocument();
+        return (doc != null && doc.getImplementation().hasFeature("Core", "3.0"));
+    }
+
+    /**
+     * Returns true if <code>m</code> is the same node <code>n</code>.
+     */
+    private boolean isSameNode(Node m, Node n) {
+        return (fUseIsSameNode) ? m.isSameNode(n) : m == n;
     }
     
 }
@@ -241,6 +241,9 @@ public final class Constants {
     /** Defer node expansion feature ("dom/defer-node-expansion"). */
     public static final String DEFER_NODE_EXPANSION_FEATURE = "dom/defer-node-expansion";
     
+    /** Deferred off-heap storage feature ("dom/deferred-off-heap-storage"). */
+    public static final String DEFERRED_OFF_HEAP_STORAGE_FEATURE = "dom/deferred-off-heap-storage";
+    
     /** Create entity reference nodes feature ("dom/create-entity-ref-nodes"). */
     public static final String CREATE_ENTITY_REF_NODES_FEATURE = "dom/create-entity-ref-nodes";
     
@@ -280,6 +283,9 @@ public final class Constants {
     /** Namespace growth feature ("namespace-growth"). */
     public static final String NAMESPACE_GROWTH_FEATURE = "namespace-growth";
 
+    /** Parallel schema loading feature ("parallel-schema-loading"). */
+    public static final String PARALLEL_SCHEMA_LOADING_FEATURE = "parallel-schema-loading";
+
     /** Tolerate duplicates feature ("internal/tolerate-duplicates"). */
     public static final String TOLERATE_DUPLICATES_FEATURE = "internal/tolerate-duplicates";
     
@@ -295,6 +301,12 @@ public final class Constants {
     /** XInclude fixup language feature ("xinclude/fixup-language"). */
     public static final String XINCLUDE_FIXUP_LANGUAGE_FEATURE = "xinclude/fixup-language";    
     
+    /** XInclude parallel processing feature ("xinclude/parallel-processing"). */
+    public static final String XINCLUDE_PARALLEL_PROCESSING_FEATURE = "xinclude/parallel-processing";
+    
+    /** XInclude streaming XPointer feature ("xinclude/streaming-xpointer"). */
+    public static final String XINCLUDE_STREAMING_XPOINTER_FEATURE = "xinclude/streaming-xpointer";
+    
     /**
      * Feature to ignore xsi:type attributes on elements during validation,
      * until a global element declaration is found. ("validation/schema/ignore-xsi-type-until-elemdecl")
@@ -353,6 +365,9 @@ public final class Constants {
     /** Document class name property ("dom/document-class-name"). */
     public static final String DOCUMENT_CLASS_NAME_PROPERTY = "dom/document-class-name";
     
+    /** Deferred chunk size property ("dom/deferred-chunk-size"). */
+    public static final String DEFERRED_CHUNK_SIZE_PROPERTY = "dom/deferred-chunk-size";
+    
     /** Symbol table property ("internal/symbol-table"). */
     public static final String SYMBOL_TABLE_PROPERTY = "internal/symbol-table";
     
@@ -380,6 +395,9 @@ public final class Constants {
     /** Locale property ("locale"). */
     public static final String LOCALE_PROPERTY = "locale";
     
+    /** XInclude cache property ("xinclude-cache"). */
+    public static final String XINCLUDE_CACHE_PROPERTY = "xinclude-cache";
+    
     /** Entity resolver property ("internal/entity-resolver"). */
     public static final String ENTITY_RESOLVER_PROPERTY = "internal/entity-resolver";
     
@@ -505,6 +523,7 @@ public final class Constants {
             LOAD_DTD_GRAMMAR_FEATURE,
             LOAD_EXTERNAL_DTD_FEATURE,
             //DEFER_NODE_EXPANSION_FEATURE,
+            DEFERRED_OFF_HEAP_STORAGE_FEATURE,
             CREATE_ENTITY_REF_NODES_FEATURE,
             INCLUDE_IGNORABLE_WHITESPACE,
             //GRAMMAR_ACCESS_FEATURE,
@@ -522,11 +541,14 @@ public final class Constants {
             XINCLUDE_FEATURE,
             XINCLUDE_FIXUP_BASE_URIS_FEATURE,
             XINCLUDE_FIXUP_LANGUAGE_FEATURE,
+            XINCLUDE_PARALLEL_PROCESSING_FEATURE,
+            XINCLUDE_STREAMING_XPOINTER_FEATURE,
             IGNORE_XSI_TYPE_FEATURE,
             ID_IDREF_CHECKING_FEATURE,
             IDC_CHECKING_FEATURE,
             UNPARSED_ENTITY_CHECKING_FEATURE,
             NAMESPACE_GROWTH_FEATURE,
+            PARALLEL_SCHEMA_LOADING_FEATURE,
             TOLERATE_DUPLICATES_FEATURE,
             STRINGS_INTERNED_FEATURE,
     };
@@ -535,6 +557,7 @@ public final class Constants {
     private static final String[] fgXercesProperties = {
             CURRENT_ELEMENT_NODE_PROPERTY,
             DOCUMENT_CLASS_NAME_PROPERTY,
+            DEFERRED_CHUNK_SIZE_PROPERTY,
             SYMBOL_TABLE_PROPERTY,
             ERROR_HANDLER_PROPERTY,
             ERROR_REPORTER_PROPERTY,
@@ -551,6 +574,7 @@ public final class Constants {
             BUFFER_SIZE_PROPERTY,
             SECURITY_MANAGER_PROPERTY,
             LOCALE_PROPERTY,
+            XINCLUDE_CACHE_PROPERTY,
             ROOT_TYPE_DEFINITION_PROPERTY,
             ROOT_ELEMENT_DECLARATION_PROPERTY,
             SCHEMA_DV_FACTORY_PROPERTY,
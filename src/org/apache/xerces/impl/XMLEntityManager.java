@@ -28,6 +28,7 @@ import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Hashtable;
@@ -45,6 +46,7 @@ import org.apache.xerces.impl.io.UTF8Reader;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
 import org.apache.xerces.impl.validation.ValidationManager;
 import org.apache.xerces.util.AugmentationsImpl;
+import org.apache.xerces.util.ByteBufferInputSource;
 import org.apache.xerces.util.EncodingMap;
 import org.apache.xerces.util.HTTPInputSource;
 import org.apache.xerces.util.SecurityManager;
@@ -952,6 +954,7 @@ public class XMLEntityManager
 
         // create reader
         InputStream stream = null;
+        boolean readFromSystemId = false;
         Reader reader = xmlInputSource.getCharacterStream();
         // First chance checking strict URI
         String expandedSystemId = expandSystemId(literalSystemId, baseSystemId, fStrictURI);
@@ -960,7 +963,16 @@ public class XMLEntityManager
         }
         if (reader == null) {
             stream = xmlInputSource.getByteStream();
-            if (stream == null) {
+            ByteBuffer byteBuffer = null;
+            if (stream == null && xmlInputSource instanceof ByteBufferInputSource) {
+                byteBuffer = ((ByteBufferInputSource) xmlInputSource).getByteBuffer();
+            }
+            if (byteBuffer != null) {
+                // read the buffer directly; it can be rewound without buffering
+                stream = new ByteBufferInputStream(byteBuffer);
+            }
+            else if (stream == null) {
+                readFromSystemId = true;
                 URL location = new URL(expandedSystemId);
                 URLConnection connect = location.openConnection();
                 if (!(connect instanceof HttpURLConnection)) {
@@ -1006,8 +1018,9 @@ public class XMLEntityManager
                 }
             }
             // wrap this stream in RewindableInputStream
-            RewindableInputStream rewindableStream = new RewindableInputStream(stream);
-            stream = rewindableStream;
+            if (byteBuffer == null) {
+                stream = new RewindableInputStream(stream);
+            }
 
             // perform auto-detect of encoding if necessary
             if (encoding == null) {
@@ -1015,7 +1028,7 @@ public class XMLEntityManager
                 final byte[] b4 = new byte[4];
                 int count = 0;
                 for (; count<4; count++ ) {
-                    b4[count] = (byte)rewindableStream.readAndBuffer();
+                    b4[count] = (byte)readAndBuffer(stream);
                 }
                 if (count == 4) {
                     EncodingInfo info = getEncodingInfo(b4, count);
@@ -1053,7 +1066,7 @@ public class XMLEntityManager
                     final int[] b3 = new int[3];
                     int count = 0;
                     for (; count < 3; ++count) {
-                        b3[count] = rewindableStream.readAndBuffer();
+                        b3[count] = readAndBuffer(stream);
                         if (b3[count] == -1)
                             break;
                     }
@@ -1074,7 +1087,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1113,7 +1126,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1138,7 +1151,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1184,11 +1197,23 @@ public class XMLEntityManager
                 new XMLResourceIdentifierImpl(publicId, literalSystemId, baseSystemId, expandedSystemId),
                 stream, reader, fTempByteBuffer, encoding, literal, false, isExternal);
 		fCurrentEntity.setEncodingExternallySpecified(encodingExternallySpecified);
+        fCurrentEntity.readFromSystemId = readFromSystemId;
         fEntityScanner.setCurrentEntity(fCurrentEntity);
         fResourceIdentifier.setValues(publicId, literalSystemId, baseSystemId, expandedSystemId);
         return encoding;
     } //setupCurrentEntity(String, XMLInputSource, boolean, boolean):  String
 
+    /**
+     * Reads a byte from a stream created by <code>setupCurrentEntity</code>
+     * so that it can be reread after the stream is reset.
+     */
+    private static int readAndBuffer(InputStream stream) throws IOException {
+        if (stream instanceof RewindableInputStream) {
+            return ((RewindableInputStream) stream).readAndBuffer();
+        }
+        return stream.read();
+    } // readAndBuffer(InputStream):int
+
     // set version of scanner to use
     public void setScannerVersion(short version) {
         if(version == Constants.XML_VERSION_1_0) {
@@ -2653,6 +2678,12 @@ public class XMLEntityManager
         // whether this is an external or internal scanned entity
         public boolean isExternal;
 
+        /** 
+         * True if the entity was read from its system identifier,
+         * rather than from a stream or buffer of the input source.
+         */
+        public boolean readFromSystemId;
+
         // buffer
 
         /** Character buffer. */
@@ -3235,4 +3266,84 @@ public class XMLEntityManager
         }
     } // end of RewindableInputStream class
 
+    /**
+     * An input stream over the bytes of a <code>ByteBuffer</code>, used
+     * in place of <code>RewindableInputStream</code> for entities read
+     * from a <code>ByteBufferInputSource</code>. Since the whole entity
+     * is in the buffer, the stream may always be reset to its mark
+     * without buffering the bytes read. Like <code>RewindableInputStream</code>,
+     * it only returns one byte per read until the entity may be read in
+     * chunks, so that no bytes are lost if the reader is replaced once
+     * the encoding declaration has been scanned.
+     *
+     * @xerces.internal
+     */
+    protected final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer fBuffer;
+        private int fMark;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            // never move the position of the buffer passed in
+            fBuffer = buffer.duplicate();
+            fMark = fBuffer.position();
+        }
+
+        public int read() throws IOException {
+            if (!fBuffer.hasRemaining()) {
+                return -1;
+            }
+            return fBuffer.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len <= 0) {
+                return 0;
+            }
+            final int bytesLeft = fBuffer.remaining();
+            if (bytesLeft == 0) {
+                return -1;
+            }
+            if (!fCurrentEntity.mayReadChunks) {
+                len = 1;
+            }
+            else if (len > bytesLeft) {
+                len = bytesLeft;
+            }
+            fBuffer.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            final int bytesLeft = fBuffer.remaining();
+            if (n > bytesLeft) {
+                n = bytesLeft;
+            }
+            fBuffer.position(fBuffer.position() + (int) n);
+            return n;
+        }
+
+        public int available() throws IOException {
+            return fCurrentEntity.mayReadChunks ? fBuffer.remaining() : 0;
+        }
+
+        public void mark(int howMuch) {
+            fMark = fBuffer.position();
+        }
+
+        public void reset() {
+            fBuffer.position(fMark);
+        }
+
+        public boolean markSupported() {
+            return true;
+        }
+
+        public void close() throws IOException {}
+
+    } // end of ByteBufferInputStream class
+
 } // class XMLEntityManager
@@ -887,6 +887,21 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 		else if (start+2 != dot || dot+1 == end) {
 			throw new NumberFormatException("'" + buffer + "' has wrong format");
 		}
+		// with at most 15 digits, the digits and the power of ten are exact,
+		// and dividing them gives the value Double.parseDouble would
+		if (end - start <= 16) {
+			long digits = 0;
+			int i;
+			for (i = start; i < end; i++) {
+				char ch = buffer.charAt(i);
+				if (ch != '.')
+					digits = digits * 10 + (ch - '0');
+				else if (i != dot)
+					break;
+			}
+			if (i == end)
+				return dot == -1 ? digits : digits / DoubleDV.DOUBLE_POWERS_OF_TEN[end - dot - 1];
+		}
 		return Double.parseDouble(buffer.substring(start, end));
 	}
 	
@@ -952,6 +967,23 @@ public abstract class AbstractDateTimeDV extends TypeValidator {
 				return false;
 			return type.compareDates(this, (DateTimeData)obj, true)==0;
 		}
+		public int hashCode() {
+			// equal durations need not have equal fields (e.g. P1D and PT24H),
+			// but they have the same number of months and of seconds
+			if (type instanceof DurationDV) {
+				long seconds = day * 86400L + hour * 3600L + minute * 60L
+					+ (long) Math.floor(second);
+				int hash = year * 12 + month;
+				return hash * 31 + (int)(seconds ^ (seconds >>> 32));
+			}
+			// year and month are not compared for all types, see compareOrder()
+			long bits = Double.doubleToLongBits(second);
+			int hash = day;
+			hash = hash * 31 + hour;
+			hash = hash * 31 + minute;
+			hash = hash * 31 + (int)(bits ^ (bits >>> 32));
+			return hash * 31 + utc;
+		}
 		public synchronized String toString() {
 			if (canonical == null) {
 				canonical = type.dateToString(this);
@@ -41,4 +41,12 @@ public class AnySimpleDV extends TypeValidator {
         return content;
     }
 
+    public boolean isValid(char[] ch, int offset, int length) {
+        return true;
+    }
+
+    public int getDataLength(char[] ch, int offset, int length) {
+        return length;
+    }
+
 } // class AnySimpleDV
@@ -46,4 +46,17 @@ public class BooleanDV extends TypeValidator {
         throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content, "boolean"});
     }
 
+    public boolean isValid(char[] ch, int offset, int length) {
+        if (length == 1) {
+            return ch[offset] == '0' || ch[offset] == '1';
+        }
+        if (length == 4) {
+            return ch[offset] == 't' && ch[offset+1] == 'r' && ch[offset+2] == 'u' && ch[offset+3] == 'e';
+        }
+        if (length == 5) {
+            return ch[offset] == 'f' && ch[offset+1] == 'a' && ch[offset+2] == 'l' && ch[offset+3] == 's' && ch[offset+4] == 'e';
+        }
+        return false;
+    }
+
 } // class BooleanDV
@@ -57,17 +57,19 @@ public class DateTimeDV extends AbstractDateTimeDV {
         DateTimeData date = new DateTimeData(str, this);
         int len = str.length();
 
-        int end = indexOf (str, 0, len, 'T');
+        if (!parseCommonForm(str, len, date)) {
+            int end = indexOf (str, 0, len, 'T');
 
-        // both time and date
-        int dateEnd = getDate(str, 0, end, date);
-        getTime(str, end+1, len, date);
+            // both time and date
+            int dateEnd = getDate(str, 0, end, date);
+            getTime(str, end+1, len, date);
 
-        //Check the separator character between Date and Time
-        if (dateEnd != end) {
-            throw new RuntimeException(str
-                    + " is an invalid dateTime dataype value. "
-                    + "Invalid character(s) seprating date and time values.");
+            //Check the separator character between Date and Time
+            if (dateEnd != end) {
+                throw new RuntimeException(str
+                        + " is an invalid dateTime dataype value. "
+                        + "Invalid character(s) seprating date and time values.");
+            }
         }
 
         //validate and normalize
@@ -84,6 +86,94 @@ public class DateTimeDV extends AbstractDateTimeDV {
         return date;
     }
     
+    /**
+     * Parses the common form of dateTime, CCYY-MM-DDThh:mm:ss with optional
+     * fractional seconds and time zone, in a single pass over fixed positions.
+     * Returns false, leaving the value to the general parser, for any other
+     * form, and for values in this form that it would reject, so that the
+     * errors reported don't change.
+     *
+     * @param str  The lexical representation of dateTime object
+     * @param len  The length of the lexical representation
+     * @param date The object to store the parsed fields in
+     * @return true if the value was parsed
+     */
+    private boolean parseCommonForm(String str, int len, DateTimeData date) {
+        if (len < 19 || str.charAt(4) != '-' || str.charAt(7) != '-' ||
+                str.charAt(10) != 'T' || str.charAt(13) != ':' || str.charAt(16) != ':') {
+            return false;
+        }
+        int century = parse2Digits(str, 0);
+        int year = parse2Digits(str, 2);
+        int month = parse2Digits(str, 5);
+        int day = parse2Digits(str, 8);
+        int hour = parse2Digits(str, 11);
+        int minute = parse2Digits(str, 14);
+        if ((century | year | month | day | hour | minute) < 0) {
+            return false;
+        }
+
+        // time zone: none, Z, or (+|-)hh:mm
+        int end = len;
+        char utc = str.charAt(len - 1);
+        int timezoneHr = 0;
+        int timezoneMin = 0;
+        if (utc == 'Z') {
+            end = len - 1;
+        }
+        else if (len >= 25 && str.charAt(len - 3) == ':' &&
+                ((utc = str.charAt(len - 6)) == '+' || utc == '-')) {
+            timezoneHr = parse2Digits(str, len - 5);
+            timezoneMin = parse2Digits(str, len - 2);
+            if ((timezoneHr | timezoneMin) < 0) {
+                return false;
+            }
+            if (utc == '-') {
+                timezoneHr = -timezoneHr;
+                timezoneMin = -timezoneMin;
+            }
+            end = len - 6;
+        }
+        else {
+            utc = 0;
+        }
+
+        // seconds: ss or ss.s+
+        if (end < 19 || parse2Digits(str, 17) < 0 ||
+                (end > 19 && (str.charAt(19) != '.' || end == 20))) {
+            return false;
+        }
+        for (int i = 20; i < end; i++) {
+            if (!TypeValidator.isDigit(str.charAt(i))) {
+                return false;
+            }
+        }
+
+        date.year = century * 100 + year;
+        date.month = month;
+        date.day = day;
+        date.hour = hour;
+        date.minute = minute;
+        date.second = parseSecond(str, 17, end);
+        date.utc = utc;
+        date.timezoneHr = timezoneHr;
+        date.timezoneMin = timezoneMin;
+        if (timezoneHr != 0 || timezoneMin != 0) {
+            date.normalized = false;
+        }
+        return true;
+    }
+
+    // returns the value of the two digits at the given position, or -1
+    private static int parse2Digits(String str, int start) {
+        char c1 = str.charAt(start);
+        char c2 = str.charAt(start + 1);
+        if (!TypeValidator.isDigit(c1) || !TypeValidator.isDigit(c2)) {
+            return -1;
+        }
+        return (c1 - '0') * 10 + (c2 - '0');
+    }
+
     protected XMLGregorianCalendar getXMLGregorianCalendar(DateTimeData date) {
         return datatypeFactory.newXMLGregorianCalendar(BigInteger.valueOf(date.unNormYear), date.unNormMonth, 
                 date.unNormDay, date.unNormHour, date.unNormMinute, 
@@ -59,6 +59,116 @@ public class DecimalDV extends TypeValidator {
     public final int getFractionDigits(Object value){
         return ((XDecimal)value).fracDigits;
     }
+
+    public boolean isValid(char[] ch, int offset, int length) {
+        return isValid(ch, offset, length, false);
+    }
+
+    // The following methods work on lexical representations in place, in the
+    // same way as XDecimal's initD and initI, so that a value can be checked
+    // against the facets without creating an XDecimal.
+
+    static boolean isValid(char[] ch, int offset, int length, boolean integer) {
+        if (length == 0)
+            return false;
+        final int end = offset + length;
+        int intStart = offset;
+        if (ch[offset] == '+' || ch[offset] == '-')
+            intStart++;
+        int intEnd = intStart;
+        while (intEnd < end && TypeValidator.isDigit(ch[intEnd]))
+            intEnd++;
+        if (intEnd == end)
+            return intEnd > intStart;
+        // the remaining part must be ".DDD", and there must be at least
+        // a digit or a '.' followed by something
+        if (integer || ch[intEnd] != '.')
+            return false;
+        int fracPos = intEnd + 1;
+        if (intStart == intEnd && fracPos == end)
+            return false;
+        for (; fracPos < end; fracPos++) {
+            if (!TypeValidator.isDigit(ch[fracPos]))
+                return false;
+        }
+        return true;
+    }
+
+    // the following methods assume that the value has been checked by isValid
+
+    static int getTotalDigits(char[] ch, int offset, int length) {
+        final int end = offset + length;
+        final int intStart = getIntStart(ch, offset, end);
+        final int intEnd = getIntEnd(ch, intStart, end);
+        return intEnd - intStart + getFracDigits(ch, intEnd, end);
+    }
+
+    static int getFractionDigits(char[] ch, int offset, int length) {
+        final int end = offset + length;
+        return getFracDigits(ch, getIntEnd(ch, getIntStart(ch, offset, end), end), end);
+    }
+
+    static int compare(char[] ch, int offset, int length, XDecimal val) {
+        final int end = offset + length;
+        final int intStart = getIntStart(ch, offset, end);
+        final int intEnd = getIntEnd(ch, intStart, end);
+        final int intDigits = intEnd - intStart;
+        final int fracDigits = getFracDigits(ch, intEnd, end);
+        int sign = ch[offset] == '-' ? -1 : 1;
+        if (intDigits == 0 && fracDigits == 0)
+            sign = 0;
+        if (sign != val.sign)
+            return sign > val.sign ? 1 : -1;
+        if (sign == 0)
+            return 0;
+        if (intDigits != val.intDigits)
+            return intDigits > val.intDigits ? sign : -sign;
+        int ret = compare(ch, intStart, intDigits, val.ivalue);
+        if (ret == 0)
+            ret = compare(ch, intEnd + 1, fracDigits, val.fvalue);
+        return sign * ret;
+    }
+
+    // skip the sign and the leading zeroes of the integer part
+    private static int getIntStart(char[] ch, int offset, int end) {
+        int intStart = offset;
+        if (ch[offset] == '+' || ch[offset] == '-')
+            intStart++;
+        while (intStart < end && ch[intStart] == '0')
+            intStart++;
+        return intStart;
+    }
+
+    private static int getIntEnd(char[] ch, int intStart, int end) {
+        int intEnd = intStart;
+        while (intEnd < end && TypeValidator.isDigit(ch[intEnd]))
+            intEnd++;
+        return intEnd;
+    }
+
+    // the number of fraction digits, ignoring the trailing zeroes
+    private static int getFracDigits(char[] ch, int intEnd, int end) {
+        if (intEnd == end)
+            return 0;
+        final int fracStart = intEnd + 1;
+        int fracEnd = end;
+        while (fracEnd > fracStart && ch[fracEnd-1] == '0')
+            fracEnd--;
+        return fracEnd - fracStart;
+    }
+
+    // compare the characters with the string as String.compareTo does
+    private static int compare(char[] ch, int offset, int length, String value) {
+        final int valueLength = value.length();
+        final int min = length < valueLength ? length : valueLength;
+        for (int i = 0; i < min; i++) {
+            char c1 = ch[offset + i];
+            char c2 = value.charAt(i);
+            if (c1 != c2)
+                return c1 > c2 ? 1 : -1;
+        }
+        return length == valueLength ? 0 : (length > valueLength ? 1 : -1);
+    }
     
     // Avoid using the heavy-weight java.math.BigDecimal
     static class XDecimal implements XSDecimal {
@@ -230,6 +340,11 @@ public class DecimalDV extends TypeValidator {
             return intDigits == oval.intDigits && fracDigits == oval.fracDigits &&
                    ivalue.equals(oval.ivalue) && fvalue.equals(oval.fvalue);
         }
+        public int hashCode() {
+            if (sign == 0)
+                return 0;
+            return sign * (ivalue.hashCode() * 31 + fvalue.hashCode());
+        }
         public int compareTo(XDecimal val) {
             if (sign != val.sign)
                 return sign > val.sign ? 1 : -1;
@@ -290,6 +405,17 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return new BigDecimal(BigInteger.ZERO);
             }
+            // the digits of the canonical representation fit in a long
+            if (totalDigits < MAX_LONG_DIGITS) {
+                long unscaled = parseDigits(fvalue, parseDigits(ivalue, 0));
+                int scale = fracDigits;
+                if (!integer && fracDigits == 0) {
+                    // the canonical representation ends with ".0"
+                    unscaled *= 10;
+                    scale = 1;
+                }
+                return BigDecimal.valueOf(sign * unscaled, scale);
+            }
             return new BigDecimal(toString());
         }
         
@@ -300,6 +426,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return BigInteger.ZERO;
             }
+            if (intDigits <= MAX_LONG_DIGITS) {
+                return BigInteger.valueOf(sign * parseDigits(ivalue, 0));
+            }
             if (sign == 1) {
                 return new BigInteger(ivalue);
             }
@@ -313,6 +442,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return 0L;
             }
+            if (intDigits <= MAX_LONG_DIGITS) {
+                return sign * parseDigits(ivalue, 0);
+            }
             if (sign == 1) {
                 return Long.parseLong(ivalue);
             }
@@ -326,6 +458,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return 0;
             }
+            if (intDigits <= 9) {
+                return (int) (sign * parseDigits(ivalue, 0));
+            }
             if (sign == 1) {
                 return Integer.parseInt(ivalue);
             }
@@ -339,6 +474,9 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return 0;
             }
+            if (intDigits <= 4) {
+                return (short) (sign * parseDigits(ivalue, 0));
+            }
             if (sign == 1) {
                 return Short.parseShort(ivalue);
             }
@@ -352,11 +490,26 @@ public class DecimalDV extends TypeValidator {
             if (sign == 0) {
                 return 0;
             }
+            if (intDigits <= 2) {
+                return (byte) (sign * parseDigits(ivalue, 0));
+            }
             if (sign == 1) {
                 return Byte.parseByte(ivalue);
             }
             return Byte.parseByte("-" + ivalue);
         }
+
+        // the number of digits that always fit in a long
+        private static final int MAX_LONG_DIGITS = 18;
+
+        // append the value of the digits to the given value
+        private static long parseDigits(String digits, long value) {
+            final int length = digits.length();
+            for (int i = 0; i < length; i++) {
+                value = value * 10 + (digits.charAt(i) - '0');
+            }
+            return value;
+        }
     }
 } // class DecimalDV
 
@@ -77,11 +77,152 @@ public class DoubleDV extends TypeValidator {
         return true;
     }
 
+    // powers of ten that are exact as doubles and as floats
+    static final double[] DOUBLE_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /**
+     * Parses a string accepted by isPossibleFP. Values with few enough
+     * significant digits, and a small enough exponent, are parsed in a single
+     * pass: the digits and the power of ten are then exact, so one
+     * multiplication or division gives the correctly rounded value, as
+     * Double.parseDouble and Float.parseFloat would. Other values are passed
+     * on to these methods.
+     */
+    static double parse(String val, boolean isFloat) throws NumberFormatException {
+        final int length = val.length();
+        final int maxDigits = isFloat ? 7 : 15;
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (val.charAt(0) == '-' || val.charAt(0) == '+')) {
+            negative = val.charAt(0) == '-';
+            i++;
+        }
+        long significand = 0;
+        int digits = 0;
+        int nonZeroDigits = 0;
+        int exponent = 0;
+        boolean dot = false;
+        for (; i < length; i++) {
+            char c = val.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (significand != 0 || c != '0') {
+                    if (++nonZeroDigits > maxDigits)
+                        return slowParse(val, isFloat);
+                    significand = significand * 10 + (c - '0');
+                }
+                if (dot)
+                    exponent--;
+            }
+            else if (c == '.' && !dot) {
+                dot = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0)
+            return slowParse(val, isFloat);
+        if (i < length) {
+            // an exponent with at most 3 digits
+            char c = val.charAt(i++);
+            if ((c != 'e' && c != 'E') || i == length)
+                return slowParse(val, isFloat);
+            boolean negativeExponent = false;
+            c = val.charAt(i);
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                if (++i == length)
+                    return slowParse(val, isFloat);
+            }
+            if (length - i > 3)
+                return slowParse(val, isFloat);
+            int e = 0;
+            for (; i < length; i++) {
+                c = val.charAt(i);
+                if (c < '0' || c > '9')
+                    return slowParse(val, isFloat);
+                e = e * 10 + (c - '0');
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        double value;
+        if (significand == 0) {
+            value = 0;
+        }
+        else if (isFloat) {
+            if (exponent < -10 || exponent > 10)
+                return slowParse(val, isFloat);
+            float f = significand;
+            value = exponent < 0 ? f / FLOAT_POWERS_OF_TEN[-exponent]
+                                 : f * FLOAT_POWERS_OF_TEN[exponent];
+        }
+        else {
+            if (exponent < -22 || exponent > 22)
+                return slowParse(val, isFloat);
+            value = exponent < 0 ? significand / DOUBLE_POWERS_OF_TEN[-exponent]
+                                 : significand * DOUBLE_POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(String val, boolean isFloat) throws NumberFormatException {
+        return isFloat ? Float.parseFloat(val) : Double.parseDouble(val);
+    }
+
+    /**
+     * Checks the lexical representation of a double or float in place,
+     * accepting exactly what isPossibleFP and parse accept, and INF, -INF
+     * and NaN.
+     */
+    static boolean isValidFP(char[] ch, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        if (i < end && (ch[i] == '-' || ch[i] == '+'))
+            i++;
+        if (end - i == 3) {
+            if (ch[i] == 'I' && ch[i+1] == 'N' && ch[i+2] == 'F')
+                return i == offset || ch[offset] == '-';
+            if (ch[i] == 'N' && ch[i+1] == 'a' && ch[i+2] == 'N')
+                return i == offset;
+        }
+        int digits = 0;
+        for (; i < end && TypeValidator.isDigit(ch[i]); i++)
+            digits++;
+        if (i < end && ch[i] == '.') {
+            for (i++; i < end && TypeValidator.isDigit(ch[i]); i++)
+                digits++;
+        }
+        if (digits == 0)
+            return false;
+        if (i < end && (ch[i] == 'e' || ch[i] == 'E')) {
+            i++;
+            if (i < end && (ch[i] == '-' || ch[i] == '+'))
+                i++;
+            if (i == end)
+                return false;
+            for (; i < end && TypeValidator.isDigit(ch[i]); i++);
+        }
+        return i == end;
+    }
+
+    public boolean isValid(char[] ch, int offset, int length) {
+        return isValidFP(ch, offset, length);
+    }
+
     private static final class XDouble implements XSDouble {
+
         private final double value;
         public XDouble(String s) throws NumberFormatException {
             if (isPossibleFP(s)) {
-                value = Double.parseDouble(s);
+                value = parse(s, false);
             }
             else if ( s.equals("INF") ) {
                 value = Double.POSITIVE_INFINITY;
@@ -60,12 +60,16 @@ public class FloatDV extends TypeValidator {
         return false;
     }//isIdentical()
 
+    public boolean isValid(char[] ch, int offset, int length) {
+        return DoubleDV.isValidFP(ch, offset, length);
+    }
+
     private static final class XFloat implements XSFloat {
 
         private final float value;
         public XFloat(String s) throws NumberFormatException {
             if (DoubleDV.isPossibleFP(s)) {
-                value = Float.parseFloat(s);
+                value = (float) DoubleDV.parse(s, true);
             }
             else if ( s.equals("INF") ) {
                 value = Float.POSITIVE_INFINITY;
@@ -46,11 +46,27 @@ public class HexBinaryDV extends TypeValidator {
         return new XHex(decoded);
     }
 
+    public boolean isValid(char[] ch, int offset, int length) {
+        if (length % 2 != 0)
+            return false;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = ch[i];
+            if (!TypeValidator.isDigit(c) && (c < 'a' || c > 'f') && (c < 'A' || c > 'F'))
+                return false;
+        }
+        return true;
+    }
+
     // length of a binary type is the number of bytes
     public int getDataLength(Object value) {
         return ((XHex)value).getLength();
     }
 
+    public int getDataLength(char[] ch, int offset, int length) {
+        return length / 2;
+    }
+
     private static final class XHex extends ByteListImpl {
 
         public XHex(byte[] data) {
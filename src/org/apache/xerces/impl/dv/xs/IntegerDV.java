@@ -38,5 +38,9 @@ public class IntegerDV extends DecimalDV {
             throw new InvalidDatatypeValueException("cvc-datatype-valid.1.2.1", new Object[]{content, "integer"});
         }
     }
+
+    public boolean isValid(char[] ch, int offset, int length) {
+        return isValid(ch, offset, length, true);
+    }
     
 } // class EntityDV
@@ -155,32 +155,34 @@ class PrecisionDecimalDV extends TypeValidator {
             return this.compareTo(oval) == EQUAL;
         }
         
-        /**
-         * @return
-         */
-        private int compareFractionalPart(XPrecisionDecimal oval) {
-            if(fvalue.equals(oval.fvalue))
-                return EQUAL;
-            
-            StringBuffer temp1 = new StringBuffer(fvalue);
-            StringBuffer temp2 = new StringBuffer(oval.fvalue);
-            
-            truncateTrailingZeros(temp1, temp2);
-            return temp1.toString().compareTo(temp2.toString());
+        public int hashCode() {
+            if (ivalue.equals("INF") || ivalue.equals("-INF")) {
+                return ivalue.hashCode();
+            }
+            if (sign == 0) {
+                return 0;
+            }
+            normalize();
+            return (sign * 31 + normalizedExponent) * 31 + normalizedDigits.hashCode();
         }
         
-        private void truncateTrailingZeros(StringBuffer fValue, StringBuffer otherFValue) {
-            for(int i = fValue.length() - 1;i >= 0; i--)
-                if(fValue.charAt(i) == '0')
-                    fValue.deleteCharAt(i);
-                else
-                    break;
-            
-            for(int i = otherFValue.length() - 1;i >= 0; i--)
-                if(otherFValue.charAt(i) == '0')
-                    otherFValue.deleteCharAt(i);
-                else
-                    break;
+        // the digits of the value without leading and trailing zeroes, and
+        // the exponent of the value written as 0.digits x 10^exponent; the
+        // exponent is 0 for zero values
+        private String normalizedDigits;
+        private int normalizedExponent;
+        
+        private void normalize() {
+            if (normalizedDigits != null)
+                return;
+            String digits = ivalue + fvalue;
+            int start = 0, end = digits.length();
+            while (start < end && digits.charAt(start) == '0')
+                start++;
+            while (end > start && digits.charAt(end - 1) == '0')
+                end--;
+            normalizedExponent = start == end ? 0 : intDigits + pvalue - start;
+            normalizedDigits = digits.substring(start, end);
         }
         
         public int compareTo(XPrecisionDecimal val) {
@@ -213,82 +215,24 @@ class PrecisionDecimalDV extends TypeValidator {
             return sign * compare(val);
         }
         
-        // To enable comparison - the exponent part of the decimal will be limited
-        // to the max value of int.
-        private int compare(XPrecisionDecimal val) {     	
+        // Compares the absolute values. To enable comparison - the exponent
+        // part of the decimal will be limited to the max value of int.
+        private int compare(XPrecisionDecimal val) {
+            normalize();
+            val.normalize();
             
-            if(pvalue != 0 || val.pvalue != 0) {
-                if(pvalue == val.pvalue)
-                    return intComp(val);
-                else {
-                    
-                    if(intDigits + pvalue != val.intDigits + val.pvalue)
-                        return intDigits + pvalue > val.intDigits + val.pvalue ? GREATER_THAN : LESS_THAN;
-                    
-                    //otherwise the 2 combined values are the same
-                    if(pvalue > val.pvalue) {
-                        int expDiff = pvalue - val.pvalue;
-                        StringBuffer buffer = new StringBuffer(ivalue);
-                        StringBuffer fbuffer = new StringBuffer(fvalue);
-                        for(int i = 0;i < expDiff; i++) {
-                            if(i < fracDigits) {
-                                buffer.append(fvalue.charAt(i));
-                                fbuffer.deleteCharAt(i);
-                            }
-                            else
-                                buffer.append('0');
-                        }       				
-                        return compareDecimal(buffer.toString(), val.ivalue, fbuffer.toString(), val.fvalue);
-                    }
-                    else {
-                        int expDiff = val.pvalue - pvalue;
-                        StringBuffer buffer = new StringBuffer(val.ivalue);
-                        StringBuffer fbuffer = new StringBuffer(val.fvalue);
-                        for(int i = 0;i < expDiff; i++) {
-                            if(i < val.fracDigits) {
-                                buffer.append(val.fvalue.charAt(i));
-                                fbuffer.deleteCharAt(i);
-                            }
-                            else
-                                buffer.append('0');
-                        }       				
-                        return compareDecimal(ivalue, buffer.toString(), fvalue, fbuffer.toString());
-                    }
-                }
-            }
-            else {
-                return intComp(val);
+            // zero is smaller than everything else
+            if (normalizedDigits.length() == 0 || val.normalizedDigits.length() == 0) {
+                if (normalizedDigits.length() == val.normalizedDigits.length())
+                    return EQUAL;
+                return normalizedDigits.length() == 0 ? LESS_THAN : GREATER_THAN;
             }
-        }
-        
-        /**
-         * @param val
-         * @return
-         */
-        private int intComp(XPrecisionDecimal val) {
-            if (intDigits != val.intDigits)
-                return intDigits > val.intDigits ? GREATER_THAN : LESS_THAN;
-            
-            return compareDecimal(ivalue, val.ivalue, fvalue, val.fvalue);
-        }
-        
-        /**
-         * @param val
-         * @return
-         */
-        private int compareDecimal(String iValue, String fValue, String otherIValue, String otherFValue) {
-            int ret = iValue.compareTo(otherIValue);
-            if (ret != 0)
-                return ret > 0 ? GREATER_THAN : LESS_THAN;
-            
-            if(fValue.equals(otherFValue))
-                return EQUAL;
             
-            StringBuffer temp1=new StringBuffer(fValue);
-            StringBuffer temp2=new StringBuffer(otherFValue);
+            if (normalizedExponent != val.normalizedExponent)
+                return normalizedExponent > val.normalizedExponent ? GREATER_THAN : LESS_THAN;
             
-            truncateTrailingZeros(temp1, temp2);
-            ret = temp1.toString().compareTo(temp2.toString());
+            // digit strings of the same exponent compare as fractions
+            int ret = normalizedDigits.compareTo(val.normalizedDigits);
             return ret == 0 ? EQUAL : (ret > 0 ? GREATER_THAN : LESS_THAN);
         }
         
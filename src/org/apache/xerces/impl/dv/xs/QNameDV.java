@@ -96,6 +96,11 @@ public class QNameDV extends TypeValidator {
             return false;
         } // equals(Object):boolean
 
+        /** Returns a hash code consistent with equals(Object). */
+        public int hashCode() {
+            return uri != null ? uri.hashCode() + localpart.hashCode() : localpart.hashCode();
+        } // hashCode():int
+
         public String toString() {
             return rawname;
         }
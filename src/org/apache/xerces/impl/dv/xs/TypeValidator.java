@@ -45,6 +45,14 @@ public abstract class TypeValidator {
     public abstract Object getActualValue(String content, ValidationContext context)
         throws InvalidDatatypeValueException;
 
+    // check whether the characters in the given range are a valid lexical
+    // representation, without creating the actual value. a DV that can't
+    // tell without the actual value returns false, and XSSimpleTypeDecl
+    // then falls back to getActualValue.
+    public boolean isValid(char[] ch, int offset, int length) {
+        return false;
+    }
+
     // for ID/IDREF/ENTITY types, do some extra checking after the value is
     // checked to be valid with respect to both lexical representation and
     // facets
@@ -82,6 +90,12 @@ public abstract class TypeValidator {
         return (value instanceof String) ? ((String)value).length() : -1;
     }
 
+    // get the length of the value from its lexical representation
+    // the characters are in the range checked by isValid
+    public int getDataLength(char[] ch, int offset, int length) {
+        return -1;
+    }
+
     // get the number of digits of the value
     // the parameters are in compiled form (from getActualValue)
     public int getTotalDigits(Object value) {
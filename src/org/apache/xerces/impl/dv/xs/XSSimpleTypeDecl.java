@@ -31,6 +31,7 @@ import org.apache.xerces.impl.dv.ValidatedInfo;
 import org.apache.xerces.impl.dv.ValidationContext;
 import org.apache.xerces.impl.dv.XSFacets;
 import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.xpath.regex.REUtil;
 import org.apache.xerces.impl.xpath.regex.RegularExpression;
 import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.util.ObjectListImpl;
@@ -39,6 +40,7 @@ import org.apache.xerces.impl.xs.util.StringListImpl;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
 import org.apache.xerces.util.XMLChar;
 import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.XMLString;
 import org.apache.xerces.xs.ShortList;
 import org.apache.xerces.xs.StringList;
 import org.apache.xerces.xs.XSAnnotation;
@@ -837,7 +839,8 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
                 patternAnnotations = facets.patternAnnotations;
                 RegularExpression regex = null;
                 try {
-                    regex = new RegularExpression(facets.pattern, "X", context.getLocale());
+                    // compiled patterns are shared by all of the types and grammars
+                    regex = REUtil.createRegex(facets.pattern, "X", context.getLocale());
                 } catch (Exception e) {
                     reportError("InvalidRegex", new Object[]{facets.pattern, e.getLocalizedMessage()});
                 }
@@ -1630,6 +1633,219 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
 
     }
 
+    /**
+     * Check whether a value is valid without computing its actual value.
+     * This is for callers that need neither the actual value nor the
+     * normalized value as a string. The value is normalized in place, so the
+     * caller must own the characters; on return, <code>content</code> holds
+     * the normalized value.
+     * <p>
+     * Only atomic types, and lists of them, whose values can be checked on
+     * their lexical representations are handled. For other types, and for
+     * invalid values, false is returned, and the caller should call
+     * <code>validate</code> to get the actual value or the error.
+     *
+     * @param content  the value to check, normalized in place
+     * @param context  the validation context
+     * @return true if the value is known to be valid
+     */
+    public boolean isKnownValid(XMLString content, ValidationContext context) {
+
+        if (context == null)
+            context = fEmptyContext;
+
+        if (fVariety == VARIETY_LIST) {
+            if (fItemType.fVariety != VARIETY_ATOMIC)
+                return false;
+        }
+        else if (fVariety != VARIETY_ATOMIC) {
+            return false;
+        }
+
+        if (context.needToNormalize()) {
+            normalize(content);
+        }
+
+        final char[] ch = content.ch;
+        final int offset = content.offset;
+        final int end = offset + content.length;
+
+        if (fVariety == VARIETY_ATOMIC) {
+            return isKnownValid(ch, offset, content.length, context);
+        }
+
+        if (!matchesPatterns(ch, offset, end)) {
+            return false;
+        }
+        // the items are separated by spaces, as with the StringTokenizer
+        // getActualValue uses
+        int count = 0;
+        int i = offset;
+        while (i < end) {
+            if (ch[i] == ' ') {
+                i++;
+                continue;
+            }
+            final int start = i;
+            while (i < end && ch[i] != ' ') {
+                i++;
+            }
+            if (!fItemType.isKnownValid(ch, start, i - start, context)) {
+                return false;
+            }
+            count++;
+        }
+        if (context.needFacetChecking() &&
+                (fFacetsDefined != 0 && fFacetsDefined != FACET_WHITESPACE)) {
+            if ((fFacetsDefined & FACET_ENUMERATION) != 0) {
+                return false;
+            }
+            return isValidLength(count);
+        }
+        return true;
+
+    }
+
+    // check an atomic value in place, as getActualValue and checkFacets do
+    private boolean isKnownValid(char[] ch, int offset, int length, ValidationContext context) {
+
+        if (!matchesPatterns(ch, offset, offset + length)) {
+            return false;
+        }
+
+        if (fPatternType != SPECIAL_PATTERN_NONE) {
+            if (length == 0) {
+                return false;
+            }
+            final int end = offset + length;
+            int i = offset;
+            if (fPatternType == SPECIAL_PATTERN_NAME) {
+                if (!XMLChar.isNameStart(ch[i++]))
+                    return false;
+            }
+            else if (fPatternType == SPECIAL_PATTERN_NCNAME) {
+                if (!XMLChar.isNCNameStart(ch[i++]))
+                    return false;
+                for (; i < end; i++) {
+                    if (!XMLChar.isNCName(ch[i]))
+                        return false;
+                }
+            }
+            for (; i < end; i++) {
+                if (!XMLChar.isName(ch[i]))
+                    return false;
+            }
+        }
+
+        final TypeValidator dv = fDVs[fValidationDV];
+        if (!dv.isValid(ch, offset, length)) {
+            return false;
+        }
+
+        if (!context.needFacetChecking() ||
+                (fFacetsDefined == 0 || fFacetsDefined == FACET_WHITESPACE)) {
+            return true;
+        }
+
+        if ((fFacetsDefined & (FACET_LENGTH | FACET_MINLENGTH | FACET_MAXLENGTH)) != 0) {
+            final int dataLength = dv.getDataLength(ch, offset, length);
+            if (dataLength < 0 || !isValidLength(dataLength)) {
+                return false;
+            }
+        }
+
+        final boolean decimal = fValidationDV == DV_DECIMAL || fValidationDV == DV_INTEGER;
+
+        if ((fFacetsDefined & FACET_ENUMERATION) != 0) {
+            boolean present = false;
+            final short primitiveType1 = convertToPrimitiveKind(fBuiltInKind);
+            for (int i = 0; i < fEnumerationSize && !present; i++) {
+                final short primitiveType2 = convertToPrimitiveKind(fEnumeration[i].actualValueType);
+                if (primitiveType1 == primitiveType2 ||
+                        primitiveType1 == XSConstants.ANYSIMPLETYPE_DT && primitiveType2 == XSConstants.STRING_DT ||
+                        primitiveType1 == XSConstants.STRING_DT && primitiveType2 == XSConstants.ANYSIMPLETYPE_DT) {
+                    final Object value = fEnumeration[i].actualValue;
+                    if (value instanceof String) {
+                        present = equals(ch, offset, length, (String) value);
+                    }
+                    else if (decimal && value instanceof DecimalDV.XDecimal) {
+                        present = DecimalDV.compare(ch, offset, length, (DecimalDV.XDecimal) value) == 0;
+                    }
+                    else {
+                        return false;
+                    }
+                }
+            }
+            if (!present) {
+                return false;
+            }
+        }
+
+        if ((fFacetsDefined & (FACET_FRACTIONDIGITS | FACET_TOTALDIGITS |
+                FACET_MAXINCLUSIVE | FACET_MAXEXCLUSIVE | FACET_MININCLUSIVE | FACET_MINEXCLUSIVE)) == 0) {
+            return true;
+        }
+        if (!decimal) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_FRACTIONDIGITS) != 0 &&
+                DecimalDV.getFractionDigits(ch, offset, length) > fFractionDigits) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_TOTALDIGITS) != 0 &&
+                DecimalDV.getTotalDigits(ch, offset, length) > fTotalDigits) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_MAXINCLUSIVE) != 0 &&
+                DecimalDV.compare(ch, offset, length, (DecimalDV.XDecimal) fMaxInclusive) > 0) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_MAXEXCLUSIVE) != 0 &&
+                DecimalDV.compare(ch, offset, length, (DecimalDV.XDecimal) fMaxExclusive) >= 0) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_MININCLUSIVE) != 0 &&
+                DecimalDV.compare(ch, offset, length, (DecimalDV.XDecimal) fMinInclusive) < 0) {
+            return false;
+        }
+        if ((fFacetsDefined & FACET_MINEXCLUSIVE) != 0 &&
+                DecimalDV.compare(ch, offset, length, (DecimalDV.XDecimal) fMinExclusive) <= 0) {
+            return false;
+        }
+        return true;
+
+    }
+
+    private boolean matchesPatterns(char[] ch, int start, int end) {
+        if ((fFacetsDefined & FACET_PATTERN) != 0) {
+            for (int idx = fPattern.size()-1; idx >= 0; idx--) {
+                if (!((RegularExpression)fPattern.elementAt(idx)).matches(ch, start, end))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(char[] ch, int offset, int length, String value) {
+        if (value.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (ch[offset + i] != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isValidLength(int length) {
+        if ((fFacetsDefined & FACET_MAXLENGTH) != 0 && length > fMaxLength)
+            return false;
+        if ((fFacetsDefined & FACET_MINLENGTH) != 0 && length < fMinLength)
+            return false;
+        if ((fFacetsDefined & FACET_LENGTH) != 0 && length != fLength)
+            return false;
+        return true;
+    }
+
     private void checkFacets(ValidatedInfo validatedInfo) throws InvalidDatatypeValueException {
 
         Object ob = validatedInfo.actualValue;
@@ -2083,6 +2299,71 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         return sb.toString();
     }
 
+    // normalize the characters in place according to the whiteSpace facet,
+    // skipping the same normalization as normalize(Object, short)
+    private void normalize(XMLString content) {
+        if ( (fFacetsDefined & FACET_PATTERN ) == 0 ) {
+            short norm_type = fDVNormalizeType[fValidationDV];
+            if (norm_type == NORMALIZE_NONE) {
+                return;
+            }
+            else if (norm_type == NORMALIZE_TRIM) {
+                final char[] ch = content.ch;
+                int start = content.offset;
+                int end = start + content.length;
+                while (start < end && XMLChar.isSpace(ch[start]))
+                    start++;
+                while (end > start && XMLChar.isSpace(ch[end-1]))
+                    end--;
+                content.offset = start;
+                content.length = end - start;
+                return;
+            }
+        }
+
+        final int len = content.length;
+        if (len == 0 || fWhiteSpace == WS_PRESERVE)
+            return;
+
+        final char[] buf = content.ch;
+        final int offset = content.offset;
+        if (fWhiteSpace == WS_REPLACE) {
+            char ch;
+            // when it's replace, just replace #x9, #xa, #xd by #x20
+            for (int i = offset; i < offset + len; i++) {
+                ch = buf[i];
+                if (ch == 0x9 || ch == 0xa || ch == 0xd)
+                    buf[i] = (char)0x20;
+            }
+        } else {
+            char ch;
+            int i, j = offset;
+            final int last = offset + len - 1;
+            boolean isLeading = true;
+            // when it's collapse
+            for (i = offset; i <= last; i++) {
+                ch = buf[i];
+                // append real characters, so we passed leading ws
+                if (ch != 0x9 && ch != 0xa && ch != 0xd && ch != 0x20) {
+                    buf[j++] = ch;
+                    isLeading = false;
+                }
+                else {
+                    // for whitespaces, we skip all following ws
+                    for (; i < last; i++) {
+                        ch = buf[i+1];
+                        if (ch != 0x9 && ch != 0xa && ch != 0xd && ch != 0x20)
+                            break;
+                    }
+                    // if it's not a leading or tailing ws, then append a space
+                    if (i < last && !isLeading)
+                        buf[j++] = (char)0x20;
+                }
+            }
+            content.length = j - offset;
+        }
+    }
+
     void reportError(String key, Object[] args) throws InvalidDatatypeFacetException {
         throw new InvalidDatatypeFacetException(key, args);
     }
@@ -2184,6 +2465,115 @@ public class XSSimpleTypeDecl implements XSSimpleType, TypeInfo {
         return fFixedFacet;
     }
 
+    /**
+     * Fills in the facets this type applies to its base type, rather than
+     * inherits from it, in the form accepted by <code>applyFacets</code>.
+     * Applying them to a new restriction of the same base type gives a
+     * type with the same facets. The namespace contexts of the enumeration
+     * values are not filled in.
+     *
+     * @param facets  the facets to fill in
+     * @return the facets filled in; no facets for a type which is derived
+     *         by list or by union, or which is built-in
+     */
+    public short getAppliedFacets(XSFacets facets) {
+        if (fBase == null || fIsImmutable || fVariety != fBase.fVariety) {
+            return FACET_NONE;
+        }
+        short present = 0;
+        // facets defined or fixed here and not in the base type
+        short changed = (short)((fFacetsDefined & ~fBase.fFacetsDefined) |
+                                (fFixedFacet & ~fBase.fFixedFacet));
+        if ((fFacetsDefined & FACET_LENGTH) != 0 &&
+            ((changed & FACET_LENGTH) != 0 || fLength != fBase.fLength ||
+             lengthAnnotation != fBase.lengthAnnotation)) {
+            facets.length = fLength;
+            facets.lengthAnnotation = lengthAnnotation;
+            present |= FACET_LENGTH;
+        }
+        if ((fFacetsDefined & FACET_MINLENGTH) != 0 &&
+            ((changed & FACET_MINLENGTH) != 0 || fMinLength != fBase.fMinLength ||
+             minLengthAnnotation != fBase.minLengthAnnotation)) {
+            facets.minLength = fMinLength;
+            facets.minLengthAnnotation = minLengthAnnotation;
+            present |= FACET_MINLENGTH;
+        }
+        if ((fFacetsDefined & FACET_MAXLENGTH) != 0 &&
+            ((changed & FACET_MAXLENGTH) != 0 || fMaxLength != fBase.fMaxLength ||
+             maxLengthAnnotation != fBase.maxLengthAnnotation)) {
+            facets.maxLength = fMaxLength;
+            facets.maxLengthAnnotation = maxLengthAnnotation;
+            present |= FACET_MAXLENGTH;
+        }
+        // the pattern of this type comes first, followed by the patterns
+        // of the base type, and so do their annotations
+        if ((fFacetsDefined & FACET_PATTERN) != 0 && fPatternStr != fBase.fPatternStr) {
+            facets.pattern = (String)fPatternStr.elementAt(0);
+            if (patternAnnotations != null && patternAnnotations != fBase.patternAnnotations) {
+                int count = patternAnnotations.getLength();
+                if (fBase.patternAnnotations != null) {
+                    count -= fBase.patternAnnotations.getLength();
+                }
+                facets.patternAnnotations = new XSObjectListImpl();
+                for (int i = 0; i < count; i++) {
+                    facets.patternAnnotations.addXSObject(patternAnnotations.item(i));
+                }
+            }
+            present |= FACET_PATTERN;
+        }
+        if ((fFacetsDefined & FACET_WHITESPACE) != 0 &&
+            ((changed & FACET_WHITESPACE) != 0 || fWhiteSpace != fBase.fWhiteSpace ||
+             whiteSpaceAnnotation != fBase.whiteSpaceAnnotation)) {
+            facets.whiteSpace = fWhiteSpace;
+            facets.whiteSpaceAnnotation = whiteSpaceAnnotation;
+            present |= FACET_WHITESPACE;
+        }
+        if ((fFacetsDefined & FACET_ENUMERATION) != 0 && fEnumeration != fBase.fEnumeration) {
+            facets.enumeration = new Vector(fEnumerationSize);
+            for (int i = 0; i < fEnumerationSize; i++) {
+                facets.enumeration.addElement(fEnumeration[i].normalizedValue);
+            }
+            facets.enumAnnotations = enumerationAnnotations;
+            present |= FACET_ENUMERATION;
+        }
+        // bounds inherited from the base type are the same objects
+        if ((fFacetsDefined & FACET_MAXINCLUSIVE) != 0 && fMaxInclusive != fBase.fMaxInclusive) {
+            facets.maxInclusive = fMaxInclusive.toString();
+            facets.maxInclusiveAnnotation = maxInclusiveAnnotation;
+            present |= FACET_MAXINCLUSIVE;
+        }
+        if ((fFacetsDefined & FACET_MAXEXCLUSIVE) != 0 && fMaxExclusive != fBase.fMaxExclusive) {
+            facets.maxExclusive = fMaxExclusive.toString();
+            facets.maxExclusiveAnnotation = maxExclusiveAnnotation;
+            present |= FACET_MAXEXCLUSIVE;
+        }
+        if ((fFacetsDefined & FACET_MINEXCLUSIVE) != 0 && fMinExclusive != fBase.fMinExclusive) {
+            facets.minExclusive = fMinExclusive.toString();
+            facets.minExclusiveAnnotation = minExclusiveAnnotation;
+            present |= FACET_MINEXCLUSIVE;
+        }
+        if ((fFacetsDefined & FACET_MININCLUSIVE) != 0 && fMinInclusive != fBase.fMinInclusive) {
+            facets.minInclusive = fMinInclusive.toString();
+            facets.minInclusiveAnnotation = minInclusiveAnnotation;
+            present |= FACET_MININCLUSIVE;
+        }
+        if ((fFacetsDefined & FACET_TOTALDIGITS) != 0 &&
+            ((changed & FACET_TOTALDIGITS) != 0 || fTotalDigits != fBase.fTotalDigits ||
+             totalDigitsAnnotation != fBase.totalDigitsAnnotation)) {
+            facets.totalDigits = fTotalDigits;
+            facets.totalDigitsAnnotation = totalDigitsAnnotation;
+            present |= FACET_TOTALDIGITS;
+        }
+        if ((fFacetsDefined & FACET_FRACTIONDIGITS) != 0 &&
+            ((changed & FACET_FRACTIONDIGITS) != 0 || fFractionDigits != fBase.fFractionDigits ||
+             fractionDigitsAnnotation != fBase.fractionDigitsAnnotation)) {
+            facets.fractionDigits = fFractionDigits;
+            facets.fractionDigitsAnnotation = fractionDigitsAnnotation;
+            present |= FACET_FRACTIONDIGITS;
+        }
+        return present;
+    }
+
     /**
      * Convenience method. Returns a value of a single constraining facet for
      * this simple type definition. This method must not be used to retrieve
@@ -20,6 +20,10 @@ package org.apache.xerces.impl.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 import java.util.Locale;
 
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
@@ -44,6 +48,12 @@ public final class UTF8Reader
     /** Default byte buffer size (2048). */
     public static final int DEFAULT_BUFFER_SIZE = 2048;
 
+    /**
+     * Minimum length of a run of ASCII bytes for which the
+     * US-ASCII decoder is used instead of a loop over the bytes.
+     */
+    private static final int MIN_ASCII_DECODER_LENGTH = 64;
+
     // debugging
 
     /** Debug read. */
@@ -72,6 +82,13 @@ public final class UTF8Reader
     //Locale to use for messages
     private final Locale fLocale;
 
+    // US-ASCII decoder for runs of ASCII bytes, and buffer views
+    // of the byte buffer and of the last character array read into
+    private CharsetDecoder fASCIIDecoder;
+    private ByteBuffer fByteBufferView;
+    private CharBuffer fCharBufferView;
+    private char[] fCharBufferArray;
+
     //
     // Constructors
     //
@@ -327,15 +344,8 @@ public final class UTF8Reader
         int in;
         byte byte1;
         final byte byte0 = 0;
-        for (in = 0; in < total; in++) {
-            byte1 = fBuffer[in];
-            if (byte1 >= byte0) {
-                ch[out++] = (char)byte1;
-            }
-            else   {
-                break;
-            }
-        }
+        in = decodeASCII(0, total, ch, out);
+        out += in;
         for ( ; in < total; in++) {
             byte1 = fBuffer[in];
 
@@ -675,6 +685,39 @@ public final class UTF8Reader
     // Private methods
     //
 
+    /**
+     * Converts the run of ASCII bytes of the buffer starting at the
+     * specified index to characters, and returns the index of the first
+     * byte which is not ASCII, or the end index if all of them are.
+     * Long runs are converted by a US-ASCII <code>CharsetDecoder</code>,
+     * which stops at the first byte which isn't ASCII; its conversion
+     * loop is a vectorized intrinsic in recent Java runtimes.
+     */
+    private int decodeASCII(int in, int end, char[] ch, int out) {
+        if (end - in >= MIN_ASCII_DECODER_LENGTH) {
+            if (fASCIIDecoder == null) {
+                fASCIIDecoder = Charset.forName("US-ASCII").newDecoder();
+                fByteBufferView = ByteBuffer.wrap(fBuffer);
+            }
+            if (fCharBufferArray != ch) {
+                fCharBufferView = CharBuffer.wrap(ch);
+                fCharBufferArray = ch;
+            }
+            fByteBufferView.limit(end);
+            fByteBufferView.position(in);
+            fCharBufferView.limit(out + end - in);
+            fCharBufferView.position(out);
+            fASCIIDecoder.decode(fByteBufferView, fCharBufferView, false);
+            return fByteBufferView.position();
+        }
+        byte b;
+        while (in < end && (b = fBuffer[in]) >= 0) {
+            ch[out++] = (char)b;
+            ++in;
+        }
+        return in;
+    } // decodeASCII(int,int,char[],int):int
+
     /** Throws an exception for expected byte. */
     private void expectedByte(int position, int count)
         throws MalformedByteSequenceException {
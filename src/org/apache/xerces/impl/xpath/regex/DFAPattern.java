@@ -0,0 +1,502 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xpath.regex;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * A deterministic automaton matching the whole of a target against an
+ * XML Schema regular expression, without backtracking.
+ * <p>
+ * The automaton is built from the token tree of a pattern made only of
+ * characters, character classes, concatenations, unions and closures,
+ * which is the case of every pattern accepted by the XML Schema parser.
+ * The characters are grouped in classes of characters which no character
+ * class of the pattern distinguishes, and the automaton has a transition
+ * table indexed by state and character class. A pattern whose automaton
+ * would be too large is not compiled, and is matched by the interpreter
+ * of <code>RegularExpression</code>.
+ * <p>
+ * The interpreter reads a high surrogate followed by another character
+ * as a single character when matching a character class, and as two
+ * characters when matching a literal. The automaton only handles the
+ * characters of the Basic Multilingual Plane, and leaves the targets
+ * containing a high surrogate to the interpreter.
+ * <p>
+ * An instance is immutable, and may be used by several threads.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class DFAPattern {
+
+    /** The target matches the pattern. */
+    static final int MATCH = 1;
+    /** The target does not match the pattern. */
+    static final int NO_MATCH = 0;
+    /** The target must be matched by the interpreter. */
+    static final int UNKNOWN = -1;
+
+    /** The maximum number of character positions in a pattern. */
+    private static final int MAX_POSITIONS = 1024;
+    /** The maximum number of states of an automaton. */
+    private static final int MAX_STATES = 512;
+    /** The maximum size of a transition table. */
+    private static final int MAX_TRANSITIONS = 1 << 16;
+
+    /** The characters whose class is looked up in a table. */
+    private static final int DIRECT_SIZE = 0x100;
+
+    /** The class of each character less than <code>DIRECT_SIZE</code>. */
+    final int[] directClasses;
+    /** The first character of each interval of characters of the same class, in order. */
+    final int[] intervalStarts;
+    /** The class of the characters of each interval. */
+    final int[] intervalClasses;
+    /** The number of character classes. */
+    final int nofclasses;
+    /** The next state, or -1, for each state and class: <code>[state*nofclasses+class]</code>. */
+    final int[] transitions;
+    /** Whether each state is final. */
+    final boolean[] accepting;
+
+    private DFAPattern(int[] intervalStarts, int[] intervalClasses, int nofclasses,
+                       int[] transitions, boolean[] accepting) {
+        this.intervalStarts = intervalStarts;
+        this.intervalClasses = intervalClasses;
+        this.nofclasses = nofclasses;
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.directClasses = new int[DIRECT_SIZE];
+        for (int ch = 0;  ch < DIRECT_SIZE;  ch ++) {
+            this.directClasses[ch] = this.classOf(ch);
+        }
+    }
+
+    /**
+     * Compiles the token tree of an XML Schema regular expression.
+     *
+     * @return the automaton; or null if the pattern cannot be compiled.
+     */
+    static DFAPattern compile(Token tree, int options) {
+        if ((options & RegularExpression.IGNORE_CASE) != 0) {
+            return null;
+        }
+        return new Builder((options & RegularExpression.SINGLE_LINE) != 0).build(tree);
+    }
+
+    /**
+     * Checks whether the whole of the <var>target</var> text in the range matches.
+     *
+     * @return MATCH, NO_MATCH, or UNKNOWN if the range contains a high surrogate.
+     */
+    int matches(String target, int start, int end) {
+        final int[] transitions = this.transitions;
+        final int nofclasses = this.nofclasses;
+        int state = 0;
+        for (int i = start;  i < end;  i ++) {
+            char ch = target.charAt(i);
+            int cls;
+            if (ch < DIRECT_SIZE)
+                cls = this.directClasses[ch];
+            else if (REUtil.isHighSurrogate(ch))
+                return UNKNOWN;
+            else
+                cls = this.classOf(ch);
+            state = transitions[state*nofclasses+cls];
+            if (state < 0)
+                return NO_MATCH;
+        }
+        return this.accepting[state] ? MATCH : NO_MATCH;
+    }
+
+    /**
+     * Checks whether the whole of the <var>target</var> text in the range matches.
+     *
+     * @return MATCH, NO_MATCH, or UNKNOWN if the range contains a high surrogate.
+     */
+    int matches(char[] target, int start, int end) {
+        final int[] transitions = this.transitions;
+        final int nofclasses = this.nofclasses;
+        int state = 0;
+        for (int i = start;  i < end;  i ++) {
+            char ch = target[i];
+            int cls;
+            if (ch < DIRECT_SIZE)
+                cls = this.directClasses[ch];
+            else if (REUtil.isHighSurrogate(ch))
+                return UNKNOWN;
+            else
+                cls = this.classOf(ch);
+            state = transitions[state*nofclasses+cls];
+            if (state < 0)
+                return NO_MATCH;
+        }
+        return this.accepting[state] ? MATCH : NO_MATCH;
+    }
+
+    /**
+     * Returns the class of a character of the Basic Multilingual Plane.
+     */
+    private int classOf(int ch) {
+        final int[] starts = this.intervalStarts;
+        int low = 0;
+        int high = starts.length-1;
+        while (low < high) {
+            int mid = (low+high+1) >>> 1;
+            if (starts[mid] <= ch)
+                low = mid;
+            else
+                high = mid-1;
+        }
+        return this.intervalClasses[low];
+    }
+
+    // ================================================================
+    /**
+     * Builds the position automaton of a token tree, in which each state is
+     * an occurrence of a character or character class in the expression, and
+     * determinizes it.
+     */
+    static final class Builder {
+
+        /** The distinct characters (Integer) and character classes (Token) of the pattern. */
+        final Vector symbols = new Vector();
+        /** The symbol of each position; position 0 is the start. */
+        int[] positionSymbols = new int[16];
+        /** The positions which may follow each position. */
+        BitSet[] follow = new BitSet[16];
+        int nofpositions = 1;
+        final boolean singleLine;
+
+        Builder(boolean singleLine) {
+            this.singleLine = singleLine;
+            this.follow[0] = new BitSet();
+        }
+
+        DFAPattern build(Token tree) {
+            Fragment root = this.fragment(tree);
+            if (root == null)
+                return null;
+            this.follow[0].or(root.first);
+            BitSet finals = root.last;
+            if (root.nullable)
+                finals.set(0);
+
+            // Partitions the Basic Multilingual Plane in intervals over which
+            // every symbol is constant, and gives the same class to the
+            // intervals matched by the same symbols.
+            BitSet boundaries = new BitSet(0x10001);
+            boundaries.set(0);
+            for (int i = 0;  i < this.symbols.size();  i ++) {
+                this.addBoundaries(this.symbols.elementAt(i), boundaries);
+            }
+            HashMap classes = new HashMap();
+            Vector classSymbols = new Vector();
+            int[] starts = new int[boundaries.cardinality()];
+            int[] intervalClasses = new int[starts.length];
+            int nofintervals = 0;
+            for (int ch = 0;  ch >= 0 && ch < 0x10000;  ch = boundaries.nextSetBit(ch+1)) {
+                BitSet matched = new BitSet(this.symbols.size());
+                for (int i = 0;  i < this.symbols.size();  i ++) {
+                    if (this.matches(this.symbols.elementAt(i), ch))
+                        matched.set(i);
+                }
+                Integer cls = (Integer)classes.get(matched);
+                if (cls == null) {
+                    cls = new Integer(classes.size());
+                    classes.put(matched, cls);
+                    classSymbols.addElement(matched);
+                }
+                if (nofintervals == 0 || intervalClasses[nofintervals-1] != cls.intValue()) {
+                    starts[nofintervals] = ch;
+                    intervalClasses[nofintervals++] = cls.intValue();
+                }
+            }
+            int nofclasses = classes.size();
+            BitSet[] classPositions = new BitSet[nofclasses];
+            for (int k = 0;  k < nofclasses;  k ++) {
+                BitSet matched = (BitSet)classSymbols.elementAt(k);
+                classPositions[k] = new BitSet(this.nofpositions);
+                for (int p = 1;  p < this.nofpositions;  p ++) {
+                    if (matched.get(this.positionSymbols[p]))
+                        classPositions[k].set(p);
+                }
+            }
+
+            // Subset construction.
+            HashMap stateNumbers = new HashMap();
+            Vector states = new Vector();
+            BitSet initial = new BitSet();
+            initial.set(0);
+            stateNumbers.put(initial, new Integer(0));
+            states.addElement(initial);
+            int[] transitions = new int[nofclasses*16];
+            for (int s = 0;  s < states.size();  s ++) {
+                BitSet state = (BitSet)states.elementAt(s);
+                BitSet reachable = new BitSet(this.nofpositions);
+                for (int p = state.nextSetBit(0);  p >= 0;  p = state.nextSetBit(p+1)) {
+                    reachable.or(this.follow[p]);
+                }
+                for (int k = 0;  k < nofclasses;  k ++) {
+                    BitSet next = (BitSet)reachable.clone();
+                    next.and(classPositions[k]);
+                    int target = -1;
+                    if (!next.isEmpty()) {
+                        Integer number = (Integer)stateNumbers.get(next);
+                        if (number == null) {
+                            if (states.size() >= MAX_STATES
+                                || (states.size()+1)*nofclasses > MAX_TRANSITIONS)
+                                return null;
+                            number = new Integer(states.size());
+                            stateNumbers.put(next, number);
+                            states.addElement(next);
+                        }
+                        target = number.intValue();
+                    }
+                    int index = s*nofclasses+k;
+                    if (index >= transitions.length) {
+                        int[] newTransitions = new int[transitions.length*2];
+                        System.arraycopy(transitions, 0, newTransitions, 0, transitions.length);
+                        transitions = newTransitions;
+                    }
+                    transitions[index] = target;
+                }
+            }
+            int nofstates = states.size();
+            boolean[] accepting = new boolean[nofstates];
+            for (int s = 0;  s < nofstates;  s ++) {
+                accepting[s] = ((BitSet)states.elementAt(s)).intersects(finals);
+            }
+            int[] table = new int[nofstates*nofclasses];
+            System.arraycopy(transitions, 0, table, 0, table.length);
+            int[] intervalStarts = new int[nofintervals];
+            System.arraycopy(starts, 0, intervalStarts, 0, nofintervals);
+            int[] classesOfIntervals = new int[nofintervals];
+            System.arraycopy(intervalClasses, 0, classesOfIntervals, 0, nofintervals);
+            return new DFAPattern(intervalStarts, classesOfIntervals, nofclasses, table, accepting);
+        }
+
+        /**
+         * Creates the positions of a token.
+         *
+         * @return the fragment of the token; or null if it cannot be compiled.
+         */
+        private Fragment fragment(Token tok) {
+            switch (tok.type) {
+            case Token.CHAR:
+                return this.position(new Integer(tok.getChar()));
+
+            case Token.DOT:
+            case Token.RANGE:
+            case Token.NRANGE:
+                return this.position(tok);
+
+            case Token.STRING:
+                {
+                    String literal = tok.getString();
+                    Fragment ret = Fragment.empty();
+                    for (int i = 0;  i < literal.length();  i ++) {
+                        Fragment f = this.position(new Integer(literal.charAt(i)));
+                        if (f == null)
+                            return null;
+                        ret = this.concat(ret, f);
+                    }
+                    return ret;
+                }
+
+            case Token.CONCAT:
+                {
+                    Fragment ret = Fragment.empty();
+                    for (int i = 0;  i < tok.size();  i ++) {
+                        Fragment f = this.fragment(tok.getChild(i));
+                        if (f == null)
+                            return null;
+                        ret = this.concat(ret, f);
+                    }
+                    return ret;
+                }
+
+            case Token.UNION:
+                {
+                    Fragment ret = new Fragment(false);
+                    for (int i = 0;  i < tok.size();  i ++) {
+                        Fragment f = this.fragment(tok.getChild(i));
+                        if (f == null)
+                            return null;
+                        ret.nullable |= f.nullable;
+                        ret.first.or(f.first);
+                        ret.last.or(f.last);
+                    }
+                    return ret;
+                }
+
+            case Token.CLOSURE:
+                {
+                    // X{n,m} -> X..X X?..X?, X{n,} -> X..X X*
+                    Token child = tok.getChild(0);
+                    int min = tok.getMin();
+                    int max = tok.getMax();
+                    if (min < 0)
+                        min = 0;
+                    Fragment ret = Fragment.empty();
+                    for (int i = 0;  i < min;  i ++) {
+                        Fragment f = this.fragment(child);
+                        if (f == null)
+                            return null;
+                        ret = this.concat(ret, f);
+                    }
+                    if (max < 0) {
+                        Fragment f = this.fragment(child);
+                        if (f == null)
+                            return null;
+                        for (int p = f.last.nextSetBit(0);  p >= 0;  p = f.last.nextSetBit(p+1)) {
+                            this.follow[p].or(f.first);
+                        }
+                        f.nullable = true;
+                        ret = this.concat(ret, f);
+                    } else {
+                        for (int i = min;  i < max;  i ++) {
+                            Fragment f = this.fragment(child);
+                            if (f == null)
+                                return null;
+                            f.nullable = true;
+                            ret = this.concat(ret, f);
+                        }
+                    }
+                    return ret;
+                }
+
+            case Token.EMPTY:
+                return Fragment.empty();
+
+            case Token.PAREN:
+                return this.fragment(tok.getChild(0));
+
+            default:
+                // Anchors, back references, look-arounds, non-greedy closures,
+                // modifiers and conditions are left to the interpreter.
+                return null;
+            }
+        }
+
+        /**
+         * Creates a position matching a symbol.
+         */
+        private Fragment position(Object symbol) {
+            if (this.nofpositions >= MAX_POSITIONS)
+                return null;
+            int index = this.symbols.indexOf(symbol);
+            if (index < 0) {
+                index = this.symbols.size();
+                this.symbols.addElement(symbol);
+            }
+            int p = this.nofpositions++;
+            if (p >= this.follow.length) {
+                int[] newSymbols = new int[p*2];
+                System.arraycopy(this.positionSymbols, 0, newSymbols, 0, p);
+                this.positionSymbols = newSymbols;
+                BitSet[] newFollow = new BitSet[p*2];
+                System.arraycopy(this.follow, 0, newFollow, 0, p);
+                this.follow = newFollow;
+            }
+            this.positionSymbols[p] = index;
+            this.follow[p] = new BitSet();
+            Fragment ret = new Fragment(false);
+            ret.first.set(p);
+            ret.last.set(p);
+            return ret;
+        }
+
+        private Fragment concat(Fragment left, Fragment right) {
+            for (int p = left.last.nextSetBit(0);  p >= 0;  p = left.last.nextSetBit(p+1)) {
+                this.follow[p].or(right.first);
+            }
+            if (left.nullable)
+                left.first.or(right.first);
+            if (right.nullable)
+                right.last.or(left.last);
+            left.last = right.last;
+            left.nullable &= right.nullable;
+            return left;
+        }
+
+        private void addBoundaries(Object symbol, BitSet boundaries) {
+            if (symbol instanceof Integer) {
+                int ch = ((Integer)symbol).intValue();
+                if (ch < 0x10000) {
+                    boundaries.set(ch);
+                    boundaries.set(ch+1);
+                }
+            } else if (((Token)symbol).type == Token.DOT) {
+                boundaries.set(RegularExpression.LINE_FEED);
+                boundaries.set(RegularExpression.LINE_FEED+1);
+                boundaries.set(RegularExpression.CARRIAGE_RETURN);
+                boundaries.set(RegularExpression.CARRIAGE_RETURN+1);
+                boundaries.set(RegularExpression.LINE_SEPARATOR);
+                boundaries.set(RegularExpression.PARAGRAPH_SEPARATOR+1);
+            } else {
+                int[] ranges = ((RangeToken)symbol).ranges;
+                if (ranges == null)
+                    return;
+                for (int i = 0;  i < ranges.length;  i += 2) {
+                    if (ranges[i] < 0x10000) {
+                        boundaries.set(ranges[i]);
+                        boundaries.set(Math.min(ranges[i+1]+1, 0x10000));
+                    }
+                }
+            }
+        }
+
+        private boolean matches(Object symbol, int ch) {
+            if (symbol instanceof Integer)
+                return ((Integer)symbol).intValue() == ch;
+            Token tok = (Token)symbol;
+            if (tok.type == Token.DOT)
+                return this.singleLine || !(ch == RegularExpression.LINE_FEED
+                                            || ch == RegularExpression.CARRIAGE_RETURN
+                                            || ch == RegularExpression.LINE_SEPARATOR
+                                            || ch == RegularExpression.PARAGRAPH_SEPARATOR);
+            if (((RangeToken)tok).ranges == null)
+                return tok.type == Token.NRANGE;
+            return ((RangeToken)tok).match(ch);
+        }
+    }
+
+    // ================================================================
+    /**
+     * The positions of a subexpression: whether it matches the empty
+     * string, the positions it may start with, and those it may end with.
+     */
+    static final class Fragment {
+        boolean nullable;
+        BitSet first = new BitSet();
+        BitSet last = new BitSet();
+
+        Fragment(boolean nullable) {
+            this.nullable = nullable;
+        }
+
+        static Fragment empty() {
+            return new Fragment(true);
+        }
+    }
+}
@@ -18,6 +18,9 @@
 package org.apache.xerces.impl.xpath.regex;
 
 import java.text.CharacterIterator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @xerces.internal
@@ -273,8 +276,12 @@ public final class REUtil {
         }
     }
 
-    static final int CACHESIZE = 20;
-    static final RegularExpression[] regexCache = new RegularExpression[CACHESIZE];
+    static final int CACHESIZE = 512;
+    /**
+     * Created instances, by options and pattern. The instances are shared by
+     * all of the threads, which may match them concurrently.
+     */
+    static final ConcurrentHashMap regexCache = new ConcurrentHashMap();
     /**
      * Creates a RegularExpression instance.
      * This method caches created instances.
@@ -283,31 +290,34 @@ public final class REUtil {
      */
     public static RegularExpression createRegex(String pattern, String options)
         throws ParseException {
-        RegularExpression re = null;
+        return REUtil.createRegex(pattern, options, Locale.getDefault());
+    }
+
+    /**
+     * Creates a RegularExpression instance.
+     * This method caches created instances; the locale is only used for the
+     * message of the exception thrown if the pattern is invalid.
+     *
+     * @see RegularExpression#RegularExpression(java.lang.String, java.lang.String, java.util.Locale)
+     */
+    public static RegularExpression createRegex(String pattern, String options, Locale locale)
+        throws ParseException {
         int intOptions = REUtil.parseOptions(options);
-        synchronized (REUtil.regexCache) {
-            int i;
-            for (i = 0;  i < REUtil.CACHESIZE;  i ++) {
-                RegularExpression cached = REUtil.regexCache[i];
-                if (cached == null) {
-                    i = -1;
-                    break;
-                }
-                if (cached.equals(pattern, intOptions)) {
-                    re = cached;
-                    break;
+        String key = Integer.toString(intOptions, 16)+":"+pattern;
+        RegularExpression re = (RegularExpression)REUtil.regexCache.get(key);
+        if (re == null) {
+            re = new RegularExpression(pattern, options, locale);
+            if (REUtil.regexCache.size() >= REUtil.CACHESIZE) {
+                // Discards an instance to make room.
+                Iterator i = REUtil.regexCache.keySet().iterator();
+                if (i.hasNext()) {
+                    i.next();
+                    i.remove();
                 }
             }
-            if (re != null) {
-                if (i != 0) {
-                    System.arraycopy(REUtil.regexCache, 0, REUtil.regexCache, 1, i);
-                    REUtil.regexCache[0] = re;
-                }
-            } else {
-                re = new RegularExpression(pattern, options);
-                System.arraycopy(REUtil.regexCache, 0, REUtil.regexCache, 1, REUtil.CACHESIZE-1);
-                REUtil.regexCache[0] = re;
-            }
+            RegularExpression cached = (RegularExpression)REUtil.regexCache.putIfAbsent(key, re);
+            if (cached != null)
+                re = cached;
         }
         return re;
     }
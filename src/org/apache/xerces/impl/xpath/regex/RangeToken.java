@@ -32,7 +32,7 @@ final class RangeToken extends Token implements java.io.Serializable {
     boolean sorted;
     boolean compacted;
     RangeToken icaseCache = null;
-    int[] map = null;
+    volatile int[] map = null;
     int nonMapIndex;
 
     RangeToken(int type) {
@@ -489,10 +489,11 @@ final class RangeToken extends Token implements java.io.Serializable {
 
     boolean match(int ch) {
         if (this.map == null)  this.createMap();
+        final int[] map = this.map;
         boolean ret;
         if (this.type == RANGE) {
             if (ch < MAPSIZE)
-                return (this.map[ch/32] & (1<<(ch&0x1f))) != 0;
+                return (map[ch/32] & (1<<(ch&0x1f))) != 0;
             ret = false;
             for (int i = this.nonMapIndex;  i < this.ranges.length;  i += 2) {
                 if (this.ranges[i] <= ch && ch <= this.ranges[i+1])
@@ -500,7 +501,7 @@ final class RangeToken extends Token implements java.io.Serializable {
             }
         } else {
             if (ch < MAPSIZE)
-                return (this.map[ch/32] & (1<<(ch&0x1f))) == 0;
+                return (map[ch/32] & (1<<(ch&0x1f))) == 0;
             ret = true;
             for (int i = this.nonMapIndex;  i < this.ranges.length;  i += 2) {
                 if (this.ranges[i] <= ch && ch <= this.ranges[i+1])
@@ -535,8 +536,9 @@ final class RangeToken extends Token implements java.io.Serializable {
                 break;
             }
         }
-        this.map = map;
+        // The map is set last, as match() may be called concurrently.
         this.nonMapIndex = nonMapIndex;
+        this.map = map;
         //for (int i = 0;  i < asize;  i ++)  System.err.println("Map: "+Integer.toString(this.map[i], 16));
     }
 
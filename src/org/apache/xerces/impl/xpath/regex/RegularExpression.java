@@ -702,11 +702,18 @@ public class RegularExpression implements java.io.Serializable {
      */
     public boolean matches(char[] target, int start, int end, Match match) {
 
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
+        if (this.context == null) {
+            synchronized (this) {
+                if (this.operations == null)
+                    this.prepare();
+                if (this.context == null)
+                    this.context = new Context();
+            }
+        }
+        if (match == null && this.dfa != null) {
+            int result = this.dfa.matches(target, start, end);
+            if (result != DFAPattern.UNKNOWN)
+                return result == DFAPattern.MATCH;
         }
         Context con = null;
         synchronized (this.context) {
@@ -735,6 +742,7 @@ public class RegularExpression implements java.io.Serializable {
                 con.setInUse(false);
                 return true;
             }
+            con.setInUse(false);
             return false;
         }
 
@@ -887,11 +895,18 @@ public class RegularExpression implements java.io.Serializable {
      */
     public boolean matches(String  target, int start, int end, Match match) {
 
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
+        if (this.context == null) {
+            synchronized (this) {
+                if (this.operations == null)
+                    this.prepare();
+                if (this.context == null)
+                    this.context = new Context();
+            }
+        }
+        if (match == null && this.dfa != null) {
+            int result = this.dfa.matches(target, start, end);
+            if (result != DFAPattern.UNKNOWN)
+                return result == DFAPattern.MATCH;
         }
         Context con = null;
         synchronized (this.context) {
@@ -926,6 +941,7 @@ public class RegularExpression implements java.io.Serializable {
                 con.setInUse(false);
                 return true;
             }
+            con.setInUse(false);
             return false;
         }
 
@@ -1566,11 +1582,13 @@ public class RegularExpression implements java.io.Serializable {
 
 
 
-        synchronized (this) {
-            if (this.operations == null)
-                this.prepare();
-            if (this.context == null)
-                this.context = new Context();
+        if (this.context == null) {
+            synchronized (this) {
+                if (this.operations == null)
+                    this.prepare();
+                if (this.context == null)
+                    this.context = new Context();
+            }
         }
         Context con = null;
         synchronized (this.context) {
@@ -1599,6 +1617,7 @@ public class RegularExpression implements java.io.Serializable {
                 con.setInUse(false);
                 return true;
             }
+            con.setInUse(false);
             return false;
         }
 
@@ -1737,7 +1756,8 @@ public class RegularExpression implements java.io.Serializable {
     transient int minlength;
     transient Op operations = null;
     transient int numberOfClosures;
-    transient Context context = null;
+    // Set once the expression is prepared; the matches test it without locking.
+    transient volatile Context context = null;
     transient RangeToken firstChar = null;
 
     transient String fixedString = null;
@@ -1745,6 +1765,8 @@ public class RegularExpression implements java.io.Serializable {
     transient BMPattern fixedStringTable = null;
     transient boolean fixedStringOnly = false;
 
+    transient DFAPattern dfa = null;
+
     static abstract class ExpressionTarget {
         abstract char charAt(int index);
         abstract boolean regionMatches(boolean ignoreCase, int offset, int limit, String part, int partlen);
@@ -2101,6 +2123,16 @@ public class RegularExpression implements java.io.Serializable {
 
         this.minlength = this.tokentree.getMinLength();
 
+        // Patterns for the XML Schema are matched against whole targets,
+        // without backtracking when they can be compiled to an automaton.
+        this.dfa = null;
+        if (isSet(this.options, XMLSCHEMA_MODE)) {
+            this.dfa = DFAPattern.compile(this.tokentree, this.options);
+            if (DEBUG && this.dfa != null)
+                System.err.println("DEBUG: Use the automaton: "+this.dfa.accepting.length
+                                   +" states, "+this.dfa.nofclasses+" character classes");
+        }
+
         this.firstChar = null;
         if (!isSet(this.options, PROHIBIT_HEAD_CHARACTER_OPTIMIZATION)
             && !isSet(this.options, XMLSCHEMA_MODE)) {
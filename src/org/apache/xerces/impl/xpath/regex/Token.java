@@ -730,8 +730,10 @@ class Token implements java.io.Serializable {
     private static final int NONBMP_BLOCK_START = 84;
 
     static protected RangeToken getRange(String name, boolean positive) {
-        if (Token.categories.size() == 0) {
-            synchronized (Token.categories) {
+        // The tables are filled and checked under the same lock, so that a
+        // thread never reads them while another is still filling them.
+        synchronized (Token.categories) {
+            if (Token.categories.size() == 0) {
                 Token[] ranges = new Token[Token.categoryNames.length];
                 for (int i = 0;  i < ranges.length;  i ++) {
                     ranges[i] = Token.createRange();
@@ -955,8 +957,8 @@ class Token implements java.io.Serializable {
                 Token.registerNonXS("upper");
                 Token.registerNonXS("word");
                 Token.registerNonXS("xdigit");
-            } // synchronized
-        } // if null
+            } // if null
+        } // synchronized
         RangeToken tok = positive ? (RangeToken)Token.categories.get(name)
             : (RangeToken)Token.categories2.get(name);
         //if (tok == null) System.out.println(name);
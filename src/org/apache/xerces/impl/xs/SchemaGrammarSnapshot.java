@@ -0,0 +1,1807 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.InvalidDatatypeFacetException;
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSFacets;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.impl.xpath.XPath;
+import org.apache.xerces.impl.xpath.XPathException;
+import org.apache.xerces.impl.xs.identity.Field;
+import org.apache.xerces.impl.xs.identity.IdentityConstraint;
+import org.apache.xerces.impl.xs.identity.KeyRef;
+import org.apache.xerces.impl.xs.identity.Selector;
+import org.apache.xerces.impl.xs.identity.UniqueOrKey;
+import org.apache.xerces.impl.xs.models.CMBuilder;
+import org.apache.xerces.impl.xs.models.CMNodeFactory;
+import org.apache.xerces.impl.xs.models.XSCMValidator;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.impl.xs.util.SimpleLocator;
+import org.apache.xerces.impl.xs.util.XSObjectListImpl;
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.SymbolHash;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSAnnotation;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.apache.xerces.xs.datatypes.ObjectList;
+
+/**
+ * Writes schema grammars to a stream and reads them back, so that the
+ * grammars of an application can be compiled when it is built, and
+ * loaded into a grammar pool when it starts without parsing and
+ * traversing the schema documents again.
+ * <p>
+ * A snapshot is a compact binary description of the components of the
+ * grammars, in which every component is written once and referred to
+ * by number, and every string is written once. Built-in types are
+ * referred to by name. Simple types are derived again from their base
+ * types with the facets they apply, XPath expressions of identity
+ * constraints are parsed again, and value constraints are validated
+ * again, so only strings and numbers are read from a snapshot, and no
+ * class is named by it. The DFA content models of complex types are
+ * written as their transition tables, so that they are not built again
+ * when they are first used; the content models of all groups, which are
+ * built from the particles in linear time, are not written.
+ * <p>
+ * A snapshot of a set of schema documents and of the documents they
+ * import or include may be written with:
+ * <pre>
+ * java org.apache.xerces.impl.xs.SchemaGrammarSnapshot output.snapshot schema.xsd ...
+ * </pre>
+ *
+ * @xerces.experimental
+ *
+ * @version $Id$
+ */
+public final class SchemaGrammarSnapshot {
+
+    //
+    // Constants
+    //
+
+    /** Header written at the beginning of a snapshot. */
+    private static final String HEADER = "Xerces-J schema grammar snapshot";
+
+    /** Version of the format of a snapshot. */
+    private static final int FORMAT_VERSION = 3;
+
+    // kinds of the components of a snapshot
+
+    private static final byte BUILTIN_TYPE = 0;
+    private static final byte SIMPLE_TYPE = 1;
+    private static final byte COMPLEX_TYPE = 2;
+    private static final byte ELEMENT = 3;
+    private static final byte ATTRIBUTE = 4;
+    private static final byte ATTRIBUTE_USE = 5;
+    private static final byte ATTRIBUTE_GROUP = 6;
+    private static final byte GROUP = 7;
+    private static final byte MODEL_GROUP = 8;
+    private static final byte PARTICLE = 9;
+    private static final byte WILDCARD = 10;
+    private static final byte NOTATION = 11;
+    private static final byte UNIQUE_OR_KEY = 12;
+    private static final byte KEYREF = 13;
+    private static final byte ANNOTATION = 14;
+    private static final byte VALUE = 15;
+
+    // how simple types are derived
+
+    private static final byte DERIVED_BY_RESTRICTION = 0;
+    private static final byte DERIVED_BY_LIST = 1;
+    private static final byte DERIVED_BY_UNION = 2;
+
+    /** Facets of simple types, in the order they are written. */
+    private static final short[] FACETS = {
+        XSSimpleTypeDefinition.FACET_LENGTH,
+        XSSimpleTypeDefinition.FACET_MINLENGTH,
+        XSSimpleTypeDefinition.FACET_MAXLENGTH,
+        XSSimpleTypeDefinition.FACET_PATTERN,
+        XSSimpleTypeDefinition.FACET_WHITESPACE,
+        XSSimpleTypeDefinition.FACET_ENUMERATION,
+        XSSimpleTypeDefinition.FACET_MAXINCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MINEXCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MININCLUSIVE,
+        XSSimpleTypeDefinition.FACET_TOTALDIGITS,
+        XSSimpleTypeDefinition.FACET_FRACTIONDIGITS,
+    };
+
+    /**
+     * Built-in grammars, referred to by number. The built-in types of the
+     * first two are referred to by name.
+     */
+    private static final SchemaGrammar[] BUILTIN_GRAMMARS = {
+        SchemaGrammar.SG_SchemaNS,
+        SchemaGrammar.getS4SGrammar(Constants.SCHEMA_VERSION_1_0_EXTENDED),
+        SchemaGrammar.SG_XSI,
+        SchemaGrammar.Schema4Annotations.INSTANCE,
+    };
+
+    //
+    // Constructors
+    //
+
+    private SchemaGrammarSnapshot() {}
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Writes the schema grammars to the output stream. The grammars are
+     * usually the grammars of a pool, retrieved with
+     * <code>retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA)</code>.
+     * The grammars they import are also written. Built-in grammars and
+     * grammars which are not XML Schema grammars are not written. The
+     * content models of the complex types are built if they have not
+     * been used yet. The stream is flushed, but not closed.
+     *
+     * @param grammars the grammars to write
+     * @param out      the stream to write the snapshot to
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void writeGrammars(Grammar[] grammars, OutputStream out) throws IOException {
+        Vector ordered = new Vector();
+        IdentityHashMap visited = new IdentityHashMap();
+        for (int i = 0; i < grammars.length; ++i) {
+            if (grammars[i] instanceof SchemaGrammar) {
+                addImportedFirst((SchemaGrammar) grammars[i], ordered, visited);
+            }
+        }
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[ordered.size()];
+        ordered.copyInto(schemaGrammars);
+        new SnapshotWriter(schemaGrammars, out).write();
+    } // writeGrammars(Grammar[],OutputStream)
+
+    /**
+     * Reads the schema grammars of a snapshot. The stream is not closed.
+     *
+     * @param in the stream to read the snapshot from
+     * @return the grammars of the snapshot
+     *
+     * @throws IOException if the stream does not contain a snapshot
+     * in the format written by this version of Xerces, or cannot be read
+     */
+    public static SchemaGrammar[] readGrammars(InputStream in) throws IOException {
+        try {
+            return new SnapshotReader(in).read();
+        }
+        catch (ClassCastException e) {
+            throw new StreamCorruptedException("Not a schema grammar snapshot.");
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("Not a schema grammar snapshot.");
+        }
+    } // readGrammars(InputStream):SchemaGrammar[]
+
+    /**
+     * Reads the schema grammars of a snapshot and caches them in the
+     * grammar pool. The stream is not closed.
+     *
+     * @param in   the stream to read the snapshot from
+     * @param pool the grammar pool to cache the grammars in
+     *
+     * @throws IOException if the stream does not contain a snapshot
+     * in the format written by this version of Xerces, or cannot be read
+     */
+    public static void loadGrammars(InputStream in, XMLGrammarPool pool) throws IOException {
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, readGrammars(in));
+    } // loadGrammars(InputStream,XMLGrammarPool)
+
+    //
+    // Private static methods
+    //
+
+    /** Adds the grammar to the list, after the grammars it imports. */
+    private static void addImportedFirst(SchemaGrammar grammar, Vector ordered, IdentityHashMap visited) {
+        if (grammar instanceof SchemaGrammar.BuiltinSchemaGrammar ||
+            grammar instanceof SchemaGrammar.Schema4Annotations ||
+            visited.put(grammar, grammar) != null) {
+            return;
+        }
+        Vector imported = grammar.getImportedGrammars();
+        if (imported != null) {
+            for (int i = 0; i < imported.size(); ++i) {
+                addImportedFirst((SchemaGrammar) imported.elementAt(i), ordered, visited);
+            }
+        }
+        ordered.addElement(grammar);
+    } // addImportedFirst(SchemaGrammar,Vector,IdentityHashMap)
+
+    /** Returns the index of the built-in grammar declaring the type, or -1. */
+    private static int getBuiltinGrammar(XSTypeDefinition type) {
+        if (type.getNamespace() == SchemaSymbols.URI_SCHEMAFORSCHEMA && type.getName() != null) {
+            for (int i = 0; i < 2; ++i) {
+                if (BUILTIN_GRAMMARS[i].getGlobalTypeDecl(type.getName()) == type) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    } // getBuiltinGrammar(XSTypeDefinition):int
+
+    /** Adds the namespace bindings of the qualified names in a value. */
+    private static void addBindings(Object value, Vector bindings) {
+        if (value instanceof QName) {
+            QName name = (QName) value;
+            if (name.uri != null && !bindings.contains(name.prefix)) {
+                bindings.addElement(name.prefix);
+                bindings.addElement(name.uri);
+            }
+        }
+        else if (value instanceof ObjectList) {
+            ObjectList list = (ObjectList) value;
+            for (int i = 0; i < list.getLength(); ++i) {
+                addBindings(list.item(i), bindings);
+            }
+        }
+    } // addBindings(Object,Vector)
+
+    //
+    // MAIN
+    //
+
+    /**
+     * Loads the schema documents, and writes the grammars of their
+     * namespaces, and of the namespaces they import, to a snapshot.
+     */
+    public static void main(String[] argv) throws Exception {
+        if (argv.length < 2) {
+            System.err.println("usage: java org.apache.xerces.impl.xs.SchemaGrammarSnapshot output schema ...");
+            System.exit(1);
+        }
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY, pool);
+        for (int i = 1; i < argv.length; ++i) {
+            loader.loadGrammar(new XMLInputSource(null, argv[i], null));
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(argv[0]));
+        try {
+            writeGrammars(pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA), out);
+        }
+        finally {
+            out.close();
+        }
+    } // main(String[])
+
+    //
+    // Classes
+    //
+
+    /**
+     * Writes a snapshot. The components of the grammars are first
+     * numbered. Then the grammars, the components which are created
+     * before they are filled in, the simple types in the order they are
+     * derived, the contents of the other components and the contents
+     * of the grammars are written.
+     */
+    private static final class SnapshotWriter {
+
+        /** The grammars written. */
+        private final SchemaGrammar[] fGrammars;
+
+        /** The stream written to. */
+        private final DataOutputStream fOut;
+
+        /** Numbers of the grammars. */
+        private final IdentityHashMap fGrammarNumbers = new IdentityHashMap();
+
+        /** Numbers of the components, starting at 1. */
+        private final IdentityHashMap fNumbers = new IdentityHashMap();
+
+        /** The components, in the order of their numbers. */
+        private final ArrayList fComponents = new ArrayList();
+
+        /** Facets applied by the simple types. */
+        private final IdentityHashMap fFacets = new IdentityHashMap();
+
+        /** Facets present in the facets applied by the simple types. */
+        private final IdentityHashMap fPresentFacets = new IdentityHashMap();
+
+        /** Numbers of the strings written. */
+        private final HashMap fStrings = new HashMap();
+
+        /** Builds the content models of the complex types. */
+        private final CMBuilder fCMBuilder = new CMBuilder(new CMNodeFactory());
+
+        /**
+         * Numbers of the DFA content models written, starting at 1. Equal
+         * content models validate alike, and are written once.
+         */
+        private final HashMap fContentModels = new HashMap();
+
+        public SnapshotWriter(SchemaGrammar[] grammars, OutputStream out) {
+            fGrammars = grammars;
+            fOut = new DataOutputStream(out);
+            for (int i = 0; i < grammars.length; ++i) {
+                fGrammarNumbers.put(grammars[i], new Integer(BUILTIN_GRAMMARS.length + 1 + i));
+            }
+        }
+
+        public void write() throws IOException {
+            for (int i = 0; i < fGrammars.length; ++i) {
+                addComponents(fGrammars[i]);
+            }
+            // adding a component adds the components it refers to
+            for (int i = 0; i < fComponents.size(); ++i) {
+                addReferences(fComponents.get(i));
+            }
+
+            fOut.writeUTF(HEADER);
+            fOut.writeInt(FORMAT_VERSION);
+            writeNumber(fGrammars.length);
+            for (int i = 0; i < fGrammars.length; ++i) {
+                writeGrammar(fGrammars[i]);
+            }
+            writeNumber(fComponents.size());
+            for (int i = 0; i < fComponents.size(); ++i) {
+                writeShell(fComponents.get(i));
+            }
+            ArrayList simpleTypes = new ArrayList();
+            IdentityHashMap ordered = new IdentityHashMap();
+            for (int i = 0; i < fComponents.size(); ++i) {
+                Object component = fComponents.get(i);
+                if (component instanceof XSSimpleTypeDecl && fFacets.containsKey(component)) {
+                    addBaseTypesFirst((XSSimpleTypeDecl) component, simpleTypes, ordered);
+                }
+            }
+            writeNumber(simpleTypes.size());
+            for (int i = 0; i < simpleTypes.size(); ++i) {
+                writeSimpleType((XSSimpleTypeDecl) simpleTypes.get(i));
+            }
+            for (int i = 0; i < fComponents.size(); ++i) {
+                writeContents(fComponents.get(i));
+            }
+            ArrayList dfaTypes = new ArrayList();
+            for (int i = 0; i < fComponents.size(); ++i) {
+                Object component = fComponents.get(i);
+                if (component instanceof XSComplexTypeDecl &&
+                        ((XSComplexTypeDecl) component).fCMValidator instanceof XSDFACM) {
+                    dfaTypes.add(component);
+                }
+            }
+            writeNumber(dfaTypes.size());
+            for (int i = 0; i < dfaTypes.size(); ++i) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) dfaTypes.get(i);
+                writeReference(type);
+                writeContentModel((XSDFACM) type.fCMValidator);
+            }
+            for (int i = 0; i < fGrammars.length; ++i) {
+                writeGrammarContents(fGrammars[i]);
+            }
+            fOut.flush();
+        }
+
+        //
+        // Numbering the components
+        //
+
+        /** Adds the components of the grammar. */
+        private void addComponents(SchemaGrammar grammar) {
+            SymbolHash[] tables = getTables(grammar);
+            for (int i = 0; i < tables.length; ++i) {
+                Object[] entries = tables[i].getEntries();
+                for (int j = 1; j < entries.length; j += 2) {
+                    add(entries[j]);
+                }
+            }
+            Object[] entries = grammar.fAllGlobalElemDecls.getEntries();
+            for (int i = 1; i < entries.length; i += 2) {
+                add(entries[i]);
+            }
+            for (int i = 0; i < grammar.fNumAnnotations; ++i) {
+                add(grammar.fAnnotations[i]);
+            }
+            addAll(grammar.getUncheckedComplexTypeDecls());
+            addAll(grammar.getRedefinedGroupDecls());
+            addAll(grammar.getSubstitutionGroups());
+        }
+
+        /** Adds the components the component refers to. */
+        private void addReferences(Object component) throws NotSerializableException {
+            if (component instanceof XSSimpleTypeDecl) {
+                XSSimpleTypeDecl type = (XSSimpleTypeDecl) component;
+                if (!fFacets.containsKey(type)) {
+                    // a built-in type
+                    return;
+                }
+                switch (getDerivation(type)) {
+                    case DERIVED_BY_RESTRICTION:
+                        add(type.getBaseType());
+                        break;
+                    case DERIVED_BY_LIST:
+                        add(type.getItemType());
+                        break;
+                    default:
+                        addAll(type.getMemberTypes());
+                }
+                addAll(type.getAnnotations());
+                XSFacets facets = (XSFacets) fFacets.get(type);
+                add(facets.lengthAnnotation);
+                add(facets.minLengthAnnotation);
+                add(facets.maxLengthAnnotation);
+                addAll(facets.patternAnnotations);
+                add(facets.whiteSpaceAnnotation);
+                addAll(facets.enumAnnotations);
+                add(facets.maxInclusiveAnnotation);
+                add(facets.maxExclusiveAnnotation);
+                add(facets.minExclusiveAnnotation);
+                add(facets.minInclusiveAnnotation);
+                add(facets.totalDigitsAnnotation);
+                add(facets.fractionDigitsAnnotation);
+            }
+            else if (component instanceof XSComplexTypeDecl) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                if (getBuiltinGrammar(type) != -1) {
+                    return;
+                }
+                add(type.fBaseType);
+                add(type.fAttrGrp);
+                add(type.fXSSimpleType);
+                add(type.fParticle);
+                addAll(type.fAnnotations);
+                XSCMValidator contentModel = type.getContentModel(fCMBuilder);
+                if (contentModel instanceof XSDFACM) {
+                    XSDFACM dfa = (XSDFACM) contentModel;
+                    for (int i = 0; i < dfa.getElementCount(); ++i) {
+                        add(dfa.getElement(i));
+                    }
+                }
+            }
+            else if (component instanceof XSElementDecl) {
+                XSElementDecl element = (XSElementDecl) component;
+                add(element.fType);
+                add(element.fEnclosingCT);
+                addAll(element.fAnnotations);
+                add(element.fDefault);
+                add(element.fSubGroup);
+                addAll(element.getIDConstraints());
+            }
+            else if (component instanceof XSAttributeDecl) {
+                XSAttributeDecl attribute = (XSAttributeDecl) component;
+                add(attribute.fType);
+                add(attribute.fEnclosingCT);
+                addAll(attribute.fAnnotations);
+                add(attribute.fDefault);
+            }
+            else if (component instanceof XSAttributeUseImpl) {
+                XSAttributeUseImpl use = (XSAttributeUseImpl) component;
+                add(use.fAttrDecl);
+                add(use.fDefault);
+                addAll(use.fAnnotations);
+            }
+            else if (component instanceof XSAttributeGroupDecl) {
+                XSAttributeGroupDecl group = (XSAttributeGroupDecl) component;
+                for (int i = 0; i < group.fAttrUseNum; ++i) {
+                    add(group.fAttributeUses[i]);
+                }
+                add(group.fAttributeWC);
+                addAll(group.fAnnotations);
+            }
+            else if (component instanceof XSGroupDecl) {
+                XSGroupDecl group = (XSGroupDecl) component;
+                add(group.fModelGroup);
+                addAll(group.fAnnotations);
+            }
+            else if (component instanceof XSModelGroupImpl) {
+                XSModelGroupImpl group = (XSModelGroupImpl) component;
+                for (int i = 0; i < group.fParticleCount; ++i) {
+                    add(group.fParticles[i]);
+                }
+                addAll(group.fAnnotations);
+            }
+            else if (component instanceof XSParticleDecl) {
+                XSParticleDecl particle = (XSParticleDecl) component;
+                add(particle.fValue);
+                addAll(particle.fAnnotations);
+            }
+            else if (component instanceof XSWildcardDecl) {
+                addAll(((XSWildcardDecl) component).fAnnotations);
+            }
+            else if (component instanceof XSNotationDecl) {
+                addAll(((XSNotationDecl) component).fAnnotations);
+            }
+            else if (component instanceof IdentityConstraint) {
+                addAll(((IdentityConstraint) component).getAnnotations());
+            }
+        }
+
+        /** Numbers the component, if it is not yet numbered. */
+        private void add(Object component) {
+            if (component == null || fNumbers.containsKey(component)) {
+                return;
+            }
+            if (component instanceof KeyRef) {
+                // the key is created first
+                add(((KeyRef) component).getKey());
+            }
+            else if (component instanceof XSSimpleTypeDecl) {
+                XSSimpleTypeDecl type = (XSSimpleTypeDecl) component;
+                if (getBuiltinGrammar(type) == -1) {
+                    XSFacets facets = new XSFacets();
+                    short present = type.getAppliedFacets(facets);
+                    fFacets.put(type, facets);
+                    fPresentFacets.put(type, new Short(present));
+                }
+            }
+            fComponents.add(component);
+            fNumbers.put(component, new Integer(fComponents.size()));
+        }
+
+        private void addAll(Object[] components) {
+            if (components != null) {
+                for (int i = 0; i < components.length; ++i) {
+                    add(components[i]);
+                }
+            }
+        }
+
+        private void addAll(XSObjectList components) {
+            if (components != null) {
+                for (int i = 0; i < components.getLength(); ++i) {
+                    add(components.item(i));
+                }
+            }
+        }
+
+        /** Adds the simple type to the list, after the types it is derived from. */
+        private void addBaseTypesFirst(XSSimpleTypeDecl type, ArrayList simpleTypes, IdentityHashMap ordered) {
+            if (!fFacets.containsKey(type) || ordered.put(type, type) != null) {
+                return;
+            }
+            switch (getDerivation(type)) {
+                case DERIVED_BY_RESTRICTION:
+                    addBaseTypesFirst((XSSimpleTypeDecl) type.getBaseType(), simpleTypes, ordered);
+                    break;
+                case DERIVED_BY_LIST:
+                    addBaseTypesFirst((XSSimpleTypeDecl) type.getItemType(), simpleTypes, ordered);
+                    break;
+                default:
+                    XSObjectList members = type.getMemberTypes();
+                    for (int i = 0; i < members.getLength(); ++i) {
+                        addBaseTypesFirst((XSSimpleTypeDecl) members.item(i), simpleTypes, ordered);
+                    }
+            }
+            simpleTypes.add(type);
+        }
+
+        //
+        // Writing the grammars
+        //
+
+        private void writeGrammar(SchemaGrammar grammar) throws IOException {
+            XSDDescription description = grammar.fGrammarDescription;
+            writeString(grammar.fTargetNamespace);
+            fOut.writeShort(description.getContextType());
+            writeString(description.getPublicId());
+            writeString(description.getLiteralSystemId());
+            writeString(description.getBaseSystemId());
+            writeString(description.getExpandedSystemId());
+            writeString(description.getTargetNamespace());
+            writeStrings(description.getLocationHints());
+            fOut.writeBoolean(grammar.isImmutable());
+        }
+
+        private void writeGrammarContents(SchemaGrammar grammar) throws IOException {
+            SymbolHash[] tables = getTables(grammar);
+            for (int i = 0; i < tables.length; ++i) {
+                Object[] entries = tables[i].getEntries();
+                writeNumber(entries.length / 2);
+                for (int j = 0; j < entries.length; j += 2) {
+                    writeString((String) entries[j]);
+                    writeReference(entries[j + 1]);
+                }
+            }
+            // the elements of substitution groups are added first
+            XSElementDecl[] substitutionGroups = grammar.getSubstitutionGroups();
+            writeReferences(substitutionGroups, substitutionGroups.length);
+            Object[] entries = grammar.fAllGlobalElemDecls.getEntries();
+            writeNumber(entries.length / 2);
+            for (int i = 1; i < entries.length; i += 2) {
+                writeReference(entries[i]);
+            }
+            writeReferences(grammar.fAnnotations, grammar.fNumAnnotations);
+            fOut.writeBoolean(grammar.fFullChecked);
+            XSComplexTypeDecl[] types = grammar.getUncheckedComplexTypeDecls();
+            SimpleLocator[] locators = grammar.getUncheckedCTLocators();
+            writeNumber(types.length);
+            for (int i = 0; i < types.length; ++i) {
+                writeReference(types[i]);
+                writeLocator(locators[i]);
+            }
+            XSGroupDecl[] groups = grammar.getRedefinedGroupDecls();
+            locators = grammar.getRGLocators();
+            writeNumber(groups.length / 2);
+            for (int i = 0; i < groups.length; i += 2) {
+                writeReference(groups[i]);
+                writeReference(groups[i + 1]);
+                writeLocator(locators[i / 2]);
+            }
+            StringList locations = grammar.getDocumentLocations();
+            writeNumber(locations.getLength());
+            for (int i = 0; i < locations.getLength(); ++i) {
+                writeString(locations.item(i));
+            }
+            Vector imported = grammar.getImportedGrammars();
+            if (imported == null) {
+                writeNumber(0);
+            }
+            else {
+                writeNumber(imported.size() + 1);
+                for (int i = 0; i < imported.size(); ++i) {
+                    writeGrammarReference(imported.elementAt(i));
+                }
+            }
+        }
+
+        private void writeLocator(SimpleLocator locator) throws IOException {
+            fOut.writeBoolean(locator != null);
+            if (locator != null) {
+                writeString(locator.getLiteralSystemId());
+                writeString(locator.getExpandedSystemId());
+                fOut.writeInt(locator.getLineNumber());
+                fOut.writeInt(locator.getColumnNumber());
+                fOut.writeInt(locator.getCharacterOffset());
+            }
+        }
+
+        //
+        // Writing the components
+        //
+
+        /** Writes what is needed to create the component. */
+        private void writeShell(Object component) throws IOException {
+            if (component instanceof XSTypeDefinition && getBuiltinGrammar((XSTypeDefinition) component) != -1) {
+                XSTypeDefinition type = (XSTypeDefinition) component;
+                fOut.writeByte(BUILTIN_TYPE);
+                fOut.writeByte(getBuiltinGrammar(type));
+                writeString(type.getName());
+            }
+            else if (component instanceof XSSimpleTypeDecl) {
+                fOut.writeByte(SIMPLE_TYPE);
+            }
+            else if (component instanceof XSComplexTypeDecl) {
+                fOut.writeByte(COMPLEX_TYPE);
+            }
+            else if (component instanceof XSElementDecl) {
+                fOut.writeByte(ELEMENT);
+            }
+            else if (component instanceof XSAttributeDecl) {
+                fOut.writeByte(ATTRIBUTE);
+            }
+            else if (component instanceof XSAttributeUseImpl) {
+                fOut.writeByte(ATTRIBUTE_USE);
+            }
+            else if (component instanceof XSAttributeGroupDecl) {
+                fOut.writeByte(ATTRIBUTE_GROUP);
+            }
+            else if (component instanceof XSGroupDecl) {
+                fOut.writeByte(GROUP);
+            }
+            else if (component instanceof XSModelGroupImpl) {
+                fOut.writeByte(MODEL_GROUP);
+            }
+            else if (component instanceof XSParticleDecl) {
+                fOut.writeByte(PARTICLE);
+            }
+            else if (component instanceof XSWildcardDecl) {
+                fOut.writeByte(WILDCARD);
+            }
+            else if (component instanceof XSNotationDecl) {
+                fOut.writeByte(NOTATION);
+            }
+            else if (component instanceof IdentityConstraint) {
+                IdentityConstraint idc = (IdentityConstraint) component;
+                fOut.writeByte(idc instanceof KeyRef ? KEYREF : UNIQUE_OR_KEY);
+                writeString(idc.getNamespace());
+                writeString(idc.getIdentityConstraintName());
+                writeString(idc.getElementName());
+                if (idc instanceof KeyRef) {
+                    writeReference(((KeyRef) idc).getKey());
+                }
+                else {
+                    fOut.writeShort(idc.getCategory());
+                }
+            }
+            else if (component instanceof XSAnnotationImpl) {
+                XSAnnotationImpl annotation = (XSAnnotationImpl) component;
+                fOut.writeByte(ANNOTATION);
+                writeString(annotation.getAnnotationString());
+                writeGrammarReference(annotation.getGrammar());
+            }
+            else if (component instanceof ValidatedInfo) {
+                ValidatedInfo value = (ValidatedInfo) component;
+                fOut.writeByte(VALUE);
+                writeString(value.normalizedValue);
+                Vector bindings = new Vector();
+                addBindings(value.actualValue, bindings);
+                writeBindings(bindings);
+            }
+            else {
+                throw new NotSerializableException(component.getClass().getName());
+            }
+        }
+
+        private void writeSimpleType(XSSimpleTypeDecl type) throws IOException {
+            writeReference(type);
+            byte derivation = getDerivation(type);
+            fOut.writeByte(derivation);
+            writeString(type.getTypeName());
+            writeString(type.getNamespace());
+            fOut.writeShort(type.getFinal());
+            fOut.writeBoolean(type.getAnonymous());
+            writeAnnotations(type.getAnnotations());
+            writeGrammarReference(type.getNamespaceItem());
+            switch (derivation) {
+                case DERIVED_BY_RESTRICTION:
+                    writeReference(type.getBaseType());
+                    writeFacets(type);
+                    break;
+                case DERIVED_BY_LIST:
+                    writeReference(type.getItemType());
+                    break;
+                default:
+                    XSObjectList members = type.getMemberTypes();
+                    writeNumber(members.getLength());
+                    for (int i = 0; i < members.getLength(); ++i) {
+                        writeReference(members.item(i));
+                    }
+            }
+        }
+
+        private void writeFacets(XSSimpleTypeDecl type) throws IOException {
+            XSFacets facets = (XSFacets) fFacets.get(type);
+            short present = ((Short) fPresentFacets.get(type)).shortValue();
+            fOut.writeShort(present);
+            fOut.writeShort(type.getFixedFacets() & present);
+            for (int i = 0; i < FACETS.length; ++i) {
+                switch (FACETS[i] & present) {
+                    case XSSimpleTypeDefinition.FACET_LENGTH:
+                        fOut.writeInt(facets.length);
+                        writeReference(facets.lengthAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MINLENGTH:
+                        fOut.writeInt(facets.minLength);
+                        writeReference(facets.minLengthAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXLENGTH:
+                        fOut.writeInt(facets.maxLength);
+                        writeReference(facets.maxLengthAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_PATTERN:
+                        writeString(facets.pattern);
+                        writeAnnotations(facets.patternAnnotations);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_WHITESPACE:
+                        fOut.writeShort(facets.whiteSpace);
+                        writeReference(facets.whiteSpaceAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_ENUMERATION:
+                        ObjectList values = type.getActualEnumeration();
+                        writeNumber(facets.enumeration.size());
+                        for (int j = 0; j < facets.enumeration.size(); ++j) {
+                            writeString((String) facets.enumeration.elementAt(j));
+                            Vector bindings = new Vector();
+                            addBindings(values.item(j), bindings);
+                            writeBindings(bindings);
+                        }
+                        writeAnnotations(facets.enumAnnotations);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXINCLUSIVE:
+                        writeString(facets.maxInclusive);
+                        writeReference(facets.maxInclusiveAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE:
+                        writeString(facets.maxExclusive);
+                        writeReference(facets.maxExclusiveAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MINEXCLUSIVE:
+                        writeString(facets.minExclusive);
+                        writeReference(facets.minExclusiveAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MININCLUSIVE:
+                        writeString(facets.minInclusive);
+                        writeReference(facets.minInclusiveAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_TOTALDIGITS:
+                        fOut.writeInt(facets.totalDigits);
+                        writeReference(facets.totalDigitsAnnotation);
+                        break;
+                    case XSSimpleTypeDefinition.FACET_FRACTIONDIGITS:
+                        fOut.writeInt(facets.fractionDigits);
+                        writeReference(facets.fractionDigitsAnnotation);
+                        break;
+                }
+            }
+        }
+
+        /** Writes the properties of the component which refer to other components. */
+        private void writeContents(Object component) throws IOException {
+            if (component instanceof XSComplexTypeDecl) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                if (getBuiltinGrammar(type) != -1) {
+                    return;
+                }
+                writeString(type.fName);
+                writeString(type.fTargetNamespace);
+                writeReference(type.fBaseType);
+                fOut.writeShort(type.fDerivedBy);
+                fOut.writeShort(type.fFinal);
+                fOut.writeShort(type.fBlock);
+                fOut.writeShort(type.fMiscFlags);
+                fOut.writeShort(type.fContentType);
+                writeReference(type.fAttrGrp);
+                writeReference(type.fXSSimpleType);
+                writeReference(type.fParticle);
+                writeAnnotations(type.fAnnotations);
+                writeGrammarReference(type.getNamespaceItem());
+            }
+            else if (component instanceof XSElementDecl) {
+                XSElementDecl element = (XSElementDecl) component;
+                writeString(element.fName);
+                writeString(element.fTargetNamespace);
+                writeReference(element.fType);
+                fOut.writeShort(element.fMiscFlags);
+                fOut.writeShort(element.fScope);
+                writeReference(element.fEnclosingCT);
+                fOut.writeShort(element.fBlock);
+                fOut.writeShort(element.fFinal);
+                writeAnnotations(element.fAnnotations);
+                writeReference(element.fDefault);
+                writeReference(element.fSubGroup);
+                writeReferences(element.fIDConstraints, element.fIDCPos);
+                writeGrammarReference(element.getNamespaceItem());
+            }
+            else if (component instanceof XSAttributeDecl) {
+                XSAttributeDecl attribute = (XSAttributeDecl) component;
+                writeString(attribute.fName);
+                writeString(attribute.fTargetNamespace);
+                writeReference(attribute.fType);
+                fOut.writeShort(attribute.fConstraintType);
+                fOut.writeShort(attribute.fScope);
+                writeReference(attribute.fEnclosingCT);
+                writeAnnotations(attribute.fAnnotations);
+                writeReference(attribute.fDefault);
+                writeGrammarReference(attribute.getNamespaceItem());
+            }
+            else if (component instanceof XSAttributeUseImpl) {
+                XSAttributeUseImpl use = (XSAttributeUseImpl) component;
+                writeReference(use.fAttrDecl);
+                fOut.writeShort(use.fUse);
+                fOut.writeShort(use.fConstraintType);
+                writeReference(use.fDefault);
+                writeAnnotations(use.fAnnotations);
+            }
+            else if (component instanceof XSAttributeGroupDecl) {
+                XSAttributeGroupDecl group = (XSAttributeGroupDecl) component;
+                writeString(group.fName);
+                writeString(group.fTargetNamespace);
+                writeReferences(group.fAttributeUses, group.fAttrUseNum);
+                writeReference(group.fAttributeWC);
+                writeString(group.fIDAttrName);
+                writeAnnotations(group.fAnnotations);
+                writeGrammarReference(group.getNamespaceItem());
+            }
+            else if (component instanceof XSGroupDecl) {
+                XSGroupDecl group = (XSGroupDecl) component;
+                writeString(group.fName);
+                writeString(group.fTargetNamespace);
+                writeReference(group.fModelGroup);
+                writeAnnotations(group.fAnnotations);
+                writeGrammarReference(group.getNamespaceItem());
+            }
+            else if (component instanceof XSModelGroupImpl) {
+                XSModelGroupImpl group = (XSModelGroupImpl) component;
+                fOut.writeShort(group.fCompositor);
+                writeReferences(group.fParticles, group.fParticleCount);
+                writeAnnotations(group.fAnnotations);
+            }
+            else if (component instanceof XSParticleDecl) {
+                XSParticleDecl particle = (XSParticleDecl) component;
+                fOut.writeShort(particle.fType);
+                writeReference(particle.fValue);
+                fOut.writeInt(particle.fMinOccurs);
+                fOut.writeInt(particle.fMaxOccurs);
+                writeAnnotations(particle.fAnnotations);
+            }
+            else if (component instanceof XSWildcardDecl) {
+                XSWildcardDecl wildcard = (XSWildcardDecl) component;
+                fOut.writeShort(wildcard.fType);
+                fOut.writeShort(wildcard.fProcessContents);
+                writeStrings(wildcard.fNamespaceList);
+                writeAnnotations(wildcard.fAnnotations);
+            }
+            else if (component instanceof XSNotationDecl) {
+                XSNotationDecl notation = (XSNotationDecl) component;
+                writeString(notation.fName);
+                writeString(notation.fTargetNamespace);
+                writeString(notation.fPublicId);
+                writeString(notation.fSystemId);
+                writeAnnotations(notation.fAnnotations);
+                writeGrammarReference(notation.getNamespaceItem());
+            }
+            else if (component instanceof IdentityConstraint) {
+                IdentityConstraint idc = (IdentityConstraint) component;
+                writeXPath(idc.getSelector().getXPath());
+                writeNumber(idc.getFieldCount());
+                for (int i = 0; i < idc.getFieldCount(); ++i) {
+                    writeXPath(idc.getFieldAt(i).getXPath());
+                }
+                writeAnnotations(idc.getAnnotations());
+            }
+        }
+
+        /** Writes an XPath expression, and the namespace bindings of its prefixes. */
+        private void writeXPath(XPath xpath) throws IOException {
+            writeString(xpath.toString());
+            Vector bindings = new Vector();
+            XPath.LocationPath[] paths = xpath.getLocationPaths();
+            for (int i = 0; i < paths.length; ++i) {
+                for (int j = 0; j < paths[i].steps.length; ++j) {
+                    QName name = paths[i].steps[j].nodeTest.name;
+                    if (name.prefix != null && name.prefix.length() > 0) {
+                        addBindings(name, bindings);
+                    }
+                }
+            }
+            writeBindings(bindings);
+        }
+
+        /**
+         * Writes the number of a DFA content model, followed by its element
+         * map and its states if it was not written before.
+         */
+        private void writeContentModel(XSDFACM dfa) throws IOException {
+            Integer number = (Integer) fContentModels.get(dfa);
+            if (number != null) {
+                writeNumber(number.intValue());
+                return;
+            }
+            fContentModels.put(dfa, new Integer(fContentModels.size() + 1));
+            writeNumber(fContentModels.size());
+            int elementCount = dfa.getElementCount();
+            writeNumber(elementCount);
+            for (int i = 0; i < elementCount; ++i) {
+                writeReference(dfa.getElement(i));
+            }
+            writeNumber(dfa.getStateCount());
+            fOut.writeBoolean(dfa.isCompactedForUPA());
+            fOut.writeBoolean(dfa.hasCountingStates());
+            for (int state = 0; state < dfa.getStateCount(); ++state) {
+                fOut.writeBoolean(dfa.isFinalState(state));
+                for (int i = 0; i < elementCount; ++i) {
+                    // -1, for no transition, is written as 0
+                    writeNumber(dfa.getTransition(state, i) + 1);
+                }
+                if (dfa.hasCountingStates()) {
+                    int[] occurrence = dfa.getCountingState(state);
+                    fOut.writeBoolean(occurrence != null);
+                    if (occurrence != null) {
+                        fOut.writeInt(occurrence[0]);
+                        fOut.writeInt(occurrence[1]);
+                        writeNumber(occurrence[2]);
+                    }
+                }
+            }
+        }
+
+        //
+        // Writing references and values
+        //
+
+        private void writeReference(Object component) throws IOException {
+            if (component == null) {
+                writeNumber(0);
+            }
+            else {
+                writeNumber(((Integer) fNumbers.get(component)).intValue());
+            }
+        }
+
+        private void writeReferences(Object[] components, int length) throws IOException {
+            writeNumber(length);
+            for (int i = 0; i < length; ++i) {
+                writeReference(components[i]);
+            }
+        }
+
+        /** Writes a list of annotations, which may be null. */
+        private void writeAnnotations(XSObjectList annotations) throws IOException {
+            if (annotations == null) {
+                writeNumber(0);
+            }
+            else {
+                writeNumber(annotations.getLength() + 1);
+                for (int i = 0; i < annotations.getLength(); ++i) {
+                    writeReference(annotations.item(i));
+                }
+            }
+        }
+
+        private void writeGrammarReference(Object grammar) throws IOException {
+            Integer number = (Integer) fGrammarNumbers.get(grammar);
+            if (number != null) {
+                writeNumber(number.intValue());
+                return;
+            }
+            for (int i = 0; i < BUILTIN_GRAMMARS.length; ++i) {
+                if (BUILTIN_GRAMMARS[i] == grammar) {
+                    writeNumber(i + 1);
+                    return;
+                }
+            }
+            writeNumber(0);
+        }
+
+        /** Writes prefixes and the namespaces bound to them. */
+        private void writeBindings(Vector bindings) throws IOException {
+            writeNumber(bindings.size() / 2);
+            for (int i = 0; i < bindings.size(); ++i) {
+                writeString((String) bindings.elementAt(i));
+            }
+        }
+
+        /** Writes an array of strings, which may be null. */
+        private void writeStrings(String[] strings) throws IOException {
+            if (strings == null) {
+                writeNumber(0);
+            }
+            else {
+                writeNumber(strings.length + 1);
+                for (int i = 0; i < strings.length; ++i) {
+                    writeString(strings[i]);
+                }
+            }
+        }
+
+        /**
+         * Writes a string, which may be null. A string is written once,
+         * and later referred to by number.
+         */
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                writeNumber(0);
+                return;
+            }
+            Integer number = (Integer) fStrings.get(string);
+            if (number != null) {
+                writeNumber(number.intValue());
+                return;
+            }
+            fStrings.put(string, new Integer(fStrings.size() + 2));
+            writeNumber(1);
+            byte[] bytes = string.getBytes("UTF-8");
+            writeNumber(bytes.length);
+            fOut.write(bytes);
+        }
+
+        /** Writes a number which is not negative, in as few bytes as possible. */
+        private void writeNumber(int number) throws IOException {
+            while ((number & ~0x7F) != 0) {
+                fOut.writeByte((number & 0x7F) | 0x80);
+                number >>>= 7;
+            }
+            fOut.writeByte(number);
+        }
+
+        //
+        // Utility methods
+        //
+
+        private static byte getDerivation(XSSimpleTypeDecl type) {
+            short variety = type.getVariety();
+            short baseVariety = ((XSSimpleTypeDefinition) type.getBaseType()).getVariety();
+            if (variety == XSSimpleTypeDefinition.VARIETY_LIST && baseVariety != variety) {
+                return DERIVED_BY_LIST;
+            }
+            if (variety == XSSimpleTypeDefinition.VARIETY_UNION && baseVariety != variety) {
+                return DERIVED_BY_UNION;
+            }
+            return DERIVED_BY_RESTRICTION;
+        }
+
+    } // class SnapshotWriter
+
+    /**
+     * Reads a snapshot, in the order it is written by the writer.
+     */
+    private static final class SnapshotReader {
+
+        /** The stream read from. */
+        private final DataInputStream fIn;
+
+        /** Symbol table for the XPath expressions of identity constraints. */
+        private final SymbolTable fSymbolTable = new SymbolTable();
+
+        /** Validation context for facets and value constraints. */
+        private final ValidationState fValidationState = new ValidationState();
+
+        /** The grammars read. */
+        private SchemaGrammar[] fGrammars;
+
+        /** The components read, starting at 1. */
+        private Object[] fComponents;
+
+        /** Namespace bindings of the value constraints. */
+        private final IdentityHashMap fBindings = new IdentityHashMap();
+
+        /** Components whose value constraints are validated when all are read. */
+        private final ArrayList fConstrained = new ArrayList();
+
+        /** The strings read, starting at 2. */
+        private final ArrayList fStrings = new ArrayList();
+
+        /** The DFA content models read, starting at 1. */
+        private final ArrayList fContentModels = new ArrayList();
+
+        public SnapshotReader(InputStream in) {
+            fIn = new DataInputStream(new BufferedInputStream(in));
+            fValidationState.setExtraChecking(false);
+            fValidationState.setSymbolTable(fSymbolTable);
+            fStrings.add(null);
+            fStrings.add(null);
+            fContentModels.add(null);
+        }
+
+        public SchemaGrammar[] read() throws IOException {
+            if (!HEADER.equals(fIn.readUTF()) || fIn.readInt() != FORMAT_VERSION) {
+                throw new StreamCorruptedException("Not a schema grammar snapshot in the format of this version.");
+            }
+            fGrammars = new SchemaGrammar[readNumber()];
+            for (int i = 0; i < fGrammars.length; ++i) {
+                fGrammars[i] = readGrammar();
+            }
+            fComponents = new Object[readNumber() + 1];
+            for (int i = 1; i < fComponents.length; ++i) {
+                fComponents[i] = readShell();
+            }
+            SchemaDVFactory factory = SchemaDVFactory.getInstance();
+            for (int i = readNumber(); i > 0; --i) {
+                readSimpleType(factory);
+            }
+            for (int i = 1; i < fComponents.length; ++i) {
+                readContents(fComponents[i]);
+            }
+            // the element declarations of the content models are read
+            for (int i = readNumber(); i > 0; --i) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) readReference();
+                type.fCMValidator = readContentModel();
+            }
+            for (int i = 0; i < fGrammars.length; ++i) {
+                readGrammarContents(fGrammars[i]);
+            }
+            validateValueConstraints();
+            return fGrammars;
+        }
+
+        //
+        // Reading the grammars
+        //
+
+        private SchemaGrammar readGrammar() throws IOException {
+            String targetNamespace = readString();
+            XSDDescription description = new XSDDescription();
+            description.setContextType(fIn.readShort());
+            String publicId = readString();
+            String literalSystemId = readString();
+            String baseSystemId = readString();
+            String expandedSystemId = readString();
+            description.setValues(publicId, literalSystemId, baseSystemId, expandedSystemId, readString());
+            String[] locationHints = readStrings();
+            if (locationHints != null) {
+                description.setLocationHints(locationHints);
+            }
+            SchemaGrammar grammar = new SchemaGrammar(targetNamespace, description, fSymbolTable);
+            grammar.setImmutable(fIn.readBoolean());
+            return grammar;
+        }
+
+        private void readGrammarContents(SchemaGrammar grammar) throws IOException {
+            SymbolHash[] tables = getTables(grammar);
+            for (int i = 0; i < tables.length; ++i) {
+                for (int j = readNumber(); j > 0; --j) {
+                    tables[i].put(readString(), readReference());
+                }
+            }
+            for (int i = readNumber(); i > 0; --i) {
+                grammar.addGlobalElementDeclAll((XSElementDecl) readReference());
+            }
+            for (int i = readNumber(); i > 0; --i) {
+                grammar.addGlobalElementDeclAll((XSElementDecl) readReference());
+            }
+            for (int i = readNumber(); i > 0; --i) {
+                grammar.addAnnotation((XSAnnotationImpl) readReference());
+            }
+            grammar.fFullChecked = fIn.readBoolean();
+            for (int i = readNumber(); i > 0; --i) {
+                grammar.addComplexTypeDecl((XSComplexTypeDecl) readReference(), readLocator());
+            }
+            for (int i = readNumber(); i > 0; --i) {
+                XSGroupDecl derived = (XSGroupDecl) readReference();
+                XSGroupDecl base = (XSGroupDecl) readReference();
+                grammar.addRedefinedGroupDecl(derived, base, readLocator());
+            }
+            for (int i = readNumber(); i > 0; --i) {
+                grammar.addDocument(null, readString());
+            }
+            int imported = readNumber();
+            if (imported > 0) {
+                Vector grammars = new Vector(imported - 1);
+                for (int i = 1; i < imported; ++i) {
+                    grammars.addElement(readGrammarReference());
+                }
+                grammar.setImportedGrammars(grammars);
+            }
+        }
+
+        private SimpleLocator readLocator() throws IOException {
+            if (!fIn.readBoolean()) {
+                return null;
+            }
+            String literalSystemId = readString();
+            String expandedSystemId = readString();
+            int line = fIn.readInt();
+            int column = fIn.readInt();
+            return new SimpleLocator(literalSystemId, expandedSystemId, line, column, fIn.readInt());
+        }
+
+        //
+        // Reading the components
+        //
+
+        /** Creates a component; simple types are created later. */
+        private Object readShell() throws IOException {
+            byte kind = fIn.readByte();
+            switch (kind) {
+                case BUILTIN_TYPE:
+                    SchemaGrammar grammar = BUILTIN_GRAMMARS[fIn.readByte()];
+                    XSTypeDefinition type = grammar.getGlobalTypeDecl(readString());
+                    if (type == null) {
+                        throw new StreamCorruptedException("Unknown built-in type in schema grammar snapshot.");
+                    }
+                    return type;
+                case SIMPLE_TYPE:
+                    return null;
+                case COMPLEX_TYPE:
+                    return new XSComplexTypeDecl();
+                case ELEMENT:
+                    return new XSElementDecl();
+                case ATTRIBUTE:
+                    return new XSAttributeDecl();
+                case ATTRIBUTE_USE:
+                    return new XSAttributeUseImpl();
+                case ATTRIBUTE_GROUP:
+                    return new XSAttributeGroupDecl();
+                case GROUP:
+                    return new XSGroupDecl();
+                case MODEL_GROUP:
+                    return new XSModelGroupImpl();
+                case PARTICLE:
+                    return new XSParticleDecl();
+                case WILDCARD:
+                    return new XSWildcardDecl();
+                case NOTATION:
+                    return new XSNotationDecl();
+                case UNIQUE_OR_KEY:
+                case KEYREF:
+                    String namespace = readString();
+                    String name = readString();
+                    String elementName = readString();
+                    if (kind == KEYREF) {
+                        return new KeyRef(namespace, name, elementName, (UniqueOrKey) readReference());
+                    }
+                    return new UniqueOrKey(namespace, name, elementName, fIn.readShort());
+                case ANNOTATION:
+                    String contents = readString();
+                    return new XSAnnotationImpl(contents, (SchemaGrammar) readGrammarReference());
+                case VALUE:
+                    ValidatedInfo value = new ValidatedInfo();
+                    value.normalizedValue = readString();
+                    fBindings.put(value, readBindings());
+                    return value;
+            }
+            throw new StreamCorruptedException("Unknown component in schema grammar snapshot.");
+        }
+
+        private void readSimpleType(SchemaDVFactory factory) throws IOException {
+            int number = readNumber();
+            byte derivation = fIn.readByte();
+            String name = readString();
+            String namespace = readString();
+            short finalSet = fIn.readShort();
+            boolean anonymous = fIn.readBoolean();
+            XSObjectList annotations = readAnnotations();
+            Object namespaceItem = readGrammarReference();
+            XSSimpleType type;
+            switch (derivation) {
+                case DERIVED_BY_RESTRICTION:
+                    type = factory.createTypeRestriction(name, namespace, finalSet,
+                            (XSSimpleType) readReference(), annotations);
+                    readFacets(type);
+                    break;
+                case DERIVED_BY_LIST:
+                    type = factory.createTypeList(name, namespace, finalSet,
+                            (XSSimpleType) readReference(), annotations);
+                    break;
+                case DERIVED_BY_UNION:
+                    XSSimpleType[] members = new XSSimpleType[readNumber()];
+                    for (int i = 0; i < members.length; ++i) {
+                        members[i] = (XSSimpleType) readReference();
+                    }
+                    type = factory.createTypeUnion(name, namespace, finalSet, members, annotations);
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown simple type in schema grammar snapshot.");
+            }
+            if (anonymous) {
+                ((XSSimpleTypeDecl) type).setAnonymous(true);
+            }
+            ((XSSimpleTypeDecl) type).setNamespaceItem((SchemaGrammar) namespaceItem);
+            fComponents[number] = type;
+        }
+
+        private void readFacets(XSSimpleType type) throws IOException {
+            short present = fIn.readShort();
+            short fixed = fIn.readShort();
+            if (present == 0) {
+                return;
+            }
+            XSFacets facets = new XSFacets();
+            for (int i = 0; i < FACETS.length; ++i) {
+                switch (FACETS[i] & present) {
+                    case XSSimpleTypeDefinition.FACET_LENGTH:
+                        facets.length = fIn.readInt();
+                        facets.lengthAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MINLENGTH:
+                        facets.minLength = fIn.readInt();
+                        facets.minLengthAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXLENGTH:
+                        facets.maxLength = fIn.readInt();
+                        facets.maxLengthAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_PATTERN:
+                        facets.pattern = readString();
+                        facets.patternAnnotations = readAnnotations();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_WHITESPACE:
+                        facets.whiteSpace = fIn.readShort();
+                        facets.whiteSpaceAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_ENUMERATION:
+                        int count = readNumber();
+                        facets.enumeration = new Vector(count);
+                        facets.enumNSDecls = new Vector(count);
+                        for (int j = 0; j < count; ++j) {
+                            facets.enumeration.addElement(readString());
+                            facets.enumNSDecls.addElement(readBindings());
+                        }
+                        facets.enumAnnotations = readAnnotations();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXINCLUSIVE:
+                        facets.maxInclusive = readString();
+                        facets.maxInclusiveAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE:
+                        facets.maxExclusive = readString();
+                        facets.maxExclusiveAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MINEXCLUSIVE:
+                        facets.minExclusive = readString();
+                        facets.minExclusiveAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_MININCLUSIVE:
+                        facets.minInclusive = readString();
+                        facets.minInclusiveAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_TOTALDIGITS:
+                        facets.totalDigits = fIn.readInt();
+                        facets.totalDigitsAnnotation = (XSAnnotation) readReference();
+                        break;
+                    case XSSimpleTypeDefinition.FACET_FRACTIONDIGITS:
+                        facets.fractionDigits = fIn.readInt();
+                        facets.fractionDigitsAnnotation = (XSAnnotation) readReference();
+                        break;
+                }
+            }
+            try {
+                type.applyFacets(facets, present, fixed, fValidationState);
+            }
+            catch (InvalidDatatypeFacetException e) {
+                throw new StreamCorruptedException("Invalid facet in schema grammar snapshot: " + e.getMessage());
+            }
+        }
+
+        /** Reads the properties of the component which refer to other components. */
+        private void readContents(Object component) throws IOException {
+            if (component instanceof XSComplexTypeDecl) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) component;
+                if (type == SchemaGrammar.fAnyType) {
+                    return;
+                }
+                type.fName = readString();
+                type.fTargetNamespace = readString();
+                type.fBaseType = (XSTypeDefinition) readReference();
+                type.fDerivedBy = fIn.readShort();
+                type.fFinal = fIn.readShort();
+                type.fBlock = fIn.readShort();
+                type.fMiscFlags = fIn.readShort();
+                type.fContentType = fIn.readShort();
+                type.fAttrGrp = (XSAttributeGroupDecl) readReference();
+                type.fXSSimpleType = (XSSimpleType) readReference();
+                type.fParticle = (XSParticleDecl) readReference();
+                type.fAnnotations = readAnnotations();
+                type.setNamespaceItem((SchemaGrammar) readGrammarReference());
+            }
+            else if (component instanceof XSElementDecl) {
+                XSElementDecl element = (XSElementDecl) component;
+                element.fName = readString();
+                element.fTargetNamespace = readString();
+                element.fType = (XSTypeDefinition) readReference();
+                element.fMiscFlags = fIn.readShort();
+                element.fScope = fIn.readShort();
+                element.fEnclosingCT = (XSComplexTypeDecl) readReference();
+                element.fBlock = fIn.readShort();
+                element.fFinal = fIn.readShort();
+                element.fAnnotations = readAnnotations();
+                element.fDefault = (ValidatedInfo) readReference();
+                element.fSubGroup = (XSElementDecl) readReference();
+                for (int i = readNumber(); i > 0; --i) {
+                    element.addIDConstraint((IdentityConstraint) readReference());
+                }
+                element.setNamespaceItem((SchemaGrammar) readGrammarReference());
+                if (element.fDefault != null) {
+                    fConstrained.add(element);
+                }
+            }
+            else if (component instanceof XSAttributeDecl) {
+                XSAttributeDecl attribute = (XSAttributeDecl) component;
+                attribute.fName = readString();
+                attribute.fTargetNamespace = readString();
+                attribute.fType = (XSSimpleType) readReference();
+                attribute.fConstraintType = fIn.readShort();
+                attribute.fScope = fIn.readShort();
+                attribute.fEnclosingCT = (XSComplexTypeDecl) readReference();
+                attribute.fAnnotations = readAnnotations();
+                attribute.fDefault = (ValidatedInfo) readReference();
+                attribute.setNamespaceItem((SchemaGrammar) readGrammarReference());
+                if (attribute.fDefault != null) {
+                    fConstrained.add(attribute);
+                }
+            }
+            else if (component instanceof XSAttributeUseImpl) {
+                XSAttributeUseImpl use = (XSAttributeUseImpl) component;
+                use.fAttrDecl = (XSAttributeDecl) readReference();
+                use.fUse = fIn.readShort();
+                use.fConstraintType = fIn.readShort();
+                use.fDefault = (ValidatedInfo) readReference();
+                use.fAnnotations = readAnnotations();
+                if (use.fDefault != null) {
+                    fConstrained.add(use);
+                }
+            }
+            else if (component instanceof XSAttributeGroupDecl) {
+                XSAttributeGroupDecl group = (XSAttributeGroupDecl) component;
+                group.fName = readString();
+                group.fTargetNamespace = readString();
+                group.fAttrUseNum = readNumber();
+                group.fAttributeUses = new XSAttributeUseImpl[group.fAttrUseNum];
+                for (int i = 0; i < group.fAttrUseNum; ++i) {
+                    group.fAttributeUses[i] = (XSAttributeUseImpl) readReference();
+                }
+                group.fAttributeWC = (XSWildcardDecl) readReference();
+                group.fIDAttrName = readString();
+                group.fAnnotations = readAnnotations();
+                group.setNamespaceItem((SchemaGrammar) readGrammarReference());
+            }
+            else if (component instanceof XSGroupDecl) {
+                XSGroupDecl group = (XSGroupDecl) component;
+                group.fName = readString();
+                group.fTargetNamespace = readString();
+                group.fModelGroup = (XSModelGroupImpl) readReference();
+                group.fAnnotations = readAnnotations();
+                group.setNamespaceItem((SchemaGrammar) readGrammarReference());
+            }
+            else if (component instanceof XSModelGroupImpl) {
+                XSModelGroupImpl group = (XSModelGroupImpl) component;
+                group.fCompositor = fIn.readShort();
+                group.fParticleCount = readNumber();
+                group.fParticles = new XSParticleDecl[group.fParticleCount];
+                for (int i = 0; i < group.fParticleCount; ++i) {
+                    group.fParticles[i] = (XSParticleDecl) readReference();
+                }
+                group.fAnnotations = readAnnotations();
+            }
+            else if (component instanceof XSParticleDecl) {
+                XSParticleDecl particle = (XSParticleDecl) component;
+                particle.fType = fIn.readShort();
+                particle.fValue = (XSTerm) readReference();
+                particle.fMinOccurs = fIn.readInt();
+                particle.fMaxOccurs = fIn.readInt();
+                particle.fAnnotations = readAnnotations();
+            }
+            else if (component instanceof XSWildcardDecl) {
+                XSWildcardDecl wildcard = (XSWildcardDecl) component;
+                wildcard.fType = fIn.readShort();
+                wildcard.fProcessContents = fIn.readShort();
+                wildcard.fNamespaceList = readStrings();
+                wildcard.fAnnotations = readAnnotations();
+            }
+            else if (component instanceof XSNotationDecl) {
+                XSNotationDecl notation = (XSNotationDecl) component;
+                notation.fName = readString();
+                notation.fTargetNamespace = readString();
+                notation.fPublicId = readString();
+                notation.fSystemId = readString();
+                notation.fAnnotations = readAnnotations();
+                notation.setNamespaceItem((SchemaGrammar) readGrammarReference());
+            }
+            else if (component instanceof IdentityConstraint) {
+                IdentityConstraint idc = (IdentityConstraint) component;
+                try {
+                    String expression = readString();
+                    idc.setSelector(new Selector(new Selector.XPath(expression, fSymbolTable, readBindings()), idc));
+                    for (int i = readNumber(); i > 0; --i) {
+                        expression = readString();
+                        idc.addField(new Field(new Field.XPath(expression, fSymbolTable, readBindings()), idc));
+                    }
+                }
+                catch (XPathException e) {
+                    throw new StreamCorruptedException("Invalid XPath expression in schema grammar snapshot.");
+                }
+                for (int i = readNumber() - 1; i > 0; --i) {
+                    idc.addAnnotation((XSAnnotationImpl) readReference());
+                }
+            }
+        }
+
+        /**
+         * Validates the value constraints again, once all of the types
+         * are read, to compute their actual values.
+         */
+        private void validateValueConstraints() throws IOException {
+            IdentityHashMap validated = new IdentityHashMap();
+            for (int i = 0; i < fConstrained.size(); ++i) {
+                Object component = fConstrained.get(i);
+                XSTypeDefinition type;
+                ValidatedInfo value;
+                if (component instanceof XSElementDecl) {
+                    type = ((XSElementDecl) component).fType;
+                    value = ((XSElementDecl) component).fDefault;
+                }
+                else if (component instanceof XSAttributeDecl) {
+                    type = ((XSAttributeDecl) component).fType;
+                    value = ((XSAttributeDecl) component).fDefault;
+                }
+                else {
+                    type = ((XSAttributeUseImpl) component).fAttrDecl.fType;
+                    value = ((XSAttributeUseImpl) component).fDefault;
+                }
+                if (validated.put(value, value) != null) {
+                    continue;
+                }
+                fValidationState.setNamespaceSupport((NamespaceSupport) fBindings.get(value));
+                if (type.getTypeCategory() == XSTypeDefinition.COMPLEX_TYPE) {
+                    if (XSConstraints.ElementDefaultValidImmediate(type, value.normalizedValue, fValidationState, value) == null) {
+                        throw new StreamCorruptedException("Invalid value constraint in schema grammar snapshot.");
+                    }
+                    continue;
+                }
+                try {
+                    // as the traversers do, validate the canonical
+                    // representation of the value too
+                    ((XSSimpleType) type).validate(value.normalizedValue, fValidationState, value);
+                    ((XSSimpleType) type).validate(value.stringValue(), fValidationState, value);
+                }
+                catch (InvalidDatatypeValueException e) {
+                    throw new StreamCorruptedException("Invalid value constraint in schema grammar snapshot: " + e.getMessage());
+                }
+            }
+        }
+
+        /** Reads a DFA content model, or the number of one read before. */
+        private XSDFACM readContentModel() throws IOException {
+            int number = readNumber();
+            if (number < fContentModels.size()) {
+                return (XSDFACM) fContentModels.get(number);
+            }
+            if (number > fContentModels.size()) {
+                throw new StreamCorruptedException("Invalid content model in schema grammar snapshot.");
+            }
+            Object[] elemMap = new Object[readNumber()];
+            for (int i = 0; i < elemMap.length; ++i) {
+                elemMap[i] = readReference();
+                if (!(elemMap[i] instanceof XSElementDecl) && !(elemMap[i] instanceof XSWildcardDecl)) {
+                    throw new StreamCorruptedException("Invalid content model in schema grammar snapshot.");
+                }
+            }
+            int stateCount = readNumber();
+            if (stateCount == 0) {
+                throw new StreamCorruptedException("Invalid content model in schema grammar snapshot.");
+            }
+            boolean compactedForUPA = fIn.readBoolean();
+            int[][] countingStates = fIn.readBoolean() ? new int[stateCount][] : null;
+            int[] transTable = new int[stateCount * elemMap.length];
+            boolean[] finalStateFlags = new boolean[stateCount];
+            for (int state = 0; state < stateCount; ++state) {
+                finalStateFlags[state] = fIn.readBoolean();
+                for (int i = 0; i < elemMap.length; ++i) {
+                    int next = readNumber() - 1;
+                    if (next < -1 || next >= stateCount) {
+                        throw new StreamCorruptedException("Invalid content model in schema grammar snapshot.");
+                    }
+                    transTable[state * elemMap.length + i] = next;
+                }
+                if (countingStates != null && fIn.readBoolean()) {
+                    int[] occurrence = {fIn.readInt(), fIn.readInt(), readNumber()};
+                    if (occurrence[2] < 0 || occurrence[2] >= elemMap.length) {
+                        throw new StreamCorruptedException("Invalid content model in schema grammar snapshot.");
+                    }
+                    countingStates[state] = occurrence;
+                }
+            }
+            XSDFACM dfa = new XSDFACM(elemMap, transTable, finalStateFlags, countingStates, compactedForUPA);
+            fContentModels.add(dfa);
+            return dfa;
+        }
+
+        //
+        // Reading references and values
+        //
+
+        private Object readReference() throws IOException {
+            int number = readNumber();
+            return number == 0 ? null : fComponents[number];
+        }
+
+        /** Reads a list of annotations, which may be null. */
+        private XSObjectListImpl readAnnotations() throws IOException {
+            int count = readNumber();
+            if (count == 0) {
+                return null;
+            }
+            // the list is not shared: facets append to the list of patterns
+            XSObject[] annotations = new XSObject[count - 1];
+            for (int i = 0; i < annotations.length; ++i) {
+                annotations[i] = (XSAnnotationImpl) readReference();
+            }
+            return new XSObjectListImpl(annotations, annotations.length);
+        }
+
+        private Object readGrammarReference() throws IOException {
+            int number = readNumber();
+            if (number == 0) {
+                return null;
+            }
+            if (number <= BUILTIN_GRAMMARS.length) {
+                return BUILTIN_GRAMMARS[number - 1];
+            }
+            return fGrammars[number - BUILTIN_GRAMMARS.length - 1];
+        }
+
+        /** Reads prefixes and the namespaces bound to them. */
+        private NamespaceSupport readBindings() throws IOException {
+            NamespaceSupport bindings = new NamespaceSupport();
+            bindings.reset();
+            for (int i = readNumber(); i > 0; --i) {
+                String prefix = readString();
+                bindings.declarePrefix(prefix, readString());
+            }
+            return bindings;
+        }
+
+        /** Reads an array of strings, which may be null. */
+        private String[] readStrings() throws IOException {
+            int count = readNumber();
+            if (count == 0) {
+                return null;
+            }
+            String[] strings = new String[count - 1];
+            for (int i = 0; i < strings.length; ++i) {
+                strings[i] = readString();
+            }
+            return strings;
+        }
+
+        /** Reads a string, which may be null. Strings are interned. */
+        private String readString() throws IOException {
+            int number = readNumber();
+            if (number == 0) {
+                return null;
+            }
+            if (number > 1) {
+                return (String) fStrings.get(number);
+            }
+            byte[] bytes = new byte[readNumber()];
+            fIn.readFully(bytes);
+            String string = new String(bytes, "UTF-8").intern();
+            fStrings.add(string);
+            return string;
+        }
+
+        private int readNumber() throws IOException {
+            int number = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = fIn.readUnsignedByte();
+                number |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return number;
+                }
+            }
+            throw new StreamCorruptedException("Not a schema grammar snapshot.");
+        }
+
+    } // class SnapshotReader
+
+    /** Returns the tables of the global components of the grammar. */
+    private static SymbolHash[] getTables(SchemaGrammar grammar) {
+        return new SymbolHash[] {
+            grammar.fGlobalAttrDecls,
+            grammar.fGlobalAttrGrpDecls,
+            grammar.fGlobalElemDecls,
+            grammar.fGlobalGroupDecls,
+            grammar.fGlobalNotationDecls,
+            grammar.fGlobalIDConstraintDecls,
+            grammar.fGlobalTypeDecls,
+            grammar.fGlobalAttrDeclsExt,
+            grammar.fGlobalAttrGrpDeclsExt,
+            grammar.fGlobalElemDeclsExt,
+            grammar.fGlobalGroupDeclsExt,
+            grammar.fGlobalNotationDeclsExt,
+            grammar.fGlobalIDConstraintDeclsExt,
+            grammar.fGlobalTypeDeclsExt,
+        };
+    } // getTables(SchemaGrammar):SymbolHash[]
+
+} // class SchemaGrammarSnapshot
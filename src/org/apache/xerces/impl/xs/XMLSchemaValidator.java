@@ -1285,6 +1285,9 @@ public class XMLSchemaValidator
     /** temporary validated info */
     private ValidatedInfo fValidatedInfo = new ValidatedInfo();
 
+    /** values checked in place, when their actual values aren't needed */
+    private final XMLString fValueStr = new XMLString();
+
     // used to validate default/fixed values against xsi:type
     // only need to check facets, so we set extraChecking to false (in reset)
     private ValidationState fState4XsiType = new ValidationState();
@@ -3087,25 +3090,38 @@ public class XMLSchemaValidator
 
         Object actualValue = null;
         try {
-            actualValue = attDV.validate(attrValue, fValidationState, fValidatedInfo);
-            // store the normalized value
-            if (fNormalizeData) {
-                attributes.setValue(index, fValidatedInfo.normalizedValue);
+            // neither the PSVI nor identity constraints need the actual value,
+            // and there's no fixed value to compare it to: check it in place
+            if (!fAugPSVI && !fIdConstraint
+                && currDecl.getConstraintType() != XSConstants.VC_FIXED
+                && (currUse == null || currUse.fConstraintType != XSConstants.VC_FIXED)
+                && isKnownValid(attDV, attrValue)) {
+                // store the normalized value, if it's different
+                if (fNormalizeData && !fValueStr.equals(attrValue)) {
+                    attributes.setValue(index, fValueStr.toString());
+                }
             }
-            // PSVI: element notation
-            if (attDV.getVariety() == XSSimpleType.VARIETY_ATOMIC
-                && attDV.getPrimitiveKind() == XSSimpleType.PRIMITIVE_NOTATION) {
-                QName qName = (QName) actualValue;
-                SchemaGrammar grammar = fGrammarBucket.getGrammar(qName.uri);
-
-                //REVISIT: is it possible for the notation to be in different namespace than the attribute
-                //with which it is associated, CHECK !!  <fof n1:att1 = "n2:notation1" ..>
-                // should we give chance to the application to be able to  retrieve a grammar - nb
-                //REVISIT: what would be the triggering component here.. if it is attribute value that
-                // triggered the loading of grammar ?? -nb
-
-                if (grammar != null) {
-                    fNotation = grammar.getGlobalNotationDecl(qName.localpart);
+            else {
+                actualValue = attDV.validate(attrValue, fValidationState, fValidatedInfo);
+                // store the normalized value
+                if (fNormalizeData) {
+                    attributes.setValue(index, fValidatedInfo.normalizedValue);
+                }
+                // PSVI: element notation
+                if (attDV.getVariety() == XSSimpleType.VARIETY_ATOMIC
+                    && attDV.getPrimitiveKind() == XSSimpleType.PRIMITIVE_NOTATION) {
+                    QName qName = (QName) actualValue;
+                    SchemaGrammar grammar = fGrammarBucket.getGrammar(qName.uri);
+
+                    //REVISIT: is it possible for the notation to be in different namespace than the attribute
+                    //with which it is associated, CHECK !!  <fof n1:att1 = "n2:notation1" ..>
+                    // should we give chance to the application to be able to  retrieve a grammar - nb
+                    //REVISIT: what would be the triggering component here.. if it is attribute value that
+                    // triggered the loading of grammar ?? -nb
+
+                    if (grammar != null) {
+                        fNotation = grammar.getGlobalNotationDecl(qName.localpart);
+                    }
                 }
             }
         } 
@@ -3421,6 +3437,9 @@ public class XMLSchemaValidator
                     if (!fNormalizeData || fUnionType) {
                         fValidationState.setNormalizationRequired(true);
                     }
+                    if (!isActualValueNeeded() && isKnownValid(dv, textContent)) {
+                        return null;
+                    }
                     retValue = dv.validate(textContent, fValidationState, fValidatedInfo);
                 } catch (InvalidDatatypeValueException e) {
                     reportSchemaError(e.getKey(), e.getArgs());
@@ -3437,6 +3456,46 @@ public class XMLSchemaValidator
         return retValue;
     } // elementLocallyValidType
 
+    // whether the PSVI, identity constraints or a fixed value constraint
+    // need the actual value of the current element
+    private boolean isActualValueNeeded() {
+        return fAugPSVI
+            || fMatcherStack.getMatcherCount() > 0
+            || (fCurrentElemDecl != null
+                && fCurrentElemDecl.getConstraintType() == XSConstants.VC_FIXED);
+    }
+
+    // check a value in place, without creating its actual value; on success,
+    // fValueStr holds the normalized value
+    private boolean isKnownValid(XSSimpleType dv, Object content) {
+        if (!(dv instanceof XSSimpleTypeDecl)) {
+            return false;
+        }
+        int length;
+        if (content instanceof String) {
+            String str = (String) content;
+            length = str.length();
+            if (fValueStr.ch == null || fValueStr.ch.length < length) {
+                fValueStr.ch = new char[length];
+            }
+            str.getChars(0, length, fValueStr.ch, 0);
+        }
+        else if (content instanceof StringBuffer) {
+            StringBuffer sb = (StringBuffer) content;
+            length = sb.length();
+            if (fValueStr.ch == null || fValueStr.ch.length < length) {
+                fValueStr.ch = new char[length];
+            }
+            sb.getChars(0, length, fValueStr.ch, 0);
+        }
+        else {
+            return false;
+        }
+        fValueStr.offset = 0;
+        fValueStr.length = length;
+        return ((XSSimpleTypeDecl) dv).isKnownValid(fValueStr, fValidationState);
+    }
+
     Object elementLocallyValidComplexType(QName element, Object textContent) {
         Object actualValue = null;
         XSComplexTypeDecl ctype = (XSComplexTypeDecl) fCurrentType;
@@ -3460,7 +3519,9 @@ public class XMLSchemaValidator
                     if (!fNormalizeData || fUnionType) {
                         fValidationState.setNormalizationRequired(true);
                     }
-                    actualValue = dv.validate(textContent, fValidationState, fValidatedInfo);
+                    if (isActualValueNeeded() || !isKnownValid(dv, textContent)) {
+                        actualValue = dv.validate(textContent, fValidationState, fValidatedInfo);
+                    }
                 } catch (InvalidDatatypeValueException e) {
                     reportSchemaError(e.getKey(), e.getArgs());
                     reportSchemaError("cvc-complex-type.2.2", new Object[] { element.rawname });
@@ -3715,6 +3776,16 @@ public class XMLSchemaValidator
         private boolean fUseItemValueTypeVector = false;
         private int fItemValueTypesLength = 0;
         private ShortList fItemValueType = null;
+        
+        /** 
+         * Open addressing hash index of the value tuples stored in
+         * fValues. Each non-zero entry is the tuple number plus one.
+         */
+        private int[] fTupleIndex = null;
+        /** Hash codes of the value tuples, indexed by tuple number. */
+        private int[] fTupleHashes = null;
+        /** Number of value tuples stored in fValues. */
+        private int fTupleCount = 0;
 
         /** buffer for error messages */
         final StringBuffer fTempBuffer = new StringBuffer();
@@ -3757,12 +3828,21 @@ public class XMLSchemaValidator
             if (fItemValueTypes != null) {
                 fItemValueTypes.setSize(0);
             }
+            fTupleIndex = null;
+            fTupleHashes = null;
+            fTupleCount = 0;
         } // end clear():void
 
         // appends the contents of one ValueStore to those of us.
         public void append(ValueStoreBase newVal) {
-            for (int i = 0; i < newVal.fValues.size(); i++) {
+            final int size = newVal.fValues.size();
+            for (int i = 0; i < size; i++) {
                 fValues.addElement(newVal.fValues.elementAt(i));
+                addValueType(newVal.getValueTypeAt(i));
+                addItemValueType(newVal.getItemValueTypeAt(i));
+            }
+            for (int i = 0; i < newVal.fTupleCount; i++) {
+                addTuple(newVal.fTupleHashes[i]);
             }
         } // append(ValueStoreBase)
 
@@ -3881,6 +3961,7 @@ public class XMLSchemaValidator
                     addValueType(fLocalValueTypes[i]);
                     addItemValueType(fLocalItemValueTypes[i]);
                 }
+                addTuple(hashValues(fLocalValues));
             }
         } // addValue(String,Field)
 
@@ -3888,27 +3969,32 @@ public class XMLSchemaValidator
          * Returns true if this value store contains the locally scoped value stores
          */
         public boolean contains() {
-            // REVISIT: we can improve performance by using hash codes, instead of
-            // traversing global vector that could be quite large.
-            int next = 0;
-            final int size = fValues.size();
-            LOOP : for (int i = 0; i < size; i = next) {
-                next = i + fFieldCount;
+            if (fTupleIndex == null) {
+                return false;
+            }
+            final int hash = hashValues(fLocalValues);
+            final int mask = fTupleIndex.length - 1;
+            int entry;
+            LOOP : for (int slot = hash & mask; (entry = fTupleIndex[slot]) != 0; slot = (slot + 1) & mask) {
+                final int tuple = entry - 1;
+                if (fTupleHashes[tuple] != hash) {
+                    continue;
+                }
+                final int i = tuple * fFieldCount;
                 for (int j = 0; j < fFieldCount; j++) {
                     Object value1 = fLocalValues[j];
-                    Object value2 = fValues.elementAt(i);
+                    Object value2 = fValues.elementAt(i+j);
                     short valueType1 = fLocalValueTypes[j];
-                    short valueType2 = getValueTypeAt(i);
+                    short valueType2 = getValueTypeAt(i+j);
                     if (value1 == null || value2 == null || valueType1 != valueType2 || !(value1.equals(value2))) {
                         continue LOOP;
                     }
                     else if(valueType1 == XSConstants.LIST_DT || valueType1 == XSConstants.LISTOFUNION_DT) {
                         ShortList list1 = fLocalItemValueTypes[j];
-                        ShortList list2 = getItemValueTypeAt(i);
+                        ShortList list2 = getItemValueTypeAt(i+j);
                         if(list1 == null || list2 == null || !list1.equals(list2))
                             continue LOOP;
                     }
-                    i++;
                 }
                 // found it
                 return true;
@@ -3924,12 +4010,12 @@ public class XMLSchemaValidator
          */
         public int contains(ValueStoreBase vsb) {
             
-            final Vector values = vsb.fValues;         
+            final Vector values = vsb.fValues;
             final int size1 = values.size();
             if (fFieldCount <= 1) {
                 for (int i = 0; i < size1; ++i) {
                     short val = vsb.getValueTypeAt(i);
-                    if (!valueTypeContains(val) || !fValues.contains(values.elementAt(i))) {
+                    if (!valueTypeContains(val) || !containsValue(values.elementAt(i), vsb.fTupleHashes[i])) {
                         return i;
                     }
                     else if(val == XSConstants.LIST_DT || val == XSConstants.LISTOFUNION_DT) {
@@ -3942,11 +4028,21 @@ public class XMLSchemaValidator
             }
             /** Handle n-tuples. **/
             else {
-                final int size2 = fValues.size();
                 /** Iterate over each set of fields. **/
                 OUTER: for (int i = 0; i < size1; i += fFieldCount) {
+                    if (fTupleIndex == null) {
+                        return i;
+                    }
                     /** Check whether this set is contained in the value store. **/
-                    INNER: for (int j = 0; j < size2; j += fFieldCount) {
+                    final int hash = vsb.fTupleHashes[i / fFieldCount];
+                    final int mask = fTupleIndex.length - 1;
+                    int entry;
+                    INNER: for (int slot = hash & mask; (entry = fTupleIndex[slot]) != 0; slot = (slot + 1) & mask) {
+                        final int tuple = entry - 1;
+                        if (fTupleHashes[tuple] != hash) {
+                            continue INNER;
+                        }
+                        final int j = tuple * fFieldCount;
                         for (int k = 0; k < fFieldCount; ++k) {
                             final Object value1 = values.elementAt(i+k);
                             final Object value2 = fValues.elementAt(j+k);
@@ -4116,6 +4212,73 @@ public class XMLSchemaValidator
             return fItemValueType == value || 
                 (fItemValueType != null && fItemValueType.equals(value));
         }
+        
+        /**
+         * Returns true if a single field value store holds a value
+         * equal to the given one, regardless of its type.
+         */
+        private boolean containsValue(Object value, int hash) {
+            if (fTupleIndex == null) {
+                return false;
+            }
+            final int mask = fTupleIndex.length - 1;
+            int entry;
+            for (int slot = hash & mask; (entry = fTupleIndex[slot]) != 0; slot = (slot + 1) & mask) {
+                final int tuple = entry - 1;
+                if (fTupleHashes[tuple] == hash) {
+                    final Object value2 = fValues.elementAt(tuple);
+                    if (value == null ? value2 == null : value.equals(value2)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        /** 
+         * Computes the hash code of a value tuple. Only the actual values
+         * take part; their types are compared when probing the index.
+         */
+        private int hashValues(Object[] values) {
+            int hash = 0;
+            for (int i = 0; i < fFieldCount; ++i) {
+                final Object value = values[i];
+                hash = hash * 31 + (value != null ? value.hashCode() : 0);
+            }
+            // spread the bits, since the index is masked to a power of two
+            return hash ^ (hash >>> 16);
+        }
+        
+        /** Records the hash of the last tuple appended to fValues in the index. */
+        private void addTuple(int hash) {
+            if (fTupleIndex == null) {
+                fTupleIndex = new int[16];
+                fTupleHashes = new int[8];
+            }
+            else if ((fTupleCount + 1) << 1 > fTupleIndex.length) {
+                fTupleIndex = new int[fTupleIndex.length << 1];
+                final int mask = fTupleIndex.length - 1;
+                for (int i = 0; i < fTupleCount; ++i) {
+                    int slot = fTupleHashes[i] & mask;
+                    while (fTupleIndex[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    fTupleIndex[slot] = i + 1;
+                }
+            }
+            if (fTupleCount == fTupleHashes.length) {
+                int[] newHashes = new int[fTupleCount << 1];
+                System.arraycopy(fTupleHashes, 0, newHashes, 0, fTupleCount);
+                fTupleHashes = newHashes;
+            }
+            final int mask = fTupleIndex.length - 1;
+            int slot = hash & mask;
+            while (fTupleIndex[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            fTupleIndex[slot] = fTupleCount + 1;
+            fTupleHashes[fTupleCount++] = hash;
+        }
 
     } // class ValueStoreBase
 
@@ -17,6 +17,9 @@
 
 package org.apache.xerces.impl.xs.models;
 
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
 import org.apache.xerces.impl.dtd.models.CMNode;
 import org.apache.xerces.impl.xs.SchemaSymbols;
 import org.apache.xerces.impl.xs.XSComplexTypeDecl;
@@ -50,6 +53,11 @@ public class CMBuilder {
     //Factory to create Bin, Uni, Leaf nodes
     private final CMNodeFactory fNodeFactory;
 
+    // the DFA content models built, so that types whose content models are
+    // identical share one. Both the keys and the values are weakly referenced,
+    // so that the content models of grammars no longer in use can be collected.
+    private final WeakHashMap fDFACMs = new WeakHashMap();
+
     public CMBuilder(CMNodeFactory nodeFactory) {
         fDeclPool = null;
         fNodeFactory = nodeFactory ;
@@ -130,7 +138,18 @@ public class CMBuilder {
         if (node == null)
             return null;
         // build DFA content model from the CM tree
-        return new XSDFACM(node, fLeafCount);
+        return getSharedDFACM(new XSDFACM(node, fLeafCount));
+    }
+
+    // return an identical content model built before, if there is one
+    private XSDFACM getSharedDFACM(XSDFACM dfa) {
+        WeakReference ref = (WeakReference)fDFACMs.get(dfa);
+        XSDFACM shared = (ref != null) ? (XSDFACM)ref.get() : null;
+        if (shared != null) {
+            return shared;
+        }
+        fDFACMs.put(dfa, new WeakReference(dfa));
+        return dfa;
     }
 
     // 1. convert particle tree to CM tree:
@@ -31,6 +31,7 @@ import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
 import org.apache.xerces.xni.QName;
+import org.apache.xerces.xs.XSConstants;
 
 /**
  * DFAContentModel is the implementation of XSCMValidator that does
@@ -124,17 +125,46 @@ public class XSDFACM
 
     /**
      * This is the transition table that is the main by product of all
-     * of the effort here. It is an array of arrays of ints. The first
-     * dimension is the number of states we end up with in the DFA. The
-     * second dimensions is the number of unique elements in the content
-     * model (fElemMapSize). Each entry in the second dimension indicates
-     * the new state given that input for the first dimension's start
-     * state.
+     * of the effort here. It holds a row for each of the states we end
+     * up with in the DFA, one after the other in a single array. Each row
+     * has an entry for each unique element in the content model
+     * (fElemMapSize); the entry at <code>state * fElemMapSize + elemIndex</code>
+     * indicates the new state given that input in that start state, or -1.
      * <p>
      * The fElemMap array handles mapping from element indexes to
-     * positions in the second dimension of the transition table.
+     * positions in a row of the transition table.
      */
-    private int fTransTable[][] = null;
+    private int fTransTable[] = null;
+
+    /**
+     * Hash table of the names of the element declarations in the element
+     * map, which are interned strings. The table size is a power of 2, and
+     * a null local part marks an empty slot. This is null if the content
+     * model has no element declarations.
+     */
+    private String fSymbolLocalparts[] = null;
+
+    /** Target namespaces of the element names in fSymbolLocalparts. */
+    private String fSymbolURIs[] = null;
+
+    /**
+     * Index into the element map of the first element declaration with
+     * the name in the same slot of fSymbolLocalparts.
+     */
+    private int fSymbolFirst[] = null;
+
+    /**
+     * For each entry of the element map, the index of the next element
+     * declaration with the same name, or -1.
+     */
+    private int fElemMapNext[] = null;
+
+    /**
+     * Indexes into the element map, in increasing order, of the wildcards
+     * and of the element declarations which may be substituted, which
+     * can match elements with names other than their own.
+     */
+    private int fSubstitutableIndexes[] = null;
     
     /**
      * Array containing occurence information for looping states 
@@ -146,8 +176,11 @@ public class XSDFACM
         final int maxOccurs;
         final int elemIndex;
         public Occurence (XSCMRepeatingLeaf leaf, int elemIndex) {
-            minOccurs = leaf.getMinOccurs();
-            maxOccurs = leaf.getMaxOccurs();
+            this(leaf.getMinOccurs(), leaf.getMaxOccurs(), elemIndex);
+        }
+        Occurence (int minOccurs, int maxOccurs, int elemIndex) {
+            this.minOccurs = minOccurs;
+            this.maxOccurs = maxOccurs;
             this.elemIndex = elemIndex;
         }
         public String toString() {
@@ -159,8 +192,9 @@ public class XSDFACM
     }
 
     /**
-     * The number of valid entries in the transition table, and in the other
-     * related tables such as fFinalStateFlags.
+     * The number of states, which is the number of rows in the transition
+     * table, and the number of entries in the other related tables such as
+     * fFinalStateFlags.
      */
     private int fTransTableSize = 0;
 
@@ -215,6 +249,48 @@ public class XSDFACM
         }
     }
 
+    /**
+     * Constructs a DFA content model from the tables of a content model
+     * built before, as returned by getElement(), getTransition(),
+     * isFinalState() and getCountingState(). This is used to read the
+     * content models of schema grammar snapshots.
+     *
+     * @param elemMap           The element declarations and wildcards
+     *                          matched by the transitions.
+     * @param transTable        The next state for each state and element
+     *                          map entry, state by state, or -1.
+     * @param finalStateFlags   Whether each state is a final state.
+     * @param countingStates    The minOccurs, maxOccurs and element map
+     *                          index of each counting state, null for
+     *                          the other states, or null if there is no
+     *                          counting state.
+     * @param compactedForUPA   Whether the content model was built with
+     *                          compacted occurrences for checking UPA.
+     */
+    public XSDFACM(Object[] elemMap, int[] transTable, boolean[] finalStateFlags,
+            int[][] countingStates, boolean compactedForUPA) {
+        fElemMapSize = elemMap.length;
+        fElemMap = elemMap;
+        fElemMapType = new int[fElemMapSize];
+        for (int i = 0; i < fElemMapSize; i++) {
+            fElemMapType[i] = (elemMap[i] instanceof XSWildcardDecl) ?
+                XSParticleDecl.PARTICLE_WILDCARD : XSParticleDecl.PARTICLE_ELEMENT;
+        }
+        fTransTableSize = finalStateFlags.length;
+        fTransTable = transTable;
+        fFinalStateFlags = finalStateFlags;
+        if (countingStates != null) {
+            fCountingStates = new Occurence[fTransTableSize];
+            for (int i = 0; i < fTransTableSize; i++) {
+                int[] o = countingStates[i];
+                if (o != null)
+                    fCountingStates[i] = new Occurence(o[0], o[1], o[2]);
+            }
+        }
+        fIsCompactedForUPA = compactedForUPA;
+        buildSymbolIndex();
+    }
+
     private static long time = 0;
 
     //
@@ -259,26 +335,32 @@ public class XSDFACM
             return findMatchingDecl(curElem, subGroupHandler);
         }
 
-        int nextState = 0;
-        int elemIndex = 0;
+        final int row = curState * fElemMapSize;
         Object matchingDecl = null;
 
-        for (; elemIndex < fElemMapSize; elemIndex++) {
-            nextState = fTransTable[curState][elemIndex];
-            if (nextState == -1)
+        // The first entry of the element map which matches the element and
+        // has a transition from the current state is taken. Look up the
+        // declarations with the name of the element, then check whether
+        // a wildcard or substitutable declaration before them matches.
+        int elemIndex = findElemIndex(curElem, row);
+        for (int i = 0; i < fSubstitutableIndexes.length; i++) {
+            final int index = fSubstitutableIndexes[i];
+            if (index >= elemIndex) {
+                break;
+            }
+            if (fTransTable[row + index] == -1)
                 continue;
-            int type = fElemMapType[elemIndex] ;
-            if (type == XSParticleDecl.PARTICLE_ELEMENT) {
-                matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]);
+            if (fElemMapType[index] == XSParticleDecl.PARTICLE_ELEMENT) {
+                matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[index]);
                 if (matchingDecl != null) {
+                    elemIndex = index;
                     break;
                 }
             }
-            else if (type == XSParticleDecl.PARTICLE_WILDCARD) {
-                if (((XSWildcardDecl)fElemMap[elemIndex]).allowNamespace(curElem.uri)) {
-                    matchingDecl = fElemMap[elemIndex];
-                    break;
-                }
+            else if (((XSWildcardDecl)fElemMap[index]).allowNamespace(curElem.uri)) {
+                matchingDecl = fElemMap[index];
+                elemIndex = index;
+                break;
             }
         }
 
@@ -289,6 +371,10 @@ public class XSDFACM
             state[0] = XSCMValidator.FIRST_ERROR;
             return findMatchingDecl(curElem, subGroupHandler);
         }
+        if (matchingDecl == null) {
+            matchingDecl = fElemMap[elemIndex];
+        }
+        final int nextState = fTransTable[row + elemIndex];
         
         if (fCountingStates != null) {
             Occurence o = fCountingStates[curState];
@@ -354,6 +440,32 @@ public class XSDFACM
         return matchingDecl;
     } // oneTransition(QName, int[], SubstitutionGroupHandler):  Object
 
+    /**
+     * Returns the index into the element map of the first declaration
+     * with the name of the element which has a transition from the state
+     * whose row in the transition table starts at the given offset, or
+     * fElemMapSize if there is none.
+     */
+    private int findElemIndex(QName curElem, int row) {
+        if (fSymbolLocalparts != null && curElem.localpart != null) {
+            final int mask = fSymbolLocalparts.length - 1;
+            int slot = curElem.localpart.hashCode() & mask;
+            String localpart;
+            while ((localpart = fSymbolLocalparts[slot]) != null) {
+                if (localpart == curElem.localpart && fSymbolURIs[slot] == curElem.uri) {
+                    for (int index = fSymbolFirst[slot]; index != -1; index = fElemMapNext[index]) {
+                        if (fTransTable[row + index] != -1) {
+                            return index;
+                        }
+                    }
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return fElemMapSize;
+    } // findElemIndex(QName, int): int
+
     Object findMatchingDecl(QName curElem, SubstitutionGroupHandler subGroupHandler) {
         Object matchingDecl = null;
 
@@ -381,7 +493,7 @@ public class XSDFACM
         Object matchingDecl = null;
         
         while (++elemIndex < fElemMapSize) {
-            nextState = fTransTable[curState][elemIndex];
+            nextState = fTransTable[curState * fElemMapSize + elemIndex];
             if (nextState == -1)
                 continue;
             int type = fElemMapType[elemIndex] ;
@@ -627,7 +739,7 @@ public class XSDFACM
         int curArraySize = fLeafCount * 4;
         CMStateSet[] statesToDo = new CMStateSet[curArraySize];
         fFinalStateFlags = new boolean[curArraySize];
-        fTransTable = new int[curArraySize][];
+        int[][] transTable = new int[curArraySize][];
 
         //
         //  Ok we start with the initial set as the first pos set of the
@@ -651,7 +763,7 @@ public class XSDFACM
         //  Init the first transition table entry, and put the initial state
         //  into the states to do list, then bump the current state.
         //
-        fTransTable[curState] = makeDefStateList();
+        transTable[curState] = makeDefStateList();
         statesToDo[curState] = setT;
         curState++;
 
@@ -674,7 +786,7 @@ public class XSDFACM
             //  And get the associated transition table entry.
             //
             setT = statesToDo[unmarkedState];
-            int[] transEntry = fTransTable[unmarkedState];
+            int[] transEntry = transTable[unmarkedState];
 
             // Mark this one final if it contains the EOC state
             fFinalStateFlags[unmarkedState] = setT.getBit(EOCPos);
@@ -740,7 +852,7 @@ public class XSDFACM
                         //  table.
                         //
                         statesToDo[curState] = newSet;
-                        fTransTable[curState] = makeDefStateList();
+                        transTable[curState] = makeDefStateList();
 
                         /* Optimization(Jan, 2001) */
                         stateTable.put(newSet, new Integer(curState));
@@ -780,13 +892,13 @@ public class XSDFACM
                         // Copy over all of the existing content
                         System.arraycopy(statesToDo, 0, newToDo, 0, curArraySize);
                         System.arraycopy(fFinalStateFlags, 0, newFinalFlags, 0, curArraySize);
-                        System.arraycopy(fTransTable, 0, newTransTable, 0, curArraySize);
+                        System.arraycopy(transTable, 0, newTransTable, 0, curArraySize);
 
                         // Store the new array size
                         curArraySize = newSize;
                         statesToDo = newToDo;
                         fFinalStateFlags = newFinalFlags;
-                        fTransTable = newTransTable;
+                        transTable = newTransTable;
                     }
                 }
             }
@@ -799,7 +911,7 @@ public class XSDFACM
         if (elemOccurenceMap != null) {
             fCountingStates = new Occurence[curState];
             for (int i = 0; i < curState; ++i) {
-                int [] transitions = fTransTable[i];
+                int [] transitions = transTable[i];
                 for (int j = 0; j < transitions.length; ++j) {
                     if (i == transitions[j]) {
                         fCountingStates[i] = elemOccurenceMap[j];
@@ -809,6 +921,21 @@ public class XSDFACM
             }
         }
 
+        //
+        //  Copy the rows of the transition table into a single array, so
+        //  that the transitions from a state are next to each other, and
+        //  index the names of the element declarations.
+        //
+        fTransTableSize = curState;
+        fTransTable = new int[curState * fElemMapSize];
+        for (int i = 0; i < curState; ++i) {
+            System.arraycopy(transTable[i], 0, fTransTable, i * fElemMapSize, fElemMapSize);
+        }
+        boolean[] finalStateFlags = new boolean[curState];
+        System.arraycopy(fFinalStateFlags, 0, finalStateFlags, 0, curState);
+        fFinalStateFlags = finalStateFlags;
+        buildSymbolIndex();
+
         //
         //  And now we can say bye bye to the temp representation since we've
         //  built the DFA.
@@ -989,6 +1116,69 @@ public class XSDFACM
         return retArray;
     }
 
+    /**
+     * Builds the hash table of the names of the element declarations in
+     * the element map, and the list of the entries which can match
+     * elements with other names.
+     */
+    private void buildSymbolIndex() {
+        int elementCount = 0;
+        int substitutableCount = 0;
+        for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+            if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_ELEMENT) {
+                elementCount++;
+                if (isSubstitutable((XSElementDecl)fElemMap[elemIndex]))
+                    substitutableCount++;
+            }
+            else {
+                substitutableCount++;
+            }
+        }
+
+        fSubstitutableIndexes = new int[substitutableCount];
+        fElemMapNext = new int[fElemMapSize];
+        int tableSize = 4;
+        while (tableSize < elementCount * 2)
+            tableSize <<= 1;
+        if (elementCount > 0) {
+            fSymbolLocalparts = new String[tableSize];
+            fSymbolURIs = new String[tableSize];
+            fSymbolFirst = new int[tableSize];
+        }
+
+        // add the entries in reverse order, so that each entry is
+        // prepended to the list of the entries with the same name
+        for (int elemIndex = fElemMapSize - 1; elemIndex >= 0; elemIndex--) {
+            fElemMapNext[elemIndex] = -1;
+            if (fElemMapType[elemIndex] != XSParticleDecl.PARTICLE_ELEMENT) {
+                fSubstitutableIndexes[--substitutableCount] = elemIndex;
+                continue;
+            }
+            XSElementDecl decl = (XSElementDecl)fElemMap[elemIndex];
+            if (isSubstitutable(decl))
+                fSubstitutableIndexes[--substitutableCount] = elemIndex;
+            int slot = decl.fName.hashCode() & (tableSize - 1);
+            while (fSymbolLocalparts[slot] != null &&
+                   (fSymbolLocalparts[slot] != decl.fName || fSymbolURIs[slot] != decl.fTargetNamespace)) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            if (fSymbolLocalparts[slot] != null)
+                fElemMapNext[elemIndex] = fSymbolFirst[slot];
+            fSymbolLocalparts[slot] = decl.fName;
+            fSymbolURIs[slot] = decl.fTargetNamespace;
+            fSymbolFirst[slot] = elemIndex;
+        }
+    }
+
+    /**
+     * Returns whether elements with other names can match the declaration
+     * through its substitution group; see SubstitutionGroupHandler.
+     */
+    private static boolean isSubstitutable(XSElementDecl decl) {
+        return decl.fScope == XSConstants.SCOPE_GLOBAL &&
+            (decl.fBlock & XSConstants.DERIVATION_SUBSTITUTION) == 0;
+    }
+
     /** Post tree build initialization. */
     private void postTreeBuildInit(CMNode nodeCur) throws RuntimeException {
         // Set the maximum states on this node
@@ -1040,11 +1230,12 @@ public class XSDFACM
         byte conflictTable[][] = new byte[fElemMapSize][fElemMapSize];
 
         // for each state, check whether it has overlap transitions
-        for (int i = 0; i < fTransTable.length && fTransTable[i] != null; i++) {
+        for (int i = 0; i < fTransTableSize; i++) {
+            final int row = i * fElemMapSize;
             for (int j = 0; j < fElemMapSize; j++) {
                 for (int k = j+1; k < fElemMapSize; k++) {
-                    if (fTransTable[i][j] != -1 &&
-                        fTransTable[i][k] != -1) {
+                    if (fTransTable[row + j] != -1 &&
+                        fTransTable[row + k] != -1) {
                         if (conflictTable[j][k] == 0) {
                             if (XSConstraints.overlapUPA
                                     (fElemMap[j], fElemMap[k],
@@ -1055,7 +1246,7 @@ public class XSDFACM
                                     // loops back to "i" then the two particles do not overlap if
                                     // minOccurs == maxOccurs.
                                     if (o != null && 
-                                        fTransTable[i][j] == i ^ fTransTable[i][k] == i && 
+                                        fTransTable[row + j] == i ^ fTransTable[row + k] == i && 
                                         o.minOccurs == o.maxOccurs) {
                                         conflictTable[j][k] = (byte) -1;
                                         continue;
@@ -1119,7 +1310,7 @@ public class XSDFACM
 
         Vector ret = new Vector();
         for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
-            int nextState = fTransTable[curState][elemIndex];
+            int nextState = fTransTable[curState * fElemMapSize + elemIndex];
             if (nextState != -1) {
                 if (o != null) {
                     if (curState == nextState) {
@@ -1170,4 +1361,103 @@ public class XSDFACM
     public boolean isCompactedForUPA() {
         return fIsCompactedForUPA;
     }
+
+    //
+    // Tables of the DFA
+    //
+
+    /** Returns the number of entries in the element map. */
+    public int getElementCount() {
+        return fElemMapSize;
+    }
+
+    /**
+     * Returns the XSElementDecl or XSWildcardDecl of an entry of the
+     * element map.
+     */
+    public Object getElement(int elemIndex) {
+        return fElemMap[elemIndex];
+    }
+
+    /** Returns the number of states. */
+    public int getStateCount() {
+        return fTransTableSize;
+    }
+
+    /**
+     * Returns the state reached from the state with the entry of the
+     * element map, or -1.
+     */
+    public int getTransition(int state, int elemIndex) {
+        return fTransTable[state * fElemMapSize + elemIndex];
+    }
+
+    /** Returns whether the content model has counting states. */
+    public boolean hasCountingStates() {
+        return fCountingStates != null;
+    }
+
+    /**
+     * Returns the minOccurs, maxOccurs and element map index of the
+     * counting state, or null if the state is not a counting state.
+     */
+    public int[] getCountingState(int state) {
+        Occurence o = (fCountingStates != null) ? fCountingStates[state] : null;
+        return (o != null) ? new int[] {o.minOccurs, o.maxOccurs, o.elemIndex} : null;
+    }
+
+    /**
+     * Returns whether the object is a DFA content model with the same
+     * element map, transitions and final states, and which therefore
+     * validates content exactly like this one. Element declarations and
+     * wildcards are compared by identity.
+     */
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof XSDFACM)) {
+            return false;
+        }
+        XSDFACM other = (XSDFACM)obj;
+        if (fElemMapSize != other.fElemMapSize ||
+            fTransTableSize != other.fTransTableSize ||
+            fIsCompactedForUPA != other.fIsCompactedForUPA ||
+            (fCountingStates == null) != (other.fCountingStates == null)) {
+            return false;
+        }
+        for (int i = 0; i < fElemMapSize; i++) {
+            if (fElemMap[i] != other.fElemMap[i] || fElemMapType[i] != other.fElemMapType[i])
+                return false;
+        }
+        for (int i = 0; i < fTransTable.length; i++) {
+            if (fTransTable[i] != other.fTransTable[i])
+                return false;
+        }
+        for (int i = 0; i < fTransTableSize; i++) {
+            if (fFinalStateFlags[i] != other.fFinalStateFlags[i])
+                return false;
+            if (fCountingStates != null) {
+                Occurence o1 = fCountingStates[i];
+                Occurence o2 = other.fCountingStates[i];
+                if (o1 == null ? o2 != null : (o2 == null ||
+                    o1.minOccurs != o2.minOccurs ||
+                    o1.maxOccurs != o2.maxOccurs ||
+                    o1.elemIndex != o2.elemIndex))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = fTransTableSize;
+        for (int i = 0; i < fElemMapSize; i++) {
+            hash = hash * 31 + System.identityHashCode(fElemMap[i]);
+        }
+        for (int i = 0; i < fTransTable.length; i++) {
+            hash = hash * 31 + fTransTable[i];
+        }
+        return hash;
+    }
 } // class DFAContentModel
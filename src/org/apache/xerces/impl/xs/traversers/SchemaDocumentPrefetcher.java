@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.traversers;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.impl.xs.opti.SchemaDOMParser;
+import org.apache.xerces.impl.xs.opti.SchemaParsingConfig;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.w3c.dom.Document;
+
+/**
+ * Parses schema documents on background threads, ahead of the
+ * XSDHandler, which takes them when it gets to the &lt;include&gt;,
+ * &lt;import&gt; or &lt;redefine&gt; referring to them. Only the
+ * reading and parsing of the documents is done in the background: the
+ * trees are still constructed, and the components traversed, in the
+ * order of the schema documents.
+ * <p>
+ * Only documents identified by a system identifier alone are parsed in
+ * the background. A document for which an error or a warning is
+ * reported, or which refers to an external entity, is discarded and
+ * parsed again by the XSDHandler, so that its errors are reported, and
+ * its entities resolved, as if the parallel loading was not enabled.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class SchemaDocumentPrefetcher {
+
+    //
+    // Constants
+    //
+
+    /** Seconds after which an idle background thread ends. */
+    private static final long KEEP_ALIVE_TIME = 10;
+
+    //
+    // Data
+    //
+
+    /**
+     * Threads parsing schema documents, shared by all prefetchers. The
+     * threads end when they have been idle for a while, so the pool
+     * never needs to be shut down, and does not keep the class loader
+     * of Xerces alive once schemas are no longer loaded.
+     */
+    private static ExecutorService gExecutor;
+
+    /** Documents parsed or being parsed, keyed by expanded system identifier. */
+    private final Hashtable fPending = new Hashtable();
+
+    /**
+     * Expanded system identifiers of the documents submitted, including
+     * those already taken, until the prefetcher is cleared. The XSDHandler
+     * does not parse a document again once it has taken it.
+     */
+    private final HashSet fSubmitted = new HashSet();
+
+    /** Settings of the schema parser, and the idle parsers created with them. */
+    private Settings fSettings;
+
+    //
+    // Constructors
+    //
+
+    public SchemaDocumentPrefetcher(SchemaDOMParser schemaParser) {
+        reset(schemaParser);
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Copies the settings of the schema parser, which are used to
+     * configure the parsers of the background threads.
+     */
+    public void reset(SchemaDOMParser schemaParser) {
+        clear();
+        fSettings = new Settings(schemaParser);
+    } // reset(SchemaDOMParser)
+
+    /**
+     * Starts parsing the schema document in the background, unless it
+     * was already submitted since the prefetcher was cleared, or cannot
+     * be parsed in the background.
+     */
+    public void prefetch(XMLInputSource schemaSource) {
+        if (!canPrefetch(schemaSource)) {
+            return;
+        }
+        String schemaId;
+        try {
+            schemaId = XMLEntityManager.expandSystemId(schemaSource.getSystemId(), schemaSource.getBaseSystemId(), false);
+        }
+        catch (IOException e) {
+            return;
+        }
+        if (schemaId != null && fSubmitted.add(schemaId)) {
+            fPending.put(schemaId, getExecutor().submit(new ParseTask(fSettings, schemaSource)));
+        }
+    } // prefetch(XMLInputSource)
+
+    /**
+     * Returns the document parsed in the background for the expanded
+     * system identifier, waiting for the parse to complete if needed.
+     * Returns null if the document was not prefetched, or could not be
+     * parsed without errors; it must then be parsed by the caller.
+     */
+    public Document take(String schemaId) {
+        Future parse = (Future) fPending.remove(schemaId);
+        if (parse == null) {
+            return null;
+        }
+        try {
+            return (Document) parse.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+        }
+        return null;
+    } // take(String):Document
+
+    /**
+     * Discards the documents which have not been taken, and forgets the
+     * documents submitted.
+     */
+    public void clear() {
+        for (Enumeration e = fPending.elements(); e.hasMoreElements();) {
+            ((Future) e.nextElement()).cancel(false);
+        }
+        fPending.clear();
+        fSubmitted.clear();
+    } // clear()
+
+    /**
+     * Returns true if the input source is identified by a system
+     * identifier alone, so that the document can be read again by
+     * another parser.
+     */
+    public static boolean canPrefetch(XMLInputSource schemaSource) {
+        return schemaSource != null &&
+            schemaSource.getClass() == XMLInputSource.class &&
+            schemaSource.getSystemId() != null &&
+            schemaSource.getByteStream() == null &&
+            schemaSource.getCharacterStream() == null;
+    } // canPrefetch(XMLInputSource):boolean
+
+    private static synchronized ExecutorService getExecutor() {
+        if (gExecutor == null) {
+            // reading schema documents is mostly waiting for I/O
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Xerces schema document parser");
+                    thread.setDaemon(true);
+                    // do not hold on to the class loader of the application which created it
+                    thread.setContextClassLoader(SchemaDocumentPrefetcher.class.getClassLoader());
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            gExecutor = executor;
+        }
+        return gExecutor;
+    } // getExecutor():ExecutorService
+
+    //
+    // Classes
+    //
+
+    /**
+     * Settings of the schema parser, and the parsers not in use which
+     * were created with them.
+     */
+    private static final class Settings {
+
+        private final boolean fAllowJavaEncodings;
+        private final boolean fStandardUriConformant;
+        private final boolean fDisallowDoctype;
+        private final boolean fGenerateSyntheticAnnotations;
+        private final Object fSecurityManager;
+
+        /** Idle parsers. */
+        private final Vector fParsers = new Vector();
+
+        public Settings(SchemaDOMParser schemaParser) {
+            fAllowJavaEncodings = getFeature(schemaParser, XSDHandler.ALLOW_JAVA_ENCODINGS);
+            fStandardUriConformant = getFeature(schemaParser, XSDHandler.STANDARD_URI_CONFORMANT_FEATURE);
+            fDisallowDoctype = getFeature(schemaParser, XSDHandler.DISALLOW_DOCTYPE);
+            fGenerateSyntheticAnnotations = getFeature(schemaParser, XSDHandler.GENERATE_SYNTHETIC_ANNOTATIONS);
+            Object securityManager = null;
+            try {
+                securityManager = schemaParser.getProperty(XSDHandler.SECURITY_MANAGER);
+            }
+            catch (XMLConfigurationException e) {
+            }
+            fSecurityManager = securityManager;
+        }
+
+        public ParserWorker getParser() {
+            synchronized (fParsers) {
+                int size = fParsers.size();
+                if (size > 0) {
+                    ParserWorker parser = (ParserWorker) fParsers.elementAt(size - 1);
+                    fParsers.removeElementAt(size - 1);
+                    return parser;
+                }
+            }
+            ParserWorker parser = new ParserWorker();
+            SchemaDOMParser schemaParser = parser.fSchemaParser;
+            schemaParser.setFeature(XSDHandler.ALLOW_JAVA_ENCODINGS, fAllowJavaEncodings);
+            schemaParser.setFeature(XSDHandler.STANDARD_URI_CONFORMANT_FEATURE, fStandardUriConformant);
+            schemaParser.setFeature(XSDHandler.DISALLOW_DOCTYPE, fDisallowDoctype);
+            schemaParser.setFeature(XSDHandler.GENERATE_SYNTHETIC_ANNOTATIONS, fGenerateSyntheticAnnotations);
+            if (fSecurityManager != null) {
+                schemaParser.setProperty(XSDHandler.SECURITY_MANAGER, fSecurityManager);
+            }
+            return parser;
+        }
+
+        public void releaseParser(ParserWorker parser) {
+            fParsers.addElement(parser);
+        }
+
+        private static boolean getFeature(SchemaDOMParser schemaParser, String featureId) {
+            try {
+                return schemaParser.getFeature(featureId);
+            }
+            catch (XMLConfigurationException e) {
+                return false;
+            }
+        }
+    } // class Settings
+
+    /**
+     * A schema parser which records whether an error was reported, and
+     * refuses to resolve external entities.
+     */
+    private static final class ParserWorker implements XMLErrorHandler, XMLEntityResolver {
+
+        final SchemaDOMParser fSchemaParser;
+
+        /** True if the document cannot be used. */
+        private boolean fFailed;
+
+        public ParserWorker() {
+            fSchemaParser = new SchemaDOMParser(new SchemaParsingConfig());
+            fSchemaParser.setProperty(XSDHandler.ERROR_HANDLER, this);
+            fSchemaParser.setEntityResolver(this);
+        }
+
+        /** Returns the parsed document, or null if it cannot be used. */
+        public Document parse(XMLInputSource schemaSource) {
+            fFailed = false;
+            try {
+                fSchemaParser.parse(schemaSource);
+            }
+            catch (IOException e) {
+                fFailed = true;
+            }
+            catch (XNIException e) {
+                fFailed = true;
+            }
+            return fFailed ? null : fSchemaParser.getDocument();
+        }
+
+        //
+        // XMLErrorHandler methods
+        //
+
+        public void warning(String domain, String key, XMLParseException exception) {
+            fFailed = true;
+        }
+
+        public void error(String domain, String key, XMLParseException exception) {
+            fFailed = true;
+        }
+
+        public void fatalError(String domain, String key, XMLParseException exception) {
+            fFailed = true;
+        }
+
+        //
+        // XMLEntityResolver methods
+        //
+
+        public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier) throws IOException {
+            // external entities are resolved by the XSDHandler's parser
+            fFailed = true;
+            throw new IOException("External entity in a prefetched schema document.");
+        }
+    } // class ParserWorker
+
+    /** Parses a schema document on a background thread. */
+    private static final class ParseTask implements Callable {
+
+        private final Settings fSettings;
+        private final XMLInputSource fSchemaSource;
+
+        public ParseTask(Settings settings, XMLInputSource schemaSource) {
+            fSettings = settings;
+            fSchemaSource = schemaSource;
+        }
+
+        public Object call() {
+            ParserWorker parser = fSettings.getParser();
+            Document document = parser.parse(fSchemaSource);
+            fSettings.releaseParser(parser);
+            return document;
+        }
+    } // class ParseTask
+
+} // class SchemaDocumentPrefetcher
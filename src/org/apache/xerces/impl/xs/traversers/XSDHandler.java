@@ -99,6 +99,7 @@ import org.apache.xerces.xs.XSSimpleTypeDefinition;
 import org.apache.xerces.xs.XSTerm;
 import org.apache.xerces.xs.XSTypeDefinition;
 import org.apache.xerces.xs.datatypes.ObjectList;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -170,6 +171,10 @@ public class XSDHandler {
     protected static final String TOLERATE_DUPLICATES = 
       Constants.XERCES_FEATURE_PREFIX + Constants.TOLERATE_DUPLICATES_FEATURE;
     
+    /** Feature identifier: parallel schema loading */
+    protected static final String PARALLEL_SCHEMA_LOADING = 
+      Constants.XERCES_FEATURE_PREFIX + Constants.PARALLEL_SCHEMA_LOADING_FEATURE;
+    
     /** Feature identifier: namespace prefixes. */
     private static final String NAMESPACE_PREFIXES =
         Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACE_PREFIXES_FEATURE;
@@ -373,6 +378,18 @@ public class XSDHandler {
     
     // handle tolerate duplicates feature
     boolean fTolerateDuplicates = false;
+    
+    // parses the referenced schema documents in the background when
+    // the parallel schema loading feature is enabled; null otherwise
+    private SchemaDocumentPrefetcher fPrefetcher;
+    
+    // the grammar description used to resolve the documents to prefetch
+    private XSDDescription fPrefetchDescription;
+
+    // the sources resolved for the documents to prefetch, keyed by the
+    // include, import or redefine element; constructTrees() uses them
+    // rather than calling the entity resolver again
+    private final Hashtable fResolvedSources = new Hashtable();
 
     // the XMLErrorReporter
     private XMLErrorReporter fErrorReporter;
@@ -602,6 +619,10 @@ public class XSDHandler {
         prepareForTraverse();
         
         fRoot = constructTrees(schemaRoot, is.getSystemId(), desc, grammar != null);
+        if (fPrefetcher != null) {
+            fPrefetcher.clear();
+            clearResolvedSources();
+        }
         if (fRoot == null) {
             return null;
         }
@@ -875,6 +896,10 @@ public class XSDHandler {
         Vector dependencies = new Vector();
         Element rootNode = schemaRoot;
         
+        if (fPrefetcher != null) {
+            prefetchSchemaDocuments(schemaRoot, currSchemaInfo.fTargetNamespace, callerTNS);
+        }
+        
         Element newSchemaRoot = null;
         for (Element child = DOMUtil.getFirstChildElement(rootNode);
         child != null;
@@ -989,7 +1014,8 @@ public class XSDHandler {
                 // Don't consult the location pair hashtable in this case,
                 // otherwise the location will be ignored because it'll get
                 // resolved to the same location as the first hint.
-                newSchemaRoot = resolveSchema(fSchemaGrammarDescription, false, child, isg == null);
+                XMLInputSource schemaSource = resolveSchemaSource(fSchemaGrammarDescription, false, child, isg == null);
+                newSchemaRoot = resolveSchema(schemaSource, fSchemaGrammarDescription, false, child);
             }
             else if ((localName.equals(SchemaSymbols.ELT_INCLUDE)) ||
                     (localName.equals(SchemaSymbols.ELT_REDEFINE))) {
@@ -1120,6 +1146,109 @@ public class XSDHandler {
         return currSchemaInfo;
     } // end constructTrees
     
+    /**
+     * Starts parsing the schema documents included, imported or redefined
+     * by a schema document in the background, so that they have been read
+     * by the time constructTrees() gets to them. The documents are resolved
+     * as constructTrees() would resolve them, and constructTrees() takes
+     * the resolved sources, so that the entity resolver is called once for
+     * each reference.
+     * <p>
+     * Like constructTrees(), imports of a namespace which already has a
+     * grammar, in the bucket or in the grammar pool, are skipped, and so are
+     * imports of a namespace the document already imports, unless all the
+     * schema locations are honoured. A grammar for the namespace of an import
+     * may still be built before constructTrees() gets to the import; the
+     * document is then read without being used.
+     */
+    private void prefetchSchemaDocuments(Element schemaRoot, String targetNamespace, String callerTNS) {
+        Vector importedNamespaces = new Vector();
+        boolean usePairs;
+        for (Element child = DOMUtil.getFirstChildElement(schemaRoot);
+        child != null;
+        child = DOMUtil.getNextSiblingElement(child)) {
+            String localName = DOMUtil.getLocalName(child);
+            Attr schemaHint = DOMUtil.getAttr(child, SchemaSymbols.ATT_SCHEMALOCATION);
+            String location = schemaHint != null ? schemaHint.getValue().trim() : null;
+            fPrefetchDescription.reset();
+            usePairs = true;
+            if (localName.equals(SchemaSymbols.ELT_ANNOTATION)) {
+                continue;
+            }
+            else if (localName.equals(SchemaSymbols.ELT_IMPORT)) {
+                Attr namespace = DOMUtil.getAttr(child, SchemaSymbols.ATT_NAMESPACE);
+                String schemaNamespace = namespace != null ?
+                        fSymbolTable.addSymbol(namespace.getValue().trim()) : null;
+                if (schemaNamespace == targetNamespace) {
+                    // reported by constructTrees()
+                    continue;
+                }
+                if (importedNamespaces.contains(schemaNamespace)) {
+                    if (!fHonourAllSchemaLocations && !fNamespaceGrowth) {
+                        continue;
+                    }
+                    // the first import gets the location pairs
+                    usePairs = false;
+                }
+                else {
+                    importedNamespaces.addElement(schemaNamespace);
+                }
+                fPrefetchDescription.setContextType(XSDDescription.CONTEXT_IMPORT);
+                fPrefetchDescription.setTargetNamespace(schemaNamespace);
+                fPrefetchDescription.setLiteralSystemId(location);
+                if (hasGrammar(fPrefetchDescription)) {
+                    continue;
+                }
+            }
+            else if (localName.equals(SchemaSymbols.ELT_INCLUDE)) {
+                fPrefetchDescription.setContextType(XSDDescription.CONTEXT_INCLUDE);
+                fPrefetchDescription.setTargetNamespace(callerTNS);
+            }
+            else if (localName.equals(SchemaSymbols.ELT_REDEFINE)) {
+                fPrefetchDescription.setContextType(XSDDescription.CONTEXT_REDEFINE);
+                fPrefetchDescription.setTargetNamespace(callerTNS);
+            }
+            else {
+                break;
+            }
+            fPrefetchDescription.setBaseSystemId(doc2SystemId(schemaRoot));
+            fPrefetchDescription.setLocationHints(new String[]{location});
+            ResolvedSource resolved = new ResolvedSource(fPrefetchDescription, usePairs);
+            try {
+                resolved.fSource = XMLSchemaLoader.resolveDocument(fPrefetchDescription,
+                        usePairs ? fLocationPairs : EMPTY_TABLE, fEntityResolver);
+            }
+            catch (IOException e) {
+                // reported when constructTrees() takes the source
+                resolved.fException = e;
+            }
+            resolved.fLiteralSystemId = fPrefetchDescription.getLiteralSystemId();
+            resolved.fExpandedSystemId = fPrefetchDescription.getExpandedSystemId();
+            fResolvedSources.put(child, resolved);
+            if (SchemaDocumentPrefetcher.canPrefetch(resolved.fSource)) {
+                fPrefetcher.prefetch(resolved.fSource);
+            }
+        }
+    } // prefetchSchemaDocuments(Element, String, String)
+
+    /**
+     * Returns true if the bucket or the grammar pool has a grammar for the
+     * namespace. Unlike findGrammar(), the grammar is not added to the
+     * bucket, so that a conflict is only reported by constructTrees().
+     */
+    private boolean hasGrammar(XSDDescription desc) {
+        return fGrammarBucket.getGrammar(desc.getTargetNamespace()) != null ||
+            (fGrammarPool != null && fGrammarPool.retrieveGrammar(desc) != null);
+    } // hasGrammar(XSDDescription):boolean
+
+    /** Closes the sources resolved for the documents to prefetch which were not used. */
+    private void clearResolvedSources() {
+        for (Enumeration e = fResolvedSources.elements(); e.hasMoreElements();) {
+            ((ResolvedSource) e.nextElement()).close();
+        }
+        fResolvedSources.clear();
+    } // clearResolvedSources()
+    
     private boolean isExistingGrammar(XSDDescription desc, boolean ignoreConflict) {
         SchemaGrammar sg = fGrammarBucket.getGrammar(desc.getTargetNamespace());
         if (sg == null) {
@@ -2082,9 +2211,20 @@ public class XSDHandler {
             Element referElement, boolean usePairs) {
 
         XMLInputSource schemaSource = null;
+        // take the source resolved when the document was prefetched
+        ResolvedSource resolved = (ResolvedSource) fResolvedSources.remove(referElement);
+        if (resolved != null && !resolved.matches(desc, usePairs)) {
+            resolved.close();
+            resolved = null;
+        }
         try {
-            Hashtable pairs = usePairs ? fLocationPairs : EMPTY_TABLE;
-            schemaSource = XMLSchemaLoader.resolveDocument(desc, pairs, fEntityResolver);
+            if (resolved != null) {
+                schemaSource = resolved.apply(desc);
+            }
+            else {
+                Hashtable pairs = usePairs ? fLocationPairs : EMPTY_TABLE;
+                schemaSource = XMLSchemaLoader.resolveDocument(desc, pairs, fEntityResolver);
+            }
         }
         catch (IOException ex) {
             if (mustResolve) {
@@ -2145,8 +2285,14 @@ public class XSDHandler {
                     }
                 }
                 
-                fSchemaParser.parse(schemaSource);
-                Document schemaDocument = fSchemaParser.getDocument();
+                Document schemaDocument = null;
+                if (fPrefetcher != null && schemaId != null && SchemaDocumentPrefetcher.canPrefetch(schemaSource)) {
+                    schemaDocument = fPrefetcher.take(schemaId);
+                }
+                if (schemaDocument == null) {
+                    fSchemaParser.parse(schemaSource);
+                    schemaDocument = fSchemaParser.getDocument();
+                }
                 schemaElement = schemaDocument != null ? DOMUtil.getRoot(schemaDocument) : null;
                 return getSchemaDocument0(key, schemaId, schemaElement);
             }
@@ -3526,6 +3672,13 @@ public class XSDHandler {
         } catch (XMLConfigurationException e) {
             fTolerateDuplicates = false;
         }
+        
+        boolean parallelLoading;
+        try {
+            parallelLoading = componentManager.getFeature(PARALLEL_SCHEMA_LOADING);
+        } catch (XMLConfigurationException e) {
+            parallelLoading = false;
+        }
 
         try {
             fSchemaParser.setFeature(
@@ -3567,6 +3720,19 @@ public class XSDHandler {
         } catch (XMLConfigurationException e) {
         }
         
+        // the background parsers copy the settings of the schema parser
+        clearResolvedSources();
+        if (!parallelLoading) {
+            fPrefetcher = null;
+        }
+        else if (fPrefetcher == null) {
+            fPrefetcher = new SchemaDocumentPrefetcher(fSchemaParser);
+            fPrefetchDescription = new XSDDescription();
+        }
+        else {
+            fPrefetcher.reset(fSchemaParser);
+        }
+        
     } // reset(XMLComponentManager)
     
     
@@ -4269,6 +4435,79 @@ public class XSDHandler {
         }
     }
     
+    /**
+     * The source of a schema document resolved by prefetchSchemaDocuments(),
+     * with the description it was resolved for, and the system identifiers
+     * the resolution set on the description.
+     */
+    private static final class ResolvedSource {
+
+        private final short fContextType;
+        private final String fTargetNamespace;
+        private final String fBaseSystemId;
+        private final String fLocation;
+        private final boolean fUsePairs;
+
+        XMLInputSource fSource;
+        IOException fException;
+        String fLiteralSystemId;
+        String fExpandedSystemId;
+
+        ResolvedSource(XSDDescription desc, boolean usePairs) {
+            fContextType = desc.getContextType();
+            fTargetNamespace = desc.getTargetNamespace();
+            fBaseSystemId = desc.getBaseSystemId();
+            fLocation = desc.getLocationHints()[0];
+            fUsePairs = usePairs;
+        }
+
+        /** Returns true if the source was resolved for the same reference. */
+        boolean matches(XSDDescription desc, boolean usePairs) {
+            String[] hints = desc.getLocationHints();
+            String location = hints != null && hints.length > 0 ? hints[0] : null;
+            return fUsePairs == usePairs &&
+                fContextType == desc.getContextType() &&
+                equals(fTargetNamespace, desc.getTargetNamespace()) &&
+                equals(fBaseSystemId, desc.getBaseSystemId()) &&
+                equals(fLocation, location);
+        }
+
+        /**
+         * Sets the system identifiers on the description as resolving it
+         * would, and returns the source or throws the exception of the
+         * resolution.
+         */
+        XMLInputSource apply(XSDDescription desc) throws IOException {
+            desc.setLiteralSystemId(fLiteralSystemId);
+            desc.setExpandedSystemId(fExpandedSystemId);
+            if (fException != null) {
+                throw fException;
+            }
+            return fSource;
+        }
+
+        /** Closes the streams of the source. */
+        void close() {
+            if (fSource == null) {
+                return;
+            }
+            try {
+                if (fSource.getByteStream() != null) {
+                    fSource.getByteStream().close();
+                }
+                if (fSource.getCharacterStream() != null) {
+                    fSource.getCharacterStream().close();
+                }
+            }
+            catch (IOException e) {
+            }
+        }
+
+        private static boolean equals(String s1, String s2) {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+    } // class ResolvedSource
+
     private static final class SAX2XNIUtil extends ErrorHandlerWrapper {
         public static XMLParseException createXMLParseException0(SAXParseException exception) {
             return createXMLParseException(exception);
@@ -40,7 +40,7 @@ import org.apache.xerces.util.SAXInputSource;
 import org.apache.xerces.util.SAXMessageFormatter;
 import org.apache.xerces.util.SecurityManager;
 import org.apache.xerces.util.StAXInputSource;
-import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.util.ConcurrentGrammarPool;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.grammars.Grammar;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
@@ -174,7 +174,9 @@ public final class XMLSchemaFactory extends SchemaFactory {
     public Schema newSchema( Source[] schemas ) throws SAXException {
         
         // this will let the loader store parsed Grammars into the pool.
-        XMLGrammarPoolImplExtension pool = new XMLGrammarPoolImplExtension();
+        // The pool is read-only once the schema has been created, so
+        // validators sharing the schema read it without locking.
+        ConcurrentGrammarPool pool = new ConcurrentGrammarPool();
         fXMLGrammarPoolWrapper.setGrammarPool(pool);
         
         XMLInputSource[] xmlInputSources = new XMLInputSource[schemas.length];
@@ -453,29 +455,6 @@ public final class XMLSchemaFactory extends SchemaFactory {
         }
     }
     
-    /** 
-     * Extension of XMLGrammarPoolImpl which exposes the number of
-     * grammars stored in the grammar pool.
-     */
-    static class XMLGrammarPoolImplExtension extends XMLGrammarPoolImpl {
-        
-        /** Constructs a grammar pool with a default number of buckets. */
-        public XMLGrammarPoolImplExtension() {
-            super();
-        }
-
-        /** Constructs a grammar pool with a specified number of buckets. */
-        public XMLGrammarPoolImplExtension(int initialCapacity) {
-            super(initialCapacity);
-        }
-        
-        /** Returns the number of grammars contained in this pool. */
-        int getGrammarCount() {
-            return fGrammarCount;
-        }
-        
-    } // XMLSchemaFactory.XMLGrammarPoolImplExtension
-    
     /**
      * A grammar pool which wraps another.
      */
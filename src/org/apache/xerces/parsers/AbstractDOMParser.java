@@ -21,6 +21,7 @@ import java.util.Locale;
 import java.util.Stack;
 
 import org.apache.xerces.dom.AttrImpl;
+import org.apache.xerces.dom.CompactDocumentImpl;
 import org.apache.xerces.dom.CoreDocumentImpl;
 import org.apache.xerces.dom.DOMErrorImpl;
 import org.apache.xerces.dom.DOMMessageFormatter;
@@ -115,6 +116,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected static final String DEFER_NODE_EXPANSION =
     Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_NODE_EXPANSION_FEATURE;
 
+    /** Feature id: deferred off-heap storage. */
+    protected static final String DEFERRED_OFF_HEAP_STORAGE =
+    Constants.XERCES_FEATURE_PREFIX + Constants.DEFERRED_OFF_HEAP_STORAGE_FEATURE;
 
     /** Recognized features. */
     private static final String[] RECOGNIZED_FEATURES = {
@@ -123,7 +127,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         INCLUDE_COMMENTS_FEATURE,
         CREATE_CDATA_NODES_FEATURE,
         INCLUDE_IGNORABLE_WHITESPACE,
-        DEFER_NODE_EXPANSION
+        DEFER_NODE_EXPANSION,
+        DEFERRED_OFF_HEAP_STORAGE
     };
 
     // property ids
@@ -135,6 +140,10 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected static final String  CURRENT_ELEMENT_NODE=
     Constants.XERCES_PROPERTY_PREFIX + Constants.CURRENT_ELEMENT_NODE_PROPERTY;
 
+    /** Property id: deferred chunk size. */
+    protected static final String DEFERRED_CHUNK_SIZE =
+    Constants.XERCES_PROPERTY_PREFIX + Constants.DEFERRED_CHUNK_SIZE_PROPERTY;
+
     // protected static final String GRAMMAR_POOL =
     // Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
 
@@ -142,6 +151,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     private static final String[] RECOGNIZED_PROPERTIES = {
         DOCUMENT_CLASS_NAME,
         CURRENT_ELEMENT_NODE,
+        DEFERRED_CHUNK_SIZE,
     };
 
     // other
@@ -156,6 +166,13 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     protected static final String PSVI_DOCUMENT_CLASS_NAME =
     "org.apache.xerces.dom.PSVIDocumentImpl";
 
+    /** Read-only document built from the deferred node tables. */
+    protected static final String COMPACT_DOCUMENT_CLASS_NAME =
+    "org.apache.xerces.dom.CompactDocumentImpl";
+
+    /** Default number of nodes in a chunk of the deferred node tables. */
+    protected static final int DEFAULT_DEFERRED_CHUNK_SIZE = 2048;
+
     /**
      * If the user stops the process, this exception will be thrown.
      */
@@ -231,6 +248,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
     // deferred expansion data
 
     protected boolean              fDeferNodeExpansion;
+    protected boolean              fDeferredOffHeapStorage;
+    protected int                  fDeferredChunkSize;
     protected boolean              fNamespaceAware;
     protected DeferredDocumentImpl fDeferredDocumentImpl;
     protected int                  fDocumentIndex;
@@ -298,6 +317,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         fConfiguration.setFeature (CREATE_ENTITY_REF_NODES, true);
         fConfiguration.setFeature (INCLUDE_IGNORABLE_WHITESPACE, true);
         fConfiguration.setFeature (DEFER_NODE_EXPANSION, true);
+        fConfiguration.setFeature (DEFERRED_OFF_HEAP_STORAGE, false);
         fConfiguration.setFeature (INCLUDE_COMMENTS_FEATURE, true);
         fConfiguration.setFeature (CREATE_CDATA_NODES_FEATURE, true);
 
@@ -307,6 +327,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         // set default values
         fConfiguration.setProperty (DOCUMENT_CLASS_NAME,
         DEFAULT_DOCUMENT_CLASS_NAME);
+        fConfiguration.setProperty (DEFERRED_CHUNK_SIZE,
+        new Integer (DEFAULT_DEFERRED_CHUNK_SIZE));
 
     } // <init>(XMLParserConfiguration)
 
@@ -322,7 +344,9 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
      * factory to use when constructing the DOM tree. However, doing
      * so will lose the functionality of the default factory. Also,
      * a document class other than the default will lose the ability
-     * to defer node expansion on the DOM tree produced.
+     * to defer node expansion on the DOM tree produced, except for the
+     * read-only compact document which is always built from the deferred
+     * node tables.
      *
      * @param documentClassName The fully qualified class name of the
      *                      document factory to use when constructing
@@ -330,6 +354,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
      *
      * @see #getDocumentClassName
      * @see #DEFAULT_DOCUMENT_CLASS_NAME
+     * @see #COMPACT_DOCUMENT_CLASS_NAME
      */
     protected void setDocumentClassName (String documentClassName) {
 
@@ -362,7 +387,11 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
 
         // set document class name
         fDocumentClassName = documentClassName;
-        if (!documentClassName.equals (DEFAULT_DOCUMENT_CLASS_NAME)) {
+        if (documentClassName.equals (COMPACT_DOCUMENT_CLASS_NAME)) {
+            // the compact document is built from the deferred tables
+            fDeferNodeExpansion = true;
+        }
+        else if (!documentClassName.equals (DEFAULT_DOCUMENT_CLASS_NAME)) {
             fDeferNodeExpansion = false;
         }
 
@@ -414,6 +443,13 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
         fDeferNodeExpansion =
         fConfiguration.getFeature (DEFER_NODE_EXPANSION);
 
+        fDeferredOffHeapStorage =
+        fConfiguration.getFeature (DEFERRED_OFF_HEAP_STORAGE);
+
+        Object chunkSize = fConfiguration.getProperty (DEFERRED_CHUNK_SIZE);
+        fDeferredChunkSize = chunkSize instanceof Integer ?
+        ((Integer) chunkSize).intValue () : DEFAULT_DEFERRED_CHUNK_SIZE;
+
         fNamespaceAware = fConfiguration.getFeature (NAMESPACES);
 
         fIncludeComments = fConfiguration.getFeature (INCLUDE_COMMENTS_FEATURE);
@@ -830,7 +866,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             fCurrentNode = fDocument;
         }
         else {
-            fDeferredDocumentImpl = new DeferredDocumentImpl (fNamespaceAware);
+            fDeferredDocumentImpl = new DeferredDocumentImpl (fNamespaceAware,
+            false, fDeferredChunkSize, fDeferredOffHeapStorage);
             fDocument = fDeferredDocumentImpl;
             fDocumentIndex = fDeferredDocumentImpl.createDeferredDocument ();
             // REVISIT: strict error checking is not implemented in deferred dom.
@@ -1216,7 +1253,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                 }
                 else {
                     int txt = fDeferredDocumentImpl.
-                    createDeferredTextNode (text.toString (), false);
+                    createDeferredTextNode (text.ch, text.offset, text.length, false);
                     fDeferredDocumentImpl.appendChild (fCurrentNodeIndex, txt);
                 }
             } else if (!fInDTD) {
@@ -1226,9 +1263,8 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
                     return;
                 }
 
-                String value = text.toString ();
                 int txt = fDeferredDocumentImpl.
-                createDeferredTextNode (value, false);
+                createDeferredTextNode (text.ch, text.offset, text.length, false);
                 fDeferredDocumentImpl.appendChild (fCurrentNodeIndex, txt);
 
             }
@@ -1272,7 +1308,7 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             // The Text normalization is taken care of within the DOM in the
             // deferred case.
             int txt = fDeferredDocumentImpl.
-            createDeferredTextNode (text.toString (), true);
+            createDeferredTextNode (text.ch, text.offset, text.length, true);
             fDeferredDocumentImpl.appendChild (fCurrentNodeIndex, txt);
         }
 
@@ -1491,6 +1527,11 @@ public class AbstractDOMParser extends AbstractXMLDocumentParser {
             if (fLocator != null) {
                 fDeferredDocumentImpl.setInputEncoding (fLocator.getEncoding());
             }
+            if (fDocumentClassName.equals (COMPACT_DOCUMENT_CLASS_NAME)) {
+                // copy the tables into a read-only document
+                fDocument = new CompactDocumentImpl (fDeferredDocumentImpl);
+                fDeferredDocumentImpl = null;
+            }
             fCurrentNodeIndex = -1;
         }
 
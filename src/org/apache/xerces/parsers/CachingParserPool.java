@@ -17,6 +17,8 @@
 
 package org.apache.xerces.parsers;
 
+import org.apache.xerces.util.ConcurrentGrammarPool;
+import org.apache.xerces.util.ConcurrentSymbolTable;
 import org.apache.xerces.util.ShadowedSymbolTable;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.util.SynchronizedSymbolTable;
@@ -38,7 +40,9 @@ import org.apache.xerces.xni.grammars.XMLGrammarPool;
  * <strong>Note:</strong> There is a performance penalty for using
  * a caching parser pool due to thread safety. Access to the symbol 
  * table and grammar pool must be synchronized to ensure the safe
- * operation of the symbol table and grammar pool.
+ * operation of the symbol table and grammar pool. Passing a
+ * <code>ConcurrentSymbolTable</code> and a <code>ConcurrentGrammarPool</code>
+ * avoids these locks; they are used by the default constructor.
  * <p>
  * <strong>Note:</strong> If performance is critical, then another
  * mechanism needs to be used instead of the caching parser pool.
@@ -75,14 +79,14 @@ public class CachingParserPool {
     /** 
      * Symbol table. The symbol table that the caching parser pool is
      * constructed with is automatically wrapped in a synchronized
-     * version for thread-safety.
+     * version for thread-safety, unless it is already thread-safe.
      */
     protected SymbolTable fSynchronizedSymbolTable;
 
     /** 
      * Grammar pool. The grammar pool that the caching parser pool is
      * constructed with is automatically wrapped in a synchronized
-     * version for thread-safety.
+     * version for thread-safety, unless it is already thread-safe.
      */
     protected XMLGrammarPool fSynchronizedGrammarPool;
 
@@ -110,7 +114,7 @@ public class CachingParserPool {
 
     /** Default constructor. */
     public CachingParserPool() {
-        this(new SymbolTable(), new XMLGrammarPoolImpl());
+        this(new ConcurrentSymbolTable(), new ConcurrentGrammarPool());
     } // <init>()
 
     /**
@@ -121,8 +125,12 @@ public class CachingParserPool {
      * @param grammarPool The grammar pool.
      */
     public CachingParserPool(SymbolTable symbolTable, XMLGrammarPool grammarPool) {
-        fSynchronizedSymbolTable = new SynchronizedSymbolTable(symbolTable);
-        fSynchronizedGrammarPool = new SynchronizedGrammarPool(grammarPool);
+        fSynchronizedSymbolTable = (symbolTable instanceof ConcurrentSymbolTable || 
+                symbolTable instanceof SynchronizedSymbolTable) 
+                ? symbolTable : new SynchronizedSymbolTable(symbolTable);
+        fSynchronizedGrammarPool = (grammarPool instanceof ConcurrentGrammarPool ||
+                grammarPool instanceof SynchronizedGrammarPool) 
+                ? grammarPool : new SynchronizedGrammarPool(grammarPool);
     } // <init>(SymbolTable,XMLGrammarPool)
 
     //
@@ -51,6 +51,18 @@ public class XIncludeParserConfiguration extends XML11Configuration {
     /** Feature identifier: fixup language. */
     protected static final String XINCLUDE_FIXUP_LANGUAGE =
         Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_FIXUP_LANGUAGE_FEATURE;
+    
+    /** Feature identifier: parallel processing. */
+    protected static final String XINCLUDE_PARALLEL_PROCESSING =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_PARALLEL_PROCESSING_FEATURE;
+
+    /** Feature identifier: streaming XPointer. */
+    protected static final String XINCLUDE_STREAMING_XPOINTER =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_STREAMING_XPOINTER_FEATURE;
+
+    /** Property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
 
     /** Property identifier: error reporter. */
     protected static final String XINCLUDE_HANDLER =
@@ -109,18 +121,22 @@ public class XIncludeParserConfiguration extends XML11Configuration {
         final String[] recognizedFeatures = {
             ALLOW_UE_AND_NOTATION_EVENTS,
             XINCLUDE_FIXUP_BASE_URIS,
-            XINCLUDE_FIXUP_LANGUAGE
+            XINCLUDE_FIXUP_LANGUAGE,
+            XINCLUDE_PARALLEL_PROCESSING,
+            XINCLUDE_STREAMING_XPOINTER
         };
         addRecognizedFeatures(recognizedFeatures);
 
         // add default recognized properties
         final String[] recognizedProperties =
-            { XINCLUDE_HANDLER, NAMESPACE_CONTEXT };
+            { XINCLUDE_HANDLER, NAMESPACE_CONTEXT, XINCLUDE_CACHE };
         addRecognizedProperties(recognizedProperties);
         
         setFeature(ALLOW_UE_AND_NOTATION_EVENTS, true);
         setFeature(XINCLUDE_FIXUP_BASE_URIS, true);
         setFeature(XINCLUDE_FIXUP_LANGUAGE, true);
+        setFeature(XINCLUDE_PARALLEL_PROCESSING, false);
+        setFeature(XINCLUDE_STREAMING_XPOINTER, false);
         
         setProperty(XINCLUDE_HANDLER, fXIncludeHandler);
         setProperty(NAMESPACE_CONTEXT, new XIncludeNamespaceSupport());
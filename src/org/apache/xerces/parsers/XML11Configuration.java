@@ -44,8 +44,11 @@ import org.apache.xerces.impl.msg.XMLMessageFormatter;
 import org.apache.xerces.impl.validation.ValidationManager;
 import org.apache.xerces.impl.xs.XMLSchemaValidator;
 import org.apache.xerces.impl.xs.XSMessageFormatter;
+import org.apache.xerces.util.NamespaceSupport;
 import org.apache.xerces.util.ParserConfigurationSettings;
 import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xinclude.RecordedDocument;
+import org.apache.xerces.xni.NamespaceContext;
 import org.apache.xerces.xni.XMLDTDContentModelHandler;
 import org.apache.xerces.xni.XMLDTDHandler;
 import org.apache.xerces.xni.XMLDocumentHandler;
@@ -260,6 +263,10 @@ public class XML11Configuration extends ParserConfigurationSettings
     protected static final String NAMESPACE_BINDER =
         Constants.XERCES_PROPERTY_PREFIX + Constants.NAMESPACE_BINDER_PROPERTY;
 
+    /** Property identifier: namespace context. */
+    protected static final String NAMESPACE_CONTEXT =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.NAMESPACE_CONTEXT_PROPERTY;
+
     /** Property identifier: datatype validator factory. */
     protected static final String DATATYPE_VALIDATOR_FACTORY =
         Constants.XERCES_PROPERTY_PREFIX + Constants.DATATYPE_VALIDATOR_FACTORY_PROPERTY;
@@ -892,6 +899,66 @@ public class XML11Configuration extends ParserConfigurationSettings
         }
 
     } // parse(boolean):boolean
+
+    /**
+     * Parses a document recorded by another parser, sending the events
+     * to the components of this configuration as if its scanner had
+     * scanned the document.
+     *
+     * @param document the recorded document
+     *
+     * @exception XNIException Throws exception on XNI error.
+     *
+     * @xerces.internal
+     */
+    public void parse(RecordedDocument document) throws XNIException {
+
+        if (fParseInProgress) {
+            // REVISIT - need to add new error message
+            throw new XNIException("FWK005 parse may not be called while parsing.");
+        }
+        fParseInProgress = true;
+
+        try {
+            fValidationManager.reset();
+            resetCommon();
+            if (document.isXML11()) {
+                initXML11Components();
+                configureXML11Pipeline();
+                resetXML11();
+            }
+            else {
+                configurePipeline();
+                reset();
+            }
+            fConfigUpdated = false;
+
+            // the scanner has reset the namespace context
+            NamespaceContext namespaceContext = null;
+            try {
+                namespaceContext = (NamespaceContext) getProperty(NAMESPACE_CONTEXT);
+            }
+            catch (XMLConfigurationException e) { }
+            if (namespaceContext == null) {
+                namespaceContext = new NamespaceSupport();
+            }
+            document.replay((XMLDocumentSource) fCurrentScanner, namespaceContext,
+                    (XMLErrorReporter) getProperty(ERROR_REPORTER));
+        } catch (XNIException ex) {
+            if (PRINT_EXCEPTION_STACK_TRACE)
+                ex.printStackTrace();
+            throw ex;
+        } catch (RuntimeException ex) {
+            if (PRINT_EXCEPTION_STACK_TRACE)
+                ex.printStackTrace();
+            throw ex;
+        } finally {
+            fParseInProgress = false;
+            // close all streams opened by xerces
+            this.cleanup();
+        }
+
+    } // parse(RecordedDocument)
     
 	/**
 	 * Returns the state of a feature.
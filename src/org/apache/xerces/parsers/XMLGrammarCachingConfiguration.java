@@ -25,6 +25,7 @@ import org.apache.xerces.impl.dtd.XMLDTDLoader;
 import org.apache.xerces.impl.xs.SchemaGrammar;
 import org.apache.xerces.impl.xs.XMLSchemaLoader;
 import org.apache.xerces.impl.xs.XSMessageFormatter;
+import org.apache.xerces.util.ConcurrentSymbolTable;
 import org.apache.xerces.util.SymbolTable;
 import org.apache.xerces.util.SynchronizedSymbolTable;
 import org.apache.xerces.util.XMLGrammarPoolImpl;
@@ -76,7 +77,7 @@ public class XMLGrammarCachingConfiguration
 
     // the static symbol table to be shared amongst parsers
     protected static final SynchronizedSymbolTable fStaticSymbolTable = 
-            new SynchronizedSymbolTable(BIG_PRIME);
+            new SynchronizedSymbolTable(new ConcurrentSymbolTable(BIG_PRIME));
 
     // the Grammar Pool to be shared similarly
     protected static final XMLGrammarPoolImpl fStaticGrammarPool =
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+
+/**
+ * <p>A copy of the namespace bindings in scope at a start tag, kept by
+ * the <code>StartElement</code> events of an <code>XMLEventReader</code>
+ * after the stream reader has moved on.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class NamespaceContextSnapshot implements NamespaceContext {
+
+    /** Namespace URIs, keyed by prefix. */
+    private final Map fBindings;
+
+    /**
+     * @param bindings the namespace URIs keyed by prefix, the default
+     * namespace having the empty prefix; the map is not copied
+     */
+    NamespaceContextSnapshot(Map bindings) {
+        fBindings = bindings;
+    }
+
+    public String getNamespaceURI(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix cannot be null.");
+        }
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return XMLConstants.XML_NS_URI;
+        }
+        if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+            return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+        }
+        final String uri = (String) fBindings.get(prefix);
+        return (uri != null) ? uri : XMLConstants.NULL_NS_URI;
+    }
+
+    public String getPrefix(String namespaceURI) {
+        final Iterator prefixes = getPrefixes(namespaceURI);
+        return prefixes.hasNext() ? (String) prefixes.next() : null;
+    }
+
+    public Iterator getPrefixes(String namespaceURI) {
+        if (namespaceURI == null) {
+            throw new IllegalArgumentException("Namespace URI cannot be null.");
+        }
+        final ArrayList prefixes = new ArrayList();
+        if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+            prefixes.add(XMLConstants.XML_NS_PREFIX);
+        }
+        else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+            prefixes.add(XMLConstants.XMLNS_ATTRIBUTE);
+        }
+        else {
+            final Iterator entries = fBindings.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry entry = (Map.Entry) entries.next();
+                if (namespaceURI.equals(entry.getValue())) {
+                    prefixes.add(entry.getKey());
+                }
+            }
+        }
+        return prefixes.iterator();
+    }
+
+} // class NamespaceContextSnapshot
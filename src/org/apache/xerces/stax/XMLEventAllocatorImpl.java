@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventAllocator;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import org.apache.xerces.stax.events.AttributeImpl;
+import org.apache.xerces.stax.events.CharactersImpl;
+import org.apache.xerces.stax.events.CommentImpl;
+import org.apache.xerces.stax.events.DTDImpl;
+import org.apache.xerces.stax.events.EndDocumentImpl;
+import org.apache.xerces.stax.events.EndElementImpl;
+import org.apache.xerces.stax.events.EntityReferenceImpl;
+import org.apache.xerces.stax.events.NamespaceImpl;
+import org.apache.xerces.stax.events.ProcessingInstructionImpl;
+import org.apache.xerces.stax.events.StartDocumentImpl;
+import org.apache.xerces.stax.events.StartElementImpl;
+
+/**
+ * <p>An <code>XMLEventAllocator</code> which creates an immutable event
+ * from the current state of an <code>XMLStreamReader</code>.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XMLEventAllocatorImpl implements XMLEventAllocator {
+
+    public XMLEventAllocatorImpl() {}
+
+    //
+    // XMLEventAllocator methods
+    //
+
+    public XMLEventAllocator newInstance() {
+        return new XMLEventAllocatorImpl();
+    }
+
+    public XMLEvent allocate(XMLStreamReader reader) throws XMLStreamException {
+        if (reader == null) {
+            throw new NullPointerException();
+        }
+        final Location location = new ImmutableLocation(reader.getLocation());
+        final int eventType = reader.getEventType();
+        switch (eventType) {
+            case XMLStreamConstants.START_ELEMENT:
+                return new StartElementImpl(reader.getName(),
+                        getAttributes(reader, location).iterator(),
+                        getNamespaces(reader, location).iterator(),
+                        getNamespaceContext(reader), location);
+            case XMLStreamConstants.END_ELEMENT:
+                return new EndElementImpl(reader.getName(),
+                        getNamespaces(reader, location).iterator(), location);
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                return new CharactersImpl(reader.getText(), eventType, location);
+            case XMLStreamConstants.COMMENT:
+                return new CommentImpl(reader.getText(), location);
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                return new ProcessingInstructionImpl(reader.getPITarget(), reader.getPIData(), location);
+            case XMLStreamConstants.DTD:
+                return new DTDImpl(reader.getText(), location);
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                return new EntityReferenceImpl(reader.getLocalName(), null, location);
+            case XMLStreamConstants.START_DOCUMENT:
+                final String encoding = reader.getCharacterEncodingScheme();
+                final String version = reader.getVersion();
+                return new StartDocumentImpl((encoding != null) ? encoding : "UTF-8",
+                        encoding != null, reader.isStandalone(), reader.standaloneSet(),
+                        (version != null) ? version : "1.0", location);
+            case XMLStreamConstants.END_DOCUMENT:
+                return new EndDocumentImpl(location);
+            default:
+                throw new XMLStreamException("Cannot allocate an event for event type " + eventType + ".", location);
+        }
+    }
+
+    public void allocate(XMLStreamReader reader, XMLEventConsumer consumer) throws XMLStreamException {
+        consumer.add(allocate(reader));
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns the attributes of the current start tag. */
+    private ArrayList getAttributes(XMLStreamReader reader, Location location) {
+        final int count = reader.getAttributeCount();
+        final ArrayList attributes = new ArrayList(count);
+        for (int i = 0; i < count; ++i) {
+            attributes.add(new AttributeImpl(reader.getAttributeName(i),
+                    reader.getAttributeValue(i), reader.getAttributeType(i),
+                    reader.isAttributeSpecified(i), location));
+        }
+        return attributes;
+    }
+
+    /** Returns the namespaces declared by the current start tag, or going out of scope at the current end tag. */
+    private ArrayList getNamespaces(XMLStreamReader reader, Location location) {
+        final int count = reader.getNamespaceCount();
+        final ArrayList namespaces = new ArrayList(count);
+        for (int i = 0; i < count; ++i) {
+            final String prefix = reader.getNamespacePrefix(i);
+            final String uri = reader.getNamespaceURI(i);
+            namespaces.add(new NamespaceImpl((prefix != null) ? prefix : XMLConstants.DEFAULT_NS_PREFIX,
+                    (uri != null) ? uri : XMLConstants.NULL_NS_URI, location));
+        }
+        return namespaces;
+    }
+
+    /**
+     * Returns the namespace bindings in scope at the current start tag,
+     * copied so that the event is not affected when the reader moves on.
+     * Only the prefixes this start tag mentions can be recovered from
+     * readers other than our own.
+     */
+    private NamespaceContext getNamespaceContext(XMLStreamReader reader) {
+        if (reader instanceof XMLStreamReaderImpl) {
+            return ((XMLStreamReaderImpl) reader).getNamespaceContextSnapshot();
+        }
+        final NamespaceContext context = reader.getNamespaceContext();
+        final HashMap bindings = new HashMap();
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            addBinding(bindings, context, reader.getNamespacePrefix(i));
+        }
+        addBinding(bindings, context, reader.getPrefix());
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            addBinding(bindings, context, reader.getAttributePrefix(i));
+        }
+        return new NamespaceContextSnapshot(bindings);
+    }
+
+    private static void addBinding(HashMap bindings, NamespaceContext context, String prefix) {
+        if (prefix == null) {
+            prefix = XMLConstants.DEFAULT_NS_PREFIX;
+        }
+        final String uri = context.getNamespaceURI(prefix);
+        if (uri != null && uri.length() != 0) {
+            bindings.put(prefix, uri);
+        }
+    }
+
+} // class XMLEventAllocatorImpl
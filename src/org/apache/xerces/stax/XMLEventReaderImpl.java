@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.XMLEventAllocator;
+
+/**
+ * <p>An <code>XMLEventReader</code> which allocates its events from an
+ * <code>XMLStreamReader</code>. The stream reader is advanced only when
+ * an event is asked for, so it is always at most one event ahead of the
+ * caller (after <code>peek()</code>).</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XMLEventReaderImpl implements XMLEventReader {
+
+    /** The underlying stream reader. */
+    private final XMLStreamReader fReader;
+
+    /** Creates events from the state of the stream reader. */
+    private final XMLEventAllocator fAllocator;
+
+    /** The event returned by peek(), or null. */
+    private XMLEvent fPeeked;
+
+    /**
+     * True until the event the stream reader was created on has been
+     * allocated; the reader is advanced only after that.
+     */
+    private boolean fAtStart = true;
+
+    XMLEventReaderImpl(XMLStreamReader reader, XMLEventAllocator allocator) {
+        fReader = reader;
+        fAllocator = allocator;
+    }
+
+    //
+    // XMLEventReader methods
+    //
+
+    public XMLEvent nextEvent() throws XMLStreamException {
+        if (fPeeked != null) {
+            final XMLEvent event = fPeeked;
+            fPeeked = null;
+            return event;
+        }
+        if (fAtStart) {
+            fAtStart = false;
+        }
+        else {
+            if (!fReader.hasNext()) {
+                throw new NoSuchElementException("No more events to read.");
+            }
+            fReader.next();
+        }
+        return fAllocator.allocate(fReader);
+    }
+
+    public boolean hasNext() {
+        if (fPeeked != null || fAtStart) {
+            return true;
+        }
+        try {
+            return fReader.hasNext();
+        }
+        catch (XMLStreamException e) {
+            return false;
+        }
+    }
+
+    public XMLEvent peek() throws XMLStreamException {
+        if (fPeeked == null && hasNext()) {
+            fPeeked = nextEvent();
+        }
+        return fPeeked;
+    }
+
+    public String getElementText() throws XMLStreamException {
+        if (fPeeked == null) {
+            fAtStart = false;
+            return fReader.getElementText();
+        }
+        // the stream reader has already moved past the start tag
+        final StringBuffer content = new StringBuffer();
+        XMLEvent event = nextEvent();
+        while (!event.isEndElement()) {
+            if (event.isCharacters()) {
+                content.append(((Characters) event).getData());
+            }
+            else if (event.isEntityReference()) {
+                content.append(fReader.getText());
+            }
+            else if (event.isStartElement()) {
+                throw new XMLStreamException("Element text content may not contain START_ELEMENT.", event.getLocation());
+            }
+            else if (event.isEndDocument()) {
+                throw new XMLStreamException("Unexpected END_DOCUMENT while reading element text.", event.getLocation());
+            }
+            // skip comments and processing instructions
+            event = nextEvent();
+        }
+        return content.toString();
+    }
+
+    public XMLEvent nextTag() throws XMLStreamException {
+        if (fPeeked != null) {
+            final XMLEvent event = fPeeked;
+            fPeeked = null;
+            switch (event.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                case XMLStreamConstants.END_ELEMENT:
+                    return event;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (!((Characters) event).isWhiteSpace()) {
+                        break;
+                    }
+                    // fall through
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    fReader.nextTag();
+                    return fAllocator.allocate(fReader);
+            }
+            throw new XMLStreamException("Expected START_ELEMENT or END_ELEMENT.", event.getLocation());
+        }
+        fAtStart = false;
+        fReader.nextTag();
+        return fAllocator.allocate(fReader);
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return fReader.getProperty(name);
+    }
+
+    public void close() throws XMLStreamException {
+        fReader.close();
+    }
+
+    //
+    // Iterator methods
+    //
+
+    public Object next() {
+        try {
+            return nextEvent();
+        }
+        catch (XMLStreamException e) {
+            final NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+            nse.initCause(e);
+            throw nse;
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+} // class XMLEventReaderImpl
@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.EventFilter;
+import javax.xml.stream.Location;
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLReporter;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.EventReaderDelegate;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.stream.util.XMLEventAllocator;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * <p>An <code>XMLInputFactory</code> which creates stream readers
+ * driven by the Xerces pull parser configuration.</p>
+ *
+ * <p><code>XMLEventReader</code>s are built on these stream readers:
+ * each event is allocated from the stream reader's current state, by
+ * the allocator set on the factory or by {@link XMLEventAllocatorImpl}.
+ * Entity references are always replaced, so
+ * <code>IS_REPLACING_ENTITY_REFERENCES</code> may not be set to false.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XMLInputFactoryImpl extends XMLInputFactory {
+
+    //
+    // Constants
+    //
+
+    /** Feature identifier: namespaces. */
+    private static final String NAMESPACES =
+        Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACES_FEATURE;
+
+    /** Feature identifier: validation. */
+    private static final String VALIDATION =
+        Constants.SAX_FEATURE_PREFIX + Constants.VALIDATION_FEATURE;
+
+    /** Feature identifier: external general entities. */
+    private static final String EXTERNAL_GENERAL_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_GENERAL_ENTITIES_FEATURE;
+
+    /** Feature identifier: external parameter entities. */
+    private static final String EXTERNAL_PARAMETER_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_PARAMETER_ENTITIES_FEATURE;
+
+    /** Feature identifier: disallow doctype declaration. */
+    private static final String DISALLOW_DOCTYPE_DECL =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DISALLOW_DOCTYPE_DECL_FEATURE;
+
+    //
+    // Data
+    //
+
+    /** Property values, keyed by property name. */
+    private final HashMap fProperties = new HashMap();
+
+    //
+    // Constructors
+    //
+
+    public XMLInputFactoryImpl() {
+        fProperties.put(IS_NAMESPACE_AWARE, Boolean.TRUE);
+        fProperties.put(IS_VALIDATING, Boolean.FALSE);
+        fProperties.put(IS_COALESCING, Boolean.FALSE);
+        fProperties.put(IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        fProperties.put(IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.TRUE);
+        fProperties.put(SUPPORT_DTD, Boolean.TRUE);
+        fProperties.put(REPORTER, null);
+        fProperties.put(RESOLVER, null);
+        fProperties.put(ALLOCATOR, null);
+    }
+
+    //
+    // XMLInputFactory methods
+    //
+
+    public XMLStreamReader createXMLStreamReader(Reader reader) throws XMLStreamException {
+        return createXMLStreamReader(null, reader);
+    }
+
+    public XMLStreamReader createXMLStreamReader(Source source) throws XMLStreamException {
+        if (source instanceof StreamSource) {
+            StreamSource streamSource = (StreamSource) source;
+            String systemId = streamSource.getSystemId();
+            if (streamSource.getReader() != null) {
+                return createXMLStreamReader(systemId, streamSource.getReader());
+            }
+            if (streamSource.getInputStream() != null) {
+                return createXMLStreamReader(systemId, streamSource.getInputStream());
+            }
+            if (systemId != null) {
+                return createXMLStreamReader(new XMLInputSource(streamSource.getPublicId(), systemId, null));
+            }
+        }
+        throw new UnsupportedOperationException("Source of type " +
+                (source != null ? source.getClass().getName() : null) + " is not supported.");
+    }
+
+    public XMLStreamReader createXMLStreamReader(InputStream stream) throws XMLStreamException {
+        return createXMLStreamReader(stream, (String) null);
+    }
+
+    public XMLStreamReader createXMLStreamReader(InputStream stream, String encoding) throws XMLStreamException {
+        return createXMLStreamReader(new XMLInputSource(null, null, null, stream, encoding));
+    }
+
+    public XMLStreamReader createXMLStreamReader(String systemId, InputStream stream) throws XMLStreamException {
+        return createXMLStreamReader(new XMLInputSource(null, systemId, null, stream, null));
+    }
+
+    public XMLStreamReader createXMLStreamReader(String systemId, Reader reader) throws XMLStreamException {
+        return createXMLStreamReader(new XMLInputSource(null, systemId, null, reader, null));
+    }
+
+    public XMLEventReader createXMLEventReader(Reader reader) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(reader));
+    }
+
+    public XMLEventReader createXMLEventReader(String systemId, Reader reader) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(systemId, reader));
+    }
+
+    public XMLEventReader createXMLEventReader(XMLStreamReader reader) throws XMLStreamException {
+        if (reader == null) {
+            throw new NullPointerException();
+        }
+        XMLEventAllocator allocator = getEventAllocator();
+        return new XMLEventReaderImpl(reader,
+                (allocator != null) ? allocator.newInstance() : new XMLEventAllocatorImpl());
+    }
+
+    public XMLEventReader createXMLEventReader(Source source) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(source));
+    }
+
+    public XMLEventReader createXMLEventReader(InputStream stream) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(stream));
+    }
+
+    public XMLEventReader createXMLEventReader(InputStream stream, String encoding) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(stream, encoding));
+    }
+
+    public XMLEventReader createXMLEventReader(String systemId, InputStream stream) throws XMLStreamException {
+        return createXMLEventReader(createXMLStreamReader(systemId, stream));
+    }
+
+    public XMLStreamReader createFilteredReader(XMLStreamReader reader, final StreamFilter filter) throws XMLStreamException {
+        XMLStreamReader filtered = new StreamReaderDelegate(reader) {
+            public int next() throws XMLStreamException {
+                int eventType = super.next();
+                while (!filter.accept(this) && hasNext()) {
+                    eventType = super.next();
+                }
+                return eventType;
+            }
+            public int nextTag() throws XMLStreamException {
+                int eventType = super.nextTag();
+                while (!filter.accept(this)) {
+                    eventType = super.nextTag();
+                }
+                return eventType;
+            }
+        };
+        if (!filter.accept(reader) && reader.hasNext()) {
+            filtered.next();
+        }
+        return filtered;
+    }
+
+    public XMLEventReader createFilteredReader(XMLEventReader reader, final EventFilter filter) throws XMLStreamException {
+        return new EventReaderDelegate(reader) {
+            public XMLEvent nextEvent() throws XMLStreamException {
+                XMLEvent event = super.nextEvent();
+                while (!filter.accept(event)) {
+                    event = super.nextEvent();
+                }
+                return event;
+            }
+            public boolean hasNext() {
+                try {
+                    return peek() != null;
+                }
+                catch (XMLStreamException e) {
+                    return false;
+                }
+            }
+            public XMLEvent peek() throws XMLStreamException {
+                XMLEvent event = super.peek();
+                while (event != null && !filter.accept(event)) {
+                    super.nextEvent();
+                    event = super.peek();
+                }
+                return event;
+            }
+            public XMLEvent nextTag() throws XMLStreamException {
+                XMLEvent event = super.nextTag();
+                while (!filter.accept(event)) {
+                    event = super.nextTag();
+                }
+                return event;
+            }
+            public Object next() {
+                try {
+                    return nextEvent();
+                }
+                catch (XMLStreamException e) {
+                    NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+                    nse.initCause(e);
+                    throw nse;
+                }
+            }
+        };
+    }
+
+    public XMLResolver getXMLResolver() {
+        return (XMLResolver) fProperties.get(RESOLVER);
+    }
+
+    public void setXMLResolver(XMLResolver resolver) {
+        fProperties.put(RESOLVER, resolver);
+    }
+
+    public XMLReporter getXMLReporter() {
+        return (XMLReporter) fProperties.get(REPORTER);
+    }
+
+    public void setXMLReporter(XMLReporter reporter) {
+        fProperties.put(REPORTER, reporter);
+    }
+
+    public void setProperty(String name, Object value) throws IllegalArgumentException {
+        if (name == null || !fProperties.containsKey(name)) {
+            throw new IllegalArgumentException("Property " + name + " is not supported.");
+        }
+        if (IS_REPLACING_ENTITY_REFERENCES.equals(name) && Boolean.FALSE.equals(value)) {
+            throw new IllegalArgumentException("Property " + name + " cannot be set to false.");
+        }
+        fProperties.put(name, value);
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        if (name == null || !fProperties.containsKey(name)) {
+            throw new IllegalArgumentException("Property " + name + " is not supported.");
+        }
+        return fProperties.get(name);
+    }
+
+    public boolean isPropertySupported(String name) {
+        return name != null && fProperties.containsKey(name);
+    }
+
+    public void setEventAllocator(XMLEventAllocator allocator) {
+        fProperties.put(ALLOCATOR, allocator);
+    }
+
+    public XMLEventAllocator getEventAllocator() {
+        return (XMLEventAllocator) fProperties.get(ALLOCATOR);
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Creates a stream reader for the input source from the current property values. */
+    private XMLStreamReader createXMLStreamReader(XMLInputSource inputSource) throws XMLStreamException {
+        XML11Configuration configuration = new XML11Configuration();
+        final boolean supportDTD = isTrue(SUPPORT_DTD);
+        final boolean externalEntities = isTrue(IS_SUPPORTING_EXTERNAL_ENTITIES);
+        configuration.setFeature(NAMESPACES, isTrue(IS_NAMESPACE_AWARE));
+        configuration.setFeature(VALIDATION, isTrue(IS_VALIDATING));
+        configuration.setFeature(EXTERNAL_GENERAL_ENTITIES, externalEntities);
+        configuration.setFeature(EXTERNAL_PARAMETER_ENTITIES, externalEntities);
+        configuration.setFeature(DISALLOW_DOCTYPE_DECL, !supportDTD);
+        final XMLResolver resolver = getXMLResolver();
+        if (resolver != null) {
+            configuration.setEntityResolver(new XMLResolverAdapter(resolver));
+        }
+        // fatal errors are reported by throwing XMLStreamException
+        configuration.setErrorHandler(new XMLReporterAdapter(getXMLReporter()));
+        return new XMLStreamReaderImpl(configuration, inputSource,
+                isTrue(IS_COALESCING), new HashMap(fProperties));
+    }
+
+    private boolean isTrue(String name) {
+        return Boolean.TRUE.equals(fProperties.get(name));
+    }
+
+    //
+    // Classes
+    //
+
+    /** Resolves external entities through an <code>XMLResolver</code>. */
+    private static final class XMLResolverAdapter implements XMLEntityResolver {
+
+        private final XMLResolver fResolver;
+
+        XMLResolverAdapter(XMLResolver resolver) {
+            fResolver = resolver;
+        }
+
+        public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier)
+            throws XNIException, IOException {
+            Object entity;
+            try {
+                entity = fResolver.resolveEntity(resourceIdentifier.getPublicId(),
+                        resourceIdentifier.getLiteralSystemId(),
+                        resourceIdentifier.getBaseSystemId(),
+                        resourceIdentifier.getNamespace());
+            }
+            catch (XMLStreamException e) {
+                throw new XNIException(e);
+            }
+            if (entity instanceof InputStream) {
+                return new XMLInputSource(resourceIdentifier.getPublicId(),
+                        resourceIdentifier.getLiteralSystemId(),
+                        resourceIdentifier.getBaseSystemId(), (InputStream) entity, null);
+            }
+            if (entity instanceof Reader) {
+                return new XMLInputSource(resourceIdentifier.getPublicId(),
+                        resourceIdentifier.getLiteralSystemId(),
+                        resourceIdentifier.getBaseSystemId(), (Reader) entity, null);
+            }
+            return null;
+        }
+
+    } // class XMLResolverAdapter
+
+    /**
+     * Reports warnings and errors to an <code>XMLReporter</code>, if any,
+     * and rethrows fatal errors.
+     */
+    private static final class XMLReporterAdapter implements XMLErrorHandler {
+
+        private final XMLReporter fReporter;
+
+        XMLReporterAdapter(XMLReporter reporter) {
+            fReporter = reporter;
+        }
+
+        public void warning(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            report(key, "WARNING", exception);
+        }
+
+        public void error(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            report(key, "ERROR", exception);
+        }
+
+        public void fatalError(String domain, String key, XMLParseException exception)
+            throws XNIException {
+            throw exception;
+        }
+
+        private void report(String key, String type, XMLParseException exception) {
+            if (fReporter == null) {
+                return;
+            }
+            Location location = new ImmutableLocation(exception.getCharacterOffset(),
+                    exception.getColumnNumber(), exception.getLineNumber(),
+                    exception.getPublicId(), exception.getExpandedSystemId());
+            try {
+                fReporter.report(exception.getMessage(), type, key, location);
+            }
+            catch (XMLStreamException e) {
+                throw new XNIException(e);
+            }
+        }
+
+    } // class XMLReporterAdapter
+
+} // class XMLInputFactoryImpl
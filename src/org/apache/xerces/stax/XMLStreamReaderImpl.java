@@ -0,0 +1,905 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.stax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.XMLChar;
+import org.apache.xerces.util.XMLStringBuffer;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLPullParserConfiguration;
+
+/**
+ * <p>A StAX <code>XMLStreamReader</code> driven by an XNI pull parser
+ * configuration.</p>
+ *
+ * <p>Each call to <code>next()</code> advances the scanner through
+ * <code>XMLPullParserConfiguration.parse(false)</code> only as far as is
+ * needed to produce the next event. The XNI events produced by a scanner
+ * step are recorded in a small queue of reusable event objects; character
+ * data is copied from the scanner buffers into a reusable character buffer
+ * per event, so that streaming a document of any size allocates no
+ * strings for its content unless <code>getText()</code> is called. Use
+ * <code>getTextCharacters()</code>, <code>getTextStart()</code> and
+ * <code>getTextLength()</code> to read the character data in place.</p>
+ *
+ * <p>Entity references are always replaced. The DTD event reports the
+ * document type declaration without its internal subset.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class XMLStreamReaderImpl implements XMLStreamReader {
+
+    /** Initial number of events in the event queue. */
+    private static final int INITIAL_QUEUE_SIZE = 4;
+
+    //
+    // Data
+    //
+
+    /** The configuration which drives the scanner. */
+    private final XMLPullParserConfiguration fConfiguration;
+
+    /** Whether adjacent character data is reported as a single event. */
+    private final boolean fCoalescing;
+
+    /** Properties of the factory which created this reader. */
+    private final Map fProperties;
+
+    /** Queue of recorded events; the current event is fEvents[fEventHead - 1]. */
+    private Event[] fEvents = new Event[INITIAL_QUEUE_SIZE];
+    private int fEventHead = 0;
+    private int fEventTail = 0;
+
+    /** The current event. */
+    private Event fCurrent;
+
+    /** Whether the scanner has more of the document to parse. */
+    private boolean fMoreToParse = true;
+
+    /** Namespace bindings in scope at the current event. */
+    private final NamespaceSupport fNamespaceSupport = new NamespaceSupport();
+
+    /** Read-only view of the namespace bindings. */
+    private final NamespaceContext fNamespaceContext = new NamespaceContextImpl();
+
+    // document information
+
+    private XMLLocator fLocator;
+    private String fInputEncoding;
+    private String fVersion;
+    private String fEncoding;
+    private String fStandalone;
+
+    /** Receives the XNI events. */
+    private final DocumentHandler fDocumentHandler = new DocumentHandler();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Creates a reader for the specified input source, positioned
+     * on the START_DOCUMENT event.
+     *
+     * @param configuration the configuration to parse with; its document
+     * handler is replaced by this reader
+     * @param inputSource the document to read
+     * @param coalescing whether adjacent character data should be reported
+     * as a single event
+     * @param properties the properties returned by <code>getProperty()</code>
+     */
+    public XMLStreamReaderImpl(XMLPullParserConfiguration configuration,
+            XMLInputSource inputSource, boolean coalescing, Map properties) throws XMLStreamException {
+        fConfiguration = configuration;
+        fCoalescing = coalescing;
+        fProperties = properties;
+        // binds the xml and xmlns prefixes, which getAllPrefixes() expects
+        fNamespaceSupport.reset();
+        fConfiguration.setDocumentHandler(fDocumentHandler);
+        try {
+            fConfiguration.setInputSource(inputSource);
+        }
+        catch (IOException e) {
+            throw new XMLStreamException(e.getMessage(), e);
+        }
+        catch (XNIException e) {
+            throw toXMLStreamException(e);
+        }
+        // Make sure the XML declaration has been scanned before
+        // reporting the START_DOCUMENT event.
+        do {
+            pull();
+        }
+        while (fEventTail < 2 && fMoreToParse);
+        if (fEventTail == 0) {
+            throw new XMLStreamException("No document to read.");
+        }
+        fCurrent = fEvents[fEventHead++];
+    }
+
+    //
+    // XMLStreamReader methods
+    //
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Property name cannot be null.");
+        }
+        return fProperties.get(name);
+    }
+
+    public int next() throws XMLStreamException {
+        if (fCurrent.type == END_DOCUMENT) {
+            throw new NoSuchElementException("No more events to read.");
+        }
+        if (fCurrent.type == END_ELEMENT) {
+            fNamespaceSupport.popContext();
+        }
+        if (fEventHead == fEventTail) {
+            fEventHead = fEventTail = 0;
+            while (fEventTail == 0 && fMoreToParse) {
+                pull();
+            }
+            if (fEventTail == 0) {
+                throw new XMLStreamException("Unexpected end of document.", getLocation());
+            }
+        }
+        fCurrent = fEvents[fEventHead++];
+        if (fCoalescing && isText(fCurrent.type)) {
+            coalesce();
+        }
+        if (fCurrent.type == START_ELEMENT) {
+            fNamespaceSupport.pushContext();
+            for (int i = 0; i < fCurrent.namespaceCount; ++i) {
+                fNamespaceSupport.declarePrefix(fCurrent.namespacePrefixes[i], fCurrent.namespaceURIs[i]);
+            }
+        }
+        return fCurrent.type;
+    }
+
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (type != fCurrent.type) {
+            throw new XMLStreamException("Event type mismatch: expected " + type +
+                    " but found " + fCurrent.type + ".", getLocation());
+        }
+        if (namespaceURI != null) {
+            String uri = getNamespaceURI();
+            if (!namespaceURI.equals(uri == null ? XMLConstants.NULL_NS_URI : uri)) {
+                throw new XMLStreamException("Namespace URI mismatch: expected '" + namespaceURI +
+                        "' but found '" + uri + "'.", getLocation());
+            }
+        }
+        if (localName != null && !localName.equals(getLocalName())) {
+            throw new XMLStreamException("Local name mismatch: expected '" + localName +
+                    "' but found '" + getLocalName() + "'.", getLocation());
+        }
+    }
+
+    public String getElementText() throws XMLStreamException {
+        if (fCurrent.type != START_ELEMENT) {
+            throw new XMLStreamException("Current event is not START_ELEMENT.", getLocation());
+        }
+        XMLStringBuffer content = new XMLStringBuffer();
+        int eventType = next();
+        while (eventType != END_ELEMENT) {
+            if (eventType == CHARACTERS || eventType == CDATA
+                    || eventType == SPACE || eventType == ENTITY_REFERENCE) {
+                content.append(fCurrent.text);
+            }
+            else if (eventType == START_ELEMENT) {
+                throw new XMLStreamException("Element text content may not contain START_ELEMENT.", getLocation());
+            }
+            else if (eventType == END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected END_DOCUMENT while reading element text.", getLocation());
+            }
+            // skip comments and processing instructions
+            eventType = next();
+        }
+        return content.toString();
+    }
+
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while ((eventType == CHARACTERS && isWhiteSpace())
+                || (eventType == CDATA && isWhiteSpace())
+                || eventType == SPACE
+                || eventType == PROCESSING_INSTRUCTION
+                || eventType == COMMENT) {
+            eventType = next();
+        }
+        if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+            throw new XMLStreamException("Expected START_ELEMENT or END_ELEMENT.", getLocation());
+        }
+        return eventType;
+    }
+
+    public boolean hasNext() throws XMLStreamException {
+        return fCurrent.type != END_DOCUMENT;
+    }
+
+    public void close() throws XMLStreamException {
+        fConfiguration.cleanup();
+        fMoreToParse = false;
+    }
+
+    public String getNamespaceURI(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix cannot be null.");
+        }
+        return fNamespaceContext.getNamespaceURI(prefix);
+    }
+
+    public boolean isStartElement() {
+        return fCurrent.type == START_ELEMENT;
+    }
+
+    public boolean isEndElement() {
+        return fCurrent.type == END_ELEMENT;
+    }
+
+    public boolean isCharacters() {
+        return fCurrent.type == CHARACTERS;
+    }
+
+    public boolean isWhiteSpace() {
+        if (!isText(fCurrent.type)) {
+            return false;
+        }
+        final XMLString text = fCurrent.text;
+        final int end = text.offset + text.length;
+        for (int i = text.offset; i < end; ++i) {
+            if (!XMLChar.isSpace(text.ch[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getAttributeValue(String namespaceURI, String localName) {
+        checkAttributeEvent();
+        for (int i = 0; i < fCurrent.attributeCount; ++i) {
+            final org.apache.xerces.xni.QName name = fCurrent.attributeNames[i];
+            if (localName.equals(name.localpart) && (namespaceURI == null ||
+                    namespaceURI.equals(name.uri == null ? XMLConstants.NULL_NS_URI : name.uri))) {
+                return fCurrent.attributeValues[i];
+            }
+        }
+        return null;
+    }
+
+    public int getAttributeCount() {
+        checkAttributeEvent();
+        return fCurrent.attributeCount;
+    }
+
+    public QName getAttributeName(int index) {
+        checkAttributeEvent();
+        return toQName(fCurrent.attributeNames[index]);
+    }
+
+    public String getAttributeNamespace(int index) {
+        checkAttributeEvent();
+        return fCurrent.attributeNames[index].uri;
+    }
+
+    public String getAttributeLocalName(int index) {
+        checkAttributeEvent();
+        return fCurrent.attributeNames[index].localpart;
+    }
+
+    public String getAttributePrefix(int index) {
+        checkAttributeEvent();
+        final String prefix = fCurrent.attributeNames[index].prefix;
+        return (prefix != null) ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    public String getAttributeType(int index) {
+        checkAttributeEvent();
+        return fCurrent.attributeTypes[index];
+    }
+
+    public String getAttributeValue(int index) {
+        checkAttributeEvent();
+        return fCurrent.attributeValues[index];
+    }
+
+    public boolean isAttributeSpecified(int index) {
+        checkAttributeEvent();
+        return fCurrent.attributeSpecified[index];
+    }
+
+    public int getNamespaceCount() {
+        checkNamespaceEvent();
+        return fNamespaceSupport.getDeclaredPrefixCount();
+    }
+
+    public String getNamespacePrefix(int index) {
+        checkNamespaceEvent();
+        final String prefix = fNamespaceSupport.getDeclaredPrefixAt(index);
+        return (prefix.length() != 0) ? prefix : null;
+    }
+
+    public String getNamespaceURI(int index) {
+        checkNamespaceEvent();
+        return fNamespaceSupport.getURI(fNamespaceSupport.getDeclaredPrefixAt(index));
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return fNamespaceContext;
+    }
+
+    /**
+     * Returns a copy of the namespace bindings in scope, which is not
+     * affected by later events.
+     */
+    NamespaceContext getNamespaceContextSnapshot() {
+        final HashMap bindings = new HashMap();
+        final Enumeration e = fNamespaceSupport.getAllPrefixes();
+        while (e.hasMoreElements()) {
+            final String prefix = (String) e.nextElement();
+            final String uri = fNamespaceSupport.getURI(prefix);
+            if (uri != null) {
+                bindings.put(prefix, uri);
+            }
+        }
+        return new NamespaceContextSnapshot(bindings);
+    }
+
+    public int getEventType() {
+        return fCurrent.type;
+    }
+
+    public String getText() {
+        checkTextEvent();
+        return fCurrent.text.toString();
+    }
+
+    public char[] getTextCharacters() {
+        checkTextEvent();
+        return fCurrent.text.ch;
+    }
+
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) throws XMLStreamException {
+        checkTextEvent();
+        if (target == null) {
+            throw new NullPointerException();
+        }
+        if (targetStart < 0 || length < 0 || sourceStart < 0
+                || targetStart > target.length || targetStart + length > target.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        final XMLString text = fCurrent.text;
+        final int count = Math.min(length, text.length - sourceStart);
+        if (count <= 0) {
+            return 0;
+        }
+        System.arraycopy(text.ch, text.offset + sourceStart, target, targetStart, count);
+        return count;
+    }
+
+    public int getTextStart() {
+        checkTextEvent();
+        return fCurrent.text.offset;
+    }
+
+    public int getTextLength() {
+        checkTextEvent();
+        return fCurrent.text.length;
+    }
+
+    public String getEncoding() {
+        return fInputEncoding;
+    }
+
+    public boolean hasText() {
+        final int type = fCurrent.type;
+        return isText(type) || type == COMMENT || type == DTD || type == ENTITY_REFERENCE;
+    }
+
+    public Location getLocation() {
+        final Event event = fCurrent;
+        if (event == null) {
+            return EmptyLocation.getInstance();
+        }
+        return new ImmutableLocation(event.characterOffset, event.columnNumber,
+                event.lineNumber, event.publicId, event.systemId);
+    }
+
+    public QName getName() {
+        checkNameEvent();
+        return toQName(fCurrent.name);
+    }
+
+    public String getLocalName() {
+        checkNameEvent();
+        return fCurrent.name.localpart;
+    }
+
+    public boolean hasName() {
+        return fCurrent.type == START_ELEMENT || fCurrent.type == END_ELEMENT;
+    }
+
+    public String getNamespaceURI() {
+        if (hasName()) {
+            return fCurrent.name.uri;
+        }
+        return null;
+    }
+
+    public String getPrefix() {
+        if (hasName()) {
+            final String prefix = fCurrent.name.prefix;
+            return (prefix != null) ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+        }
+        return null;
+    }
+
+    public String getVersion() {
+        return fVersion;
+    }
+
+    public boolean isStandalone() {
+        return "yes".equals(fStandalone);
+    }
+
+    public boolean standaloneSet() {
+        return fStandalone != null;
+    }
+
+    public String getCharacterEncodingScheme() {
+        return fEncoding;
+    }
+
+    public String getPITarget() {
+        return (fCurrent.type == PROCESSING_INSTRUCTION) ? fCurrent.target : null;
+    }
+
+    public String getPIData() {
+        return (fCurrent.type == PROCESSING_INSTRUCTION) ? fCurrent.text.toString() : null;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Performs one step of the scanner, recording the events it produces. */
+    private void pull() throws XMLStreamException {
+        try {
+            fMoreToParse = fConfiguration.parse(false);
+        }
+        catch (IOException e) {
+            fMoreToParse = false;
+            throw new XMLStreamException(e.getMessage(), getLocation(), e);
+        }
+        catch (XNIException e) {
+            fMoreToParse = false;
+            throw toXMLStreamException(e);
+        }
+    }
+
+    /**
+     * Merges the character data events following the current one
+     * into it, reading ahead until an event of another type is found.
+     */
+    private void coalesce() throws XMLStreamException {
+        int index = fEventHead - 1;
+        while (true) {
+            if (fEventHead == fEventTail) {
+                if (!fMoreToParse) {
+                    return;
+                }
+                // Move the current event to the front of the queue
+                // before reading ahead, so that it isn't reused.
+                if (index != 0) {
+                    fEvents[index] = fEvents[0];
+                    fEvents[0] = fCurrent;
+                    index = 0;
+                }
+                fEventHead = fEventTail = 1;
+                pull();
+                continue;
+            }
+            final Event next = fEvents[fEventHead];
+            if (!isText(next.type)) {
+                return;
+            }
+            fCurrent.text.append(next.text);
+            fCurrent.type = CHARACTERS;
+            ++fEventHead;
+        }
+    }
+
+    /** Returns a reusable event at the end of the queue. */
+    private Event addEvent(int type) {
+        if (fEventTail == fEvents.length) {
+            Event[] events = new Event[fEvents.length << 1];
+            System.arraycopy(fEvents, 0, events, 0, fEvents.length);
+            fEvents = events;
+        }
+        Event event = fEvents[fEventTail];
+        if (event == null) {
+            event = fEvents[fEventTail] = new Event();
+        }
+        ++fEventTail;
+        event.type = type;
+        event.attributeCount = 0;
+        event.namespaceCount = 0;
+        event.target = null;
+        event.text.clear();
+        if (fLocator != null) {
+            event.lineNumber = fLocator.getLineNumber();
+            event.columnNumber = fLocator.getColumnNumber();
+            event.characterOffset = fLocator.getCharacterOffset();
+            event.publicId = fLocator.getPublicId();
+            event.systemId = fLocator.getExpandedSystemId();
+        }
+        return event;
+    }
+
+    /** Adds character data, appending it to the last event if it is of the same type. */
+    private void addText(int type, XMLString text) {
+        if (fEventTail > fEventHead && fEvents[fEventTail - 1].type == type) {
+            fEvents[fEventTail - 1].text.append(text);
+        }
+        else {
+            addEvent(type).text.append(text);
+        }
+    }
+
+    private static boolean isText(int type) {
+        return type == CHARACTERS || type == CDATA || type == SPACE;
+    }
+
+    private static QName toQName(org.apache.xerces.xni.QName name) {
+        return new QName(name.uri != null ? name.uri : XMLConstants.NULL_NS_URI,
+                name.localpart, name.prefix != null ? name.prefix : XMLConstants.DEFAULT_NS_PREFIX);
+    }
+
+    private XMLStreamException toXMLStreamException(XNIException e) {
+        Exception cause = e.getException();
+        if (cause instanceof XMLStreamException) {
+            return (XMLStreamException) cause;
+        }
+        Location location = getLocation();
+        if (e instanceof XMLParseException) {
+            XMLParseException pe = (XMLParseException) e;
+            location = new ImmutableLocation(pe.getCharacterOffset(), pe.getColumnNumber(),
+                    pe.getLineNumber(), pe.getPublicId(), pe.getExpandedSystemId());
+        }
+        return new XMLStreamException(e.getMessage(), location, cause != null ? cause : e);
+    }
+
+    private void checkAttributeEvent() {
+        if (fCurrent.type != START_ELEMENT && fCurrent.type != ATTRIBUTE) {
+            throw new IllegalStateException("Current event is not START_ELEMENT or ATTRIBUTE.");
+        }
+    }
+
+    private void checkNamespaceEvent() {
+        if (fCurrent.type != START_ELEMENT && fCurrent.type != END_ELEMENT && fCurrent.type != NAMESPACE) {
+            throw new IllegalStateException("Current event is not START_ELEMENT, END_ELEMENT or NAMESPACE.");
+        }
+    }
+
+    private void checkNameEvent() {
+        if (!hasName()) {
+            throw new IllegalStateException("Current event is not START_ELEMENT or END_ELEMENT.");
+        }
+    }
+
+    private void checkTextEvent() {
+        if (!hasText()) {
+            throw new IllegalStateException("Current event has no text.");
+        }
+    }
+
+    //
+    // Classes
+    //
+
+    /** A recorded event. Instances are reused once the reader has moved past them. */
+    private static final class Event {
+
+        int type;
+
+        // START_ELEMENT and END_ELEMENT
+        final org.apache.xerces.xni.QName name = new org.apache.xerces.xni.QName();
+        int attributeCount;
+        org.apache.xerces.xni.QName[] attributeNames = new org.apache.xerces.xni.QName[0];
+        String[] attributeTypes = new String[0];
+        String[] attributeValues = new String[0];
+        boolean[] attributeSpecified = new boolean[0];
+        int namespaceCount;
+        String[] namespacePrefixes = new String[0];
+        String[] namespaceURIs = new String[0];
+
+        // character data, comments, processing instruction data and DTD
+        final XMLStringBuffer text = new XMLStringBuffer();
+        String target;
+
+        // location
+        int lineNumber = -1;
+        int columnNumber = -1;
+        int characterOffset = -1;
+        String publicId;
+        String systemId;
+
+        void addAttribute(org.apache.xerces.xni.QName attrName, String type, String value, boolean specified) {
+            if (attributeCount == attributeNames.length) {
+                final int size = attributeCount * 2 + 4;
+                org.apache.xerces.xni.QName[] names = new org.apache.xerces.xni.QName[size];
+                System.arraycopy(attributeNames, 0, names, 0, attributeCount);
+                attributeNames = names;
+                String[] types = new String[size];
+                System.arraycopy(attributeTypes, 0, types, 0, attributeCount);
+                attributeTypes = types;
+                String[] values = new String[size];
+                System.arraycopy(attributeValues, 0, values, 0, attributeCount);
+                attributeValues = values;
+                boolean[] specifiedFlags = new boolean[size];
+                System.arraycopy(attributeSpecified, 0, specifiedFlags, 0, attributeCount);
+                attributeSpecified = specifiedFlags;
+            }
+            if (attributeNames[attributeCount] == null) {
+                attributeNames[attributeCount] = new org.apache.xerces.xni.QName();
+            }
+            attributeNames[attributeCount].setValues(attrName);
+            attributeTypes[attributeCount] = type;
+            attributeValues[attributeCount] = value;
+            attributeSpecified[attributeCount] = specified;
+            ++attributeCount;
+        }
+
+        void addNamespace(String prefix, String uri) {
+            if (namespaceCount == namespacePrefixes.length) {
+                final int size = namespaceCount * 2 + 2;
+                String[] prefixes = new String[size];
+                System.arraycopy(namespacePrefixes, 0, prefixes, 0, namespaceCount);
+                namespacePrefixes = prefixes;
+                String[] uris = new String[size];
+                System.arraycopy(namespaceURIs, 0, uris, 0, namespaceCount);
+                namespaceURIs = uris;
+            }
+            namespacePrefixes[namespaceCount] = prefix;
+            namespaceURIs[namespaceCount] = uri;
+            ++namespaceCount;
+        }
+
+    } // class Event
+
+    /** Records the XNI events produced by the scanner. */
+    private final class DocumentHandler implements XMLDocumentHandler {
+
+        /** The namespace context of the scanner. */
+        private org.apache.xerces.xni.NamespaceContext fScannerNamespaceContext;
+
+        /** Whether the scanner is within a CDATA section. */
+        private boolean fInCDATA;
+
+        private XMLDocumentSource fDocumentSource;
+
+        public void startDocument(XMLLocator locator, String encoding,
+                org.apache.xerces.xni.NamespaceContext namespaceContext, Augmentations augs)
+                throws XNIException {
+            fLocator = locator;
+            fInputEncoding = encoding;
+            fScannerNamespaceContext = namespaceContext;
+            fInCDATA = false;
+            addEvent(START_DOCUMENT);
+        }
+
+        public void xmlDecl(String version, String encoding, String standalone,
+                Augmentations augs) throws XNIException {
+            fVersion = version;
+            fEncoding = encoding;
+            fStandalone = standalone;
+        }
+
+        public void doctypeDecl(String rootElement, String publicId, String systemId,
+                Augmentations augs) throws XNIException {
+            final XMLStringBuffer text = addEvent(DTD).text;
+            text.append("<!DOCTYPE ");
+            text.append(rootElement);
+            if (publicId != null) {
+                text.append(" PUBLIC \"");
+                text.append(publicId);
+                text.append("\" \"");
+                text.append(systemId);
+                text.append('"');
+            }
+            else if (systemId != null) {
+                text.append(" SYSTEM \"");
+                text.append(systemId);
+                text.append('"');
+            }
+            text.append('>');
+        }
+
+        public void comment(XMLString text, Augmentations augs) throws XNIException {
+            addEvent(COMMENT).text.append(text);
+        }
+
+        public void processingInstruction(String target, XMLString data,
+                Augmentations augs) throws XNIException {
+            final Event event = addEvent(PROCESSING_INSTRUCTION);
+            event.target = target;
+            if (data != null && data.length > 0) {
+                event.text.append(data);
+            }
+        }
+
+        public void startElement(org.apache.xerces.xni.QName element, XMLAttributes attributes,
+                Augmentations augs) throws XNIException {
+            final Event event = addEvent(START_ELEMENT);
+            event.name.setValues(element);
+            final int length = attributes.getLength();
+            for (int i = 0; i < length; ++i) {
+                attributes.getName(i, event.name);
+                // namespace declarations are not attributes in StAX
+                if (event.name.uri != org.apache.xerces.xni.NamespaceContext.XMLNS_URI) {
+                    event.addAttribute(event.name, attributes.getType(i),
+                            attributes.getValue(i), attributes.isSpecified(i));
+                }
+            }
+            event.name.setValues(element);
+            if (fScannerNamespaceContext != null) {
+                final int count = fScannerNamespaceContext.getDeclaredPrefixCount();
+                for (int i = 0; i < count; ++i) {
+                    final String prefix = fScannerNamespaceContext.getDeclaredPrefixAt(i);
+                    event.addNamespace(prefix, fScannerNamespaceContext.getURI(prefix));
+                }
+            }
+        }
+
+        public void emptyElement(org.apache.xerces.xni.QName element, XMLAttributes attributes,
+                Augmentations augs) throws XNIException {
+            startElement(element, attributes, augs);
+            addEvent(END_ELEMENT).name.setValues(element);
+        }
+
+        public void startGeneralEntity(String name, XMLResourceIdentifier identifier,
+                String encoding, Augmentations augs) throws XNIException {}
+
+        public void textDecl(String version, String encoding, Augmentations augs)
+            throws XNIException {}
+
+        public void endGeneralEntity(String name, Augmentations augs) throws XNIException {}
+
+        public void characters(XMLString text, Augmentations augs) throws XNIException {
+            if (text.length > 0) {
+                addText(fInCDATA ? CDATA : CHARACTERS, text);
+            }
+        }
+
+        public void ignorableWhitespace(XMLString text, Augmentations augs) throws XNIException {
+            if (text.length > 0) {
+                addText(SPACE, text);
+            }
+        }
+
+        public void endElement(org.apache.xerces.xni.QName element, Augmentations augs)
+            throws XNIException {
+            addEvent(END_ELEMENT).name.setValues(element);
+        }
+
+        public void startCDATA(Augmentations augs) throws XNIException {
+            fInCDATA = true;
+        }
+
+        public void endCDATA(Augmentations augs) throws XNIException {
+            fInCDATA = false;
+        }
+
+        public void endDocument(Augmentations augs) throws XNIException {
+            addEvent(END_DOCUMENT);
+        }
+
+        public void setDocumentSource(XMLDocumentSource source) {
+            fDocumentSource = source;
+        }
+
+        public XMLDocumentSource getDocumentSource() {
+            return fDocumentSource;
+        }
+
+    } // class DocumentHandler
+
+    /** A read-only view of the namespace bindings in scope. */
+    private final class NamespaceContextImpl implements NamespaceContext {
+
+        public String getNamespaceURI(String prefix) {
+            if (prefix == null) {
+                throw new IllegalArgumentException("Prefix cannot be null.");
+            }
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            // symbols are interned
+            final String uri = fNamespaceSupport.getURI(prefix.intern());
+            return (uri != null) ? uri : XMLConstants.NULL_NS_URI;
+        }
+
+        public String getPrefix(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("Namespace URI cannot be null.");
+            }
+            if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+                return XMLConstants.XML_NS_PREFIX;
+            }
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+                return XMLConstants.XMLNS_ATTRIBUTE;
+            }
+            return fNamespaceSupport.getPrefix(namespaceURI.intern());
+        }
+
+        public Iterator getPrefixes(String namespaceURI) {
+            if (namespaceURI == null) {
+                throw new IllegalArgumentException("Namespace URI cannot be null.");
+            }
+            final ArrayList prefixes = new ArrayList();
+            if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+                prefixes.add(XMLConstants.XML_NS_PREFIX);
+            }
+            else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+                prefixes.add(XMLConstants.XMLNS_ATTRIBUTE);
+            }
+            else {
+                final String uri = namespaceURI.intern();
+                final Enumeration e = fNamespaceSupport.getAllPrefixes();
+                while (e.hasMoreElements()) {
+                    final String prefix = (String) e.nextElement();
+                    if (fNamespaceSupport.getURI(prefix) == uri) {
+                        prefixes.add(prefix);
+                    }
+                }
+            }
+            return prefixes.iterator();
+        }
+
+    } // class NamespaceContextImpl
+
+} // class XMLStreamReaderImpl
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * This class represents an input source for an XML resource
+ * whose bytes are available in a <code>ByteBuffer</code>, such
+ * as a memory mapped file. The entity manager detects the encoding
+ * and decodes the entity directly from the remaining bytes of the
+ * buffer, without opening a stream for the system identifier.
+ * The position of the buffer passed in is never modified, so the
+ * same buffer may be parsed more than once.
+ * <p>
+ * A byte stream or character stream set on this input source
+ * takes precedence over the buffer.
+ *
+ * @version $Id$
+ */
+public final class ByteBufferInputSource extends XMLInputSource {
+
+    //
+    // Data
+    //
+
+    /** The bytes of the entity. **/
+    protected ByteBuffer fByteBuffer;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs an input source from a byte buffer.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param byteBuffer   The bytes of the entity, from the position
+     *                     to the limit of the buffer.
+     * @param encoding     The encoding of the bytes, if known.
+     */
+    public ByteBufferInputSource(String publicId, String systemId,
+            String baseSystemId, ByteBuffer byteBuffer, String encoding) {
+        super(publicId, systemId, baseSystemId);
+        fByteBuffer = byteBuffer;
+        setEncoding(encoding);
+    } // <init>(String,String,String,ByteBuffer,String)
+
+    /**
+     * Constructs an input source which maps the whole of the
+     * specified file channel into memory. The channel may be
+     * closed once the input source has been constructed.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param channel      The channel of the file, which must be
+     *                     open for reading.
+     * @param encoding     The encoding of the file, if known.
+     *
+     * @throws IOException if the file cannot be mapped; files larger
+     * than 2 GB cannot be mapped into a single buffer.
+     */
+    public ByteBufferInputSource(String publicId, String systemId,
+            String baseSystemId, FileChannel channel, String encoding) throws IOException {
+        this(publicId, systemId, baseSystemId, map(channel), encoding);
+    } // <init>(String,String,String,FileChannel,String)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets the bytes of the entity.
+     *
+     * @param byteBuffer The bytes of the entity, from the position
+     *                   to the limit of the buffer.
+     */
+    public void setByteBuffer(ByteBuffer byteBuffer) {
+        fByteBuffer = byteBuffer;
+    } // setByteBuffer(ByteBuffer)
+
+    /** Returns the bytes of the entity. */
+    public ByteBuffer getByteBuffer() {
+        return fByteBuffer;
+    } // getByteBuffer():ByteBuffer
+
+    //
+    // Private static methods
+    //
+
+    /** Maps the whole of the channel into memory. */
+    private static ByteBuffer map(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to be mapped: " + size + " bytes.");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } // map(FileChannel):ByteBuffer
+
+} // class ByteBufferInputSource
@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+
+/**
+ * A thread-safe grammar pool optimized for pools which are read far
+ * more often than they are modified, such as a pool shared by all of the
+ * validators of an application once its grammars have been loaded.
+ * <p>
+ * Like <code>XMLGrammarPoolImpl</code>, it stores grammars keyed by their
+ * grammar description. The grammars are held in an immutable table which
+ * is replaced as a whole each time a grammar is added or removed
+ * (copy-on-write), so retrieving grammars never takes a lock and never
+ * waits for a writer. Modifications are serialized and cost time linear
+ * in the number of grammars in the pool.
+ * <p>
+ * The pool does not need to be wrapped in a synchronized grammar pool
+ * to be shared between threads. It counts the modifications made to it
+ * and how many of them had to wait for another modification to complete;
+ * since reads never lock, these are the only points of contention.
+ *
+ * @see XMLGrammarPoolImpl
+ *
+ * @version $Id$
+ */
+public class ConcurrentGrammarPool implements XMLGrammarPool {
+
+    //
+    // Constants
+    //
+
+    /** An empty table. */
+    private static final Table EMPTY_TABLE = new Table(new Entry[0], new Entry[1]);
+
+    //
+    // Data
+    //
+
+    /** The current table of grammars. */
+    private volatile Table fTable = EMPTY_TABLE;
+
+    /** Serializes modifications of the table. */
+    private final ReentrantLock fWriteLock = new ReentrantLock();
+
+    /** Whether this pool is locked. */
+    private volatile boolean fPoolIsLocked = false;
+
+    /** Number of modifications of the table. Guarded by the write lock. */
+    private long fWriteCount = 0;
+
+    /**
+     * Number of modifications which had to wait for another one to
+     * complete. Guarded by the write lock.
+     */
+    private long fContendedWriteCount = 0;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an empty grammar pool. */
+    public ConcurrentGrammarPool() {
+    } // <init>()
+
+    /**
+     * Constructs a grammar pool holding the grammars of the specified
+     * grammars, for instance the grammars which have been loaded into an
+     * <code>XMLGrammarPoolImpl</code>.
+     */
+    public ConcurrentGrammarPool(Grammar[] grammars) {
+        cacheGrammars(null, grammars);
+    } // <init>(Grammar[])
+
+    //
+    // XMLGrammarPool methods
+    //
+
+    /* <p> Retrieve the initial known set of grammars. This method is
+     * called by a validator before the validation starts. The application
+     * can provide an initial set of grammars available to the current
+     * validation attempt. </p>
+     *
+     * @param grammarType The type of the grammar, from the
+     *  		  <code>org.apache.xerces.xni.grammars.XMLGrammarDescription</code>
+     *  		  interface.
+     * @return 		  The set of grammars the validator may put in its "bucket"
+     */
+    public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+        final Entry[] entries = fTable.entries;
+        Grammar[] tempGrammars = new Grammar[entries.length];
+        int pos = 0;
+        for (int i = 0; i < entries.length; ++i) {
+            if (entries[i].desc.getGrammarType().equals(grammarType)) {
+                tempGrammars[pos++] = entries[i].grammar;
+            }
+        }
+        if (pos == tempGrammars.length) {
+            return tempGrammars;
+        }
+        Grammar[] toReturn = new Grammar[pos];
+        System.arraycopy(tempGrammars, 0, toReturn, 0, pos);
+        return toReturn;
+    } // retrieveInitialGrammarSet (String): Grammar[]
+
+    /* <p> Return the final set of grammars that the validator ended up
+     * with. This method is called after the validation finishes. The
+     * application may then choose to cache some of the returned grammars.</p>
+     * <p>In this implementation, we make our choice based on whether this object
+     * is "locked"--that is, whether the application has instructed
+     * us not to accept any new grammars.</p>
+     *
+     * @param grammarType The type of the grammars being returned;
+     * @param grammars 	  An array containing the set of grammars being
+     *  		  returned; order is not significant.
+     */
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        if (fPoolIsLocked || grammars.length == 0) {
+            return;
+        }
+        acquireWriteLock();
+        try {
+            Table table = fTable;
+            for (int i = 0; i < grammars.length; ++i) {
+                table = put(table, grammars[i]);
+            }
+            fTable = table;
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // cacheGrammars(String, Grammar[]);
+
+    /* <p> This method requests that the application retrieve a grammar
+     * corresponding to the given GrammarIdentifier from its cache.
+     * If it cannot do so it must return null; the parser will then
+     * call the EntityResolver. </p>
+     *
+     * @param desc The description of the Grammar being requested.
+     * @return     The Grammar corresponding to this description or null if
+     *  	   no such Grammar is known.
+     */
+    public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+        return getGrammar(desc);
+    } // retrieveGrammar(XMLGrammarDescription):  Grammar
+
+    /* <p> Sets this grammar pool to a "locked" state--i.e.,
+     * no new grammars will be added until it is "unlocked".
+     */
+    public void lockPool() {
+        fPoolIsLocked = true;
+    } // lockPool()
+
+    /* <p> Sets this grammar pool to an "unlocked" state--i.e.,
+     * new grammars will be added when putGrammar or cacheGrammars
+     * are called.
+     */
+    public void unlockPool() {
+        fPoolIsLocked = false;
+    } // unlockPool()
+
+    /*
+     * <p>This method clears the pool-i.e., removes references
+     * to all the grammars in it.</p>
+     */
+    public void clear() {
+        acquireWriteLock();
+        try {
+            fTable = EMPTY_TABLE;
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // clear()
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Puts the specified grammar into the grammar pool and associates it to
+     * its grammar description, replacing any grammar with an equal
+     * description.
+     *
+     * @param grammar The Grammar.
+     */
+    public void putGrammar(Grammar grammar) {
+        if (fPoolIsLocked) {
+            return;
+        }
+        acquireWriteLock();
+        try {
+            fTable = put(fTable, grammar);
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // putGrammar(Grammar)
+
+    /**
+     * Returns the grammar associated to the specified grammar description.
+     *
+     * @param desc The Grammar Description.
+     */
+    public Grammar getGrammar(XMLGrammarDescription desc) {
+        final Entry entry = find(fTable, desc, hashCode(desc));
+        return (entry != null) ? entry.grammar : null;
+    } // getGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Removes the grammar associated to the specified grammar description from the
+     * grammar pool and returns the removed grammar.
+     *
+     * @param desc The Grammar Description.
+     * @return     The removed grammar.
+     */
+    public Grammar removeGrammar(XMLGrammarDescription desc) {
+        acquireWriteLock();
+        try {
+            final Table table = fTable;
+            final Entry entry = find(table, desc, hashCode(desc));
+            if (entry == null) {
+                return null;
+            }
+            final Entry[] entries = new Entry[table.entries.length - 1];
+            for (int i = 0, j = 0; i < table.entries.length; ++i) {
+                if (table.entries[i] != entry) {
+                    entries[j++] = table.entries[i];
+                }
+            }
+            fTable = newTable(entries);
+            return entry.grammar;
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // removeGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Returns true if the grammar pool contains a grammar associated
+     * to the specified grammar description.
+     *
+     * @param desc The Grammar Description.
+     */
+    public boolean containsGrammar(XMLGrammarDescription desc) {
+        return find(fTable, desc, hashCode(desc)) != null;
+    } // containsGrammar(XMLGrammarDescription):boolean
+
+    /** Returns the number of grammars contained in this pool. */
+    public int getGrammarCount() {
+        return fTable.entries.length;
+    } // getGrammarCount():int
+
+    /** Returns the number of modifications made to this pool. */
+    public long getWriteCount() {
+        fWriteLock.lock();
+        try {
+            return fWriteCount;
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // getWriteCount():long
+
+    /**
+     * Returns the number of modifications which had to wait for
+     * another modification of this pool to complete.
+     */
+    public long getContendedWriteCount() {
+        fWriteLock.lock();
+        try {
+            return fContendedWriteCount;
+        }
+        finally {
+            fWriteLock.unlock();
+        }
+    } // getContendedWriteCount():long
+
+    /**
+     * This method checks whether two grammars are the same. Currently, we compare
+     * the root element names for DTD grammars and the target namespaces for Schema grammars.
+     * The application can override this behaviour and add its own logic.
+     *
+     * @param desc1 The grammar description
+     * @param desc2 The grammar description of the grammar to be compared to
+     * @return      True if the grammars are equal, otherwise false
+     */
+    public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2) {
+        return desc1.equals(desc2);
+    }
+
+    /**
+     * Returns the hash code value for the given grammar description.
+     *
+     * @param desc The grammar description
+     * @return     The hash code value
+     */
+    public int hashCode(XMLGrammarDescription desc) {
+        return desc.hashCode();
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Acquires the write lock, counting the modification. */
+    private void acquireWriteLock() {
+        if (!fWriteLock.tryLock()) {
+            fWriteLock.lock();
+            ++fContendedWriteCount;
+        }
+        ++fWriteCount;
+    } // acquireWriteLock()
+
+    /** Returns the entry for the specified description in the table, or null. */
+    private Entry find(Table table, XMLGrammarDescription desc, int hash) {
+        final Entry[] buckets = table.buckets;
+        for (Entry entry = buckets[(hash & 0x7FFFFFFF) % buckets.length]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && equals(entry.desc, desc)) {
+                return entry;
+            }
+        }
+        return null;
+    } // find(Table,XMLGrammarDescription,int):Entry
+
+    /** Returns a copy of the table with the specified grammar added to it. */
+    private Table put(Table table, Grammar grammar) {
+        final XMLGrammarDescription desc = grammar.getGrammarDescription();
+        final int hash = hashCode(desc);
+        final Entry existing = find(table, desc, hash);
+        final Entry[] entries;
+        if (existing != null) {
+            if (existing.grammar == grammar) {
+                return table;
+            }
+            entries = (Entry[]) table.entries.clone();
+            for (int i = 0; i < entries.length; ++i) {
+                if (entries[i] == existing) {
+                    entries[i] = new Entry(hash, desc, grammar, null);
+                    break;
+                }
+            }
+        }
+        else {
+            entries = new Entry[table.entries.length + 1];
+            System.arraycopy(table.entries, 0, entries, 0, table.entries.length);
+            entries[table.entries.length] = new Entry(hash, desc, grammar, null);
+        }
+        return newTable(entries);
+    } // put(Table,Grammar):Table
+
+    /** Creates a table for the specified entries. */
+    private static Table newTable(Entry[] entries) {
+        final Entry[] buckets = new Entry[entries.length * 2 + 1];
+        for (int i = 0; i < entries.length; ++i) {
+            final Entry entry = entries[i];
+            final int index = (entry.hash & 0x7FFFFFFF) % buckets.length;
+            buckets[index] = new Entry(entry.hash, entry.desc, entry.grammar, buckets[index]);
+            // keep the chained entries in the flat array so that lookups
+            // and removals can find them by identity
+            entries[i] = buckets[index];
+        }
+        return new Table(entries, buckets);
+    } // newTable(Entry[]):Table
+
+    //
+    // Classes
+    //
+
+    /** An immutable table of grammars. */
+    private static final class Table {
+
+        /** All of the entries, in insertion order. */
+        final Entry[] entries;
+
+        /** Hash buckets of the entries. */
+        final Entry[] buckets;
+
+        Table(Entry[] entries, Entry[] buckets) {
+            this.entries = entries;
+            this.buckets = buckets;
+        }
+
+    } // class Table
+
+    /**
+     * An immutable grammar pool entry. Each entry acts as a node
+     * in a linked list.
+     */
+    private static final class Entry {
+
+        final int hash;
+        final XMLGrammarDescription desc;
+        final Grammar grammar;
+        final Entry next;
+
+        Entry(int hash, XMLGrammarDescription desc, Grammar grammar, Entry next) {
+            this.hash = hash;
+            this.desc = desc;
+            this.grammar = grammar;
+            this.next = next;
+        }
+
+    } // class Entry
+
+} // class ConcurrentGrammarPool
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+/**
+ * A thread-safe symbol table which may be shared by many parser
+ * instances without serializing them on a single lock.
+ * <p>
+ * The table is split into a fixed number of segments selected by the
+ * low bits of the symbol hash. Looking up a symbol which is already in
+ * the table takes no lock at all: entries are immutable once created
+ * and each segment publishes its bucket array through a volatile field.
+ * Only adding a new symbol locks the segment it belongs to, and a segment
+ * grows independently of the others, so readers and writers in other
+ * segments are never blocked by a rehash.
+ * <p>
+ * Like <code>SymbolTable</code>, the symbols returned are interned, so
+ * that symbols may be compared by reference with each other and with
+ * string literals.
+ *
+ * @see SymbolTable
+ * @see SynchronizedSymbolTable
+ *
+ * @version $Id$
+ */
+public final class ConcurrentSymbolTable extends SymbolTable {
+
+    //
+    // Constants
+    //
+
+    /** Number of bits of the hash used to select a segment. */
+    private static final int SEGMENT_SHIFT = 5;
+
+    /** Number of segments; a power of two. */
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_SHIFT;
+
+    /** Mask used to select a segment. */
+    private static final int SEGMENT_MASK = SEGMENT_COUNT - 1;
+
+    //
+    // Data
+    //
+
+    /** Segments. */
+    private final Segment[] fSegments;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a new, empty ConcurrentSymbolTable with the specified
+     * initial capacity and the specified load factor.
+     *
+     * @param      initialCapacity   the initial capacity of the SymbolTable.
+     * @param      loadFactor        the load factor of the SymbolTable.
+     * @throws     IllegalArgumentException  if the initial capacity is less
+     *             than zero, or if the load factor is nonpositive.
+     */
+    public ConcurrentSymbolTable(int initialCapacity, float loadFactor) {
+        // the buckets of the base class are never used
+        super(1, loadFactor);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        int segmentCapacity = initialCapacity / SEGMENT_COUNT;
+        if (segmentCapacity < 7) {
+            segmentCapacity = 7;
+        }
+        fSegments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; ++i) {
+            fSegments[i] = new Segment(segmentCapacity, loadFactor);
+        }
+    }
+
+    /**
+     * Constructs a new, empty ConcurrentSymbolTable with the specified
+     * initial capacity and default load factor, which is <tt>0.75</tt>.
+     *
+     * @param     initialCapacity   the initial capacity of the hashtable.
+     * @throws    IllegalArgumentException if the initial capacity is less
+     *            than zero.
+     */
+    public ConcurrentSymbolTable(int initialCapacity) {
+        this(initialCapacity, 0.75f);
+    }
+
+    /**
+     * Constructs a new, empty ConcurrentSymbolTable with a default initial
+     * capacity (2039) and load factor, which is <tt>0.75</tt>. Symbol tables
+     * shared among parsers grow larger than those of a single parser,
+     * hence the larger default.
+     */
+    public ConcurrentSymbolTable() {
+        this(2039, 0.75f);
+    }
+
+    //
+    // SymbolTable methods
+    //
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param symbol The new symbol.
+     */
+    public String addSymbol(String symbol) {
+        final int hash = hash(symbol);
+        final Segment segment = fSegments[hash & SEGMENT_MASK];
+        String existing = segment.get(symbol, hash);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (segment) {
+            existing = segment.get(symbol, hash);
+            if (existing != null) {
+                return existing;
+            }
+            char[] characters = new char[symbol.length()];
+            symbol.getChars(0, characters.length, characters, 0);
+            return segment.put(symbol.intern(), characters, hash);
+        }
+    } // addSymbol(String):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     */
+    public String addSymbol(char[] buffer, int offset, int length) {
+        final int hash = hash(buffer, offset, length);
+        final Segment segment = fSegments[hash & SEGMENT_MASK];
+        String existing = segment.get(buffer, offset, length, hash);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (segment) {
+            existing = segment.get(buffer, offset, length, hash);
+            if (existing != null) {
+                return existing;
+            }
+            char[] characters = new char[length];
+            System.arraycopy(buffer, offset, characters, 0, length);
+            return segment.put(new String(characters).intern(), characters, hash);
+        }
+    } // addSymbol(char[],int,int):String
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public boolean containsSymbol(String symbol) {
+        final int hash = hash(symbol);
+        final Segment segment = fSegments[hash & SEGMENT_MASK];
+        if (segment.get(symbol, hash) != null) {
+            return true;
+        }
+        // a symbol added concurrently may not be visible yet without the lock
+        synchronized (segment) {
+            return segment.get(symbol, hash) != null;
+        }
+    } // containsSymbol(String):boolean
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     */
+    public boolean containsSymbol(char[] buffer, int offset, int length) {
+        final int hash = hash(buffer, offset, length);
+        final Segment segment = fSegments[hash & SEGMENT_MASK];
+        if (segment.get(buffer, offset, length, hash) != null) {
+            return true;
+        }
+        synchronized (segment) {
+            return segment.get(buffer, offset, length, hash) != null;
+        }
+    } // containsSymbol(char[],int,int):boolean
+
+    /**
+     * Segments rehash themselves independently; this method does nothing.
+     */
+    protected void rehash() {
+    } // rehash()
+
+    //
+    // Classes
+    //
+
+    /**
+     * A segment of the symbol table. Lookups may be performed without
+     * holding the lock of the segment; additions must hold it.
+     */
+    private static final class Segment {
+
+        //
+        // Data
+        //
+
+        /** Buckets. Replaced, never modified in place, on rehash. */
+        private volatile Entry[] fBuckets;
+
+        /** The number of entries in this segment. Guarded by this segment. */
+        private int fCount;
+
+        /** The segment is rehashed when its size exceeds this threshold. */
+        private int fThreshold;
+
+        /** The load factor for the segment. */
+        private final float fLoadFactor;
+
+        //
+        // Constructors
+        //
+
+        Segment(int initialCapacity, float loadFactor) {
+            fLoadFactor = loadFactor;
+            fBuckets = new Entry[initialCapacity];
+            fThreshold = (int)(initialCapacity * loadFactor);
+        }
+
+        //
+        // Methods
+        //
+
+        /** Returns the symbol equal to the specified string, or null. */
+        String get(String symbol, int hash) {
+            final Entry[] buckets = fBuckets;
+            final int length = symbol.length();
+            OUTER: for (Entry entry = buckets[(hash >>> SEGMENT_SHIFT) % buckets.length];
+                entry != null; entry = entry.next) {
+                if (entry.hash == hash && length == entry.characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (symbol.charAt(i) != entry.characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return entry.symbol;
+                }
+            }
+            return null;
+        }
+
+        /** Returns the symbol equal to the specified characters, or null. */
+        String get(char[] buffer, int offset, int length, int hash) {
+            final Entry[] buckets = fBuckets;
+            OUTER: for (Entry entry = buckets[(hash >>> SEGMENT_SHIFT) % buckets.length];
+                entry != null; entry = entry.next) {
+                if (entry.hash == hash && length == entry.characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (buffer[offset + i] != entry.characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return entry.symbol;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a symbol known not to be in this segment. The caller must
+         * hold the lock of this segment.
+         */
+        String put(String symbol, char[] characters, int hash) {
+            if (fCount >= fThreshold) {
+                rehash();
+            }
+            final Entry[] buckets = fBuckets;
+            final int bucket = (hash >>> SEGMENT_SHIFT) % buckets.length;
+            buckets[bucket] = new Entry(symbol, characters, hash, buckets[bucket]);
+            ++fCount;
+            // republish the buckets so that readers see the new entry
+            fBuckets = buckets;
+            return symbol;
+        }
+
+        /**
+         * Copies the entries into a larger bucket array. Entries are
+         * immutable, so the chains are rebuilt rather than relinked; readers
+         * still traversing the old array see a consistent set of entries.
+         */
+        private void rehash() {
+            final Entry[] oldBuckets = fBuckets;
+            final int newCapacity = oldBuckets.length * 2 + 1;
+            final Entry[] newBuckets = new Entry[newCapacity];
+            for (int i = oldBuckets.length; i-- > 0;) {
+                for (Entry old = oldBuckets[i]; old != null; old = old.next) {
+                    final int index = (old.hash >>> SEGMENT_SHIFT) % newCapacity;
+                    newBuckets[index] = new Entry(old.symbol, old.characters, old.hash, newBuckets[index]);
+                }
+            }
+            fThreshold = (int)(newCapacity * fLoadFactor);
+            fBuckets = newBuckets;
+        }
+
+    } // class Segment
+
+    /**
+     * An immutable symbol table entry. Each entry acts as a node
+     * in a linked list.
+     */
+    private static final class Entry {
+
+        /** Symbol. */
+        final String symbol;
+
+        /** Symbol characters, duplicated here for comparison performance. */
+        final char[] characters;
+
+        /** Hash code of the symbol. */
+        final int hash;
+
+        /** The next entry. */
+        final Entry next;
+
+        Entry(String symbol, char[] characters, int hash, Entry next) {
+            this.symbol = symbol;
+            this.characters = characters;
+            this.hash = hash;
+            this.next = next;
+        }
+
+    } // class Entry
+
+} // class ConcurrentSymbolTable
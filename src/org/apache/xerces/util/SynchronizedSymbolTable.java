@@ -22,6 +22,11 @@ package org.apache.xerces.util;
  *
  * This class moved into the util package since it's needed by multiple
  * other classes (CachingParserPool, XMLGrammarCachingConfiguration).
+ * ConcurrentSymbolTable scales better when many threads share the
+ * symbol table. When it wraps a ConcurrentSymbolTable, the calls are
+ * passed on without taking a lock.
+ *
+ * @see ConcurrentSymbolTable
  *
  * @author Andy Clark, IBM
  * @version $Id$
@@ -37,6 +42,9 @@ public final class SynchronizedSymbolTable
     /** Main symbol table. */
     protected SymbolTable fSymbolTable;
 
+    /** True if the main symbol table is safe to use without a lock. */
+    private final boolean fConcurrent;
+
     //
     // Constructors
     //
@@ -44,16 +52,19 @@ public final class SynchronizedSymbolTable
     /** Constructs a synchronized symbol table. */
     public SynchronizedSymbolTable(SymbolTable symbolTable) {
         fSymbolTable = symbolTable;
+        fConcurrent = symbolTable instanceof ConcurrentSymbolTable;
     } // <init>(SymbolTable) 
 
     // construct synchronized symbol table of default size
     public SynchronizedSymbolTable() {
         fSymbolTable = new SymbolTable();
+        fConcurrent = false;
     } // init()
 
     // construct synchronized symbol table of given size
     public SynchronizedSymbolTable(int size) {
         fSymbolTable = new SymbolTable(size);
+        fConcurrent = false;
     } // init(int)
 
     //
@@ -70,6 +81,9 @@ public final class SynchronizedSymbolTable
      */
     public String addSymbol(String symbol) {
 
+        if (fConcurrent) {
+            return fSymbolTable.addSymbol(symbol);
+        }
         synchronized (fSymbolTable) {
             return fSymbolTable.addSymbol(symbol);
         }
@@ -88,6 +102,9 @@ public final class SynchronizedSymbolTable
      */
     public String addSymbol(char[] buffer, int offset, int length) {
 
+        if (fConcurrent) {
+            return fSymbolTable.addSymbol(buffer, offset, length);
+        }
         synchronized (fSymbolTable) {
             return fSymbolTable.addSymbol(buffer, offset, length);
         }
@@ -102,6 +119,9 @@ public final class SynchronizedSymbolTable
      */
     public boolean containsSymbol(String symbol) {
 
+        if (fConcurrent) {
+            return fSymbolTable.containsSymbol(symbol);
+        }
         synchronized (fSymbolTable) {
             return fSymbolTable.containsSymbol(symbol);
         }
@@ -118,6 +138,9 @@ public final class SynchronizedSymbolTable
      */
     public boolean containsSymbol(char[] buffer, int offset, int length) {
 
+        if (fConcurrent) {
+            return fSymbolTable.containsSymbol(buffer, offset, length);
+        }
         synchronized (fSymbolTable) {
             return fSymbolTable.containsSymbol(buffer, offset, length);
         }
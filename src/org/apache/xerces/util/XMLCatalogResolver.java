@@ -18,6 +18,7 @@
 package org.apache.xerces.util;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.SAXParserFactory;
 
@@ -52,6 +53,16 @@ import org.xml.sax.ext.EntityResolver2;
  * <p>It is intended that this class may be used standalone to perform 
  * catalog resolution outside of a parsing context. It may be shared
  * between several parsers and the application.</p>
+ * 
+ * <p>The catalogs are read when the catalog is first queried, and
+ * the mappings are queried from this snapshot of the catalogs. The
+ * identifiers which have been resolved are remembered, up to a limit,
+ * and are looked up concurrently, without locking; the catalogs are
+ * searched for the others one at a time, since catalogs to which
+ * lookups are delegated are read while they are searched. Changing
+ * the list of catalogs replaces the
+ * snapshot atomically: queries in progress complete with the previous
+ * catalogs, and the following ones use the new catalogs.</p>
  *
  * @author Michael Glavassevich, IBM
  *
@@ -63,17 +74,14 @@ public class XMLCatalogResolver
     /** Internal catalog manager for Apache catalogs. **/
     private CatalogManager fResolverCatalogManager = null;
     
-    /** Internal catalog structure. **/
-    private Catalog fCatalog = null;
+    /** 
+     * Internal catalog structure, or null if the list of 
+     * catalogs has changed since it was processed.
+     */
+    private volatile CatalogSnapshot fSnapshot = null;
 	
     /** An array of catalog URIs. **/
     private String [] fCatalogsList = null;
-
-    /** 
-     * Indicates whether the list of catalogs has
-     * changed since it was processed.
-     */
-    private boolean fCatalogsChanged = true;
     
     /** Application specified prefer public setting. **/
     private boolean fPreferPublic = true;
@@ -135,16 +143,16 @@ public class XMLCatalogResolver
      * @param catalogs an ordered array list of absolute URIs 
      */
     public final synchronized void setCatalogList (String [] catalogs) {
-        fCatalogsChanged = true;
         fCatalogsList = (catalogs != null)
             ? (String[]) catalogs.clone() : null;
+        fSnapshot = null;
     }
     
     /**
      * <p>Forces the cache of catalog mappings to be cleared.</p>
      */
     public final synchronized void clear () {
-        fCatalog = null;
+        fSnapshot = new CatalogSnapshot(null);
     }
     
     /**
@@ -165,13 +173,16 @@ public class XMLCatalogResolver
      * <p>Sets the preference for whether system or public
      * matches are preferred. This is used in the absence
      * of any occurrence of the <code>prefer</code> attribute
-     * on the <code>catalog</code> entry of a catalog.</p>
+     * on the <code>catalog</code> entry of a catalog. The
+     * catalogs are read again the next time the catalog is
+     * queried.</p>
      * 
      * @param preferPublic the prefer public setting
      */
-    public final void setPreferPublic (boolean preferPublic) {
+    public final synchronized void setPreferPublic (boolean preferPublic) {
         fPreferPublic = preferPublic;
         fResolverCatalogManager.setPreferPublic(preferPublic);
+        fSnapshot = null;
     }
     
     /**
@@ -454,15 +465,9 @@ public class XMLCatalogResolver
      * @throws IOException if an i/o error occurred while reading
      * the catalog
      */
-    public final synchronized String resolveSystem (String systemId) 
+    public final String resolveSystem (String systemId) 
         throws IOException {
-
-        if (fCatalogsChanged) {
-            parseCatalogs();
-            fCatalogsChanged = false;
-        }
-        return (fCatalog != null) 
-            ? fCatalog.resolveSystem(systemId) : null;
+        return getSnapshot().resolve(CatalogSnapshot.SYSTEM_ID, null, systemId);
     }
     
     /**
@@ -480,15 +485,9 @@ public class XMLCatalogResolver
      * @throws IOException if an i/o error occurred while reading
      * the catalog
      */
-    public final synchronized String resolvePublic (String publicId, String systemId) 
+    public final String resolvePublic (String publicId, String systemId) 
         throws IOException {
-
-        if (fCatalogsChanged) {
-            parseCatalogs();
-            fCatalogsChanged = false;
-        }
-        return (fCatalog != null) 
-            ? fCatalog.resolvePublic(publicId, systemId) : null;
+        return getSnapshot().resolve(CatalogSnapshot.PUBLIC_ID, publicId, systemId);
     }
     
     /**
@@ -509,15 +508,9 @@ public class XMLCatalogResolver
      * @throws IOException if an i/o error occurred while reading
      * the catalog
      */
-    public final synchronized String resolveURI (String uri) 
+    public final String resolveURI (String uri) 
         throws IOException {
-
-        if (fCatalogsChanged) {
-            parseCatalogs();
-            fCatalogsChanged = false;
-        }
-        return (fCatalog != null)
-            ? fCatalog.resolveURI(uri) : null;
+        return getSnapshot().resolve(CatalogSnapshot.URI_REFERENCE, null, uri);
     }
     
     /**
@@ -540,26 +533,44 @@ public class XMLCatalogResolver
         fResolverCatalogManager.setVerbosity(0);
     }
     
+    /**
+     * Returns the current snapshot of the catalogs, parsing
+     * them if the list of catalogs has changed.
+     */
+    private CatalogSnapshot getSnapshot () throws IOException {
+        CatalogSnapshot snapshot = fSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = fSnapshot;
+                if (snapshot == null) {
+                    snapshot = new CatalogSnapshot(parseCatalogs());
+                    fSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+    
     /**
      * Instruct the <code>Catalog</code> to parse each of the  
-     * catalogs in the list. Only the first catalog will actually be 
-     * parsed immediately. The others will be queued and read if 
-     * they are needed later.
+     * catalogs in the list, and the catalogs they chain to. 
+     * Catalogs to which lookups are delegated are still read 
+     * when they are searched.
      */
-    private void parseCatalogs () throws IOException {
+    private Catalog parseCatalogs () throws IOException {
         if (fCatalogsList != null) {
-            fCatalog = new Catalog(fResolverCatalogManager);
-            attachReaderToCatalog(fCatalog);
+            Catalog catalog = new Catalog(fResolverCatalogManager);
+            attachReaderToCatalog(catalog);
             for (int i = 0; i < fCatalogsList.length; ++i) {
-                String catalog = fCatalogsList[i];
-                if (catalog != null && catalog.length() > 0) {
-                    fCatalog.parseCatalog(catalog);
+                String catalogURI = fCatalogsList[i];
+                if (catalogURI != null && catalogURI.length() > 0) {
+                    catalog.parseCatalog(catalogURI);
                 }
             }
+            catalog.parseAllCatalogs();
+            return catalog;
         }
-        else {
-            fCatalog = null;
-        }
+        return null;
     }
     
     /**
@@ -576,4 +587,72 @@ public class XMLCatalogResolver
             "org.apache.xml.resolver.readers.OASISXMLCatalogReader");
         catalog.addReader("application/xml", saxReader);
     }
+    
+    /**
+     * A parsed list of catalogs, and the identifiers 
+     * which have been resolved from them.
+     */
+    private static final class CatalogSnapshot {
+        
+        /** Kinds of identifiers. **/
+        static final char SYSTEM_ID = 'S';
+        static final char PUBLIC_ID = 'P';
+        static final char URI_REFERENCE = 'U';
+        
+        /** Maximum number of resolved identifiers remembered. **/
+        private static final int MAX_RESOLVED_SIZE = 1024;
+        
+        /** Remembered result of an identifier which has no mapping. **/
+        private static final String NO_MAPPING = new String();
+        
+        /** Internal catalog structure, or null if there are no catalogs. **/
+        private final Catalog fCatalog;
+        
+        /** Mapped URIs, keyed by the kind of identifier and the identifiers. **/
+        private final ConcurrentHashMap fResolved = new ConcurrentHashMap();
+        
+        CatalogSnapshot (Catalog catalog) {
+            fCatalog = catalog;
+        }
+        
+        /**
+         * Returns the URI mapping in the catalog for the given
+         * identifier, or <code>null</code> if no mapping exists.
+         */
+        String resolve (char kind, String publicId, String id) throws IOException {
+            if (fCatalog == null) {
+                return null;
+            }
+            if (id == null) {
+                return lookup(kind, publicId, id);
+            }
+            // '\uFFFF' is not an XML character, so it cannot occur in the identifiers
+            String key = (publicId != null) 
+                ? kind + publicId + '\uFFFF' + id : kind + id;
+            String resolvedId = (String) fResolved.get(key);
+            if (resolvedId == null) {
+                resolvedId = lookup(kind, publicId, id);
+                if (resolvedId == null) {
+                    resolvedId = NO_MAPPING;
+                }
+                if (fResolved.size() >= MAX_RESOLVED_SIZE) {
+                    fResolved.clear();
+                }
+                fResolved.put(key, resolvedId);
+            }
+            return (resolvedId != NO_MAPPING) ? resolvedId : null;
+        }
+        
+        private String lookup (char kind, String publicId, String id) throws IOException {
+            // the Catalog reads delegated catalogs with readers 
+            // it shares with them, which are not thread safe
+            synchronized (fCatalog) {
+                switch (kind) {
+                    case SYSTEM_ID: return fCatalog.resolveSystem(id);
+                    case PUBLIC_ID: return fCatalog.resolvePublic(publicId, id);
+                    default: return fCatalog.resolveURI(id);
+                }
+            }
+        }
+    }
 }
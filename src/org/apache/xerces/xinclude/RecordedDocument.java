@@ -0,0 +1,533 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import java.util.Enumeration;
+
+import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.dtd.XMLDTDValidatorFilter;
+import org.apache.xerces.util.AugmentationsImpl;
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * The events a namespace aware document scanner sent for a document,
+ * and the errors reported while scanning it, recorded by a parser on
+ * another thread. The events are sent through the pipeline of a parser
+ * configuration, in place of its scanner, as if the document was
+ * parsed again by this configuration.
+ * <p>
+ * Only documents without a document type declaration are recorded,
+ * and the recording stops at the first fatal error, so that the events
+ * do not depend on a DTD, and on which parser scanned the document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class RecordedDocument {
+
+    //
+    // Constants
+    //
+
+    // event types
+
+    static final byte START_DOCUMENT = 0;
+    static final byte XML_DECL = 1;
+    static final byte COMMENT = 2;
+    static final byte PROCESSING_INSTRUCTION = 3;
+    static final byte START_ELEMENT = 4;
+    static final byte EMPTY_ELEMENT = 5;
+    static final byte END_ELEMENT = 6;
+    static final byte START_GENERAL_ENTITY = 7;
+    static final byte TEXT_DECL = 8;
+    static final byte END_GENERAL_ENTITY = 9;
+    static final byte CHARACTERS = 10;
+    static final byte IGNORABLE_WHITESPACE = 11;
+    static final byte START_CDATA = 12;
+    static final byte END_CDATA = 13;
+    static final byte END_DOCUMENT = 14;
+    static final byte ERROR = 15;
+
+    /** Initial number of events. */
+    private static final int INITIAL_SIZE = 64;
+
+    //
+    // Data
+    //
+
+    // identifiers of the document entity
+
+    private String fPublicId;
+    private String fLiteralSystemId;
+    private String fBaseSystemId;
+    private String fExpandedSystemId;
+
+    /** True if the document is an XML 1.1 document. */
+    private boolean fXML11;
+
+    // events, and the location of the scanner when each was sent
+
+    private int fEventCount;
+    private byte[] fTypes = new byte[INITIAL_SIZE];
+    private Object[] fData = new Object[INITIAL_SIZE];
+    private Augmentations[] fAugmentations = new Augmentations[INITIAL_SIZE];
+    private int[] fLineNumbers = new int[INITIAL_SIZE];
+    private int[] fColumnNumbers = new int[INITIAL_SIZE];
+    private int[] fCharacterOffsets = new int[INITIAL_SIZE];
+    private String[] fEncodings = new String[INITIAL_SIZE];
+    private String[] fXMLVersions = new String[INITIAL_SIZE];
+
+    //
+    // Constructors
+    //
+
+    RecordedDocument() {}
+
+    /** Shares the events of the document, with other identifiers. */
+    private RecordedDocument(RecordedDocument document,
+            String publicId, String literalSystemId, String baseSystemId) {
+        fPublicId = publicId;
+        fLiteralSystemId = literalSystemId;
+        fBaseSystemId = baseSystemId;
+        fExpandedSystemId = document.fExpandedSystemId;
+        fXML11 = document.fXML11;
+        fEventCount = document.fEventCount;
+        fTypes = document.fTypes;
+        fData = document.fData;
+        fAugmentations = document.fAugmentations;
+        fLineNumbers = document.fLineNumbers;
+        fColumnNumbers = document.fColumnNumbers;
+        fCharacterOffsets = document.fCharacterOffsets;
+        fEncodings = document.fEncodings;
+        fXMLVersions = document.fXMLVersions;
+    }
+
+    //
+    // Public methods
+    //
+
+    /** Returns true if the document is an XML 1.1 document. */
+    public boolean isXML11() {
+        return fXML11;
+    } // isXML11():boolean
+
+    /**
+     * Sends the recorded events to the handler of the scanner, and the
+     * recorded errors to the error reporter. The namespace context of
+     * the scanner is updated as the scanner would have updated it, and
+     * if the handler is a DTD validator without a grammar, it is removed
+     * from the pipeline at the root element, as the scanner would have
+     * removed it.
+     *
+     * @param scanner          the scanner of the configuration
+     * @param namespaceContext the namespace context of the scanner
+     * @param errorReporter    the error reporter of the configuration
+     */
+    public void replay(XMLDocumentSource scanner,
+            NamespaceContext namespaceContext, XMLErrorReporter errorReporter)
+        throws XNIException {
+
+        XMLDocumentHandler handler = scanner.getDocumentHandler();
+        Locator locator = new Locator();
+
+        QName element = new QName();
+        XMLAttributesImpl attributes = new XMLAttributesImpl();
+        attributes.setNamespaces(true);
+        XMLString text = new XMLString();
+        boolean seenRootElement = false;
+
+        for (int i = 0; i < fEventCount; ++i) {
+            locator.fEvent = i;
+            Object data = fData[i];
+            Augmentations augs = copy(fAugmentations[i]);
+            switch (fTypes[i]) {
+                case START_DOCUMENT:
+                    handler.startDocument(locator, (String) data, namespaceContext, augs);
+                    break;
+                case XML_DECL: {
+                    String[] decl = (String[]) data;
+                    handler.xmlDecl(decl[0], decl[1], decl[2], augs);
+                    break;
+                }
+                case TEXT_DECL: {
+                    String[] decl = (String[]) data;
+                    handler.textDecl(decl[0], decl[1], augs);
+                    break;
+                }
+                case COMMENT:
+                    handler.comment(set(text, (char[]) data), augs);
+                    break;
+                case PROCESSING_INSTRUCTION: {
+                    Object[] pi = (Object[]) data;
+                    handler.processingInstruction((String) pi[0], set(text, (char[]) pi[1]), augs);
+                    break;
+                }
+                case START_ELEMENT:
+                case EMPTY_ELEMENT: {
+                    if (!seenRootElement) {
+                        seenRootElement = true;
+                        handler = removeValidator(handler);
+                    }
+                    Element recorded = (Element) data;
+                    namespaceContext.pushContext();
+                    String[] namespaces = recorded.fNamespaces;
+                    for (int j = 0; j < namespaces.length; j += 2) {
+                        namespaceContext.declarePrefix(namespaces[j], namespaces[j + 1]);
+                    }
+                    element.setValues(recorded.fName);
+                    recorded.fill(attributes);
+                    if (fTypes[i] == START_ELEMENT) {
+                        handler.startElement(element, attributes, augs);
+                    }
+                    else {
+                        handler.emptyElement(element, attributes, augs);
+                        namespaceContext.popContext();
+                    }
+                    break;
+                }
+                case END_ELEMENT:
+                    element.setValues((QName) data);
+                    handler.endElement(element, augs);
+                    namespaceContext.popContext();
+                    break;
+                case START_GENERAL_ENTITY: {
+                    Object[] entity = (Object[]) data;
+                    handler.startGeneralEntity((String) entity[0],
+                            (XMLResourceIdentifier) entity[1], (String) entity[2], augs);
+                    break;
+                }
+                case END_GENERAL_ENTITY:
+                    handler.endGeneralEntity((String) data, augs);
+                    break;
+                case CHARACTERS:
+                    handler.characters(set(text, (char[]) data), augs);
+                    break;
+                case IGNORABLE_WHITESPACE:
+                    handler.ignorableWhitespace(set(text, (char[]) data), augs);
+                    break;
+                case START_CDATA:
+                    handler.startCDATA(augs);
+                    break;
+                case END_CDATA:
+                    handler.endCDATA(augs);
+                    break;
+                case END_DOCUMENT:
+                    handler.endDocument(augs);
+                    break;
+                case ERROR: {
+                    Error error = (Error) data;
+                    // reported as the components of the configuration report
+                    // errors, at the location of the error reporter's locator
+                    errorReporter.reportError(error.fDomain, error.fKey,
+                            error.fArguments, error.fSeverity, error.fException);
+                    break;
+                }
+            }
+        }
+    } // replay(XMLDocumentSource,NamespaceContext,XMLErrorReporter)
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Returns the document as it would be read from the input source.
+     * The events are shared with this document; only the identifiers
+     * of the document entity differ, unless the document was read from
+     * another location because of a redirection.
+     */
+    RecordedDocument forSource(XMLInputSource source, String expandedSystemId) {
+        String literalSystemId = expandedSystemId.equals(fExpandedSystemId) ?
+                source.getSystemId() : fLiteralSystemId;
+        return new RecordedDocument(this, source.getPublicId(), literalSystemId, source.getBaseSystemId());
+    } // forSource(XMLInputSource,String):RecordedDocument
+
+    void startDocument(XMLLocator locator, String encoding, Augmentations augs) {
+        fPublicId = locator.getPublicId();
+        fLiteralSystemId = locator.getLiteralSystemId();
+        fBaseSystemId = locator.getBaseSystemId();
+        fExpandedSystemId = locator.getExpandedSystemId();
+        add(START_DOCUMENT, encoding, augs, locator);
+    } // startDocument(XMLLocator,String,Augmentations)
+
+    void xmlDecl(String version, String encoding, String standalone, Augmentations augs, XMLLocator locator) {
+        fXML11 = "1.1".equals(version);
+        add(XML_DECL, new String[] { version, encoding, standalone }, augs, locator);
+    } // xmlDecl(String,String,String,Augmentations,XMLLocator)
+
+    void element(byte type, QName element, XMLAttributes attributes,
+            NamespaceContext namespaceContext, Augmentations augs, XMLLocator locator) {
+        add(type, new Element(element, attributes, namespaceContext), augs, locator);
+    } // element(byte,QName,XMLAttributes,NamespaceContext,Augmentations,XMLLocator)
+
+    void startGeneralEntity(String name, XMLResourceIdentifier identifier,
+            String encoding, Augmentations augs, XMLLocator locator) {
+        if (identifier != null) {
+            identifier = new XMLResourceIdentifierImpl(identifier.getPublicId(),
+                    identifier.getLiteralSystemId(), identifier.getBaseSystemId(),
+                    identifier.getExpandedSystemId());
+        }
+        add(START_GENERAL_ENTITY, new Object[] { name, identifier, encoding }, augs, locator);
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations,XMLLocator)
+
+    void error(XMLLocator location, String domain, String key, Object[] arguments,
+            short severity, Exception exception) {
+        add(ERROR, new Error(domain, key, arguments, severity, exception), null, location);
+    } // error(XMLLocator,String,String,Object[],short,Exception)
+
+    /** Records an event. */
+    void add(byte type, Object data, Augmentations augs, XMLLocator locator) {
+        if (fEventCount == fTypes.length) {
+            int size = fEventCount << 1;
+            fTypes = resize(fTypes, size);
+            fData = resize(fData, size);
+            fAugmentations = (Augmentations[]) resize(fAugmentations, new Augmentations[size]);
+            fLineNumbers = resize(fLineNumbers, size);
+            fColumnNumbers = resize(fColumnNumbers, size);
+            fCharacterOffsets = resize(fCharacterOffsets, size);
+            fEncodings = (String[]) resize(fEncodings, new String[size]);
+            fXMLVersions = (String[]) resize(fXMLVersions, new String[size]);
+        }
+        fTypes[fEventCount] = type;
+        fData[fEventCount] = data;
+        fAugmentations[fEventCount] = copy(augs);
+        fLineNumbers[fEventCount] = locator.getLineNumber();
+        fColumnNumbers[fEventCount] = locator.getColumnNumber();
+        fCharacterOffsets[fEventCount] = locator.getCharacterOffset();
+        fEncodings[fEventCount] = locator.getEncoding();
+        fXMLVersions[fEventCount] = locator.getXMLVersion();
+        ++fEventCount;
+    } // add(byte,Object,Augmentations,XMLLocator)
+
+    /**
+     * Returns a copy of the characters of the string, or null if the
+     * string was cleared.
+     */
+    static char[] copy(XMLString text) {
+        if (text.ch == null) {
+            return null;
+        }
+        char[] ch = new char[text.length];
+        System.arraycopy(text.ch, text.offset, ch, 0, text.length);
+        return ch;
+    } // copy(XMLString):char[]
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Removes the DTD validator from the pipeline if it has no grammar,
+     * and returns the handler the events are then sent to.
+     *
+     * @see org.apache.xerces.impl.XMLNSDocumentScannerImpl
+     */
+    private static XMLDocumentHandler removeValidator(XMLDocumentHandler handler) {
+        if (!(handler instanceof XMLDTDValidatorFilter)) {
+            return handler;
+        }
+        XMLDTDValidatorFilter validator = (XMLDTDValidatorFilter) handler;
+        if (validator.hasGrammar()) {
+            return handler;
+        }
+        XMLDocumentSource source = validator.getDocumentSource();
+        XMLDocumentHandler next = validator.getDocumentHandler();
+        source.setDocumentHandler(next);
+        if (next != null) {
+            next.setDocumentSource(source);
+        }
+        validator.setDocumentSource(null);
+        validator.setDocumentHandler(null);
+        return next;
+    } // removeValidator(XMLDocumentHandler):XMLDocumentHandler
+
+    private static XMLString set(XMLString text, char[] ch) {
+        if (ch != null) {
+            text.setValues(ch, 0, ch.length);
+        }
+        else {
+            text.clear();
+        }
+        return text;
+    } // set(XMLString,char[]):XMLString
+
+    private static Augmentations copy(Augmentations augs) {
+        if (augs == null) {
+            return null;
+        }
+        Augmentations copy = new AugmentationsImpl();
+        Enumeration keys = augs.keys();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            copy.putItem(key, augs.getItem(key));
+        }
+        return copy;
+    } // copy(Augmentations):Augmentations
+
+    private static byte[] resize(byte[] array, int size) {
+        byte[] newArray = new byte[size];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    } // resize(byte[],int):byte[]
+
+    private static int[] resize(int[] array, int size) {
+        int[] newArray = new int[size];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    } // resize(int[],int):int[]
+
+    private static Object[] resize(Object[] array, int size) {
+        return resize(array, new Object[size]);
+    } // resize(Object[],int):Object[]
+
+    private static Object[] resize(Object[] array, Object[] newArray) {
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    } // resize(Object[],Object[]):Object[]
+
+    //
+    // Classes
+    //
+
+    /** A start or empty element tag. */
+    private static final class Element {
+
+        /** The name of the element. */
+        final QName fName;
+
+        /** Prefixes declared on the element, each followed by its namespace. */
+        final String[] fNamespaces;
+
+        // attributes
+
+        final QName[] fAttributeNames;
+        final String[] fTypes;
+        final String[] fValues;
+        final String[] fNonNormalizedValues;
+        final boolean[] fSpecified;
+
+        public Element(QName element, XMLAttributes attributes, NamespaceContext namespaceContext) {
+            fName = new QName(element);
+            int count = namespaceContext.getDeclaredPrefixCount();
+            fNamespaces = new String[count * 2];
+            for (int i = 0; i < count; ++i) {
+                String prefix = namespaceContext.getDeclaredPrefixAt(i);
+                fNamespaces[i * 2] = prefix;
+                fNamespaces[i * 2 + 1] = namespaceContext.getURI(prefix);
+            }
+            int length = attributes.getLength();
+            fAttributeNames = new QName[length];
+            fTypes = new String[length];
+            fValues = new String[length];
+            fNonNormalizedValues = new String[length];
+            fSpecified = new boolean[length];
+            for (int i = 0; i < length; ++i) {
+                fAttributeNames[i] = new QName();
+                attributes.getName(i, fAttributeNames[i]);
+                fTypes[i] = attributes.getType(i);
+                fValues[i] = attributes.getValue(i);
+                fNonNormalizedValues[i] = attributes.getNonNormalizedValue(i);
+                fSpecified[i] = attributes.isSpecified(i);
+            }
+        }
+
+        public void fill(XMLAttributesImpl attributes) {
+            attributes.removeAllAttributes();
+            for (int i = 0; i < fAttributeNames.length; ++i) {
+                attributes.addAttributeNS(fAttributeNames[i], fTypes[i], fValues[i]);
+                attributes.setNonNormalizedValue(i, fNonNormalizedValues[i]);
+                attributes.setSpecified(i, fSpecified[i]);
+            }
+        }
+    } // class Element
+
+    /** An error reported while scanning the document. */
+    private static final class Error {
+
+        final String fDomain;
+        final String fKey;
+        final Object[] fArguments;
+        final short fSeverity;
+        final Exception fException;
+
+        public Error(String domain, String key, Object[] arguments, short severity, Exception exception) {
+            fDomain = domain;
+            fKey = key;
+            fArguments = arguments;
+            fSeverity = severity;
+            fException = exception;
+        }
+    } // class Error
+
+    /** The location of the scanner when the current event was sent. */
+    private final class Locator implements XMLLocator {
+
+        /** Index of the current event. */
+        int fEvent;
+
+        public String getPublicId() {
+            return fPublicId;
+        }
+
+        public String getLiteralSystemId() {
+            return fLiteralSystemId;
+        }
+
+        public String getBaseSystemId() {
+            return fBaseSystemId;
+        }
+
+        public String getExpandedSystemId() {
+            return fExpandedSystemId;
+        }
+
+        public int getLineNumber() {
+            return fLineNumbers[fEvent];
+        }
+
+        public int getColumnNumber() {
+            return fColumnNumbers[fEvent];
+        }
+
+        public int getCharacterOffset() {
+            return fCharacterOffsets[fEvent];
+        }
+
+        public String getEncoding() {
+            return fEncodings[fEvent];
+        }
+
+        public String getXMLVersion() {
+            return fXMLVersions[fEvent];
+        }
+    } // class Locator
+
+} // class RecordedDocument
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import org.apache.xerces.xni.XMLString;
+
+/**
+ * The text of a resource included with parse="text", recorded by an
+ * XIncludeTextReader, in the chunks it was sent to the XIncludeHandler.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class RecordedText {
+
+    /** The characters of the text. */
+    private final char[] fText;
+
+    /** The end of each chunk in the text. */
+    private final int[] fChunkEnds;
+
+    public RecordedText(char[] text, int[] chunkEnds) {
+        fText = text;
+        fChunkEnds = chunkEnds;
+    }
+
+    /** Sends the text to the handler, as the text reader sent it. */
+    public void replay(XIncludeHandler handler) {
+        handler.fHasIncludeReportedContent = true;
+        XMLString text = new XMLString();
+        int start = 0;
+        for (int i = 0; i < fChunkEnds.length; ++i) {
+            text.setValues(fText, start, fChunkEnds[i] - start);
+            handler.characters(text, handler.modifyAugmentations(null, true));
+            start = fChunkEnds[i];
+        }
+    } // replay(XIncludeHandler)
+
+} // class RecordedText
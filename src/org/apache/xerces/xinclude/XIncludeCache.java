@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the resources included by XInclude processors, which may be
+ * shared by parsers processing many documents including the same
+ * resources. A cache is set on a parser with the property
+ * <code>http://apache.org/xml/properties/xinclude-cache</code>.
+ * <p>
+ * The events of a resource included with parse="xml" are recorded when
+ * it is first parsed, and replayed through the pipeline of the including
+ * parser when it is included again, so that the resource is validated,
+ * and its XPointer evaluated, as if it had been parsed again. A resource
+ * with a document type declaration, or for which a fatal error is
+ * reported, is not recorded. The text of a resource included with
+ * parse="text" is cached if it contains no invalid character. A resource
+ * is only cached if it is read from its system identifier, and not from a
+ * stream provided by an entity resolver.
+ * <p>
+ * The cache holds at most a given number of resources, and discards the
+ * least recently used resource when it is full. A cached resource is
+ * used as long as its last modification time, as returned by
+ * {@link #getLastModified(String)}, has not changed; it is known for
+ * files, and a subclass may provide it for other URI schemes. Resources
+ * whose last modification time is not known are used until they are
+ * discarded.
+ * <p>
+ * The methods of this class are thread-safe.
+ *
+ * @xerces.experimental
+ *
+ * @version $Id$
+ */
+public class XIncludeCache {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of resources cached. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 128;
+
+    /** Value cached for a resource which cannot be recorded. */
+    static final Object UNCACHEABLE = new Object();
+
+    //
+    // Data
+    //
+
+    /** Maximum number of resources cached. */
+    private final int fMaximumSize;
+
+    /** Cached resources, from the least to the most recently used. */
+    private final LinkedHashMap fEntries;
+
+    // statistics
+    private int fHitCount;
+    private int fMissCount;
+    private int fEvictionCount;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a cache holding at most {@link #DEFAULT_MAXIMUM_SIZE} resources. */
+    public XIncludeCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructs a cache holding at most the given number of resources.
+     *
+     * @param maximumSize the maximum number of resources cached
+     */
+    public XIncludeCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize: " + maximumSize);
+        }
+        fMaximumSize = maximumSize;
+        fEntries = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > fMaximumSize) {
+                    ++fEvictionCount;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //
+    // Public methods
+    //
+
+    /** Returns the maximum number of resources cached. */
+    public int getMaximumSize() {
+        return fMaximumSize;
+    } // getMaximumSize():int
+
+    /** Returns the number of resources cached. */
+    public synchronized int size() {
+        return fEntries.size();
+    } // size():int
+
+    /** Returns the number of inclusions for which a cached resource was used. */
+    public synchronized int getHitCount() {
+        return fHitCount;
+    } // getHitCount():int
+
+    /**
+     * Returns the number of inclusions of cacheable resources for which no
+     * cached resource could be used.
+     */
+    public synchronized int getMissCount() {
+        return fMissCount;
+    } // getMissCount():int
+
+    /** Returns the number of resources discarded because the cache was full. */
+    public synchronized int getEvictionCount() {
+        return fEvictionCount;
+    } // getEvictionCount():int
+
+    /** Resets the hit, miss and eviction counts. */
+    public synchronized void resetStatistics() {
+        fHitCount = 0;
+        fMissCount = 0;
+        fEvictionCount = 0;
+    } // resetStatistics()
+
+    /**
+     * Discards the cached resource read from the expanded system identifier.
+     *
+     * @param expandedSystemId the expanded system identifier of the resource
+     */
+    public synchronized void remove(String expandedSystemId) {
+        for (Iterator i = fEntries.values().iterator(); i.hasNext();) {
+            if (((Entry) i.next()).fSystemId.equals(expandedSystemId)) {
+                i.remove();
+            }
+        }
+    } // remove(String)
+
+    /** Discards all of the cached resources. */
+    public synchronized void clear() {
+        fEntries.clear();
+    } // clear()
+
+    //
+    // Protected methods
+    //
+
+    /**
+     * Returns the last modification time of the resource, or 0 if it is
+     * not known. The time of a file is returned for "file" URIs.
+     *
+     * @param expandedSystemId the expanded system identifier of the resource
+     */
+    protected long getLastModified(String expandedSystemId) {
+        if (expandedSystemId.regionMatches(true, 0, "file:", 0, 5)) {
+            try {
+                return new File(new URI(expandedSystemId)).lastModified();
+            }
+            catch (Exception e) {
+                // not a hierarchical URI, or not a local file
+            }
+        }
+        return 0;
+    } // getLastModified(String):long
+
+    //
+    // Package methods
+    //
+
+    /**
+     * Returns the cached value, {@link #UNCACHEABLE} if the resource is
+     * known not to be cacheable, or null if the resource is not cached
+     * or has been modified.
+     *
+     * @param key      the key of the resource, including its system identifier
+     * @param systemId the expanded system identifier of the resource
+     */
+    Object get(String key, String systemId) {
+        long lastModified = getLastModified(systemId);
+        synchronized (this) {
+            Entry entry = (Entry) fEntries.get(key);
+            if (entry != null && entry.fLastModified != lastModified) {
+                fEntries.remove(key);
+                entry = null;
+            }
+            if (entry != null && entry.fValue != UNCACHEABLE) {
+                ++fHitCount;
+            }
+            else {
+                ++fMissCount;
+            }
+            return entry != null ? entry.fValue : null;
+        }
+    } // get(String,String):Object
+
+    /**
+     * Caches a value.
+     *
+     * @param key          the key of the resource, including its system identifier
+     * @param systemId     the expanded system identifier of the resource
+     * @param value        the value, or {@link #UNCACHEABLE}
+     * @param lastModified the last modification time of the resource before it was read
+     */
+    synchronized void put(String key, String systemId, Object value, long lastModified) {
+        fEntries.put(key, new Entry(systemId, value, lastModified));
+    } // put(String,String,Object,long)
+
+    //
+    // Classes
+    //
+
+    /** A cached resource. */
+    private static final class Entry {
+
+        final String fSystemId;
+        final Object fValue;
+        final long fLastModified;
+
+        public Entry(String systemId, Object value, long lastModified) {
+            fSystemId = systemId;
+            fValue = value;
+            fLastModified = lastModified;
+        }
+    } // class Entry
+
+} // class XIncludeCache
@@ -21,6 +21,8 @@ import java.io.CharConversionException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Stack;
 import java.util.StringTokenizer;
@@ -30,6 +32,7 @@ import org.apache.xerces.impl.XMLEntityManager;
 import org.apache.xerces.impl.XMLErrorReporter;
 import org.apache.xerces.impl.io.MalformedByteSequenceException;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
+import org.apache.xerces.parsers.XML11Configuration;
 import org.apache.xerces.util.AugmentationsImpl;
 import org.apache.xerces.util.HTTPInputSource;
 import org.apache.xerces.util.IntStack;
@@ -204,6 +207,14 @@ public class XIncludeHandler
     protected static final String XINCLUDE_FIXUP_LANGUAGE =
         Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_FIXUP_LANGUAGE_FEATURE;
     
+    /** Feature identifier: parallel processing. */
+    protected static final String XINCLUDE_PARALLEL_PROCESSING =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_PARALLEL_PROCESSING_FEATURE;
+    
+    /** Feature identifier: streaming XPointer. */
+    protected static final String XINCLUDE_STREAMING_XPOINTER =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_STREAMING_XPOINTER_FEATURE;
+    
     /** Property identifier: JAXP schema language. */
     protected static final String JAXP_SCHEMA_LANGUAGE =
         Constants.JAXP_PROPERTY_PREFIX + Constants.SCHEMA_LANGUAGE;
@@ -228,22 +239,31 @@ public class XIncludeHandler
     protected static final String BUFFER_SIZE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_SIZE_PROPERTY;
     
+    /** property identifier: XInclude cache. */
+    protected static final String XINCLUDE_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
+
+    /** property identifier: entity manager. */
+    protected static final String ENTITY_MANAGER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_MANAGER_PROPERTY;
+    
     protected static final String PARSER_SETTINGS = 
         Constants.XERCES_FEATURE_PREFIX + Constants.PARSER_SETTINGS;
 
     /** Recognized features. */
     private static final String[] RECOGNIZED_FEATURES =
-        { ALLOW_UE_AND_NOTATION_EVENTS, XINCLUDE_FIXUP_BASE_URIS, XINCLUDE_FIXUP_LANGUAGE };
+        { ALLOW_UE_AND_NOTATION_EVENTS, XINCLUDE_FIXUP_BASE_URIS, XINCLUDE_FIXUP_LANGUAGE,
+          XINCLUDE_PARALLEL_PROCESSING, XINCLUDE_STREAMING_XPOINTER };
 
     /** Feature defaults. */
-    private static final Boolean[] FEATURE_DEFAULTS = { Boolean.TRUE, Boolean.TRUE, Boolean.TRUE };
+    private static final Boolean[] FEATURE_DEFAULTS = { Boolean.TRUE, Boolean.TRUE, Boolean.TRUE, Boolean.FALSE, Boolean.FALSE };
 
     /** Recognized properties. */
     private static final String[] RECOGNIZED_PROPERTIES =
-        { ERROR_REPORTER, ENTITY_RESOLVER, SECURITY_MANAGER, BUFFER_SIZE };
+        { ERROR_REPORTER, ENTITY_RESOLVER, SECURITY_MANAGER, BUFFER_SIZE, XINCLUDE_CACHE };
 
     /** Property defaults. */
-    private static final Object[] PROPERTY_DEFAULTS = { null, null, null, new Integer(XMLEntityManager.DEFAULT_BUFFER_SIZE) };
+    private static final Object[] PROPERTY_DEFAULTS = { null, null, null, new Integer(XMLEntityManager.DEFAULT_BUFFER_SIZE), null };
 
     // instance variables
 
@@ -340,6 +360,23 @@ public class XIncludeHandler
     private boolean fFixupBaseURIs = true;
     private boolean fFixupLanguage = true;
 
+    // whether included documents are parsed in advance on other threads,
+    // and the prefetcher parsing them (root document only)
+    private boolean fParallelProcessing;
+    private XIncludePrefetcher fPrefetcher;
+
+    // the cache of the included resources, or null
+    private XIncludeCache fCache;
+
+    // the entity manager reading the root document, or null
+    private XMLEntityManager fEntityManager;
+
+    // whether the parse of a document included with an xpointer stops
+    // once the pointer is resolved, and the identifiers of the documents
+    // which have been parsed completely (root document only)
+    private boolean fStreamingXPointer;
+    private HashMap fDocumentIdentifiers;
+
     // for SAX compatibility.
     // Has the value of the ALLOW_UE_AND_NOTATION_EVENTS feature
     private boolean fSendUEAndNotationEvents;
@@ -385,6 +422,11 @@ public class XIncludeHandler
 
     public void reset(XMLComponentManager componentManager)
         throws XNIException {
+        if (fPrefetcher != null) {
+            fPrefetcher.clear();
+            fPrefetcher = null;
+        }
+        fDocumentIdentifiers = null;
         fNamespaceContext = null;
         fDepth = 0;
         fResultDepth = isRootDocument() ? 0 : fParentXIncludeHandler.getResultDepth();
@@ -467,6 +509,22 @@ public class XIncludeHandler
             fFixupLanguage = true;
         }
         
+        try {
+            fParallelProcessing =
+                componentManager.getFeature(XINCLUDE_PARALLEL_PROCESSING);
+        }
+        catch (XMLConfigurationException e) {
+            fParallelProcessing = false;
+        }
+        
+        try {
+            fStreamingXPointer =
+                componentManager.getFeature(XINCLUDE_STREAMING_XPOINTER);
+        }
+        catch (XMLConfigurationException e) {
+            fStreamingXPointer = false;
+        }
+        
         // Get symbol table.
         try {
             SymbolTable value =
@@ -551,6 +609,22 @@ public class XIncludeHandler
         	fBufferSize = ((Integer)getPropertyDefault(BUFFER_SIZE)).intValue();
         }
         
+        // Get XInclude cache.
+        try {
+            fCache = (XIncludeCache) componentManager.getProperty(XINCLUDE_CACHE);
+        }
+        catch (XMLConfigurationException e) {
+            fCache = null;
+        }
+
+        // Get entity manager.
+        try {
+            fEntityManager = (XMLEntityManager) componentManager.getProperty(ENTITY_MANAGER);
+        }
+        catch (XMLConfigurationException e) {
+            fEntityManager = null;
+        }
+        
         // Reset XML 1.0 text reader.
         if (fXInclude10TextReader != null) {
         	fXInclude10TextReader.setBufferSize(fBufferSize);
@@ -678,6 +752,10 @@ public class XIncludeHandler
             }
             return;
         }
+        if (propertyId.equals(XINCLUDE_CACHE)) {
+            fCache = (XIncludeCache) value;
+            return;
+        }
         if (propertyId.equals(BUFFER_SIZE)) {
             Integer bufferSize = (Integer) value;
             if (fChildConfig != null) {
@@ -798,6 +876,24 @@ public class XIncludeHandler
             }
         }
 
+        // start parsing the included documents in advance; they cannot
+        // be if the application resolves them, nor cached. The prefetcher
+        // also records the documents for the XInclude cache.
+        if (isRootDocument() && fEntityResolver == null && (fParallelProcessing || fCache != null)) {
+            fPrefetcher = new XIncludePrefetcher(fSettings, fSecurityManager, fBufferSize, fCache, fParallelProcessing);
+            if (fPrefetcher.isEnabled()) {
+                // the document is only read again if it was read from its
+                // system identifier, not from a stream of the application
+                if (fParallelProcessing && isReadFromSystemId()) {
+                    fPrefetcher.scan(new XMLInputSource(locator.getPublicId(),
+                            locator.getLiteralSystemId(), locator.getBaseSystemId()));
+                }
+            }
+            else {
+                fPrefetcher = null;
+            }
+        }
+
         // initialize the current language
         fCurrentLanguage = XMLSymbols.EMPTY_STRING;
         saveLanguage(fCurrentLanguage);
@@ -1142,6 +1238,11 @@ public class XIncludeHandler
 
     public void endDocument(Augmentations augs) throws XNIException {
         if (isRootDocument()) {
+            if (fPrefetcher != null) {
+                fPrefetcher.clear();
+                fPrefetcher = null;
+            }
+            fDocumentIdentifiers = null;
             if (!fSeenRootElement) {
                 reportFatalError("RootElementRequired");
             }
@@ -1668,6 +1769,12 @@ public class XIncludeHandler
                 }
             }
 
+            // The identifiers of the included document are collected
+            // if the XPointer is streamed, and the document is read 
+            // from its system identifier.
+            String expandedSystemId = null;
+            HashSet identifiers = null;
+
             // If an xpointer attribute is present
             if (xpointer != null ) {
             	fChildConfig = fXPointerChildConfig;
@@ -1683,6 +1790,27 @@ public class XIncludeHandler
                             new Object[] { href, ex.getMessage()});
                         return false;
                 }
+                
+                if (fStreamingXPointer && XIncludePrefetcher.canPrefetch(includedSource)) {
+                    expandedSystemId = expandSystemId(includedSource);
+                }
+                if (expandedSystemId != null) {
+                    // A pointer to identifiers which the document does not contain
+                    // cannot be resolved; the document need not be parsed again.
+                    HashSet documentIdentifiers = (HashSet) getDocumentIdentifiers().get(expandedSystemId);
+                    if (documentIdentifiers == null) {
+                        identifiers = new HashSet();
+                    }
+                    else if (!((XPointerHandler)fXPtrProcessor).canResolve(documentIdentifiers) 
+                            && !searchForRecursiveIncludes(expandedSystemId)) {
+                        Locale locale = (fErrorReporter != null) ? fErrorReporter.getLocale() : null;
+                        String reason = fXIncludeMessageFormatter.formatMessage(locale, "XPointerResolutionUnsuccessful", null);
+                        reportResourceError("XMLResourceError", new Object[] {href, reason});
+                        // use the fallback
+                        return false;
+                    }
+                }
+                ((XPointerHandler)fXPtrProcessor).setStreaming(fStreamingXPointer, identifiers);
             } else {
             	fChildConfig = fXIncludeChildConfig;
             }
@@ -1697,7 +1825,27 @@ public class XIncludeHandler
                 fHasIncludeReportedContent = false;
                 fNamespaceContext.pushScope();
 
-                fChildConfig.parse(includedSource);
+                // use the document if it was parsed in advance
+                RecordedDocument prefetched = null;
+                XIncludePrefetcher prefetcher = getPrefetcher();
+                if (prefetcher != null && fChildConfig instanceof XML11Configuration) {
+                    prefetched = prefetcher.take(includedSource, isRootDocument());
+                }
+                try {
+                    if (prefetched != null) {
+                        ((XML11Configuration) fChildConfig).parse(prefetched);
+                    }
+                    else {
+                        fChildConfig.parse(includedSource);
+                    }
+                    // the document was parsed completely
+                    if (identifiers != null) {
+                        getDocumentIdentifiers().put(expandedSystemId, identifiers);
+                    }
+                }
+                catch (ParseTerminated e) {
+                    // the sub-resource pointed to has been included
+                }
                 // necessary to make sure proper location is reported to the application and in errors
                 fXIncludeLocator.setLocator(fDocLocation);
                 if (fErrorReporter != null) {
@@ -1778,7 +1926,37 @@ public class XIncludeHandler
                     textReader = fXInclude11TextReader;
                 }
                 textReader.setErrorReporter(fErrorReporter);
+
+                // replay the text from the cache, or record it
+                XIncludeCache cache = getCache();
+                String expandedSystemId = null;
+                String key = null;
+                long lastModified = 0;
+                if (cache != null && fEntityResolver == null && XIncludePrefetcher.canPrefetch(includedSource)) {
+                    expandedSystemId = expandSystemId(includedSource);
+                    if (expandedSystemId != null) {
+                        key = "text " + (fIsXML11 ? "1.1 " : "1.0 ") + encoding + ' ' + expandedSystemId;
+                        Object cached = cache.get(key, expandedSystemId);
+                        if (cached instanceof RecordedText) {
+                            ((RecordedText) cached).replay(this);
+                            return true;
+                        }
+                        if (cached != null) {
+                            // known not to be cacheable
+                            key = null;
+                        }
+                        else {
+                            lastModified = cache.getLastModified(expandedSystemId);
+                        }
+                    }
+                }
+                textReader.setRecording(key != null);
                 textReader.parse();
+                if (key != null) {
+                    RecordedText text = textReader.getRecordedText();
+                    cache.put(key, expandedSystemId, 
+                        text != null ? (Object) text : XIncludeCache.UNCACHEABLE, lastModified);
+                }
             }
             // encoding errors
             catch (MalformedByteSequenceException ex) {
@@ -2425,6 +2603,48 @@ public class XIncludeHandler
         return fParentXIncludeHandler == null;
     }
 
+    // returns true if the entity manager opened the document being
+    // started from its system identifier
+    private boolean isReadFromSystemId() {
+        if (fEntityManager == null) {
+            return false;
+        }
+        XMLEntityManager.ScannedEntity entity = fEntityManager.getCurrentEntity();
+        return entity != null && entity.readFromSystemId;
+    }
+
+    // returns the prefetcher of the root document, or null
+    private XIncludePrefetcher getPrefetcher() {
+        return isRootDocument() ? fPrefetcher : fParentXIncludeHandler.getPrefetcher();
+    }
+
+    // returns the XInclude cache of the root document, or null
+    private XIncludeCache getCache() {
+        return isRootDocument() ? fCache : fParentXIncludeHandler.getCache();
+    }
+
+    // returns the identifiers of the documents which have been parsed
+    // completely, keyed by their expanded system identifier
+    private HashMap getDocumentIdentifiers() {
+        if (!isRootDocument()) {
+            return fParentXIncludeHandler.getDocumentIdentifiers();
+        }
+        if (fDocumentIdentifiers == null) {
+            fDocumentIdentifiers = new HashMap();
+        }
+        return fDocumentIdentifiers;
+    }
+
+    // returns the expanded system identifier of an input source, or null
+    private static String expandSystemId(XMLInputSource source) {
+        try {
+            return XMLEntityManager.expandSystemId(source.getSystemId(), source.getBaseSystemId(), false);
+        }
+        catch (MalformedURIException e) {
+            return null;
+        }
+    }
+
     /**
      * Caches an unparsed entity.
      * @param name the name of the unparsed entity
@@ -2691,6 +2911,19 @@ public class XIncludeHandler
         }
     }
 
+    /**
+     * Thrown by an XPointer processor to stop the parse of the included
+     * document once the sub-resource it points to has been included.
+     */
+    protected static final class ParseTerminated extends RuntimeException {
+        private static final long serialVersionUID = -4404462516373582340L;
+        public static final ParseTerminated INSTANCE = new ParseTerminated();
+        private ParseTerminated() {}
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
     // This is a storage class to hold information about the notations.
     // We're not using XMLNotationDecl because we don't want to lose the augmentations.
     protected static class Notation {
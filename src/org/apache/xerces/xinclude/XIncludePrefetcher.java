@@ -0,0 +1,872 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.xinclude;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Stack;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.util.ParserConfigurationSettings;
+import org.apache.xerces.util.SecurityManager;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLComponentManager;
+import org.apache.xerces.xni.parser.XMLConfigurationException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Parses the documents included by a document on background threads,
+ * ahead of the XIncludeHandler, which replays the recorded events of
+ * a document when it gets to the &lt;include&gt; element referring to
+ * it. Only the reading and scanning of the documents is done in the
+ * background: the included documents are validated, and their
+ * includes processed, by the child pipelines of the XIncludeHandler,
+ * in document order.
+ * <p>
+ * The include elements of the root document are found by scanning it
+ * again on a background thread, and those of an included document
+ * while it is recorded. A document is only parsed in the background if
+ * it is included with parse="xml" and without content negotiation, and
+ * is only used if it has no document type declaration and no fatal
+ * error is reported for it; otherwise the XIncludeHandler parses the
+ * document itself, as if the parallel processing was not enabled.
+ * <p>
+ * The recorded documents are also kept in the XInclude cache, if one
+ * is set. With a cache, the documents not found in it are recorded on
+ * the calling thread when they are taken, even if the parallel
+ * processing is not enabled.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class XIncludePrefetcher {
+
+    //
+    // Constants
+    //
+
+    /** Maximum number of documents parsed in advance and not yet included. */
+    private static final int MAX_PENDING = 64;
+
+    /** Seconds after which an idle background thread ends. */
+    private static final long KEEP_ALIVE_TIME = 10;
+
+    // feature identifiers
+
+    private static final String NAMESPACES =
+        Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACES_FEATURE;
+    private static final String VALIDATION =
+        Constants.SAX_FEATURE_PREFIX + Constants.VALIDATION_FEATURE;
+    private static final String EXTERNAL_GENERAL_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_GENERAL_ENTITIES_FEATURE;
+    private static final String EXTERNAL_PARAMETER_ENTITIES =
+        Constants.SAX_FEATURE_PREFIX + Constants.EXTERNAL_PARAMETER_ENTITIES_FEATURE;
+    private static final String LOAD_EXTERNAL_DTD =
+        Constants.XERCES_FEATURE_PREFIX + Constants.LOAD_EXTERNAL_DTD_FEATURE;
+    private static final String STANDARD_URI_CONFORMANT =
+        Constants.XERCES_FEATURE_PREFIX + Constants.STANDARD_URI_CONFORMANT_FEATURE;
+
+    // property identifiers
+
+    private static final String ERROR_REPORTER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_REPORTER_PROPERTY;
+    private static final String SECURITY_MANAGER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
+    private static final String BUFFER_SIZE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_SIZE_PROPERTY;
+
+    //
+    // Data
+    //
+
+    /**
+     * Threads parsing included documents, shared by all prefetchers. The
+     * threads end when they have been idle for a while, so the pool
+     * never needs to be shut down, and does not keep the class loader
+     * of Xerces alive once documents are no longer included.
+     */
+    private static ExecutorService gExecutor;
+
+    /** Features of the child pipelines. */
+    private final ParserConfigurationSettings fSettings;
+    private final SecurityManager fSecurityManager;
+    private final int fBufferSize;
+    private final boolean fStrictURI;
+
+    /** The values of the features, distinguishing the documents in the cache. */
+    private final String fSettingsKey;
+
+    /** The XInclude cache, or null. */
+    private final XIncludeCache fCache;
+
+    /** True if the documents are parsed in the background. */
+    private final boolean fParallel;
+
+    /** Idle parsers. */
+    private final Vector fParsers = new Vector();
+
+    /** Documents found in include elements, keyed by expanded system identifier. */
+    private final HashMap fDocuments = new HashMap();
+
+    /** Documents found but not yet submitted, in the order they should be parsed. */
+    private final LinkedList fWaiting = new LinkedList();
+
+    /**
+     * Number of include elements of the root document, by expanded system
+     * identifier, which the XIncludeHandler got to before the scan found them.
+     */
+    private final HashMap fMissed = new HashMap();
+
+    /** Number of documents submitted and not yet taken. */
+    private int fSubmitted;
+
+    /** The scan of the root document, or null. */
+    private Future fScan;
+
+    /**
+     * True once the documents have been discarded. Read without the lock
+     * by the scan of the root document, which stops when it is set.
+     */
+    private volatile boolean fClosed;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * @param settings        the features of the child pipelines
+     * @param securityManager the security manager, or null
+     * @param bufferSize      the size of the scanner's buffers
+     * @param cache           the XInclude cache, or null
+     * @param parallel        true if the documents are parsed in the background
+     */
+    public XIncludePrefetcher(XMLComponentManager settings, SecurityManager securityManager,
+            int bufferSize, XIncludeCache cache, boolean parallel) {
+        // the settings of the XIncludeHandler may change while the
+        // documents are parsed, so the parsers use a copy of them
+        fSettings = new ParserConfigurationSettings();
+        StringBuffer settingsKey = new StringBuffer();
+        copyFeatures(Constants.getXercesFeatures(), Constants.XERCES_FEATURE_PREFIX, settings, fSettings, settingsKey);
+        copyFeatures(Constants.getSAXFeatures(), Constants.SAX_FEATURE_PREFIX, settings, fSettings, settingsKey);
+        fSettingsKey = settingsKey.toString();
+        fSecurityManager = securityManager;
+        fBufferSize = bufferSize;
+        fStrictURI = getFeature(STANDARD_URI_CONFORMANT);
+        fCache = cache;
+        fParallel = parallel;
+    }
+
+    //
+    // Methods
+    //
+
+    /**
+     * Returns true if the documents can be parsed in the background
+     * with the features of the child pipelines.
+     */
+    public boolean isEnabled() {
+        return getFeature(NAMESPACES);
+    } // isEnabled():boolean
+
+    /**
+     * Starts scanning the document again on a background thread, to
+     * parse the documents it includes before the XIncludeHandler gets
+     * to them.
+     */
+    public synchronized void scan(XMLInputSource source) {
+        if (canPrefetch(source) && !fClosed) {
+            fScan = getExecutor().submit(new ScanTask(this, source));
+        }
+    } // scan(XMLInputSource)
+
+    /**
+     * Returns the recorded document which is read from the input source,
+     * waiting for it to be recorded if needed. Returns null if the
+     * document was not parsed in the background or found in the cache,
+     * or cannot be used; it must then be parsed by the caller.
+     *
+     * @param source      the input source of the include element
+     * @param rootInclude true if the include element is in the root document
+     */
+    public RecordedDocument take(XMLInputSource source, boolean rootInclude) {
+        if (!canPrefetch(source)) {
+            return null;
+        }
+        String expandedSystemId = expandSystemId(source.getSystemId(), source.getBaseSystemId());
+        if (expandedSystemId == null) {
+            return null;
+        }
+        Future parse = fParallel ? takeParse(expandedSystemId, rootInclude) : null;
+        RecordedDocument document = null;
+        if (parse != null) {
+            try {
+                document = (RecordedDocument) parse.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+            }
+        }
+        else if (fCache != null) {
+            document = record(source, expandedSystemId);
+        }
+        return document != null ? document.forSource(source, expandedSystemId) : null;
+    } // take(XMLInputSource,boolean):RecordedDocument
+
+    /**
+     * Returns the parse of the document submitted for an include element,
+     * or null if it was not submitted.
+     */
+    private Future takeParse(String expandedSystemId, boolean rootInclude) {
+        Future parse;
+        synchronized (this) {
+            Entry entry = (Entry) fDocuments.get(expandedSystemId);
+            if (entry == null) {
+                if (rootInclude) {
+                    // the scan has not yet found the include element
+                    int[] missed = (int[]) fMissed.get(expandedSystemId);
+                    if (missed == null) {
+                        fMissed.put(expandedSystemId, new int[] { 1 });
+                    }
+                    else {
+                        ++missed[0];
+                    }
+                }
+                return null;
+            }
+            parse = entry.fParse;
+            if (--entry.fReferences == 0) {
+                fDocuments.remove(expandedSystemId);
+                if (parse != null) {
+                    --fSubmitted;
+                    submitWaiting();
+                }
+                else {
+                    fWaiting.remove(entry);
+                }
+            }
+        }
+        return parse;
+    } // takeParse(String,boolean):Future
+
+    /** Discards the documents which have not been taken. */
+    public synchronized void clear() {
+        fClosed = true;
+        if (fScan != null) {
+            // a scan already started stops at its next element
+            fScan.cancel(false);
+            fScan = null;
+        }
+        for (Iterator i = fDocuments.values().iterator(); i.hasNext();) {
+            Future parse = ((Entry) i.next()).fParse;
+            if (parse != null) {
+                parse.cancel(false);
+            }
+        }
+        fDocuments.clear();
+        fWaiting.clear();
+        fMissed.clear();
+    } // clear()
+
+    /**
+     * Returns true if the input source is identified by a system
+     * identifier alone, so that the document can be read again by
+     * another parser.
+     */
+    public static boolean canPrefetch(XMLInputSource source) {
+        return source != null &&
+            source.getClass() == XMLInputSource.class &&
+            source.getSystemId() != null &&
+            source.getByteStream() == null &&
+            source.getCharacterStream() == null;
+    } // canPrefetch(XMLInputSource):boolean
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns the document from the cache, or records it, adds the
+     * documents it includes and caches it. Returns null if the document
+     * cannot be recorded.
+     */
+    private RecordedDocument record(XMLInputSource source, String expandedSystemId) {
+        String key = null;
+        long lastModified = 0;
+        if (fCache != null) {
+            key = "xml " + fSettingsKey + ' ' + expandedSystemId;
+            Object cached = fCache.get(key, expandedSystemId);
+            if (cached != null) {
+                return cached != XIncludeCache.UNCACHEABLE ? (RecordedDocument) cached : null;
+            }
+            lastModified = fCache.getLastModified(expandedSystemId);
+        }
+        RecordingParser parser = getParser();
+        try {
+            RecordedDocument document = parser.record(source);
+            if (document != null) {
+                found(parser.fRecorder.fIncludes, true);
+            }
+            if (fCache != null) {
+                fCache.put(key, expandedSystemId,
+                        document != null ? (Object) document : XIncludeCache.UNCACHEABLE, lastModified);
+            }
+            return document;
+        }
+        finally {
+            parser.fRecorder.reset(null);
+            releaseParser(parser);
+        }
+    } // record(XMLInputSource,String):RecordedDocument
+
+    /**
+     * Adds the documents included by a document, in document order.
+     * The documents included by the root document are added after the
+     * documents already found, and those included by another document
+     * before them, so that the documents are parsed in about the order
+     * the XIncludeHandler includes them. The documents of the root
+     * document which the XIncludeHandler has already parsed are skipped.
+     */
+    private synchronized void found(Vector includes, boolean first) {
+        if (fClosed || !fParallel) {
+            return;
+        }
+        int index = 0;
+        for (int i = 0; i < includes.size(); ++i) {
+            XMLInputSource source = (XMLInputSource) includes.elementAt(i);
+            String expandedSystemId = expandSystemId(source.getSystemId(), source.getBaseSystemId());
+            if (expandedSystemId == null) {
+                continue;
+            }
+            if (!first) {
+                int[] missed = (int[]) fMissed.get(expandedSystemId);
+                if (missed != null) {
+                    if (--missed[0] == 0) {
+                        fMissed.remove(expandedSystemId);
+                    }
+                    continue;
+                }
+            }
+            Entry entry = (Entry) fDocuments.get(expandedSystemId);
+            if (entry == null) {
+                entry = new Entry(source);
+                fDocuments.put(expandedSystemId, entry);
+                if (first) {
+                    fWaiting.add(index++, entry);
+                }
+                else {
+                    fWaiting.addLast(entry);
+                }
+            }
+            ++entry.fReferences;
+        }
+        submitWaiting();
+    } // found(Vector,boolean)
+
+    /** Submits the waiting documents while there are not too many pending. */
+    private void submitWaiting() {
+        while (!fClosed && fSubmitted < MAX_PENDING && !fWaiting.isEmpty()) {
+            Entry entry = (Entry) fWaiting.removeFirst();
+            String expandedSystemId = expandSystemId(entry.fSource.getSystemId(), entry.fSource.getBaseSystemId());
+            entry.fParse = getExecutor().submit(new RecordTask(this, entry.fSource, expandedSystemId));
+            ++fSubmitted;
+        }
+    } // submitWaiting()
+
+    private String expandSystemId(String systemId, String baseSystemId) {
+        try {
+            return XMLEntityManager.expandSystemId(systemId, baseSystemId, fStrictURI);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    } // expandSystemId(String,String):String
+
+    private boolean getFeature(String featureId) {
+        try {
+            return fSettings.getFeature(featureId);
+        }
+        catch (XMLConfigurationException e) {
+            return false;
+        }
+    } // getFeature(String):boolean
+
+    private RecordingParser getParser() {
+        synchronized (fParsers) {
+            int size = fParsers.size();
+            if (size > 0) {
+                RecordingParser parser = (RecordingParser) fParsers.elementAt(size - 1);
+                fParsers.removeElementAt(size - 1);
+                return parser;
+            }
+        }
+        return new RecordingParser(this, false);
+    } // getParser():RecordingParser
+
+    private void releaseParser(RecordingParser parser) {
+        fParsers.addElement(parser);
+    } // releaseParser(RecordingParser)
+
+    private static void copyFeatures(Enumeration features, String prefix,
+            XMLComponentManager from, ParserConfigurationSettings to, StringBuffer key) {
+        while (features.hasMoreElements()) {
+            String featureId = prefix + (String) features.nextElement();
+            to.addRecognizedFeatures(new String[] { featureId });
+            try {
+                boolean state = from.getFeature(featureId);
+                to.setFeature(featureId, state);
+                key.append(state ? '1' : '0');
+            }
+            catch (XMLConfigurationException e) {
+                key.append('-');
+            }
+        }
+    } // copyFeatures(Enumeration,String,XMLComponentManager,ParserConfigurationSettings,StringBuffer)
+
+    private static synchronized ExecutorService getExecutor() {
+        if (gExecutor == null) {
+            // reading included documents is mostly waiting for I/O
+            int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Xerces XInclude parser");
+                    thread.setDaemon(true);
+                    // do not hold on to the class loader of the application which created it
+                    thread.setContextClassLoader(XIncludePrefetcher.class.getClassLoader());
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            gExecutor = executor;
+        }
+        return gExecutor;
+    } // getExecutor():ExecutorService
+
+    //
+    // Classes
+    //
+
+    /** A document found in include elements. */
+    private static final class Entry {
+
+        /** The input source of the first include element found. */
+        final XMLInputSource fSource;
+
+        /** The parse of the document, or null if it was not yet submitted. */
+        Future fParse;
+
+        /** The number of include elements found which were not yet taken. */
+        int fReferences;
+
+        public Entry(XMLInputSource source) {
+            fSource = source;
+        }
+    } // class Entry
+
+    /** Records the document, and adds the documents it includes. */
+    private static final class RecordTask implements Callable {
+
+        private final XIncludePrefetcher fPrefetcher;
+        private final XMLInputSource fSource;
+        private final String fExpandedSystemId;
+
+        public RecordTask(XIncludePrefetcher prefetcher, XMLInputSource source, String expandedSystemId) {
+            fPrefetcher = prefetcher;
+            fSource = source;
+            fExpandedSystemId = expandedSystemId;
+        }
+
+        public Object call() {
+            return fPrefetcher.record(fSource, fExpandedSystemId);
+        }
+    } // class RecordTask
+
+    /** Scans the root document, adding the documents it includes as they are found. */
+    private static final class ScanTask implements Runnable {
+
+        private final XIncludePrefetcher fPrefetcher;
+        private final XMLInputSource fSource;
+
+        public ScanTask(XIncludePrefetcher prefetcher, XMLInputSource source) {
+            fPrefetcher = prefetcher;
+            fSource = source;
+        }
+
+        public void run() {
+            new RecordingParser(fPrefetcher, true).scan(fSource);
+        }
+    } // class ScanTask
+
+    /**
+     * A parser configuration sending the events of its scanner to a
+     * recorder, with the features of the child pipelines.
+     */
+    private static final class RecordingParser extends XML11Configuration {
+
+        final Recorder fRecorder;
+        private final RecordingErrorReporter fRecordingReporter;
+
+        /**
+         * @param prefetcher the prefetcher
+         * @param scanOnly   true if the parser only looks for include
+         *                   elements, without recording the document
+         */
+        public RecordingParser(XIncludePrefetcher prefetcher, boolean scanOnly) {
+            Enumeration features = Constants.getXercesFeatures();
+            copyFeatures(features, Constants.XERCES_FEATURE_PREFIX, prefetcher.fSettings);
+            features = Constants.getSAXFeatures();
+            copyFeatures(features, Constants.SAX_FEATURE_PREFIX, prefetcher.fSettings);
+            if (scanOnly) {
+                // the root document is only scanned for include elements
+                setFeature(VALIDATION, false);
+                setFeature(LOAD_EXTERNAL_DTD, false);
+                setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+                setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
+            }
+            if (prefetcher.fSecurityManager != null) {
+                setProperty(SECURITY_MANAGER, prefetcher.fSecurityManager);
+            }
+            setProperty(BUFFER_SIZE, new Integer(prefetcher.fBufferSize));
+            fRecorder = new Recorder(prefetcher, scanOnly);
+            fRecordingReporter = new RecordingErrorReporter(fRecorder);
+            fRecordingReporter.setDocumentLocator(fEntityManager.getEntityScanner());
+            setProperty(ERROR_REPORTER, fRecordingReporter);
+            setDocumentHandler(fRecorder);
+        }
+
+        /**
+         * Returns the recorded document, or null if it cannot be used.
+         * The include elements found are kept by the recorder until it
+         * is reset.
+         */
+        public RecordedDocument record(XMLInputSource source) {
+            fRecorder.reset(new RecordedDocument());
+            try {
+                parse(new XMLInputSource(null, source.getSystemId(), source.getBaseSystemId()));
+                return fRecorder.fDocument;
+            }
+            catch (IOException e) {
+            }
+            catch (XNIException e) {
+            }
+            return null;
+        }
+
+        /**
+         * Looks for include elements in the document, until the
+         * prefetcher is closed.
+         */
+        public void scan(XMLInputSource source) {
+            fRecorder.reset(null);
+            try {
+                parse(new XMLInputSource(null, source.getSystemId(), source.getBaseSystemId()));
+            }
+            catch (IOException e) {
+            }
+            catch (XNIException e) {
+            }
+        }
+
+        private void copyFeatures(Enumeration features, String prefix, ParserConfigurationSettings from) {
+            while (features.hasMoreElements()) {
+                String featureId = prefix + (String) features.nextElement();
+                try {
+                    setFeature(featureId, from.getFeature(featureId));
+                }
+                catch (XMLConfigurationException e) {
+                }
+            }
+        }
+    } // class RecordingParser
+
+    /**
+     * Records the errors reported while scanning a document, and stops
+     * the scanning at the first fatal error.
+     */
+    private static final class RecordingErrorReporter extends XMLErrorReporter {
+
+        private final Recorder fRecorder;
+
+        public RecordingErrorReporter(Recorder recorder) {
+            fRecorder = recorder;
+        }
+
+        public String reportError(XMLLocator location, String domain, String key,
+                Object[] arguments, short severity, Exception exception) throws XNIException {
+            if (severity == SEVERITY_FATAL_ERROR) {
+                // the document is parsed again by the XIncludeHandler
+                throw new XNIException(key);
+            }
+            if (fRecorder.fDocument != null) {
+                fRecorder.fDocument.error(location, domain, key, arguments, severity, exception);
+            }
+            return key;
+        }
+    } // class RecordingErrorReporter
+
+    /**
+     * Records the events of a document, and looks for the include
+     * elements which are not descendants of another include element.
+     */
+    private static final class Recorder implements XMLDocumentHandler {
+
+        private final XIncludePrefetcher fPrefetcher;
+        private final boolean fScanOnly;
+
+        /** The document recorded, or null if the document is only scanned. */
+        RecordedDocument fDocument;
+
+        /** Input sources of the include elements found. */
+        final Vector fIncludes = new Vector();
+
+        private XMLDocumentSource fDocumentSource;
+        private XMLLocator fLocator;
+        private NamespaceContext fNamespaceContext;
+
+        /** Names of the open elements. */
+        private final Stack fElements = new Stack();
+
+        /** Base URIs of the open elements. */
+        private final Stack fBaseURIs = new Stack();
+
+        /** Depth of the include element whose children are skipped, or -1. */
+        private int fIncludeDepth;
+
+        public Recorder(XIncludePrefetcher prefetcher, boolean scanOnly) {
+            fPrefetcher = prefetcher;
+            fScanOnly = scanOnly;
+        }
+
+        public void reset(RecordedDocument document) {
+            fDocument = document;
+            fIncludes.removeAllElements();
+            fLocator = null;
+            fNamespaceContext = null;
+            fElements.clear();
+            fBaseURIs.clear();
+            fIncludeDepth = -1;
+        }
+
+        //
+        // XMLDocumentHandler methods
+        //
+
+        public void startDocument(XMLLocator locator, String encoding,
+                NamespaceContext namespaceContext, Augmentations augs) throws XNIException {
+            fLocator = locator;
+            fNamespaceContext = namespaceContext;
+            fBaseURIs.push(locator.getExpandedSystemId());
+            if (fDocument != null) {
+                fDocument.startDocument(locator, encoding, augs);
+            }
+        }
+
+        public void xmlDecl(String version, String encoding, String standalone, Augmentations augs)
+            throws XNIException {
+            if (fDocument != null) {
+                fDocument.xmlDecl(version, encoding, standalone, augs, fLocator);
+            }
+        }
+
+        public void doctypeDecl(String rootElement, String publicId, String systemId, Augmentations augs)
+            throws XNIException {
+            if (!fScanOnly) {
+                // the events would depend on the DTD
+                throw new XNIException("doctypeDecl");
+            }
+        }
+
+        public void comment(XMLString text, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.COMMENT, RecordedDocument.copy(text), augs, fLocator);
+            }
+        }
+
+        public void processingInstruction(String target, XMLString data, Augmentations augs)
+            throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.PROCESSING_INSTRUCTION,
+                        new Object[] { target, RecordedDocument.copy(data) }, augs, fLocator);
+            }
+        }
+
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            if (fDocument != null) {
+                fDocument.element(RecordedDocument.START_ELEMENT, element, attributes,
+                        fNamespaceContext, augs, fLocator);
+                fElements.push(new QName(element));
+            }
+            fBaseURIs.push(findInclude(element, attributes));
+            if (fIncludeDepth == -1 && isInclude(element)) {
+                fIncludeDepth = fBaseURIs.size();
+            }
+        }
+
+        public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            if (fDocument != null) {
+                fDocument.element(RecordedDocument.EMPTY_ELEMENT, element, attributes,
+                        fNamespaceContext, augs, fLocator);
+            }
+            findInclude(element, attributes);
+        }
+
+        public void startGeneralEntity(String name, XMLResourceIdentifier identifier,
+                String encoding, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.startGeneralEntity(name, identifier, encoding, augs, fLocator);
+            }
+        }
+
+        public void textDecl(String version, String encoding, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.TEXT_DECL, new String[] { version, encoding }, augs, fLocator);
+            }
+        }
+
+        public void endGeneralEntity(String name, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.END_GENERAL_ENTITY, name, augs, fLocator);
+            }
+        }
+
+        public void characters(XMLString text, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.CHARACTERS, RecordedDocument.copy(text), augs, fLocator);
+            }
+        }
+
+        public void ignorableWhitespace(XMLString text, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.IGNORABLE_WHITESPACE, RecordedDocument.copy(text), augs, fLocator);
+            }
+        }
+
+        public void endElement(QName element, Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                // the scanner sends the name of the start tag
+                fDocument.add(RecordedDocument.END_ELEMENT, fElements.pop(), augs, fLocator);
+            }
+            if (fIncludeDepth == fBaseURIs.size()) {
+                fIncludeDepth = -1;
+            }
+            fBaseURIs.pop();
+        }
+
+        public void startCDATA(Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.START_CDATA, null, augs, fLocator);
+            }
+        }
+
+        public void endCDATA(Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.END_CDATA, null, augs, fLocator);
+            }
+        }
+
+        public void endDocument(Augmentations augs) throws XNIException {
+            if (fDocument != null) {
+                fDocument.add(RecordedDocument.END_DOCUMENT, null, augs, fLocator);
+            }
+        }
+
+        public void setDocumentSource(XMLDocumentSource source) {
+            fDocumentSource = source;
+        }
+
+        public XMLDocumentSource getDocumentSource() {
+            return fDocumentSource;
+        }
+
+        //
+        // Private methods
+        //
+
+        /**
+         * Adds the input source of the element if it is an include element
+         * which may be parsed in the background, and returns the base URI
+         * of the element, as the XIncludeHandler computes them.
+         */
+        private String findInclude(QName element, XMLAttributes attributes) {
+            if (fScanOnly && fPrefetcher.fClosed) {
+                // the documents found would be discarded; the exception
+                // ends the scan, releasing the thread
+                throw new XNIException("closed");
+            }
+            String baseURI = (String) fBaseURIs.peek();
+            String xmlBase = attributes.getValue(NamespaceContext.XML_URI, "base");
+            if (xmlBase != null) {
+                try {
+                    baseURI = XMLEntityManager.expandSystemId(xmlBase, baseURI, false);
+                }
+                catch (IOException e) {
+                }
+            }
+            if (fIncludeDepth == -1 && isInclude(element)) {
+                String href = attributes.getValue(XIncludeHandler.XINCLUDE_ATTR_HREF);
+                String parse = attributes.getValue(XIncludeHandler.XINCLUDE_ATTR_PARSE);
+                if (href != null && href.length() > 0 &&
+                    (parse == null || parse.equals(XIncludeHandler.XINCLUDE_PARSE_XML)) &&
+                    attributes.getValue(XIncludeHandler.XINCLUDE_ATTR_ACCEPT) == null &&
+                    attributes.getValue(XIncludeHandler.XINCLUDE_ATTR_ACCEPT_LANGUAGE) == null) {
+                    fIncludes.addElement(new XMLInputSource(null, href, baseURI));
+                    if (fScanOnly) {
+                        fPrefetcher.found(fIncludes, false);
+                        fIncludes.removeAllElements();
+                    }
+                }
+            }
+            return baseURI;
+        }
+
+        private static boolean isInclude(QName element) {
+            return element.uri == XIncludeHandler.XINCLUDE_NS_URI &&
+                element.localpart.equals(XIncludeHandler.XINCLUDE_INCLUDE);
+        }
+    } // class Recorder
+
+} // class XIncludePrefetcher
@@ -38,8 +38,10 @@ import org.apache.xerces.impl.io.UTF8Reader;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
 import org.apache.xerces.util.EncodingMap;
 import org.apache.xerces.util.HTTPInputSource;
+import org.apache.xerces.util.IntStack;
 import org.apache.xerces.util.MessageFormatter;
 import org.apache.xerces.util.XMLChar;
+import org.apache.xerces.util.XMLStringBuffer;
 import org.apache.xerces.xni.XMLString;
 import org.apache.xerces.xni.parser.XMLInputSource;
 
@@ -71,6 +73,11 @@ public class XIncludeTextReader {
     private XMLInputSource fSource;
     private XMLErrorReporter fErrorReporter;
     private XMLString fTempString = new XMLString();
+    
+    // records the text read, for the XInclude cache
+    private boolean fRecording;
+    private XMLStringBuffer fRecordedText;
+    private IntStack fRecordedChunkEnds;
  
     /**
      * Construct the XIncludeReader using the XMLInputSource and XIncludeHandler.
@@ -96,6 +103,42 @@ public class XIncludeTextReader {
     public void setErrorReporter(XMLErrorReporter errorReporter) {
         fErrorReporter = errorReporter;
     }
+    
+    /**
+     * Sets whether the text read by the next call to parse() is recorded.
+     * The text is not recorded if it contains an invalid character.
+     * 
+     * @param recording true to record the text
+     */
+    void setRecording(boolean recording) {
+        fRecording = recording;
+        if (recording) {
+            if (fRecordedText == null) {
+                fRecordedText = new XMLStringBuffer();
+                fRecordedChunkEnds = new IntStack();
+            }
+            fRecordedText.clear();
+            fRecordedChunkEnds.clear();
+        }
+    }
+    
+    /**
+     * Returns the text recorded by the last call to parse(), or null if
+     * it was not recorded.
+     */
+    RecordedText getRecordedText() {
+        if (!fRecording) {
+            return null;
+        }
+        fRecording = false;
+        char[] text = new char[fRecordedText.length];
+        System.arraycopy(fRecordedText.ch, fRecordedText.offset, text, 0, text.length);
+        int[] chunkEnds = new int[fRecordedChunkEnds.size()];
+        for (int i = 0; i < chunkEnds.length; ++i) {
+            chunkEnds[i] = fRecordedChunkEnds.elementAt(i);
+        }
+        return new RecordedText(text, chunkEnds);
+    }
 
     /**
      * Return the Reader for given XMLInputSource.
@@ -468,6 +511,7 @@ public class XIncludeTextReader {
                             // convert surrogates to a supplemental character
                             int sup = XMLChar.supplemental(ch, (char)ch2);
                             if (!isValid(sup)) {
+                                fRecording = false;
                                 fErrorReporter.reportError(XMLMessageFormatter.XML_DOMAIN,
                                                            "InvalidCharInContent", 
                                                            new Object[] { Integer.toString(sup, 16) },
@@ -475,6 +519,7 @@ public class XIncludeTextReader {
                             }
                         }
                         else {
+                            fRecording = false;
                             fErrorReporter.reportError(XMLMessageFormatter.XML_DOMAIN,
                                                        "InvalidCharInContent", 
                                                        new Object[] { Integer.toString(ch2, 16) },
@@ -482,6 +527,7 @@ public class XIncludeTextReader {
                         }
                     }
                     else {
+                        fRecording = false;
                         fErrorReporter.reportError(XMLMessageFormatter.XML_DOMAIN,
                                                    "InvalidCharInContent", 
                                                    new Object[] { Integer.toString(ch, 16) },
@@ -492,6 +538,10 @@ public class XIncludeTextReader {
             if (fHandler != null && readSize > 0) {
                 fTempString.offset = 0;
                 fTempString.length = readSize;
+                if (fRecording) {
+                    fRecordedText.append(fTempString);
+                    fRecordedChunkEnds.push(fRecordedText.length);
+                }
                 fHandler.characters(
                     fTempString,
                     fHandler.modifyAugmentations(null, true));
@@ -213,6 +213,14 @@ final class ElementSchemePointer implements XPointerPart {
         return fSchemeData;
     }
 
+    /**
+     * Returns the name of the ShortHand pointer the child sequence 
+     * is relative to, or null if it is relative to the document.
+     */
+    String getShortHandPointerName() {
+        return fShortHandPointerName;
+    }
+
     /**
      * Sets the scheme name
      * 
@@ -124,6 +124,24 @@ final class ShortHandPointer implements XPointerPart {
     private boolean hasMatchingIdentifier(QName element,
             XMLAttributes attributes, Augmentations augs, int event)
     throws XNIException {
+        String normalizedValue = getIdentifier(attributes);
+        
+        if (normalizedValue != null
+                && normalizedValue.equals(fShortHandPointer)) {
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the identifier of an element, or null if it has none.
+     * 
+     * @param attributes the attributes of the element, or null
+     * @return the identifier of the element, or null
+     * @throws XNIException
+     */
+    String getIdentifier(XMLAttributes attributes) throws XNIException {
         String normalizedValue = null;
         
         // The identifiers of an element are determined by the 
@@ -163,12 +181,7 @@ final class ShortHandPointer implements XPointerPart {
             }
         }
         
-        if (normalizedValue != null
-                && normalizedValue.equals(fShortHandPointer)) {
-            return true;
-        }
-        
-        return false;
+        return normalizedValue;
     }
     
     /**
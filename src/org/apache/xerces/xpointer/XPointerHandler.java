@@ -19,6 +19,7 @@ package org.apache.xerces.xpointer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
 
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XMLErrorReporter;
@@ -92,6 +93,21 @@ public final class XPointerHandler extends XIncludeHandler implements
     protected boolean fFixupBase = false;
     protected boolean fFixupLang = false;
     
+    // Stop the parse once the element selected by the pointer has ended
+    protected boolean fStreaming = false;
+    
+    // The identifiers of the elements of the document, or null if
+    // they are not collected
+    protected Set fIdentifiers = null;
+    
+    // Reads the identifiers of the elements
+    private ShortHandPointer fIdentifierReader = null;
+    
+    // The depth of the current element, and of the element selected
+    // by the pointer, or 0 if no element has been selected yet
+    private int fElementDepth = 0;
+    private int fSelectedDepth = 0;
+    
     // ************************************************************************
     // Constructors
     // ************************************************************************
@@ -354,6 +370,49 @@ public final class XPointerHandler extends XIncludeHandler implements
 		return resolved;
     }
 
+    /**
+     * Sets whether the parse of the document is stopped once the element
+     * selected by the pointer has ended, and the set to which the identifiers
+     * of the elements of the document are added.
+     * 
+     * @param streaming true if the parse is stopped once the pointer is resolved
+     * @param identifiers the set to which the identifiers are added, or null
+     */
+    public void setStreaming(boolean streaming, Set identifiers) {
+        fStreaming = streaming;
+        fIdentifiers = identifiers;
+        if (identifiers != null && fIdentifierReader == null) {
+            fIdentifierReader = new ShortHandPointer(fSymbolTable);
+        }
+    }
+    
+    /**
+     * Returns false if the pointer can only select elements by identifiers
+     * which are not in the given set of identifiers of a document, and thus
+     * cannot be resolved in that document.
+     * 
+     * @param identifiers the identifiers of the elements of a document
+     */
+    public boolean canResolve(Set identifiers) {
+        for (int i = 0; i < fXPointerParts.size(); i++) {
+            XPointerPart part = (XPointerPart) fXPointerParts.get(i);
+            String identifier;
+            if (part instanceof ShortHandPointer) {
+                identifier = part.getSchemeName();
+            }
+            else if (part instanceof ElementSchemePointer) {
+                identifier = ((ElementSchemePointer) part).getShortHandPointerName();
+            }
+            else {
+                return true;
+            }
+            if (identifier == null || identifiers.contains(identifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns true if the XPointer successfully found a sub-resource .
      * 
@@ -372,6 +431,16 @@ public final class XPointerHandler extends XIncludeHandler implements
         return fXPointerPart;
     }
 
+    /**
+     * Adds the identifier of an element to the identifiers of the document.
+     */
+    private void addIdentifier(XMLAttributes attributes) {
+        String identifier = fIdentifierReader.getIdentifier(attributes);
+        if (identifier != null) {
+            fIdentifiers.add(identifier);
+        }
+    }
+
     /**
      * Reports XPointer Errors
      * 
@@ -427,6 +496,10 @@ public final class XPointerHandler extends XIncludeHandler implements
         fXPointerPart = null;
         fFoundMatchingPtrPart = false;
         fIsXPointerResolved = false;
+        fStreaming = false;
+        fIdentifiers = null;
+        fElementDepth = 0;
+        fSelectedDepth = 0;
         //fFixupBase = false;
         //fFixupLang = false;
 
@@ -1039,6 +1112,10 @@ public final class XPointerHandler extends XIncludeHandler implements
      */
     public void startElement(QName element, XMLAttributes attributes,
             Augmentations augs) throws XNIException {
+        ++fElementDepth;
+        if (fIdentifiers != null) {
+            addIdentifier(attributes);
+        }
         if (!resolveXPointer(element, attributes, augs,
                 XPointerPart.EVENT_ELEMENT_START)) {
 
@@ -1055,6 +1132,9 @@ public final class XPointerHandler extends XIncludeHandler implements
 
             return;
         }
+        if (fSelectedDepth == 0) {
+            fSelectedDepth = fElementDepth;
+        }
         super.startElement(element, attributes, augs);
     }
 
@@ -1070,6 +1150,9 @@ public final class XPointerHandler extends XIncludeHandler implements
      */
     public void emptyElement(QName element, XMLAttributes attributes,
             Augmentations augs) throws XNIException {
+        if (fIdentifiers != null) {
+            addIdentifier(attributes);
+        }
         if (!resolveXPointer(element, attributes, augs,
                 XPointerPart.EVENT_ELEMENT_EMPTY)) {
             // xml:base and xml:lang processing
@@ -1086,6 +1169,10 @@ public final class XPointerHandler extends XIncludeHandler implements
             return;
         }
         super.emptyElement(element, attributes, augs);
+        // the selected element has ended
+        if (fStreaming && fSelectedDepth == 0) {
+            throw ParseTerminated.INSTANCE;
+        }
     }
 
     /**
@@ -1138,6 +1225,7 @@ public final class XPointerHandler extends XIncludeHandler implements
      */
     public void endElement(QName element, Augmentations augs)
             throws XNIException {
+        int depth = fElementDepth--;
         if (!resolveXPointer(element, null, augs,
                 XPointerPart.EVENT_ELEMENT_END)) {
 
@@ -1145,6 +1233,10 @@ public final class XPointerHandler extends XIncludeHandler implements
             return;
         }
         super.endElement(element, augs);
+        // the selected element has ended
+        if (fStreaming && depth == fSelectedDepth) {
+            throw ParseTerminated.INSTANCE;
+        }
     }
 
     /**
@@ -44,6 +44,7 @@ package org.apache.xml.serialize;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -228,6 +229,19 @@ public abstract class BaseMarkupSerializer
      */
     private OutputStream    _output;
 
+
+    /**
+     * The output channel.
+     */
+    private WritableByteChannel _channel;
+
+
+    /**
+     * The writer encoding into the output stream or channel, kept
+     * so that its buffer is reused by the next document.
+     */
+    private ByteSinkWriter  _byteWriter;
+
     /** Current node that is being processed  */
     protected Node fCurrentNode = null;
 
@@ -287,6 +301,28 @@ public abstract class BaseMarkupSerializer
             throw new NullPointerException(msg);
         }
         _output = output;
+        _channel = null;
+        _writer = null;
+        reset();
+    }
+
+
+    /**
+     * Specifies a blocking byte channel to which the document should be
+     * serialized. UTF-8, US-ASCII and ISO-8859-1 are encoded directly
+     * into a buffer written to the channel.
+     *
+     * @param channel The output channel
+     */
+    public void setOutputByteChannel( WritableByteChannel channel )
+    {
+        if ( channel == null ) {
+            String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.SERIALIZER_DOMAIN,
+                                                           "ArgumentIsNull", new Object[]{"channel"});
+            throw new NullPointerException(msg);
+        }
+        _channel = channel;
+        _output = null;
         _writer = null;
         reset();
     }
@@ -301,6 +337,7 @@ public abstract class BaseMarkupSerializer
         }
         _writer = writer;
         _output = null;
+        _channel = null;
         reset();
     }
 
@@ -340,7 +377,7 @@ public abstract class BaseMarkupSerializer
         if ( _prepared )
             return;
 
-        if ( _writer == null && _output == null ) {
+        if ( _writer == null && _output == null && _channel == null ) {
             String msg = DOMMessageFormatter.formatMessage(DOMMessageFormatter.SERIALIZER_DOMAIN,
                                                            "NoWriterSupplied", null);
             throw new IOException(msg);
@@ -351,8 +388,23 @@ public abstract class BaseMarkupSerializer
 
         _encodingInfo = _format.getEncodingInfo();
 
-        if ( _output != null ) {
-            _writer = _encodingInfo.getWriter(_output);
+        if ( _output != null || _channel != null ) {
+            int encoding = _encodingInfo.getByteSinkEncoding();
+            if ( encoding != -1 ) {
+                // Encode directly into bytes, reusing the buffer of the
+                // previous document.
+                if ( _byteWriter == null )
+                    _byteWriter = new ByteSinkWriter( ByteSinkWriter.DEFAULT_BUFFER_SIZE );
+                if ( _output != null )
+                    _byteWriter.reset( _output, encoding );
+                else
+                    _byteWriter.reset( _channel, encoding );
+                _writer = _byteWriter;
+            } else if ( _output != null ) {
+                _writer = _encodingInfo.getWriter(_output);
+            } else {
+                _writer = _encodingInfo.getWriter(_channel);
+            }
         }
 
         if ( _format.getIndenting() ) {
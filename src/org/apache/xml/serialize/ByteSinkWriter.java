@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xml.serialize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>Writer for the UTF-8, US-ASCII and ISO-8859-1 encodings which
+ * encodes characters directly into a byte buffer, and writes the buffer
+ * to an output stream or to a blocking byte channel when it is full.</p>
+ *
+ * <p>Unlike an <code>OutputStreamWriter</code>, runs of ASCII characters
+ * are copied to the buffer without going through a charset encoder, and
+ * the writer can be reset to a new output so that the same buffer is
+ * used for several documents. Characters which cannot be represented in
+ * the encoding, as well as unpaired surrogates, are written as '?', like
+ * the writers of the Java runtime do; the serializers escape such
+ * characters before they reach the writer.</p>
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class ByteSinkWriter
+    extends Writer {
+
+    //
+    // Constants
+    //
+
+    /** The UTF-8 encoding. */
+    public static final int UTF8 = 0;
+
+    /** The US-ASCII encoding. */
+    public static final int ASCII = 1;
+
+    /** The ISO-8859-1 encoding. */
+    public static final int LATIN1 = 2;
+
+    /** Default byte buffer size (8192). */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    //
+    // Data
+    //
+
+    /** Byte buffer. */
+    private final byte[] fBuffer;
+
+    /** Position within the byte buffer. */
+    private int fPos;
+
+    /** Output stream, or null. */
+    private OutputStream fOutputStream;
+
+    /** Output channel, or null. */
+    private WritableByteChannel fChannel;
+
+    /** One of UTF8, ASCII or LATIN1. */
+    private int fEncoding;
+
+    /**
+     * A high surrogate waiting for the low surrogate which follows it
+     * in the next write, or 0.
+     */
+    private char fSurrogate;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a writer for the specified output stream and encoding
+     * using the default buffer size.
+     *
+     * @param outputStream The output stream.
+     * @param encoding     One of UTF8, ASCII or LATIN1.
+     */
+    public ByteSinkWriter(OutputStream outputStream, int encoding) {
+        this(DEFAULT_BUFFER_SIZE);
+        reset(outputStream, encoding);
+    } // <init>(OutputStream,int)
+
+    /**
+     * Constructs a writer for the specified channel and encoding using
+     * the default buffer size. The channel must be in blocking mode.
+     *
+     * @param channel  The output channel.
+     * @param encoding One of UTF8, ASCII or LATIN1.
+     */
+    public ByteSinkWriter(WritableByteChannel channel, int encoding) {
+        this(DEFAULT_BUFFER_SIZE);
+        reset(channel, encoding);
+    } // <init>(WritableByteChannel,int)
+
+    /**
+     * Constructs a writer with the specified buffer size. One of the
+     * <code>reset</code> methods must be called before writing to it.
+     *
+     * @param size The buffer size, at least 16 bytes.
+     */
+    public ByteSinkWriter(int size) {
+        fBuffer = new byte[Math.max(size, 16)];
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Returns the encoding handled by this writer for the given Java
+     * encoding name, or -1 if the encoding is not one of UTF-8, US-ASCII
+     * or ISO-8859-1.
+     *
+     * @param javaName The Java name of the encoding, or null.
+     */
+    public static int getEncoding(String javaName) {
+        if (javaName != null) {
+            if (javaName.equals("UTF8")) {
+                return UTF8;
+            }
+            if (javaName.equals("ASCII")) {
+                return ASCII;
+            }
+            if (javaName.equals("ISO8859_1")) {
+                return LATIN1;
+            }
+        }
+        return -1;
+    } // getEncoding(String):int
+
+    /**
+     * Directs the output to the specified output stream, discarding
+     * anything not yet flushed to the previous output.
+     *
+     * @param outputStream The output stream.
+     * @param encoding     One of UTF8, ASCII or LATIN1.
+     */
+    public void reset(OutputStream outputStream, int encoding) {
+        fOutputStream = outputStream;
+        fChannel = null;
+        fEncoding = encoding;
+        fPos = 0;
+        fSurrogate = 0;
+    } // reset(OutputStream,int)
+
+    /**
+     * Directs the output to the specified blocking channel, discarding
+     * anything not yet flushed to the previous output.
+     *
+     * @param channel  The output channel.
+     * @param encoding One of UTF8, ASCII or LATIN1.
+     */
+    public void reset(WritableByteChannel channel, int encoding) {
+        fOutputStream = null;
+        fChannel = channel;
+        fEncoding = encoding;
+        fPos = 0;
+        fSurrogate = 0;
+    } // reset(WritableByteChannel,int)
+
+    //
+    // Writer methods
+    //
+
+    /**
+     * Write a single character.
+     *
+     * @param c The character to write, in the low 16 bits.
+     *
+     * @exception IOException If an I/O error occurs
+     */
+    public void write(int c) throws IOException {
+        if (fPos + 8 > fBuffer.length) {
+            flushBuffer();
+        }
+        writeChar((char) c);
+    } // write(int)
+
+    /**
+     * Write a portion of an array of characters.
+     *
+     * @param ch     Array of characters
+     * @param offset Offset from which to start writing characters
+     * @param length Number of characters to write
+     *
+     * @exception IOException If an I/O error occurs
+     */
+    public void write(char[] ch, int offset, int length) throws IOException {
+        final int end = offset + length;
+        final byte[] buffer = fBuffer;
+        while (offset < end) {
+            if (fPos + 8 > buffer.length) {
+                flushBuffer();
+            }
+            // keep room for the largest encoding of one more character
+            int limit = offset + (buffer.length - fPos - 8);
+            if (limit > end) {
+                limit = end;
+            }
+            if (fSurrogate == 0) {
+                // copy a run of ASCII characters, which are the same
+                // in all of the encodings
+                int pos = fPos;
+                char c;
+                while (offset < limit && (c = ch[offset]) < 0x80) {
+                    buffer[pos++] = (byte) c;
+                    offset++;
+                }
+                fPos = pos;
+            }
+            if (offset < end) {
+                writeChar(ch[offset++]);
+            }
+        }
+    } // write(char[],int,int)
+
+    /**
+     * Write a portion of a string.
+     *
+     * @param str    String to be written
+     * @param offset Offset from which to start writing characters
+     * @param length Number of characters to write
+     *
+     * @exception IOException If an I/O error occurs
+     */
+    public void write(String str, int offset, int length) throws IOException {
+        final int end = offset + length;
+        final byte[] buffer = fBuffer;
+        while (offset < end) {
+            if (fPos + 8 > buffer.length) {
+                flushBuffer();
+            }
+            // keep room for the largest encoding of one more character
+            int limit = offset + (buffer.length - fPos - 8);
+            if (limit > end) {
+                limit = end;
+            }
+            if (fSurrogate == 0) {
+                // copy a run of ASCII characters, which are the same
+                // in all of the encodings
+                int pos = fPos;
+                char c;
+                while (offset < limit && (c = str.charAt(offset)) < 0x80) {
+                    buffer[pos++] = (byte) c;
+                    offset++;
+                }
+                fPos = pos;
+            }
+            if (offset < end) {
+                writeChar(str.charAt(offset++));
+            }
+        }
+    } // write(String,int,int)
+
+    /**
+     * Flush the stream. Writes the buffered bytes to the output and
+     * flushes it. A high surrogate written last is kept until the next
+     * character is written.
+     *
+     * @exception IOException If an I/O error occurs
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        if (fOutputStream != null) {
+            fOutputStream.flush();
+        }
+    } // flush()
+
+    /**
+     * Close the stream, flushing it first.
+     *
+     * @exception IOException If an I/O error occurs
+     */
+    public void close() throws IOException {
+        if (fSurrogate != 0) {
+            fSurrogate = 0;
+            if (fPos == fBuffer.length) {
+                flushBuffer();
+            }
+            fBuffer[fPos++] = (byte) '?';
+        }
+        flush();
+        if (fOutputStream != null) {
+            fOutputStream.close();
+        }
+        else if (fChannel != null) {
+            fChannel.close();
+        }
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Encodes one character into the buffer, which must have room for
+     * at least five bytes.
+     */
+    private void writeChar(char c) {
+        final byte[] buffer = fBuffer;
+        if (fSurrogate != 0) {
+            char high = fSurrogate;
+            fSurrogate = 0;
+            if (c >= 0xDC00 && c < 0xE000) {
+                if (fEncoding == UTF8) {
+                    int cp = 0x10000 + ((high - 0xD800) << 10) + (c - 0xDC00);
+                    buffer[fPos++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[fPos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[fPos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[fPos++] = (byte) (0x80 | (cp & 0x3F));
+                }
+                else {
+                    buffer[fPos++] = (byte) '?';
+                }
+                return;
+            }
+            // unpaired high surrogate
+            buffer[fPos++] = (byte) '?';
+        }
+        if (c < 0x80) {
+            buffer[fPos++] = (byte) c;
+        }
+        else if (c >= 0xD800 && c < 0xE000) {
+            if (c < 0xDC00) {
+                fSurrogate = c;
+            }
+            else {
+                // unpaired low surrogate
+                buffer[fPos++] = (byte) '?';
+            }
+        }
+        else if (fEncoding == UTF8) {
+            if (c < 0x800) {
+                buffer[fPos++] = (byte) (0xC0 | (c >> 6));
+                buffer[fPos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else {
+                buffer[fPos++] = (byte) (0xE0 | (c >> 12));
+                buffer[fPos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[fPos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        else if (fEncoding == LATIN1 && c < 0x100) {
+            buffer[fPos++] = (byte) c;
+        }
+        else {
+            buffer[fPos++] = (byte) '?';
+        }
+    } // writeChar(char)
+
+    /** Writes the buffered bytes to the output. */
+    private void flushBuffer() throws IOException {
+        if (fPos > 0) {
+            if (fOutputStream != null) {
+                fOutputStream.write(fBuffer, 0, fPos);
+            }
+            else {
+                ByteBuffer bytes = ByteBuffer.wrap(fBuffer, 0, fPos);
+                while (bytes.hasRemaining()) {
+                    fChannel.write(bytes);
+                }
+            }
+            fPos = 0;
+        }
+    } // flushBuffer()
+
+} // class ByteSinkWriter
@@ -21,6 +21,8 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.xerces.util.EncodingMap;
 
@@ -84,15 +86,43 @@ public class EncodingInfo {
      */
     public Writer getWriter(OutputStream output)
         throws UnsupportedEncodingException {
-        // this should always be true!
-        if (javaName != null) 
-            return new OutputStreamWriter(output, javaName);
-        javaName = EncodingMap.getIANA2JavaMapping(ianaName);
-        if(javaName == null) 
-            // use UTF-8 as preferred encoding
-            return new OutputStreamWriter(output, "UTF8");
+        int encoding = getByteSinkEncoding();
+        if (encoding != -1) 
+            return new ByteSinkWriter(output, encoding);
         return new OutputStreamWriter(output, javaName);
     }
+
+    /**
+     * Returns a writer for this encoding based on
+     * a blocking byte channel.
+     *
+     * @return A suitable writer
+     * @exception UnsupportedEncodingException There is no convertor
+     *  to support this encoding
+     */
+    public Writer getWriter(WritableByteChannel channel)
+        throws UnsupportedEncodingException {
+        int encoding = getByteSinkEncoding();
+        if (encoding != -1) 
+            return new ByteSinkWriter(channel, encoding);
+        return new OutputStreamWriter(Channels.newOutputStream(channel), javaName);
+    }
+
+    /**
+     * Returns the encoding to use with a {@link ByteSinkWriter}, or -1
+     * if this encoding must be written by the Java runtime. UTF-8,
+     * US-ASCII and ISO-8859-1 are encoded by the serializer itself.
+     */
+    int getByteSinkEncoding() {
+        // javaName should always have been set by the constructor
+        if (javaName == null) {
+            javaName = EncodingMap.getIANA2JavaMapping(ianaName);
+            if (javaName == null) 
+                // use UTF-8 as preferred encoding
+                return ByteSinkWriter.UTF8;
+        }
+        return ByteSinkWriter.getEncoding(javaName);
+    }
     
     /**
      * Checks whether the specified character is printable or not in this encoding.
@@ -164,16 +164,31 @@ public class Printer
 
     public void printText( String text )
         throws IOException
+    {
+        printText( text, 0, text.length() );
+    }
+
+
+    /**
+     * Prints part of a string. The characters are copied into the
+     * output buffer in bulk.
+     */
+    public void printText( String text, int start, int length )
+        throws IOException
     {
         try {
-            int length = text.length();
-            for ( int i = 0 ; i < length ; ++i ) {
+            while ( length > 0 ) {
                 if ( _pos == BufferSize ) {
                     _writer.write( _buffer );
                     _pos = 0;
                 }
-                _buffer[ _pos ] = text.charAt( i );
-                ++_pos;
+                int count = BufferSize - _pos;
+                if ( count > length )
+                    count = length;
+                text.getChars( start, start + count, _buffer, _pos );
+                _pos += count;
+                start += count;
+                length -= count;
             }
         } catch ( IOException except ) {
             // We don't throw an exception, but hold it
@@ -212,14 +227,18 @@ public class Printer
         throws IOException
     {
         try {
-            while ( length-- > 0 ) {
+            while ( length > 0 ) {
                 if ( _pos == BufferSize ) {
                     _writer.write( _buffer );
                     _pos = 0;
                 }
-                _buffer[ _pos ] = chars[ start ];
-                ++start;
-                ++_pos;
+                int count = BufferSize - _pos;
+                if ( count > length )
+                    count = length;
+                System.arraycopy( chars, start, _buffer, _pos, count );
+                _pos += count;
+                start += count;
+                length -= count;
             }
         } catch ( IOException except ) {
             // We don't throw an exception, but hold it
@@ -0,0 +1,746 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xml.serialize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.xerces.dom.DOMMessageFormatter;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLDocumentHandler;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentSource;
+
+/**
+ * Serializes the XNI document events it receives as they arrive, without
+ * building a tree and without keeping any state per element. Set as the
+ * document handler at the end of a parser configuration or a pipeline of
+ * filters, it writes the document out in constant memory: character data
+ * is escaped and written directly from the <code>XMLString</code> buffers
+ * of the scanner, and names are written from the <code>QName</code>s.
+ * <p>
+ * The output is the document as seen by the application: entity
+ * references are replaced by their content and every attribute is
+ * written, including attributes defaulted from the DTD. The document type
+ * declaration keeps its public and system identifiers, but the internal
+ * subset is not reproduced. Characters which cannot be represented in the
+ * output encoding are written as character references, except in names,
+ * comments and processing instructions where they cannot be escaped.
+ * <p>
+ * The serializer can be reused for several documents; the output must
+ * be set before each document.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class XMLDocumentSerializer
+    implements XMLDocumentHandler {
+
+    //
+    // Data
+    //
+
+    /** Document source. */
+    protected XMLDocumentSource fDocumentSource;
+
+    /** Output writer. */
+    private Writer fWriter;
+
+    /** Writer reused for byte output in UTF-8, US-ASCII and ISO-8859-1. */
+    private ByteSinkWriter fByteWriter;
+
+    /** Output encoding, or null for a character stream. */
+    private EncodingInfo fEncodingInfo;
+
+    /** Output encoding as given, or null for a character stream. */
+    private String fEncoding;
+
+    /** True if the output encoding can represent every character. */
+    private boolean fUnicode;
+
+    /**
+     * Characters up to this one, other than markup and control characters,
+     * can be written as they are.
+     */
+    private int fLastPrintable;
+
+    /** True once the XML declaration has been written. */
+    private boolean fDeclared;
+
+    /** True once the root element has started. */
+    private boolean fSeenRootElement;
+
+    /** Element depth. */
+    private int fDepth;
+
+    /** True inside a CDATA section. */
+    private boolean fInCDATA;
+
+    /**
+     * Number of ']' characters, up to two, which ended the content of the
+     * CDATA section written so far.
+     */
+    private int fBrackets;
+
+    /**
+     * A high surrogate which ended the last character data and cannot be
+     * written as it is, or 0.
+     */
+    private char fSurrogate;
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Sets the output stream and encoding of the next document.
+     *
+     * @param stream   The output stream.
+     * @param encoding The IANA name of the encoding, or null for UTF-8.
+     *
+     * @exception UnsupportedEncodingException If the encoding is not
+     *            supported.
+     */
+    public void setOutput(OutputStream stream, String encoding)
+        throws UnsupportedEncodingException {
+        setEncoding(encoding);
+        int sinkEncoding = fEncodingInfo.getByteSinkEncoding();
+        if (sinkEncoding != -1) {
+            if (fByteWriter == null) {
+                fByteWriter = new ByteSinkWriter(ByteSinkWriter.DEFAULT_BUFFER_SIZE);
+            }
+            fByteWriter.reset(stream, sinkEncoding);
+            fWriter = fByteWriter;
+        }
+        else {
+            fWriter = fEncodingInfo.getWriter(stream);
+        }
+    } // setOutput(OutputStream,String)
+
+    /**
+     * Sets the output channel and encoding of the next document. The
+     * channel must be in blocking mode.
+     *
+     * @param channel  The output channel.
+     * @param encoding The IANA name of the encoding, or null for UTF-8.
+     *
+     * @exception UnsupportedEncodingException If the encoding is not
+     *            supported.
+     */
+    public void setOutput(WritableByteChannel channel, String encoding)
+        throws UnsupportedEncodingException {
+        setEncoding(encoding);
+        int sinkEncoding = fEncodingInfo.getByteSinkEncoding();
+        if (sinkEncoding != -1) {
+            if (fByteWriter == null) {
+                fByteWriter = new ByteSinkWriter(ByteSinkWriter.DEFAULT_BUFFER_SIZE);
+            }
+            fByteWriter.reset(channel, sinkEncoding);
+            fWriter = fByteWriter;
+        }
+        else {
+            fWriter = fEncodingInfo.getWriter(channel);
+        }
+    } // setOutput(WritableByteChannel,String)
+
+    /**
+     * Sets the output writer of the next document. The XML declaration
+     * written has no encoding.
+     *
+     * @param writer The output writer.
+     */
+    public void setOutput(Writer writer) {
+        fWriter = writer;
+        fEncodingInfo = null;
+        fEncoding = null;
+    } // setOutput(Writer)
+
+    //
+    // XMLDocumentHandler methods
+    //
+
+    /** Start document. */
+    public void startDocument(XMLLocator locator, String encoding,
+                              NamespaceContext namespaceContext,
+                              Augmentations augs) throws XNIException {
+        if (fWriter == null) {
+            String msg = DOMMessageFormatter.formatMessage(
+                DOMMessageFormatter.SERIALIZER_DOMAIN, "NoWriterSupplied", null);
+            throw new XNIException(msg);
+        }
+        fUnicode = fEncodingInfo == null ||
+                   fEncodingInfo.lastPrintable >= Character.MAX_VALUE;
+        fLastPrintable = fEncodingInfo == null ?
+                         Character.MAX_VALUE : fEncodingInfo.lastPrintable;
+        fDeclared = false;
+        fSeenRootElement = false;
+        fDepth = 0;
+        fInCDATA = false;
+        fBrackets = 0;
+        fSurrogate = 0;
+    } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+    /** XML declaration. */
+    public void xmlDecl(String version, String encoding, String standalone,
+                        Augmentations augs) throws XNIException {
+        if (version.equals("1.1")) {
+            // C1 controls and line separators must be escaped in XML 1.1;
+            // non-ASCII characters are checked one by one
+            fLastPrintable = Math.min(fLastPrintable, 0x7E);
+        }
+        try {
+            writeXMLDecl(version, standalone);
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // xmlDecl(String,String,String,Augmentations)
+
+    /**
+     * Document type declaration. Only the external identifiers are
+     * written; the internal subset is not reproduced.
+     */
+    public void doctypeDecl(String rootElement, String publicId,
+                            String systemId, Augmentations augs)
+        throws XNIException {
+        if (systemId == null) {
+            return;
+        }
+        try {
+            if (!fDeclared) {
+                writeXMLDecl("1.0", null);
+            }
+            fWriter.write("<!DOCTYPE ");
+            fWriter.write(rootElement);
+            if (publicId != null) {
+                fWriter.write(" PUBLIC ");
+                writeLiteral(publicId);
+                fWriter.write(' ');
+            }
+            else {
+                fWriter.write(" SYSTEM ");
+            }
+            writeLiteral(systemId);
+            fWriter.write(">\n");
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // doctypeDecl(String,String,String,Augmentations)
+
+    /** Comment. */
+    public void comment(XMLString text, Augmentations augs)
+        throws XNIException {
+        try {
+            startMarkup();
+            fWriter.write("<!--");
+            fWriter.write(text.ch, text.offset, text.length);
+            fWriter.write("-->");
+            endMarkup();
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // comment(XMLString,Augmentations)
+
+    /** Processing instruction. */
+    public void processingInstruction(String target, XMLString data,
+                                      Augmentations augs)
+        throws XNIException {
+        try {
+            startMarkup();
+            fWriter.write("<?");
+            fWriter.write(target);
+            if (data != null && data.length > 0) {
+                fWriter.write(' ');
+                fWriter.write(data.ch, data.offset, data.length);
+            }
+            fWriter.write("?>");
+            endMarkup();
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // processingInstruction(String,XMLString,Augmentations)
+
+    /** Start element. */
+    public void startElement(QName element, XMLAttributes attributes,
+                             Augmentations augs) throws XNIException {
+        try {
+            writeStartTag(element, attributes);
+            fWriter.write('>');
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+        fDepth++;
+    } // startElement(QName,XMLAttributes,Augmentations)
+
+    /** Empty element. */
+    public void emptyElement(QName element, XMLAttributes attributes,
+                             Augmentations augs) throws XNIException {
+        try {
+            writeStartTag(element, attributes);
+            fWriter.write("/>");
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // emptyElement(QName,XMLAttributes,Augmentations)
+
+    /** Start general entity. The content of the entity is written. */
+    public void startGeneralEntity(String name,
+                                   XMLResourceIdentifier identifier,
+                                   String encoding, Augmentations augs)
+        throws XNIException {
+    } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+    /** Text declaration. */
+    public void textDecl(String version, String encoding, Augmentations augs)
+        throws XNIException {
+    } // textDecl(String,String,Augmentations)
+
+    /** End general entity. */
+    public void endGeneralEntity(String name, Augmentations augs)
+        throws XNIException {
+    } // endGeneralEntity(String,Augmentations)
+
+    /** Character content. */
+    public void characters(XMLString text, Augmentations augs)
+        throws XNIException {
+        try {
+            if (fInCDATA) {
+                writeCDATA(text.ch, text.offset, text.length);
+            }
+            else {
+                writeText(text.ch, text.offset, text.length);
+            }
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // characters(XMLString,Augmentations)
+
+    /** Ignorable whitespace. */
+    public void ignorableWhitespace(XMLString text, Augmentations augs)
+        throws XNIException {
+        characters(text, augs);
+    } // ignorableWhitespace(XMLString,Augmentations)
+
+    /** End element. */
+    public void endElement(QName element, Augmentations augs)
+        throws XNIException {
+        fDepth--;
+        try {
+            flushSurrogate();
+            fWriter.write("</");
+            fWriter.write(element.rawname);
+            fWriter.write('>');
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // endElement(QName,Augmentations)
+
+    /** Start CDATA section. */
+    public void startCDATA(Augmentations augs) throws XNIException {
+        try {
+            flushSurrogate();
+            fWriter.write("<![CDATA[");
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+        fInCDATA = true;
+        fBrackets = 0;
+    } // startCDATA(Augmentations)
+
+    /** End CDATA section. */
+    public void endCDATA(Augmentations augs) throws XNIException {
+        fInCDATA = false;
+        try {
+            flushSurrogate();
+            fWriter.write("]]>");
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // endCDATA(Augmentations)
+
+    /** End document. Flushes the output. */
+    public void endDocument(Augmentations augs) throws XNIException {
+        try {
+            if (!fDeclared) {
+                writeXMLDecl("1.0", null);
+            }
+            fWriter.write('\n');
+            fWriter.flush();
+        }
+        catch (IOException e) {
+            throw new XNIException(e);
+        }
+    } // endDocument(Augmentations)
+
+    /** Sets the document source. */
+    public void setDocumentSource(XMLDocumentSource source) {
+        fDocumentSource = source;
+    } // setDocumentSource(XMLDocumentSource)
+
+    /** Returns the document source. */
+    public XMLDocumentSource getDocumentSource() {
+        return fDocumentSource;
+    } // getDocumentSource():XMLDocumentSource
+
+    //
+    // Private methods
+    //
+
+    /** Sets the output encoding. */
+    private void setEncoding(String encoding)
+        throws UnsupportedEncodingException {
+        if (encoding == null) {
+            encoding = "UTF-8";
+        }
+        fEncodingInfo = Encodings.getEncodingInfo(encoding, false);
+        fEncoding = encoding;
+    } // setEncoding(String)
+
+    /** Writes the XML declaration. */
+    private void writeXMLDecl(String version, String standalone)
+        throws IOException {
+        fWriter.write("<?xml version=\"");
+        fWriter.write(version);
+        fWriter.write('"');
+        if (fEncoding != null) {
+            fWriter.write(" encoding=\"");
+            fWriter.write(fEncoding);
+            fWriter.write('"');
+        }
+        if (standalone != null) {
+            fWriter.write(" standalone=\"");
+            fWriter.write(standalone);
+            fWriter.write('"');
+        }
+        fWriter.write("?>\n");
+        fDeclared = true;
+    } // writeXMLDecl(String,String)
+
+    /** Prepares to write a comment or processing instruction. */
+    private void startMarkup() throws IOException {
+        if (!fDeclared) {
+            writeXMLDecl("1.0", null);
+        }
+        flushSurrogate();
+        if (fSeenRootElement && fDepth == 0) {
+            fWriter.write('\n');
+        }
+    } // startMarkup()
+
+    /** Ends a comment or processing instruction. */
+    private void endMarkup() throws IOException {
+        if (!fSeenRootElement) {
+            fWriter.write('\n');
+        }
+    } // endMarkup()
+
+    /** Writes a system or public identifier in quotes. */
+    private void writeLiteral(String literal) throws IOException {
+        char quote = literal.indexOf('"') == -1 ? '"' : '\'';
+        fWriter.write(quote);
+        fWriter.write(literal);
+        fWriter.write(quote);
+    } // writeLiteral(String)
+
+    /** Writes a start tag, without its closing bracket. */
+    private void writeStartTag(QName element, XMLAttributes attributes)
+        throws IOException {
+        if (!fDeclared) {
+            writeXMLDecl("1.0", null);
+        }
+        flushSurrogate();
+        fSeenRootElement = true;
+        fWriter.write('<');
+        fWriter.write(element.rawname);
+        int length = attributes != null ? attributes.getLength() : 0;
+        for (int i = 0; i < length; i++) {
+            fWriter.write(' ');
+            fWriter.write(attributes.getQName(i));
+            fWriter.write("=\"");
+            writeAttributeValue(attributes.getValue(i));
+            fWriter.write('"');
+        }
+    } // writeStartTag(QName,XMLAttributes)
+
+    /**
+     * Writes an attribute value. Runs of characters which need no
+     * escaping are written in one call.
+     */
+    private void writeAttributeValue(String value) throws IOException {
+        final int length = value.length();
+        final int lastPrintable = fLastPrintable;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= ' ' && c <= lastPrintable && c != '<' && c != '&' &&
+                c != '"') {
+                continue;
+            }
+            if (i > start) {
+                fWriter.write(value, start, i - start);
+            }
+            switch (c) {
+                case '<': {
+                    fWriter.write("&lt;");
+                    break;
+                }
+                case '&': {
+                    fWriter.write("&amp;");
+                    break;
+                }
+                case '"': {
+                    fWriter.write("&quot;");
+                    break;
+                }
+                default: {
+                    // white space left by normalization is escaped so
+                    // that it survives the next parse
+                    if (isHighSurrogate(c) && !fUnicode) {
+                        if (i + 1 < length) {
+                            writeSurrogatePair(c, value.charAt(++i));
+                        }
+                    }
+                    else {
+                        writeChar(c);
+                    }
+                }
+            }
+            start = i + 1;
+        }
+        if (length > start) {
+            fWriter.write(value, start, length - start);
+        }
+    } // writeAttributeValue(String)
+
+    /**
+     * Writes character data. Runs of characters which need no escaping
+     * are written directly from the buffer.
+     */
+    private void writeText(char[] ch, int offset, int length)
+        throws IOException {
+        final int end = offset + length;
+        final int lastPrintable = fLastPrintable;
+        int i = offset;
+        if (fSurrogate != 0 && i < end) {
+            writeSurrogatePair(fSurrogate, ch[i++]);
+            fSurrogate = 0;
+        }
+        int start = i;
+        for (; i < end; i++) {
+            char c = ch[i];
+            if (c >= ' ' ? (c <= lastPrintable && c != '<' && c != '&' && c != '>')
+                         : (c == '\n' || c == '\t')) {
+                continue;
+            }
+            if (i > start) {
+                fWriter.write(ch, start, i - start);
+            }
+            switch (c) {
+                case '<': {
+                    fWriter.write("&lt;");
+                    break;
+                }
+                case '&': {
+                    fWriter.write("&amp;");
+                    break;
+                }
+                case '>': {
+                    // the sequence "]]>" cannot appear in content
+                    fWriter.write("&gt;");
+                    break;
+                }
+                default: {
+                    if (isHighSurrogate(c) && !fUnicode) {
+                        if (i + 1 < end) {
+                            writeSurrogatePair(c, ch[++i]);
+                        }
+                        else {
+                            // the low surrogate comes with the next call
+                            fSurrogate = c;
+                        }
+                    }
+                    else {
+                        writeChar(c);
+                    }
+                }
+            }
+            start = i + 1;
+        }
+        if (end > start) {
+            fWriter.write(ch, start, end - start);
+        }
+    } // writeText(char[],int,int)
+
+    /**
+     * Writes the content of a CDATA section. Characters which cannot be
+     * written as they are, as well as the sequence "]]>", are written
+     * by closing and reopening the section.
+     */
+    private void writeCDATA(char[] ch, int offset, int length)
+        throws IOException {
+        final int end = offset + length;
+        final int lastPrintable = fLastPrintable;
+        int i = offset;
+        if (fSurrogate != 0 && i < end) {
+            fWriter.write("]]>");
+            writeSurrogatePair(fSurrogate, ch[i++]);
+            fWriter.write("<![CDATA[");
+            fSurrogate = 0;
+        }
+        int start = i;
+        for (; i < end; i++) {
+            char c = ch[i];
+            if (c >= ' ' ? (c <= lastPrintable && c != '>')
+                         : (c == '\n' || c == '\t')) {
+                continue;
+            }
+            if (c == '>') {
+                if (countBrackets(ch, offset, i) >= 2) {
+                    fWriter.write(ch, start, i - start);
+                    fWriter.write("]]><![CDATA[");
+                    start = i;
+                }
+                continue;
+            }
+            boolean surrogate = isHighSurrogate(c) && !fUnicode;
+            if (!surrogate && c >= ' ' && isPrintable(c)) {
+                continue;
+            }
+            if (i > start) {
+                fWriter.write(ch, start, i - start);
+            }
+            if (surrogate && i + 1 == end) {
+                // the low surrogate comes with the next call
+                fSurrogate = c;
+            }
+            else {
+                fWriter.write("]]>");
+                if (surrogate) {
+                    writeSurrogatePair(c, ch[++i]);
+                }
+                else {
+                    writeCharRef(c);
+                }
+                fWriter.write("<![CDATA[");
+            }
+            start = i + 1;
+        }
+        if (end > start) {
+            fWriter.write(ch, start, end - start);
+        }
+        fBrackets = countBrackets(ch, offset, end);
+    } // writeCDATA(char[],int,int)
+
+    /**
+     * Returns the number of ']' characters, up to two, which precede the
+     * given position in a CDATA section, including those which ended the
+     * content written by the previous calls.
+     */
+    private int countBrackets(char[] ch, int offset, int end) {
+        int brackets = 0;
+        int i = end - 1;
+        while (brackets < 2 && i >= offset && ch[i] == ']') {
+            brackets++;
+            i--;
+        }
+        if (i < offset) {
+            brackets = Math.min(brackets + fBrackets, 2);
+        }
+        return brackets;
+    } // countBrackets(char[],int,int):int
+
+    /**
+     * Returns true if the given character, which is not a control
+     * character of the C0 range, can be written as it is.
+     */
+    private boolean isPrintable(char c) {
+        if (c >= 0x7F && (c <= 0x9F || c == 0x2028)) {
+            // escaped in case of XML 1.1, allowed in XML 1.0
+            return false;
+        }
+        if (isHighSurrogate(c) || (c >= 0xDC00 && c < 0xE000)) {
+            return fUnicode;
+        }
+        return fEncodingInfo == null || fEncodingInfo.isPrintable(c);
+    } // isPrintable(char):boolean
+
+    /** Writes a character as it is or as a character reference. */
+    private void writeChar(char c) throws IOException {
+        if (c >= ' ' && isPrintable(c)) {
+            fWriter.write(c);
+        }
+        else {
+            writeCharRef(c);
+        }
+    } // writeChar(char)
+
+    /**
+     * Writes a surrogate pair as a character reference, the output
+     * encoding being unable to represent it.
+     */
+    private void writeSurrogatePair(char high, char low) throws IOException {
+        writeCharRef(0x10000 + ((high - 0xD800) << 10) + (low - 0xDC00));
+    } // writeSurrogatePair(char,char)
+
+    /** Writes a high surrogate left at the end of the last character data. */
+    private void flushSurrogate() throws IOException {
+        if (fSurrogate != 0) {
+            if (fInCDATA) {
+                fWriter.write("]]>");
+                writeCharRef(fSurrogate);
+                fWriter.write("<![CDATA[");
+            }
+            else {
+                writeCharRef(fSurrogate);
+            }
+            fSurrogate = 0;
+        }
+    } // flushSurrogate()
+
+    /** Returns true if the character is a high surrogate. */
+    private static boolean isHighSurrogate(char c) {
+        return c >= 0xD800 && c < 0xDC00;
+    } // isHighSurrogate(char):boolean
+
+    /** Writes a hexadecimal character reference. */
+    private void writeCharRef(int c) throws IOException {
+        fWriter.write("&#x");
+        fWriter.write(Integer.toHexString(c).toUpperCase());
+        fWriter.write(';');
+    } // writeCharRef(int)
+
+} // class XMLDocumentSerializer
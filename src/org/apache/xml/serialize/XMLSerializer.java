@@ -1226,18 +1226,27 @@ extends BaseMarkupSerializer {
     //
     protected void printEscaped(String source) throws IOException {
         int length = source.length();
+        int lastPrintable = _encodingInfo.lastPrintable;
+        // start of the run of characters printed as they are
+        int start = 0;
         for (int i = 0; i < length; ++i) {
             int ch = source.charAt(i);
+            if (ch >= ' ' && ch <= lastPrintable && ch != '<' && ch != '&' && 
+                ch != '"' && XMLChar.isValid(ch)) {
+                continue;
+            }
+            if (i > start) {
+                _printer.printText(source, start, i - start);
+            }
             if (!XMLChar.isValid(ch)) {
                 if (++i < length) {
                     surrogates(ch, source.charAt(i), false);
                 } else {
                     fatalError("The character '" + (char) ch + "' is an invalid XML character");
                 }
-                continue;
             }
             // escape NL, CR, TAB
-            if (ch == '\n' || ch == '\r' || ch == '\t') {
+            else if (ch == '\n' || ch == '\r' || ch == '\t') {
                 printHex(ch);
             } else if (ch == '<') {
                 _printer.printText("&lt;");
@@ -1250,6 +1259,10 @@ extends BaseMarkupSerializer {
             } else {
                 printHex(ch);
             }
+            start = i + 1;
+        }
+        if (length > start) {
+            _printer.printText(source, start, length - start);
         }
     }
 
@@ -1273,55 +1286,50 @@ extends BaseMarkupSerializer {
         }
     }
 
+    /** 
+     * Returns true if the given character of text data is printed as it 
+     * is by {@link #printXMLChar}. Such characters are collected into runs
+     * and printed in bulk.
+     */
+    private boolean isLiteral( char ch, int lastPrintable ) {
+        if ( ch >= ' ' ) {
+            return ch <= lastPrintable && ch != '<' && ch != '&' && ch != '>' &&
+                XMLChar.isValid(ch);
+        }
+        return ch == '\n' || ch == '\t';
+    }
+
     protected void printText( String text, boolean preserveSpace, boolean unescaped )
     throws IOException {
-        int index;
-        char ch;
+        // The text must print exactly as it is, whether or not spaces are
+        // preserved: XML content is not broken on spaces.
         int length = text.length();
-        if ( preserveSpace ) {
-            // Preserving spaces: the text must print exactly as it is,
-            // without breaking when spaces appear in the text and without
-            // consolidating spaces. If a line terminator is used, a line
-            // break will occur.
-            for ( index = 0 ; index < length ; ++index ) {
-                ch = text.charAt( index );
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if (++index <length) {
-                        surrogates(ch, text.charAt(index), true);
-                    } else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
-                } else
-                    printXMLChar( ch );
+        int lastPrintable = _encodingInfo.lastPrintable;
+        // start of the run of characters printed as they are
+        int start = 0;
+        for ( int index = 0 ; index < length ; ++index ) {
+            char ch = text.charAt( index );
+            if ( unescaped ? XMLChar.isValid(ch) : isLiteral(ch, lastPrintable) ) {
+                continue;
             }
-        } else {
-            // Not preserving spaces: print one part at a time, and
-            // use spaces between parts to break them into different
-            // lines. Spaces at beginning of line will be stripped
-            // by printing mechanism. Line terminator is treated
-            // no different than other text part.
-            for ( index = 0 ; index < length ; ++index ) {
-                ch = text.charAt( index );
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if (++index <length) {
-                        surrogates(ch, text.charAt(index), true);
-                    } else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
+            if ( index > start ) {
+                _printer.printText( text, start, index - start );
+            }
+            if (!XMLChar.isValid(ch)) {
+                // check if it is surrogate
+                if (++index <length) {
+                    surrogates(ch, text.charAt(index), true);
+                } else {
+                    fatalError("The character '"+ch+"' is an invalid XML character"); 
                 }
-
-				if ( unescaped )
-                    _printer.printText( ch );
-                else
-                    printXMLChar( ch);
             }
+            else {
+                printXMLChar( ch );
+            }
+            start = index + 1;
+        }
+        if ( length > start ) {
+            _printer.printText( text, start, length - start );
         }
     }
 
@@ -1329,56 +1337,36 @@ extends BaseMarkupSerializer {
 
     protected void printText( char[] chars, int start, int length,
                               boolean preserveSpace, boolean unescaped ) throws IOException {
-
-        if ( preserveSpace ) {
-            // Preserving spaces: the text must print exactly as it is,
-            // without breaking when spaces appear in the text and without
-            // consolidating spaces. If a line terminator is used, a line
-            // break will occur.
-            while ( length-- > 0 ) {
-                char ch = chars[start++];
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if ( length-- > 0 ) {
-                        surrogates(ch, chars[start++], true);
-                    } 
-                    else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
-                } 
-                else {
-                    printXMLChar( ch );
-                }
+        // The text must print exactly as it is, whether or not spaces are
+        // preserved: XML content is not broken on spaces.
+        int end = start + length;
+        int lastPrintable = _encodingInfo.lastPrintable;
+        // start of the run of characters printed as they are
+        int runStart = start;
+        for ( int index = start ; index < end ; ++index ) {
+            char ch = chars[index];
+            if ( unescaped ? XMLChar.isValid(ch) : isLiteral(ch, lastPrintable) ) {
+                continue;
             }
-        } else {
-            // Not preserving spaces: print one part at a time, and
-            // use spaces between parts to break them into different
-            // lines. Spaces at beginning of line will be stripped
-            // by printing mechanism. Line terminator is treated
-            // no different than other text part.
-            while ( length-- > 0 ) {
-                char ch = chars[start++];
-                if (!XMLChar.isValid(ch)) {
-                    // check if it is surrogate
-                    if ( length-- > 0 ) {
-                        surrogates(ch, chars[start++], true);
-                    } 
-                    else {
-                        fatalError("The character '"+ch+"' is an invalid XML character"); 
-                    }
-                    continue;
-                }
-                if ( unescaped ) {
-                    _printer.printText( ch );
+            if ( index > runStart ) {
+                _printer.printText( chars, runStart, index - runStart );
+            }
+            if (!XMLChar.isValid(ch)) {
+                // check if it is surrogate
+                if ( ++index < end ) {
+                    surrogates(ch, chars[index], true);
                 } 
                 else {
-                    printXMLChar( ch );
+                    fatalError("The character '"+ch+"' is an invalid XML character"); 
                 }
             }
+            else {
+                printXMLChar( ch );
+            }
+            runStart = index + 1;
+        }
+        if ( end > runStart ) {
+            _printer.printText( chars, runStart, end - runStart );
         }
     }
 
@@ -0,0 +1,979 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.compact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.xerces.dom.CompactDocumentImpl;
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Entity;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Notation;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.NodeIterator;
+import org.w3c.dom.traversal.TreeWalker;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses the test documents, and generated documents with namespaces,
+ * identifiers, entities and default attributes, into the compact read-only
+ * DOM and into the default deferred DOM, and checks that the trees, the
+ * attributes, the namespace lookups, the identifier and tag name lookups,
+ * node equality, node iterators and tree walkers, XPath results and the
+ * output of the identity transformer are the same. Also checks that
+ * every mutator of the compact DOM raises NO_MODIFICATION_ALLOWED_ERR and
+ * every factory method NOT_SUPPORTED_ERR.
+ *
+ * <p>Must be run from the root of the source tree.</p>
+ *
+ * @version $Id$
+ */
+public class Test implements ErrorHandler {
+
+    //
+    // Constants
+    //
+
+    /** Document class name property id. */
+    protected static final String DOCUMENT_CLASS_NAME_PROPERTY_ID =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.DOCUMENT_CLASS_NAME_PROPERTY;
+
+    /** Compact document class name. */
+    protected static final String COMPACT_DOCUMENT_CLASS_NAME =
+        "org.apache.xerces.dom.CompactDocumentImpl";
+
+    /** Prefixes looked up on every element. */
+    private static final String[] PREFIXES = { null, "", "a", "b", "n", "xml", "xmlns", "none" };
+
+    /** Namespaces looked up on every element. */
+    private static final String[] NAMESPACES = {
+        null, "", "urn:a", "urn:b", "urn:n", "urn:default", "urn:none",
+        "http://www.w3.org/XML/1998/namespace"
+    };
+
+    /**
+     * XPath expressions evaluated on every document. The id() function
+     * is left out, since the JDK processor looks the elements found up by
+     * identity.
+     */
+    private static final String[] XPATHS = {
+        "//node()", "//@*", "//*[@id]", "/*/*[2]", "//*[last()]",
+        "//text()[normalize-space()]", "//comment()", "//processing-instruction()",
+        "//*[local-name()='child']", "//*[namespace-uri()='urn:a']",
+        "//*[@id='i5' or @id='i7']", "//*[@id='i12']/following-sibling::*[1]",
+        "//*[@id='i12']/preceding::*[3]", "//*[@id='i12']/ancestor-or-self::node()",
+    };
+
+    /** XPath expressions evaluated as strings on every document. */
+    private static final String[] XPATH_STRINGS = {
+        "count(//node())", "count(//@*)", "string(/)", "name(/*)",
+        "namespace-uri(/*)", "string(//*[@id][1]/@id)", "count(//namespace::*)",
+    };
+
+    //
+    // Data
+    //
+
+    /** Errors reported by the last parse. */
+    private final StringBuffer fErrors = new StringBuffer();
+
+    /** Values of the attributes named id of the document compared. */
+    private final ArrayList fIds = new ArrayList();
+
+    /** Number of documents whose DOMs differ. */
+    private int fFailures;
+
+    /** Number of failed checks of the read-only document. */
+    private static int fCheckFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        Test test = new Test();
+        ArrayList documents = new ArrayList();
+        findDocuments(new File("tests"), documents);
+        File dir = generateDocuments(documents);
+        for (int i = 0; i < documents.size(); ++i) {
+            String systemId = ((File) documents.get(i)).toURI().toString();
+            test.compare(systemId, false);
+            test.compare(systemId, true);
+        }
+        System.err.println((test.fFailures == 0 ? "PASS: " : "FAIL: ") + documents.size() +
+            " documents, " + test.fFailures + " failed");
+        checkJAXP(new File(dir, "namespaces.xml").toURI().toString());
+        checkReadOnly(test, new File(dir, "large.xml").toURI().toString());
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+        if (test.fFailures > 0 || fCheckFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Compares the compact DOM of the document with the default deferred
+     * DOM.
+     */
+    public void compare(String systemId, boolean validate) {
+        boolean passed = true;
+        fIds.clear();
+        Document deferred = null;
+        Document compact = null;
+        String deferredErrors;
+        String compactErrors;
+        try {
+            deferred = parse(systemId, validate, false);
+        }
+        catch (Exception e) {
+            fErrors.append("[Exception] ").append(e.getMessage());
+        }
+        deferredErrors = fErrors.toString();
+        try {
+            compact = parse(systemId, validate, true);
+        }
+        catch (Exception e) {
+            fErrors.append("[Exception] ").append(e.getMessage());
+        }
+        compactErrors = fErrors.toString();
+        passed &= check(systemId, validate, "errors", deferredErrors, compactErrors);
+        if (deferred == null || compact == null) {
+            passed &= check(systemId, validate, "document", String.valueOf(deferred == null),
+                String.valueOf(compact == null));
+        }
+        else {
+            passed &= check(systemId, validate, "class", CompactDocumentImpl.class.getName(),
+                compact.getClass().getName());
+            // the identifiers are looked up before the deferred DOM is expanded
+            collectIds(compact, fIds);
+            passed &= check(systemId, validate, "identifiers", lookupIds(deferred), lookupIds(compact));
+            String[] names = {
+                "tree", "namespaces", "tag names", "equality", "iterator", "tree walker",
+                "xpath", "transformer", "import"
+            };
+            for (int i = 0; i < names.length; ++i) {
+                passed &= check(systemId, validate, names[i],
+                    describe(i, deferred, deferred), describe(i, compact, deferred));
+            }
+        }
+        if (!passed) {
+            ++fFailures;
+        }
+    } // compare(String,boolean)
+
+    /** Parses the document into a deferred or a compact DOM. */
+    public Document parse(String systemId, boolean validate, boolean compact) throws Exception {
+        fErrors.setLength(0);
+        DOMParser parser = new DOMParser();
+        parser.setFeature("http://xml.org/sax/features/validation", validate);
+        parser.setFeature("http://apache.org/xml/features/validation/dynamic", validate);
+        parser.setFeature("http://apache.org/xml/features/validation/schema", validate);
+        if (compact) {
+            parser.setProperty(DOCUMENT_CLASS_NAME_PROPERTY_ID, COMPACT_DOCUMENT_CLASS_NAME);
+        }
+        parser.setErrorHandler(this);
+        parser.parse(systemId);
+        return parser.getDocument();
+    } // parse(String,boolean,boolean):Document
+
+    //
+    // ErrorHandler methods
+    //
+
+    public void warning(SAXParseException ex) {
+        printError("Warning", ex);
+    }
+
+    public void error(SAXParseException ex) {
+        printError("Error", ex);
+    }
+
+    public void fatalError(SAXParseException ex) throws SAXParseException {
+        printError("Fatal Error", ex);
+        throw ex;
+    }
+
+    //
+    // Private methods
+    //
+
+    /** Returns the elements found by their identifiers. */
+    private String lookupIds(Document document) {
+        StringBuffer dump = new StringBuffer();
+        for (int i = 0; i < fIds.size(); ++i) {
+            Element element = document.getElementById((String) fIds.get(i));
+            dump.append("id ").append(fIds.get(i)).append(": ").append(path(element)).append('\n');
+        }
+        return dump.toString();
+    } // lookupIds(Document):String
+
+    /**
+     * Returns the description of an aspect of the document. The document
+     * compared with is the deferred one.
+     */
+    private String describe(int aspect, Document document, Document other) {
+        StringBuffer dump = new StringBuffer();
+        try {
+            switch (aspect) {
+                case 0: dump(document, 0, dump); break;
+                case 1: dumpNamespaces(document, dump); break;
+                case 2: dumpTagNames(document, dump); break;
+                case 3: dumpEquality(document, other, dump); break;
+                case 4: dumpIterator(document, dump); break;
+                case 5: dumpTreeWalker(document, dump); break;
+                case 6: dumpXPath(document, dump); break;
+                case 7: dumpTransform(document, dump); break;
+                case 8: {
+                    DocumentImpl imported = new DocumentImpl();
+                    for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        if (child.getNodeType() != Node.DOCUMENT_TYPE_NODE) {
+                            imported.appendChild(imported.importNode(child, true));
+                        }
+                    }
+                    dump(imported, 0, dump);
+                    break;
+                }
+            }
+        }
+        catch (Exception e) {
+            dump.append("[Exception] ").append(e);
+        }
+        return dump.toString();
+    } // describe(int,Document,Document):String
+
+    private boolean check(String systemId, boolean validate, String description, String expected, String actual) {
+        if (expected.equals(actual)) {
+            return true;
+        }
+        int i = 0;
+        while (i < expected.length() && i < actual.length() && expected.charAt(i) == actual.charAt(i)) {
+            ++i;
+        }
+        // show the lines which differ
+        int start = Math.max(expected.lastIndexOf('\n', i - 1) + 1, i - 100);
+        System.err.println("FAIL: " + systemId + (validate ? " (validating)" : "") + ", " + description);
+        System.err.println("  expected: " + expected.substring(start, Math.min(expected.length(), i + 100)));
+        System.err.println("  actual:   " + actual.substring(start, Math.min(actual.length(), i + 100)));
+        return false;
+    } // check(String,boolean,String,String,String):boolean
+
+    private void printError(String type, SAXParseException ex) {
+        fErrors.append('[').append(type).append("] ").append(ex.getLineNumber()).append(':')
+            .append(ex.getColumnNumber()).append(' ').append(ex.getMessage()).append('\n');
+    } // printError(String,SAXParseException)
+
+    //
+    // Private static methods
+    //
+
+    /** Checks that the document builder factory attribute selects the compact DOM. */
+    private static void checkJAXP(String systemId) throws Exception {
+        DocumentBuilderFactory factory = new DocumentBuilderFactoryImpl();
+        factory.setNamespaceAware(true);
+        factory.setAttribute(DOCUMENT_CLASS_NAME_PROPERTY_ID, COMPACT_DOCUMENT_CLASS_NAME);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(systemId);
+        check("document builder factory", document instanceof CompactDocumentImpl,
+            document.getClass().getName());
+    } // checkJAXP(String)
+
+    /**
+     * Checks that the mutators of every kind of node of the compact
+     * DOM raise NO_MODIFICATION_ALLOWED_ERR, that the factory methods
+     * raise NOT_SUPPORTED_ERR, and that the document is unchanged.
+     */
+    private static void checkReadOnly(Test test, String systemId) throws Exception {
+        Document document = test.parse(systemId, false, true);
+        StringBuffer before = new StringBuffer();
+        dump(document, 0, before);
+
+        Element root = document.getDocumentElement();
+        Element item = (Element) root.getElementsByTagName("item").item(0);
+        Attr attr = item.getAttributeNode("id");
+        Node text = item.getFirstChild();
+        Node cdata = root.getElementsByTagName("item").item(1).getFirstChild();
+        Node comment = root.getElementsByTagName("item").item(2).getFirstChild();
+        Node pi = root.getElementsByTagName("item").item(3).getFirstChild();
+        Node entityReference = root.getElementsByTagName("item").item(4).getFirstChild();
+        DocumentType doctype = document.getDoctype();
+        Node entity = doctype.getEntities().getNamedItem("ent");
+        Node notation = doctype.getNotations().getNamedItem("png");
+        Node[] nodes = {
+            document, root, item, attr, attr.getFirstChild(), text, cdata, comment, pi,
+            entityReference, doctype, entity, notation
+        };
+        check("node kinds", text.getNodeType() == Node.TEXT_NODE
+            && cdata.getNodeType() == Node.CDATA_SECTION_NODE
+            && comment.getNodeType() == Node.COMMENT_NODE
+            && pi.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE
+            && entityReference.getNodeType() == Node.ENTITY_REFERENCE_NODE, "");
+
+        String[] names = {
+            "appendChild", "insertBefore", "replaceChild", "removeChild", "setNodeValue",
+            "setTextContent", "setPrefix"
+        };
+        for (int i = 0; i < nodes.length; ++i) {
+            Node node = nodes[i];
+            Node child = node.getFirstChild();
+            for (int j = 0; j < names.length; ++j) {
+                // setting the value of a node without one has no effect
+                if ((j == 4 || (j == 5 && node.getNodeType() == Node.DOCUMENT_TYPE_NODE))
+                        && node.getNodeValue() == null) {
+                    continue;
+                }
+                if (j == 5 && node.getNodeType() == Node.DOCUMENT_NODE) {
+                    continue;
+                }
+                if (j == 6 && node.getLocalName() == null) {
+                    continue;
+                }
+                if ((j == 2 || j == 3) && child == null) {
+                    continue;
+                }
+                String name = nodeName(node) + "." + names[j];
+                try {
+                    switch (j) {
+                        case 0: node.appendChild(text); break;
+                        case 1: node.insertBefore(text, child); break;
+                        case 2: node.replaceChild(text, child); break;
+                        case 3: node.removeChild(child); break;
+                        case 4: node.setNodeValue("value"); break;
+                        case 5: node.setTextContent("value"); break;
+                        case 6: node.setPrefix("p"); break;
+                    }
+                    check(name, false, "no exception");
+                }
+                catch (DOMException e) {
+                    checkCode(name, DOMException.NO_MODIFICATION_ALLOWED_ERR, e);
+                }
+            }
+        }
+
+        names = new String[] {
+            "Element.setAttribute", "Element.setAttributeNS", "Element.removeAttribute",
+            "Element.removeAttributeNS", "Element.setAttributeNode", "Element.setAttributeNodeNS",
+            "Element.removeAttributeNode", "Element.setIdAttribute", "Element.setIdAttributeNS",
+            "Element.setIdAttributeNode", "NamedNodeMap.setNamedItem", "NamedNodeMap.setNamedItemNS",
+            "NamedNodeMap.removeNamedItem", "NamedNodeMap.removeNamedItemNS", "Attr.setValue",
+            "Text.setData", "Text.appendData", "Text.insertData", "Text.deleteData",
+            "Text.replaceData", "Text.splitText", "Text.replaceWholeText", "Comment.setData",
+            "ProcessingInstruction.setData", "Document.setDocumentURI", "Document.renameNode",
+            "Document.setXmlVersion", "Document.setXmlStandalone", "Entity children.appendChild",
+            "Entity reference children.removeChild",
+        };
+        for (int i = 0; i < names.length; ++i) {
+            try {
+                switch (i) {
+                    case 0: item.setAttribute("id", "value"); break;
+                    case 1: item.setAttributeNS("urn:x", "x:a", "value"); break;
+                    case 2: item.removeAttribute("id"); break;
+                    case 3: item.removeAttributeNS(null, "id"); break;
+                    case 4: item.setAttributeNode(attr); break;
+                    case 5: item.setAttributeNodeNS(attr); break;
+                    case 6: item.removeAttributeNode(attr); break;
+                    case 7: item.setIdAttribute("id", false); break;
+                    case 8: item.setIdAttributeNS(null, "id", false); break;
+                    case 9: item.setIdAttributeNode(attr, false); break;
+                    case 10: item.getAttributes().setNamedItem(attr); break;
+                    case 11: item.getAttributes().setNamedItemNS(attr); break;
+                    case 12: item.getAttributes().removeNamedItem("id"); break;
+                    case 13: item.getAttributes().removeNamedItemNS(null, "id"); break;
+                    case 14: attr.setValue("value"); break;
+                    case 15: ((Text) text).setData("value"); break;
+                    case 16: ((Text) text).appendData("value"); break;
+                    case 17: ((Text) text).insertData(0, "value"); break;
+                    case 18: ((Text) text).deleteData(0, 1); break;
+                    case 19: ((Text) text).replaceData(0, 1, "value"); break;
+                    case 20: ((Text) text).splitText(1); break;
+                    case 21: ((Text) text).replaceWholeText("value"); break;
+                    case 22: ((CharacterData) comment).setData("value"); break;
+                    case 23: ((ProcessingInstruction) pi).setData("value"); break;
+                    case 24: document.setDocumentURI("urn:other"); break;
+                    case 25: document.renameNode(item, null, "renamed"); break;
+                    case 26: document.setXmlVersion("1.1"); break;
+                    case 27: document.setXmlStandalone(true); break;
+                    case 28: entity.getFirstChild().appendChild(text); break;
+                    case 29: entityReference.removeChild(entityReference.getFirstChild()); break;
+                }
+                check(names[i], false, "no exception");
+            }
+            catch (DOMException e) {
+                checkCode(names[i], DOMException.NO_MODIFICATION_ALLOWED_ERR, e);
+            }
+        }
+
+        names = new String[] {
+            "createElement", "createElementNS", "createAttribute", "createAttributeNS",
+            "createTextNode", "createComment", "createCDATASection", "createProcessingInstruction",
+            "createEntityReference", "createDocumentFragment", "importNode", "adoptNode",
+            "cloneNode", "createNodeIterator(null)", "createTreeWalker(null)",
+        };
+        DocumentTraversal traversal = (DocumentTraversal) document;
+        for (int i = 0; i < names.length; ++i) {
+            try {
+                switch (i) {
+                    case 0: document.createElement("e"); break;
+                    case 1: document.createElementNS("urn:x", "x:e"); break;
+                    case 2: document.createAttribute("a"); break;
+                    case 3: document.createAttributeNS("urn:x", "x:a"); break;
+                    case 4: document.createTextNode("text"); break;
+                    case 5: document.createComment("comment"); break;
+                    case 6: document.createCDATASection("cdata"); break;
+                    case 7: document.createProcessingInstruction("pi", "data"); break;
+                    case 8: document.createEntityReference("ent"); break;
+                    case 9: document.createDocumentFragment(); break;
+                    case 10: document.importNode(item, true); break;
+                    case 11: document.adoptNode(item); break;
+                    case 12: item.cloneNode(true); break;
+                    case 13: traversal.createNodeIterator(null, NodeFilter.SHOW_ALL, null, true); break;
+                    case 14: traversal.createTreeWalker(null, NodeFilter.SHOW_ALL, null, true); break;
+                }
+                check("Document." + names[i], false, "no exception");
+            }
+            catch (DOMException e) {
+                checkCode("Document." + names[i], DOMException.NOT_SUPPORTED_ERR, e);
+            }
+        }
+
+        // the calls which only read or have nothing to change are allowed
+        try {
+            document.normalizeDocument();
+            root.normalize();
+            document.setStrictErrorChecking(false);
+            NodeIterator iterator = traversal.createNodeIterator(root, NodeFilter.SHOW_ALL, null, true);
+            iterator.nextNode();
+            iterator.detach();
+            check("allowed calls", true, "");
+        }
+        catch (DOMException e) {
+            check("allowed calls", false, e.toString());
+        }
+
+        StringBuffer after = new StringBuffer();
+        dump(document, 0, after);
+        check("document unchanged", before.toString().equals(after.toString()), "");
+    } // checkReadOnly(Test,String)
+
+    private static void checkCode(String name, short expected, DOMException e) {
+        check(name, e.code == expected, "code " + e.code);
+    } // checkCode(String,short,DOMException)
+
+    private static void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fCheckFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + (result.length() > 0 ? ": " + result : ""));
+    } // check(String,boolean,String)
+
+    /** Dumps a node and its descendants. */
+    private static void dump(Node node, int depth, StringBuffer dump) {
+        for (int i = 0; i < depth; ++i) {
+            dump.append(' ');
+        }
+        dump.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node.getNamespaceURI() != null) {
+            dump.append(" {").append(node.getNamespaceURI()).append('}').append(node.getPrefix())
+                .append(':').append(node.getLocalName());
+        }
+        if (node.getNodeValue() != null) {
+            dump.append(" '").append(node.getNodeValue()).append('\'');
+        }
+        dump.append(" base=").append(node.getBaseURI());
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE: {
+                Element element = (Element) node;
+                dumpType(element.getSchemaTypeInfo(), dump);
+                NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength(); ++i) {
+                    Attr attr = (Attr) attributes.item(i);
+                    dump.append("\n  @").append(attr.getName());
+                    if (attr.getNamespaceURI() != null) {
+                        dump.append(" {").append(attr.getNamespaceURI()).append('}').append(attr.getLocalName());
+                    }
+                    dump.append("='").append(attr.getValue()).append('\'');
+                    if (!attr.getSpecified()) {
+                        dump.append(" default");
+                    }
+                    if (attr.isId()) {
+                        dump.append(" id");
+                    }
+                    if (!element.isSameNode(attr.getOwnerElement())) {
+                        dump.append(" wrong owner");
+                    }
+                    if (!attr.isSameNode(element.getAttributeNodeNS(attr.getNamespaceURI(),
+                            attr.getLocalName() != null ? attr.getLocalName() : attr.getName()))
+                            && !attr.isSameNode(element.getAttributeNode(attr.getName()))) {
+                        dump.append(" not found");
+                    }
+                    dump.append(" has=").append(element.hasAttribute(attr.getName()));
+                    dumpType(attr.getSchemaTypeInfo(), dump);
+                    for (Node child = attr.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        dump.append(' ').append(child.getNodeType()).append(':').append(child.getNodeName());
+                    }
+                }
+                dump.append("\n  text='").append(element.getTextContent()).append('\'');
+                break;
+            }
+            case Node.DOCUMENT_NODE: {
+                Document document = (Document) node;
+                dump.append(" version=").append(document.getXmlVersion())
+                    .append(" standalone=").append(document.getXmlStandalone())
+                    .append(" encoding=").append(document.getXmlEncoding())
+                    .append(" input=").append(document.getInputEncoding());
+                break;
+            }
+            case Node.DOCUMENT_TYPE_NODE: {
+                DocumentType doctype = (DocumentType) node;
+                dump.append(" public=").append(doctype.getPublicId()).append(" system=").append(doctype.getSystemId());
+                dump.append(" internal='").append(doctype.getInternalSubset()).append('\'');
+                NamedNodeMap entities = doctype.getEntities();
+                for (int i = 0; i < entities.getLength(); ++i) {
+                    Entity entity = (Entity) entities.item(i);
+                    dump.append("\n  entity ").append(entity.getNodeName()).append(" public=").append(entity.getPublicId())
+                        .append(" system=").append(entity.getSystemId()).append(" notation=").append(entity.getNotationName());
+                    for (Node child = entity.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        dump.append('\n');
+                        dump(child, depth + 4, dump);
+                    }
+                }
+                NamedNodeMap notations = doctype.getNotations();
+                for (int i = 0; i < notations.getLength(); ++i) {
+                    Notation notation = (Notation) notations.item(i);
+                    dump.append("\n  notation ").append(notation.getNodeName()).append(" public=")
+                        .append(notation.getPublicId()).append(" system=").append(notation.getSystemId());
+                }
+                break;
+            }
+            case Node.PROCESSING_INSTRUCTION_NODE: {
+                dump.append(" target=").append(((ProcessingInstruction) node).getTarget());
+                break;
+            }
+        }
+        dump.append('\n');
+        NodeList children = node.getChildNodes();
+        int index = 0;
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!node.isSameNode(child.getParentNode())) {
+                dump.append("wrong parent\n");
+            }
+            if (!child.isSameNode(children.item(index++))) {
+                dump.append("wrong child item\n");
+            }
+            dump(child, depth + 1, dump);
+        }
+        if (children.getLength() != index || children.item(index) != null) {
+            dump.append("wrong child count\n");
+        }
+        Node last = node.getLastChild();
+        if (last != null && last.getNextSibling() != null) {
+            dump.append("wrong last child\n");
+        }
+    } // dump(Node,int,StringBuffer)
+
+    private static void dumpType(TypeInfo type, StringBuffer dump) {
+        if (type != null && type.getTypeName() != null) {
+            dump.append(" type={").append(type.getTypeNamespace()).append('}').append(type.getTypeName());
+        }
+    } // dumpType(TypeInfo,StringBuffer)
+
+    /** Dumps the namespace lookups on every element and attribute. */
+    private static void dumpNamespaces(Node node, StringBuffer dump) {
+        if (node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.DOCUMENT_NODE) {
+            dump.append(path(node));
+            for (int i = 0; i < PREFIXES.length; ++i) {
+                dump.append(' ').append(PREFIXES[i]).append('=').append(node.lookupNamespaceURI(PREFIXES[i]));
+            }
+            for (int i = 0; i < NAMESPACES.length; ++i) {
+                dump.append(' ').append(NAMESPACES[i]).append("->").append(node.lookupPrefix(NAMESPACES[i]))
+                    .append(node.isDefaultNamespace(NAMESPACES[i]) ? " default" : "");
+            }
+            dump.append('\n');
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; attributes != null && i < attributes.getLength(); ++i) {
+                Node attr = attributes.item(i);
+                dump.append(" @").append(attr.getNodeName()).append(' ')
+                    .append(attr.lookupNamespaceURI(attr.getPrefix())).append(' ')
+                    .append(attr.lookupPrefix(attr.getNamespaceURI())).append('\n');
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            dumpNamespaces(child, dump);
+        }
+    } // dumpNamespaces(Node,StringBuffer)
+
+    /**
+     * Dumps the elements found by tag name and by namespace and local
+     * name from the document and from every element.
+     */
+    private static void dumpTagNames(Document document, StringBuffer dump) {
+        ArrayList names = new ArrayList();
+        ArrayList elements = new ArrayList();
+        elements.add(document);
+        NodeList all = document.getElementsByTagName("*");
+        for (int i = 0; i < all.getLength(); ++i) {
+            Node element = all.item(i);
+            if (!names.contains(element.getNodeName())) {
+                names.add(element.getNodeName());
+                names.add(element.getNamespaceURI());
+                names.add(element.getLocalName());
+            }
+            if (i % 97 == 0) {
+                elements.add(element);
+            }
+        }
+        names.add("none");
+        names.add("*");
+        names.add("*");
+        for (int i = 0; i < elements.size(); ++i) {
+            Node node = (Node) elements.get(i);
+            for (int j = 0; j < names.size(); j += 3) {
+                String name = (String) names.get(j);
+                String uri = (String) names.get(j + 1);
+                String local = (String) names.get(j + 2);
+                NodeList list = node.getNodeType() == Node.DOCUMENT_NODE
+                    ? ((Document) node).getElementsByTagName(name)
+                    : ((Element) node).getElementsByTagName(name);
+                dumpList(path(node) + " " + name, list, dump);
+                if (local != null) {
+                    list = node.getNodeType() == Node.DOCUMENT_NODE
+                        ? ((Document) node).getElementsByTagNameNS(uri, local)
+                        : ((Element) node).getElementsByTagNameNS(uri, local);
+                    dumpList(path(node) + " {" + uri + "}" + local, list, dump);
+                    list = node.getNodeType() == Node.DOCUMENT_NODE
+                        ? ((Document) node).getElementsByTagNameNS("*", local)
+                        : ((Element) node).getElementsByTagNameNS("*", local);
+                    dumpList(path(node) + " {*}" + local, list, dump);
+                    list = node.getNodeType() == Node.DOCUMENT_NODE
+                        ? ((Document) node).getElementsByTagNameNS(uri, "*")
+                        : ((Element) node).getElementsByTagNameNS(uri, "*");
+                    dumpList(path(node) + " {" + uri + "}*", list, dump);
+                }
+            }
+        }
+    } // dumpTagNames(Document,StringBuffer)
+
+    private static void dumpList(String name, NodeList list, StringBuffer dump) {
+        dump.append(name).append(": ").append(list.getLength());
+        // read the list backwards as well, since the lists are cached
+        for (int i = list.getLength() - 1; i >= 0; i -= 1 + list.getLength() / 10) {
+            dump.append(' ').append(path(list.item(i)));
+        }
+        dump.append(' ').append(list.item(list.getLength()));
+        dump.append('\n');
+    } // dumpList(String,NodeList,StringBuffer)
+
+    /**
+     * Dumps whether the nodes of the document are equal to the nodes of the
+     * deferred document, in both directions, and to their neighbours.
+     */
+    private static void dumpEquality(Document document, Document other, StringBuffer dump) {
+        dump.append(document.isEqualNode(other)).append(other.isEqualNode(document)).append('\n');
+        NodeList nodes = document.getElementsByTagName("*");
+        NodeList others = other.getElementsByTagName("*");
+        for (int i = 0; i < nodes.getLength(); i += 1 + nodes.getLength() / 50) {
+            Node node = nodes.item(i);
+            Node same = others.item(i);
+            Node next = others.item(i + 1);
+            dump.append(path(node)).append(' ').append(node.isEqualNode(same)).append(same.isEqualNode(node))
+                .append(next != null && node.isEqualNode(next)).append(next != null && next.isEqualNode(node))
+                .append(node.isSameNode(nodes.item(i))).append(node.isSameNode(node.getParentNode()))
+                .append(node.compareDocumentPosition(nodes.item(nodes.getLength() - 1)));
+            if (node.getFirstChild() != null) {
+                dump.append(node.getFirstChild().isEqualNode(same.getFirstChild()));
+            }
+            NamedNodeMap attributes = node.getAttributes();
+            for (int j = 0; j < attributes.getLength(); ++j) {
+                dump.append(attributes.item(j).isEqualNode(same.getAttributes().item(j)));
+            }
+            dump.append('\n');
+        }
+        if (document.getDoctype() != null) {
+            dump.append("doctype ").append(document.getDoctype().isEqualNode(other.getDoctype()))
+                .append(other.getDoctype().isEqualNode(document.getDoctype())).append('\n');
+        }
+    } // dumpEquality(Document,Document,StringBuffer)
+
+    /** Dumps the nodes returned by node iterators forwards and backwards. */
+    private static void dumpIterator(Document document, StringBuffer dump) {
+        DocumentTraversal traversal = (DocumentTraversal) document;
+        int[] shows = { NodeFilter.SHOW_ALL, NodeFilter.SHOW_ELEMENT | NodeFilter.SHOW_TEXT };
+        Node[] roots = { document, document.getDocumentElement() };
+        for (int i = 0; i < shows.length; ++i) {
+            for (int j = 0; j < roots.length; ++j) {
+                for (int expand = 0; expand < 2; ++expand) {
+                    NodeIterator iterator = traversal.createNodeIterator(roots[j], shows[i],
+                        i == 1 ? new SkipFilter() : null, expand == 1);
+                    int count = 0;
+                    for (Node node = iterator.nextNode(); node != null; node = iterator.nextNode()) {
+                        if (count++ % 23 == 0) {
+                            dump.append(path(node)).append(' ');
+                        }
+                    }
+                    dump.append("| ").append(count).append(" |");
+                    for (Node node = iterator.previousNode(); node != null; node = iterator.previousNode()) {
+                        if (--count % 23 == 0) {
+                            dump.append(' ').append(path(node));
+                        }
+                    }
+                    iterator.detach();
+                    dump.append('\n');
+                }
+            }
+        }
+    } // dumpIterator(Document,StringBuffer)
+
+    /** Dumps the nodes visited by tree walkers. */
+    private static void dumpTreeWalker(Document document, StringBuffer dump) {
+        DocumentTraversal traversal = (DocumentTraversal) document;
+        int[] shows = { NodeFilter.SHOW_ALL, NodeFilter.SHOW_ELEMENT, NodeFilter.SHOW_TEXT };
+        for (int i = 0; i < shows.length; ++i) {
+            for (int expand = 0; expand < 2; ++expand) {
+                TreeWalker walker = traversal.createTreeWalker(document, shows[i],
+                    i == 1 ? new SkipFilter() : null, expand == 1);
+                int count = 0;
+                for (Node node = walker.nextNode(); node != null; node = walker.nextNode()) {
+                    if (count++ % 23 == 0) {
+                        dump.append(path(node)).append(' ');
+                        Node current = walker.getCurrentNode();
+                        dump.append(path(walker.parentNode())).append(' ');
+                        walker.setCurrentNode(current);
+                        dump.append(path(walker.firstChild())).append(' ');
+                        walker.setCurrentNode(current);
+                        dump.append(path(walker.lastChild())).append(' ');
+                        walker.setCurrentNode(current);
+                        dump.append(path(walker.nextSibling())).append(' ');
+                        walker.setCurrentNode(current);
+                        dump.append(path(walker.previousSibling())).append(", ");
+                        walker.setCurrentNode(current);
+                    }
+                }
+                dump.append("| ").append(count).append(" |");
+                while (walker.previousNode() != null) {
+                    --count;
+                }
+                dump.append(' ').append(count).append('\n');
+            }
+        }
+    } // dumpTreeWalker(Document,StringBuffer)
+
+    /** Dumps the results of XPath expressions evaluated on the document. */
+    private static void dumpXPath(Document document, StringBuffer dump) throws Exception {
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        for (int i = 0; i < XPATHS.length; ++i) {
+            NodeList list = (NodeList) xpath.evaluate(XPATHS[i], document, XPathConstants.NODESET);
+            dumpList(XPATHS[i], list, dump);
+        }
+        // the nodes of the compact DOM have no identity, so the context
+        // node is always the document
+        for (int i = 0; i < XPATH_STRINGS.length; ++i) {
+            dump.append(XPATH_STRINGS[i]).append(": ")
+                .append(xpath.evaluate(XPATH_STRINGS[i], document)).append('\n');
+        }
+    } // dumpXPath(Document,StringBuffer)
+
+    /** Dumps the output of the identity transformer. */
+    private static void dumpTransform(Document document, StringBuffer dump) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        StringWriter out = new StringWriter();
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+        dump.append(out);
+        out = new StringWriter();
+        transformer.transform(new DOMSource(document.getDocumentElement()), new StreamResult(out));
+        dump.append('\n').append(out);
+    } // dumpTransform(Document,StringBuffer)
+
+    /** Returns the position of a node as the indices of its ancestors. */
+    private static String path(Node node) {
+        if (node == null) {
+            return "null";
+        }
+        if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            return path(((Attr) node).getOwnerElement()) + "@" + node.getNodeName();
+        }
+        StringBuffer path = new StringBuffer();
+        for (Node n = node; n.getParentNode() != null; n = n.getParentNode()) {
+            int index = 0;
+            for (Node sibling = n.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                ++index;
+            }
+            path.insert(0, index).insert(0, '/');
+        }
+        return path.length() == 0 ? node.getNodeName() : path.toString();
+    } // path(Node):String
+
+    private static String nodeName(Node node) {
+        return node.getClass().getName().substring(node.getClass().getName().lastIndexOf('.') + 1)
+            + "(" + node.getNodeName() + ")";
+    } // nodeName(Node):String
+
+    /** Collects the values of the attributes named id. */
+    private static void collectIds(Node node, ArrayList ids) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                String name = attributes.item(i).getNodeName();
+                if (name.equalsIgnoreCase("id") || name.endsWith(":id")) {
+                    ids.add(attributes.item(i).getNodeValue());
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collectIds(child, ids);
+        }
+    } // collectIds(Node,ArrayList)
+
+    /** Adds the XML documents of a directory and its subdirectories. */
+    private static void findDocuments(File dir, ArrayList documents) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i].isDirectory()) {
+                findDocuments(files[i], documents);
+            }
+            else if (files[i].getName().endsWith(".xml")) {
+                documents.add(files[i]);
+            }
+        }
+    } // findDocuments(File,ArrayList)
+
+    /**
+     * Generates documents with namespaces, identifiers, entities, CDATA
+     * sections, comments, processing instructions and default attributes,
+     * and adds them to the documents.
+     */
+    private static File generateDocuments(ArrayList documents) throws IOException {
+        File dir = File.createTempFile("compact", "");
+        dir.delete();
+        dir.mkdirs();
+
+        StringBuffer doc = new StringBuffer(
+            "<?xml version='1.0' encoding='UTF-8' standalone='no'?>\n" +
+            "<!DOCTYPE root [\n" +
+            " <!ELEMENT root ANY>\n <!ELEMENT item ANY>\n <!ELEMENT sub ANY>\n" +
+            " <!ATTLIST item id ID #REQUIRED kind (a|b) 'a' xmlns:n CDATA #FIXED 'urn:n'>\n" +
+            " <!ATTLIST sub ref IDREF #IMPLIED>\n" +
+            " <!ENTITY ent 'entity <sub>text</sub> &#x20AC;'>\n" +
+            " <!ENTITY chars '&#xe9;&#x10000;'>\n" +
+            " <!NOTATION png PUBLIC 'image/png'>\n" +
+            " <!ENTITY image SYSTEM 'image.png' NDATA png>\n" +
+            "]>\n" +
+            "<?pi before root?>\n<!-- comment before root -->\n" +
+            "<root xmlns:n='urn:n'>\n");
+        for (int i = 0; i < 300; ++i) {
+            doc.append(" <item id='i").append(i).append("'").append(i % 2 == 0 ? " kind='b'" : "").append(">");
+            switch (i % 6) {
+                case 0: doc.append("text ").append(i).append(" &amp; &lt;more&gt;"); break;
+                case 1: doc.append("<![CDATA[cdata <").append(i).append(">]]>"); break;
+                case 2: doc.append("<!-- comment ").append(i).append(" -->"); break;
+                case 3: doc.append("<?pi ").append(i).append("?>"); break;
+                case 4: doc.append("&ent;&chars;"); break;
+                default: doc.append("<sub ref='i").append(i - 1).append("'><n:sub/>").append(i).append("</sub>"); break;
+            }
+            doc.append("</item>\n");
+        }
+        doc.append("</root>\n<!-- comment after root -->");
+        documents.add(write(dir, "large.xml", doc.toString()));
+
+        documents.add(write(dir, "namespaces.xml",
+            "<a:root xmlns:a='urn:a' xmlns='urn:default' a:attr='1' attr='2' xml:lang='en'>" +
+            "<child xmlns=''><a:child a:x='y' a:id='n1'/></child><b:x xmlns:b='urn:b' b:y=''>" +
+            "<b:y xmlns:a='urn:b'><a:z/></b:y></b:x><child id='n2'>text<a:child/>more</child></a:root>"));
+        documents.add(write(dir, "empty.xml", "<root/>"));
+        documents.add(write(dir, "attributes.xml",
+            "<!DOCTYPE root [<!ATTLIST root a CDATA 'default &amp; value' b CDATA #IMPLIED>" +
+            "<!ENTITY e 'entity'>]><root b='&e; and &#x3c;'><x a='&e;'/></root>"));
+        documents.add(write(dir, "xml11.xml",
+            "<?xml version='1.1' encoding='ISO-8859-1'?><root xml:base='http://example.org/base/'>" +
+            "<a xml:base='sub/'>\u00e9<b/></a></root>"));
+        documents.add(write(dir, "malformed.xml", "<root><a></root>"));
+        return dir;
+    } // generateDocuments(ArrayList):File
+
+    private static File write(File dir, String name, String contents) throws IOException {
+        File file = new File(dir, name);
+        String encoding = contents.indexOf("ISO-8859-1") != -1 ? "ISO-8859-1" : "UTF-8";
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), encoding);
+        out.write(contents);
+        out.close();
+        return file;
+    } // write(File,String,String):File
+
+    //
+    // Classes
+    //
+
+    /** Skips the elements named sub and rejects the processing instructions. */
+    static class SkipFilter implements NodeFilter {
+
+        public short acceptNode(Node node) {
+            if (node.getNodeName().equals("sub")) {
+                return FILTER_SKIP;
+            }
+            if (node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE
+                    || node.getNodeName().equals("n:sub")) {
+                return FILTER_REJECT;
+            }
+            return FILTER_ACCEPT;
+        }
+
+    } // class SkipFilter
+
+} // class Test
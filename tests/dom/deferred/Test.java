@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.deferred;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.DOMParser;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Entity;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Notation;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.TypeInfo;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses the test documents, and generated documents with many nodes and
+ * long text, into deferred DOMs with chunk sizes from 16 to 2^20 nodes,
+ * with the node tables and character data on the heap and off the heap,
+ * and checks that the trees, the identifiers and the clones are the same
+ * as those of the default deferred DOM and of the DOM built without
+ * deferred node expansion.
+ *
+ * <p>Must be run from the root of the source tree.</p>
+ *
+ * @version $Id$
+ */
+public class Test implements ErrorHandler {
+
+    //
+    // Constants
+    //
+
+    /** Deferred node expansion feature id. */
+    protected static final String DEFER_NODE_EXPANSION_FEATURE_ID =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_NODE_EXPANSION_FEATURE;
+
+    /** Deferred off-heap storage feature id. */
+    protected static final String DEFERRED_OFF_HEAP_STORAGE_FEATURE_ID =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFERRED_OFF_HEAP_STORAGE_FEATURE;
+
+    /** Deferred chunk size property id. */
+    protected static final String DEFERRED_CHUNK_SIZE_PROPERTY_ID =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.DEFERRED_CHUNK_SIZE_PROPERTY;
+
+    /** Chunk sizes, the first one the default; 100 is rounded up to 128. */
+    private static final int[] CHUNK_SIZES = { 2048, 16, 100, 4096, 1 << 20 };
+
+    //
+    // Data
+    //
+
+    /** Errors reported by the last parse. */
+    private final StringBuffer fErrors = new StringBuffer();
+
+    /** Values of the attributes named id of the document compared. */
+    private final ArrayList fIds = new ArrayList();
+
+    /** Number of documents whose DOMs differ. */
+    private int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        Test test = new Test();
+        ArrayList documents = new ArrayList();
+        findDocuments(new File("tests"), documents);
+        File dir = generateDocuments(documents);
+        for (int i = 0; i < documents.size(); ++i) {
+            String systemId = ((File) documents.get(i)).toURI().toString();
+            test.compare(systemId, false);
+            test.compare(systemId, true);
+        }
+        System.err.println((test.fFailures == 0 ? "PASS: " : "FAIL: ") + documents.size() +
+            " documents, " + test.fFailures + " failed");
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+        if (test.fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Compares the DOMs of the document built with each of the chunk sizes,
+     * on and off the heap, with the default deferred DOM and with the DOM
+     * built without deferred node expansion.
+     */
+    public void compare(String systemId, boolean validate) {
+        // the identifiers are collected from the document which is not
+        // deferred, and looked up in the others before they are expanded
+        fIds.clear();
+        String direct = parse(systemId, validate, true, false, CHUNK_SIZES[0]);
+        String expected = parse(systemId, validate, false, false, CHUNK_SIZES[0]);
+        boolean passed = check(systemId, validate, "not deferred", expected, direct);
+        for (int i = 0; i < CHUNK_SIZES.length; ++i) {
+            for (int offHeap = 0; offHeap < 2; ++offHeap) {
+                if (i == 0 && offHeap == 0) {
+                    continue;
+                }
+                String actual = parse(systemId, validate, false, offHeap == 1, CHUNK_SIZES[i]);
+                passed &= check(systemId, validate, "chunk size " + CHUNK_SIZES[i] +
+                    (offHeap == 1 ? ", off heap" : ""), expected, actual);
+            }
+        }
+        if (!passed) {
+            ++fFailures;
+        }
+    } // compare(String,boolean)
+
+    /**
+     * Returns the dump of the DOM of the document, of its elements
+     * looked up by their identifiers, of a deep clone of the document
+     * and of the document modified, and the errors reported.
+     */
+    public String parse(String systemId, boolean validate, boolean notDeferred,
+            boolean offHeap, int chunkSize) {
+        fErrors.setLength(0);
+        StringBuffer dump = new StringBuffer();
+        try {
+            DOMParser parser = new DOMParser();
+            parser.setFeature("http://xml.org/sax/features/validation", validate);
+            parser.setFeature("http://apache.org/xml/features/validation/dynamic", validate);
+            parser.setFeature("http://apache.org/xml/features/validation/schema", validate);
+            parser.setFeature(DEFER_NODE_EXPANSION_FEATURE_ID, !notDeferred);
+            parser.setFeature(DEFERRED_OFF_HEAP_STORAGE_FEATURE_ID, offHeap);
+            parser.setProperty(DEFERRED_CHUNK_SIZE_PROPERTY_ID, new Integer(chunkSize));
+            parser.setErrorHandler(this);
+            parser.parse(systemId);
+            Document document = parser.getDocument();
+
+            if (notDeferred) {
+                collectIds(document, fIds);
+            }
+            for (int i = 0; i < fIds.size(); ++i) {
+                Element element = document.getElementById((String) fIds.get(i));
+                dump.append("id ").append(fIds.get(i)).append(": ")
+                    .append(element == null ? "null" : element.getNodeName()).append('\n');
+            }
+            dump(document, 0, dump);
+
+            dump.append("clone\n");
+            dump(document.cloneNode(true), 0, dump);
+
+            // the document modified after it is expanded
+            Element root = document.getDocumentElement();
+            if (root != null) {
+                root.setAttribute("added", "value");
+                Node first = root.getFirstChild();
+                if (first != null) {
+                    root.removeChild(first);
+                    root.appendChild(first);
+                }
+                root.appendChild(document.createTextNode("text"));
+                document.normalizeDocument();
+                dump.append("modified\n");
+                dump(document, 0, dump);
+            }
+        }
+        catch (Exception e) {
+            dump.append("[Exception] ").append(e.getMessage());
+        }
+        return dump.toString() + fErrors;
+    } // parse(String,boolean,boolean,boolean,int):String
+
+    //
+    // ErrorHandler methods
+    //
+
+    public void warning(SAXParseException ex) {
+        printError("Warning", ex);
+    }
+
+    public void error(SAXParseException ex) {
+        printError("Error", ex);
+    }
+
+    public void fatalError(SAXParseException ex) throws SAXParseException {
+        printError("Fatal Error", ex);
+        throw ex;
+    }
+
+    //
+    // Private methods
+    //
+
+    private boolean check(String systemId, boolean validate, String description, String expected, String actual) {
+        if (expected.equals(actual)) {
+            return true;
+        }
+        int i = 0;
+        while (i < expected.length() && i < actual.length() && expected.charAt(i) == actual.charAt(i)) {
+            ++i;
+        }
+        int start = Math.max(0, i - 100);
+        System.err.println("FAIL: " + systemId + (validate ? " (validating)" : "") + ", " + description);
+        System.err.println("  expected: " + expected.substring(start, Math.min(expected.length(), i + 100)));
+        System.err.println("  actual:   " + actual.substring(start, Math.min(actual.length(), i + 100)));
+        return false;
+    } // check(String,boolean,String,String,String):boolean
+
+    private void printError(String type, SAXParseException ex) {
+        fErrors.append('[').append(type).append("] ").append(ex.getLineNumber()).append(':')
+            .append(ex.getColumnNumber()).append(' ').append(ex.getMessage()).append('\n');
+    } // printError(String,SAXParseException)
+
+    //
+    // Private static methods
+    //
+
+    /** Dumps a node and its descendants. */
+    private static void dump(Node node, int depth, StringBuffer dump) {
+        for (int i = 0; i < depth; ++i) {
+            dump.append(' ');
+        }
+        dump.append(node.getNodeType()).append(' ').append(node.getNodeName());
+        if (node.getNamespaceURI() != null) {
+            dump.append(" {").append(node.getNamespaceURI()).append('}').append(node.getLocalName());
+        }
+        if (node.getNodeValue() != null) {
+            dump.append(" '").append(node.getNodeValue()).append('\'');
+        }
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE: {
+                Element element = (Element) node;
+                dumpType(element.getSchemaTypeInfo(), dump);
+                NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength(); ++i) {
+                    Attr attr = (Attr) attributes.item(i);
+                    dump.append("\n  @").append(attr.getName());
+                    if (attr.getNamespaceURI() != null) {
+                        dump.append(" {").append(attr.getNamespaceURI()).append('}').append(attr.getLocalName());
+                    }
+                    dump.append("='").append(attr.getValue()).append('\'');
+                    if (!attr.getSpecified()) {
+                        dump.append(" default");
+                    }
+                    if (attr.isId()) {
+                        dump.append(" id");
+                    }
+                    dumpType(attr.getSchemaTypeInfo(), dump);
+                    for (Node child = attr.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        dump.append(' ').append(child.getNodeType()).append(':').append(child.getNodeName());
+                    }
+                }
+                break;
+            }
+            case Node.DOCUMENT_TYPE_NODE: {
+                DocumentType doctype = (DocumentType) node;
+                dump.append(" public=").append(doctype.getPublicId()).append(" system=").append(doctype.getSystemId());
+                dump.append(" internal='").append(doctype.getInternalSubset()).append('\'');
+                NamedNodeMap entities = doctype.getEntities();
+                for (int i = 0; i < entities.getLength(); ++i) {
+                    Entity entity = (Entity) entities.item(i);
+                    dump.append("\n  entity ").append(entity.getNodeName()).append(" public=").append(entity.getPublicId())
+                        .append(" system=").append(entity.getSystemId()).append(" notation=").append(entity.getNotationName());
+                    for (Node child = entity.getFirstChild(); child != null; child = child.getNextSibling()) {
+                        dump.append('\n');
+                        dump(child, depth + 4, dump);
+                    }
+                }
+                NamedNodeMap notations = doctype.getNotations();
+                for (int i = 0; i < notations.getLength(); ++i) {
+                    Notation notation = (Notation) notations.item(i);
+                    dump.append("\n  notation ").append(notation.getNodeName()).append(" public=")
+                        .append(notation.getPublicId()).append(" system=").append(notation.getSystemId());
+                }
+                break;
+            }
+            case Node.PROCESSING_INSTRUCTION_NODE: {
+                dump.append(" target=").append(((ProcessingInstruction) node).getTarget());
+                break;
+            }
+        }
+        dump.append('\n');
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getParentNode() != node) {
+                dump.append("wrong parent\n");
+            }
+            dump(child, depth + 1, dump);
+        }
+        Node last = node.getLastChild();
+        if (last != null && last.getNextSibling() != null) {
+            dump.append("wrong last child\n");
+        }
+    } // dump(Node,int,StringBuffer)
+
+    private static void dumpType(TypeInfo type, StringBuffer dump) {
+        if (type != null && type.getTypeName() != null) {
+            dump.append(" type={").append(type.getTypeNamespace()).append('}').append(type.getTypeName());
+        }
+    } // dumpType(TypeInfo,StringBuffer)
+
+    /** Collects the values of the attributes named id. */
+    private static void collectIds(Node node, ArrayList ids) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                String name = attributes.item(i).getNodeName();
+                if (name.equalsIgnoreCase("id") || name.endsWith(":id")) {
+                    ids.add(attributes.item(i).getNodeValue());
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collectIds(child, ids);
+        }
+    } // collectIds(Node,ArrayList)
+
+    /** Adds the XML documents of a directory and its subdirectories. */
+    private static void findDocuments(File dir, ArrayList documents) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i].isDirectory()) {
+                findDocuments(files[i], documents);
+            }
+            else if (files[i].getName().endsWith(".xml")) {
+                documents.add(files[i]);
+            }
+        }
+    } // findDocuments(File,ArrayList)
+
+    /**
+     * Generates documents with more nodes than the smaller chunks hold,
+     * text longer than a segment of the character arena, entities, CDATA
+     * sections, comments, processing instructions, default attributes and
+     * identifiers, and adds them to the documents.
+     */
+    private static File generateDocuments(ArrayList documents) throws IOException {
+        File dir = File.createTempFile("deferred", "");
+        dir.delete();
+        dir.mkdirs();
+
+        StringBuffer doc = new StringBuffer(
+            "<?xml version='1.0' encoding='UTF-8'?>\n" +
+            "<!DOCTYPE root [\n" +
+            " <!ELEMENT root ANY>\n <!ELEMENT item ANY>\n <!ELEMENT sub ANY>\n <!ELEMENT long ANY>\n" +
+            " <!ATTLIST item id ID #REQUIRED kind (a|b) 'a' xmlns:n CDATA #FIXED 'urn:n'>\n" +
+            " <!ATTLIST sub ref IDREF #IMPLIED>\n" +
+            " <!ENTITY ent 'entity <sub>text</sub> &#x20AC;'>\n" +
+            " <!ENTITY chars '&#xe9;&#x10000;'>\n" +
+            " <!NOTATION png PUBLIC 'image/png'>\n" +
+            " <!ENTITY image SYSTEM 'image.png' NDATA png>\n" +
+            "]>\n" +
+            "<?pi before root?>\n<!-- comment before root -->\n" +
+            "<root xmlns:n='urn:n'>\n");
+        for (int i = 0; i < 3000; ++i) {
+            doc.append(" <item id='i").append(i).append("'").append(i % 2 == 0 ? " kind='b'" : "").append(">");
+            switch (i % 6) {
+                case 0: doc.append("text ").append(i).append(" &amp; &lt;more&gt;"); break;
+                case 1: doc.append("<![CDATA[cdata <").append(i).append(">]]>"); break;
+                case 2: doc.append("<!-- comment ").append(i).append(" -->"); break;
+                case 3: doc.append("<?pi ").append(i).append("?>"); break;
+                case 4: doc.append("&ent;&chars;"); break;
+                default: doc.append("<sub ref='i").append(i - 1).append("'><n:sub/>").append(i).append("</sub>"); break;
+            }
+            doc.append("</item>\n");
+        }
+        doc.append(" <long>");
+        for (int i = 0; i < 20000; ++i) {
+            doc.append("long text ").append(i).append(i % 100 == 0 ? " \u00e9\ud800\udc00\n" : " ");
+        }
+        doc.append("</long>\n");
+        doc.append("</root>\n<!-- comment after root -->");
+        documents.add(write(dir, "large.xml", doc.toString()));
+
+        documents.add(write(dir, "namespaces.xml",
+            "<a:root xmlns:a='urn:a' xmlns='urn:default' a:attr='1' attr='2'>" +
+            "<child xmlns=''><a:child a:x='y'/></child><b:x xmlns:b='urn:b' b:y=''/></a:root>"));
+        documents.add(write(dir, "empty.xml", "<root/>"));
+        documents.add(write(dir, "attributes.xml",
+            "<!DOCTYPE root [<!ATTLIST root a CDATA 'default &amp; value' b CDATA #IMPLIED>" +
+            "<!ENTITY e 'entity'>]><root b='&e; and &#x3c;'><x a='&e;'/></root>"));
+        documents.add(write(dir, "malformed.xml", "<root><a></root>"));
+        return dir;
+    } // generateDocuments(ArrayList):File
+
+    private static File write(File dir, String name, String contents) throws IOException {
+        File file = new File(dir, name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(contents);
+        out.close();
+        return file;
+    } // write(File,String,String):File
+
+} // class Test
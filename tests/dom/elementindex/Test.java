@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.elementindex;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import dom.util.Assertion;
+
+/**
+ * A simple program to test getElementsByTagName and getElementsByTagNameNS
+ * on a document with element indexing turned on. The live node lists are
+ * checked after insertions, removals, moves and renames, both for the
+ * document and for an element below it, and for an element which is not
+ * part of the document.
+ *
+ * @version $Id$
+ */
+public class Test {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) {
+
+        DocumentImpl doc = new DocumentImpl();
+        doc.setElementIndexing(true);
+        Element root = doc.createElementNS("urn:x", "x:root");
+        doc.appendChild(root);
+        Element body = doc.createElement("body");
+        root.appendChild(body);
+
+        NodeList items = doc.getElementsByTagName("item");
+        NodeList bodyItems = body.getElementsByTagName("item");
+        NodeList xItems = doc.getElementsByTagNameNS("urn:x", "item");
+        NodeList all = doc.getElementsByTagName("*");
+
+        // insertions
+        Element first = doc.createElement("item");
+        body.appendChild(first);
+        Element nested = doc.createElement("item");
+        first.appendChild(nested);
+        Element before = doc.createElement("item");
+        root.insertBefore(before, body);
+        Assertion.verify(items.getLength() == 3);
+        Assertion.verify(items.item(0) == before);
+        Assertion.verify(items.item(1) == first);
+        Assertion.verify(items.item(2) == nested);
+        Assertion.verify(items.item(3) == null);
+        Assertion.verify(bodyItems.getLength() == 2);
+        Assertion.verify(bodyItems.item(0) == first);
+        Assertion.verify(first.getElementsByTagName("item").item(0) == nested);
+        Assertion.verify(xItems.getLength() == 0);
+        Assertion.verify(all.getLength() == 5);
+
+        // fragments and namespaces
+        DocumentFragment fragment = doc.createDocumentFragment();
+        Element x1 = doc.createElementNS("urn:x", "x:item");
+        Element x2 = doc.createElementNS("urn:x", "y:item");
+        fragment.appendChild(x1);
+        fragment.appendChild(x2);
+        body.insertBefore(fragment, first);
+        Assertion.verify(xItems.getLength() == 2);
+        Assertion.verify(xItems.item(0) == x1);
+        Assertion.verify(doc.getElementsByTagName("x:item").getLength() == 1);
+        Assertion.verify(doc.getElementsByTagNameNS("*", "item").getLength() == 2);
+        Assertion.verify(bodyItems.getLength() == 2);
+
+        // renaming
+        x2.setPrefix("x");
+        Assertion.verify(doc.getElementsByTagName("x:item").getLength() == 2);
+        doc.renameNode(x1, "urn:y", "y:item");
+        Assertion.verify(xItems.getLength() == 1);
+        Assertion.verify(xItems.item(0) == x2);
+        Element renamed = (Element) doc.renameNode(first, null, "other");
+        Assertion.verify(items.getLength() == 2);
+        Assertion.verify(items.item(1) == nested);
+        Assertion.verify(bodyItems.getLength() == 1);
+
+        // moves and removals
+        root.appendChild(nested);
+        Assertion.verify(bodyItems.getLength() == 0);
+        Assertion.verify(items.item(1) == nested);
+        root.removeChild(body);
+        Assertion.verify(items.getLength() == 2);
+        Assertion.verify(all.getLength() == 3);
+        Assertion.verify(xItems.getLength() == 0);
+
+        // a subtree out of the document
+        body.appendChild(doc.createElement("item"));
+        Assertion.verify(bodyItems.getLength() == 1);
+        Assertion.verify(items.getLength() == 2);
+        renamed.appendChild(doc.createElement("item"));
+        Assertion.verify(renamed.getElementsByTagName("item").getLength() == 1);
+        root.appendChild(body);
+        Assertion.verify(items.getLength() == 4);
+        Assertion.verify(items.item(2) == bodyItems.item(0));
+
+        // turning indexing off
+        doc.setElementIndexing(false);
+        root.appendChild(doc.createElement("item"));
+        Assertion.verify(items.getLength() == 5);
+        Assertion.verify(compare(doc, "item", items));
+
+        System.out.println("done.");
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Compares a list with a new list for the same name. */
+    private static boolean compare(Document doc, String name, NodeList list) {
+        doc = (Document) doc.cloneNode(true);
+        NodeList copy = doc.getElementsByTagName(name);
+        if (copy.getLength() != list.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < list.getLength(); i++) {
+            if (!copy.item(i).isEqualNode(list.item(i))) {
+                return false;
+            }
+        }
+        return true;
+    } // compare(Document,String,NodeList):boolean
+
+} // class Test
@@ -101,6 +101,15 @@ public class Test {
             Assertion.verify(el2 == null);
         }
 
+        // a deep clone of the document keeps the identifiers
+        Document clone = (Document)doc.cloneNode(true);
+        el = clone.getElementById("two.worker");
+        Assertion.verify(el != null && el != doc.getElementById("two.worker"),
+                         "clone has its own 'two.worker'");
+        Assertion.verify(el.getOwnerDocument() == clone, "owned by clone");
+        Assertion.verify(el.getAttributeNode("id").isId(), "clone id is id");
+        Assertion.verify(clone.getElementById("id03") == el, "clone by 'id03'");
+
         // find default id attribute and check its value
         NodeList elementList = doc.getElementsByTagName("person");
         Element testEmployee = (Element)elementList.item(1);
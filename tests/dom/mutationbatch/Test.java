@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dom.mutationbatch;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.apache.xerces.dom.NodeImpl;
+import org.w3c.dom.Element;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+import dom.util.Assertion;
+
+/**
+ * A simple program to test the batching of DOMSubtreeModified events
+ * with DocumentImpl.startMutationBatch() and endMutationBatch(), the
+ * removal of listeners while an event is being dispatched, and the
+ * event listener methods kept for subclasses.
+ *
+ * @version $Id$
+ */
+public class Test {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) {
+
+        DocumentImpl doc = new DocumentImpl();
+        Element root = doc.createElement("root");
+        doc.appendChild(root);
+        Element a = doc.createElement("a");
+        Element b = doc.createElement("b");
+        root.appendChild(a);
+        root.appendChild(b);
+        Element detached = doc.createElement("detached");
+
+        final List targets = new ArrayList();
+        EventListener recorder = new EventListener() {
+            public void handleEvent(Event evt) {
+                targets.add(evt.getTarget());
+            }
+        };
+        ((EventTarget) doc).addEventListener("DOMSubtreeModified",
+                                             recorder, false);
+        ((EventTarget) detached).addEventListener("DOMSubtreeModified",
+                                                  recorder, false);
+
+        // without a batch, every mutation is reported
+        a.appendChild(doc.createElement("a1"));
+        b.setAttribute("x", "1");
+        Assertion.verify(targets.size() == 2);
+        Assertion.verify(targets.get(0) == a);
+        Assertion.verify(targets.get(1) == b);
+        targets.clear();
+
+        // in a batch, once per tree to the common ancestor
+        doc.startMutationBatch();
+        a.appendChild(doc.createElement("a2"));
+        doc.startMutationBatch();
+        b.appendChild(doc.createElement("b1"));
+        detached.appendChild(doc.createElement("d1"));
+        doc.endMutationBatch();
+        Assertion.verify(targets.isEmpty(), "held until outermost end");
+        a.getFirstChild().appendChild(doc.createTextNode("text"));
+        doc.endMutationBatch();
+        Assertion.verify(targets.size() == 2);
+        Assertion.verify(targets.get(0) == root, "common ancestor");
+        Assertion.verify(targets.get(1) == detached, "other tree");
+        targets.clear();
+
+        // a batch of mutations within one subtree
+        doc.startMutationBatch();
+        a.removeChild(a.getFirstChild());
+        a.appendChild(doc.createElement("a3"));
+        doc.endMutationBatch();
+        Assertion.verify(targets.size() == 1);
+        Assertion.verify(targets.get(0) == a);
+        targets.clear();
+
+        // an unbalanced end is ignored
+        doc.endMutationBatch();
+        b.removeAttribute("x");
+        Assertion.verify(targets.size() == 1);
+        Assertion.verify(targets.get(0) == b);
+        targets.clear();
+
+        // a listener removed by an earlier listener is not called
+        final int[] calls = new int[2];
+        final EventTarget target = (EventTarget) b;
+        final EventListener second = new EventListener() {
+            public void handleEvent(Event evt) {
+                calls[1]++;
+            }
+        };
+        EventListener first = new EventListener() {
+            public void handleEvent(Event evt) {
+                calls[0]++;
+                target.removeEventListener("DOMNodeInserted", second, false);
+            }
+        };
+        target.addEventListener("DOMNodeInserted", first, false);
+        target.addEventListener("DOMNodeInserted", second, false);
+        b.appendChild(doc.createElement("b2"));
+        Assertion.verify(calls[0] == 1 && calls[1] == 0);
+        target.removeEventListener("DOMNodeInserted", first, false);
+        b.appendChild(doc.createElement("b3"));
+        Assertion.verify(calls[0] == 1 && calls[1] == 0);
+        targets.clear();
+
+        // listeners moved with the protected Vector methods
+        SubclassDocument sub = new SubclassDocument();
+        Element c = sub.createElement("c");
+        Element d = sub.createElement("d");
+        sub.appendChild(c);
+        c.appendChild(d);
+        ((EventTarget) c).addEventListener("DOMAttrModified",
+                                           recorder, false);
+        Vector listeners = sub.getListeners((NodeImpl) c);
+        Assertion.verify(listeners != null && listeners.size() == 1);
+        sub.setListeners((NodeImpl) c, null);
+        sub.setListeners((NodeImpl) d, listeners);
+        c.setAttribute("x", "1");
+        d.setAttribute("x", "1");
+        Assertion.verify(targets.size() == 1);
+        Assertion.verify(targets.get(0) == d, "moved to d");
+        targets.clear();
+
+        // listeners put directly into the protected Hashtable
+        sub.setListeners((NodeImpl) d, null);
+        sub.putEventListeners((NodeImpl) c, listeners);
+        c.setAttribute("x", "2");
+        Assertion.verify(targets.size() == 1);
+        Assertion.verify(targets.get(0) == c, "put on c");
+        targets.clear();
+
+        System.out.println("done.");
+    } // main(String[])
+
+    //
+    // Classes
+    //
+
+    /** Document using the event listener table of DocumentImpl. */
+    static class SubclassDocument
+        extends DocumentImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Returns the listeners of a node. */
+        Vector getListeners(NodeImpl node) {
+            return getEventListeners(node);
+        } // getListeners(NodeImpl):Vector
+
+        /** Stores the listeners of a node. */
+        void setListeners(NodeImpl node, Vector listeners) {
+            setEventListeners(node, listeners);
+        } // setListeners(NodeImpl,Vector)
+
+        /** Puts listeners directly into the event listener table. */
+        void putEventListeners(NodeImpl node, Vector listeners) {
+            if (eventListeners == null) {
+                eventListeners = new Hashtable();
+            }
+            eventListeners.put(node, listeners);
+            mutationEvents = true;
+        } // putEventListeners(NodeImpl,Vector)
+
+    } // class SubclassDocument
+
+} // class Test
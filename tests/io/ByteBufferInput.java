@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.xerces.parsers.DOMParser;
+import org.apache.xerces.util.ByteBufferInputSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * This program checks that documents read from a ByteBufferInputSource
+ * give the same tree and input encoding as the same bytes read from a
+ * byte stream: with and without a byte order mark, with the encoding
+ * given by the declaration, autodetected or set on the input source,
+ * from a mapped file, from a buffer whose position is not zero and
+ * when the same input source is parsed more than once.
+ *
+ * <p>Usage: java io.ByteBufferInput</p>
+ *
+ * @version $Id$
+ */
+public class ByteBufferInput {
+
+    //
+    // Constants
+    //
+
+    /** Feature identifier: defer node expansion. */
+    private static final String DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    /** Document content, after the XML declaration. */
+    private static final String CONTENT =
+        "<!DOCTYPE r [<!ENTITY e 'caf\u00E9'>]>" +
+        "<r a='\u00E0 la'>&e; cr\u00E8me<?pi \u00FC?><!--\u00E9t\u00E9-->" +
+        "<![CDATA[<\u00E7>]]><s>\u00B5</s></r>";
+
+    /** Byte order marks. */
+    private static final byte[] NO_BOM = {};
+    private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    private static final byte[] UTF16BE_BOM = { (byte) 0xFE, (byte) 0xFF };
+    private static final byte[] UTF16LE_BOM = { (byte) 0xFF, (byte) 0xFE };
+
+    /**
+     * Inputs: a description, the byte order mark, the Java encoding of
+     * the bytes, the XML declaration and the encoding to set on the
+     * input source.
+     */
+    private static final Object[][] INPUTS = {
+        { "UTF-8, no declaration", NO_BOM, "UTF-8", "", null },
+        { "UTF-8, BOM", UTF8_BOM, "UTF-8", "<?xml version='1.0'?>", null },
+        { "UTF-8, BOM and declaration", UTF8_BOM, "UTF-8", "<?xml version='1.0' encoding='UTF-8'?>", null },
+        { "UTF-16BE, BOM", UTF16BE_BOM, "UTF-16BE", "<?xml version='1.0' encoding='UTF-16'?>", null },
+        { "UTF-16LE, BOM", UTF16LE_BOM, "UTF-16LE", "<?xml version='1.0' encoding='UTF-16'?>", null },
+        { "UTF-16BE, no BOM", NO_BOM, "UTF-16BE", "<?xml version='1.0' encoding='UTF-16BE'?>", null },
+        { "UTF-16LE, no BOM", NO_BOM, "UTF-16LE", "<?xml version='1.0' encoding='UTF-16LE'?>", null },
+        { "ISO-8859-1, declaration", NO_BOM, "ISO-8859-1", "<?xml version='1.0' encoding='ISO-8859-1'?>", null },
+        { "ISO-8859-1, set on the source", NO_BOM, "ISO-8859-1", "", "ISO-8859-1" },
+        { "EBCDIC, declaration", NO_BOM, "Cp037", "<?xml version='1.0' encoding='ebcdic-cp-us'?>", null },
+    };
+
+    /** Bytes put before the document in the buffers whose position is not zero. */
+    private static final int PADDING = 7;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        DOMParser parser = new DOMParser();
+        parser.setFeature(DEFER_NODE_EXPANSION, false);
+        File file = File.createTempFile("bytebuffer", ".xml");
+        file.deleteOnExit();
+
+        for (int i = 0; i < INPUTS.length; ++i) {
+            String name = (String) INPUTS[i][0];
+            String encoding = (String) INPUTS[i][4];
+            byte[] bytes = toBytes((byte[]) INPUTS[i][1], (String) INPUTS[i][3] + CONTENT,
+                    (String) INPUTS[i][2]);
+            String expected = parse(parser, new XMLInputSource(null, "stream.xml", null,
+                    new ByteArrayInputStream(bytes), encoding));
+
+            // heap buffer; the same input source is parsed twice
+            XMLInputSource source = new ByteBufferInputSource(null, "buffer.xml", null,
+                    ByteBuffer.wrap(bytes), encoding);
+            check(name + ", heap buffer", expected, parse(parser, source));
+            check(name + ", heap buffer reparsed", expected, parse(parser, source));
+
+            // direct buffer with bytes before and after the document
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 2 * PADDING);
+            for (int j = 0; j < PADDING; ++j) {
+                buffer.put((byte) '?');
+            }
+            buffer.put(bytes);
+            buffer.position(PADDING).limit(PADDING + bytes.length);
+            ByteBuffer slice = buffer.duplicate();
+            source = new ByteBufferInputSource(null, "direct.xml", null, buffer, encoding);
+            check(name + ", non-zero position", expected, parse(parser, source));
+            check(name + ", position unchanged", "" + PADDING + '/' + (PADDING + bytes.length),
+                    "" + buffer.position() + '/' + buffer.limit());
+            check(name + ", non-zero position reparsed", expected, parse(parser, source));
+            check(name + ", buffer unchanged", "true", "" + slice.equals(buffer));
+
+            // mapped file
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(bytes);
+            out.close();
+            FileInputStream in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            source = new ByteBufferInputSource(null, file.toURI().toString(), null, channel, encoding);
+            in.close();
+            check(name + ", mapped file", expected, parse(parser, source));
+        }
+
+        // an empty buffer is not a document
+        try {
+            parse(parser, new ByteBufferInputSource(null, "empty.xml", null, ByteBuffer.allocate(0), null));
+            System.err.println("FAIL: empty buffer parsed");
+        }
+        catch (Exception e) {
+            System.err.println("PASS: empty buffer: " + e.getMessage());
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the bytes of the document. */
+    private static byte[] toBytes(byte[] bom, String text, String encoding) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bom);
+        out.write(text.getBytes(encoding));
+        return out.toByteArray();
+    } // toBytes(byte[],String,String):byte[]
+
+    /** Parses the input source and returns a description of the document. */
+    private static String parse(DOMParser parser, XMLInputSource source) throws Exception {
+        parser.parse(source);
+        Document document = parser.getDocument();
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(document.getInputEncoding()).append(' ')
+            .append(document.getXmlEncoding()).append(' ');
+        append(buffer, document.getDocumentElement());
+        return buffer.toString();
+    } // parse(DOMParser,XMLInputSource):String
+
+    /** Appends a description of the node and its descendants. */
+    private static void append(StringBuffer buffer, Node node) {
+        buffer.append('(').append(node.getNodeType()).append(node.getNodeName());
+        if (node.getNodeValue() != null) {
+            buffer.append('=').append(node.getNodeValue());
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                append(buffer, attributes.item(i));
+            }
+        }
+        if (node.getNodeType() != Node.ATTRIBUTE_NODE) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                append(buffer, child);
+            }
+        }
+        buffer.append(')');
+    } // append(StringBuffer,Node)
+
+    /** Reports whether the actual result is the expected one. */
+    private static void check(String name, String expected, String actual) {
+        if (expected.equals(actual)) {
+            System.err.println("PASS: " + name);
+        }
+        else {
+            System.err.println("FAIL: " + name + "\n  expected: " + expected + "\n  actual:   " + actual);
+        }
+    } // check(String,String,String)
+
+} // class ByteBufferInput
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+
+import org.apache.xml.serialize.ByteSinkWriter;
+
+/**
+ * This program tests the byte sink writer of the serializer for the
+ * UTF-8, US-ASCII and ISO-8859-1 encodings, comparing its output with
+ * the output of the Java writers. The text written contains every
+ * character of the BMP, supplementary characters written as surrogate
+ * pairs, and unpaired surrogates.
+ *
+ * @version $Id$
+ */
+public class ByteSink {
+
+    //
+    // Constants
+    //
+
+    /** Java names of the encodings tested. */
+    private static final String[] ENCODINGS = { "UTF8", "ASCII", "ISO8859_1" };
+
+    /** Size of the blocks written. */
+    private static final int BLOCK_WRITE_SIZE = 2047;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        String text = createText();
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            String encoding = ENCODINGS[i];
+            System.err.println("#");
+            System.err.println("# Testing byte sink writer for "+encoding);
+            System.err.println("#");
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Writer writer = new OutputStreamWriter(expected, encoding);
+            writer.write(text);
+            writer.close();
+            byte[] bytes = expected.toByteArray();
+
+            for (int mode = 0; mode < 3; mode++) {
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                int sinkEncoding = ByteSinkWriter.getEncoding(encoding);
+                writer = mode == 2
+                       ? new ByteSinkWriter(Channels.newChannel(actual), sinkEncoding)
+                       : new ByteSinkWriter(actual, sinkEncoding);
+                long time = mode == 0
+                          ? testCharByChar(writer, text)
+                          : testCharArray(writer, text, BLOCK_WRITE_SIZE);
+                writer.close();
+                if (java.util.Arrays.equals(bytes, actual.toByteArray())) {
+                    System.err.println("PASS ("+time+" ms)");
+                }
+                else {
+                    System.err.println("FAIL: output differs from the Java writer");
+                }
+            }
+        }
+
+    } // main(String[])
+
+    //
+    // Public static methods
+    //
+
+    /** This function writes the text character by character. */
+    public static long testCharByChar(Writer writer, String text) throws Exception {
+
+        long before = System.currentTimeMillis();
+        System.err.println("# Testing character by character");
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            writer.write(text.charAt(i));
+        }
+        writer.flush();
+        long after = System.currentTimeMillis();
+        return after - before;
+
+    } // testCharByChar(Writer,String):long
+
+    /**
+     * This function writes the text by blocks of the specified size,
+     * alternating strings and character arrays.
+     */
+    public static long testCharArray(Writer writer, String text, int size) throws Exception {
+
+        long before = System.currentTimeMillis();
+        System.err.println("# Testing character array of size "+size);
+        char[] ch = text.toCharArray();
+        boolean string = false;
+        for (int offset = 0; offset < ch.length; offset += size) {
+            int count = Math.min(size, ch.length - offset);
+            if (string) {
+                writer.write(text, offset, count);
+            }
+            else {
+                writer.write(ch, offset, count);
+            }
+            string = !string;
+        }
+        writer.flush();
+        long after = System.currentTimeMillis();
+        return after - before;
+
+    } // testCharArray(Writer,String,int):long
+
+    //
+    // Private static methods
+    //
+
+    /** Creates the text written by the tests. */
+    private static String createText() {
+
+        StringBuffer text = new StringBuffer();
+        for (int c = 0; c < 0xD800; c++) {
+            text.append((char) c);
+        }
+        for (int c = 0xE000; c < 0x10000; c++) {
+            text.append((char) c);
+        }
+        for (int c = 0x10000; c < 0x110000; c += 0x3F) {
+            text.append((char) (0xD800 + ((c - 0x10000) >> 10)));
+            text.append((char) (0xDC00 + ((c - 0x10000) & 0x3FF)));
+        }
+        // unpaired surrogates
+        text.append((char) 0xDC00).append('a');
+        text.append((char) 0xD800).append('b');
+        text.append((char) 0xD800).append((char) 0xD800).append((char) 0xDC00);
+        return text.toString();
+
+    } // createText():String
+
+} // class ByteSink
@@ -0,0 +1,546 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.util.XMLAttributesImpl;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xml.serialize.XMLDocumentSerializer;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.ext.Locator2;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This program tests the streaming XNI document serializer. The test
+ * documents, and generated documents with markup characters, namespaces,
+ * CDATA sections, supplementary characters and XML 1.1 control
+ * characters, are serialized in UTF-8, US-ASCII, ISO-8859-1, UTF-16 and
+ * EBCDIC, to output streams, to channels and to a writer, and the SAX
+ * events of the output parsed again are compared with those of the
+ * original. Character data is also sent to the serializer split at
+ * every position, so that surrogate pairs and the sequence "]]>" in
+ * CDATA sections are split between calls.
+ *
+ * <p>Must be run from the root of the source tree.</p>
+ *
+ * @version $Id$
+ */
+public class DocumentSerializer {
+
+    //
+    // Constants
+    //
+
+    /** Output encodings, null standing for a writer. */
+    private static final String[] ENCODINGS = {
+        "UTF-8", "US-ASCII", "ISO-8859-1", "UTF-16", "IBM037", null
+    };
+
+    /** Character data split between calls. */
+    private static final String[] TEXTS = {
+        "a\ud800\udc00b\udbff\udfff\ud834\udd1e",
+        "x]]>y]]]>z]>]]",
+        "]]>",
+        "<&>\"' \u00e9\u03b1\u4e2d\u20ac\t\n",
+        "\ud800\udc00]]>\ud800\udc00",
+    };
+
+    //
+    // Data
+    //
+
+    /** Number of failed checks. */
+    private static int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        ArrayList documents = new ArrayList();
+        findDocuments(new File("tests"), documents);
+        File dir = generateDocuments(documents);
+        XMLDocumentSerializer serializer = new XMLDocumentSerializer();
+        checkDocuments(serializer, documents);
+        checkSplits(serializer, "1.0");
+        checkSplits(serializer, "1.1");
+        checkUnencodable(serializer);
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+        if (fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Serializes the documents which are well-formed in every encoding
+     * and compares the events of the output with those of the document.
+     */
+    private static void checkDocuments(XMLDocumentSerializer serializer, ArrayList documents)
+        throws Exception {
+        int count = 0;
+        for (int i = 0; i < documents.size(); ++i) {
+            String systemId = ((File) documents.get(i)).toURI().toString();
+            EventDump original = new EventDump();
+            try {
+                original.parse(new InputSource(systemId));
+            }
+            catch (Exception e) {
+                // the serializer is only given well-formed documents
+                continue;
+            }
+            ++count;
+            String expected = original.toString();
+            for (int j = 0; j < ENCODINGS.length; ++j) {
+                for (int channel = 0; channel < (ENCODINGS[j] != null ? 2 : 1); ++channel) {
+                    String name = systemId + " " + (ENCODINGS[j] != null ? ENCODINGS[j] : "writer") +
+                        (channel == 1 ? " channel" : "");
+                    Object output = setOutput(serializer, ENCODINGS[j], channel == 1);
+                    String actual;
+                    EventDump dump = new EventDump();
+                    try {
+                        XML11Configuration config = newConfiguration(serializer);
+                        config.parse(new XMLInputSource(null, systemId, null));
+                        dump.parse(getInput(output, systemId));
+                        actual = dump.toString();
+                    }
+                    catch (Exception e) {
+                        actual = "[Exception] " + e;
+                    }
+                    if (!expected.equals(actual)) {
+                        report(name, expected, actual);
+                    }
+                    else if (!equals(ENCODINGS[j], dump.fEncoding) ||
+                             !original.fVersion.equals(dump.fVersion)) {
+                        check(name + " declaration", false, dump.fVersion + " " + dump.fEncoding);
+                    }
+                }
+            }
+        }
+        check(count + " documents", fFailures == 0, "");
+    } // checkDocuments(XMLDocumentSerializer,ArrayList)
+
+    /**
+     * Sends character data split at every position to the serializer,
+     * as text and as the content of CDATA sections, and checks that the
+     * character data parsed from the output is the same.
+     */
+    private static void checkSplits(XMLDocumentSerializer serializer, String version)
+        throws Exception {
+        int failures = fFailures;
+        for (int t = 0; t < TEXTS.length; ++t) {
+            String text = TEXTS[t];
+            if (version.equals("1.1")) {
+                text += "\u0085\u2028\u0001\u007F";
+            }
+            for (int j = 0; j < ENCODINGS.length; ++j) {
+                // splits at every position, then one character per call
+                for (int split = 0; split <= text.length() + 1; ++split) {
+                    Object output = setOutput(serializer, ENCODINGS[j], false);
+                    serializer.startDocument(null, null, null, null);
+                    serializer.xmlDecl(version, null, null, null);
+                    QName root = new QName(null, "root", "root", null);
+                    QName element = new QName(null, "e", "e", null);
+                    XMLAttributesImpl attributes = new XMLAttributesImpl();
+                    serializer.startElement(root, attributes, null);
+                    for (int cdata = 0; cdata < 2; ++cdata) {
+                        serializer.startElement(element, attributes, null);
+                        if (cdata == 1) {
+                            serializer.startCDATA(null);
+                        }
+                        if (split <= text.length()) {
+                            characters(serializer, text, 0, split);
+                            characters(serializer, text, split, text.length());
+                        }
+                        else {
+                            for (int k = 0; k < text.length(); ++k) {
+                                characters(serializer, text, k, k + 1);
+                            }
+                        }
+                        if (cdata == 1) {
+                            serializer.endCDATA(null);
+                        }
+                        serializer.endElement(element, null);
+                    }
+                    serializer.endElement(root, null);
+                    serializer.endDocument(null);
+
+                    EventDump dump = new EventDump();
+                    String actual;
+                    try {
+                        dump.parse(getInput(output, null));
+                        actual = dump.toString();
+                    }
+                    catch (SAXException e) {
+                        actual = "[Exception] " + e;
+                    }
+                    String expected = "<root {}root>\n<e {}e>\n" + escape(text) + "\n</e>\n<e {}e>\n" + escape(text) +
+                        "\n</e>\n</root>\n";
+                    if (!expected.equals(actual)) {
+                        report("XML " + version + " " + (ENCODINGS[j] != null ? ENCODINGS[j] : "writer") +
+                            " text " + t + " split at " + (split <= text.length() ? String.valueOf(split) : "every character"),
+                            expected, actual + output(output));
+                    }
+                }
+            }
+        }
+        check("XML " + version + " character data split between calls", fFailures == failures, "");
+    } // checkSplits(XMLDocumentSerializer,String)
+
+    /**
+     * Checks that the characters which cannot be represented in the
+     * output encoding, or which would not survive the next parse, are
+     * written as character references, leaving the CDATA sections which
+     * hold them.
+     */
+    private static void checkUnencodable(XMLDocumentSerializer serializer) throws Exception {
+        String[] documents = {
+            "<?xml version='1.0'?><r a='\u00e9\u4e2d\ud800\udc00&#9;&#10;&#13;'>\u00e9<![CDATA[\u4e2d]]></r>",
+            "<?xml version='1.1'?><r a='&#x85;&#x2028;&#x1;'>&#x85;&#x2028;&#x1;&#x7F;</r>",
+        };
+        String[] encodings = { "US-ASCII", "UTF-8" };
+        String[] outputs = {
+            "<r a=\"&#xE9;&#x4E2D;&#x10000;&#x9;&#xA;&#xD;\">&#xE9;<![CDATA[]]>&#x4E2D;<![CDATA[]]></r>",
+            "<r a=\"&#x85;&#x2028;&#x1;\">&#x85;&#x2028;&#x1;&#x7F;</r>",
+        };
+        for (int i = 0; i < documents.length; ++i) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            serializer.setOutput(bytes, encodings[i]);
+            XML11Configuration config = newConfiguration(serializer);
+            config.parse(new XMLInputSource(null, null, null, new StringReader(documents[i]), null));
+            String output = new String(bytes.toByteArray(), encodings[i]);
+            check("escaped in " + encodings[i] + ": " + escape(outputs[i]),
+                output.indexOf(outputs[i]) != -1, escape(output));
+        }
+    } // checkUnencodable(XMLDocumentSerializer)
+
+    /** Returns a parser configuration which sends its events to the serializer. */
+    private static XML11Configuration newConfiguration(XMLDocumentSerializer serializer) {
+        XML11Configuration config = new XML11Configuration();
+        // the components are only configured once a setting has changed
+        config.setFeature("http://xml.org/sax/features/namespaces", true);
+        config.setDocumentHandler(serializer);
+        return config;
+    } // newConfiguration(XMLDocumentSerializer):XML11Configuration
+
+    /**
+     * Sends a part of the text to the serializer, from a buffer in which
+     * it is surrounded by characters which must not be written.
+     */
+    private static void characters(XMLDocumentSerializer serializer, String text, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        String buffer = "]]" + text.substring(start, end) + "]]>";
+        serializer.characters(new XMLString(buffer.toCharArray(), 2, end - start), null);
+    } // characters(XMLDocumentSerializer,String,int,int)
+
+    /** Sets the output of the serializer and returns it. */
+    private static Object setOutput(XMLDocumentSerializer serializer, String encoding, boolean channel)
+        throws IOException {
+        if (encoding == null) {
+            StringWriter writer = new StringWriter();
+            serializer.setOutput(writer);
+            return writer;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (channel) {
+            serializer.setOutput(Channels.newChannel(bytes), encoding);
+        }
+        else {
+            serializer.setOutput(bytes, encoding);
+        }
+        return bytes;
+    } // setOutput(XMLDocumentSerializer,String,boolean):Object
+
+    /** Returns the input source of the output of the serializer. */
+    private static InputSource getInput(Object output, String systemId) {
+        InputSource input = new InputSource(systemId);
+        if (output instanceof StringWriter) {
+            input.setCharacterStream(new StringReader(output.toString()));
+        }
+        else {
+            input.setByteStream(new ByteArrayInputStream(((ByteArrayOutputStream) output).toByteArray()));
+        }
+        return input;
+    } // getInput(Object,String):InputSource
+
+    /** Returns the output of the serializer, decoded as Latin-1 if it is bytes. */
+    private static String output(Object output) throws IOException {
+        if (output instanceof StringWriter) {
+            return "\n  output:   " + escape(output.toString());
+        }
+        return "\n  output:   " + escape(((ByteArrayOutputStream) output).toString("ISO-8859-1"));
+    } // output(Object):String
+
+    private static void report(String name, String expected, String actual) {
+        int i = 0;
+        while (i < expected.length() && i < actual.length() && expected.charAt(i) == actual.charAt(i)) {
+            ++i;
+        }
+        int start = Math.max(0, i - 100);
+        check(name, false, "");
+        System.err.println("  expected: " + expected.substring(start, Math.min(expected.length(), i + 100)));
+        System.err.println("  actual:   " + actual.substring(start, Math.min(actual.length(), i + 300)));
+    } // report(String,String,String)
+
+    private static void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + (result.length() > 0 ? ": " + result : ""));
+    } // check(String,boolean,String)
+
+    private static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    } // equals(String,String):boolean
+
+    /** Escapes the characters which are not printable ASCII. */
+    private static String escape(String s) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c < 0x7F) {
+                buffer.append(c);
+            }
+            else {
+                String hex = Integer.toHexString(c);
+                buffer.append("\\u").append("0000".substring(hex.length())).append(hex);
+            }
+        }
+        return buffer.toString();
+    } // escape(String):String
+
+    /** Adds the XML documents of a directory and its subdirectories. */
+    private static void findDocuments(File dir, ArrayList documents) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; ++i) {
+            if (files[i].isDirectory()) {
+                findDocuments(files[i], documents);
+            }
+            else if (files[i].getName().endsWith(".xml")) {
+                documents.add(files[i]);
+            }
+        }
+    } // findDocuments(File,ArrayList)
+
+    /** Generates documents and adds them to the documents. */
+    private static File generateDocuments(ArrayList documents) throws IOException {
+        File dir = File.createTempFile("serializer", "");
+        dir.delete();
+        dir.mkdirs();
+        write(dir, "external.dtd", "UTF-8",
+            "<!ATTLIST item kind (a|b) 'a'>\n<!ENTITY external 'external &amp; entity'>");
+        documents.add(write(dir, "markup.xml", "UTF-8",
+            "<?xml version='1.0' encoding='UTF-8' standalone='no'?>\n" +
+            "<!DOCTYPE root SYSTEM 'external.dtd'>\n" +
+            "<?pi before root?>\n<!-- comment before root -->\n" +
+            "<root a='&lt;&amp;&gt;&quot;&apos; ]]&gt;' b=\"'\" c='&#9;&#10;&#13; x  y'>" +
+            "text &lt;&amp;&gt; ]]&gt; ]] &gt; \"' &#13;\r\n\t" +
+            "<item>&external;</item><item kind='b'/>" +
+            "<?pi inside?><!-- comment inside --><empty/>" +
+            "\u00e9\u00ff\u0100\u03b1\u4e2d\u20ac\ud800\udc00\udbff\udfff" +
+            "<e a='\u00e9\u4e2d\ud800\udc00'/></root>\n" +
+            "<!-- comment after root --><?pi after root?>"));
+        documents.add(write(dir, "cdata.xml", "UTF-8",
+            "<root><![CDATA[<&> \"']]><![CDATA[]]]]><![CDATA[>]]>" +
+            "<![CDATA[x]]]]><![CDATA[>y \u00e9\u00ff\u0100\u4e2d\ud800\udc00 ]]]]]><![CDATA[]]]]>" +
+            "<![CDATA[]]><![CDATA[\u00e9]]><![CDATA[\t\r\n]]></root>"));
+        documents.add(write(dir, "namespaces.xml", "UTF-8",
+            "<a:root xmlns:a='urn:a' xmlns='urn:default' a:attr='1' attr='2' xml:lang='en'>" +
+            "<child xmlns=''><a:child a:x='y'/></child><b:x xmlns:b='urn:b' b:y=''>" +
+            "<b:y xmlns:a='urn:b'><a:z/></b:y></b:x></a:root>"));
+        documents.add(write(dir, "standalone.xml", "ISO-8859-1",
+            "<?xml version='1.0' encoding='ISO-8859-1' standalone='yes'?>" +
+            "<!DOCTYPE root [<!ATTLIST root d CDATA 'default'><!ENTITY e '<x>\u00e9</x>'>]>" +
+            "<root>&e;&#x10000;&#xFFFD;</root>"));
+        documents.add(write(dir, "xml11.xml", "UTF-8",
+            "<?xml version='1.1' encoding='UTF-8'?>" +
+            "<root a='&#x1;&#x85;&#x2028;&#x7F;&#x9F;' b='\u00e9'>&#x1;&#x85;&#x2028;&#x7F;&#x9F;\u00e9" +
+            "<![CDATA[\u00e9\u4e2d\ud800\udc00]]></root>"));
+        documents.add(write(dir, "empty.xml", "UTF-16", "<root/>"));
+        return dir;
+    } // generateDocuments(ArrayList):File
+
+    private static File write(File dir, String name, String encoding, String contents) throws IOException {
+        File file = new File(dir, name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), encoding);
+        out.write(contents);
+        out.close();
+        return file;
+    } // write(File,String,String,String):File
+
+    //
+    // Classes
+    //
+
+    /**
+     * Dumps the SAX events of a document, character data being joined
+     * across calls and CDATA section boundaries.
+     */
+    static class EventDump extends DefaultHandler implements LexicalHandler {
+
+        /** Dump of the events. */
+        private final StringBuffer fDump = new StringBuffer();
+
+        /** Character data not yet dumped. */
+        private final StringBuffer fText = new StringBuffer();
+
+        /** Document locator. */
+        private Locator fLocator;
+
+        /** XML version of the document. */
+        String fVersion;
+
+        /** Encoding of the document, as declared. */
+        String fEncoding;
+
+        /** Parses the document, the errors being fatal. */
+        public void parse(InputSource input) throws SAXException, IOException {
+            SAXParser parser = new SAXParser();
+            parser.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+            parser.setContentHandler(this);
+            parser.setErrorHandler(this);
+            parser.setProperty("http://xml.org/sax/properties/lexical-handler", this);
+            parser.parse(input);
+        } // parse(InputSource)
+
+        public String toString() {
+            return fDump.toString();
+        } // toString():String
+
+        public void setDocumentLocator(Locator locator) {
+            fLocator = locator;
+        }
+
+        public void startDocument() {
+            fVersion = ((Locator2) fLocator).getXMLVersion();
+            fEncoding = ((Locator2) fLocator).getEncoding();
+        }
+
+        public void startPrefixMapping(String prefix, String uri) {
+            flushText();
+            fDump.append("xmlns:").append(prefix).append('=').append(uri).append('\n');
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            flushText();
+            // the encoding is known once the XML declaration is read
+            fEncoding = ((Locator2) fLocator).getEncoding();
+            fDump.append('<').append(qName).append(" {").append(uri).append('}').append(localName);
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                fDump.append(' ').append(attributes.getQName(i)).append(" {").append(attributes.getURI(i))
+                    .append('}').append(attributes.getLocalName(i)).append("=\"")
+                    .append(escape(attributes.getValue(i))).append('"');
+            }
+            fDump.append(">\n");
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            flushText();
+            fDump.append("</").append(qName).append(">\n");
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            fText.append(ch, start, length);
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            fText.append(ch, start, length);
+        }
+
+        public void processingInstruction(String target, String data) {
+            flushText();
+            fDump.append("<?").append(target).append(' ').append(escape(data)).append("?>\n");
+        }
+
+        public void comment(char[] ch, int start, int length) {
+            flushText();
+            fDump.append("<!--").append(escape(new String(ch, start, length))).append("-->\n");
+        }
+
+        public void startDTD(String name, String publicId, String systemId) {
+            // the serializer leaves out the internal subset
+            if (systemId != null) {
+                fDump.append("<!DOCTYPE ").append(name).append(' ').append(publicId).append(">\n");
+            }
+        }
+
+        public void endDTD() {
+        }
+
+        public void startEntity(String name) {
+        }
+
+        public void endEntity(String name) {
+        }
+
+        public void startCDATA() {
+        }
+
+        public void endCDATA() {
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        private void flushText() {
+            if (fText.length() > 0) {
+                fDump.append(escape(fText.toString())).append('\n');
+                fText.setLength(0);
+            }
+        }
+
+    } // class EventDump
+
+} // class DocumentSerializer
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.apache.xerces.impl.io.UTF8Reader;
+
+/**
+ * This program measures the throughput, in MB of UTF-8 input per
+ * second, of the custom UTF-8 reader and of the Java UTF-8 reader
+ * for pure ASCII, mostly ASCII and CJK text, after checking that
+ * both readers decode the input to the same characters.
+ *
+ * <p>Usage: java io.UTF8Throughput [megabytes [iterations]]</p>
+ *
+ * @version $Id$
+ */
+public class UTF8Throughput {
+
+    //
+    // Constants
+    //
+
+    /** Size of the character arrays read into. */
+    private static final int BLOCK_READ_SIZE = 8192;
+
+    /** Sample text of each input. */
+    private static final String[][] INPUTS = {
+        { "ASCII", "<item id=\"42\">The quick brown fox jumps over the lazy dog.</item>\n" },
+        { "mixed", "<item id=\"42\">Caf\u00E9 cr\u00E8me, na\u00EFve fa\u00E7ade \u2013 \u00FCber-cool.</item>\n" },
+        { "CJK", "<item>\u6771\u4EAC\u90FD\u5343\u4EE3\u7530\u533A\u4E38\u306E\u5185\u3002\uD55C\uAD6D\uC5B4</item>\n" },
+    };
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int megabytes = argv.length > 0 ? Integer.parseInt(argv[0]) : 16;
+        int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 10;
+
+        for (int i = 0; i < INPUTS.length; ++i) {
+            byte[] bytes = createInput(INPUTS[i][1], megabytes << 20);
+            String expected = decode(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"));
+            String actual = decode(new UTF8Reader(new ByteArrayInputStream(bytes)));
+            System.err.println((expected.equals(actual) ? "PASS: " : "FAIL: ") + INPUTS[i][0]);
+            long custom = Long.MAX_VALUE;
+            long java = Long.MAX_VALUE;
+            for (int j = 0; j < iterations; ++j) {
+                custom = Math.min(custom, time(new UTF8Reader(new ByteArrayInputStream(bytes))));
+                java = Math.min(java, time(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8")));
+            }
+            System.err.println("  custom UTF-8 reader: " + throughput(bytes.length, custom) + " MB/s");
+            System.err.println("  Java UTF-8 reader:   " + throughput(bytes.length, java) + " MB/s");
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns UTF-8 input of about the specified size, repeating the sample text. */
+    private static byte[] createInput(String sample, int size) throws Exception {
+        byte[] sampleBytes = sample.getBytes("UTF-8");
+        byte[] bytes = new byte[size - size % sampleBytes.length];
+        for (int i = 0; i < bytes.length; i += sampleBytes.length) {
+            System.arraycopy(sampleBytes, 0, bytes, i, sampleBytes.length);
+        }
+        return bytes;
+    } // createInput(String,int):byte[]
+
+    /** Reads all of the characters of the reader. */
+    private static String decode(Reader reader) throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        char[] ch = new char[BLOCK_READ_SIZE];
+        int count;
+        while ((count = reader.read(ch, 0, ch.length)) != -1) {
+            buffer.append(ch, 0, count);
+        }
+        reader.close();
+        return buffer.toString();
+    } // decode(Reader):String
+
+    /** Returns the time, in nanoseconds, taken to read all of the characters of the reader. */
+    private static long time(Reader reader) throws Exception {
+        char[] ch = new char[BLOCK_READ_SIZE];
+        long before = System.nanoTime();
+        while (reader.read(ch, 0, ch.length) != -1) {}
+        long after = System.nanoTime();
+        reader.close();
+        return after - before;
+    } // time(Reader):long
+
+    /** Returns the throughput in MB/s. */
+    private static long throughput(int bytes, long nanos) {
+        return Math.round((bytes / (double) (1 << 20)) / (nanos / 1e9));
+    } // throughput(int,long):long
+
+} // class UTF8Throughput
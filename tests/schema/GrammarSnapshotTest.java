@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SchemaGrammarSnapshot;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.XSModelImpl;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.XSAnnotation;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Writes the grammar of a schema to a snapshot, reads it back into
+ * another grammar pool, and checks that documents validated with the
+ * grammars of both pools are reported the same errors, and that the DFA
+ * content models were read rather than built again. Then compares
+ * the time taken to load the schema and to read the snapshot.
+ *
+ * <p>Usage: java schema.GrammarSnapshotTest [repetitions]</p>
+ *
+ * @version $Id$
+ */
+public class GrammarSnapshotTest {
+
+    /** Grammar pool property. */
+    private static final String GRAMMAR_POOL =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    /**
+     * Schema with identity constraints, facets, a substitution group,
+     * a wildcard, an all group, list and union types, default values,
+     * annotations, groups, a notation, an imported namespace, and
+     * content models with and without counting states.
+     */
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:s='urn:snapshot' xmlns:t='urn:imported'" +
+        "           targetNamespace='urn:snapshot' elementFormDefault='qualified'>" +
+        " <xs:annotation><xs:documentation>Snapshot test</xs:documentation></xs:annotation>" +
+        " <xs:import namespace='urn:imported'/>" +
+        " <xs:element name='root'>" +
+        "  <xs:complexType>" +
+        "   <xs:sequence>" +
+        "    <xs:element ref='s:head' maxOccurs='unbounded'/>" +
+        "    <xs:element name='item' type='s:item' maxOccurs='unbounded'/>" +
+        "    <xs:element name='ref' minOccurs='0' maxOccurs='unbounded'>" +
+        "     <xs:complexType><xs:attribute name='to' type='xs:string'/></xs:complexType>" +
+        "    </xs:element>" +
+        "    <xs:group ref='s:extra'/>" +
+        "    <xs:element name='props' minOccurs='0'>" +
+        "     <xs:complexType>" +
+        "      <xs:all>" +
+        "       <xs:element name='a' type='xs:int'/>" +
+        "       <xs:element name='b' type='s:codes' minOccurs='0'/>" +
+        "      </xs:all>" +
+        "     </xs:complexType>" +
+        "    </xs:element>" +
+        "    <xs:any namespace='urn:other ##local' processContents='skip' minOccurs='0' maxOccurs='unbounded'/>" +
+        "   </xs:sequence>" +
+        "   <xs:attributeGroup ref='s:common'/>" +
+        "  </xs:complexType>" +
+        "  <xs:key name='key'><xs:selector xpath='s:item'/><xs:field xpath='@id'/></xs:key>" +
+        "  <xs:keyref name='keyref' refer='s:key'><xs:selector xpath='s:ref'/><xs:field xpath='@to'/></xs:keyref>" +
+        " </xs:element>" +
+        " <xs:element name='head' type='xs:string' abstract='true'/>" +
+        " <xs:element name='member' type='s:code' substitutionGroup='s:head'/>" +
+        " <xs:complexType name='item'>" +
+        "  <xs:sequence>" +
+        "   <xs:element name='price'>" +
+        "    <xs:simpleType>" +
+        "     <xs:restriction base='xs:decimal'>" +
+        "      <xs:minInclusive value='0.5'/><xs:maxExclusive value='100'/><xs:fractionDigits value='2'/>" +
+        "     </xs:restriction>" +
+        "    </xs:simpleType>" +
+        "   </xs:element>" +
+        "   <xs:element name='when' type='s:when' minOccurs='0' default='2012-01-01T00:00:00Z'/>" +
+        "   <xs:element name='note' type='xs:anyType' minOccurs='0'/>" +
+        "  </xs:sequence>" +
+        "  <xs:attribute name='id' type='xs:ID' use='required'/>" +
+        "  <xs:attribute name='kind' default='plain'>" +
+        "   <xs:simpleType>" +
+        "    <xs:restriction base='xs:token'>" +
+        "     <xs:enumeration value='plain'/><xs:enumeration value='fancy'/>" +
+        "    </xs:restriction>" +
+        "   </xs:simpleType>" +
+        "  </xs:attribute>" +
+        " </xs:complexType>" +
+        " <xs:group name='extra'>" +
+        "  <xs:sequence>" +
+        "   <xs:element name='tags' type='s:tags' minOccurs='0'/>" +
+        "   <xs:element name='size' type='s:size' minOccurs='0'/>" +
+        "   <xs:element name='ext' type='t:ext' minOccurs='0'/>" +
+        "  </xs:sequence>" +
+        " </xs:group>" +
+        " <xs:attributeGroup name='common'>" +
+        "  <xs:attribute name='mode' default='s:a'>" +
+        "   <xs:simpleType>" +
+        "    <xs:restriction base='xs:QName'><xs:enumeration value='s:a'/><xs:enumeration value='s:b'/></xs:restriction>" +
+        "   </xs:simpleType>" +
+        "  </xs:attribute>" +
+        "  <xs:attribute name='lang' type='xs:language'/>" +
+        "  <xs:attribute name='format'>" +
+        "   <xs:simpleType>" +
+        "    <xs:restriction base='xs:NOTATION'><xs:enumeration value='s:png'/></xs:restriction>" +
+        "   </xs:simpleType>" +
+        "  </xs:attribute>" +
+        "  <xs:anyAttribute namespace='urn:other' processContents='lax'/>" +
+        " </xs:attributeGroup>" +
+        " <xs:element name='codes'>" +
+        "  <xs:complexType>" +
+        "   <xs:sequence><xs:element name='code' type='s:code' minOccurs='2' maxOccurs='5'/></xs:sequence>" +
+        "  </xs:complexType>" +
+        " </xs:element>" +
+        " <xs:notation name='png' public='image/png'/>" +
+        " <xs:simpleType name='code'>" +
+        "  <xs:annotation><xs:documentation>Two letters and digits</xs:documentation></xs:annotation>" +
+        "  <xs:restriction base='xs:string'><xs:pattern value='[A-Z]{2}\\d+'/></xs:restriction>" +
+        " </xs:simpleType>" +
+        " <xs:simpleType name='shortCode'>" +
+        "  <xs:restriction base='s:code'>" +
+        "   <xs:pattern value='.{3,4}'><xs:annotation><xs:appinfo>short</xs:appinfo></xs:annotation></xs:pattern>" +
+        "  </xs:restriction>" +
+        " </xs:simpleType>" +
+        " <xs:simpleType name='codes'><xs:list itemType='s:code'/></xs:simpleType>" +
+        " <xs:simpleType name='tags'>" +
+        "  <xs:restriction>" +
+        "   <xs:simpleType><xs:list itemType='s:shortCode'/></xs:simpleType>" +
+        "   <xs:maxLength value='3'/>" +
+        "  </xs:restriction>" +
+        " </xs:simpleType>" +
+        " <xs:simpleType name='size'><xs:union memberTypes='xs:int s:code'/></xs:simpleType>" +
+        " <xs:simpleType name='when'>" +
+        "  <xs:restriction base='xs:dateTime'>" +
+        "   <xs:enumeration value='2012-01-01T00:00:00Z'/><xs:enumeration value='2013-06-01T12:00:00Z'/>" +
+        "  </xs:restriction>" +
+        " </xs:simpleType>" +
+        "</xs:schema>";
+
+    /** Schema imported by the first one. */
+    private static final String IMPORTED_SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:t='urn:imported'" +
+        "           targetNamespace='urn:imported'>" +
+        " <xs:simpleType name='amount'>" +
+        "  <xs:restriction base='xs:decimal'><xs:totalDigits value='5'/></xs:restriction>" +
+        " </xs:simpleType>" +
+        " <xs:complexType name='ext'>" +
+        "  <xs:simpleContent>" +
+        "   <xs:extension base='t:amount'><xs:attribute name='unit' type='xs:token' default='m'/></xs:extension>" +
+        "  </xs:simpleContent>" +
+        " </xs:complexType>" +
+        "</xs:schema>";
+
+    /** Start of the start tag of the documents. */
+    private static final String ROOT =
+        "<root xmlns='urn:snapshot' xmlns:s='urn:snapshot' xmlns:xs='http://www.w3.org/2001/XMLSchema'" +
+        " xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance' xmlns:o='urn:other'";
+
+    /** Documents validated, the first one valid. */
+    private static final String[] DOCUMENTS = {
+        ROOT + " mode='s:b' lang='en' format='s:png' o:extra='1'>" +
+        "<member>AB1</member><member xsi:type='s:code'>CD22</member>" +
+        "<item id='i1' kind='fancy'><price>1.25</price><when>2013-06-01T12:00:00Z</when>" +
+        "<note xsi:type='xs:int'>42</note></item><item id='i2'><price>99.99</price><when/></item>" +
+        "<ref to='i2'/><tags>AB1 CD2 EF34</tags><size>CD7</size><ext unit='km'>123.45</ext>" +
+        "<props><b>AB1 CD2</b><a>7</a></props><o:x><y/></o:x><z xmlns=''/></root>",
+
+        ROOT + " mode='s:c' lang='-' format='png'>" +
+        "<member>ab</member><member xsi:type='xs:string'>AB1</member>" +
+        "<item id='i1' kind='odd'><price>0.25</price><when>2014-01-01T00:00:00Z</when>" +
+        "<note xsi:type='xs:int'>x</note></item><item id='i1'><price>100</price></item>" +
+        "<ref to='i3'/><tags>AB1 CD2 EF34 GH5</tags><size>x</size><ext>123456</ext>" +
+        "<props><b>AB1 x</b></props><q:x xmlns:q='urn:unknown'/></root>",
+
+        ROOT + "><member>AB1</member><item id='i1'><price>1</price></item>" +
+        "<tags>AB12345</tags><ext unit=''>1.5</ext></root>",
+
+        "<codes xmlns='urn:snapshot'><code>AB1</code></codes>",
+
+        "<codes xmlns='urn:snapshot'><code>AB1</code><code>AB2</code><code>AB3</code>" +
+        "<code>AB4</code><code>AB5</code><code>AB6</code></codes>",
+    };
+
+    /** Errors reported by the last validation. */
+    private static StringBuffer fErrors;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int repetitions = argv.length > 0 ? Integer.parseInt(argv[0]) : 100;
+
+        XMLGrammarPool loaded = loadSchema();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SchemaGrammarSnapshot.writeGrammars(loaded.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA), bytes);
+        XMLGrammarPool read = readSnapshot(bytes.toByteArray());
+        String models = describeContentModels(read);
+        System.err.println((models.equals("true true true") ? "PASS: " : "FAIL: ") + "content models: " + models);
+
+        for (int i = 0; i < DOCUMENTS.length; ++i) {
+            String expected = validate(loaded, DOCUMENTS[i]);
+            String actual = validate(read, DOCUMENTS[i]);
+            boolean passed = expected.equals(actual) && (i == 0) == (expected.length() == 0);
+            System.err.println((passed ? "PASS: " : "FAIL: ") + "document " + i + ": " + actual);
+        }
+        String expected = describe(loaded);
+        String actual = describe(read);
+        System.err.println((expected.equals(actual) ? "PASS: " : "FAIL: ") + "components: " + actual);
+
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < repetitions; ++i) {
+            loadSchema();
+        }
+        System.err.println("load schema:   " + (System.currentTimeMillis() - time) + " ms");
+        time = System.currentTimeMillis();
+        for (int i = 0; i < repetitions; ++i) {
+            readSnapshot(bytes.toByteArray());
+        }
+        System.err.println("read snapshot: " + (System.currentTimeMillis() - time) + " ms, " +
+                bytes.size() + " bytes");
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns a grammar pool with the grammar of the schema. */
+    private static XMLGrammarPool loadSchema() throws Exception {
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, pool);
+        loader.loadGrammar(new XMLInputSource(null, "imported.xsd", null, new StringReader(IMPORTED_SCHEMA), null));
+        loader.loadGrammar(new XMLInputSource(null, "snapshot.xsd", null, new StringReader(SCHEMA), null));
+        pool.lockPool();
+        return pool;
+    } // loadSchema():XMLGrammarPool
+
+    /** Returns a grammar pool with the grammars of the snapshot. */
+    private static XMLGrammarPool readSnapshot(byte[] bytes) throws Exception {
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        SchemaGrammarSnapshot.loadGrammars(new ByteArrayInputStream(bytes), pool);
+        pool.lockPool();
+        return pool;
+    } // readSnapshot(byte[]):XMLGrammarPool
+
+    /**
+     * Returns a description of the grammars of the pool: the number of
+     * components of each kind, and the annotations.
+     */
+    private static String describe(XMLGrammarPool pool) {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[grammars.length];
+        System.arraycopy(grammars, 0, schemaGrammars, 0, grammars.length);
+        XSModel model = new XSModelImpl(schemaGrammars);
+        StringBuffer description = new StringBuffer();
+        short[] kinds = {
+            XSConstants.TYPE_DEFINITION, XSConstants.ELEMENT_DECLARATION,
+            XSConstants.ATTRIBUTE_DECLARATION, XSConstants.ATTRIBUTE_GROUP,
+            XSConstants.MODEL_GROUP_DEFINITION, XSConstants.NOTATION_DECLARATION,
+            XSConstants.IDENTITY_CONSTRAINT,
+        };
+        for (int i = 0; i < kinds.length; ++i) {
+            description.append(model.getComponents(kinds[i]).getLength()).append(' ');
+        }
+        XSObjectList annotations = model.getAnnotations();
+        for (int i = 0; i < annotations.getLength(); ++i) {
+            description.append(((XSAnnotation) annotations.item(i)).getAnnotationString().length()).append(' ');
+        }
+        XSSimpleTypeDefinition type = (XSSimpleTypeDefinition) model.getTypeDefinition("shortCode", "urn:snapshot");
+        description.append(type.getLexicalPattern()).append(' ').append(type.getMultiValueFacets().getLength());
+        return description.toString();
+    } // describe(XMLGrammarPool):String
+
+    /**
+     * Returns whether the complex types of the root, item and codes
+     * elements have a DFA content model which was read or built already.
+     */
+    private static String describeContentModels(XMLGrammarPool pool) {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[grammars.length];
+        System.arraycopy(grammars, 0, schemaGrammars, 0, grammars.length);
+        XSModel model = new XSModelImpl(schemaGrammars);
+        XSTypeDefinition[] types = {
+            model.getElementDeclaration("root", "urn:snapshot").getTypeDefinition(),
+            model.getTypeDefinition("item", "urn:snapshot"),
+            model.getElementDeclaration("codes", "urn:snapshot").getTypeDefinition(),
+        };
+        StringBuffer description = new StringBuffer();
+        for (int i = 0; i < types.length; ++i) {
+            try {
+                // without a builder, only an existing content model is returned
+                Object contentModel = ((XSComplexTypeDecl) types[i]).getContentModel(null);
+                description.append(contentModel instanceof XSDFACM).append(' ');
+            }
+            catch (NullPointerException e) {
+                description.append("none ");
+            }
+        }
+        return description.toString().trim();
+    } // describeContentModels(XMLGrammarPool):String
+
+    /** Returns the errors reported when validating the document with the grammars of the pool. */
+    private static String validate(XMLGrammarPool pool, String document) throws Exception {
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature("http://xml.org/sax/features/validation", true);
+        parser.setFeature("http://apache.org/xml/features/validation/schema", true);
+        fErrors = new StringBuffer();
+        parser.setErrorHandler(new DefaultHandler() {
+            public void error(SAXParseException e) {
+                fErrors.append('[').append(e.getMessage()).append(']');
+            }
+        });
+        parser.parse(new InputSource(new StringReader(document)));
+        return fErrors.toString();
+    } // validate(XMLGrammarPool,String):String
+
+} // class GrammarSnapshotTest
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema;
+
+import java.io.StringReader;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Measures the cost of xs:key/xs:keyref checking on large generated
+ * documents, with single and two field keys and a duration key whose
+ * references use a different lexical form, and verifies that duplicate
+ * keys and dangling references are still reported.
+ *
+ * <p>Usage: java schema.IdentityConstraintPerf [keyCount [repetitions]]</p>
+ *
+ * @version $Id$
+ */
+public class IdentityConstraintPerf implements ErrorHandler {
+
+    /** Schema with a single field, a two field and a duration key, each with a keyref. */
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>" +
+        " <xs:element name='root'>" +
+        "  <xs:complexType>" +
+        "   <xs:sequence>" +
+        "    <xs:element name='item' maxOccurs='unbounded'>" +
+        "     <xs:complexType>" +
+        "      <xs:attribute name='id' type='xs:string'/>" +
+        "      <xs:attribute name='code' type='xs:integer'/>" +
+        "      <xs:attribute name='version' type='xs:string'/>" +
+        "      <xs:attribute name='span' type='xs:duration'/>" +
+        "     </xs:complexType>" +
+        "    </xs:element>" +
+        "    <xs:element name='ref' maxOccurs='unbounded'>" +
+        "     <xs:complexType>" +
+        "      <xs:attribute name='id' type='xs:string'/>" +
+        "      <xs:attribute name='code' type='xs:integer'/>" +
+        "      <xs:attribute name='version' type='xs:string'/>" +
+        "      <xs:attribute name='span' type='xs:duration'/>" +
+        "     </xs:complexType>" +
+        "    </xs:element>" +
+        "   </xs:sequence>" +
+        "  </xs:complexType>" +
+        "  <xs:key name='itemKey'><xs:selector xpath='item'/><xs:field xpath='@id'/></xs:key>" +
+        "  <xs:keyref name='itemRef' refer='itemKey'><xs:selector xpath='ref'/><xs:field xpath='@id'/></xs:keyref>" +
+        "  <xs:key name='codeKey'><xs:selector xpath='item'/><xs:field xpath='@code'/><xs:field xpath='@version'/></xs:key>" +
+        "  <xs:keyref name='codeRef' refer='codeKey'><xs:selector xpath='ref'/><xs:field xpath='@code'/><xs:field xpath='@version'/></xs:keyref>" +
+        "  <xs:key name='spanKey'><xs:selector xpath='item'/><xs:field xpath='@span'/></xs:key>" +
+        "  <xs:keyref name='spanRef' refer='spanKey'><xs:selector xpath='ref'/><xs:field xpath='@span'/></xs:keyref>" +
+        " </xs:element>" +
+        "</xs:schema>";
+
+    /** Number of errors reported by the last validation. */
+    private int fErrors;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int keyCount = argv.length > 0 ? Integer.parseInt(argv[0]) : 50000;
+        int repetitions = argv.length > 1 ? Integer.parseInt(argv[1]) : 5;
+
+        IdentityConstraintPerf test = new IdentityConstraintPerf();
+        Schema schema = new XMLSchemaFactory().newSchema(new StreamSource(new StringReader(SCHEMA)));
+        Validator validator = schema.newValidator();
+        validator.setErrorHandler(test);
+
+        // sanity checks
+        test.check(validator, generate(100, false, false), 0, "valid document");
+        test.check(validator, generate(100, true, false), 3, "duplicate keys");
+        test.check(validator, generate(100, false, true), 3, "dangling references");
+
+        // timing
+        String document = generate(keyCount, false, false);
+        for (int i = 0; i < repetitions; ++i) {
+            long time = System.currentTimeMillis();
+            test.check(validator, document, 0, keyCount + " keys and references");
+            time = System.currentTimeMillis() - time;
+            System.err.println("  validation time: " + time + " ms");
+        }
+    } // main(String[])
+
+    /** Validates the document and compares the number of errors reported. */
+    private void check(Validator validator, String document, int expectedErrors, String description) throws Exception {
+        fErrors = 0;
+        validator.validate(new StreamSource(new StringReader(document)));
+        System.err.println((fErrors == expectedErrors ? "PASS: " : "FAIL: ") + description +
+                " (" + fErrors + " errors, expected " + expectedErrors + ")");
+    } // check(Validator,String,int,String)
+
+    /** Generates a document with the specified number of keys and references. */
+    private static String generate(int count, boolean duplicate, boolean dangling) {
+        StringBuffer buffer = new StringBuffer(count * 96);
+        buffer.append("<root>");
+        for (int i = 0; i < count; ++i) {
+            buffer.append("<item id='i").append(i).append("' code='").append(i).
+                append("' version='v").append(i % 7).append("' span='PT").append(i).append("S'/>");
+        }
+        if (duplicate) {
+            buffer.append("<item id='i0' code='0' version='v0' span='PT0S'/>");
+        }
+        // reference the keys in reverse order so that no lookup hits the
+        // most recently added value
+        for (int i = count - 1; i >= 0; --i) {
+            int id = (dangling && i == 0) ? count : i;
+            buffer.append("<ref id='i").append(id).append("' code='").append(id).
+                append("' version='v").append(id % 7).append("' span='PT").append(id / 60).
+                append("M").append(id % 60).append("S'/>");
+        }
+        buffer.append("</root>");
+        return buffer.toString();
+    } // generate(int,boolean,boolean):String
+
+    //
+    // ErrorHandler methods
+    //
+
+    public void warning(SAXParseException e) throws SAXException {
+    }
+
+    public void error(SAXParseException e) throws SAXException {
+        fErrors++;
+    }
+
+    public void fatalError(SAXParseException e) throws SAXException {
+        throw e;
+    }
+
+} // class IdentityConstraintPerf
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema;
+
+import java.io.StringReader;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.XSModel;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Checks values of simple types with XSSimpleTypeDecl.isKnownValid, which
+ * checks them in place without creating their actual values, and with
+ * validate, and checks that a value known to be valid is valid with the
+ * same normalized value, and that the valid values of the types it handles
+ * are known to be valid. Then validates documents with the PSVI, which
+ * needs the actual values, and without it, when the validator checks the
+ * values in place, and checks that the errors and the values are the same.
+ *
+ * @version $Id$
+ */
+public class KnownValidTest {
+
+    //
+    // Constants
+    //
+
+    /** Grammar pool property. */
+    private static final String GRAMMAR_POOL =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    /** PSVI augmentation feature. */
+    private static final String AUGMENT_PSVI =
+        Constants.XERCES_FEATURE_PREFIX + Constants.SCHEMA_AUGMENT_PSVI;
+
+    /**
+     * Types, as triples of name, definition and whether isKnownValid
+     * handles them; the values of the other types, such as enumerations
+     * of binary values and of lists, or ranges of floats, are left to
+     * validate. A definition without a restriction, list or union is the
+     * name of a built-in type.
+     */
+    private static final String[] TYPES = {
+        "anySimpleType", "xs:anySimpleType", "true",
+        "string", "xs:string", "true",
+        "boolean", "xs:boolean", "true",
+        "decimal", "xs:decimal", "true",
+        "integer", "xs:integer", "true",
+        "int", "xs:int", "true",
+        "byte", "xs:byte", "true",
+        "long", "xs:long", "true",
+        "unsignedLong", "xs:unsignedLong", "true",
+        "nonNegativeInteger", "xs:nonNegativeInteger", "true",
+        "negativeInteger", "xs:negativeInteger", "true",
+        "hexBinary", "xs:hexBinary", "true",
+        "normalizedString", "xs:normalizedString", "true",
+        "token", "xs:token", "true",
+        "length", "<xs:restriction base='xs:string'><xs:length value='3'/></xs:restriction>", "true",
+        "minMaxLength", "<xs:restriction base='xs:string'><xs:minLength value='2'/><xs:maxLength value='4'/></xs:restriction>", "true",
+        "pattern", "<xs:restriction base='xs:string'><xs:pattern value='[a-z]+\\d'/></xs:restriction>", "true",
+        "patterns", "<xs:restriction base='s:minMaxLength'><xs:pattern value='\\p{Ll}.*'/></xs:restriction>", "true",
+        "stringEnumeration", "<xs:restriction base='xs:string'><xs:enumeration value='a b'/><xs:enumeration value='c'/></xs:restriction>", "true",
+        "tokenEnumeration", "<xs:restriction base='xs:token'><xs:enumeration value='a b'/><xs:enumeration value='abc'/></xs:restriction>", "true",
+        "collapse", "<xs:restriction base='xs:string'><xs:whiteSpace value='collapse'/><xs:maxLength value='3'/></xs:restriction>", "true",
+        "replace", "<xs:restriction base='xs:string'><xs:whiteSpace value='replace'/><xs:pattern value='\\S*'/></xs:restriction>", "true",
+        "booleanPattern", "<xs:restriction base='xs:boolean'><xs:pattern value='true|false'/></xs:restriction>", "true",
+        "digits", "<xs:restriction base='xs:decimal'><xs:totalDigits value='4'/><xs:fractionDigits value='2'/></xs:restriction>", "true",
+        "inclusive", "<xs:restriction base='xs:decimal'><xs:minInclusive value='-1.5'/><xs:maxInclusive value='10'/></xs:restriction>", "true",
+        "exclusive", "<xs:restriction base='xs:decimal'><xs:minExclusive value='0'/><xs:maxExclusive value='0.001'/></xs:restriction>", "true",
+        "decimalEnumeration", "<xs:restriction base='xs:decimal'><xs:enumeration value='1.0'/><xs:enumeration value='2.50'/></xs:restriction>", "true",
+        "intRange", "<xs:restriction base='xs:int'><xs:minInclusive value='-5'/><xs:maxExclusive value='128'/></xs:restriction>", "true",
+        "integerDigits", "<xs:restriction base='xs:integer'><xs:totalDigits value='3'/></xs:restriction>", "true",
+        "integerEnumeration", "<xs:restriction base='xs:integer'><xs:enumeration value='10'/><xs:enumeration value='-0'/></xs:restriction>", "true",
+        "hexLength", "<xs:restriction base='xs:hexBinary'><xs:length value='2'/></xs:restriction>", "true",
+        "hexEnumeration", "<xs:restriction base='xs:hexBinary'><xs:enumeration value='0A0b'/></xs:restriction>", "false",
+        "decimalList", "<xs:list itemType='xs:decimal'/>", "true",
+        "intListLength", "<xs:restriction><xs:simpleType><xs:list itemType='xs:int'/></xs:simpleType><xs:length value='2'/></xs:restriction>", "true",
+        "listPattern", "<xs:restriction><xs:simpleType><xs:list itemType='xs:string'/></xs:simpleType><xs:pattern value='\\d( \\d)*'/></xs:restriction>", "true",
+        "listEnumeration", "<xs:restriction><xs:simpleType><xs:list itemType='xs:token'/></xs:simpleType><xs:enumeration value='a b'/></xs:restriction>", "false",
+        "patternList", "<xs:list itemType='s:pattern'/>", "true",
+        "date", "xs:date", "false",
+        "double", "xs:double", "true",
+        "float", "xs:float", "true",
+        "floatRange", "<xs:restriction base='xs:float'><xs:minExclusive value='-1'/><xs:maxInclusive value='1E2'/></xs:restriction>", "false",
+        "union", "<xs:union memberTypes='xs:int xs:boolean'/>", "false",
+        "unionList", "<xs:list><xs:simpleType><xs:union memberTypes='xs:int xs:boolean'/></xs:simpleType></xs:list>", "false",
+    };
+
+    /** Values checked with each of the types. */
+    private static final String[] VALUES = {
+        "", " ", "a", "c", "abc", " abc ", "a b", "a  b", "a\tb", " a\nb ", "ab1", "AB1", "abc1",
+        "abcd", "abcde", "0", "1", "true", "false", " true ", "TRUE", "01", "-0", "+0", "1.",
+        ".5", "-.5", "1.0", "1.00", "1.50", "2.5", "12.34", "123.45", "99.999", "1e2", "-1.5",
+        "-1.51", "10", "10.0", "9.9999", "0.001", "0.0010", "0.0009", "0.00099", "127", "128",
+        "-128", "-129", "-5", "-6", "18446744073709551615", "18446744073709551616", "-1",
+        "9223372036854775807", "9223372036854775808", "-9223372036854775808", "999", "1000",
+        "-999", "0999", "00012.3400", "0A0b", "0a0B", "0A", "0A0", "zz", "1 2", " 1  2 ",
+        "1 2 3", "1.5 x", "1 true", "2001-01-01", "a\u0085", "\ud800\udc00ab", "\ud800\udc00abc",
+        "\u00e9\u00e9\u00e9", "+", "-", ".", "1.2.3", "NaN", "INF", "-INF", "+INF", "1E2", "1e+2", "1.0E-2", "1E", "e1", "3.4028235E38", "3.5E38",
+    };
+
+    //
+    // Data
+    //
+
+    /** Number of checks failed. */
+    private static int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        String schema = getSchema();
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(GRAMMAR_POOL, pool);
+        SchemaGrammar grammar = (SchemaGrammar) loader.loadGrammar(new XMLInputSource(null, null, null, new StringReader(schema), null));
+        XSModel model = grammar.toXSModel();
+
+        checkTypes(model);
+        for (int i = 0; i < TYPES.length; i += 3) {
+            checkDocument(TYPES[i], pool);
+        }
+
+        if (fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Returns a schema declaring the types, a root element, elements
+     * of each of the types and an attribute of each type.
+     */
+    private static String getSchema() {
+        StringBuffer schema = new StringBuffer(
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:s='urn:known' targetNamespace='urn:known'>\n" +
+            " <xs:element name='root'><xs:complexType><xs:choice maxOccurs='unbounded'>\n" +
+            "  <xs:any namespace='##targetNamespace' processContents='strict'/>\n" +
+            " </xs:choice></xs:complexType></xs:element>\n");
+        for (int i = 0; i < TYPES.length; i += 3) {
+            String name = TYPES[i];
+            String definition = TYPES[i + 1];
+            String type = definition.startsWith("<") ? "s:" + name : definition;
+            if (definition.startsWith("<")) {
+                schema.append(" <xs:simpleType name='").append(name).append("'>").append(definition).append("</xs:simpleType>\n");
+            }
+            // an element of the type, an element with the type as simple
+            // content, and an element with an attribute of the type
+            schema.append(" <xs:element name='e-").append(name).append("' type='").append(type).append("'/>\n");
+            schema.append(" <xs:element name='c-").append(name).append("'><xs:complexType><xs:simpleContent>")
+                .append("<xs:extension base='").append(type).append("'/></xs:simpleContent></xs:complexType></xs:element>\n");
+            schema.append(" <xs:element name='a-").append(name).append("'><xs:complexType>")
+                .append("<xs:attribute name='a' type='").append(type).append("'/></xs:complexType></xs:element>\n");
+        }
+        schema.append("</xs:schema>");
+        return schema.toString();
+    } // getSchema():String
+
+    /**
+     * Checks each value with each type, with isKnownValid and validate.
+     */
+    private static void checkTypes(XSModel model) {
+        ValidationState context = new ValidationState();
+        ValidatedInfo info = new ValidatedInfo();
+        int known = 0;
+        int valid = 0;
+        for (int i = 0; i < TYPES.length; i += 3) {
+            String name = TYPES[i];
+            boolean handled = TYPES[i + 2].equals("true");
+            XSSimpleTypeDecl type = (XSSimpleTypeDecl)
+                model.getElementDeclaration("e-" + name, "urn:known").getTypeDefinition();
+            int failed = 0;
+            for (int j = 0; j < VALUES.length; ++j) {
+                String value = VALUES[j];
+                // the characters of the value in a larger array
+                char[] ch = ("[[" + value + "]]").toCharArray();
+                XMLString content = new XMLString(ch, 2, value.length());
+                boolean isKnownValid = type.isKnownValid(content, context);
+                String normalized = content.toString();
+                boolean isValid;
+                try {
+                    info.reset();
+                    type.validate(value, context, info);
+                    isValid = true;
+                }
+                catch (InvalidDatatypeValueException e) {
+                    isValid = false;
+                }
+                String error = null;
+                if (isKnownValid && !isValid) {
+                    error = "known valid, but invalid";
+                }
+                else if (isKnownValid && !normalized.equals(info.normalizedValue)) {
+                    error = "normalized to '" + normalized + "' instead of '" + info.normalizedValue + "'";
+                }
+                else if (isValid && !isKnownValid && handled) {
+                    error = "valid, but not known valid";
+                }
+                else if (isKnownValid && !handled) {
+                    error = "known valid, but not handled";
+                }
+                else if (ch[0] != '[' || ch[1] != '[' || ch[ch.length - 2] != ']' || ch[ch.length - 1] != ']') {
+                    error = "characters outside the value modified";
+                }
+                if (error != null) {
+                    ++failed;
+                    System.err.println("  " + name + " '" + escape(value) + "': " + error);
+                }
+                if (isKnownValid) {
+                    ++known;
+                }
+                if (isValid) {
+                    ++valid;
+                }
+            }
+            check("type " + name, failed == 0, failed + " failed");
+        }
+        check("values known valid", known > 0, known + " of " + valid + " valid values");
+    } // checkTypes(XSModel)
+
+    /**
+     * Validates a document with the values of a type, with and without
+     * the PSVI, and checks that the errors and the values are the same.
+     */
+    private static void checkDocument(String name, XMLGrammarPool pool) throws Exception {
+        StringBuffer document = new StringBuffer("<root xmlns='urn:known'>\n");
+        for (int i = 0; i < VALUES.length; ++i) {
+            String value = escape(VALUES[i]);
+            document.append("<e-").append(name).append('>').append(value).append("</e-").append(name).append(">\n");
+            document.append("<c-").append(name).append('>').append(value).append("</c-").append(name).append(">\n");
+            document.append("<a-").append(name).append(" a='").append(value).append("'/>\n");
+        }
+        document.append("</root>");
+        String expected = validate(document.toString(), pool, true);
+        String actual = validate(document.toString(), pool, false);
+        check("document " + name, expected.equals(actual), expected.length() + " characters");
+        if (!expected.equals(actual)) {
+            System.err.println("  expected: " + expected);
+            System.err.println("  actual:   " + actual);
+        }
+    } // checkDocument(String,XMLGrammarPool)
+
+    /** Returns the values and the errors reported for a document. */
+    private static String validate(String document, XMLGrammarPool pool, boolean psvi) throws Exception {
+        final StringBuffer result = new StringBuffer();
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature("http://xml.org/sax/features/validation", true);
+        parser.setFeature("http://apache.org/xml/features/validation/schema", true);
+        parser.setFeature(AUGMENT_PSVI, psvi);
+        DefaultHandler handler = new DefaultHandler() {
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                result.append('<').append(localName);
+                for (int i = 0; i < attributes.getLength(); ++i) {
+                    result.append(' ').append(attributes.getLocalName(i)).append("='")
+                        .append(escape(attributes.getValue(i))).append('\'');
+                }
+                result.append('>');
+            }
+            public void characters(char[] ch, int start, int length) {
+                // the characters of a union are sent at the end of the
+                // element, with PSVI augmentations in their place
+                if (ch == null) {
+                    return;
+                }
+                result.append(escape(new String(ch, start, length)));
+            }
+            public void error(SAXParseException e) {
+                result.append("[Error ").append(e.getLineNumber()).append(':').append(e.getColumnNumber())
+                    .append("] ").append(e.getMessage()).append('\n');
+            }
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                error(e);
+                throw e;
+            }
+        };
+        parser.setContentHandler(handler);
+        parser.setErrorHandler(handler);
+        parser.parse(new InputSource(new StringReader(document)));
+        return result.toString();
+    } // validate(String,XMLGrammarPool,boolean):String
+
+    /** Escapes the characters which are not printable ASCII characters. */
+    private static String escape(String value) {
+        StringBuffer escaped = new StringBuffer();
+        for (int i = 0; i < value.length(); ++i) {
+            int c = value.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < value.length()) {
+                c = Character.toCodePoint((char) c, value.charAt(++i));
+            }
+            if (c < 0x20 || c > 0x7E || c == '&' || c == '<' || c == '\'') {
+                escaped.append("&#x").append(Integer.toHexString(c)).append(';');
+            }
+            else {
+                escaped.append((char) c);
+            }
+        }
+        return escaped.toString();
+    } // escape(String):String
+
+    private static void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + ": " + result);
+    } // check(String,boolean,String)
+
+} // class KnownValidTest
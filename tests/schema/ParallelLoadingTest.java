@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSModelImpl;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObject;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Loads schemas which include, import and redefine other schema
+ * documents with the parallel schema loading feature off and on, and
+ * checks that the same components are built, the same errors are
+ * reported, and documents are validated the same way, and that each
+ * document is resolved and read as many times. Then checks that the
+ * background threads end once they have been idle.
+ *
+ * <p>Usage: java schema.ParallelLoadingTest</p>
+ *
+ * @version $Id$
+ */
+public class ParallelLoadingTest {
+
+    //
+    // Constants
+    //
+
+    /** Parallel schema loading feature. */
+    private static final String PARALLEL_SCHEMA_LOADING =
+        Constants.XERCES_FEATURE_PREFIX + Constants.PARALLEL_SCHEMA_LOADING_FEATURE;
+
+    /** Grammar pool property. */
+    private static final String GRAMMAR_POOL =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    /** Name of the background threads. */
+    private static final String THREAD_NAME = "Xerces schema document parser";
+
+    private static final String XS = "xmlns:xs='http://www.w3.org/2001/XMLSchema'";
+
+    /** URL scheme of the files whose reads are counted. */
+    private static final String COUNTED = "counted";
+
+    /** Schema documents, as pairs of file name and contents. */
+    private static final String[] DOCUMENTS = {
+        "main.xsd",
+        "<xs:schema " + XS + " xmlns:m='urn:main' xmlns:a='urn:a' xmlns:b='urn:b'" +
+        "           targetNamespace='urn:main' elementFormDefault='qualified'>" +
+        " <xs:include schemaLocation='types.xsd'/>" +
+        " <xs:include schemaLocation='sub/more.xsd'/>" +
+        " <xs:redefine schemaLocation='redefined.xsd'>" +
+        "  <xs:simpleType name='size'><xs:restriction base='m:size'><xs:maxInclusive value='10'/></xs:restriction></xs:simpleType>" +
+        " </xs:redefine>" +
+        " <xs:import namespace='urn:a' schemaLocation='a.xsd'/>" +
+        " <xs:import namespace='urn:b' schemaLocation='b.xsd'/>" +
+        " <xs:element name='root'>" +
+        "  <xs:complexType>" +
+        "   <xs:sequence>" +
+        "    <xs:element name='code' type='m:code' maxOccurs='unbounded'/>" +
+        "    <xs:element name='size' type='m:size'/>" +
+        "    <xs:element ref='a:item'/>" +
+        "    <xs:element ref='b:item' minOccurs='0'/>" +
+        "    <xs:element name='more' type='m:more' minOccurs='0'/>" +
+        "   </xs:sequence>" +
+        "  </xs:complexType>" +
+        " </xs:element>" +
+        "</xs:schema>",
+
+        "types.xsd",
+        "<xs:schema " + XS + " targetNamespace='urn:main'>" +
+        " <xs:simpleType name='code'><xs:restriction base='xs:string'><xs:pattern value='[A-Z]+'/></xs:restriction></xs:simpleType>" +
+        "</xs:schema>",
+
+        "sub/more.xsd",
+        "<xs:schema " + XS + " xmlns:m='urn:main'>" +
+        " <xs:include schemaLocation='../types.xsd'/>" +
+        " <xs:complexType name='more'><xs:simpleContent><xs:extension base='m:code'/></xs:simpleContent></xs:complexType>" +
+        "</xs:schema>",
+
+        "redefined.xsd",
+        "<xs:schema " + XS + " targetNamespace='urn:main'>" +
+        " <xs:simpleType name='size'><xs:restriction base='xs:int'><xs:minInclusive value='1'/></xs:restriction></xs:simpleType>" +
+        "</xs:schema>",
+
+        "a.xsd",
+        "<xs:schema " + XS + " xmlns:a='urn:a' xmlns:c='urn:c' targetNamespace='urn:a'>" +
+        " <xs:import namespace='urn:c' schemaLocation='c.xsd'/>" +
+        " <xs:element name='item' type='c:value'/>" +
+        "</xs:schema>",
+
+        "b.xsd",
+        "<xs:schema " + XS + " xmlns:c='urn:c' targetNamespace='urn:b'>" +
+        " <xs:import namespace='urn:c' schemaLocation='c.xsd'/>" +
+        " <xs:element name='item' type='c:value'/>" +
+        "</xs:schema>",
+
+        "c.xsd",
+        "<xs:schema " + XS + " targetNamespace='urn:c'>" +
+        " <xs:simpleType name='value'><xs:restriction base='xs:decimal'><xs:fractionDigits value='1'/></xs:restriction></xs:simpleType>" +
+        "</xs:schema>",
+
+        // a schema with errors in an included document, a missing
+        // document, and a document referring to an external entity
+        "broken.xsd",
+        "<xs:schema " + XS + " targetNamespace='urn:broken'>" +
+        " <xs:include schemaLocation='bad.xsd'/>" +
+        " <xs:include schemaLocation='missing.xsd'/>" +
+        " <xs:include schemaLocation='entity.xsd'/>" +
+        " <xs:element name='root' type='xs:string'/>" +
+        "</xs:schema>",
+
+        "bad.xsd",
+        "<xs:schema " + XS + " targetNamespace='urn:broken'>" +
+        " <xs:element name='e' type='xs:unknown'/>" +
+        " <xs:element name='f' type='xs:int' default='x'/>" +
+        "</xs:schema>",
+
+        "entity.xsd",
+        "<!DOCTYPE xs:schema [<!ENTITY t SYSTEM 'entity.txt'>]>" +
+        "<xs:schema " + XS + " targetNamespace='urn:broken'>" +
+        " <xs:annotation><xs:documentation>&t;</xs:documentation></xs:annotation>" +
+        " <xs:element name='g' type='xs:string'/>" +
+        "</xs:schema>",
+
+        "entity.txt",
+        "text",
+
+        // a schema importing a namespace of main.xsd
+        "user.xsd",
+        "<xs:schema " + XS + " xmlns:a='urn:a' targetNamespace='urn:user'>" +
+        " <xs:import namespace='urn:a' schemaLocation='a.xsd'/>" +
+        " <xs:element name='user'><xs:complexType><xs:sequence><xs:element ref='a:item'/></xs:sequence></xs:complexType></xs:element>" +
+        "</xs:schema>",
+    };
+
+    /** Documents validated against urn:main, the first one valid. */
+    private static final String[] INSTANCES = {
+        "<root xmlns='urn:main' xmlns:a='urn:a' xmlns:b='urn:b'>" +
+        "<code>AB</code><code>C</code><size>10</size><a:item>1.5</a:item><b:item>2</b:item><more>X</more></root>",
+
+        "<root xmlns='urn:main' xmlns:a='urn:a'>" +
+        "<code>ab</code><size>11</size><a:item>1.25</a:item><more>1</more></root>",
+    };
+
+    /** Errors reported by the last load or validation. */
+    private static StringBuffer fErrors;
+
+    /** Number of times each counted file was read, by path. */
+    private static final TreeMap fReads = new TreeMap();
+
+    /** Number of times each document was resolved, by expanded system identifier. */
+    private static final TreeMap fResolutions = new TreeMap();
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        File dir = File.createTempFile("parallel", "");
+        dir.delete();
+        new File(dir, "sub").mkdirs();
+        for (int i = 0; i < DOCUMENTS.length; i += 2) {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, DOCUMENTS[i])), "UTF-8");
+            writer.write(DOCUMENTS[i + 1]);
+            writer.close();
+        }
+        String main = new File(dir, "main.xsd").toURI().toString();
+        String broken = new File(dir, "broken.xsd").toURI().toString();
+
+        // load a few times, so that documents are taken from the idle parsers
+        for (int n = 0; n < 3; ++n) {
+            XMLGrammarPool sequential = new XMLGrammarPoolImpl();
+            String expected = load(main, sequential, false);
+            XMLGrammarPool parallel = new XMLGrammarPoolImpl();
+            String actual = load(main, parallel, true);
+            check("load " + n, expected, actual, expected.length() == 0);
+            expected = describe(sequential);
+            actual = describe(parallel);
+            check("components " + n, expected, actual, expected.length() > 0);
+            for (int i = 0; i < INSTANCES.length; ++i) {
+                expected = validate(sequential, INSTANCES[i]);
+                actual = validate(parallel, INSTANCES[i]);
+                check("instance " + i, expected, actual, (i == 0) == (expected.length() == 0));
+            }
+
+            expected = load(broken, new XMLGrammarPoolImpl(), false);
+            actual = load(broken, new XMLGrammarPoolImpl(), true);
+            check("errors " + n, expected, actual, expected.length() > 0);
+        }
+
+        checkCounts(dir);
+
+        // the threads end once idle
+        boolean ended = false;
+        for (int i = 0; i < 30 && !ended; ++i) {
+            Thread.sleep(1000);
+            ended = !hasThread(THREAD_NAME);
+        }
+        System.err.println((ended ? "PASS: " : "FAIL: ") + "background threads ended");
+
+        for (int i = 0; i < DOCUMENTS.length; i += 2) {
+            new File(dir, DOCUMENTS[i]).delete();
+        }
+        new File(dir, "sub").delete();
+        dir.delete();
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Checks that the documents are resolved and read as many times when
+     * loading in parallel, and that a namespace whose grammar is in the pool
+     * is not read.
+     */
+    private static void checkCounts(File dir) throws Exception {
+        URL.setURLStreamHandlerFactory(new URLStreamHandlerFactory() {
+            public URLStreamHandler createURLStreamHandler(String protocol) {
+                if (!COUNTED.equals(protocol)) {
+                    return null;
+                }
+                return new URLStreamHandler() {
+                    protected URLConnection openConnection(URL url) throws IOException {
+                        count(fReads, url.getPath());
+                        return new File(url.getPath()).toURI().toURL().openConnection();
+                    }
+                };
+            }
+        });
+        XMLEntityResolver resolver = new XMLEntityResolver() {
+            public XMLInputSource resolveEntity(XMLResourceIdentifier id) {
+                count(fResolutions, id.getExpandedSystemId());
+                return null;
+            }
+        };
+        String root = COUNTED + ":" + dir.toURI().getPath();
+        String[] expected = new String[2];
+        String[] actual = new String[2];
+        for (int i = 0; i < 2; ++i) {
+            boolean parallel = i == 1;
+            clearCounts();
+            XMLGrammarPool pool = new XMLGrammarPoolImpl();
+            load(root + "main.xsd", pool, parallel, resolver);
+            String[] counts = parallel ? actual : expected;
+            counts[0] = String.valueOf(fReads) + fResolutions;
+            clearCounts();
+            load(root + "user.xsd", pool, parallel, resolver);
+            counts[1] = String.valueOf(fReads) + fResolutions;
+        }
+        check("counts", expected[0], actual[0], expected[0].indexOf("types.xsd=1") != -1);
+        check("counts with pool", expected[1], actual[1], expected[1].indexOf("a.xsd") == -1);
+    } // checkCounts(File)
+
+    private static synchronized void count(TreeMap counts, String systemId) {
+        String name = systemId.substring(systemId.lastIndexOf('/') + 1);
+        Integer count = (Integer) counts.get(name);
+        counts.put(name, new Integer(count == null ? 1 : count.intValue() + 1));
+    } // count(TreeMap,String)
+
+    private static synchronized void clearCounts() {
+        fReads.clear();
+        fResolutions.clear();
+    } // clearCounts()
+
+    private static void check(String name, String expected, String actual, boolean plausible) {
+        boolean passed = expected.equals(actual) && plausible;
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + ": " + actual);
+        if (!expected.equals(actual)) {
+            System.err.println("  expected: " + expected);
+        }
+    } // check(String,String,String,boolean)
+
+    /** Loads the schema into the pool, and returns the errors reported. */
+    private static String load(String systemId, XMLGrammarPool pool, boolean parallel) throws Exception {
+        return load(systemId, pool, parallel, null);
+    } // load(String,XMLGrammarPool,boolean):String
+
+    /** Loads the schema into the pool with the entity resolver, and returns the errors reported. */
+    private static String load(String systemId, XMLGrammarPool pool, boolean parallel,
+            XMLEntityResolver resolver) throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setEntityResolver(resolver);
+        loader.setFeature(PARALLEL_SCHEMA_LOADING, parallel);
+        loader.setProperty(GRAMMAR_POOL, pool);
+        fErrors = new StringBuffer();
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+                fErrors.append("[warning ").append(key).append(' ').append(e.getLineNumber()).append(']');
+            }
+            public void error(String domain, String key, XMLParseException e) {
+                fErrors.append("[error ").append(key).append(' ').append(e.getLineNumber()).append(']');
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                fErrors.append("[fatal ").append(key).append(' ').append(e.getLineNumber()).append(']');
+            }
+        });
+        loader.loadGrammar(new XMLInputSource(null, systemId, null));
+        return fErrors.toString();
+    } // load(String,XMLGrammarPool,boolean,XMLEntityResolver):String
+
+    /** Returns the names of the global components of the grammars of the pool. */
+    private static String describe(XMLGrammarPool pool) {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        SchemaGrammar[] schemaGrammars = new SchemaGrammar[grammars.length];
+        System.arraycopy(grammars, 0, schemaGrammars, 0, grammars.length);
+        XSModel model = new XSModelImpl(schemaGrammars);
+        short[] kinds = {XSConstants.TYPE_DEFINITION, XSConstants.ELEMENT_DECLARATION};
+        StringBuffer names = new StringBuffer();
+        for (int i = 0; i < kinds.length; ++i) {
+            XSNamedMap components = model.getComponents(kinds[i]);
+            String[] componentNames = new String[components.getLength()];
+            for (int j = 0; j < componentNames.length; ++j) {
+                XSObject component = components.item(j);
+                componentNames[j] = "{" + component.getNamespace() + "}" + component.getName();
+            }
+            Arrays.sort(componentNames);
+            names.append(Arrays.asList(componentNames));
+        }
+        return names.toString();
+    } // describe(XMLGrammarPool):String
+
+    /** Returns the errors reported when validating the document with the grammars of the pool. */
+    private static String validate(XMLGrammarPool pool, String document) throws Exception {
+        SAXParser parser = new SAXParser();
+        parser.setProperty(GRAMMAR_POOL, pool);
+        parser.setFeature("http://xml.org/sax/features/validation", true);
+        parser.setFeature("http://apache.org/xml/features/validation/schema", true);
+        fErrors = new StringBuffer();
+        parser.setErrorHandler(new DefaultHandler() {
+            public void error(SAXParseException e) {
+                fErrors.append('[').append(e.getMessage()).append(']');
+            }
+        });
+        parser.parse(new InputSource(new StringReader(document)));
+        return fErrors.toString();
+    } // validate(XMLGrammarPool,String):String
+
+    /** Returns true if a live thread has the name. */
+    private static boolean hasThread(String name) {
+        Thread[] threads = new Thread[Thread.activeCount() + 10];
+        int count = Thread.enumerate(threads);
+        for (int i = 0; i < count; ++i) {
+            if (name.equals(threads[i].getName())) {
+                return true;
+            }
+        }
+        return false;
+    } // hasThread(String):boolean
+
+} // class ParallelLoadingTest
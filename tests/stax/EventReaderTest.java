@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stax;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.xml.stream.EventFilter;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.xerces.stax.XMLInputFactoryImpl;
+
+/**
+ * Reads documents with the Xerces XMLEventReader and checks that the
+ * events match those of the XMLStreamReader it is built on, including
+ * after the reader has moved on, and that filtered readers, peek(),
+ * getElementText() and nextTag() behave as specified.
+ *
+ * <p>Usage: java stax.EventReaderTest</p>
+ *
+ * @version $Id$
+ */
+public class EventReaderTest {
+
+    /** Test document; the same as StreamReaderTest's. */
+    private static final String DOCUMENT =
+        "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>" +
+        "<!--c--><?pi data?>" +
+        "<r xmlns='urn:d' xmlns:p='urn:p' a='1' p:b='2'>text&amp;more<![CDATA[cd]]>tail" +
+        "<p:e/><x xmlns:p='urn:q'>y</x></r>";
+
+    /** Expected events; the same as StreamReaderTest's. */
+    private static final String EXPECTED =
+        "7 5[c] 3[pi data] 1{urn:d}r(2,2,urn:p) 4[text&morecdtail] 1{urn:p}e(0,0,urn:p) " +
+        "2{urn:p}e 1{urn:d}x(1,0,urn:q) 4[y] 2{urn:d}x 2{urn:d}r 8 ";
+
+    /** Document for getElementText() and nextTag(). */
+    private static final String ELEMENTS =
+        "<r>\n  <!--c--> <a>one<!--c-->&lt;two<?pi?></a>\n  <b>three</b> </r>";
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+        // collect all events before looking at them, so that any state
+        // shared with the stream reader would show
+        XMLEventReader reader = factory.createXMLEventReader(new StringReader(DOCUMENT));
+        ArrayList events = new ArrayList();
+        while (reader.hasNext()) {
+            events.add(reader.nextEvent());
+        }
+        reader.close();
+        StartDocument start = (StartDocument) events.get(0);
+        boolean passed = "1.0".equals(start.getVersion()) && start.isStandalone()
+            && start.standaloneSet() && "UTF-8".equals(start.getCharacterEncodingScheme());
+        String result = toString(events.iterator());
+        passed = passed && EXPECTED.equals(result);
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "events: " + result);
+
+        // the iterator view, with a filter which keeps the tags
+        reader = factory.createFilteredReader(factory.createXMLEventReader(new StringReader(DOCUMENT)),
+            new EventFilter() {
+                public boolean accept(XMLEvent event) {
+                    return event.isStartElement() || event.isEndElement();
+                }
+            });
+        XMLEvent peeked = reader.peek();
+        result = toString(reader);
+        passed = peeked != null && peeked.isStartElement()
+            && "1{urn:d}r(2,2,urn:p) 1{urn:p}e(0,0,urn:p) 2{urn:p}e 1{urn:d}x(1,0,urn:q) 2{urn:d}x 2{urn:d}r ".equals(result)
+            && !reader.hasNext() && reader.peek() == null;
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "filtered: " + result);
+
+        // getElementText() and nextTag(), with and without a peeked event
+        reader = factory.createXMLEventReader(new StringReader(ELEMENTS));
+        reader.nextEvent();
+        passed = "r".equals(reader.nextTag().asStartElement().getName().getLocalPart());
+        passed = passed && "a".equals(reader.nextTag().asStartElement().getName().getLocalPart());
+        passed = passed && "one<two".equals(reader.getElementText());
+        reader.peek();
+        passed = passed && "b".equals(reader.nextTag().asStartElement().getName().getLocalPart());
+        reader.peek();
+        passed = passed && "three".equals(reader.getElementText());
+        passed = passed && "r".equals(reader.nextTag().asEndElement().getName().getLocalPart());
+        passed = passed && reader.nextEvent().isEndDocument() && !reader.hasNext();
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "getElementText() and nextTag()");
+    } // main(String[])
+
+    /** Returns a description of the events in the same form as StreamReaderTest. */
+    private static String toString(Iterator events) {
+        StringBuffer buffer = new StringBuffer();
+        while (events.hasNext()) {
+            XMLEvent event = (XMLEvent) events.next();
+            int eventType = event.getEventType();
+            buffer.append(eventType);
+            if (event.isStartElement()) {
+                StartElement element = event.asStartElement();
+                buffer.append(element.getName()).append('(').append(count(element.getNamespaces()))
+                    .append(',').append(count(element.getAttributes())).append(',')
+                    .append(element.getNamespaceContext().getNamespaceURI("p")).append(')');
+            }
+            else if (event.isEndElement()) {
+                buffer.append(((EndElement) event).getName());
+            }
+            else if (eventType == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                ProcessingInstruction pi = (ProcessingInstruction) event;
+                buffer.append('[').append(pi.getTarget()).append(' ').append(pi.getData()).append(']');
+            }
+            else if (eventType == XMLStreamConstants.COMMENT) {
+                buffer.append('[').append(((Comment) event).getText()).append(']');
+            }
+            else if (event.isCharacters()) {
+                buffer.append('[').append(((Characters) event).getData()).append(']');
+            }
+            buffer.append(' ');
+        }
+        return buffer.toString();
+    } // toString(Iterator):String
+
+    /** Returns the number of items of an iterator. */
+    private static int count(Iterator iterator) {
+        int count = 0;
+        for (; iterator.hasNext(); iterator.next()) {
+            ++count;
+        }
+        return count;
+    } // count(Iterator):int
+
+} // class EventReaderTest
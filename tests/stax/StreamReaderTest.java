@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stax;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xerces.stax.XMLInputFactoryImpl;
+
+/**
+ * Reads documents with the Xerces XMLStreamReader, checks the events
+ * reported for a small document and reports the time taken to stream
+ * a large document.
+ *
+ * <p>Usage: java stax.StreamReaderTest [elements]</p>
+ *
+ * @version $Id$
+ */
+public class StreamReaderTest {
+
+    /** Test document. */
+    private static final String DOCUMENT =
+        "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>" +
+        "<!--c--><?pi data?>" +
+        "<r xmlns='urn:d' xmlns:p='urn:p' a='1' p:b='2'>text&amp;more<![CDATA[cd]]>tail" +
+        "<p:e/><x xmlns:p='urn:q'>y</x></r>";
+
+    /** Expected events. */
+    private static final String EXPECTED =
+        "7 5[c] 3[pi data] 1{urn:d}r(2,2,urn:p) 4[text&morecdtail] 1{urn:p}e(0,0,urn:p) " +
+        "2{urn:p}e 1{urn:d}x(1,0,urn:q) 4[y] 2{urn:d}x 2{urn:d}r 8 ";
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int elements = argv.length > 0 ? Integer.parseInt(argv[0]) : 200000;
+
+        XMLInputFactory factory = new XMLInputFactoryImpl();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(DOCUMENT));
+        boolean passed = "1.0".equals(reader.getVersion()) && reader.isStandalone()
+            && "UTF-8".equals(reader.getCharacterEncodingScheme());
+        String events = toString(reader);
+        passed = passed && EXPECTED.equals(events);
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "events: " + events);
+
+        StringBuffer buffer = new StringBuffer("<r>");
+        for (int i = 0; i < elements; ++i) {
+            buffer.append("<e a='").append(i).append("'>hello world ").append(i).append("</e>");
+        }
+        buffer.append("</r>");
+        byte[] bytes = buffer.toString().getBytes("UTF-8");
+        for (int i = 0; i < 5; ++i) {
+            long time = System.currentTimeMillis();
+            reader = factory.createXMLStreamReader(new ByteArrayInputStream(bytes));
+            long characters = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.CHARACTERS) {
+                    characters += reader.getTextLength();
+                }
+            }
+            reader.close();
+            time = System.currentTimeMillis() - time;
+            System.err.println(elements + " elements, " + characters + " characters: " + time + " ms");
+        }
+    } // main(String[])
+
+    /** Returns a description of the events of the reader. */
+    private static String toString(XMLStreamReader reader) throws Exception {
+        StringBuffer buffer = new StringBuffer();
+        while (true) {
+            int eventType = reader.getEventType();
+            buffer.append(eventType);
+            if (reader.isStartElement()) {
+                buffer.append(reader.getName()).append('(').append(reader.getNamespaceCount())
+                    .append(',').append(reader.getAttributeCount()).append(',')
+                    .append(reader.getNamespaceContext().getNamespaceURI("p")).append(')');
+            }
+            else if (reader.isEndElement()) {
+                buffer.append(reader.getName());
+            }
+            else if (eventType == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                buffer.append('[').append(reader.getPITarget()).append(' ')
+                    .append(reader.getPIData()).append(']');
+            }
+            else if (reader.hasText()) {
+                buffer.append('[').append(reader.getTextCharacters(), reader.getTextStart(),
+                        reader.getTextLength()).append(']');
+            }
+            buffer.append(' ');
+            if (!reader.hasNext()) {
+                return buffer.toString();
+            }
+            reader.next();
+        }
+    } // toString(XMLStreamReader):String
+
+} // class StreamReaderTest
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.apache.xerces.jaxp.SAXParserFactoryImpl;
+import org.apache.xerces.util.XMLCatalogResolver;
+import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogManager;
+import org.apache.xml.resolver.readers.OASISXMLCatalogReader;
+import org.apache.xml.resolver.readers.SAXCatalogReader;
+
+/**
+ * Resolves identifiers with an XMLCatalogResolver shared by many
+ * threads, and checks that every lookup returns what the catalogs,
+ * queried directly without a snapshot or a cache of resolved
+ * identifiers, return. More identifiers are resolved than the cache
+ * holds, the list of catalogs and the prefer public setting are changed
+ * while threads are resolving, and the catalogs are cleared.
+ *
+ * <p>Usage: java thread.CatalogResolverTest [threads [identifiers [rounds]]]</p>
+ *
+ * @version $Id$
+ */
+public class CatalogResolverTest {
+
+    //
+    // Constants
+    //
+
+    /** Maximum number of resolved identifiers remembered by a snapshot. */
+    private static final int MAX_RESOLVED_SIZE = 1024;
+
+    private static final String CATALOG_START =
+        "<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog'>\n";
+
+    //
+    // Data
+    //
+
+    /** Number of lookups which did not return the expected mapping. */
+    private static volatile int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int threadCount = argv.length > 0 ? Integer.parseInt(argv[0]) : 8;
+        int identifiers = argv.length > 1 ? Integer.parseInt(argv[1]) : 500;
+        int rounds = argv.length > 2 ? Integer.parseInt(argv[2]) : 2;
+
+        File dir = File.createTempFile("catalogs", "");
+        dir.delete();
+        dir.mkdirs();
+        String first = writeCatalogs(dir, "first", identifiers);
+        String second = writeCatalogs(dir, "second", identifiers);
+
+        String[][] ids = new String[identifiers][];
+        for (int i = 0; i < identifiers; ++i) {
+            // mapped and unmapped public, system, rewritten,
+            // delegated and URI identifiers
+            ids[i] = new String[] {
+                "-//TEST//" + i,
+                "http://example.org/" + (i % 3 == 0 ? "system/" : "other/") + i + ".dtd",
+                "http://example.org/" + (i % 2 == 0 ? "rewrite/" : "plain/") + i,
+                "urn:delegate:" + i,
+                "http://example.org/uri/" + i,
+            };
+        }
+
+        // the expected mappings, with the catalogs queried directly
+        String[][][] expected = new String[4][][];
+        expected[0] = resolveAll(newCatalog(first, true), ids);
+        expected[1] = resolveAll(newCatalog(first, false), ids);
+        expected[2] = resolveAll(newCatalog(second, true), ids);
+        expected[3] = resolveAll(newCatalog(second, false), ids);
+
+        final XMLCatalogResolver resolver = new XMLCatalogResolver(new String[] {first}, true);
+        check("first catalogs, single thread", resolver, ids, expected[0]);
+        check("first catalogs, resolved again", resolver, ids, expected[0]);
+        int size = getResolvedSize(resolver);
+        if (size == 0 || size > MAX_RESOLVED_SIZE) {
+            fail();
+        }
+        System.err.println((size > 0 && size <= MAX_RESOLVED_SIZE ? "PASS: " : "FAIL: ") +
+                "resolved identifiers remembered: " + size);
+
+        long time = System.currentTimeMillis();
+        run(resolver, ids, expected[0], threadCount, rounds);
+        System.err.println((fFailures == 0 ? "PASS: " : "FAIL: ") + "first catalogs, " + threadCount +
+                " threads, " + (System.currentTimeMillis() - time) + " ms");
+        size = getResolvedSize(resolver);
+        if (size > MAX_RESOLVED_SIZE) {
+            fail();
+        }
+        System.err.println((size <= MAX_RESOLVED_SIZE ? "PASS: " : "FAIL: ") +
+                "resolved identifiers remembered: " + size);
+
+        // change the settings while threads are resolving; each lookup
+        // must give the mapping of one of the settings
+        Thread[] threads = start(resolver, ids, expected, threadCount, rounds);
+        for (int i = 0; i < 20; ++i) {
+            Thread.sleep(5);
+            resolver.setCatalogList(new String[] {i % 2 == 0 ? second : first});
+            Thread.sleep(5);
+            resolver.setPreferPublic(i % 3 != 0);
+        }
+        join(threads);
+        System.err.println((fFailures == 0 ? "PASS: " : "FAIL: ") + "settings changed while resolving");
+
+        resolver.setCatalogList(new String[] {second});
+        resolver.setPreferPublic(false);
+        check("second catalogs, system preferred", resolver, ids, expected[3]);
+        resolver.setPreferPublic(true);
+        check("second catalogs, public preferred", resolver, ids, expected[2]);
+
+        resolver.clear();
+        String[][] none = new String[identifiers][6];
+        check("cleared", resolver, ids, none);
+        resolver.setCatalogList(new String[] {first});
+        check("first catalogs again", resolver, ids, expected[0]);
+
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+        if (fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Writes a catalog, which delegates to another catalog and refers to a
+     * next catalog, and returns its URI. The catalogs named "second" map
+     * the identifiers differently.
+     */
+    private static String writeCatalogs(File dir, String name, int identifiers) throws IOException {
+        String base = "file:///" + name + "/";
+        StringBuffer main = new StringBuffer(CATALOG_START);
+        StringBuffer delegated = new StringBuffer(CATALOG_START);
+        StringBuffer next = new StringBuffer(CATALOG_START);
+        for (int i = 0; i < identifiers; ++i) {
+            if (i % 2 == 0) {
+                main.append(" <public publicId='-//TEST//").append(i).append("' uri='").append(base).append("public/").append(i).append("'/>\n");
+            }
+            if (i % 3 == 0) {
+                main.append(" <system systemId='http://example.org/system/").append(i).append(".dtd' uri='").append(base).append("system/").append(i).append("'/>\n");
+            }
+            if (i % 5 == 0) {
+                main.append(" <uri name='http://example.org/uri/").append(i).append("' uri='").append(base).append("uri/").append(i).append("'/>\n");
+            }
+            if (i % 7 == 0) {
+                delegated.append(" <system systemId='urn:delegate:").append(i).append("' uri='").append(base).append("delegated/").append(i).append("'/>\n");
+            }
+            if (i % 11 == 0) {
+                next.append(" <system systemId='http://example.org/other/").append(i).append(".dtd' uri='").append(base).append("next/").append(i).append("'/>\n");
+            }
+        }
+        main.append(" <rewriteSystem systemIdStartString='http://example.org/rewrite/' rewritePrefix='").append(base).append("rewritten/'/>\n");
+        main.append(" <delegateSystem systemIdStartString='urn:delegate:' catalog='").append(name).append("-delegated.xml'/>\n");
+        main.append(" <nextCatalog catalog='").append(name).append("-next.xml'/>\n");
+        main.append("</catalog>");
+        delegated.append("</catalog>");
+        next.append("</catalog>");
+        write(new File(dir, name + "-delegated.xml"), delegated.toString());
+        write(new File(dir, name + "-next.xml"), next.toString());
+        File catalog = new File(dir, name + ".xml");
+        write(catalog, main.toString());
+        return catalog.toURI().toString();
+    } // writeCatalogs(File,String,int):String
+
+    private static void write(File file, String contents) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write(contents);
+        out.close();
+    } // write(File,String)
+
+    /** Returns a catalog configured as the catalogs of XMLCatalogResolver are. */
+    private static Catalog newCatalog(String uri, boolean preferPublic) throws IOException {
+        CatalogManager manager = new CatalogManager();
+        manager.setAllowOasisXMLCatalogPI(false);
+        manager.setCatalogClassName("org.apache.xml.resolver.Catalog");
+        manager.setCatalogFiles("");
+        manager.setIgnoreMissingProperties(true);
+        manager.setPreferPublic(preferPublic);
+        manager.setRelativeCatalogs(false);
+        manager.setUseStaticCatalog(false);
+        manager.setVerbosity(0);
+        Catalog catalog = new Catalog(manager);
+        SAXParserFactoryImpl spf = new SAXParserFactoryImpl();
+        spf.setNamespaceAware(true);
+        SAXCatalogReader reader = new SAXCatalogReader(spf);
+        reader.setCatalogParser(OASISXMLCatalogReader.namespaceName, "catalog",
+            "org.apache.xml.resolver.readers.OASISXMLCatalogReader");
+        catalog.addReader("application/xml", reader);
+        catalog.parseCatalog(uri);
+        return catalog;
+    } // newCatalog(String,boolean):Catalog
+
+    /** Resolves the identifiers with the catalog. */
+    private static String[][] resolveAll(Catalog catalog, String[][] ids) throws IOException {
+        String[][] mappings = new String[ids.length][];
+        for (int i = 0; i < ids.length; ++i) {
+            mappings[i] = new String[] {
+                catalog.resolvePublic(ids[i][0], null),
+                catalog.resolvePublic(ids[i][0], ids[i][1]),
+                catalog.resolveSystem(ids[i][1]),
+                catalog.resolveSystem(ids[i][2]),
+                catalog.resolveSystem(ids[i][3]),
+                catalog.resolveURI(ids[i][4]),
+            };
+        }
+        return mappings;
+    } // resolveAll(Catalog,String[][]):String[][]
+
+    /** Resolves the identifiers with the resolver. */
+    private static String[] resolve(XMLCatalogResolver resolver, String[] ids) throws IOException {
+        return new String[] {
+            resolver.resolvePublic(ids[0], null),
+            resolver.resolvePublic(ids[0], ids[1]),
+            resolver.resolveSystem(ids[1]),
+            resolver.resolveSystem(ids[2]),
+            resolver.resolveSystem(ids[3]),
+            resolver.resolveURI(ids[4]),
+        };
+    } // resolve(XMLCatalogResolver,String[]):String[]
+
+    private static boolean equals(String[] a, String[] b) {
+        for (int i = 0; i < b.length; ++i) {
+            if (a[i] == null ? b[i] != null : !a[i].equals(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    } // equals(String[],String[]):boolean
+
+    /** Checks the mappings of the identifiers from a single thread. */
+    private static void check(String description, XMLCatalogResolver resolver,
+            String[][] ids, String[][] expected) throws IOException {
+        int failures = 0;
+        int mapped = 0;
+        for (int i = 0; i < ids.length; ++i) {
+            String[] actual = resolve(resolver, ids[i]);
+            if (!equals(actual, expected[i])) {
+                ++failures;
+            }
+            for (int j = 0; j < actual.length; ++j) {
+                if (actual[j] != null) {
+                    ++mapped;
+                }
+            }
+        }
+        fFailures += failures;
+        System.err.println((failures == 0 ? "PASS: " : "FAIL: ") + description + ", " +
+                mapped + " mapped, " + failures + " failed");
+    } // check(String,XMLCatalogResolver,String[][],String[][])
+
+    /** Resolves the identifiers from many threads. */
+    private static void run(XMLCatalogResolver resolver, String[][] ids, String[][] expected,
+            int threadCount, int rounds) throws InterruptedException {
+        join(start(resolver, ids, new String[][][] {expected}, threadCount, rounds));
+    } // run(XMLCatalogResolver,String[][],String[][],int,int)
+
+    /**
+     * Starts threads resolving the identifiers, which count a failure
+     * for a lookup that does not give one of the expected mappings.
+     */
+    private static Thread[] start(final XMLCatalogResolver resolver, final String[][] ids,
+            final String[][][] expected, int threadCount, final int rounds) {
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int offset = t * 997;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int r = 0; r < rounds; ++r) {
+                            for (int i = 0; i < ids.length; ++i) {
+                                int index = (offset + i) % ids.length;
+                                String[] actual = resolve(resolver, ids[index]);
+                                for (int j = 0; j < actual.length; ++j) {
+                                    boolean found = false;
+                                    for (int e = 0; e < expected.length && !found; ++e) {
+                                        String mapping = expected[e][index][j];
+                                        found = mapping == null ? actual[j] == null : mapping.equals(actual[j]);
+                                    }
+                                    if (!found) {
+                                        fail();
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    catch (IOException e) {
+                        fail();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        return threads;
+    } // start(XMLCatalogResolver,String[][],String[][][],int,int):Thread[]
+
+    private static synchronized void fail() {
+        ++fFailures;
+    } // fail()
+
+    private static void join(Thread[] threads) throws InterruptedException {
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+    } // join(Thread[])
+
+    /** Returns the number of resolved identifiers remembered by the resolver. */
+    private static int getResolvedSize(XMLCatalogResolver resolver) throws Exception {
+        Field snapshotField = XMLCatalogResolver.class.getDeclaredField("fSnapshot");
+        snapshotField.setAccessible(true);
+        Object snapshot = snapshotField.get(resolver);
+        Field resolvedField = snapshot.getClass().getDeclaredField("fResolved");
+        resolvedField.setAccessible(true);
+        return ((Map) resolvedField.get(snapshot)).size();
+    } // getResolvedSize(XMLCatalogResolver):int
+
+} // class CatalogResolverTest
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thread;
+
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.parsers.CachingParserPool;
+import org.apache.xerces.util.ConcurrentGrammarPool;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+
+/**
+ * Retrieves grammars from a shared grammar pool from many threads, the
+ * way validators sharing a pool do, while one thread keeps caching
+ * grammars. Compares a synchronized XMLGrammarPoolImpl with the
+ * ConcurrentGrammarPool and reports the contention counters of the latter.
+ *
+ * <p>Usage: java thread.GrammarPoolTest [threads [grammars [rounds]]]</p>
+ *
+ * @version $Id$
+ */
+public class GrammarPoolTest {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int threads = argv.length > 0 ? Integer.parseInt(argv[0]) : 32;
+        int grammarCount = argv.length > 1 ? Integer.parseInt(argv[1]) : 50;
+        int rounds = argv.length > 2 ? Integer.parseInt(argv[2]) : 20000;
+
+        Grammar[] grammars = new Grammar[grammarCount];
+        for (int i = 0; i < grammarCount; ++i) {
+            grammars[i] = new TestGrammar("urn:test:" + i);
+        }
+
+        for (int i = 0; i < 3; ++i) {
+            XMLGrammarPoolImpl impl = new XMLGrammarPoolImpl();
+            impl.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, grammars);
+            run("SynchronizedGrammarPool", new CachingParserPool.SynchronizedGrammarPool(impl),
+                    grammars, threads, rounds);
+            ConcurrentGrammarPool concurrent = new ConcurrentGrammarPool(grammars);
+            run("ConcurrentGrammarPool", concurrent, grammars, threads, rounds);
+            System.err.println("  writes: " + concurrent.getWriteCount() +
+                    ", contended writes: " + concurrent.getContendedWriteCount());
+        }
+    } // main(String[])
+
+    /** Retrieves the grammars from the specified number of threads. */
+    private static void run(String description, final XMLGrammarPool pool, final Grammar[] grammars,
+            int threadCount, final int rounds) throws InterruptedException {
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final boolean writer = (t == 0);
+            threads[t] = new Thread() {
+                public void run() {
+                    XSDDescription desc = new XSDDescription();
+                    for (int r = 0; r < rounds; ++r) {
+                        if (writer && r % 100 == 0) {
+                            pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, grammars);
+                        }
+                        Grammar grammar = grammars[r % grammars.length];
+                        desc.setTargetNamespace(grammar.getGrammarDescription().getNamespace());
+                        if (pool.retrieveGrammar(desc) != grammar) {
+                            failed[0] = true;
+                        }
+                        if (r % 1000 == 0 && pool.retrieveInitialGrammarSet(
+                                XMLGrammarDescription.XML_SCHEMA).length != grammars.length) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+        }
+        long time = System.currentTimeMillis();
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t].join();
+        }
+        time = System.currentTimeMillis() - time;
+        System.err.println((failed[0] ? "FAIL: " : "PASS: ") + description + ", " +
+                threadCount + " threads: " + time + " ms");
+    } // run(String,XMLGrammarPool,Grammar[],int,int)
+
+    //
+    // Classes
+    //
+
+    /** A grammar which only has a description. */
+    private static final class TestGrammar implements Grammar {
+
+        private final XSDDescription fDescription = new XSDDescription();
+
+        public TestGrammar(String namespace) {
+            fDescription.setTargetNamespace(namespace);
+        }
+
+        public XMLGrammarDescription getGrammarDescription() {
+            return fDescription;
+        }
+
+    } // class TestGrammar
+
+} // class GrammarPoolTest
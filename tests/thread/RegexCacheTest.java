@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thread;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.text.StringCharacterIterator;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.xpath.regex.Match;
+import org.apache.xerces.impl.xpath.regex.REUtil;
+import org.apache.xerces.impl.xpath.regex.RegularExpression;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.apache.xerces.jaxp.validation.XSGrammarPoolContainer;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.grammars.XSGrammar;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.xml.sax.SAXException;
+
+/**
+ * Compiles regular expressions through the shared cache of REUtil, and
+ * matches the shared instances from many threads, checking the results
+ * against instances compiled and matched by a single thread. Also checks
+ * that the pattern facets of different schemas share the compiled
+ * patterns, that the cache is bounded, and validates documents with the
+ * patterns of one schema from many threads.
+ *
+ * <p>Usage: java thread.RegexCacheTest [threads [rounds]]</p>
+ *
+ * @version $Id$
+ */
+public class RegexCacheTest {
+
+    //
+    // Constants
+    //
+
+    /** The maximum number of instances cached by REUtil. */
+    private static final int CACHE_SIZE = 512;
+
+    /** Patterns, as pairs of pattern and options. */
+    private static final String[] PATTERNS = {
+        "\\p{Lu}\\p{Ll}*", "X",
+        "\\P{L}+", "X",
+        "\\p{IsBasicLatin}*\\p{IsGreek}+", "X",
+        "[\\p{N}-[5-9]]{2,4}", "X",
+        "[a-z-[aeiou]]+\\d?", "X",
+        "\\i\\c*", "X",
+        "(ab|cd)+(e|f)?", "X",
+        "[^\\s]+(\\s[^\\s]+)*", "X",
+        "\\p{Sm}|\\p{Sc}|\\p{Nd}{3}", "X",
+        "[\\-+]?\\d+(\\.\\d*)?([eE][\\-+]?\\d+)?", "X",
+        "\\P{IsCJKUnifiedIdeographs}+", "X",
+        "[\\p{L}-[\\p{Lu}]]+", "X",
+        "(\\w+)@(\\w+)\\.com", "",
+        "^a.*z$", "m",
+        "HELLO (WORLD)?", "i",
+        "(\\d+)-(\\d+)", "",
+        "\\bword\\b", "",
+        "[a-z]+ [0-9]+", "x",
+    };
+
+    /** Inputs matched with each of the patterns. */
+    private static final String[] INPUTS = {
+        "", "A", "Abc", "abc", "ABC", "123", "12345", "1234", "5678", "1289",
+        "\u03b1\u03b2\u03b3", "abc\u03b1\u03b2", "bcd3", "bcda", "_name-1.x", "1name",
+        "ababcdf", "abe", "one two  three", "one two", "+", "$", "+12.5e-3", "-.5",
+        "\u4e00\u4e01", "abc\u4e00", "x@y.com", "mail: me@example.com.", "a\nabcz\nq",
+        "hello world", "Hello", "10-20", "a word here", "words", "abc 123", "\ud800\udc00",
+    };
+
+    //
+    // Data
+    //
+
+    /** Number of checks failed. */
+    private static int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int threadCount = argv.length > 0 ? Integer.parseInt(argv[0]) : 16;
+        int rounds = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+
+        // the threads compile the patterns together, before the
+        // category tables are filled, and match them
+        final RegularExpression[][] compiled = new RegularExpression[threadCount][];
+        final String[][] results = new String[threadCount][];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    compiled[thread] = new RegularExpression[PATTERNS.length / 2];
+                    results[thread] = new String[PATTERNS.length / 2];
+                    try {
+                        for (int i = 0; i < PATTERNS.length / 2; ++i) {
+                            int index = (thread + i) % (PATTERNS.length / 2);
+                            compiled[thread][index] = REUtil.createRegex(PATTERNS[2 * index], PATTERNS[2 * index + 1]);
+                            results[thread][index] = match(compiled[thread][index]);
+                        }
+                    }
+                    catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        start(threads);
+        join(threads);
+
+        // the results of instances compiled and matched by a single thread
+        String[] expected = new String[PATTERNS.length / 2];
+        RegularExpression[] cached = new RegularExpression[PATTERNS.length / 2];
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = match(new RegularExpression(PATTERNS[2 * i], PATTERNS[2 * i + 1]));
+            cached[i] = REUtil.createRegex(PATTERNS[2 * i], PATTERNS[2 * i + 1]);
+        }
+        int failed = 0;
+        for (int t = 0; t < threadCount; ++t) {
+            for (int i = 0; i < expected.length; ++i) {
+                if (results[t] == null || !expected[i].equals(results[t][i])) {
+                    ++failed;
+                }
+            }
+        }
+        check("compiled concurrently", failed == 0, failed + " failed");
+
+        // the instances are shared
+        failed = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            if (REUtil.createRegex(PATTERNS[2 * i], PATTERNS[2 * i + 1]) != cached[i]) {
+                ++failed;
+            }
+        }
+        check("instances shared", failed == 0, failed + " not shared");
+        check("options distinguished",
+            REUtil.createRegex("HELLO (WORLD)?", "") != REUtil.createRegex("HELLO (WORLD)?", "i") &&
+            !REUtil.createRegex("HELLO (WORLD)?", "").matches("hello world") &&
+            REUtil.createRegex("HELLO (WORLD)?", "i").matches("hello world"), "");
+
+        // the shared instances are matched concurrently
+        run(cached, expected, threadCount, rounds);
+
+        checkSchemas(threadCount, rounds);
+
+        // the cache is bounded
+        for (int i = 0; i < 2 * CACHE_SIZE; ++i) {
+            REUtil.createRegex("p" + i + "[a-z]*", "X");
+        }
+        int size = getCacheSize();
+        check("cache bounded", size > 0 && size <= CACHE_SIZE, size + " cached");
+        RegularExpression again = REUtil.createRegex(PATTERNS[0], PATTERNS[1]);
+        check("discarded pattern compiled again", match(again).equals(expected[0]), "");
+
+        if (fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the results of the matches of the inputs. */
+    private static String match(RegularExpression regex) {
+        StringBuffer result = new StringBuffer();
+        Match match = new Match();
+        for (int i = 0; i < INPUTS.length; ++i) {
+            String input = INPUTS[i];
+            boolean matches = regex.matches(input);
+            if (regex.matches(input.toCharArray()) != matches ||
+                regex.matches(new StringCharacterIterator(input)) != matches) {
+                result.append("inconsistent ");
+            }
+            result.append(matches ? '1' : '0');
+            if (regex.matches(input, match)) {
+                for (int g = 0; g < match.getNumberOfGroups(); ++g) {
+                    result.append('[').append(match.getBeginning(g)).append(',').append(match.getEnd(g)).append(']');
+                }
+            }
+            result.append(' ');
+        }
+        return result.toString();
+    } // match(RegularExpression):String
+
+    /** Matches the shared instances from many threads. */
+    private static void run(final RegularExpression[] regexes, final String[] expected,
+            int threadCount, final int rounds) throws InterruptedException {
+        final int[] failed = new int[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int r = 0; r < rounds; ++r) {
+                        for (int i = 0; i < regexes.length; ++i) {
+                            int index = (offset + i) % regexes.length;
+                            if (!match(regexes[index]).equals(expected[index])) {
+                                synchronized (failed) {
+                                    ++failed[0];
+                                }
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        long time = System.currentTimeMillis();
+        start(threads);
+        join(threads);
+        check("matched concurrently, " + threadCount + " threads", failed[0] == 0,
+            failed[0] + " failed, " + (System.currentTimeMillis() - time) + " ms");
+    } // run(RegularExpression[],String[],int,int)
+
+    /**
+     * Checks that two schemas share the compiled pattern of their types,
+     * and validates documents with one schema from many threads.
+     */
+    private static void checkSchemas(int threadCount, final int rounds) throws Exception {
+        String type =
+            "<xs:simpleType name='code'><xs:restriction base='xs:string'>" +
+            "<xs:pattern value='[A-Z]{2}\\d{3}(-\\p{Ll}+)?'/></xs:restriction></xs:simpleType>";
+        String schema1 =
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>" + type +
+            "<xs:element name='codes'><xs:complexType><xs:sequence>" +
+            "<xs:element name='code' type='code' maxOccurs='unbounded'/>" +
+            "</xs:sequence></xs:complexType></xs:element></xs:schema>";
+        String schema2 =
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:other' xmlns='urn:other'>" +
+            type + "</xs:schema>";
+        XMLSchemaFactory factory = new XMLSchemaFactory();
+        final Schema schema = factory.newSchema(new StreamSource(new StringReader(schema1)));
+        Schema other = factory.newSchema(new StreamSource(new StringReader(schema2)));
+        Object pattern1 = getPattern(schema, "", "code");
+        Object pattern2 = getPattern(other, "urn:other", "code");
+        check("pattern facets shared between schemas", pattern1 != null && pattern1 == pattern2, "");
+
+        final String[] documents = {
+            "<codes><code>AB123</code><code>XY999-abc</code></codes>",
+            "<codes><code>AB123</code><code>ab123</code></codes>",
+            "<codes><code>AB1234</code></codes>",
+            "<codes><code>ZZ000-\u00e9t\u00e9</code></codes>",
+            "<codes><code>ZZ000-</code></codes>",
+        };
+        final boolean[] valid = { true, false, false, true, false };
+        final int[] failed = new int[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Validator validator = schema.newValidator();
+                    for (int r = 0; r < rounds; ++r) {
+                        int index = (offset + r) % documents.length;
+                        boolean isValid;
+                        try {
+                            validator.validate(new StreamSource(new StringReader(documents[index])));
+                            isValid = true;
+                        }
+                        catch (SAXException e) {
+                            isValid = false;
+                        }
+                        catch (Exception e) {
+                            isValid = !valid[index];
+                        }
+                        if (isValid != valid[index]) {
+                            synchronized (failed) {
+                                ++failed[0];
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        start(threads);
+        join(threads);
+        check("documents validated concurrently", failed[0] == 0, failed[0] + " failed");
+    } // checkSchemas(int,int)
+
+    /** Returns the compiled pattern facet of a simple type of a schema. */
+    private static Object getPattern(Schema schema, String namespace, String name) throws Exception {
+        XSModel model = getModel(schema);
+        XSTypeDefinition type = model.getTypeDefinition(name, namespace.length() == 0 ? null : namespace);
+        Field field = XSSimpleTypeDecl.class.getDeclaredField("fPattern");
+        field.setAccessible(true);
+        Vector patterns = (Vector) field.get(type);
+        return patterns == null || patterns.size() == 0 ? null : patterns.elementAt(0);
+    } // getPattern(Schema,String,String):Object
+
+    /** Returns the model of the grammars of a schema. */
+    private static XSModel getModel(Schema schema) {
+        XMLGrammarPool pool = ((XSGrammarPoolContainer) schema).getGrammarPool();
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        return ((XSGrammar) grammars[grammars.length - 1]).toXSModel();
+    } // getModel(Schema):XSModel
+
+    /** Returns the number of instances cached by REUtil. */
+    private static int getCacheSize() throws Exception {
+        Field field = REUtil.class.getDeclaredField("regexCache");
+        field.setAccessible(true);
+        return ((Map) field.get(null)).size();
+    } // getCacheSize():int
+
+    private static void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + (result.length() > 0 ? ": " + result : ""));
+    } // check(String,boolean,String)
+
+    private static void start(Thread[] threads) {
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].start();
+        }
+    } // start(Thread[])
+
+    private static void join(Thread[] threads) throws InterruptedException {
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+    } // join(Thread[])
+
+} // class RegexCacheTest
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thread;
+
+import org.apache.xerces.util.ConcurrentSymbolTable;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+
+/**
+ * Adds the same symbols to a shared symbol table from many threads,
+ * checking that every thread gets back the interned reference, and
+ * reports the time taken by the synchronized and the concurrent symbol
+ * tables.
+ *
+ * <p>Usage: java thread.SymbolTableTest [threads [symbols [rounds]]]</p>
+ *
+ * @version $Id$
+ */
+public class SymbolTableTest {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        int threads = argv.length > 0 ? Integer.parseInt(argv[0]) : 32;
+        int symbols = argv.length > 1 ? Integer.parseInt(argv[1]) : 20000;
+        int rounds = argv.length > 2 ? Integer.parseInt(argv[2]) : 50;
+
+        char[][] names = new char[symbols][];
+        String[] interned = new String[symbols];
+        for (int i = 0; i < symbols; ++i) {
+            interned[i] = ("name" + i).intern();
+            names[i] = interned[i].toCharArray();
+        }
+
+        for (int i = 0; i < 3; ++i) {
+            run("SynchronizedSymbolTable", new SynchronizedSymbolTable(), names, interned, threads, rounds);
+            run("ConcurrentSymbolTable", new ConcurrentSymbolTable(), names, interned, threads, rounds);
+        }
+    } // main(String[])
+
+    /** Adds the symbols from the specified number of threads. */
+    private static void run(String description, final SymbolTable table, final char[][] names,
+            final String[] interned, int threadCount, final int rounds) throws InterruptedException {
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int start = t * 7919;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int r = 0; r < rounds; ++r) {
+                        for (int i = 0; i < names.length; ++i) {
+                            int index = (start + i) % names.length;
+                            char[] name = names[index];
+                            if (table.addSymbol(name, 0, name.length) != interned[index]) {
+                                failed[0] = true;
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        long time = System.currentTimeMillis();
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t].start();
+        }
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t].join();
+        }
+        time = System.currentTimeMillis() - time;
+        System.err.println((failed[0] ? "FAIL: " : "PASS: ") + description + ", " +
+                threadCount + " threads: " + time + " ms");
+    } // run(String,SymbolTable,char[][],String[],int,int)
+
+} // class SymbolTableTest
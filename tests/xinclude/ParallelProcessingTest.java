@@ -0,0 +1,454 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xinclude;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.XIncludeParserConfiguration;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+
+import xni.Writer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Processes the XInclude test documents, and a generated tree of
+ * included documents, with the XInclude parallel processing feature
+ * off and on, and checks that the events and errors are the same.
+ * Also checks, with documents served over HTTP, that a root document
+ * parsed from a stream is not read again from its system identifier,
+ * that the scan of a root document stops once the processing is
+ * over, and that the background threads do not keep the context
+ * class loader of the application.
+ * <p>
+ * Must be run from the root of the source tree, like xinclude.Test.
+ *
+ * @version $Id$
+ */
+public class ParallelProcessingTest implements XMLErrorHandler {
+
+    //
+    // Constants
+    //
+
+    /** Parallel processing feature id. */
+    protected static final String PARALLEL_PROCESSING_FEATURE_ID =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_PARALLEL_PROCESSING_FEATURE;
+
+    /** Schema validation feature id (http://apache.org/xml/features/validation/schema). */
+    protected static final String SCHEMA_VALIDATION_FEATURE_ID =
+        "http://apache.org/xml/features/validation/schema";
+
+    /** Property identifier: error handler. */
+    protected static final String ERROR_HANDLER =
+        "http://apache.org/xml/properties/internal/error-handler";
+
+    /** Number of test documents in tests/xinclude/tests. */
+    private static final int NUM_TESTS = 41;
+
+    /** Number of documents included by the generated root document. */
+    private static final int NUM_INCLUDED = 40;
+
+    //
+    // Data
+    //
+
+    /** Errors reported by the last parse. */
+    private final StringBuffer fErrors = new StringBuffer();
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        // the background threads must not take the class loader of the
+        // thread creating them
+        Thread.currentThread().setContextClassLoader(
+                new URLClassLoader(new URL[0], ParallelProcessingTest.class.getClassLoader()));
+        ParallelProcessingTest test = new ParallelProcessingTest();
+        int failures = 0;
+        for (int i = 1; i <= NUM_TESTS; ++i) {
+            String systemId = "tests/xinclude/tests/test" + (i < 10 ? "0" : "") + i + ".xml";
+            if (!test.compare(systemId, false) || !test.compare(systemId, true)) {
+                ++failures;
+            }
+        }
+        System.err.println((failures == 0 ? "PASS: " : "FAIL: ") + "test documents, " + failures + " failed");
+
+        File dir = generateTree();
+        String root = new File(dir, "root.xml").toURI().toString();
+        boolean passed = true;
+        for (int i = 0; i < 5; ++i) {
+            passed &= test.compare(root, false) && test.compare(root, true);
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "generated tree");
+
+        Server server = new Server(dir);
+        try {
+            passed &= test.checkStream(server);
+            passed &= test.checkScanStopped(server);
+            passed &= checkThreads();
+        }
+        finally {
+            server.stop();
+        }
+        File[] files = dir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        dir.delete();
+        if (failures > 0 || !passed) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Returns true if the document is processed the same way with the
+     * parallel processing feature off and on.
+     */
+    public boolean compare(String systemId, boolean validate) throws IOException {
+        String expected = parse(systemId, validate, false);
+        String actual = parse(systemId, validate, true);
+        if (!expected.equals(actual)) {
+            System.err.println("FAIL: " + systemId + (validate ? " (validating)" : ""));
+            System.err.println("  expected: " + expected);
+            System.err.println("  actual:   " + actual);
+            return false;
+        }
+        return true;
+    } // compare(String,boolean):boolean
+
+    /** Returns the events and the errors of the processing of the document. */
+    public String parse(String systemId, boolean validate, boolean parallel) throws IOException {
+        return parse(new XMLInputSource(null, systemId, null), validate, parallel);
+    } // parse(String,boolean,boolean):String
+
+    /** Returns the events and the errors of the processing of the document. */
+    public String parse(XMLInputSource source, boolean validate, boolean parallel) throws IOException {
+        XMLParserConfiguration config = createConfiguration(validate, parallel);
+        return parse(config, new Writer(config), source);
+    } // parse(XMLInputSource,boolean,boolean):String
+
+    //
+    // XMLErrorHandler methods
+    //
+
+    public void warning(String domain, String key, XMLParseException ex) {
+        printError("Warning", key, ex);
+    }
+
+    public void error(String domain, String key, XMLParseException ex) {
+        printError("Error", key, ex);
+    }
+
+    public void fatalError(String domain, String key, XMLParseException ex) {
+        printError("Fatal Error", key, ex);
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns true if the root document is read once when it is parsed
+     * from its system identifier and scanned again, and not at all from
+     * its system identifier when the application passes a stream.
+     */
+    private boolean checkStream(Server server) throws IOException {
+        String systemId = server.getURL("doc1.xml");
+        String expected = parse(systemId, false, false);
+        server.clear();
+        String actual = parse(systemId, false, true);
+        boolean passed = expected.equals(actual) && server.getRequests("doc1.xml") == 2;
+
+        // the system identifier only resolves the included documents
+        InputStream stream = new ByteArrayInputStream(
+                ("<root xmlns:xi='http://www.w3.org/2001/XInclude'>" +
+                 "<xi:include href='leaf1.xml'/><xi:include href='leaf2.xml'/></root>").getBytes("UTF-8"));
+        XMLInputSource source = new XMLInputSource(null, systemId, null, stream, null);
+        server.clear();
+        actual = parse(source, false, true);
+        passed &= server.getRequests("doc1.xml") == 0 && server.getRequests("leaf1.xml") == 1 &&
+            actual.indexOf("<leaf n=\"2\"") != -1;
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "root document read from a stream");
+        return passed;
+    } // checkStream(Server):boolean
+
+    /**
+     * Returns true if the scan of a root document whose processing
+     * ended with a fatal error stops once the configuration is reused.
+     */
+    private boolean checkScanStopped(Server server) throws IOException, InterruptedException {
+        XMLParserConfiguration config = createConfiguration(false, true);
+        Writer writer = new Writer(config);
+        server.clear();
+        parse(config, writer, new XMLInputSource(null, server.getURL(Server.SLOW_DOCUMENT), null));
+        // the next document resets the XIncludeHandler, discarding the
+        // documents of the previous one
+        parse(config, writer, new XMLInputSource(null, server.getURL("leaf0.xml"), null));
+        long end = System.currentTimeMillis() + Server.SLOW_TIME / 2;
+        while (server.getOpen() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        boolean passed = server.getRequests(Server.SLOW_DOCUMENT) == 2 && server.getOpen() == 0;
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "scan stopped");
+        return passed;
+    } // checkScanStopped(Server):boolean
+
+    /**
+     * Returns true if the threads of the parallel processing are daemon
+     * threads with the class loader of Xerces as context class loader.
+     */
+    private static boolean checkThreads() {
+        Thread[] threads = new Thread[Thread.activeCount() + 16];
+        int count = Thread.enumerate(threads);
+        boolean passed = true;
+        int found = 0;
+        for (int i = 0; i < count; ++i) {
+            if (threads[i].getName().equals("Xerces XInclude parser")) {
+                ++found;
+                passed &= threads[i].isDaemon() &&
+                    threads[i].getContextClassLoader() == XIncludeParserConfiguration.class.getClassLoader();
+            }
+        }
+        passed &= found > 0;
+        System.err.println((passed ? "PASS: " : "FAIL: ") + "background threads");
+        return passed;
+    } // checkThreads():boolean
+
+    private XMLParserConfiguration createConfiguration(boolean validate, boolean parallel) {
+        XMLParserConfiguration config = new XIncludeParserConfiguration();
+        config.setFeature(SCHEMA_VALIDATION_FEATURE_ID, validate);
+        config.setFeature(PARALLEL_PROCESSING_FEATURE_ID, parallel);
+        return config;
+    } // createConfiguration(boolean,boolean):XMLParserConfiguration
+
+    private String parse(XMLParserConfiguration config, Writer writer, XMLInputSource source)
+        throws IOException {
+        // this has to be done AFTER the writer is created
+        config.setProperty(ERROR_HANDLER, this);
+        StringWriter output = new StringWriter();
+        writer.setOutput(output);
+        fErrors.setLength(0);
+        try {
+            writer.parse(source);
+        }
+        catch (XNIException e) {
+            fErrors.append("[Exception] ").append(e.getMessage());
+        }
+        return output.toString() + fErrors;
+    } // parse(XMLParserConfiguration,Writer,XMLInputSource):String
+
+    private void printError(String type, String key, XMLParseException ex) {
+        fErrors.append('[').append(type).append("] ").append(key).append(' ');
+        String systemId = ex.getExpandedSystemId();
+        if (systemId != null) {
+            fErrors.append(systemId.substring(systemId.lastIndexOf('/') + 1));
+        }
+        fErrors.append(':').append(ex.getLineNumber()).append(':').append(ex.getColumnNumber()).append('\n');
+    } // printError(String,String,XMLParseException)
+
+    /**
+     * Generates a root document including documents which include two
+     * more documents each, text, documents with IDs selected by an
+     * XPointer, missing documents with fallbacks and a malformed document.
+     */
+    private static File generateTree() throws IOException {
+        File dir = File.createTempFile("xinclude", "");
+        dir.delete();
+        dir.mkdirs();
+        String xi = "xmlns:xi='http://www.w3.org/2001/XInclude'";
+        StringBuffer root = new StringBuffer("<root " + xi + ">\n");
+        for (int i = 0; i < NUM_INCLUDED; ++i) {
+            root.append(" <xi:include href='doc").append(i).append(".xml'/>\n");
+            write(dir, "doc" + i + ".xml",
+                "<doc n='" + i + "' " + xi + " xml:lang='en'>\n" +
+                " <xi:include href='leaf" + i + ".xml'/>\n" +
+                " <xi:include href='leaf" + ((i + 1) % NUM_INCLUDED) + ".xml'/>\n" +
+                " <xi:include href='text" + i + ".txt' parse='text'/>\n" +
+                (i % 5 == 0 ?
+                 " <xi:include href='missing" + i + ".xml'><xi:fallback><missing/></xi:fallback></xi:include>\n" : "") +
+                (i % 7 == 0 ?
+                 " <xi:include href='ids.xml' xpointer='element(/1/" + (i % 3 + 1) + ")'/>\n" : "") +
+                "</doc>");
+            write(dir, "leaf" + i + ".xml",
+                "<?xml version='1.0'?>\n<!-- leaf " + i + " -->\n<leaf n='" + i + "'><![CDATA[<" + i + ">]]>&amp;</leaf>");
+            write(dir, "text" + i + ".txt", "text <" + i + "> & more\n");
+        }
+        root.append(" <xi:include href='ids.xml' xpointer='b'/>\n");
+        // a fatal error ends the processing
+        root.append(" <xi:include href='malformed.xml'><xi:fallback>fallback</xi:fallback></xi:include>\n");
+        root.append("</root>");
+        write(dir, "root.xml", root.toString());
+        write(dir, "ids.xml",
+            "<!DOCTYPE ids [<!ATTLIST id id ID #IMPLIED>]>\n" +
+            "<ids><id id='a'>A</id><id id='b'>B</id><id id='c'>C</id></ids>");
+        write(dir, "malformed.xml", "<malformed><a></malformed>");
+        return dir;
+    } // generateTree():File
+
+    private static void write(File dir, String name, String contents) throws IOException {
+        java.io.Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name)), "UTF-8");
+        out.write(contents);
+        out.close();
+    } // write(File,String,String)
+
+    //
+    // Classes
+    //
+
+    /**
+     * Serves the files of a directory, and a root document which is
+     * written slowly and includes a malformed document first.
+     */
+    static final class Server implements HttpHandler {
+
+        /** Name of the slowly written document. */
+        public static final String SLOW_DOCUMENT = "slow.xml";
+
+        /** Milliseconds it takes to write the slow document. */
+        public static final long SLOW_TIME = 6000;
+
+        private final File fDir;
+        private final HttpServer fServer;
+
+        /** Number of requests, by file name. */
+        private final HashMap fRequests = new HashMap();
+
+        /** Number of responses not yet completed or aborted. */
+        private int fOpen;
+
+        public Server(File dir) throws IOException {
+            fDir = dir;
+            fServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            fServer.createContext("/", this);
+            fServer.setExecutor(Executors.newCachedThreadPool());
+            fServer.start();
+        }
+
+        public String getURL(String name) {
+            return "http://127.0.0.1:" + fServer.getAddress().getPort() + "/" + name;
+        }
+
+        public synchronized int getRequests(String name) {
+            Integer requests = (Integer) fRequests.get(name);
+            return requests != null ? requests.intValue() : 0;
+        }
+
+        public synchronized int getOpen() {
+            return fOpen;
+        }
+
+        public synchronized void clear() {
+            fRequests.clear();
+        }
+
+        public void stop() {
+            fServer.stop(0);
+            ((java.util.concurrent.ExecutorService) fServer.getExecutor()).shutdownNow();
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            synchronized (this) {
+                fRequests.put(name, new Integer(getRequests(name) + 1));
+                ++fOpen;
+            }
+            try {
+                if (name.equals(SLOW_DOCUMENT)) {
+                    writeSlowly(exchange);
+                }
+                else {
+                    File file = new File(fDir, name);
+                    if (!file.isFile()) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type",
+                            name.endsWith(".txt") ? "text/plain" : "application/xml");
+                    exchange.sendResponseHeaders(200, file.length());
+                    InputStream in = new FileInputStream(file);
+                    OutputStream out = exchange.getResponseBody();
+                    byte[] buffer = new byte[4096];
+                    for (int n; (n = in.read(buffer)) != -1;) {
+                        out.write(buffer, 0, n);
+                    }
+                    in.close();
+                }
+            }
+            catch (IOException e) {
+                // the client closed the connection
+            }
+            finally {
+                exchange.close();
+                synchronized (this) {
+                    --fOpen;
+                }
+            }
+        }
+
+        private void writeSlowly(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(("<root xmlns:xi='http://www.w3.org/2001/XInclude'>\n" +
+                       " <xi:include href='malformed.xml'/>\n").getBytes("UTF-8"));
+            byte[] elements = new byte[1024];
+            for (int i = 0; i < elements.length; i += 4) {
+                System.arraycopy("<e/>".getBytes("UTF-8"), 0, elements, i, 4);
+            }
+            for (long end = System.currentTimeMillis() + SLOW_TIME; System.currentTimeMillis() < end;) {
+                out.write(elements);
+                out.flush();
+                try {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+            out.write("</root>".getBytes("UTF-8"));
+        }
+    } // class Server
+
+} // class ParallelProcessingTest
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xinclude;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.XIncludeParserConfiguration;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+
+import xni.Writer;
+
+/**
+ * Processes documents including parts of other documents selected by
+ * shorthand and element() pointers with the XInclude streaming XPointer
+ * feature off and on, and checks that the events and errors are the
+ * same, that the parse of an included document stops after the selected
+ * element, and that a document is not parsed again for a pointer to an
+ * identifier it does not contain.
+ *
+ * @version $Id$
+ */
+public class StreamingXPointerTest implements XMLErrorHandler, XMLEntityResolver {
+
+    //
+    // Constants
+    //
+
+    /** Streaming XPointer feature id. */
+    protected static final String STREAMING_XPOINTER_FEATURE_ID =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_STREAMING_XPOINTER_FEATURE;
+
+    /** Schema validation feature id (http://apache.org/xml/features/validation/schema). */
+    protected static final String SCHEMA_VALIDATION_FEATURE_ID =
+        "http://apache.org/xml/features/validation/schema";
+
+    /** Property identifier: error handler. */
+    protected static final String ERROR_HANDLER =
+        "http://apache.org/xml/properties/internal/error-handler";
+
+    /** Property identifier: entity resolver. */
+    protected static final String ENTITY_RESOLVER =
+        "http://apache.org/xml/properties/internal/entity-resolver";
+
+    private static final String XI = "xmlns:xi='http://www.w3.org/2001/XInclude'";
+
+    /** Number of sections of the target documents. */
+    private static final int NUM_SECTIONS = 200;
+
+    //
+    // Data
+    //
+
+    /** The directory of the documents. */
+    private File fDir;
+
+    /** Errors reported by the last parse. */
+    private final StringBuffer fErrors = new StringBuffer();
+
+    /** Number of times the DTD of the target documents has been read. */
+    private int fDTDReads;
+
+    /** Number of checks failed. */
+    private int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        StreamingXPointerTest test = new StreamingXPointerTest();
+        test.run();
+        if (test.fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Public methods
+    //
+
+    public void run() throws Exception {
+        fDir = File.createTempFile("xpointer", "");
+        fDir.delete();
+        fDir.mkdirs();
+        writeDocuments();
+
+        // pointers to present and absent identifiers, and child sequences
+        compare("shorthand.xml", false);
+        compare("element.xml", false);
+        compare("empty.xml", false);
+        compare("nested.xml", false);
+        compare("fallback.xml", false);
+        compare("mixed.xml", false);
+        // schema determined identifiers
+        compare("schema.xml", true);
+
+        // a document is parsed completely for a pointer to an absent
+        // identifier, and is not parsed again for the following ones
+        checkReads("absent identifiers", "absent.xml", 5, 2);
+        // the identifiers of each document are remembered separately
+        checkReads("two documents", "two.xml", 4, 3);
+
+        // the parse stops after the selected element, before the error
+        // which follows it
+        String expected = parse("truncated.xml", false, false);
+        String actual = parse("truncated.xml", false, true);
+        check("errors after the selected element",
+            expected.indexOf("[Fatal Error]") != -1 && actual.indexOf("[Fatal Error]") == -1 &&
+            actual.indexOf("<s id=\"s1\"") != -1, actual);
+
+        // the streamed pointers into a large document
+        timing();
+
+        File[] files = fDir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        fDir.delete();
+    } // run()
+
+    //
+    // XMLEntityResolver methods
+    //
+
+    public XMLInputSource resolveEntity(XMLResourceIdentifier resourceIdentifier) {
+        String systemId = resourceIdentifier.getLiteralSystemId();
+        if (systemId != null && systemId.endsWith("target.dtd")) {
+            ++fDTDReads;
+        }
+        return null;
+    } // resolveEntity(XMLResourceIdentifier):XMLInputSource
+
+    //
+    // XMLErrorHandler methods
+    //
+
+    public void warning(String domain, String key, XMLParseException ex) {
+        printError("Warning", key, ex);
+    }
+
+    public void error(String domain, String key, XMLParseException ex) {
+        printError("Error", key, ex);
+    }
+
+    public void fatalError(String domain, String key, XMLParseException ex) {
+        printError("Fatal Error", key, ex);
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Checks that the document is processed the same way with the
+     * streaming XPointer feature off and on.
+     */
+    private void compare(String name, boolean validate) throws IOException {
+        String expected = parse(name, validate, false);
+        String actual = parse(name, validate, true);
+        if (!expected.equals(actual)) {
+            ++fFailures;
+            System.err.println("FAIL: " + name);
+            System.err.println("  expected: " + expected);
+            System.err.println("  actual:   " + actual);
+        }
+        else {
+            System.err.println("PASS: " + name + ", " + expected.length() + " characters");
+        }
+    } // compare(String,boolean)
+
+    /**
+     * Checks that the document is processed the same way with the
+     * streaming XPointer feature off and on, and the number of times
+     * the included documents are parsed.
+     */
+    private void checkReads(String description, String name, int readsOff, int readsOn) throws IOException {
+        fDTDReads = 0;
+        String expected = parse(name, false, false);
+        int off = fDTDReads;
+        fDTDReads = 0;
+        String actual = parse(name, false, true);
+        int on = fDTDReads;
+        check(description, expected.equals(actual) && off == readsOff && on == readsOn,
+            "parsed " + off + " times, " + on + " times streamed");
+        if (!expected.equals(actual)) {
+            System.err.println("  expected: " + expected);
+            System.err.println("  actual:   " + actual);
+        }
+    } // checkReads(String,String,int,int)
+
+    /** Compares the time taken by pointers into a large document. */
+    private void timing() throws IOException {
+        StringBuffer large = new StringBuffer("<!DOCTYPE target SYSTEM 'target.dtd'>\n<target>\n");
+        for (int i = 0; i < 20000; ++i) {
+            large.append(" <s id='s").append(i).append("'><p>").append(i).append("</p></s>\n");
+        }
+        large.append("</target>");
+        write("large.xml", large.toString());
+        StringBuffer doc = new StringBuffer("<d " + XI + ">\n");
+        for (int i = 0; i < 30; ++i) {
+            doc.append(" <xi:include href='large.xml' xpointer='s").append(i * 10).append("'/>\n");
+            doc.append(" <xi:include href='large.xml' xpointer='x").append(i).append("'>");
+            doc.append("<xi:fallback/></xi:include>\n");
+        }
+        doc.append("</d>");
+        write("large-include.xml", doc.toString());
+
+        // warm up
+        parse("large-include.xml", false, false);
+        parse("large-include.xml", false, true);
+        long time = System.currentTimeMillis();
+        String expected = parse("large-include.xml", false, false);
+        long off = System.currentTimeMillis() - time;
+        time = System.currentTimeMillis();
+        String actual = parse("large-include.xml", false, true);
+        long on = System.currentTimeMillis() - time;
+        check("large document", expected.equals(actual), off + " ms, " + on + " ms streamed");
+    } // timing()
+
+    /** Returns the events and the errors of the processing of the document. */
+    private String parse(String name, boolean validate, boolean streaming) throws IOException {
+        XMLParserConfiguration config = new XIncludeParserConfiguration();
+        config.setFeature(SCHEMA_VALIDATION_FEATURE_ID, validate);
+        config.setFeature(STREAMING_XPOINTER_FEATURE_ID, streaming);
+        Writer writer = new Writer(config);
+        // this has to be done AFTER the writer is created
+        config.setProperty(ERROR_HANDLER, this);
+        config.setProperty(ENTITY_RESOLVER, this);
+        StringWriter output = new StringWriter();
+        writer.setOutput(output);
+        fErrors.setLength(0);
+        try {
+            writer.parse(new XMLInputSource(null, new File(fDir, name).toURI().toString(), null));
+        }
+        catch (XNIException e) {
+            fErrors.append("[Exception] ").append(e.getMessage());
+        }
+        return output.toString() + fErrors;
+    } // parse(String,boolean,boolean):String
+
+    private void writeDocuments() throws IOException {
+        write("target.dtd",
+            "<!ELEMENT target ANY>\n<!ELEMENT s ANY>\n<!ELEMENT p ANY>\n<!ELEMENT e EMPTY>\n" +
+            "<!ATTLIST s id ID #IMPLIED>\n<!ATTLIST p id ID #IMPLIED>\n<!ATTLIST e id ID #IMPLIED>\n" +
+            "<!ELEMENT d ANY>\n<!ATTLIST d xmlns:xi CDATA #IMPLIED>\n");
+        StringBuffer target = new StringBuffer("<!DOCTYPE target SYSTEM 'target.dtd'>\n<target>\n");
+        StringBuffer schemaTarget = new StringBuffer(
+            "<target xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance' xsi:noNamespaceSchemaLocation='target.xsd'>\n");
+        for (int i = 0; i < NUM_SECTIONS; ++i) {
+            String section = " <s id='s" + i + "' xml:lang='l" + (i % 3) + "'><!-- " + i + " -->" +
+                "<p id='p" + i + "'>" + i + " <?pi " + i + "?>&amp;<![CDATA[<" + i + ">]]></p>" +
+                "<p>second</p><e id='e" + i + "'/></s>\n";
+            target.append(section);
+            schemaTarget.append(section);
+        }
+        target.append("</target>");
+        schemaTarget.append("</target>");
+        write("target.xml", target.toString());
+        write("other.xml", target.toString());
+        write("schema-target.xml", schemaTarget.toString());
+        write("target.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>\n" +
+            " <xs:import namespace='http://www.w3.org/XML/1998/namespace'/>\n" +
+            " <xs:element name='target'><xs:complexType><xs:sequence>\n" +
+            "  <xs:element name='s' maxOccurs='unbounded'><xs:complexType><xs:sequence>\n" +
+            "   <xs:element name='p' maxOccurs='unbounded'><xs:complexType mixed='true'>\n" +
+            "    <xs:attribute name='id' type='xs:ID'/></xs:complexType></xs:element>\n" +
+            "   <xs:element name='e'><xs:complexType><xs:attribute name='id' type='xs:ID'/></xs:complexType></xs:element>\n" +
+            "  </xs:sequence><xs:attribute name='id' type='xs:ID'/><xs:anyAttribute processContents='lax'/></xs:complexType></xs:element>\n" +
+            " </xs:sequence></xs:complexType></xs:element>\n" +
+            "</xs:schema>");
+
+        write("shorthand.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='s0'/>\n" +
+            " <xi:include href='target.xml' xpointer='p5'/>\n" +
+            " <xi:include href='target.xml' xpointer='s199'/>\n" +
+            " <xi:include href='target.xml' xpointer='s0'/>\n" +
+            "</d>");
+        write("element.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='element(/1/3)'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(/1/3/2)'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(s7/1)'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(s7)'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(/1/200/3)'/>\n" +
+            "</d>");
+        write("empty.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='e3'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(s4/3)'/>\n" +
+            "</d>");
+        write("nested.xml", "<d " + XI + ">\n" +
+            " <xi:include href='outer.xml' xpointer='o2'/>\n" +
+            " <xi:include href='outer.xml' xpointer='element(/1/1)'/>\n" +
+            "</d>");
+        write("outer.xml", "<!DOCTYPE outer [<!ATTLIST o id ID #IMPLIED>]>\n<outer " + XI + ">\n" +
+            " <o id='o1'><xi:include href='target.xml' xpointer='s1'/>" +
+            "<xi:include href='target.xml' xpointer='missing'><xi:fallback>fallback</xi:fallback></xi:include></o>\n" +
+            " <o id='o2'><xi:include href='target.xml' xpointer='element(/1/2/1)'/></o>\n" +
+            "</outer>");
+        write("fallback.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='missing1'><xi:fallback>one</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='missing2'><xi:fallback>two</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='element(missing3/1)'><xi:fallback>three</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='missing4'/>\n" +
+            " <xi:include href='target.xml' xpointer='s9'/>\n" +
+            " <xi:include href='target.xml' xpointer='element(/1/500)'><xi:fallback>five</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='element(/1/500)'><xi:fallback>six</xi:fallback></xi:include>\n" +
+            "</d>");
+        write("mixed.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='missing'><xi:fallback>one</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='element(missing/1) element(s3/1)'/>\n" +
+            " <xi:include href='target.xml' xpointer='missing s4'/>\n" +
+            " <xi:include href='target.xml' xpointer='missing element(/1/5)'/>\n" +
+            " <xi:include href='target.xml' xpointer='unknown(x) s6'/>\n" +
+            " <xi:include href='target.xml' xpointer='unknown(x) missing'><xi:fallback>two</xi:fallback></xi:include>\n" +
+            "</d>");
+        write("schema.xml", "<d " + XI + ">\n" +
+            " <xi:include href='schema-target.xml' xpointer='s2'/>\n" +
+            " <xi:include href='schema-target.xml' xpointer='missing'><xi:fallback>one</xi:fallback></xi:include>\n" +
+            " <xi:include href='schema-target.xml' xpointer='element(p8)'/>\n" +
+            " <xi:include href='schema-target.xml' xpointer='e9'/>\n" +
+            "</d>");
+        write("absent.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='missing1'><xi:fallback>one</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='missing2'><xi:fallback>two</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='element(missing3/1)'><xi:fallback>three</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='s3'/>\n" +
+            " <xi:include href='target.xml' xpointer='missing4'><xi:fallback>four</xi:fallback></xi:include>\n" +
+            "</d>");
+        write("two.xml", "<d " + XI + ">\n" +
+            " <xi:include href='target.xml' xpointer='missing1'><xi:fallback>one</xi:fallback></xi:include>\n" +
+            " <xi:include href='other.xml' xpointer='missing1'><xi:fallback>two</xi:fallback></xi:include>\n" +
+            " <xi:include href='target.xml' xpointer='missing2'><xi:fallback>three</xi:fallback></xi:include>\n" +
+            " <xi:include href='other.xml' xpointer='s1'/>\n" +
+            "</d>");
+        write("truncated-target.xml", "<!DOCTYPE target SYSTEM 'target.dtd'>\n" +
+            "<target><s id='s0'/><s id='s1'><p>1</p></s><s id='s2'><p></s></target>");
+        write("truncated.xml", "<d " + XI + "><xi:include href='truncated-target.xml' xpointer='s1'/></d>");
+    } // writeDocuments()
+
+    private void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + ": " + result);
+    } // check(String,boolean,String)
+
+    private void printError(String type, String key, XMLParseException ex) {
+        fErrors.append('[').append(type).append("] ").append(key).append(' ');
+        String systemId = ex.getExpandedSystemId();
+        if (systemId != null) {
+            fErrors.append(systemId.substring(systemId.lastIndexOf('/') + 1));
+        }
+        fErrors.append(':').append(ex.getLineNumber()).append(':').append(ex.getColumnNumber()).append('\n');
+    } // printError(String,String,XMLParseException)
+
+    private void write(String name, String contents) throws IOException {
+        java.io.Writer out = new OutputStreamWriter(new FileOutputStream(new File(fDir, name)), "UTF-8");
+        out.write(contents);
+        out.close();
+    } // write(String,String)
+
+} // class StreamingXPointerTest
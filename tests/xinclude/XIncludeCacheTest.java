@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xinclude;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.XIncludeParserConfiguration;
+import org.apache.xerces.xinclude.XIncludeCache;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+
+import xni.Writer;
+
+/**
+ * Processes documents including the same resources with and without an
+ * XInclude cache, and checks that the events and errors are the same,
+ * and that the cache counts its hits, misses and evictions, discards
+ * the least recently used resource, and reads a modified resource again.
+ *
+ * @version $Id$
+ */
+public class XIncludeCacheTest implements XMLErrorHandler {
+
+    //
+    // Constants
+    //
+
+    /** XInclude cache property id. */
+    protected static final String XINCLUDE_CACHE_PROPERTY_ID =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XINCLUDE_CACHE_PROPERTY;
+
+    /** Parallel processing feature id. */
+    protected static final String PARALLEL_PROCESSING_FEATURE_ID =
+        Constants.XERCES_FEATURE_PREFIX + Constants.XINCLUDE_PARALLEL_PROCESSING_FEATURE;
+
+    /** Property identifier: error handler. */
+    protected static final String ERROR_HANDLER =
+        "http://apache.org/xml/properties/internal/error-handler";
+
+    private static final String XI = "xmlns:xi='http://www.w3.org/2001/XInclude'";
+
+    /** Documents, as pairs of file name and contents. */
+    private static final String[] DOCUMENTS = {
+        "r1.xml", "<r1><?pi data?><!-- one --><a xml:lang='fr'>1</a></r1>",
+        "r2.xml", "<r2 xmlns='urn:r2'><b>2</b></r2>",
+        "r3.xml", "<?xml version='1.1'?><r3>3&#x85;</r3>",
+        "text.txt", "text <&>\n",
+        "d12.xml", "<d " + XI + "><xi:include href='r1.xml'/><xi:include href='r2.xml'/></d>",
+        "d1.xml", "<d " + XI + "><xi:include href='r1.xml'/></d>",
+        "d2.xml", "<d " + XI + "><xi:include href='r2.xml'/></d>",
+        "d3.xml", "<d " + XI + "><xi:include href='r3.xml'/></d>",
+        "dt.xml", "<d " + XI + "><xi:include href='text.txt' parse='text'/>" +
+                  "<xi:include href='text.txt' parse='text'/></d>",
+        "dp.xml", "<d " + XI + "><xi:include href='r2.xml' xpointer='element(/1/1)'/>" +
+                  "<xi:include href='r2.xml'/><xi:include href='r1.xml' xpointer='element(/1/3)'/></d>",
+    };
+
+    //
+    // Data
+    //
+
+    /** The directory of the documents. */
+    private File fDir;
+
+    /** Errors reported by the last parse. */
+    private final StringBuffer fErrors = new StringBuffer();
+
+    /** Number of checks failed. */
+    private int fFailures;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+        XIncludeCacheTest test = new XIncludeCacheTest();
+        test.run();
+        if (test.fFailures > 0) {
+            System.exit(1);
+        }
+    } // main(String[])
+
+    //
+    // Public methods
+    //
+
+    public void run() throws Exception {
+        fDir = File.createTempFile("xinclude", "");
+        fDir.delete();
+        fDir.mkdirs();
+        for (int i = 0; i < DOCUMENTS.length; i += 2) {
+            write(DOCUMENTS[i], DOCUMENTS[i + 1]);
+        }
+
+        // a cache of two resources
+        XIncludeCache cache = new XIncludeCache(2);
+        parse("d12.xml", cache, false);
+        checkCounts("first parse", cache, 0, 2, 0, 2);
+        parse("d12.xml", cache, false);
+        checkCounts("second parse", cache, 2, 2, 0, 2);
+        // r1 is the least recently used
+        parse("d3.xml", cache, false);
+        checkCounts("r3 evicts r1", cache, 2, 3, 1, 2);
+        parse("d2.xml", cache, false);
+        checkCounts("r2 kept", cache, 3, 3, 1, 2);
+        parse("d1.xml", cache, false);
+        checkCounts("r1 read again", cache, 3, 4, 2, 2);
+
+        // a modified resource is read again
+        write("r2.xml", "<r2 xmlns='urn:r2'><b>modified</b></r2>");
+        new File(fDir, "r2.xml").setLastModified(System.currentTimeMillis() + 10000);
+        String output = parse("d2.xml", cache, false);
+        check("modified resource", output.indexOf("modified") != -1, output);
+        checkCounts("modified resource", cache, 3, 5, 2, 2);
+        parse("d2.xml", cache, false);
+        checkCounts("modified resource cached", cache, 4, 5, 2, 2);
+
+        // text resources, and resources selected by XPointers, which
+        // are cached whole
+        cache = new XIncludeCache();
+        parse("dt.xml", cache, false);
+        checkCounts("text", cache, 1, 1, 0, 1);
+        parse("dp.xml", cache, false);
+        parse("dp.xml", cache, false);
+        checkCounts("xpointer", cache, 5, 3, 0, 3);
+
+        // the same resources with the cache used by the background threads
+        cache = new XIncludeCache();
+        for (int i = 0; i < DOCUMENTS.length; i += 2) {
+            if (DOCUMENTS[i].startsWith("d")) {
+                parse(DOCUMENTS[i], cache, true);
+                parse(DOCUMENTS[i], cache, true);
+            }
+        }
+        check("parallel processing", cache.getHitCount() > 0, "hits " + cache.getHitCount());
+
+        cache.resetStatistics();
+        cache.clear();
+        checkCounts("cleared", cache, 0, 0, 0, 0);
+
+        File[] files = fDir.listFiles();
+        for (int i = 0; i < files.length; ++i) {
+            files[i].delete();
+        }
+        fDir.delete();
+    } // run()
+
+    //
+    // XMLErrorHandler methods
+    //
+
+    public void warning(String domain, String key, XMLParseException ex) {
+        printError("Warning", key, ex);
+    }
+
+    public void error(String domain, String key, XMLParseException ex) {
+        printError("Error", key, ex);
+    }
+
+    public void fatalError(String domain, String key, XMLParseException ex) {
+        printError("Fatal Error", key, ex);
+    }
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Processes the document with the cache, and checks that the events
+     * and errors are the same as without it. Returns the events.
+     */
+    private String parse(String name, XIncludeCache cache, boolean parallel) throws IOException {
+        String expected = process(name, null, false);
+        String actual = process(name, cache, parallel);
+        if (!expected.equals(actual)) {
+            ++fFailures;
+            System.err.println("FAIL: " + name + (parallel ? " (parallel)" : ""));
+            System.err.println("  expected: " + expected);
+            System.err.println("  actual:   " + actual);
+        }
+        return actual;
+    } // parse(String,XIncludeCache,boolean):String
+
+    /** Returns the events and the errors of the processing of the document. */
+    private String process(String name, XIncludeCache cache, boolean parallel) throws IOException {
+        XMLParserConfiguration config = new XIncludeParserConfiguration();
+        config.setFeature(PARALLEL_PROCESSING_FEATURE_ID, parallel);
+        config.setProperty(XINCLUDE_CACHE_PROPERTY_ID, cache);
+        Writer writer = new Writer(config);
+        // this has to be done AFTER the writer is created
+        config.setProperty(ERROR_HANDLER, this);
+        StringWriter output = new StringWriter();
+        writer.setOutput(output);
+        fErrors.setLength(0);
+        try {
+            writer.parse(new XMLInputSource(null, new File(fDir, name).toURI().toString(), null));
+        }
+        catch (XNIException e) {
+            fErrors.append("[Exception] ").append(e.getMessage());
+        }
+        return output.toString() + fErrors;
+    } // process(String,XIncludeCache,boolean):String
+
+    private void checkCounts(String name, XIncludeCache cache, int hits, int misses, int evictions, int size) {
+        String counts = "hits " + cache.getHitCount() + ", misses " + cache.getMissCount() +
+            ", evictions " + cache.getEvictionCount() + ", size " + cache.size();
+        check(name, counts.equals("hits " + hits + ", misses " + misses +
+            ", evictions " + evictions + ", size " + size), counts);
+    } // checkCounts(String,XIncludeCache,int,int,int,int)
+
+    private void check(String name, boolean passed, String result) {
+        if (!passed) {
+            ++fFailures;
+        }
+        System.err.println((passed ? "PASS: " : "FAIL: ") + name + ": " + result);
+    } // check(String,boolean,String)
+
+    private void printError(String type, String key, XMLParseException ex) {
+        fErrors.append('[').append(type).append("] ").append(key).append(' ');
+        String systemId = ex.getExpandedSystemId();
+        if (systemId != null) {
+            fErrors.append(systemId.substring(systemId.lastIndexOf('/') + 1));
+        }
+        fErrors.append(':').append(ex.getLineNumber()).append(':').append(ex.getColumnNumber()).append('\n');
+    } // printError(String,String,XMLParseException)
+
+    private void write(String name, String contents) throws IOException {
+        java.io.Writer out = new OutputStreamWriter(new FileOutputStream(new File(fDir, name)), "UTF-8");
+        out.write(contents);
+        out.close();
+    } // write(String,String)
+
+} // class XIncludeCacheTest